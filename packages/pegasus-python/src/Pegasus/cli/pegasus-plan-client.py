@@ -0,0 +1,131 @@
+#!/usr/bin/env python3
+"""
+Forward a pegasus-plan invocation to a running pegasus-plan-server.
+
+The directory the client is invoked in and the arguments are sent to the
+server, together with the token the server wrote to
+~/.pegasus/planner-server-<port>.token. The output of the planner is relayed
+to stdout and stderr, and the client exits with the exitcode of the planner.
+
+If the server cannot be reached, pegasus-plan is invoked instead.
+
+Usage: pegasus-plan-client [--server [host:]port] <pegasus-plan arguments>
+"""
+
+##
+#  Copyright 2007-2012 University Of Southern California
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#  http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing,
+#  software distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+##
+
+import os
+import pwd
+import socket
+import struct
+import sys
+
+# keep in sync with edu.isi.pegasus.planner.client.PlannerServer
+PROTOCOL_VERSION = 2
+DEFAULT_PORT = 10900
+EXITCODE_FRAME = 0
+STDOUT_FRAME = 1
+STDERR_FRAME = 2
+
+# the seconds to wait for the connection to the server
+CONNECT_TIMEOUT = 5
+
+
+class ConnectError(Exception):
+    """The server could not be reached, and the planner did not run."""
+
+
+def encode(s):
+    b = s.encode("utf-8", "surrogateescape")
+    return struct.pack(">i", len(b)) + b
+
+
+def read_fully(sock, n):
+    data = bytearray()
+    while len(data) < n:
+        chunk = sock.recv(min(n - len(data), 65536))
+        if not chunk:
+            raise OSError("Planner server closed the connection")
+        data.extend(chunk)
+    return bytes(data)
+
+
+def plan(host, port, args):
+    # the server looks up the home directory the same way, regardless of HOME
+    home = pwd.getpwuid(os.getuid()).pw_dir
+    token_file = os.path.join(home, ".pegasus", "planner-server-%d.token" % port)
+    try:
+        with open(token_file) as f:
+            token = f.read().strip()
+        sock = socket.create_connection((host, port), CONNECT_TIMEOUT)
+    except OSError as e:
+        raise ConnectError(str(e))
+
+    with sock:
+        # the server bounds the time spent planning a request
+        sock.settimeout(None)
+        request = [
+            struct.pack(">i", PROTOCOL_VERSION),
+            encode(token),
+            encode(os.getcwd()),
+            struct.pack(">i", len(args)),
+        ]
+        request.extend(encode(arg) for arg in args)
+        sock.sendall(b"".join(request))
+
+        while True:
+            (frame,) = struct.unpack(">B", read_fully(sock, 1))
+            if frame == EXITCODE_FRAME:
+                (exitcode,) = struct.unpack(">i", read_fully(sock, 4))
+                return exitcode
+            (length,) = struct.unpack(">i", read_fully(sock, 4))
+            stream = sys.stderr if frame == STDERR_FRAME else sys.stdout
+            stream.buffer.write(read_fully(sock, length))
+            stream.flush()
+
+
+def main(argv):
+    host = "127.0.0.1"
+    port = DEFAULT_PORT
+    if len(argv) >= 2 and argv[0] == "--server":
+        address = argv[1]
+        argv = argv[2:]
+        if ":" in address:
+            host, address = address.rsplit(":", 1)
+        try:
+            port = int(address)
+        except ValueError:
+            sys.stderr.write("ERROR: Invalid planner server address %s\n" % address)
+            port = None
+
+    if port is not None:
+        try:
+            return plan(host or "127.0.0.1", port, argv)
+        except ConnectError as e:
+            sys.stderr.write("ERROR: Unable to connect to the planner server %s\n" % e)
+        except OSError as e:
+            # the planner may have already run, so the invocation is not retried
+            sys.stderr.write("ERROR: Lost connection to the planner server %s\n" % e)
+            return 1
+
+    bin_dir = os.path.join(os.environ.get("PEGASUS_HOME", ""), "bin")
+    plan_tool = os.path.join(bin_dir, "pegasus-plan")
+    os.execv(plan_tool, [plan_tool] + argv)
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv[1:]))
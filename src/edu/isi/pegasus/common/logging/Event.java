@@ -103,4 +103,12 @@ public interface Event extends Cloneable {
      */
     public String createEntityHierarchyMessage(
             String parentType, String parentID, String childIdType, Collection<String> childIDs);
+
+    /**
+     * Returns a copy of the event, with its own log message buffer. The copy may be used by another
+     * thread independently of the original.
+     *
+     * @return clone of the event.
+     */
+    public Object clone();
 }
@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.function.Supplier;
 import org.apache.logging.log4j.Level;
 
 /**
@@ -56,6 +57,11 @@ import org.apache.logging.log4j.Level;
  * </tr>
  * </table>
  *
+ * <p>Messages that are expensive to construct, such as the per job messages logged while planning
+ * large workflows, should be logged either after checking {@link #isLoggable(int)}, or through the
+ * supplier and template variants of the log method. These only construct the message if the level
+ * is enabled.
+ *
  * @author Karan Vahi
  * @author Gaurang Mehta
  * @version $Revision$
@@ -337,6 +343,14 @@ public abstract class LogManager {
      */
     public abstract PrintStream getWriter(STREAM_TYPE type);
 
+    /**
+     * Returns a boolean indicating whether a message at a particular level will be logged.
+     *
+     * @param level the level of the message.
+     * @return true if the message will be logged, else false
+     */
+    public abstract boolean isLoggable(int level);
+
     /**
      * Log the message represented by the internal log buffer. The log buffer is populated via the
      * add methods.
@@ -344,7 +358,9 @@ public abstract class LogManager {
      * @param level the level on which the message has to be logged.
      */
     public void log(int level) {
-        this.log(mLogFormatter.createLogMessage(), level);
+        if (this.isLoggable(level)) {
+            this.log(mLogFormatter.createLogMessage(), level);
+        }
     }
 
     /**
@@ -383,15 +399,103 @@ public abstract class LogManager {
      * to the level set for the Logger. For INFO level message, the boolean indicating that a
      * completion message is to follow is set to true always.
      *
+     * <p>The method is synchronized, as the message is assembled in the shared log formatter, and
+     * catalog implementations may log from multiple threads.
+     *
      * @param message the message to be logged.
      * @param level the level on which the message has to be logged.
      * @see #setLevel(int)
      */
-    public void log(String message, int level) {
+    public synchronized void log(String message, int level) {
+        if (!this.isLoggable(level)) {
+            return;
+        }
         mLogFormatter.add(message);
         this.logAlreadyFormattedMessage(mLogFormatter.createLogMessageAndReset(), level);
     }
 
+    /**
+     * Logs the message returned by the supplier. The supplier is only called if the level is
+     * enabled.
+     *
+     * @param message the supplier of the message to be logged.
+     * @param level the level on which the message has to be logged.
+     */
+    public void log(Supplier<String> message, int level) {
+        if (this.isLoggable(level)) {
+            this.log(message.get(), level);
+        }
+    }
+
+    /**
+     * Logs a message constructed from a template, where the {} placeholder is replaced by the
+     * argument. The message is only constructed if the level is enabled.
+     *
+     * @param level the level on which the message has to be logged.
+     * @param template the message template
+     * @param arg the argument for the placeholder
+     */
+    public void log(int level, String template, Object arg) {
+        if (this.isLoggable(level)) {
+            this.log(LogManager.format(template, arg), level);
+        }
+    }
+
+    /**
+     * Logs a message constructed from a template, where the {} placeholders are replaced by the
+     * arguments. The message is only constructed if the level is enabled.
+     *
+     * @param level the level on which the message has to be logged.
+     * @param template the message template
+     * @param arg1 the argument for the first placeholder
+     * @param arg2 the argument for the second placeholder
+     */
+    public void log(int level, String template, Object arg1, Object arg2) {
+        if (this.isLoggable(level)) {
+            this.log(LogManager.format(template, arg1, arg2), level);
+        }
+    }
+
+    /**
+     * Logs a message constructed from a template, where the {} placeholders are replaced by the
+     * arguments in order. The message is only constructed if the level is enabled.
+     *
+     * @param level the level on which the message has to be logged.
+     * @param template the message template
+     * @param args the arguments for the placeholders
+     */
+    public void log(int level, String template, Object... args) {
+        if (this.isLoggable(level)) {
+            this.log(LogManager.format(template, args), level);
+        }
+    }
+
+    /**
+     * Replaces the {} placeholders in a template with the arguments in order. Placeholders without
+     * a corresponding argument are retained as is, and extra arguments are ignored.
+     *
+     * @param template the message template
+     * @param args the arguments for the placeholders
+     * @return the message
+     */
+    public static String format(String template, Object... args) {
+        if (template == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(template.length() + 16 * args.length);
+        int start = 0;
+        for (Object arg : args) {
+            int index = template.indexOf("{}", start);
+            if (index == -1) {
+                break;
+            }
+            sb.append(template, start, index).append(arg);
+            start = index + 2;
+        }
+        sb.append(template, start, template.length());
+        return sb.toString();
+    }
+
     /**
      * Log an event start message to INFO level
      *
@@ -413,7 +517,9 @@ public abstract class LogManager {
      */
     public void logEventStart(String name, String entityName, String entityID, int level) {
         mLogFormatter.addEvent(name, entityName, entityID);
-        this.logAlreadyFormattedMessage(mLogFormatter.getStartEventMessage(), level);
+        if (this.isLoggable(level)) {
+            this.logAlreadyFormattedMessage(mLogFormatter.getStartEventMessage(), level);
+        }
     }
 
     /**
@@ -435,7 +541,9 @@ public abstract class LogManager {
      */
     public void logEventStart(String name, Map<String, String> map, int level) {
         mLogFormatter.addEvent(name, map);
-        this.logAlreadyFormattedMessage(mLogFormatter.getStartEventMessage(), level);
+        if (this.isLoggable(level)) {
+            this.logAlreadyFormattedMessage(mLogFormatter.getStartEventMessage(), level);
+        }
     }
 
     /** Logs the completion message on the basis of the debug level. */
@@ -483,6 +591,9 @@ public abstract class LogManager {
             Collection<String> childIDs,
             int level) {
 
+        if (!this.isLoggable(level)) {
+            return;
+        }
         this.logAlreadyFormattedMessage(
                 mLogFormatter.createEntityHierarchyMessage(
                         parentType, parentID, childIDType, childIDs),
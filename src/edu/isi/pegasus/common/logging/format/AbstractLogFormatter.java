@@ -32,12 +32,39 @@ public abstract class AbstractLogFormatter implements LogFormatter {
     /** The name of the program. */
     protected String mProgram;
 
-    /** The Stack of event objects maintained internally */
-    protected Stack<Event> mStack;
+    /**
+     * The Stack of event objects maintained internally, one per thread. A thread starts with copies
+     * of the events of the thread that created it, so that messages logged by helper threads are
+     * associated with the event they were started in, without the threads sharing the message
+     * buffers of the events.
+     */
+    private final ThreadLocal<Stack<Event>> mStacks;
 
     /** The default constructor. */
     public AbstractLogFormatter() {
-        mStack = new Stack<Event>();
+        mStacks =
+                new InheritableThreadLocal<Stack<Event>>() {
+                    protected Stack<Event> initialValue() {
+                        return new Stack<Event>();
+                    }
+
+                    protected Stack<Event> childValue(Stack<Event> parent) {
+                        Stack<Event> stack = new Stack<Event>();
+                        for (Event e : parent) {
+                            stack.push((Event) e.clone());
+                        }
+                        return stack;
+                    }
+                };
+    }
+
+    /**
+     * Returns the stack of events for the current thread.
+     *
+     * @return the stack of events
+     */
+    protected Stack<Event> getStack() {
+        return mStacks.get();
     }
 
     /**
@@ -74,7 +101,7 @@ public abstract class AbstractLogFormatter implements LogFormatter {
      * @return event on top , else null
      */
     public Event popEvent() {
-        return mStack.pop();
+        return getStack().pop();
     }
 
     /**
@@ -84,7 +111,7 @@ public abstract class AbstractLogFormatter implements LogFormatter {
      * @return name of the event.
      */
     public String getEventName() {
-        return mStack.peek().getEventName();
+        return getStack().peek().getEventName();
     }
 
     /**
@@ -93,7 +120,7 @@ public abstract class AbstractLogFormatter implements LogFormatter {
      * @return start event message
      */
     public String getStartEventMessage() {
-        return mStack.peek().getStartEventMessage();
+        return getStack().peek().getStartEventMessage();
     }
 
     /**
@@ -102,7 +129,7 @@ public abstract class AbstractLogFormatter implements LogFormatter {
      * @return end event message
      */
     public String getEndEventMessage() {
-        return mStack.peek().getEndEventMessage();
+        return getStack().peek().getEndEventMessage();
     }
 
     /**
@@ -123,7 +150,7 @@ public abstract class AbstractLogFormatter implements LogFormatter {
      * @return Self-reference, so calls can be chained
      */
     public LogFormatter add(String key, String value) {
-        mStack.peek().add(key, value);
+        getStack().peek().add(key, value);
         return this;
     }
 
@@ -133,7 +160,7 @@ public abstract class AbstractLogFormatter implements LogFormatter {
      * @return the log message
      */
     public String createLogMessage() {
-        return mStack.peek().createLogMessage();
+        return getStack().peek().createLogMessage();
     }
 
     /**
@@ -143,7 +170,7 @@ public abstract class AbstractLogFormatter implements LogFormatter {
      * @return log message.
      */
     public String createLogMessageAndReset() {
-        return mStack.peek().createLogMessageAndReset();
+        return getStack().peek().createLogMessageAndReset();
     }
 
     /**
@@ -158,7 +185,8 @@ public abstract class AbstractLogFormatter implements LogFormatter {
      */
     public String createEntityHierarchyMessage(
             String parentType, String parentID, String childIdType, Collection<String> childIDs) {
-        return mStack.peek()
+        return getStack()
+                .peek()
                 .createEntityHierarchyMessage(parentType, parentID, childIdType, childIDs);
     }
 }
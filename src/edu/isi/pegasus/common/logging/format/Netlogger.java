@@ -41,7 +41,7 @@ public class Netlogger extends AbstractLogFormatter {
         Event e = new NetloggerEvent();
         e.setProgramName(mProgram);
         e.setEvent(name, entityName, entityID);
-        mStack.addElement(e);
+        getStack().addElement(e);
         return;
     }
 
@@ -55,7 +55,7 @@ public class Netlogger extends AbstractLogFormatter {
         Event e = new NetloggerEvent();
         e.setProgramName(mProgram);
         e.setEvent(name, map);
-        mStack.addElement(e);
+        getStack().addElement(e);
         return;
     }
 }
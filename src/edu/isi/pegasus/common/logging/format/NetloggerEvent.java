@@ -108,9 +108,24 @@ public class NetloggerEvent implements Event {
         return mLogEvent.createEndLogMsg().toString();
     }
 
-    /** Reset the internal log message buffer associated with the event */
+    /**
+     * Reset the internal log message buffer associated with the event. The new log message is only
+     * created when something is added to it.
+     */
     public void reset() {
-        mMessage = mLogEvent.createLogMsg();
+        mMessage = null;
+    }
+
+    /**
+     * Returns the current log message, creating it if required.
+     *
+     * @return the log message
+     */
+    private EventLogMessage message() {
+        if (mMessage == null) {
+            mMessage = mLogEvent.createLogMsg();
+        }
+        return mMessage;
     }
 
     /**
@@ -121,7 +136,7 @@ public class NetloggerEvent implements Event {
      * @return Self-reference, so calls can be chained
      */
     public Event add(String key, String value) {
-        mMessage = mMessage.addWQ(key, value);
+        mMessage = this.message().addWQ(key, value);
         return this;
     }
 
@@ -131,7 +146,7 @@ public class NetloggerEvent implements Event {
      * @return the log message
      */
     public String createLogMessage() {
-        return mMessage.toString();
+        return this.message().toString();
     }
 
     /**
@@ -141,7 +156,7 @@ public class NetloggerEvent implements Event {
      * @return the log message
      */
     public String createLogMessageAndReset() {
-        String result = mMessage.toString();
+        String result = this.message().toString();
         this.reset();
         return result;
     }
@@ -162,4 +177,23 @@ public class NetloggerEvent implements Event {
                         parentType, parentID, childIdType, childIDs.iterator())
                 .toString();
     }
+
+    /**
+     * Returns a copy of the event, that starts with an empty log message. The underlying log event
+     * is not modified once set, and is shared with the copy.
+     *
+     * @return clone of the event.
+     */
+    public Object clone() {
+        NetloggerEvent e;
+        try {
+            e = (NetloggerEvent) super.clone();
+        } catch (CloneNotSupportedException ex) {
+            // somewhere in the hierarch chain clone is not implemented
+            throw new RuntimeException(
+                    "Clone not implemented in the base class of " + this.getClass().getName(), ex);
+        }
+        e.reset();
+        return e;
+    }
 }
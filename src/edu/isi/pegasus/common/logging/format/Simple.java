@@ -51,7 +51,7 @@ public class Simple extends AbstractLogFormatter {
         Event e = new SimpleEvent();
         e.setProgramName(mProgram);
         e.setEvent(name, entityName, entityID);
-        mStack.addElement(e);
+        getStack().addElement(e);
         return;
     }
 
@@ -65,7 +65,7 @@ public class Simple extends AbstractLogFormatter {
         Event e = new NetloggerEvent();
         e.setProgramName(mProgram);
         e.setEvent(name, map);
-        mStack.addElement(e);
+        getStack().addElement(e);
         return;
     }
 }
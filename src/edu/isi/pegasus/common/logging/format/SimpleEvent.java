@@ -77,6 +77,8 @@ public class SimpleEvent implements Event {
      * @param entityID the id of that entity.
      */
     public void setEvent(String name, String entityName, String entityID) {
+        // the start message may not be created if the start is not logged
+        mStart = new Date().getTime();
         mEventBuffer = new StringBuffer();
         mEventBuffer
                 .append(name)
@@ -94,6 +96,7 @@ public class SimpleEvent implements Event {
      * @param map Map of Entity Names with the entity identifiers.
      */
     public void setEvent(String name, Map<String, String> map) {
+        mStart = new Date().getTime();
         mEventBuffer = new StringBuffer();
         mEventBuffer.append(name).append(" ");
 
@@ -187,7 +190,7 @@ public class SimpleEvent implements Event {
      */
     public String createLogMessageAndReset() {
         String result = this.createLogMessage();
-        mLogBuffer = new StringBuffer();
+        mLogBuffer.setLength(0);
         return result;
     }
 
@@ -218,4 +221,23 @@ public class SimpleEvent implements Event {
         result.append(">");
         return result.toString();
     }
+
+    /**
+     * Returns a copy of the event, with its own event and log message buffers.
+     *
+     * @return clone of the event.
+     */
+    public Object clone() {
+        SimpleEvent e;
+        try {
+            e = (SimpleEvent) super.clone();
+        } catch (CloneNotSupportedException ex) {
+            // somewhere in the hierarch chain clone is not implemented
+            throw new RuntimeException(
+                    "Clone not implemented in the base class of " + this.getClass().getName(), ex);
+        }
+        e.mEventBuffer = new StringBuffer(mEventBuffer);
+        e.mLogBuffer = new StringBuffer(mLogBuffer);
+        return e;
+    }
 }
@@ -174,6 +174,16 @@ public class Default extends LogManager {
         return mDebugLevel;
     }
 
+    /**
+     * Returns a boolean indicating whether a message at a particular level will be logged.
+     *
+     * @param level the level of the message.
+     * @return true if the message will be logged, else false
+     */
+    public boolean isLoggable(int level) {
+        return level >= 0 && level < Integer.SIZE && ((1 << level) & mMask) != 0x0;
+    }
+
     /**
      * Sets both the output writer and the error writer to the same underlying writer identified by
      * the filename passed.
@@ -324,6 +334,9 @@ public class Default extends LogManager {
      * @see #log(String,int)
      */
     public void log(String message, Exception e, int level) {
+        if (!this.isLoggable(level)) {
+            return;
+        }
         StringBuffer msg = new StringBuffer();
         msg.append(message).append(" ").append(e.getClass()).append(": ").append(e.getMessage());
         log(msg.toString(), level);
@@ -353,8 +366,8 @@ public class Default extends LogManager {
      * @see #setLevel(int)
      */
     private void log(String message, int level, boolean comp) {
-        int type = (int) Math.pow(2, level);
-        if ((type & mMask) != 0x0) {
+        if (this.isLoggable(level)) {
+            int type = 1 << level;
             // we need to log the message
             // get hold of the writer to be used to logging the message.
             PrintStream writer = getPrintStream(level);
@@ -409,11 +422,12 @@ public class Default extends LogManager {
      * @param level the debug level of the start message for whose completion you want.
      */
     public void logEventCompletion(int level) {
-        String message = mLogFormatter.getEndEventMessage();
+        // the end message is only created if it is to be logged
+        String message = this.isLoggable(level) ? mLogFormatter.getEndEventMessage() : null;
         mLogFormatter.popEvent();
 
-        int type = (int) Math.pow(2, level);
-        if ((type & mMask) != 0x0) {
+        if (message != null) {
+            int type = 1 << level;
             PrintStream writer = getPrintStream(level);
             /*uncomment if we want commpetion message for INFO
               on same line
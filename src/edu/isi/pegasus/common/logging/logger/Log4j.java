@@ -225,6 +225,39 @@ public class Log4j extends LogManager {
         return mDebugLevel;
     }
 
+    /**
+     * Returns a boolean indicating whether a message at a particular level will be logged.
+     *
+     * @param level the level of the message.
+     * @return true if the message will be logged, else false
+     */
+    public boolean isLoggable(int level) {
+        switch (level) {
+            case LogManager.FATAL_MESSAGE_LEVEL:
+                return mLogger.isFatalEnabled();
+
+            case LogManager.ERROR_MESSAGE_LEVEL:
+                return mLogger.isErrorEnabled();
+
+            case LogManager.WARNING_MESSAGE_LEVEL:
+                return mLogger.isWarnEnabled();
+
+            case LogManager.CONFIG_MESSAGE_LEVEL:
+            case LogManager.INFO_MESSAGE_LEVEL:
+                return mLogger.isInfoEnabled();
+
+            case LogManager.DEBUG_MESSAGE_LEVEL:
+                return mLogger.isDebugEnabled();
+
+            case LogManager.TRACE_MESSAGE_LEVEL:
+                return mLogger.isTraceEnabled();
+
+            default:
+                // messages at other levels are not logged
+                return false;
+        }
+    }
+
     /**
      * Sets both the output writer and the error writer to the same underlying writer.
      *
@@ -351,8 +384,10 @@ public class Log4j extends LogManager {
      * @param level the debug level of the start message for whose completion you want.
      */
     public void logEventCompletion(int level) {
-        String message = mLogFormatter.getEndEventMessage();
-        logAlreadyFormattedMessage(message, level);
+        if (this.isLoggable(level)) {
+            String message = mLogFormatter.getEndEventMessage();
+            logAlreadyFormattedMessage(message, level);
+        }
         mLogFormatter.popEvent();
     }
 
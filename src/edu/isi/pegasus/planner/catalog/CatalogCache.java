@@ -0,0 +1,149 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A JVM wide cache of the contents of file based catalogs after they have been parsed, for planners
+ * that plan many workflows in the same JVM. An entry is indexed by the canonical path of the
+ * catalog file and a key that captures the options the file was parsed with, and is invalidated
+ * when the last modified time or the length of the file changes.
+ *
+ * <p>The cache is disabled by default, in which case lookups always miss and nothing is stored. The
+ * cache does not copy the objects. Callers store a copy of what they parsed, and copy what they
+ * look up before modifying it.
+ *
+ * @version $Revision$
+ */
+public class CatalogCache {
+
+    /** Whether the cache is enabled. */
+    private static boolean mEnabled = false;
+
+    /** The cached contents indexed by the path of the file and the key. */
+    private static final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+
+    /** The number of lookups that were served from the cache. */
+    private static long mHits = 0;
+
+    /** The number of lookups that missed the cache. */
+    private static long mMisses = 0;
+
+    /**
+     * Enables or disables the cache. Disabling the cache clears it.
+     *
+     * @param enable boolean
+     */
+    public static synchronized void setEnabled(boolean enable) {
+        mEnabled = enable;
+        if (!enable) {
+            mEntries.clear();
+        }
+    }
+
+    /**
+     * Returns whether the cache is enabled.
+     *
+     * @return boolean
+     */
+    public static synchronized boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Returns the cached contents of a catalog file, if the file has not changed since they were
+     * stored.
+     *
+     * @param file the catalog file.
+     * @param key the key capturing the implementation and options the file was parsed with.
+     * @return the cached contents, else null.
+     */
+    public static synchronized Object lookup(File file, String key) {
+        if (!mEnabled || file == null) {
+            return null;
+        }
+        String id = id(file, key);
+        Entry entry = mEntries.get(id);
+        if (entry != null
+                && entry.mLastModified == file.lastModified()
+                && entry.mLength == file.length()) {
+            mHits++;
+            return entry.mValue;
+        }
+        mMisses++;
+        if (entry != null) {
+            // the file changed on disk
+            mEntries.remove(id);
+        }
+        return null;
+    }
+
+    /**
+     * Stores the parsed contents of a catalog file.
+     *
+     * @param file the catalog file.
+     * @param key the key capturing the implementation and options the file was parsed with.
+     * @param value the contents. Should not be modified afterwards.
+     */
+    public static synchronized void store(File file, String key, Object value) {
+        if (!mEnabled || file == null || value == null) {
+            return;
+        }
+        Entry entry = new Entry();
+        entry.mLastModified = file.lastModified();
+        entry.mLength = file.length();
+        entry.mValue = value;
+        mEntries.put(id(file, key), entry);
+    }
+
+    /**
+     * Returns a description of the cache usage, to be logged.
+     *
+     * @return String
+     */
+    public static synchronized String getStatistics() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("catalog cache entries ")
+                .append(mEntries.size())
+                .append(" hits ")
+                .append(mHits)
+                .append(" misses ")
+                .append(mMisses);
+        return sb.toString();
+    }
+
+    private static String id(File file, String key) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        return path + "#" + key;
+    }
+
+    /** A cached catalog, and the state of the file it was parsed from. */
+    private static class Entry {
+
+        private long mLastModified;
+
+        private long mLength;
+
+        private Object mValue;
+    }
+}
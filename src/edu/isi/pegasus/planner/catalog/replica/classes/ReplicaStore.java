@@ -25,19 +25,25 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogException;
 import edu.isi.pegasus.planner.classes.Data;
+import edu.isi.pegasus.planner.classes.LFNSymbolTable;
 import edu.isi.pegasus.planner.classes.ReplicaLocation;
 import edu.isi.pegasus.planner.common.PegasusJsonSerializer;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * A Replica Store that allows us to store the entries from a replica catalog. The store map is
- * indexed by LFN's and values stored are ReplicaLocation objects.
+ * indexed by LFN's and values stored are ReplicaLocation objects. Once the store is indexed by the
+ * symbol table of a workflow, the entries for the LFN's of the workflow are kept in an array
+ * indexed by the ids of the LFN's instead.
  *
  * @author Karan Vahi
  * @author Gaurang Mehta
@@ -50,6 +56,15 @@ public class ReplicaStore extends Data implements Cloneable {
     /** The replica store. */
     private Map<String, ReplicaLocation> mStore;
 
+    /** The symbol table the store is indexed by, or null if the store is not indexed. */
+    private LFNSymbolTable mSymbols;
+
+    /** The entries for the LFN's in the symbol table, indexed by the ids of the LFN's. */
+    private ReplicaLocation[] mIndexed;
+
+    /** The number of entries in the indexed array. */
+    private int mIndexedCount;
+
     /** The version for the Replica Catalog */
     private String mVersion;
 
@@ -201,13 +216,38 @@ public class ReplicaStore extends Data implements Cloneable {
         return get(lfn);
     }
 
+    /**
+     * Returns a <code>ReplicaLocation</code> corresponding to the LFN with an id in the symbol
+     * table the store is indexed by.
+     *
+     * @param symbols the symbol table the id is from.
+     * @param id the id of the LFN.
+     * @return <code>ReplicaLocation</code> if entry exists else null.
+     */
+    public ReplicaLocation getReplicaLocation(LFNSymbolTable symbols, int id) {
+        if (symbols == mSymbols && id >= 0 && id < mIndexed.length) {
+            return mIndexed[id];
+        }
+        return get(symbols.getLFN(id));
+    }
+
     /**
      * Returns an iterator to the list of <code>ReplicaLocation</code> objects stored in the store.
      *
      * @return Iterator.
      */
     public Iterator replicaLocationIterator() {
-        return this.mStore.values().iterator();
+        if (mSymbols == null) {
+            return this.mStore.values().iterator();
+        }
+        List<ReplicaLocation> locations = new ArrayList(this.getLFNCount());
+        locations.addAll(mStore.values());
+        for (ReplicaLocation rl : mIndexed) {
+            if (rl != null) {
+                locations.add(rl);
+            }
+        }
+        return locations.iterator();
     }
 
     /**
@@ -216,7 +256,42 @@ public class ReplicaStore extends Data implements Cloneable {
      * @return Set
      */
     public Set getLFNs() {
-        return this.mStore.keySet();
+        if (mSymbols == null) {
+            return this.mStore.keySet();
+        }
+        Set s = new HashSet(mStore.keySet());
+        for (ReplicaLocation rl : mIndexed) {
+            if (rl != null) {
+                s.add(rl.getLFN());
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Returns the ids of the LFN's in a symbol table for which the mappings are stored in the
+     * store.
+     *
+     * @param symbols the symbol table.
+     * @return the ids.
+     */
+    public BitSet getLFNIDs(LFNSymbolTable symbols) {
+        BitSet ids = new BitSet(symbols.size());
+        if (symbols == mSymbols) {
+            for (int id = 0; id < mIndexed.length; id++) {
+                if (mIndexed[id] != null) {
+                    ids.set(id);
+                }
+            }
+        }
+        // lfns not in the symbol table the store is indexed by
+        for (String lfn : mStore.keySet()) {
+            int id = symbols.getID(lfn);
+            if (id >= 0) {
+                ids.set(id);
+            }
+        }
+        return ids;
     }
 
     /**
@@ -238,6 +313,35 @@ public class ReplicaStore extends Data implements Cloneable {
         return s;
     }
 
+    /**
+     * Indexes the store by the symbol table of a workflow. The entries for the LFN's in the table
+     * are moved to an array indexed by the ids of the LFN's, and refer to the canonical instances
+     * of the LFN's, so that the store does not hold its own copies of the LFN's of the workflow.
+     * The entries for LFN's added to the table afterwards are kept by LFN.
+     *
+     * @param symbols the symbol table for the LFN's of the workflow.
+     */
+    public void index(LFNSymbolTable symbols) {
+        Map<String, ReplicaLocation> store = new HashMap();
+        ReplicaLocation[] indexed = new ReplicaLocation[symbols.size()];
+        int count = 0;
+        for (Iterator it = this.replicaLocationIterator(); it.hasNext(); ) {
+            ReplicaLocation rl = (ReplicaLocation) it.next();
+            int id = symbols.getID(rl.getLFN());
+            if (id == -1) {
+                store.put(rl.getLFN(), rl);
+            } else {
+                rl.setLFN(symbols.getLFN(id));
+                indexed[id] = rl;
+                count++;
+            }
+        }
+        mStore = store;
+        mSymbols = symbols;
+        mIndexed = indexed;
+        mIndexedCount = count;
+    }
+
     /**
      * Returns a boolean indicating whether a store is empty or not.
      *
@@ -253,7 +357,7 @@ public class ReplicaStore extends Data implements Cloneable {
      * @return int
      */
     public int getLFNCount() {
-        return this.mStore.size();
+        return this.mStore.size() + mIndexedCount;
     }
 
     /**
@@ -290,7 +394,7 @@ public class ReplicaStore extends Data implements Cloneable {
      * @return boolean
      */
     public boolean containsLFN(String lfn) {
-        return mStore.containsKey(lfn);
+        return this.get(lfn) != null;
     }
 
     /**
@@ -301,7 +405,16 @@ public class ReplicaStore extends Data implements Cloneable {
      * @return Object
      */
     protected Object put(String key, ReplicaLocation value) {
-        return mStore.put(key, value);
+        int id = this.indexOf(key);
+        if (id == -1) {
+            return mStore.put(key, value);
+        }
+        ReplicaLocation result = mIndexed[id];
+        if (result == null) {
+            mIndexedCount++;
+        }
+        mIndexed[id] = value;
+        return result;
     }
 
     /**
@@ -311,8 +424,22 @@ public class ReplicaStore extends Data implements Cloneable {
      * @return <code>ReplicaLocation</code> object if exists, else null.
      */
     protected ReplicaLocation get(String key) {
-        Object result = mStore.get(key);
-        return (result == null) ? null : (ReplicaLocation) result;
+        int id = this.indexOf(key);
+        return (id == -1) ? mStore.get(key) : mIndexed[id];
+    }
+
+    /**
+     * Returns the index of an LFN in the indexed array.
+     *
+     * @param lfn the LFN
+     * @return the index, or -1 if the entry for the LFN is kept by LFN.
+     */
+    private int indexOf(String lfn) {
+        if (mSymbols == null) {
+            return -1;
+        }
+        int id = mSymbols.getID(lfn);
+        return (id < mIndexed.length) ? id : -1;
     }
 
     /**
@@ -341,8 +468,8 @@ public class ReplicaStore extends Data implements Cloneable {
 
             gen.writeArrayFieldStart(ReplicaCatalogKeywords.REPLICAS.getReservedName());
 
-            for (Map.Entry<String, ReplicaLocation> entry : store.mStore.entrySet()) {
-                gen.writeObject(entry.getValue());
+            for (Iterator it = store.replicaLocationIterator(); it.hasNext(); ) {
+                gen.writeObject(it.next());
             }
 
             gen.writeEndArray();
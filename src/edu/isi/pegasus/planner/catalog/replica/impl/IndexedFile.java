@@ -0,0 +1,720 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.common.util.Boolean;
+import edu.isi.pegasus.common.util.VariableExpander;
+import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A replica catalog on top of the same text format as the File replica catalog, that does its
+ * lookups through a binary index next to the text file instead of loading the file into memory.
+ *
+ * <p>The first time the catalog is connected to, the text file is parsed once and a binary index is
+ * written to the file with the suffix .idx next to it. The index contains the entries in file
+ * order, followed by a table of (LFN hash, offset) pairs sorted by the hash. Later connections map
+ * the index into memory, and each lookup does a binary search over the table. The index records the
+ * modification time and the length of the text file, and is rebuilt when either changes. If
+ * variable expansion changed any line of the file, the index is rebuilt on every connect, as the
+ * values of the variables may have changed.
+ *
+ * <p>To connect to this implementation, in Pegasus Properties set
+ *
+ * <pre>
+ *      pegasus.catalog.replica  IndexedFile
+ *      pegasus.catalog.replica.file  path to the text file
+ * </pre>
+ *
+ * The location of the index can be changed by specifying the property
+ *
+ * <pre>
+ *      pegasus.catalog.replica.index
+ * </pre>
+ *
+ * Operations that modify the catalog, or list its contents, load the text file into memory and then
+ * behave exactly as the File replica catalog. The text file is only written back on close if it was
+ * modified.
+ *
+ * @version $Revision$
+ */
+public class IndexedFile extends SimpleFile {
+
+    /** The name of the key that specifies the path to the index file. */
+    public static final String INDEX_KEY = "index";
+
+    /** The suffix added to the text file to get the default path to the index. */
+    public static final String INDEX_SUFFIX = ".idx";
+
+    /**
+     * The default size of the regions in which the index is mapped into memory. Entries never
+     * straddle two regions.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    /** The magic number at the start of the index, the ASCII string PEGRCIDX. */
+    private static final long MAGIC = 0x5045475243494458L;
+
+    /** The version of the index format. */
+    private static final int VERSION = 1;
+
+    /** The size of the header at the start of the index. */
+    private static final int HEADER_SIZE = 64;
+
+    /** The size of an entry in the table, an int hash, padding and a long offset. */
+    private static final int TABLE_ENTRY_SIZE = 16;
+
+    /** The byte that starts each entry in the index. Padding is made up of zero bytes. */
+    private static final byte ENTRY_MARKER = 1;
+
+    /** The flag set in the header if variable expansion changed the contents of the file. */
+    private static final int FLAG_EXPANDED = 1;
+
+    /** The handle to the logger. */
+    protected LogManager mLogger;
+
+    /** The path to the index as specified in the properties. */
+    private String mIndexPath;
+
+    /** The index file for the catalog connected to. */
+    private File mIndexFile;
+
+    /** The index mapped into memory, null if the catalog is loaded into memory. */
+    private MappedByteBuffer[] mSegments;
+
+    /** The size of the segments in the index mapped. */
+    private int mSegmentSize;
+
+    /** The offset of the table in the index. */
+    private long mTableOffset;
+
+    /** The number of entries in the index. */
+    private long mEntries;
+
+    /** The segment size to use when writing an index. */
+    int mWriteSegmentSize;
+
+    /** Handle to pegasus variable expander */
+    private VariableExpander mVariableExpander;
+
+    /** whether to do any variable expansion or not */
+    private boolean mDoVariableExpansion;
+
+    /** The writer to pass the parsed entries to, while building the index. */
+    private IndexWriter mWriter;
+
+    /** Whether the catalog was modified after it was loaded into memory. */
+    private boolean mModified;
+
+    /** The default constructor. */
+    public IndexedFile() {
+        super();
+        mLogger = LogManagerFactory.loadSingletonInstance();
+        mVariableExpander = new VariableExpander();
+        mDoVariableExpansion = true;
+        mWriteSegmentSize = DEFAULT_SEGMENT_SIZE;
+    }
+
+    /**
+     * Establishes a connection to the catalog from the properties. In addition to the properties of
+     * the File replica catalog, the "index" property specifies the path to the index.
+     *
+     * @param props is the property table with sufficient settings to establish a link with the
+     *     catalog.
+     * @return true if connected, false if failed to connect.
+     */
+    public boolean connect(Properties props) {
+        mDoVariableExpansion =
+                Boolean.parse(props.getProperty(ReplicaCatalog.VARIABLE_EXPANSION_KEY), true);
+        mIndexPath = props.getProperty(IndexedFile.INDEX_KEY);
+        return super.connect(props);
+    }
+
+    /**
+     * Maps the index for the text file into memory, building the index first if it does not exist
+     * or is out of date. If the index cannot be written, the text file is loaded into memory
+     * instead.
+     *
+     * @param filename is the name of the text file.
+     * @return true, if the catalog could be connected to.
+     */
+    public boolean connect(String filename) {
+        if (filename == null) {
+            return false;
+        }
+        File source = new File(filename);
+        if (!source.exists() || m_journal != null) {
+            // nothing to index, or the changes in the journal
+            // need to be replayed on top of the file
+            return super.connect(filename);
+        }
+        m_filename = filename;
+        m_lfn = null;
+        mModified = false;
+        mIndexFile =
+                (mIndexPath == null) ? new File(filename + INDEX_SUFFIX) : new File(mIndexPath);
+        try {
+            if (!this.open(source, false)) {
+                this.build(source);
+                if (!this.open(source, true)) {
+                    throw new IOException("Index is not valid after being rebuilt");
+                }
+            }
+        } catch (IOException ioe) {
+            mLogger.log(
+                    "Unable to use index "
+                            + mIndexFile
+                            + " for replica catalog "
+                            + filename
+                            + " , loading the catalog in memory instead. "
+                            + ioe.getMessage(),
+                    LogManager.WARNING_MESSAGE_LEVEL);
+            mSegments = null;
+            return super.connect(filename);
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the catalog is closed.
+     *
+     * @return true, if the implementation is disassociated, false otherwise.
+     */
+    public boolean isClosed() {
+        return m_lfn == null && mSegments == null;
+    }
+
+    /**
+     * Releases the index. If the catalog was loaded into memory and modified, it is written back to
+     * the text file, which triggers a rebuild of the index on the next connect.
+     */
+    public void close() {
+        mSegments = null;
+        if (m_lfn != null && !mModified) {
+            // nothing to write back
+            m_readonly = true;
+        }
+        super.close();
+        m_filename = null;
+    }
+
+    /**
+     * Returns the entries stored for an LFN, from the index if the catalog is not loaded into
+     * memory. An entry with the same PFN and handle as an earlier one replaces it, the same way as
+     * an insert while loading the text file does.
+     *
+     * @param lfn is the logical filename to obtain the entries for.
+     * @return the collection of replica catalog entries, or <code>null</code> if the LFN is not in
+     *     the catalog.
+     */
+    protected Collection<ReplicaCatalogEntry> entries(String lfn) {
+        MappedByteBuffer[] segments = mSegments;
+        if (m_lfn != null || segments == null) {
+            return super.entries(lfn);
+        }
+        byte[] key = lfn.getBytes(StandardCharsets.UTF_8);
+        int hash = lfn.hashCode();
+
+        // find the first table entry with the hash
+        long low = 0;
+        long high = mEntries;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (this.getInt(segments, mTableOffset + mid * TABLE_ENTRY_SIZE) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        List<ReplicaCatalogEntry> result = null;
+        for (long i = low; i < mEntries; i++) {
+            long position = mTableOffset + i * TABLE_ENTRY_SIZE;
+            if (this.getInt(segments, position) != hash) {
+                break;
+            }
+            ReplicaCatalogEntry rce =
+                    this.read(segments, this.getLong(segments, position + 8), key);
+            if (rce == null) {
+                // hash collision with another LFN
+                continue;
+            }
+            if (result == null) {
+                result = new ArrayList<ReplicaCatalogEntry>();
+            }
+            String pfn = rce.getPFN();
+            String handle = rce.getResourceHandle();
+            for (Iterator<ReplicaCatalogEntry> it = result.iterator(); it.hasNext(); ) {
+                ReplicaCatalogEntry existing = it.next();
+                if (pfn.equals(existing.getPFN())
+                        && ((handle == null && existing.getResourceHandle() == null)
+                                || (handle != null
+                                        && handle.equals(existing.getResourceHandle())))) {
+                    it.remove();
+                    break;
+                }
+            }
+            result.add(rce);
+        }
+        return result;
+    }
+
+    /**
+     * Inserts a new mapping into the replica catalog, loading the catalog into memory first. While
+     * the index is being built, the entries parsed from the text file are passed to the index
+     * instead.
+     *
+     * @param lfn is the logical filename under which to book the entry.
+     * @param tuple is the physical filename and associated PFN attributes.
+     * @return number of insertions, should always be 1.
+     */
+    public int insert(String lfn, ReplicaCatalogEntry tuple) {
+        if (mWriter != null) {
+            if (lfn == null || tuple == null) throw new NullPointerException();
+            try {
+                mWriter.add(lfn, tuple);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            return 1;
+        }
+        this.load();
+        mModified = true;
+        return super.insert(lfn, tuple);
+    }
+
+    public int delete(String lfn, String pfn) {
+        this.load();
+        mModified = true;
+        return super.delete(lfn, pfn);
+    }
+
+    public int delete(Map<String, Collection<ReplicaCatalogEntry>> x, boolean matchAttributes) {
+        this.load();
+        mModified = true;
+        return super.delete(x, matchAttributes);
+    }
+
+    public int delete(String lfn, ReplicaCatalogEntry tuple) {
+        this.load();
+        mModified = true;
+        return super.delete(lfn, tuple);
+    }
+
+    public int delete(String lfn, String name, Object value) {
+        this.load();
+        mModified = true;
+        return super.delete(lfn, name, value);
+    }
+
+    public int remove(String lfn) {
+        this.load();
+        mModified = true;
+        return super.remove(lfn);
+    }
+
+    public int removeByAttribute(String name, Object value) {
+        this.load();
+        mModified = true;
+        return super.removeByAttribute(name, value);
+    }
+
+    public int clear() {
+        this.load();
+        mModified = true;
+        return super.clear();
+    }
+
+    public Map lookup(Map constraints) {
+        this.load();
+        return super.lookup(constraints);
+    }
+
+    public Set list() {
+        this.load();
+        return super.list();
+    }
+
+    public Set list(String constraint) {
+        this.load();
+        return super.list(constraint);
+    }
+
+    /**
+     * Returns whether the catalog is served from the index mapped into memory.
+     *
+     * @return boolean
+     */
+    public boolean isIndexed() {
+        return m_lfn == null && mSegments != null;
+    }
+
+    /**
+     * Loads the text file into memory, if not already done, for the operations that are not
+     * supported by the index.
+     */
+    protected void load() {
+        if (m_lfn == null && m_filename != null) {
+            mSegments = null;
+            super.connect(m_filename);
+            mModified = false;
+        }
+    }
+
+    /**
+     * Maps the index into memory, if it is valid for the text file.
+     *
+     * @param source the text file
+     * @param fresh whether the index was just built, and is valid even if variables were expanded
+     * @return true if the index was mapped, false if it needs to be rebuilt
+     * @throws IOException in case of error while reading the index
+     */
+    private boolean open(File source, boolean fresh) throws IOException {
+        if (!mIndexFile.exists()) {
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(mIndexFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getLong(0) != MAGIC
+                    || header.getInt(8) != VERSION
+                    || header.getLong(16) != source.lastModified()
+                    || header.getLong(24) != source.length()
+                    || ((header.getInt(12) & FLAG_EXPANDED) != 0 && !fresh)) {
+                mLogger.log(
+                        "Index " + mIndexFile + " is out of date for " + source,
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+                return false;
+            }
+            long tableOffset = header.getLong(32);
+            long entries = header.getLong(40);
+            int segmentSize = header.getInt(56);
+            if (segmentSize <= 0 || tableOffset + entries * TABLE_ENTRY_SIZE != size) {
+                return false;
+            }
+
+            MappedByteBuffer[] segments =
+                    new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i * segmentSize;
+                segments[i] =
+                        channel.map(
+                                FileChannel.MapMode.READ_ONLY,
+                                start,
+                                Math.min(segmentSize, size - start));
+            }
+            mTableOffset = tableOffset;
+            mEntries = entries;
+            mSegmentSize = segmentSize;
+            mSegments = segments;
+            return true;
+        } finally {
+            // the mappings stay valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Parses the text file and writes out the index. The index is written to a temporary file
+     * first, and moved in place once complete.
+     *
+     * @param source the text file
+     * @throws IOException in case of error while reading the text file or writing the index
+     */
+    private void build(File source) throws IOException {
+        long start = System.currentTimeMillis();
+        // record the state of the file before reading it
+        long lastModified = source.lastModified();
+        long length = source.length();
+        File dir = mIndexFile.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(mIndexFile.getName(), ".tmp", dir);
+        boolean expanded = false;
+        try {
+            mWriter = new IndexWriter(temp, mWriteSegmentSize);
+            LineNumberReader lnr = new LineNumberReader(new FileReader(source));
+            try {
+                String line;
+                while ((line = lnr.readLine()) != null) {
+                    if (line.length() == 0 || line.charAt(0) == '#') {
+                        continue;
+                    }
+                    String expandedLine;
+                    try {
+                        expandedLine =
+                                this.mDoVariableExpansion ? mVariableExpander.expand(line) : line;
+                    } catch (RuntimeException e) {
+                        // rethrow again
+                        throw new RuntimeException(
+                                "Error while expanding contents of file based rc at line number "
+                                        + lnr.getLineNumber(),
+                                e);
+                    }
+                    expanded = expanded || !expandedLine.equals(line);
+                    parse(expandedLine, lnr.getLineNumber());
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                lnr.close();
+            }
+            mWriter.finish(lastModified, length, expanded ? FLAG_EXPANDED : 0);
+            try {
+                Files.move(
+                        temp.toPath(),
+                        mIndexFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), mIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            mLogger.log(
+                    "Built index "
+                            + mIndexFile
+                            + " with "
+                            + mWriter.getCount()
+                            + " entries in "
+                            + (System.currentTimeMillis() - start)
+                            + " ms",
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+        } finally {
+            if (mWriter != null) {
+                mWriter.close();
+                mWriter = null;
+            }
+            temp.delete();
+        }
+    }
+
+    /**
+     * Reads an entry from the index, if it is for the LFN.
+     *
+     * @param segments the index mapped into memory
+     * @param offset the offset of the entry in the index
+     * @param key the LFN encoded as UTF-8
+     * @return the entry, or null if the entry is for a different LFN
+     */
+    private ReplicaCatalogEntry read(MappedByteBuffer[] segments, long offset, byte[] key) {
+        ByteBuffer buffer = segments[(int) (offset / mSegmentSize)].duplicate();
+        buffer.position((int) (offset % mSegmentSize));
+        if (buffer.get() != ENTRY_MARKER) {
+            throw new RuntimeException("Corrupt index " + mIndexFile + " at offset " + offset);
+        }
+        int length = buffer.getInt();
+        if (length != key.length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get() != key[i]) {
+                return null;
+            }
+        }
+        String pfn = readString(buffer);
+        Map<String, String> attributes = new TreeMap<String, String>();
+        for (int i = buffer.getInt(); i > 0; i--) {
+            String name = readString(buffer);
+            attributes.put(name, readString(buffer));
+        }
+        return new ReplicaCatalogEntry(pfn, attributes);
+    }
+
+    private int getInt(MappedByteBuffer[] segments, long position) {
+        return segments[(int) (position / mSegmentSize)].getInt((int) (position % mSegmentSize));
+    }
+
+    private long getLong(MappedByteBuffer[] segments, long position) {
+        return segments[(int) (position / mSegmentSize)].getLong((int) (position % mSegmentSize));
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes out the index. The entries are streamed to the file in the order they are parsed, and
+     * only the hash and offset of each entry are kept in memory to build the table at the end.
+     */
+    private static class IndexWriter {
+
+        /** The stream to the index file. */
+        private final DataOutputStream mOut;
+
+        /** The file being written. */
+        private final File mFile;
+
+        /** The size of the segments that entries may not straddle. */
+        private final int mSegmentSize;
+
+        /** The current position in the file. */
+        private long mPosition;
+
+        /** The hash of each entry in the upper, and the entry number in the lower 32 bits. */
+        private long[] mKeys;
+
+        /** The offset of each entry. */
+        private long[] mOffsets;
+
+        /** The number of entries. */
+        private int mCount;
+
+        /** The buffer the current entry is serialized into. */
+        private final ByteArrayOutputStream mEntry;
+
+        private final DataOutputStream mEntryOut;
+
+        private IndexWriter(File file, int segmentSize) throws IOException {
+            if (segmentSize % TABLE_ENTRY_SIZE != 0 || segmentSize < HEADER_SIZE) {
+                throw new IOException("Invalid segment size " + segmentSize);
+            }
+            mFile = file;
+            mSegmentSize = segmentSize;
+            mOut =
+                    new DataOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(file), 65536));
+            mKeys = new long[1024];
+            mOffsets = new long[1024];
+            mEntry = new ByteArrayOutputStream();
+            mEntryOut = new DataOutputStream(mEntry);
+            // placeholder for the header written at the end
+            mOut.write(new byte[HEADER_SIZE]);
+            mPosition = HEADER_SIZE;
+        }
+
+        private void add(String lfn, ReplicaCatalogEntry rce) throws IOException {
+            mEntry.reset();
+            mEntryOut.writeByte(ENTRY_MARKER);
+            writeString(mEntryOut, lfn);
+            writeString(mEntryOut, rce.getPFN());
+            mEntryOut.writeInt(rce.getAttributeCount());
+            for (Iterator it = rce.getAttributeIterator(); it.hasNext(); ) {
+                String name = (String) it.next();
+                writeString(mEntryOut, name);
+                writeString(mEntryOut, String.valueOf(rce.getAttribute(name)));
+            }
+            int size = mEntry.size();
+            if (size > mSegmentSize) {
+                throw new IOException("Entry for LFN " + lfn + " is too large for the index");
+            }
+            if (mPosition / mSegmentSize != (mPosition + size - 1) / mSegmentSize) {
+                this.pad(mSegmentSize - (int) (mPosition % mSegmentSize));
+            }
+            if (mCount == Integer.MAX_VALUE) {
+                throw new IOException("Too many entries for the index");
+            }
+            if (mCount == mKeys.length) {
+                int capacity = (int) Math.min(Integer.MAX_VALUE, mCount * 2L);
+                mKeys = Arrays.copyOf(mKeys, capacity);
+                mOffsets = Arrays.copyOf(mOffsets, capacity);
+            }
+            mKeys[mCount] = ((long) lfn.hashCode() << 32) | mCount;
+            mOffsets[mCount] = mPosition;
+            mCount++;
+            mEntry.writeTo(mOut);
+            mPosition += size;
+        }
+
+        /**
+         * Writes out the table and the header.
+         *
+         * @param lastModified the modification time of the text file
+         * @param length the length of the text file
+         * @param flags the flags for the header
+         */
+        private void finish(long lastModified, long length, int flags) throws IOException {
+            long dataEnd = mPosition;
+            this.pad((int) ((TABLE_ENTRY_SIZE - mPosition % TABLE_ENTRY_SIZE) % TABLE_ENTRY_SIZE));
+            long tableOffset = mPosition;
+
+            // sorts by hash, and then by the position in the file
+            Arrays.sort(mKeys, 0, mCount);
+            for (int i = 0; i < mCount; i++) {
+                mOut.writeInt((int) (mKeys[i] >>> 32));
+                mOut.writeInt(0);
+                mOut.writeLong(mOffsets[(int) mKeys[i]]);
+            }
+            mOut.close();
+
+            RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+            try {
+                raf.writeLong(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(flags);
+                raf.writeLong(lastModified);
+                raf.writeLong(length);
+                raf.writeLong(tableOffset);
+                raf.writeLong(mCount);
+                raf.writeLong(dataEnd);
+                raf.writeInt(mSegmentSize);
+            } finally {
+                raf.close();
+            }
+        }
+
+        private int getCount() {
+            return mCount;
+        }
+
+        private void close() throws IOException {
+            mOut.close();
+        }
+
+        private void pad(int bytes) throws IOException {
+            for (int i = 0; i < bytes; i++) {
+                mOut.writeByte(0);
+            }
+            mPosition += bytes;
+        }
+
+        private static void writeString(DataOutputStream out, String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -169,6 +169,18 @@ public class JDBCRC implements ReplicaCatalog {
     /** Remembers if obtaining generated keys will work or not. */
     private boolean m_autoinc = false;
 
+    /** The key in the connection properties for the number of LFNs looked up per query. */
+    public static final String BATCH_SIZE_KEY = "db.batch.size";
+
+    /**
+     * The default number of LFNs bound into the IN-list of a single bulk lookup query. Kept below
+     * the default limit of 999 host parameters for SQLite.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** The number of LFNs bound into the IN-list of a single bulk lookup query. */
+    protected int mBatchSize = DEFAULT_BATCH_SIZE;
+
     /**
      * Convenience c'tor: Establishes the connection to the replica catalog database. The usual
      * suspects for the class name include:
@@ -308,6 +320,17 @@ public class JDBCRC implements ReplicaCatalog {
             return result;
         }
 
+        String batchSize = (String) localProps.remove("batch.size");
+        if (batchSize != null) {
+            try {
+                mBatchSize = Math.max(1, Integer.parseInt(batchSize.trim()));
+            } catch (NumberFormatException e) {
+                mLogger.log(
+                        "Invalid value specified for " + BATCH_SIZE_KEY + " " + batchSize,
+                        LogManager.WARNING_MESSAGE_LEVEL);
+            }
+        }
+
         try {
             if (driver != null) {
                 // only support mysql, sqlite and postgres for time being
@@ -601,35 +624,7 @@ public class JDBCRC implements ReplicaCatalog {
      * @see org.griphyn.common.catalog.ReplicaCatalogEntry
      */
     public Map lookup(Set lfns) {
-        Map result = new HashMap();
-        String query = mCStatements[1];
-
-        // sanity check
-        if (lfns == null || lfns.size() == 0) return result;
-        if (mConnection == null) throw new RuntimeException(c_error);
-
-        try {
-            ResultSet rs = null;
-            PreparedStatement ps = getStatement(1);
-            for (Iterator i = lfns.iterator(); i.hasNext(); ) {
-                List value = new ArrayList();
-                String lfn = (String) i.next();
-                ps.setString(1, quote(lfn));
-                rs = ps.executeQuery();
-                while (rs.next()) {
-                    value.add(
-                            new ReplicaCatalogEntry(
-                                    rs.getString("pfn"),
-                                    attributes(rs.getString("lfn_id"), rs.getString("site"))));
-                }
-                rs.close();
-                result.put(lfn, value);
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(
-                    "Unable to query database with " + query + ": " + e.getMessage());
-        }
-        return result;
+        return this.bulkLookup(lfns, null, true);
     }
 
     /**
@@ -641,32 +636,7 @@ public class JDBCRC implements ReplicaCatalog {
      * @return a map indexed by the LFN. Each value is a set of PFN strings.
      */
     public Map lookupNoAttributes(Set lfns) {
-        Map result = new HashMap();
-        String query = mCStatements[1];
-
-        // sanity check
-        if (lfns == null || lfns.size() == 0) return result;
-        if (mConnection == null) throw new RuntimeException(c_error);
-
-        try {
-            ResultSet rs = null;
-            PreparedStatement ps = getStatement(1);
-            for (Iterator i = lfns.iterator(); i.hasNext(); ) {
-                Set value = new TreeSet();
-                String lfn = (String) i.next();
-                ps.setString(1, quote(lfn));
-                rs = ps.executeQuery();
-                while (rs.next()) {
-                    value.add(rs.getString("pfn"));
-                }
-                rs.close();
-                result.put(lfn, value);
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(
-                    "Unable to query database with " + query + ": " + e.getMessage());
-        }
-        return result;
+        return this.bulkLookup(lfns, null, false);
     }
 
     /**
@@ -682,38 +652,7 @@ public class JDBCRC implements ReplicaCatalog {
      * @see ReplicaCatalogEntry
      */
     public Map lookup(Set lfns, String handle) {
-        Map result = new HashMap();
-        int which = (handle == null ? 1 : 2);
-        String query = mCStatements[which];
-
-        // sanity check
-        if (lfns == null || lfns.size() == 0) return result;
-        if (mConnection == null) throw new RuntimeException(c_error);
-
-        try {
-            ResultSet rs = null;
-            PreparedStatement ps = getStatement(which);
-            if (handle != null) ps.setString(2, quote(handle));
-
-            for (Iterator i = lfns.iterator(); i.hasNext(); ) {
-                List value = new ArrayList();
-                String lfn = (String) i.next();
-                ps.setString(1, quote(lfn));
-                rs = ps.executeQuery();
-                while (rs.next()) {
-                    value.add(
-                            new ReplicaCatalogEntry(
-                                    rs.getString("pfn"),
-                                    attributes(rs.getString("lfn_id"), rs.getString("site"))));
-                }
-                rs.close();
-                result.put(lfn, value);
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(
-                    "Unable to query database with " + query + ": " + e.getMessage());
-        }
-        return result;
+        return this.bulkLookup(lfns, handle, true);
     }
 
     /**
@@ -727,37 +666,242 @@ public class JDBCRC implements ReplicaCatalog {
      * @return a map indexed by the LFN. Each value is a set of physical filenames.
      */
     public Map lookupNoAttributes(Set lfns, String handle) {
+        return this.bulkLookup(lfns, handle, false);
+    }
+
+    /**
+     * Looks up a set of LFNs in bulk. The LFNs are split into chunks of at most mBatchSize, and
+     * each chunk is looked up with a single query that binds the chunk into an IN-list. When
+     * attributes are requested, the query joins rc_pfn and rc_meta so that the PFNs and the
+     * attributes for the chunk are fetched in a single result set, instead of a separate query per
+     * PFN.
+     *
+     * @param lfns is a set of logical filename strings to look up.
+     * @param handle is the resource handle, restricting the LFNs. Can be null.
+     * @param attributes whether to retrieve the attributes or not
+     * @return a map indexed by the LFN. Each value is a collection of replica catalog entries if
+     *     attributes are requested, else a set of physical filenames.
+     */
+    protected Map bulkLookup(Set lfns, String handle, boolean attributes) {
         Map result = new HashMap();
-        int which = (handle == null ? 1 : 2);
-        String query = mCStatements[which];
 
         // sanity check
         if (lfns == null || lfns.size() == 0) return result;
         if (mConnection == null) throw new RuntimeException(c_error);
 
+        // the values bound in the query are quoted. track the LFN
+        // they were created from to index the results
+        Map<String, String> quoted = new HashMap();
+        List<String> bind = new ArrayList(lfns.size());
+        for (Iterator i = lfns.iterator(); i.hasNext(); ) {
+            String lfn = (String) i.next();
+            result.put(lfn, attributes ? new ArrayList() : new TreeSet());
+            String q = quote(lfn);
+            if (quoted.put(q, lfn) == null) {
+                bind.add(q);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        int chunks = (bind.size() + mBatchSize - 1) / mBatchSize;
+        String query = null;
+        PreparedStatement full = null;
         try {
-            ResultSet rs = null;
-            PreparedStatement ps = getStatement(which);
-            if (handle != null) ps.setString(2, quote(handle));
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int from = chunk * mBatchSize;
+                int to = Math.min(bind.size(), from + mBatchSize);
+                int size = to - from;
+                query = this.bulkLookupQuery(size, handle != null, attributes);
+
+                // all chunks but the last one have the same size, and
+                // can share the prepared statement
+                PreparedStatement ps;
+                if (size == mBatchSize) {
+                    if (full == null) {
+                        full = mConnection.prepareStatement(query);
+                    }
+                    ps = full;
+                } else {
+                    ps = mConnection.prepareStatement(query);
+                }
 
-            for (Iterator i = lfns.iterator(); i.hasNext(); ) {
-                Set value = new TreeSet();
-                String lfn = (String) i.next();
-                ps.setString(1, quote(lfn));
-                rs = ps.executeQuery();
-                while (rs.next()) {
-                    value.add(rs.getString("pfn"));
+                long chunkStart = System.currentTimeMillis();
+                int index = 1;
+                for (int i = from; i < to; i++) {
+                    ps.setString(index++, bind.get(i));
                 }
+                if (handle != null) {
+                    ps.setString(index, quote(handle));
+                }
+
+                ResultSet rs = ps.executeQuery();
+                int rows =
+                        attributes
+                                ? this.collectEntries(rs, quoted, result)
+                                : this.collectPFNs(rs, quoted, result);
                 rs.close();
-                result.put(lfn, value);
+                if (ps != full) {
+                    ps.close();
+                }
+
+                mLogger.log(
+                        "JDBCRC bulk lookup chunk "
+                                + (chunk + 1)
+                                + "/"
+                                + chunks
+                                + " for "
+                                + size
+                                + " LFNs returned "
+                                + rows
+                                + " rows in 1 query in "
+                                + (System.currentTimeMillis() - chunkStart)
+                                + " ms",
+                        LogManager.DEBUG_MESSAGE_LEVEL);
             }
         } catch (SQLException e) {
             throw new RuntimeException(
                     "Unable to query database with " + query + ": " + e.getMessage());
+        } finally {
+            if (full != null) {
+                try {
+                    full.close();
+                } catch (SQLException e) {
+                    // ignore
+                }
+            }
         }
+
+        mLogger.log(
+                "JDBCRC bulk lookup for "
+                        + lfns.size()
+                        + " LFNs took "
+                        + chunks
+                        + " queries in "
+                        + (System.currentTimeMillis() - start)
+                        + " ms",
+                LogManager.DEBUG_MESSAGE_LEVEL);
         return result;
     }
 
+    /**
+     * Returns the query for a bulk lookup of a chunk of LFNs.
+     *
+     * @param size the number of LFNs in the chunk
+     * @param handle whether the query is restricted to a resource handle
+     * @param attributes whether the attributes are retrieved or not
+     * @return the SQL query
+     */
+    private String bulkLookupQuery(int size, boolean handle, boolean attributes) {
+        StringBuilder query = new StringBuilder();
+        if (attributes) {
+            query.append("SELECT l.lfn_id,l.lfn,p.pfn_id,p.pfn,p.site,m.key,m.value FROM rc_lfn l")
+                    .append(" LEFT JOIN rc_pfn p ON l.lfn_id=p.lfn_id")
+                    .append(" LEFT JOIN rc_meta m ON l.lfn_id=m.lfn_id");
+        } else {
+            query.append("SELECT l.lfn,p.pfn FROM rc_lfn l")
+                    .append(" LEFT JOIN rc_pfn p ON l.lfn_id=p.lfn_id");
+        }
+        query.append(" WHERE l.lfn IN (");
+        for (int i = 0; i < size; i++) {
+            query.append((i == 0) ? "?" : ",?");
+        }
+        query.append(")");
+        if (handle) {
+            query.append(" AND p.site=?");
+        }
+        return query.toString();
+    }
+
+    /**
+     * Collects the replica catalog entries from the result set of a bulk lookup with attributes.
+     * The result set has a row for every combination of PFN and attribute of an LFN, that are
+     * folded back into one entry per PFN, with all the attributes of the LFN.
+     *
+     * @param rs the result set
+     * @param quoted maps the quoted LFNs bound in the query to the LFNs looked up
+     * @param result the map indexed by LFN to add the entries to
+     * @return the number of rows in the result set
+     */
+    private int collectEntries(ResultSet rs, Map<String, String> quoted, Map result)
+            throws SQLException {
+        // indexed by lfn_id. the order of the rows is not defined
+        Map<String, String> lfns = new LinkedHashMap();
+        Map<String, Map<String, String[]>> pfns = new HashMap();
+        Map<String, Map<String, String>> metas = new HashMap();
+        int rows = 0;
+        while (rs.next()) {
+            rows++;
+            String id = rs.getString("lfn_id");
+            lfns.put(id, rs.getString("lfn"));
+
+            Map<String, String[]> pfn = pfns.get(id);
+            if (pfn == null) {
+                pfn = new LinkedHashMap();
+                pfns.put(id, pfn);
+            }
+            String pfnID = rs.getString("pfn_id");
+            if (!pfn.containsKey(pfnID)) {
+                pfn.put(pfnID, new String[] {rs.getString("pfn"), rs.getString("site")});
+            }
+
+            String key = rs.getString(6);
+            if (key != null) {
+                Map<String, String> meta = metas.get(id);
+                if (meta == null) {
+                    meta = new LinkedHashMap();
+                    metas.put(id, meta);
+                }
+                meta.put(key, rs.getString(7));
+            }
+        }
+
+        for (Map.Entry<String, String> entry : lfns.entrySet()) {
+            String id = entry.getKey();
+            String lfn = quoted.get(entry.getValue());
+            if (lfn == null) {
+                continue;
+            }
+            Collection value = (Collection) result.get(lfn);
+            Map<String, String> meta = metas.get(id);
+            for (String[] pfn : pfns.get(id).values()) {
+                // same attributes as the per LFN lookup
+                Map attrs = new TreeMap();
+                String site = pfn[1];
+                if (site != null && !site.equals("NULL")) {
+                    attrs.put(ReplicaCatalogEntry.RESOURCE_HANDLE, site);
+                }
+                if (meta != null) {
+                    attrs.putAll(meta);
+                }
+                value.add(new ReplicaCatalogEntry(pfn[0], attrs));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Collects the PFNs from the result set of a bulk lookup without attributes.
+     *
+     * @param rs the result set
+     * @param quoted maps the quoted LFNs bound in the query to the LFNs looked up
+     * @param result the map indexed by LFN to add the PFNs to
+     * @return the number of rows in the result set
+     */
+    private int collectPFNs(ResultSet rs, Map<String, String> quoted, Map result)
+            throws SQLException {
+        int rows = 0;
+        while (rs.next()) {
+            rows++;
+            String lfn = quoted.get(rs.getString("lfn"));
+            String pfn = rs.getString("pfn");
+            // a LFN without any PFNs has a row with a null pfn
+            if (lfn != null && pfn != null) {
+                ((Collection) result.get(lfn)).add(pfn);
+            }
+        }
+        return rows;
+    }
+
     /**
      * Retrieves multiple entries for a given logical filename, up to the complete catalog.
      * Retrieving full catalogs should be harmful, but may be helpful in online display or portal.
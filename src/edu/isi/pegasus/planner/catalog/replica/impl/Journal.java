@@ -0,0 +1,465 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.common.util.Boolean;
+import edu.isi.pegasus.common.util.Escape;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * An append only journal of the changes made to a file based replica catalog. A catalog connected
+ * in journaled mode does not rewrite its file on close. Instead, the entries inserted and deleted
+ * since the catalog was connected to are appended to a journal file next to it. When a catalog is
+ * connected to, the journal is replayed on top of the catalog file. This allows multiple processes,
+ * such as the registration jobs of a workflow, to update the same catalog at the same time, with
+ * each paying only for the entries it changes.
+ *
+ * <p>Once the journal has more records than a threshold, the process closing the catalog folds the
+ * journal into the catalog file and truncates the journal.
+ *
+ * <p>The catalog file and the journal are guarded by a lock on a lock file next to the catalog
+ * file. The catalog file and the journal are read under a shared lock, while the journal is
+ * appended to and compacted under an exclusive lock.
+ *
+ * <p>Each record in the journal is a line starting with the operation, followed by the entry in the
+ * format of the File replica catalog.
+ *
+ * <pre>
+ * + LFN PFN a="b" [..]
+ * - LFN PFN a="b" [..]
+ * </pre>
+ *
+ * To connect to a catalog in journaled mode, in Pegasus Properties set
+ *
+ * <pre>
+ *      pegasus.catalog.replica.journal  true
+ * </pre>
+ *
+ * The number of records after which the journal is compacted can be set by specifying the property
+ *
+ * <pre>
+ *      pegasus.catalog.replica.journal.threshold
+ * </pre>
+ *
+ * @version $Revision$
+ */
+public class Journal {
+
+    /** The name of the key that enables the journaled mode. */
+    public static final String JOURNAL_KEY = "journal";
+
+    /**
+     * The name of the key that specifies the number of records after which to compact. A negative
+     * value disables compaction.
+     */
+    public static final String THRESHOLD_KEY = "journal.threshold";
+
+    /** The default number of records after which the journal is compacted. */
+    public static final int DEFAULT_THRESHOLD = 10000;
+
+    /** The suffix added to the catalog file to get the path to the journal. */
+    public static final String JOURNAL_SUFFIX = ".journal";
+
+    /** The suffix added to the catalog file to get the path to the lock file. */
+    public static final String LOCK_SUFFIX = ".lock";
+
+    /** The operation for an entry inserted into the catalog. */
+    public static final char INSERT_OPERATION = '+';
+
+    /** The operation for an entry deleted from the catalog. */
+    public static final char DELETE_OPERATION = '-';
+
+    /**
+     * File locks are held on behalf of the whole JVM, and a second lock on the same file from the
+     * same JVM fails instead of blocking. All locking in a JVM is serialized on this object.
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    /** The callback for the records replayed from the journal. */
+    public interface Callback {
+
+        /**
+         * Applies a record from the journal to the catalog.
+         *
+         * @param operation the operation, either INSERT_OPERATION or DELETE_OPERATION
+         * @param lfn the logical filename
+         * @param rce the replica catalog entry
+         */
+        public void apply(char operation, String lfn, ReplicaCatalogEntry rce);
+    }
+
+    /** Loads the contents of the catalog file into the catalog. */
+    public interface Loader {
+
+        /**
+         * Loads the catalog file.
+         *
+         * @throws IOException in case of error while reading the file
+         */
+        public void load() throws IOException;
+    }
+
+    /** Writes out the contents of the catalog. */
+    public interface Writer {
+
+        /**
+         * Writes out the catalog to a file.
+         *
+         * @param file the file to write to
+         * @throws IOException in case of error while writing
+         */
+        public void write(File file) throws IOException;
+    }
+
+    /** The catalog file. */
+    private final File mCatalog;
+
+    /** The journal file. */
+    private final File mJournal;
+
+    /** The lock file. */
+    private final File mLock;
+
+    /** The number of records after which the journal is compacted. */
+    private final int mThreshold;
+
+    /** The records yet to be appended to the journal. */
+    private final List<String> mPending;
+
+    /** The escape instance used to quote the records. */
+    private final Escape mEscape;
+
+    /** The number of records known to be in the journal. */
+    private int mRecords;
+
+    /** Whether changes made to the catalog are to be recorded. */
+    private boolean mRecording;
+
+    /**
+     * Returns whether the properties enable the journaled mode.
+     *
+     * @param props the connection properties of the catalog
+     * @return boolean
+     */
+    public static boolean isEnabled(Properties props) {
+        return Boolean.parse(props.getProperty(Journal.JOURNAL_KEY), false);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param catalog the catalog file
+     * @param props the connection properties of the catalog
+     */
+    public Journal(File catalog, Properties props) {
+        mCatalog = catalog;
+        mJournal = new File(catalog.getPath() + JOURNAL_SUFFIX);
+        mLock = new File(catalog.getPath() + LOCK_SUFFIX);
+        String value = props.getProperty(Journal.THRESHOLD_KEY);
+        int threshold = DEFAULT_THRESHOLD;
+        if (value != null) {
+            try {
+                threshold = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(
+                        "Invalid value for replica catalog property "
+                                + Journal.THRESHOLD_KEY
+                                + " "
+                                + value,
+                        e);
+            }
+        }
+        mThreshold = threshold;
+        mPending = new ArrayList<String>();
+        mEscape = new Escape("\"\\", '\\');
+        mRecords = 0;
+        mRecording = false;
+    }
+
+    /**
+     * Returns the journal file.
+     *
+     * @return the journal file
+     */
+    public File getFile() {
+        return mJournal;
+    }
+
+    /**
+     * Returns the number of records known to be in the journal, including the ones not yet
+     * appended.
+     *
+     * @return the number of records
+     */
+    public int getRecordCount() {
+        return mRecords + mPending.size();
+    }
+
+    /**
+     * Loads the catalog file, and replays the journal on top of it. Changes made to the catalog are
+     * recorded only after the load.
+     *
+     * @param loader loads the catalog file
+     * @param callback applies the records in the journal
+     * @throws IOException in case of error while reading
+     */
+    public void load(Loader loader, Callback callback) throws IOException {
+        mRecording = false;
+        synchronized (JVM_LOCK) {
+            FileChannel channel = openLock(true);
+            try {
+                FileLock lock = (channel == null) ? null : channel.lock(0, Long.MAX_VALUE, true);
+                try {
+                    loader.load();
+                    mRecords = replay(callback);
+                } finally {
+                    if (lock != null) {
+                        lock.release();
+                    }
+                }
+            } finally {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+        mPending.clear();
+        mRecording = true;
+    }
+
+    /**
+     * Records a change made to the catalog, to be appended to the journal on flush.
+     *
+     * @param operation the operation, either INSERT_OPERATION or DELETE_OPERATION
+     * @param lfn the logical filename
+     * @param rce the replica catalog entry
+     */
+    public void record(char operation, String lfn, ReplicaCatalogEntry rce) {
+        if (!mRecording) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(operation).append(' ');
+        sb.append(quote(lfn)).append(' ').append(quote(rce.getPFN()));
+        for (Iterator<String> it = rce.getAttributeIterator(); it.hasNext(); ) {
+            String key = it.next();
+            Object value = rce.getAttribute(key);
+            sb.append(' ').append(key).append("=\"");
+            sb.append(mEscape.escape(value == null ? "" : value.toString())).append('"');
+        }
+        mPending.add(sb.toString());
+    }
+
+    /**
+     * Appends the recorded changes to the journal.
+     *
+     * @throws IOException in case of error while writing
+     */
+    public void flush() throws IOException {
+        if (mPending.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String record : mPending) {
+            sb.append(record).append('\n');
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        synchronized (JVM_LOCK) {
+            FileChannel channel = openLock(false);
+            FileLock lock = channel.lock();
+            try {
+                RandomAccessFile raf = new RandomAccessFile(mJournal, "rw");
+                try {
+                    long length = raf.length();
+                    if (length > 0) {
+                        // terminate a record left incomplete by a writer that died
+                        raf.seek(length - 1);
+                        if (raf.read() != '\n') {
+                            raf.write('\n');
+                        }
+                    }
+                    FileChannel out = raf.getChannel();
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    out.force(false);
+                } finally {
+                    raf.close();
+                }
+            } finally {
+                lock.release();
+                channel.close();
+            }
+        }
+        mRecords += mPending.size();
+        mPending.clear();
+    }
+
+    /**
+     * Returns whether the journal has grown past the threshold, and should be compacted.
+     *
+     * @return boolean
+     */
+    public boolean requiresCompaction() {
+        return mThreshold >= 0 && getRecordCount() > mThreshold;
+    }
+
+    /**
+     * Folds the journal into the catalog file. The catalog is reloaded from the catalog file and
+     * the journal, so that the changes of the other writers are retained, and written out to a
+     * temporary file that replaces the catalog file. The journal is then truncated.
+     *
+     * @param loader loads the catalog file
+     * @param callback applies the records in the journal
+     * @param writer writes out the catalog
+     * @throws IOException in case of error while reading or writing
+     */
+    public void compact(Loader loader, Callback callback, Writer writer) throws IOException {
+        mRecording = false;
+        synchronized (JVM_LOCK) {
+            FileChannel channel = openLock(false);
+            FileLock lock = channel.lock();
+            try {
+                loader.load();
+                replay(callback);
+
+                File dir = mCatalog.getAbsoluteFile().getParentFile();
+                File tmp = File.createTempFile(mCatalog.getName(), ".tmp", dir);
+                try {
+                    writer.write(tmp);
+                    try {
+                        Files.move(
+                                tmp.toPath(),
+                                mCatalog.toPath(),
+                                StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(
+                                tmp.toPath(),
+                                mCatalog.toPath(),
+                                StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } finally {
+                    tmp.delete();
+                }
+
+                // the catalog file has all the records now
+                RandomAccessFile raf = new RandomAccessFile(mJournal, "rw");
+                try {
+                    raf.setLength(0);
+                } finally {
+                    raf.close();
+                }
+            } finally {
+                lock.release();
+                channel.close();
+            }
+        }
+        mRecords = 0;
+        mPending.clear();
+    }
+
+    /**
+     * Replays the records in the journal.
+     *
+     * @param callback applies the records
+     * @return the number of records replayed
+     * @throws IOException in case of error while reading
+     */
+    private int replay(final Callback callback) throws IOException {
+        int count = 0;
+        if (!mJournal.exists()) {
+            return count;
+        }
+        LineNumberReader lnr = new LineNumberReader(new FileReader(mJournal));
+        try {
+            String line;
+            while ((line = lnr.readLine()) != null) {
+                if (line.length() < 2 || line.charAt(0) == '#') {
+                    continue;
+                }
+                final char operation = line.charAt(0);
+                if (operation != INSERT_OPERATION && operation != DELETE_OPERATION) {
+                    System.err.println(
+                            "While parsing line "
+                                    + lnr.getLineNumber()
+                                    + " of "
+                                    + mJournal
+                                    + ": unknown operation "
+                                    + operation
+                                    + ", ignoring line");
+                    continue;
+                }
+                if (SimpleFile.parse(
+                        line.substring(2),
+                        lnr.getLineNumber(),
+                        (lfn, rce) -> callback.apply(operation, lfn, rce))) {
+                    count++;
+                }
+            }
+        } finally {
+            lnr.close();
+        }
+        return count;
+    }
+
+    /**
+     * Opens the lock file.
+     *
+     * @param shared whether the lock is to be shared
+     * @return the channel to lock on. For a shared lock, can be null if the lock file does not
+     *     exist and cannot be created, e.g. in a read only directory
+     * @throws IOException in case of error while opening the lock file
+     */
+    private FileChannel openLock(boolean shared) throws IOException {
+        try {
+            return new RandomAccessFile(mLock, "rw").getChannel();
+        } catch (IOException e) {
+            if (!shared) {
+                throw e;
+            }
+            // the directory or the lock file is not writable
+            // by us, so the catalog can only be read
+            return mLock.exists() ? new RandomAccessFile(mLock, "r").getChannel() : null;
+        }
+    }
+
+    /**
+     * Quotes a string only if necessary.
+     *
+     * @param s the string
+     * @return the quoted string
+     */
+    private String quote(String s) {
+        return SimpleFile.quote(mEscape, s, false);
+    }
+}
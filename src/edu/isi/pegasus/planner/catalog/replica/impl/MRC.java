@@ -21,15 +21,27 @@ import edu.isi.pegasus.planner.catalog.replica.*;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.common.PegasusProperties;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
 
 /**
  * A multiple replica catalog implementation that allows users to query different multiple catalogs
@@ -68,6 +80,23 @@ import java.util.Set;
  * <p>In the above example, lrc1, lrc2 are any valid identifier names and url is the property key
  * that needed to be specified.
  *
+ * <p>The bulk lookups are issued to all the associated catalogs concurrently, and the results are
+ * merged in the order in which the catalogs were connected. Entries with the same PFN and site
+ * handle returned by more than one catalog are only retained once. The concurrency and the time to
+ * wait for each catalog can be set via
+ *
+ * <pre>
+ * pegasus.catalog.replica.mrc.threads   the maximum number of catalogs queried at a time.
+ * pegasus.catalog.replica.mrc.timeout   the seconds to wait for a catalog, 0 to wait forever.
+ * </pre>
+ *
+ * Consequently, threads and timeout cannot be used as names for the associated catalogs.
+ *
+ * <p>The timeout for a catalog is measured from the time its lookup starts, and not from the time
+ * it is queued. A catalog that timed out is not queried again until its lookup completes, as the
+ * catalogs are not thread safe. The timeout only applies to concurrent lookups. If threads is set
+ * to 1, the catalogs are queried one after the other in the calling thread, without a timeout.
+ *
  * @author Karan Vahi
  * @version $Revision$
  */
@@ -79,16 +108,61 @@ public class MRC implements ReplicaCatalog {
     /** The property key that designates the type of replica catalog to connect to. */
     public static final String TYPE_KEY = "type";
 
+    /** The property key that designates the maximum number of catalogs queried concurrently. */
+    public static final String THREADS_KEY = "threads";
+
+    /** The property key that designates the number of seconds to wait for a catalog lookup. */
+    public static final String TIMEOUT_KEY = "timeout";
+
+    /** The default number of catalogs queried concurrently. */
+    public static final int DEFAULT_THREADS = 8;
+
+    /** The state of a lookup that has been submitted, but not started. */
+    private static final int QUEUED = 0;
+
+    /** The state of a lookup that is running. */
+    private static final int RUNNING = 1;
+
+    /** The state of a lookup that has completed, or was abandoned before it started. */
+    private static final int DONE = 2;
+
     /** The list of replica catalogs that need to be queried for. */
     protected List mRCList;
 
+    /** The names of the replica catalogs in mRCList, as specified in the properties. */
+    protected List<String> mRCNames;
+
     /** The handle to the logging manager. */
     protected LogManager mLogger;
 
+    /** The maximum number of catalogs queried concurrently. */
+    protected int mThreads;
+
+    /** The timeout in milliseconds for a lookup against a single catalog. 0 means no timeout. */
+    protected long mTimeout;
+
+    /** The executor for the concurrent lookups, created on first use. */
+    private ExecutorService mExecutor;
+
+    /**
+     * The states of the lookups that timed out or were abandoned while running, indexed by the
+     * index of the catalog. The catalogs are skipped till the lookups complete.
+     */
+    private final Map<Integer, AtomicInteger> mBusy;
+
+    /** The cumulative lookup time in milliseconds for each catalog, indexed by catalog name. */
+    private final Map<String, Long> mLookupTimes;
+
     /** The default constructor. */
     public MRC() {
         mRCList = new LinkedList();
+        mRCNames = new LinkedList();
         mLogger = LogManagerFactory.loadSingletonInstance();
+        mThreads = DEFAULT_THREADS;
+        mTimeout = 0;
+        mExecutor = null;
+        mBusy = new HashMap();
+        mLookupTimes = new LinkedHashMap();
     }
 
     /**
@@ -107,6 +181,10 @@ public class MRC implements ReplicaCatalog {
 
     /** Explicitely free resources before the garbage collection hits. */
     public void close() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
         for (Iterator it = this.rcIterator(); it.hasNext(); ) {
             ReplicaCatalog catalog = (ReplicaCatalog) it.next();
             catalog.close();
@@ -125,6 +203,24 @@ public class MRC implements ReplicaCatalog {
         Properties subset = CommonProperties.matchingSubset(props, PROPERTY_PREFIX, false);
         mLogger.log("MRC Properties are " + subset, LogManager.DEBUG_MESSAGE_LEVEL);
 
+        // the keys that configure MRC itself, and not an associated catalog
+        String threads = (String) subset.remove(THREADS_KEY);
+        String timeout = (String) subset.remove(TIMEOUT_KEY);
+        try {
+            if (threads != null) {
+                mThreads = Math.max(1, Integer.parseInt(threads.trim()));
+            }
+            if (timeout != null) {
+                mTimeout = Math.max(0, (long) (Double.parseDouble(timeout.trim()) * 1000));
+            }
+        } catch (NumberFormatException e) {
+            mLogger.log(
+                    "Invalid value specified for MRC threads " + threads + " or timeout " + timeout,
+                    e,
+                    LogManager.ERROR_MESSAGE_LEVEL);
+            return false;
+        }
+
         // container for properties for each of the different catalogs
         Map propertiesMap = new HashMap();
 
@@ -226,9 +322,331 @@ public class MRC implements ReplicaCatalog {
         }
 
         mRCList.add(catalog);
+        mRCNames.add(name);
         return true;
     }
 
+    /**
+     * Returns the cumulative time spent in the bulk lookups against each of the associated
+     * catalogs.
+     *
+     * @return map indexed by the catalog name, with the time in milliseconds as value
+     */
+    public Map<String, Long> getLookupTimes() {
+        synchronized (mLookupTimes) {
+            return new LinkedHashMap(mLookupTimes);
+        }
+    }
+
+    /**
+     * Issues a lookup against all the associated catalogs. If there is more than one catalog, the
+     * lookups are run concurrently on a bounded executor. The lookups that do not complete within
+     * the timeout, measured from the time they start, are cancelled, and their results ignored.
+     * Catalogs whose lookup from an earlier call is still running are skipped. The lookups are not
+     * timed out if they are run serially.
+     *
+     * @param operation the name of the lookup, for logging purposes
+     * @param lookup the lookup to issue against a catalog
+     * @return the results from the catalogs, in the order of the catalogs. The entries for the
+     *     catalogs that timed out or were skipped are null.
+     */
+    protected List<Map> fanOut(String operation, Function<ReplicaCatalog, Map> lookup) {
+        int size = mRCList.size();
+        List<Map> results = new ArrayList(size);
+        long[] times = new long[size];
+        if (size <= 1 || mThreads <= 1) {
+            for (int i = 0; i < size; i++) {
+                results.add(this.timedLookup(i, lookup, times));
+            }
+            this.logLookupTimes(operation, times);
+            return results;
+        }
+
+        ExecutorService executor = this.getExecutor();
+        List<Future<Map>> futures = new ArrayList(size);
+        AtomicLongArray starts = new AtomicLongArray(size);
+        AtomicInteger[] states = new AtomicInteger[size];
+        for (int i = 0; i < size; i++) {
+            if (this.isBusy(i)) {
+                mLogger.log(
+                        "MRC "
+                                + operation
+                                + " skipping replica catalog "
+                                + mRCNames.get(i)
+                                + " as an earlier lookup against it is still running",
+                        LogManager.WARNING_MESSAGE_LEVEL);
+                futures.add(null);
+                continue;
+            }
+            final int index = i;
+            final AtomicInteger state = new AtomicInteger(QUEUED);
+            states[i] = state;
+            futures.add(
+                    executor.submit(
+                            () -> {
+                                if (!state.compareAndSet(QUEUED, RUNNING)) {
+                                    // abandoned before it started
+                                    return null;
+                                }
+                                starts.set(index, System.currentTimeMillis());
+                                try {
+                                    return this.timedLookup(index, lookup, times);
+                                } finally {
+                                    state.set(DONE);
+                                }
+                            }));
+        }
+
+        for (int i = 0; i < size; i++) {
+            Future<Map> future = futures.get(i);
+            if (future == null) {
+                results.add(null);
+                continue;
+            }
+            try {
+                results.add(this.await(future, starts, i));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                this.markBusy(i, states[i]);
+                mLogger.log(
+                        "MRC "
+                                + operation
+                                + " against replica catalog "
+                                + mRCNames.get(i)
+                                + " did not complete in "
+                                + mTimeout
+                                + " ms. Ignoring its results",
+                        LogManager.WARNING_MESSAGE_LEVEL);
+                results.add(null);
+            } catch (ExecutionException e) {
+                this.abandon(futures, states);
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(
+                        "MRC " + operation + " failed against replica catalog " + mRCNames.get(i),
+                        cause);
+            } catch (InterruptedException e) {
+                this.abandon(futures, states);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted during MRC " + operation, e);
+            }
+        }
+        this.logLookupTimes(operation, times);
+        return results;
+    }
+
+    /**
+     * Waits for the lookup against a catalog to complete. If a timeout is set, the lookup is given
+     * the timeout from the time it starts, so that the lookups queued behind others are not timed
+     * out before they are issued.
+     *
+     * @param future the future for the lookup
+     * @param starts the times at which the lookups started, 0 for the ones not started yet
+     * @param index the index of the catalog
+     * @return the result of the lookup
+     * @throws TimeoutException if the lookup did not complete within the timeout
+     * @throws ExecutionException if the lookup threw an exception
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private Map await(Future<Map> future, AtomicLongArray starts, int index)
+            throws TimeoutException, ExecutionException, InterruptedException {
+        if (mTimeout <= 0) {
+            return future.get();
+        }
+        while (true) {
+            long start = starts.get(index);
+            long wait = (start == 0) ? mTimeout : start + mTimeout - System.currentTimeMillis();
+            try {
+                return future.get(Math.max(0, wait), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                start = starts.get(index);
+                if (start != 0 && start + mTimeout <= System.currentTimeMillis()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a lookup from an earlier call against a catalog is still running.
+     *
+     * @param index the index of the catalog
+     * @return boolean
+     */
+    private boolean isBusy(int index) {
+        synchronized (mBusy) {
+            AtomicInteger state = mBusy.get(index);
+            if (state == null) {
+                return false;
+            }
+            if (state.get() == DONE) {
+                mBusy.remove(index);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Marks a catalog as busy till its lookup completes. A lookup that has not started yet is
+     * abandoned instead, so that it is never run.
+     *
+     * @param index the index of the catalog
+     * @param state the state of the lookup
+     */
+    private void markBusy(int index, AtomicInteger state) {
+        if (!state.compareAndSet(QUEUED, DONE) && state.get() == RUNNING) {
+            synchronized (mBusy) {
+                mBusy.put(index, state);
+            }
+        }
+    }
+
+    /**
+     * Cancels all the lookups of a call, and marks the catalogs whose lookup is still running as
+     * busy.
+     *
+     * @param futures the futures for the lookups, null for the catalogs skipped
+     * @param states the states of the lookups
+     */
+    private void abandon(List<Future<Map>> futures, AtomicInteger[] states) {
+        for (int i = 0; i < futures.size(); i++) {
+            Future f = futures.get(i);
+            if (f != null) {
+                f.cancel(true);
+                this.markBusy(i, states[i]);
+            }
+        }
+    }
+
+    /**
+     * Issues a lookup against a single catalog, and records the time taken.
+     *
+     * @param index the index of the catalog
+     * @param lookup the lookup to issue against a catalog
+     * @param times the array in which the time taken is recorded against the index
+     * @return the result of the lookup
+     */
+    private Map timedLookup(int index, Function<ReplicaCatalog, Map> lookup, long[] times) {
+        long start = System.currentTimeMillis();
+        try {
+            return lookup.apply((ReplicaCatalog) mRCList.get(index));
+        } finally {
+            times[index] = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * Logs the time taken by each catalog for a lookup, and adds it to the cumulative lookup times.
+     * Catalogs that timed out are reported with a time of 0.
+     *
+     * @param operation the name of the lookup
+     * @param times the time taken by each catalog
+     */
+    private void logLookupTimes(String operation, long[] times) {
+        StringBuilder message = new StringBuilder();
+        message.append("MRC ").append(operation).append(" times in ms:");
+        synchronized (mLookupTimes) {
+            for (int i = 0; i < times.length; i++) {
+                String name = mRCNames.get(i);
+                Long total = mLookupTimes.get(name);
+                mLookupTimes.put(name, (total == null) ? times[i] : total + times[i]);
+                message.append(" ").append(name).append("=").append(times[i]);
+            }
+        }
+        mLogger.log(message.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
+    }
+
+    /**
+     * Returns the executor for the concurrent lookups, creating it if required. The threads are
+     * daemon threads, so that an unclosed catalog does not prevent the JVM from exiting.
+     *
+     * @return the executor
+     */
+    private synchronized ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            final AtomicInteger count = new AtomicInteger(0);
+            ThreadFactory factory =
+                    (Runnable r) -> {
+                        Thread t = new Thread(r, "mrc-lookup-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    };
+            mExecutor = Executors.newFixedThreadPool(Math.min(mThreads, mRCList.size()), factory);
+        }
+        return mExecutor;
+    }
+
+    /**
+     * Merges the replica catalog entries returned by the catalogs, retaining only the first entry
+     * for a particular PFN and site handle for a LFN.
+     *
+     * @param results the results from the catalogs, null for the ones that timed out.
+     * @return a map indexed by the LFN. Each value is a collection of replica catalog entries.
+     */
+    protected Map mergeEntries(List<Map> results) {
+        Map result = new HashMap();
+        Map<String, Set<String>> seen = new HashMap();
+        for (Map m : results) {
+            if (m == null) {
+                continue;
+            }
+            for (Iterator mit = m.entrySet().iterator(); mit.hasNext(); ) {
+                Map.Entry entry = (Map.Entry) mit.next();
+                String lfn = (String) entry.getKey(); // the lfn
+                Collection merged = (Collection) result.get(lfn);
+                Set<String> keys = seen.get(lfn);
+                if (merged == null) {
+                    merged = new LinkedList();
+                    result.put(lfn, merged);
+                    keys = new HashSet();
+                    seen.put(lfn, keys);
+                }
+                Collection entries = (Collection) entry.getValue();
+                if (entries == null) {
+                    continue;
+                }
+                for (Object o : entries) {
+                    ReplicaCatalogEntry rce = (ReplicaCatalogEntry) o;
+                    if (keys.add(rce.getPFN() + "\u0000" + rce.getResourceHandle())) {
+                        merged.add(rce);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges the PFNs returned by the catalogs.
+     *
+     * @param results the results from the catalogs, null for the ones that timed out.
+     * @return a map indexed by the LFN. Each value is a set of PFNs.
+     */
+    protected Map mergePFNs(List<Map> results) {
+        Map result = new HashMap();
+        for (Map m : results) {
+            if (m == null) {
+                continue;
+            }
+            for (Iterator mit = m.entrySet().iterator(); mit.hasNext(); ) {
+                Map.Entry entry = (Map.Entry) mit.next();
+                String lfn = (String) entry.getKey(); // the lfn
+                Set merged = (Set) result.get(lfn);
+                if (merged == null) {
+                    merged = new HashSet();
+                    result.put(lfn, merged);
+                }
+                if (entry.getValue() != null) {
+                    merged.addAll((Collection) entry.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns an iterator to iterate through the list of ReplicaCatalogs that MRC is associated
      * with.
@@ -500,27 +918,8 @@ public class MRC implements ReplicaCatalog {
      *     attributes).
      */
     public Map lookup(Set lfns, String handle) {
-        Map result = new HashMap();
-
-        for (Iterator it = this.rcIterator(); it.hasNext(); ) {
-            ReplicaCatalog catalog = (ReplicaCatalog) it.next();
-            Map m = catalog.lookup(lfns, handle);
-
-            // merge all the entries in the map into the result
-            for (Iterator mit = m.entrySet().iterator(); mit.hasNext(); ) {
-                Map.Entry entry = (Map.Entry) mit.next();
-                // merge the entries into the main result
-                String lfn = (String) entry.getKey(); // the lfn
-                if (result.containsKey(lfn)) {
-                    // right now no merging of RCE being done on basis
-                    // on them having same pfns. duplicate might occur.
-                    ((Set) result.get(lfn)).addAll((Set) entry.getValue());
-                } else {
-                    result.put(lfn, entry.getValue());
-                }
-            }
-        }
-        return result;
+        return this.mergeEntries(
+                this.fanOut("lookup", (ReplicaCatalog catalog) -> catalog.lookup(lfns, handle)));
     }
 
     /**
@@ -533,28 +932,8 @@ public class MRC implements ReplicaCatalog {
      * @return a map indexed by the LFN. Each value is a collection of replica catalog entries.
      */
     public Map lookup(Map constraints) {
-
-        Map result = new HashMap();
-
-        for (Iterator it = this.rcIterator(); it.hasNext(); ) {
-            ReplicaCatalog catalog = (ReplicaCatalog) it.next();
-            Map m = catalog.lookup(constraints);
-
-            // merge all the entries in the map into the result
-            for (Iterator mit = m.entrySet().iterator(); mit.hasNext(); ) {
-                Map.Entry entry = (Map.Entry) mit.next();
-                // merge the entries into the main result
-                String lfn = (String) entry.getKey(); // the lfn
-                if (result.containsKey(lfn)) {
-                    // right now no merging of RCE being done on basis
-                    // on them having same pfns. duplicate might occur.
-                    ((Set) result.get(lfn)).addAll((Set) entry.getValue());
-                } else {
-                    result.put(lfn, entry.getValue());
-                }
-            }
-        }
-        return result;
+        return this.mergeEntries(
+                this.fanOut("lookup", (ReplicaCatalog catalog) -> catalog.lookup(constraints)));
     }
 
     /**
@@ -565,28 +944,8 @@ public class MRC implements ReplicaCatalog {
      *     the LFN.
      */
     public Map lookup(Set lfns) {
-
-        Map result = new HashMap();
-
-        for (Iterator it = this.rcIterator(); it.hasNext(); ) {
-            ReplicaCatalog catalog = (ReplicaCatalog) it.next();
-            Map m = catalog.lookup(lfns);
-
-            // merge all the entries in the map into the result
-            for (Iterator mit = m.entrySet().iterator(); mit.hasNext(); ) {
-                Map.Entry entry = (Map.Entry) mit.next();
-                // merge the entries into the main result
-                String lfn = (String) entry.getKey(); // the lfn
-                if (result.containsKey(lfn)) {
-                    // right now no merging of RCE being done on basis
-                    // on them having same pfns. duplicate might occur.
-                    ((Collection) result.get(lfn)).addAll((Collection) entry.getValue());
-                } else {
-                    result.put(lfn, entry.getValue());
-                }
-            }
-        }
-        return result;
+        return this.mergeEntries(
+                this.fanOut("lookup", (ReplicaCatalog catalog) -> catalog.lookup(lfns)));
     }
 
     /**
@@ -611,10 +970,16 @@ public class MRC implements ReplicaCatalog {
      * @return a map indexed by the LFN. Each value is a set of PFN strings.
      */
     public Map lookupNoAttributes(Set lfns) {
-        Map result = new HashMap();
+        Map result =
+                this.mergePFNs(
+                        this.fanOut(
+                                "lookupNoAttributes",
+                                (ReplicaCatalog catalog) -> catalog.lookupNoAttributes(lfns)));
         for (Iterator it = lfns.iterator(); it.hasNext(); ) {
             String lfn = (String) it.next();
-            result.put(lfn, this.lookupNoAttributes(lfn));
+            if (!result.containsKey(lfn)) {
+                result.put(lfn, new HashSet());
+            }
         }
         return result;
     }
@@ -627,26 +992,10 @@ public class MRC implements ReplicaCatalog {
      * @return a map indexed by the LFN. Each value is a set of physical filenames.
      */
     public Map lookupNoAttributes(Set lfns, String handle) {
-        Map result = new HashMap();
-
-        for (Iterator it = this.rcIterator(); it.hasNext(); ) {
-            ReplicaCatalog catalog = (ReplicaCatalog) it.next();
-            Map m = this.lookupNoAttributes(lfns, handle);
-
-            // merge the map into the result
-            for (Iterator mit = m.entrySet().iterator(); mit.hasNext(); ) {
-                Map.Entry entry = (Map.Entry) mit.next();
-                // merge the entries into the main result
-                String key = (String) entry.getKey(); // the lfn
-                if (result.containsKey(key)) {
-                    // merge the results
-                    ((Set) result.get(key)).addAll((Set) entry.getValue());
-                } else {
-                    result.put(key, entry.getValue());
-                }
-            }
-        }
-        return result;
+        return this.mergePFNs(
+                this.fanOut(
+                        "lookupNoAttributes",
+                        (ReplicaCatalog catalog) -> catalog.lookupNoAttributes(lfns, handle)));
     }
 
     /**
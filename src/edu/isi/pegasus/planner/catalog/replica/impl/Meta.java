@@ -37,7 +37,6 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.common.VariableExpansionReader;
 import edu.isi.pegasus.planner.namespace.Metadata;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -150,7 +149,7 @@ public class Meta implements ReplicaCatalog {
         if (replicaFile.exists()) {
             Reader reader = null;
             try {
-                reader = new VariableExpansionReader(new FileReader(filename));
+                reader = new VariableExpansionReader(replicaFile);
                 ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
                 mapper.configure(MapperFeature.ALLOW_COERCION_OF_SCALARS, false);
                 // inject instance of this class to be used for deserialization
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * The PFN of a regex replica catalog entry, parsed into literal segments and references to the
+ * groups of the matching LFN pattern. A reference is written as the group number in square
+ * brackets, e.g. <code>file://[1]/[2]</code>.
+ *
+ * <p>The PFN is parsed once, and each expansion is a single pass that appends the segments and the
+ * groups of the matcher. The groups are inserted as is, and are not scanned for references
+ * themselves. A reference to a group the pattern does not have is left in the PFN, and a group that
+ * did not take part in the match expands to the empty string.
+ *
+ * @version $Revision$
+ */
+public class PFNTemplate {
+
+    /** The literal segments. There is one more segment than there are references. */
+    private final String[] mSegments;
+
+    /** The group numbers referenced between the segments. */
+    private final int[] mGroups;
+
+    /** The length of all the literal segments together. */
+    private final int mLength;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param segments the literal segments
+     * @param groups the group numbers referenced between the segments
+     */
+    private PFNTemplate(String[] segments, int[] groups) {
+        mSegments = segments;
+        mGroups = groups;
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        mLength = length;
+    }
+
+    /**
+     * Parses a PFN into a template.
+     *
+     * @param pfn the PFN of the regex replica catalog entry
+     * @return the template
+     */
+    public static PFNTemplate compile(String pfn) {
+        List<String> segments = new ArrayList<String>();
+        List<Integer> groups = new ArrayList<Integer>();
+        int start = 0;
+        for (int open = pfn.indexOf('['); open >= 0; open = pfn.indexOf('[', open + 1)) {
+            int close = open + 1;
+            while (close < pfn.length() && Character.isDigit(pfn.charAt(close))) {
+                close++;
+            }
+            if (close == open + 1
+                    || close == pfn.length()
+                    || pfn.charAt(close) != ']'
+                    || (close > open + 2 && pfn.charAt(open + 1) == '0')) {
+                // not a group reference
+                continue;
+            }
+            int group;
+            try {
+                group = Integer.parseInt(pfn.substring(open + 1, close));
+            } catch (NumberFormatException e) {
+                // too many digits to be a group number
+                continue;
+            }
+            segments.add(pfn.substring(start, open));
+            groups.add(group);
+            start = close + 1;
+            open = close;
+        }
+        segments.add(pfn.substring(start));
+
+        int[] g = new int[groups.size()];
+        for (int i = 0; i < g.length; i++) {
+            g[i] = groups.get(i);
+        }
+        return new PFNTemplate(segments.toArray(new String[segments.size()]), g);
+    }
+
+    /**
+     * Expands the template with the groups of a successful match.
+     *
+     * @param matcher the matcher, on which matches() returned true.
+     * @return the PFN
+     */
+    public String expand(Matcher matcher) {
+        if (mGroups.length == 0) {
+            return mSegments[0];
+        }
+        int count = matcher.groupCount();
+        StringBuilder sb = new StringBuilder(mLength + 16 * mGroups.length);
+        sb.append(mSegments[0]);
+        for (int i = 0; i < mGroups.length; i++) {
+            int group = mGroups[i];
+            if (group <= count) {
+                String value = matcher.group(group);
+                if (value != null) {
+                    sb.append(value);
+                }
+            } else {
+                sb.append('[').append(group).append(']');
+            }
+            sb.append(mSegments[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the number of group references in the template.
+     *
+     * @return the number of references.
+     */
+    public int getReferenceCount() {
+        return mGroups.length;
+    }
+}
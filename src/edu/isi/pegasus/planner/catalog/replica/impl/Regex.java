@@ -80,6 +80,9 @@ public class Regex implements ReplicaCatalog {
 
     public static final String REGEX_KEY = "regex";
 
+    /** The maximum number of LFN's for which the expanded PFN's are cached. */
+    private static final int MAXIMUM_EXPANSIONS = 100000;
+
     /**
      * Records the quoting mode for LFNs and PFNs. If false, only quote as necessary. If true,
      * always quote all LFNs and PFNs.
@@ -96,6 +99,22 @@ public class Regex implements ReplicaCatalog {
 
     protected Map<String, Pattern> m_lfn_pattern = null;
 
+    /**
+     * Indexes the patterns in m_lfn_pattern by their literal prefix and suffix, in the same order,
+     * so that a lookup does not have to match every pattern.
+     */
+    protected RegexIndex m_lfn_index = null;
+
+    /** The PFN's of the regex entries parsed into templates, indexed by the PFN. */
+    protected Map<String, PFNTemplate> m_pfn_templates = null;
+
+    /**
+     * Caches the expanded PFN's of the first matching pattern for the LFN's looked up, so that
+     * repeated lookups of an LFN do not match and expand again. Cleared whenever the regex entries
+     * change.
+     */
+    protected Map<String, Expansion> m_expansions = null;
+
     /** A boolean indicating whether the catalog is read only or not. */
     boolean m_readonly;
 
@@ -116,6 +135,9 @@ public class Regex implements ReplicaCatalog {
         m_lfn = null;
         m_lfn_regex = null;
         m_lfn_pattern = null;
+        m_lfn_index = null;
+        m_pfn_templates = null;
+        m_expansions = null;
         m_filename = null;
         m_readonly = false;
         mVariableExpander = new VariableExpander();
@@ -331,6 +353,9 @@ public class Regex implements ReplicaCatalog {
         m_lfn = new LinkedHashMap<String, Collection<ReplicaCatalogEntry>>();
         m_lfn_regex = new LinkedHashMap<String, Collection<ReplicaCatalogEntry>>();
         m_lfn_pattern = new LinkedHashMap<String, Pattern>();
+        m_lfn_index = new RegexIndex();
+        m_pfn_templates = new HashMap<String, PFNTemplate>();
+        m_expansions = newExpansionCache();
         try {
             File f = new File(filename);
             if (f.exists()) {
@@ -358,6 +383,9 @@ public class Regex implements ReplicaCatalog {
             m_lfn = null;
             m_lfn_regex = null;
             m_lfn_pattern = null;
+            m_lfn_index = null;
+            m_pfn_templates = null;
+            m_expansions = null;
             m_filename = null;
             throw new RuntimeException(ioe); // re-throw
         }
@@ -437,10 +465,16 @@ public class Regex implements ReplicaCatalog {
             if (m_lfn_regex != null) {
                 m_lfn_regex.clear();
                 m_lfn_pattern.clear();
+                m_lfn_index.clear();
+                m_pfn_templates.clear();
+                m_expansions.clear();
             }
 
             m_lfn_regex = null;
             m_lfn_pattern = null;
+            m_lfn_index = null;
+            m_pfn_templates = null;
+            m_expansions = null;
             m_filename = null;
             return;
         }
@@ -466,9 +500,15 @@ public class Regex implements ReplicaCatalog {
             if (m_lfn_regex != null) {
                 m_lfn_regex.clear();
                 m_lfn_pattern.clear();
+                m_lfn_index.clear();
+                m_pfn_templates.clear();
+                m_expansions.clear();
             }
             m_lfn_regex = null;
             m_lfn_pattern = null;
+            m_lfn_index = null;
+            m_pfn_templates = null;
+            m_expansions = null;
             m_filename = null;
         }
     }
@@ -545,32 +585,21 @@ public class Regex implements ReplicaCatalog {
         }
 
         // Lookup regex LFN's
-        Pattern p = null;
         Matcher m = null;
         String pool = null;
         ReplicaCatalogEntry rce = null;
-        for (String l : m_lfn_regex.keySet()) {
-            p = m_lfn_pattern.get(l);
-            m = p.matcher(lfn);
-            if (m.matches()) {
-                Collection<ReplicaCatalogEntry> entries = m_lfn_regex.get(l);
-                for (ReplicaCatalogEntry entry : entries) {
-                    pool = entry.getResourceHandle();
-                    if (pool == null && handle == null
-                            || pool != null && handle != null && pool.equals(handle)) {
-                        String tmpPFN = entry.getPFN();
-                        for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                            // tmpPFN = tmpPFN.replaceAll ("\\$" + k, m.group (k));
-                            tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                        }
-                        if (tmpPFN.indexOf('[') >= 0) {
-                            // PFN still has variables left.
-                        }
-                        // Add new RCE
-                        rce = cloneRCE(entry);
-                        rce.setPFN(tmpPFN);
-                        c.add(rce);
-                    }
+        // all the matching patterns contribute, in the order they were inserted
+        for (RegexIndex.Match match : m_lfn_index.matches(lfn)) {
+            m = match.getMatcher();
+            Collection<ReplicaCatalogEntry> entries = m_lfn_regex.get(match.getKey());
+            for (ReplicaCatalogEntry entry : entries) {
+                pool = entry.getResourceHandle();
+                if (pool == null && handle == null
+                        || pool != null && handle != null && pool.equals(handle)) {
+                    // Add new RCE
+                    rce = cloneRCE(entry);
+                    rce.setPFN(this.expand(entry.getPFN(), m));
+                    c.add(rce);
                 }
             }
         }
@@ -592,32 +621,16 @@ public class Regex implements ReplicaCatalog {
         // Lookup regular LFN's
         tmp = m_lfn.get(lfn);
         if (tmp != null) c.addAll(tmp);
-        // Lookup regex LFN's
+        // Lookup regex LFN's. only the first matching pattern contributes
         ReplicaCatalogEntry rce = null;
-        Pattern p = null;
-        Matcher m = null;
-        for (String l : m_lfn_regex.keySet()) {
-            p = m_lfn_pattern.get(l);
-            m = p.matcher(lfn);
-            if (m.matches()) {
-                Collection<ReplicaCatalogEntry> entries = m_lfn_regex.get(l);
-                Collection<ReplicaCatalogEntry> entriesResult =
-                        new ArrayList<ReplicaCatalogEntry>();
-                for (ReplicaCatalogEntry entry : entries) {
-                    String tmpPFN = entry.getPFN();
-                    for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                        tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                    }
-                    if (tmpPFN.indexOf('[') >= 0) {
-                        // PFN still has variables left.
-                    }
-                    // Add new RCE
-                    rce = cloneRCE(entry);
-                    rce.setPFN(tmpPFN);
-                    entriesResult.add(rce);
-                }
-                c.addAll(entriesResult);
-                break;
+        Expansion expansion = this.firstExpansion(lfn);
+        if (expansion != null) {
+            int index = 0;
+            for (ReplicaCatalogEntry entry : m_lfn_regex.get(expansion.mKey)) {
+                // Add new RCE
+                rce = cloneRCE(entry);
+                rce.setPFN(expansion.mPFNs[index++]);
+                c.add(rce);
             }
         }
         return c;
@@ -628,6 +641,78 @@ public class Regex implements ReplicaCatalog {
         return (ReplicaCatalogEntry) e.clone();
     }
 
+    /**
+     * Substitutes the groups of a match for the variables in the PFN of a regex entry.
+     *
+     * @param pfn the PFN of the regex entry
+     * @param m the matcher that matched the LFN against the pattern of the entry
+     * @return the PFN with the variables substituted
+     */
+    private String expand(String pfn, Matcher m) {
+        PFNTemplate template = m_pfn_templates.get(pfn);
+        if (template == null) {
+            template = PFNTemplate.compile(pfn);
+            m_pfn_templates.put(pfn, template);
+        }
+        return template.expand(m);
+    }
+
+    /**
+     * Returns the expanded PFN's of the first pattern that matches an LFN, from the cache if the
+     * LFN was looked up before.
+     *
+     * @param lfn the LFN
+     * @return the expansion, or null if no pattern matches the LFN
+     */
+    private Expansion firstExpansion(String lfn) {
+        Expansion expansion = m_expansions.get(lfn);
+        if (expansion != null || m_expansions.containsKey(lfn)) {
+            return expansion;
+        }
+
+        RegexIndex.Match match = m_lfn_index.first(lfn);
+        if (match != null) {
+            Matcher m = match.getMatcher();
+            Collection<ReplicaCatalogEntry> entries = m_lfn_regex.get(match.getKey());
+            String[] pfns = new String[entries.size()];
+            int index = 0;
+            for (ReplicaCatalogEntry entry : entries) {
+                pfns[index++] = this.expand(entry.getPFN(), m);
+            }
+            expansion = new Expansion(match.getKey(), pfns);
+        }
+        m_expansions.put(lfn, expansion);
+        return expansion;
+    }
+
+    /**
+     * Creates the cache for the expansions, that evicts the least recently used LFN's once full.
+     *
+     * @return the cache
+     */
+    private static Map<String, Expansion> newExpansionCache() {
+        return new LinkedHashMap<String, Expansion>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Expansion> eldest) {
+                return size() > MAXIMUM_EXPANSIONS;
+            }
+        };
+    }
+
+    /** The expanded PFN's of the entries of the first pattern that matched an LFN. */
+    protected static class Expansion {
+
+        /** The pattern that matched. */
+        private final String mKey;
+
+        /** The expanded PFN's, in the order of the entries for the pattern. */
+        private final String[] mPFNs;
+
+        private Expansion(String key, String[] pfns) {
+            mKey = key;
+            mPFNs = pfns;
+        }
+    }
+
     /**
      * Retrieves all entries for a given LFN from the replica catalog. Each entry in the result set
      * is just a PFN string. Duplicates are reduced through the set paradigm.
@@ -711,8 +796,6 @@ public class Regex implements ReplicaCatalog {
      */
     public Map lookup(Set lfns, String handle) {
         Collection<ReplicaCatalogEntry> c = null;
-        Pattern p = null;
-        Matcher m = null;
         String lfn = null;
         String pool = null;
         Map<String, Collection<ReplicaCatalogEntry>> result =
@@ -732,37 +815,25 @@ public class Regex implements ReplicaCatalog {
                         value.add(rce);
                 }
             }
-            // Lookup regex LFN's
-            for (String l : m_lfn_regex.keySet()) {
-                p = m_lfn_pattern.get(l); // Get one pattern
-                m = p.matcher(lfn); // See if f.a matches pattern
-                if (m.matches()) // Pattern matches?
-                {
-                    Collection<ReplicaCatalogEntry> entries = m_lfn_regex.get(l);
-                    // Get all RCE entries for the matched pattern.
-                    for (ReplicaCatalogEntry entry : entries) {
-                        pool = entry.getResourceHandle();
-                        // Entry matches handle requirement?
-                        if (pool == null && handle == null
-                                || pool != null && handle != null && pool.equals(handle)) {
-                            String tmpPFN = entry.getPFN();
-                            // Substitute variables in PFN before returning
-                            for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                                tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                            }
-                            // Are there unsubstituted variables?
-                            if (tmpPFN.indexOf('[') >= 0) {
-                                // PFN still has variables left.
-                            }
-                            // Return new PFN
-                            // entry.setPFN( tmpPFN );
-                            rce = cloneRCE(entry);
-                            rce.setPFN(tmpPFN);
-                            value.add(rce);
-                            // Break if value.size == 2?
-                        }
+            // Lookup regex LFN's. first pattern that matches f.a
+            Expansion expansion = this.firstExpansion(lfn);
+            if (expansion != null) {
+                int index = 0;
+                // Get all RCE entries for the matched pattern.
+                for (ReplicaCatalogEntry entry : m_lfn_regex.get(expansion.mKey)) {
+                    // the PFN of the entry with the variables substituted
+                    String pfn = expansion.mPFNs[index++];
+                    pool = entry.getResourceHandle();
+                    // Entry matches handle requirement?
+                    if (pool == null && handle == null
+                            || pool != null && handle != null && pool.equals(handle)) {
+                        // Return new PFN
+                        // entry.setPFN( tmpPFN );
+                        rce = cloneRCE(entry);
+                        rce.setPFN(pfn);
+                        value.add(rce);
+                        // Break if value.size == 2?
                     }
-                    break;
                 }
             }
             result.put(lfn, value);
@@ -916,6 +987,11 @@ public class Regex implements ReplicaCatalog {
             }
         }
 
+        if (isRegex || m_lfn_regex.containsKey(lfn)) {
+            // the regex entries change
+            m_expansions.clear();
+        }
+
         if (m_lfn_regex.containsKey(lfn)) {
             c = m_lfn_regex.get(lfn);
 
@@ -942,7 +1018,9 @@ public class Regex implements ReplicaCatalog {
 
             if (isRegex) {
                 m_lfn_regex.put(lfn, c);
-                m_lfn_pattern.put(lfn, Pattern.compile(lfn));
+                Pattern p = Pattern.compile(lfn);
+                m_lfn_pattern.put(lfn, p);
+                m_lfn_index.add(lfn, p);
             } else {
                 m_lfn.put(lfn, c);
             }
@@ -1174,6 +1252,9 @@ public class Regex implements ReplicaCatalog {
         m_lfn.clear();
         m_lfn_regex.clear();
         m_lfn_pattern.clear();
+        m_lfn_index.clear();
+        m_pfn_templates.clear();
+        m_expansions.clear();
         return result;
     }
 
@@ -0,0 +1,469 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An index over an ordered list of regular expressions, that finds the expressions matching a
+ * filename without running every expression against it.
+ *
+ * <p>For each expression the literal prefix and suffix that any match must start and end with are
+ * extracted. The prefixes are stored in a trie, and the suffixes in a trie built over the reversed
+ * suffixes. A lookup walks both tries along the filename, which together act as the prefilter that
+ * rejects expressions that cannot match. Only the surviving candidates are matched with <code>
+ * java.util.regex</code>, in the order in which the expressions were added. Expressions for which
+ * no literal can be determined safely (alternations, inline flags, quoting) end up with an empty
+ * prefix and suffix, and are always candidates.
+ *
+ * <p>The index is append only, mirroring the way patterns are loaded in the Regex replica catalog.
+ *
+ * @version $Revision$
+ */
+public class RegexIndex {
+
+    /** The characters that have a special meaning outside of an escape. */
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    /** The characters that quantify the preceding character. */
+    private static final String QUANTIFIERS = "?*+{";
+
+    /** Captures the result of a successful match. */
+    public static class Match {
+
+        /** The key under which the pattern was added. */
+        private final String mKey;
+
+        /** The matcher, on which matches() returned true. */
+        private final Matcher mMatcher;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param key the key of the pattern
+         * @param matcher the matcher
+         */
+        public Match(String key, Matcher matcher) {
+            mKey = key;
+            mMatcher = matcher;
+        }
+
+        /**
+         * Returns the key under which the matching pattern was added.
+         *
+         * @return the key
+         */
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * Returns the matcher that matched the filename, to retrieve the groups from.
+         *
+         * @return the matcher
+         */
+        public Matcher getMatcher() {
+            return mMatcher;
+        }
+    }
+
+    /** A growable list of pattern ordinals, in ascending order. */
+    private static class Ordinals {
+
+        /** The ordinals. */
+        private int[] mValues = new int[4];
+
+        /** The number of ordinals stored. */
+        private int mCount;
+
+        private void add(int ordinal) {
+            if (mCount == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mCount * 2);
+            }
+            mValues[mCount++] = ordinal;
+        }
+    }
+
+    /**
+     * A node in the prefix and suffix tries. The patterns whose literal ends at a node are further
+     * bucketed by the character their literal on the other side ends with, that is the last
+     * character of the suffix for the prefix trie, and the first character of the prefix for the
+     * suffix trie.
+     */
+    private static class Node {
+
+        /** The characters labelling the edges to the child nodes, in ascending order. */
+        private char[] mLabels = new char[0];
+
+        /** The child nodes, in the order of their labels. */
+        private Node[] mChildren = new Node[0];
+
+        /** The patterns without a literal on the other side. */
+        private Ordinals mUnbounded;
+
+        /** The patterns indexed by the boundary character of the literal on the other side. */
+        private Map<Character, Ordinals> mBounded;
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(mLabels, c);
+            return i < 0 ? null : mChildren[i];
+        }
+
+        private Node addChild(char c) {
+            int i = Arrays.binarySearch(mLabels, c);
+            if (i >= 0) {
+                return mChildren[i];
+            }
+            // most nodes have a single child, so the arrays are grown one at a time
+            i = -(i + 1);
+            int length = mLabels.length;
+            char[] labels = new char[length + 1];
+            Node[] children = new Node[length + 1];
+            System.arraycopy(mLabels, 0, labels, 0, i);
+            System.arraycopy(mChildren, 0, children, 0, i);
+            System.arraycopy(mLabels, i, labels, i + 1, length - i);
+            System.arraycopy(mChildren, i, children, i + 1, length - i);
+            labels[i] = c;
+            children[i] = new Node();
+            mLabels = labels;
+            mChildren = children;
+            return children[i];
+        }
+
+        private void add(int ordinal, String other, boolean last) {
+            Ordinals ordinals;
+            if (other.isEmpty()) {
+                if (mUnbounded == null) {
+                    mUnbounded = new Ordinals();
+                }
+                ordinals = mUnbounded;
+            } else {
+                if (mBounded == null) {
+                    mBounded = new HashMap<Character, Ordinals>(4);
+                }
+                char c = last ? other.charAt(other.length() - 1) : other.charAt(0);
+                ordinals = mBounded.get(c);
+                if (ordinals == null) {
+                    ordinals = new Ordinals();
+                    mBounded.put(c, ordinals);
+                }
+            }
+            ordinals.add(ordinal);
+        }
+
+        private Ordinals bounded(char c) {
+            return mBounded == null ? null : mBounded.get(c);
+        }
+    }
+
+    /** The keys of the patterns, indexed by ordinal. */
+    private final List<String> mKeys;
+
+    /** The compiled patterns, indexed by ordinal. */
+    private final List<Pattern> mPatterns;
+
+    /** The literal prefixes of the patterns, indexed by ordinal. */
+    private final List<String> mPrefixes;
+
+    /** The literal suffixes of the patterns, indexed by ordinal. */
+    private final List<String> mSuffixes;
+
+    /** The root of the trie over the prefixes. */
+    private Node mPrefixRoot;
+
+    /** The root of the trie over the reversed suffixes. */
+    private Node mSuffixRoot;
+
+    /** The default constructor. */
+    public RegexIndex() {
+        mKeys = new ArrayList<String>();
+        mPatterns = new ArrayList<Pattern>();
+        mPrefixes = new ArrayList<String>();
+        mSuffixes = new ArrayList<String>();
+        mPrefixRoot = new Node();
+        mSuffixRoot = new Node();
+    }
+
+    /**
+     * Adds a pattern to the end of the index.
+     *
+     * @param key the key to associate with the pattern, usually the regular expression itself
+     * @param pattern the compiled pattern
+     */
+    public void add(String key, Pattern pattern) {
+        int ordinal = mPatterns.size();
+        String prefix = "";
+        String suffix = "";
+        if (indexable(pattern)) {
+            prefix = literalPrefix(pattern.pattern());
+            suffix = literalSuffix(pattern.pattern());
+        }
+        mKeys.add(key);
+        mPatterns.add(pattern);
+        mPrefixes.add(prefix);
+        mSuffixes.add(suffix);
+
+        Node node = mPrefixRoot;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.addChild(prefix.charAt(i));
+        }
+        node.add(ordinal, suffix, true);
+
+        node = mSuffixRoot;
+        for (int i = suffix.length() - 1; i >= 0; i--) {
+            node = node.addChild(suffix.charAt(i));
+        }
+        node.add(ordinal, prefix, false);
+    }
+
+    /** Removes all the patterns from the index. */
+    public void clear() {
+        mKeys.clear();
+        mPatterns.clear();
+        mPrefixes.clear();
+        mSuffixes.clear();
+        mPrefixRoot = new Node();
+        mSuffixRoot = new Node();
+    }
+
+    /**
+     * Returns the number of patterns in the index.
+     *
+     * @return the number of patterns
+     */
+    public int size() {
+        return mPatterns.size();
+    }
+
+    /**
+     * Returns the first pattern, in the order the patterns were added, that matches the filename.
+     *
+     * @param lfn the filename to match
+     * @return the match, else null if no pattern matches
+     */
+    public Match first(String lfn) {
+        for (int ordinal : this.candidates(lfn)) {
+            Matcher m = mPatterns.get(ordinal).matcher(lfn);
+            if (m.matches()) {
+                return new Match(mKeys.get(ordinal), m);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all the patterns that match the filename, in the order the patterns were added.
+     *
+     * @param lfn the filename to match
+     * @return the matches, empty if no pattern matches
+     */
+    public List<Match> matches(String lfn) {
+        List<Match> result = new ArrayList<Match>();
+        for (int ordinal : this.candidates(lfn)) {
+            Matcher m = mPatterns.get(ordinal).matcher(lfn);
+            if (m.matches()) {
+                result.add(new Match(mKeys.get(ordinal), m));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ordinals of the patterns whose literal prefix and suffix are compatible with the
+     * filename, in ascending order. The candidates are collected from the trie with the fewer
+     * entries along the filename, and then filtered against the literal of the other side.
+     *
+     * @param lfn the filename
+     * @return the candidate ordinals, sorted
+     */
+    int[] candidates(String lfn) {
+        int prefixTotal = this.collect(lfn, true, null);
+        int suffixTotal = this.collect(lfn, false, null);
+        boolean fromPrefix = prefixTotal <= suffixTotal;
+        int[] result = new int[fromPrefix ? prefixTotal : suffixTotal];
+        int count = this.collect(lfn, fromPrefix, result);
+        result = count == result.length ? result : Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Walks one of the tries along the filename, and either counts the patterns stored along the
+     * path, or collects the ones that also pass the check against the literal on the other side.
+     *
+     * @param lfn the filename
+     * @param fromPrefix whether to walk the prefix trie, or the suffix trie
+     * @param result the array to collect the ordinals into, null to only count the candidates
+     * @return the number of ordinals counted or collected
+     */
+    private int collect(String lfn, boolean fromPrefix, int[] result) {
+        int length = lfn.length();
+        int count = 0;
+        Node node = fromPrefix ? mPrefixRoot : mSuffixRoot;
+        for (int i = 0; node != null; i++) {
+            count = this.collect(lfn, fromPrefix, node.mUnbounded, result, count);
+            if (node.mBounded != null && length > 0) {
+                Ordinals bounded =
+                        node.bounded(fromPrefix ? lfn.charAt(length - 1) : lfn.charAt(0));
+                count = this.collect(lfn, fromPrefix, bounded, result, count);
+            }
+            if (i < length) {
+                node = node.child(fromPrefix ? lfn.charAt(i) : lfn.charAt(length - 1 - i));
+            } else {
+                node = null;
+            }
+        }
+        return count;
+    }
+
+    private int collect(
+            String lfn, boolean fromPrefix, Ordinals ordinals, int[] result, int count) {
+        if (ordinals == null) {
+            return count;
+        }
+        if (result == null) {
+            return count + ordinals.mCount;
+        }
+        for (int j = 0; j < ordinals.mCount; j++) {
+            int ordinal = ordinals.mValues[j];
+            if (fromPrefix
+                    ? lfn.endsWith(mSuffixes.get(ordinal))
+                    : lfn.startsWith(mPrefixes.get(ordinal))) {
+                result[count++] = ordinal;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether literals can be extracted safely from the pattern. Flags, inline flags,
+     * quoting and alternation all change which characters are literal, and such patterns are kept
+     * unindexed.
+     *
+     * @param pattern the pattern
+     * @return boolean
+     */
+    private static boolean indexable(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return false;
+        }
+        String regex = pattern.pattern();
+        if (regex.contains("(?") || regex.contains("\\Q")) {
+            return false;
+        }
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '|') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the literal string that every match of the regular expression starts with. Escaped
+     * punctuation is treated as a literal, and a character followed by a quantifier is not part of
+     * the prefix.
+     *
+     * @param regex the regular expression without alternation, inline flags or quoting
+     * @return the prefix, can be empty
+     */
+    static String literalPrefix(String regex) {
+        StringBuilder sb = new StringBuilder();
+        int length = regex.length();
+        int i = (length > 0 && regex.charAt(0) == '^') ? 1 : 0;
+        while (i < length) {
+            char c = regex.charAt(i);
+            char literal;
+            int next;
+            if (c == '\\') {
+                if (i + 1 < length && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    literal = regex.charAt(i + 1);
+                    next = i + 2;
+                } else {
+                    break;
+                }
+            } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                next = i + 1;
+            }
+            if (next < length && QUANTIFIERS.indexOf(regex.charAt(next)) >= 0) {
+                // one or more still requires the literal once
+                if (regex.charAt(next) == '+') {
+                    sb.append(literal);
+                }
+                break;
+            }
+            sb.append(literal);
+            i = next;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the literal string that every match of the regular expression ends with.
+     *
+     * @param regex the regular expression without alternation, inline flags or quoting
+     * @return the suffix, can be empty
+     */
+    static String literalSuffix(String regex) {
+        StringBuilder sb = new StringBuilder();
+        int j = regex.length() - 1;
+        if (j >= 0 && regex.charAt(j) == '$' && backslashesBefore(regex, j) % 2 == 0) {
+            j--;
+        }
+        while (j >= 0) {
+            char c = regex.charAt(j);
+            if (backslashesBefore(regex, j) % 2 == 1) {
+                if (Character.isLetterOrDigit(c)) {
+                    // a character class or back reference
+                    break;
+                }
+                sb.append(c);
+                j -= 2;
+            } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                break;
+            } else {
+                sb.append(c);
+                j--;
+            }
+        }
+        return sb.reverse().toString();
+    }
+
+    /**
+     * Counts the consecutive backslashes before a position in the string.
+     *
+     * @param regex the string
+     * @param position the position
+     * @return the number of backslashes
+     */
+    private static int backslashesBefore(String regex, int position) {
+        int count = 0;
+        for (int i = position - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+            count++;
+        }
+        return count;
+    }
+}
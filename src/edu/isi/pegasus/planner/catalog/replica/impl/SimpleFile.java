@@ -43,6 +43,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.BiConsumer;
 import java.util.regex.Pattern;
 
 /**
@@ -76,6 +77,10 @@ import java.util.regex.Pattern;
  * <p>The class is strict when producing (storing) results. The LFN and PFN are only quoted and
  * escaped, if necessary. The attribute values are always quoted and escaped.
  *
+ * <p>If the property "journal" is set to true, the catalog is not rewritten on close. Instead the
+ * changes are appended to a journal next to the file, which allows multiple instances to update the
+ * catalog at the same time. See {@link Journal}.
+ *
  * @author Jens-S. Vöckler
  * @version $Revision$
  */
@@ -102,6 +107,9 @@ public class SimpleFile implements ReplicaCatalog {
     /** whether to do any variable expansion or not */
     private boolean mDoVariableExpansion;
 
+    /** The journal of the changes to the catalog, if connected in journaled mode. */
+    protected Journal m_journal;
+
     /**
      * Default empty constructor creates an object that is not yet connected to any database. You
      * must use support methods to connect before this instance becomes usable.
@@ -113,6 +121,7 @@ public class SimpleFile implements ReplicaCatalog {
         m_lfn = null;
         m_filename = null;
         m_readonly = false;
+        m_journal = null;
         mVariableExpander = new VariableExpander();
     }
 
@@ -223,6 +232,19 @@ public class SimpleFile implements ReplicaCatalog {
      * @return true if a valid element was generated
      */
     public boolean parse(String line, int lineno) {
+        return SimpleFile.parse(line, lineno, (lfn, rce) -> insert(lfn, rce));
+    }
+
+    /**
+     * Parses a line in the format of the file replica catalog
+     *
+     * @param line is the line to parse
+     * @param lineno is the line number of this line
+     * @param callback is called with the LFN and the entry parsed from the line
+     * @return true if a valid element was generated
+     */
+    static boolean parse(
+            String line, int lineno, BiConsumer<String, ReplicaCatalogEntry> callback) {
         char ch = ' ';
         String lfn = null;
         String pfn = null;
@@ -309,7 +331,7 @@ public class SimpleFile implements ReplicaCatalog {
             // valid entry
             if (state == 16) {
                 ReplicaCatalogEntry rce = new ReplicaCatalogEntry(pfn, attr);
-                insert(lfn, rce);
+                callback.accept(lfn, rce);
             }
             return true;
         }
@@ -328,28 +350,12 @@ public class SimpleFile implements ReplicaCatalog {
         m_lfn = new LinkedHashMap();
 
         try {
-            File f = new File(filename);
-            if (f.exists()) {
-                LineNumberReader lnr = new LineNumberReader(new FileReader(f));
-                String line;
-                while ((line = lnr.readLine()) != null) {
-                    if (line.length() == 0 || line.charAt(0) == '#') {
-                        continue;
-                    }
-                    // PM-831 expand the line before parsing
-                    try {
-                        line = this.mDoVariableExpansion ? mVariableExpander.expand(line) : line;
-                    } catch (RuntimeException e) {
-                        // rethrow again
-                        throw new RuntimeException(
-                                "Error while expanding contents of file based rc at line number "
-                                        + lnr.getLineNumber(),
-                                e);
-                    }
-                    parse(line, lnr.getLineNumber());
-                }
-
-                lnr.close();
+            final File f = new File(filename);
+            if (m_journal == null) {
+                this.read(f);
+            } else {
+                // replay the changes made by other writers on top of the file
+                m_journal.load(() -> this.read(f), this::apply);
             }
         } catch (IOException ioe) {
             m_lfn = null;
@@ -360,6 +366,86 @@ public class SimpleFile implements ReplicaCatalog {
         return true;
     }
 
+    /**
+     * Reads the entries in a file into memory.
+     *
+     * @param f the file to read
+     * @throws IOException in case of error while reading the file
+     */
+    private void read(File f) throws IOException {
+        if (f.exists()) {
+            LineNumberReader lnr = new LineNumberReader(new FileReader(f));
+            String line;
+            while ((line = lnr.readLine()) != null) {
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    continue;
+                }
+                // PM-831 expand the line before parsing
+                try {
+                    line = this.mDoVariableExpansion ? mVariableExpander.expand(line) : line;
+                } catch (RuntimeException e) {
+                    // rethrow again
+                    throw new RuntimeException(
+                            "Error while expanding contents of file based rc at line number "
+                                    + lnr.getLineNumber(),
+                            e);
+                }
+                parse(line, lnr.getLineNumber());
+            }
+
+            lnr.close();
+        }
+    }
+
+    /**
+     * Applies a record from the journal to the entries in memory.
+     *
+     * @param operation the operation
+     * @param lfn the logical filename
+     * @param rce the replica catalog entry
+     */
+    private void apply(char operation, String lfn, ReplicaCatalogEntry rce) {
+        if (operation == Journal.INSERT_OPERATION) {
+            insert(lfn, rce);
+            return;
+        }
+        Collection<ReplicaCatalogEntry> c = m_lfn.get(lfn);
+        if (c == null) {
+            return;
+        }
+        String pfn = rce.getPFN();
+        String handle = rce.getResourceHandle();
+        for (Iterator<ReplicaCatalogEntry> i = c.iterator(); i.hasNext(); ) {
+            ReplicaCatalogEntry existing = i.next();
+            if (pfn.equals(existing.getPFN())
+                    && ((handle == null && existing.getResourceHandle() == null)
+                            || (handle != null && handle.equals(existing.getResourceHandle())))) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Records the entries removed for an LFN in the journal, if connected in journaled mode.
+     *
+     * @param lfn the logical filename
+     * @param before the entries before the removal
+     * @param after the entries after the removal
+     */
+    private void recordDeletions(
+            String lfn,
+            Collection<ReplicaCatalogEntry> before,
+            Collection<ReplicaCatalogEntry> after) {
+        if (m_journal == null) {
+            return;
+        }
+        for (ReplicaCatalogEntry rce : before) {
+            if (after == null || !after.contains(rce)) {
+                m_journal.record(Journal.DELETE_OPERATION, lfn, rce);
+            }
+        }
+    }
+
     /**
      * Establishes a connection to the database from the properties. You will need to specify a
      * "file" property to point to the location of the on-disk instance. If the property "quote" is
@@ -381,6 +467,11 @@ public class SimpleFile implements ReplicaCatalog {
         mDoVariableExpansion =
                 Boolean.parse(props.getProperty(ReplicaCatalog.VARIABLE_EXPANSION_KEY), true);
 
+        m_journal =
+                (props.containsKey("file") && Journal.isEnabled(props))
+                        ? new Journal(new File(props.getProperty("file")), props)
+                        : null;
+
         if (props.containsKey("file")) return connect(props.getProperty("file"));
 
         return false;
@@ -400,16 +491,28 @@ public class SimpleFile implements ReplicaCatalog {
      * @return either the original string, or a newly allocated instance to an escaped string.
      */
     public String quote(Escape e, String s) {
+        return SimpleFile.quote(e, s, m_quote);
+    }
+
+    /**
+     * Quotes a string only if necessary, or if quoting is forced.
+     *
+     * @param e is the Escape instance used to escape strings.
+     * @param s is the string that may require quoting
+     * @param force whether to always quote the string
+     * @return either the original string, or a newly allocated instance to an escaped string.
+     */
+    static String quote(Escape e, String s, boolean force) {
         String result = null;
 
         if (s == null || s.length() == 0) {
             // empty string short-cut
-            result = (m_quote ? "\"\"" : s);
+            result = (force ? "\"\"" : s);
         } else {
             // string has content
-            boolean flag = m_quote;
+            boolean flag = force;
             for (int i = 0; i < s.length() && !flag; ++i) {
-                // Note: loop will never trigger, if m_quote is true
+                // Note: loop will never trigger, if force is true
                 char ch = s.charAt(i);
                 flag = (ch == '"' || ch == '\\' || ch == '=' || Character.isWhitespace(ch));
             }
@@ -428,9 +531,6 @@ public class SimpleFile implements ReplicaCatalog {
      * quote-escaped.
      */
     public void close() {
-        String newline = System.getProperty("line.separator", "\r\n");
-        Escape e = new Escape("\"\\", '\\');
-
         // sanity check
         if (m_lfn == null) return;
 
@@ -443,44 +543,23 @@ public class SimpleFile implements ReplicaCatalog {
         }
 
         try {
-
-            // open
-            Writer out = new BufferedWriter(new FileWriter(m_filename));
-
-            // write header
-            out.write(
-                    "# file-based replica catalog: "
-                            + Currently.iso8601(false, true, true, new Date()));
-            out.write(newline);
-
-            // write data
-            for (Iterator i = m_lfn.keySet().iterator(); i.hasNext(); ) {
-                String lfn = (String) i.next();
-                Collection c = (Collection) m_lfn.get(lfn);
-                if (c != null) {
-                    for (Iterator j = c.iterator(); j.hasNext(); ) {
-                        ReplicaCatalogEntry rce = (ReplicaCatalogEntry) j.next();
-                        out.write(quote(e, lfn));
-                        out.write(' ');
-                        out.write(quote(e, rce.getPFN()));
-                        for (Iterator k = rce.getAttributeIterator(); k.hasNext(); ) {
-                            String key = (String) k.next();
-                            String value = (String) rce.getAttribute(key);
-                            out.write(' ');
-                            out.write(key);
-                            out.write("=\"");
-                            out.write(e.escape(value));
-                            out.write('"');
-                        }
-
-                        // finalize record/line
-                        out.write(newline);
-                    }
+            if (m_journal == null) {
+                this.write(new File(m_filename));
+            } else {
+                // only append the changes, and fold the journal
+                // into the file once it has grown too large
+                m_journal.flush();
+                if (m_journal.requiresCompaction()) {
+                    final File f = new File(m_filename);
+                    m_journal.compact(
+                            () -> {
+                                m_lfn = new LinkedHashMap();
+                                this.read(f);
+                            },
+                            this::apply,
+                            this::write);
                 }
             }
-
-            // close
-            out.close();
         } catch (IOException ioe) {
             // FIXME: blurt message somewhere sane
             System.err.println(ioe.getMessage());
@@ -491,6 +570,55 @@ public class SimpleFile implements ReplicaCatalog {
         }
     }
 
+    /**
+     * Writes out the entries in memory to a file.
+     *
+     * @param f the file to write to
+     * @throws IOException in case of error while writing the file
+     */
+    protected void write(File f) throws IOException {
+        String newline = System.getProperty("line.separator", "\r\n");
+        Escape e = new Escape("\"\\", '\\');
+
+        // open
+        Writer out = new BufferedWriter(new FileWriter(f));
+
+        // write header
+        out.write(
+                "# file-based replica catalog: "
+                        + Currently.iso8601(false, true, true, new Date()));
+        out.write(newline);
+
+        // write data
+        for (Iterator i = m_lfn.keySet().iterator(); i.hasNext(); ) {
+            String lfn = (String) i.next();
+            Collection c = (Collection) m_lfn.get(lfn);
+            if (c != null) {
+                for (Iterator j = c.iterator(); j.hasNext(); ) {
+                    ReplicaCatalogEntry rce = (ReplicaCatalogEntry) j.next();
+                    out.write(quote(e, lfn));
+                    out.write(' ');
+                    out.write(quote(e, rce.getPFN()));
+                    for (Iterator k = rce.getAttributeIterator(); k.hasNext(); ) {
+                        String key = (String) k.next();
+                        String value = (String) rce.getAttribute(key);
+                        out.write(' ');
+                        out.write(key);
+                        out.write("=\"");
+                        out.write(e.escape(value));
+                        out.write('"');
+                    }
+
+                    // finalize record/line
+                    out.write(newline);
+                }
+            }
+        }
+
+        // close
+        out.close();
+    }
+
     /**
      * Predicate to check, if the connection with the catalog's implementation is still active. This
      * helps determining, if it makes sense to call <code>close()</code>.
@@ -502,6 +630,18 @@ public class SimpleFile implements ReplicaCatalog {
         return (m_lfn == null);
     }
 
+    /**
+     * Returns the entries stored for an LFN, in the order they were inserted. All the lookup
+     * functions retrieve the entries through this method.
+     *
+     * @param lfn is the logical filename to obtain the entries for.
+     * @return the collection of replica catalog entries, or <code>null</code> if the LFN is not in
+     *     the catalog.
+     */
+    protected Collection<ReplicaCatalogEntry> entries(String lfn) {
+        return m_lfn.get(lfn);
+    }
+
     /**
      * Retrieves the entry for a given filename and site handle from the replica catalog.
      *
@@ -510,7 +650,7 @@ public class SimpleFile implements ReplicaCatalog {
      * @return the (first) matching physical filename, or <code>null</code> if no match was found.
      */
     public String lookup(String lfn, String handle) {
-        Collection c = (Collection) m_lfn.get(lfn);
+        Collection c = this.entries(lfn);
         if (c == null) return null;
 
         for (Iterator i = c.iterator(); i.hasNext(); ) {
@@ -531,7 +671,7 @@ public class SimpleFile implements ReplicaCatalog {
      * @see ReplicaCatalogEntry
      */
     public Collection lookup(String lfn) {
-        Collection c = (Collection) m_lfn.get(lfn);
+        Collection c = this.entries(lfn);
         if (c == null) return new ArrayList();
         else return new ArrayList(c);
     }
@@ -545,7 +685,7 @@ public class SimpleFile implements ReplicaCatalog {
      */
     public Set lookupNoAttributes(String lfn) {
         Set result = new TreeSet();
-        Collection c = (Collection) m_lfn.get(lfn);
+        Collection c = this.entries(lfn);
 
         if (c != null) {
             for (Iterator i = c.iterator(); i.hasNext(); ) {
@@ -573,7 +713,7 @@ public class SimpleFile implements ReplicaCatalog {
 
         for (Iterator i = lfns.iterator(); i.hasNext(); ) {
             String lfn = (String) i.next();
-            Collection c = (Collection) m_lfn.get(lfn);
+            Collection c = this.entries(lfn);
             if (c == null) result.put(lfn, new ArrayList());
             else result.put(lfn, new ArrayList(c));
         }
@@ -597,7 +737,7 @@ public class SimpleFile implements ReplicaCatalog {
         for (Iterator i = lfns.iterator(); i.hasNext(); ) {
             Set value = new TreeSet();
             String lfn = (String) i.next();
-            Collection c = (Collection) m_lfn.get(lfn);
+            Collection c = this.entries(lfn);
             if (c != null) {
                 for (Iterator j = c.iterator(); j.hasNext(); ) {
                     value.add(((ReplicaCatalogEntry) j.next()).getPFN());
@@ -628,7 +768,7 @@ public class SimpleFile implements ReplicaCatalog {
 
         for (Iterator i = lfns.iterator(); i.hasNext(); ) {
             String lfn = (String) i.next();
-            Collection c = (Collection) m_lfn.get(lfn);
+            Collection c = this.entries(lfn);
             if (c != null) {
                 List value = new ArrayList();
 
@@ -665,7 +805,7 @@ public class SimpleFile implements ReplicaCatalog {
 
         for (Iterator i = lfns.iterator(); i.hasNext(); ) {
             String lfn = (String) i.next();
-            Collection c = (Collection) m_lfn.get(lfn);
+            Collection c = this.entries(lfn);
             if (c != null) {
                 List value = new ArrayList();
 
@@ -788,6 +928,9 @@ public class SimpleFile implements ReplicaCatalog {
         }
 
         c.add(tuple);
+        if (m_journal != null) {
+            m_journal.record(Journal.INSERT_OPERATION, lfn, tuple);
+        }
 
         return 1;
     }
@@ -868,6 +1011,7 @@ public class SimpleFile implements ReplicaCatalog {
         // anything removed?
         if (l.size() != c.size()) {
             result = c.size() - l.size();
+            recordDeletions(lfn, c, l);
             m_lfn.put(lfn, l);
         }
 
@@ -955,6 +1099,7 @@ public class SimpleFile implements ReplicaCatalog {
         // anything removed?
         if (l.size() != c.size()) {
             result = c.size() - l.size();
+            recordDeletions(lfn, c, l);
             m_lfn.put(lfn, l);
         }
 
@@ -1001,6 +1146,7 @@ public class SimpleFile implements ReplicaCatalog {
         // anything removed?
         if (l.size() != c.size()) {
             result = c.size() - l.size();
+            recordDeletions(lfn, c, l);
             m_lfn.put(lfn, l);
         }
 
@@ -1033,7 +1179,8 @@ public class SimpleFile implements ReplicaCatalog {
     public int remove(String lfn) {
         Collection c = (Collection) m_lfn.remove(lfn);
         if (c == null) return 0;
-        else return c.size();
+        recordDeletions(lfn, c, null);
+        return c.size();
     }
 
     /**
@@ -1080,6 +1227,7 @@ public class SimpleFile implements ReplicaCatalog {
                 }
                 if (l.size() != c.size()) {
                     result += (c.size() - l.size());
+                    recordDeletions(lfn, c, l);
                     m_lfn.put(lfn, l);
                 }
             }
@@ -1109,6 +1257,9 @@ public class SimpleFile implements ReplicaCatalog {
      */
     public int clear() {
         int result = m_lfn.size();
+        for (Map.Entry<String, Collection<ReplicaCatalogEntry>> entry : m_lfn.entrySet()) {
+            recordDeletions(entry.getKey(), entry.getValue(), null);
+        }
         m_lfn.clear();
         return result;
     }
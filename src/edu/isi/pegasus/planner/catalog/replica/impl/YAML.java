@@ -50,7 +50,6 @@ import edu.isi.pegasus.planner.parser.YAMLSchemaValidationResult;
 import edu.isi.pegasus.planner.parser.YAMLSchemaValidator;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
@@ -126,6 +125,10 @@ import java.util.regex.Pattern;
  * <p>The class is strict when producing (storing) results. The LFN and PFN are only quoted and
  * escaped, if necessary. The attribute values are always quoted and escaped.
  *
+ * <p>If the property "journal" is set to true, the catalog is not rewritten on close. Instead the
+ * inserted entries are appended to a journal next to the file, which allows multiple instances to
+ * update the catalog at the same time. See {@link Journal}.
+ *
  * @author Karan Vahi
  * @version $Revision: 5402 $
  */
@@ -141,6 +144,9 @@ public class YAML implements ReplicaCatalog {
     /** File object of the schema.. */
     private final File SCHEMA_FILE;
 
+    /** The maximum number of LFN's for which the expanded PFN's are cached. */
+    private static final int MAXIMUM_EXPANSIONS = 100000;
+
     /**
      * Records the quoting mode for LFNs and PFNs. If false, only quote as necessary. If true,
      * always quote all LFNs and PFNs.
@@ -158,6 +164,15 @@ public class YAML implements ReplicaCatalog {
 
     protected Map<String, Pattern> mLFNPattern = null;
 
+    /** The PFN's of the regex entries parsed into templates, indexed by the PFN. */
+    private Map<String, PFNTemplate> mPFNTemplates;
+
+    /**
+     * Caches the expanded PFN's of the regex entries matching the LFN's looked up, so that repeated
+     * lookups of an LFN do not match and expand again. Cleared whenever the regex entries change.
+     */
+    private Map<String, Expansions> mExpansions;
+
     /** A boolean indicating whether the catalog is read only or not. */
     boolean m_readonly;
 
@@ -167,6 +182,9 @@ public class YAML implements ReplicaCatalog {
     /** The version for the Replica Catalog */
     private String mVersion;
 
+    /** The journal of the changes to the catalog, if connected in journaled mode. */
+    private Journal mJournal;
+
     /**
      * Default empty constructor creates an object that is not yet connected to any database. You
      * must use support methods to connect before this instance becomes usable.
@@ -178,10 +196,13 @@ public class YAML implements ReplicaCatalog {
         mLFN = null;
         mLFNRegex = null;
         mLFNPattern = null;
+        mPFNTemplates = new HashMap<String, PFNTemplate>();
+        mExpansions = null;
         mFilename = null;
         m_readonly = false;
         mVariableExpander = new VariableExpander();
         mVersion = YAML.DEFAULT_REPLICA_CATALOG_VERSION;
+        mJournal = null;
 
         PegasusProperties props = PegasusProperties.getInstance();
         File schemaDir = props.getSchemaDir();
@@ -204,24 +225,44 @@ public class YAML implements ReplicaCatalog {
         mLFN = new LinkedHashMap<String, ReplicaLocation>();
         mLFNRegex = new LinkedHashMap<String, ReplicaLocation>();
         mLFNPattern = new LinkedHashMap<String, Pattern>();
+        mExpansions = newExpansionCache();
+
+        final File replicaFile = new File(filename);
+        try {
+            if (mJournal == null) {
+                this.read(replicaFile);
+            } else {
+                // replay the changes made by other writers on top of the file
+                mJournal.load(() -> this.read(replicaFile), this::apply);
+            }
+        } catch (IOException ioe) {
+            mLFN = null;
+            mLFNRegex = null;
+            mLFNPattern = null;
+            mExpansions = null;
+            mFilename = null;
+            throw new CatalogException(ioe); // re-throw
+        }
+        return true;
+    }
 
-        File replicaFile = new File(filename);
+    /**
+     * Reads the replicas in a file into memory.
+     *
+     * @param replicaFile the file to read
+     * @throws IOException in case of error while reading the file
+     */
+    private void read(File replicaFile) throws IOException {
         // first attempt to validate only if it exists
         if (replicaFile.exists() && validate(replicaFile, SCHEMA_FILE)) {
             Reader reader = null;
             try {
-                reader = new VariableExpansionReader(new FileReader(filename));
+                reader = new VariableExpansionReader(replicaFile);
                 ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
                 mapper.configure(MapperFeature.ALLOW_COERCION_OF_SCALARS, false);
                 // inject instance of this class to be used for deserialization
                 mapper.setInjectableValues(injectCallback());
                 mapper.readValue(reader, YAML.class);
-            } catch (IOException ioe) {
-                mLFN = null;
-                mLFNRegex = null;
-                mLFNPattern = null;
-                mFilename = null;
-                throw new CatalogException(ioe); // re-throw
             } finally {
                 if (reader != null) {
                     try {
@@ -231,7 +272,74 @@ public class YAML implements ReplicaCatalog {
                 }
             }
         }
-        return true;
+    }
+
+    /**
+     * Applies a record from the journal to the replicas in memory.
+     *
+     * @param operation the operation
+     * @param lfn the logical filename
+     * @param rce the replica catalog entry, with the metadata of the LFN as attributes
+     */
+    private void apply(char operation, String lfn, ReplicaCatalogEntry rce) {
+        if (operation == Journal.INSERT_OPERATION) {
+            Collection<ReplicaCatalogEntry> c = new ArrayList<ReplicaCatalogEntry>();
+            c.add(rce);
+            ReplicaLocation rl = new ReplicaLocation(lfn, c, false);
+            rl.setRegex(rce.isRegex());
+            this.insert(rl);
+            return;
+        }
+        String pfn = rce.getPFN();
+        String handle = rce.getResourceHandle();
+        for (Map<String, ReplicaLocation> m : new Map[] {mLFN, mLFNRegex}) {
+            ReplicaLocation rl = m.get(lfn);
+            if (rl == null) {
+                continue;
+            }
+            for (Iterator<ReplicaCatalogEntry> it = rl.getPFNList().iterator(); it.hasNext(); ) {
+                ReplicaCatalogEntry existing = it.next();
+                if (pfn.equals(existing.getPFN())
+                        && ((handle == null && existing.getResourceHandle() == null)
+                                || (handle != null
+                                        && handle.equals(existing.getResourceHandle())))) {
+                    it.remove();
+                }
+            }
+            if (rl.getPFNCount() == 0) {
+                m.remove(lfn);
+                mLFNPattern.remove(lfn);
+            }
+            if (m == mLFNRegex) {
+                // the regex entries change
+                mExpansions.clear();
+            }
+        }
+    }
+
+    /**
+     * Records the entries for an LFN in the journal, if connected in journaled mode. The metadata
+     * of the LFN is recorded as attributes of each entry.
+     *
+     * @param operation the operation
+     * @param rl the replica location
+     */
+    private void record(char operation, ReplicaLocation rl) {
+        if (mJournal == null) {
+            return;
+        }
+        Metadata m = rl.getAllMetadata();
+        for (ReplicaCatalogEntry rce : rl.getPFNList()) {
+            ReplicaCatalogEntry entry = (ReplicaCatalogEntry) rce.clone();
+            for (Iterator<String> it = m.getProfileKeyIterator(); it.hasNext(); ) {
+                String key = it.next();
+                entry.addAttribute(key, m.get(key));
+            }
+            if (rl.isRegex()) {
+                entry.addAttribute(ReplicaCatalogEntry.REGEX_KEY, "true");
+            }
+            mJournal.record(operation, rl.getLFN(), entry);
+        }
     }
 
     /**
@@ -252,6 +360,10 @@ public class YAML implements ReplicaCatalog {
         if (props.containsKey(YAML.READ_ONLY_KEY)) {
             m_readonly = Boolean.parse(props.getProperty(YAML.READ_ONLY_KEY), false);
         }
+        mJournal =
+                (props.containsKey("file") && Journal.isEnabled(props))
+                        ? new Journal(new File(props.getProperty("file")), props)
+                        : null;
         if (props.containsKey("file")) return connect(props.getProperty("file"));
         return false;
     }
@@ -267,7 +379,7 @@ public class YAML implements ReplicaCatalog {
         boolean validate = true;
         Reader reader = null;
         try {
-            reader = new VariableExpansionReader(new FileReader(f));
+            reader = new VariableExpansionReader(f);
         } catch (IOException ioe) {
             throw new ReplicaCatalogException(ioe);
         }
@@ -312,7 +424,6 @@ public class YAML implements ReplicaCatalog {
      * quote-escaped.
      */
     public void close() {
-        String newline = System.getProperty("line.separator", "\r\n");
         // sanity check
         if (mLFN == null && mLFNRegex == null) return;
         // check if the file is writeable or not
@@ -322,33 +433,37 @@ public class YAML implements ReplicaCatalog {
             if (mLFNRegex != null) {
                 mLFNRegex.clear();
                 mLFNPattern.clear();
+                mExpansions.clear();
             }
 
             mLFNRegex = null;
             mLFNPattern = null;
+            mExpansions = null;
             mFilename = null;
             return;
         }
 
         try {
-            Writer out = new BufferedWriter(new FileWriter(mFilename));
-            // write header
-            out.write(
-                    "# file-based replica catalog in yaml : "
-                            + Currently.iso8601(false, true, true, new Date()));
-            out.write(newline);
-
-            // in case of yaml we write it directly to the output file so we are
-            // returning null..
-            ObjectMapper mapper =
-                    new ObjectMapper(
-                            new YAMLFactory().configure(YAMLGenerator.Feature.INDENT_ARRAYS, true));
-            mapper.configure(MapperFeature.ALLOW_COERCION_OF_SCALARS, false);
-            out.write(mapper.writeValueAsString(this));
-            // close
-            out.close();
-            // this.mFlushOnClose = false;
-
+            if (mJournal == null) {
+                this.write(new File(mFilename));
+            } else {
+                // only append the changes, and fold the journal
+                // into the file once it has grown too large
+                mJournal.flush();
+                if (mJournal.requiresCompaction()) {
+                    final File f = new File(mFilename);
+                    mJournal.compact(
+                            () -> {
+                                mLFN = new LinkedHashMap<String, ReplicaLocation>();
+                                mLFNRegex = new LinkedHashMap<String, ReplicaLocation>();
+                                mLFNPattern = new LinkedHashMap<String, Pattern>();
+                                mExpansions.clear();
+                                this.read(f);
+                            },
+                            this::apply,
+                            this::write);
+                }
+            }
         } catch (IOException ioe) { // FIXME: blurt message somewhere sane
             throw new ReplicaCatalogException(
                     "Unable to write contents of Replica Catalog to " + mFilename, ioe);
@@ -361,13 +476,41 @@ public class YAML implements ReplicaCatalog {
             if (mLFNRegex != null) {
                 mLFNRegex.clear();
                 mLFNPattern.clear();
+                mExpansions.clear();
             }
             mLFNRegex = null;
             mLFNPattern = null;
+            mExpansions = null;
             mFilename = null;
         }
     }
 
+    /**
+     * Writes out the replicas in memory to a file.
+     *
+     * @param f the file to write to
+     * @throws IOException in case of error while writing the file
+     */
+    private void write(File f) throws IOException {
+        String newline = System.getProperty("line.separator", "\r\n");
+        Writer out = new BufferedWriter(new FileWriter(f));
+        // write header
+        out.write(
+                "# file-based replica catalog in yaml : "
+                        + Currently.iso8601(false, true, true, new Date()));
+        out.write(newline);
+
+        // in case of yaml we write it directly to the output file so we are
+        // returning null..
+        ObjectMapper mapper =
+                new ObjectMapper(
+                        new YAMLFactory().configure(YAMLGenerator.Feature.INDENT_ARRAYS, true));
+        mapper.configure(MapperFeature.ALLOW_COERCION_OF_SCALARS, false);
+        out.write(mapper.writeValueAsString(this));
+        // close
+        out.close();
+    }
+
     /**
      * Predicate to check, if the connection with the catalog's implementation is still active. This
      * helps determining, if it makes sense to call <code>close()</code>.
@@ -409,32 +552,20 @@ public class YAML implements ReplicaCatalog {
         }
 
         // Lookup regex LFN's
-        Pattern p = null;
-        Matcher m = null;
         String pool = null;
         ReplicaCatalogEntry rce = null;
-        for (String l : mLFNRegex.keySet()) {
-            p = mLFNPattern.get(l);
-            m = p.matcher(lfn);
-            if (m.matches()) {
-                ReplicaLocation entries = mLFNRegex.get(l);
-                for (ReplicaCatalogEntry entry : entries.getPFNList()) {
-                    pool = entry.getResourceHandle();
-                    if (pool == null && handle == null
-                            || pool != null && handle != null && pool.equals(handle)) {
-                        String tmpPFN = entry.getPFN();
-                        for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                            // tmpPFN = tmpPFN.replaceAll ("\\$" + k, m.group (k));
-                            tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                        }
-                        if (tmpPFN.indexOf('[') >= 0) {
-                            // PFN still has variables left.
-                        }
-                        // Add new RCE
-                        rce = cloneRCE(entry);
-                        rce.setPFN(tmpPFN);
-                        c.add(rce);
-                    }
+        for (Expansion expansion : this.expansions(lfn, true)) {
+            ReplicaLocation entries = mLFNRegex.get(expansion.mKey);
+            int index = 0;
+            for (ReplicaCatalogEntry entry : entries.getPFNList()) {
+                String tmpPFN = expansion.mPFNs[index++];
+                pool = entry.getResourceHandle();
+                if (pool == null && handle == null
+                        || pool != null && handle != null && pool.equals(handle)) {
+                    // Add new RCE
+                    rce = cloneRCE(entry);
+                    rce.setPFN(tmpPFN);
+                    c.add(rce);
                 }
             }
         }
@@ -467,41 +598,29 @@ public class YAML implements ReplicaCatalog {
                 }
             }
         }
-        // Lookup regex LFN's
+        // Lookup regex LFN's. only the first matching pattern contributes
         ReplicaCatalogEntry rce = null;
-        Pattern p = null;
-        Matcher m = null;
-        for (String l : mLFNRegex.keySet()) {
-            p = mLFNPattern.get(l);
-            m = p.matcher(lfn);
-            if (m.matches()) {
-                ReplicaLocation entries = mLFNRegex.get(l);
-                Collection<ReplicaCatalogEntry> entriesResult =
-                        new ArrayList<ReplicaCatalogEntry>();
-                for (ReplicaCatalogEntry entry : entries.getPFNList()) {
-                    String tmpPFN = entry.getPFN();
-                    for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                        tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                    }
-                    if (tmpPFN.indexOf('[') >= 0) {
-                        // PFN still has variables left.
-                    }
-                    // Add new RCE
-                    rce = cloneRCE(entry);
-                    rce.setPFN(tmpPFN);
-                    // PM-1534 and PM-1523 add metadata at LFN level
-                    // in the Replica Location object to individual RCE's
-                    Metadata metadata = entries.getAllMetadata();
-                    for (Iterator<String> it = metadata.getProfileKeyIterator(); it.hasNext(); ) {
-                        String key = it.next();
-                        rce.addAttribute(key, metadata.get(key));
-                    }
-
-                    entriesResult.add(rce);
+        for (Expansion expansion : this.expansions(lfn, false)) {
+            ReplicaLocation entries = mLFNRegex.get(expansion.mKey);
+            Collection<ReplicaCatalogEntry> entriesResult = new ArrayList<ReplicaCatalogEntry>();
+            int index = 0;
+            for (ReplicaCatalogEntry entry : entries.getPFNList()) {
+                String tmpPFN = expansion.mPFNs[index++];
+                // Add new RCE
+                rce = cloneRCE(entry);
+                rce.setPFN(tmpPFN);
+                // PM-1534 and PM-1523 add metadata at LFN level
+                // in the Replica Location object to individual RCE's
+                Metadata metadata = entries.getAllMetadata();
+                for (Iterator<String> it = metadata.getProfileKeyIterator(); it.hasNext(); ) {
+                    String key = it.next();
+                    rce.addAttribute(key, metadata.get(key));
                 }
-                c.addAll(entriesResult);
-                break;
+
+                entriesResult.add(rce);
             }
+            c.addAll(entriesResult);
+            break;
         }
         return c;
     }
@@ -511,6 +630,99 @@ public class YAML implements ReplicaCatalog {
         return (ReplicaCatalogEntry) e.clone();
     }
 
+    /**
+     * Substitutes the groups of a match for the variables in the PFN of a regex entry.
+     *
+     * @param pfn the PFN of the regex entry
+     * @param m the matcher that matched the LFN against the pattern of the entry
+     * @return the PFN with the variables substituted
+     */
+    private String expand(String pfn, Matcher m) {
+        PFNTemplate template = mPFNTemplates.get(pfn);
+        if (template == null) {
+            template = PFNTemplate.compile(pfn);
+            mPFNTemplates.put(pfn, template);
+        }
+        return template.expand(m);
+    }
+
+    /**
+     * Returns the expanded PFN's of the regex entries that match an LFN, from the cache if the LFN
+     * was looked up before. The regex entries are matched in order, either until the first match or
+     * all of them.
+     *
+     * @param lfn the LFN
+     * @param all whether to return the expansions for all the matching regex entries, or just the
+     *     first one.
+     * @return the expansions, in the order of the regex entries
+     */
+    private List<Expansion> expansions(String lfn, boolean all) {
+        Expansions expansions = mExpansions.get(lfn);
+        if (expansions == null) {
+            expansions = new Expansions();
+            mExpansions.put(lfn, expansions);
+        } else if (expansions.mComplete || (!all && !expansions.mMatches.isEmpty())) {
+            return expansions.mMatches;
+        }
+
+        expansions.mMatches.clear();
+        for (Map.Entry<String, ReplicaLocation> entry : mLFNRegex.entrySet()) {
+            Matcher m = mLFNPattern.get(entry.getKey()).matcher(lfn);
+            if (m.matches()) {
+                List<ReplicaCatalogEntry> entries = entry.getValue().getPFNList();
+                String[] pfns = new String[entries.size()];
+                int index = 0;
+                for (ReplicaCatalogEntry rce : entries) {
+                    pfns[index++] = this.expand(rce.getPFN(), m);
+                }
+                expansions.mMatches.add(new Expansion(entry.getKey(), pfns));
+                if (!all) {
+                    return expansions.mMatches;
+                }
+            }
+        }
+        expansions.mComplete = true;
+        return expansions.mMatches;
+    }
+
+    /**
+     * Creates the cache for the expansions, that evicts the least recently used LFN's once full.
+     *
+     * @return the cache
+     */
+    private static Map<String, Expansions> newExpansionCache() {
+        return new LinkedHashMap<String, Expansions>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Expansions> eldest) {
+                return size() > MAXIMUM_EXPANSIONS;
+            }
+        };
+    }
+
+    /** The expanded PFN's of the entries of a regex LFN that matched an LFN. */
+    private static class Expansion {
+
+        /** The regex LFN that matched. */
+        private final String mKey;
+
+        /** The expanded PFN's, in the order of the entries for the regex LFN. */
+        private final String[] mPFNs;
+
+        private Expansion(String key, String[] pfns) {
+            mKey = key;
+            mPFNs = pfns;
+        }
+    }
+
+    /** The expansions of the regex LFN's that matched an LFN. */
+    private static class Expansions {
+
+        /** The expansions of the matching regex LFN's, in order. */
+        private final List<Expansion> mMatches = new ArrayList<Expansion>(1);
+
+        /** Whether all the regex LFN's were matched, or only up to the first match. */
+        private boolean mComplete = false;
+    }
+
     /**
      * Retrieves all entries for a given LFN from the replica catalog. Each entry in the result set
      * is just a PFN string. Duplicates are reduced through the set paradigm.
@@ -594,8 +806,6 @@ public class YAML implements ReplicaCatalog {
      */
     public Map lookup(Set lfns, String handle) {
         ReplicaLocation rl = null;
-        Pattern p = null;
-        Matcher m = null;
         String lfn = null;
         String pool = null;
         Map<String, Collection<ReplicaCatalogEntry>> result =
@@ -615,38 +825,24 @@ public class YAML implements ReplicaCatalog {
                         value.add(rce);
                 }
             }
-            // Lookup regex LFN's
-            for (String l : mLFNRegex.keySet()) {
-                p = mLFNPattern.get(l); // Get one pattern
-                m = p.matcher(lfn); // See if f.a matches pattern
-                if (m.matches()) // Pattern matches?
-                {
-                    ReplicaLocation entries = mLFNRegex.get(l);
-                    // Get all RCE entries for the matched pattern.
-                    for (ReplicaCatalogEntry entry : entries.getPFNList()) {
-                        pool = entry.getResourceHandle();
-                        // Entry matches handle requirement?
-                        if (pool == null && handle == null
-                                || pool != null && handle != null && pool.equals(handle)) {
-                            String tmpPFN = entry.getPFN();
-                            // Substitute variables in PFN before returning
-                            for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                                tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                            }
-                            // Are there unsubstituted variables?
-                            if (tmpPFN.indexOf('[') >= 0) {
-                                // PFN still has variables left.
-                            }
-                            // Return new PFN
-                            // entry.setPFN( tmpPFN );
-                            rce = cloneRCE(entry);
-                            rce.setPFN(tmpPFN);
-                            value.add(rce);
-                            // Break if value.size == 2?
-                        }
+            // Lookup regex LFN's. only the first matching pattern contributes
+            for (Expansion expansion : this.expansions(lfn, false)) {
+                ReplicaLocation entries = mLFNRegex.get(expansion.mKey);
+                // Get all RCE entries for the matched pattern.
+                int index = 0;
+                for (ReplicaCatalogEntry entry : entries.getPFNList()) {
+                    String tmpPFN = expansion.mPFNs[index++];
+                    pool = entry.getResourceHandle();
+                    // Entry matches handle requirement?
+                    if (pool == null && handle == null
+                            || pool != null && handle != null && pool.equals(handle)) {
+                        // Return new PFN
+                        rce = cloneRCE(entry);
+                        rce.setPFN(tmpPFN);
+                        value.add(rce);
                     }
-                    break;
                 }
+                break;
             }
             result.put(lfn, value);
         }
@@ -821,6 +1017,11 @@ public class YAML implements ReplicaCatalog {
         }
         ReplicaLocation existing = null;
 
+        if (isRegex || mLFNRegex.containsKey(lfn)) {
+            // the regex entries change
+            mExpansions.clear();
+        }
+
         if (mLFN.containsKey(lfn)) {
             existing = mLFN.get(lfn);
             count += existing.merge(tuple, false);
@@ -841,6 +1042,7 @@ public class YAML implements ReplicaCatalog {
                 mLFN.put(lfn, tuple);
             }
         }
+        record(Journal.INSERT_OPERATION, tuple);
 
         return count;
     }
@@ -1081,9 +1283,16 @@ public class YAML implements ReplicaCatalog {
      */
     public int clear() {
         int result = mLFN.size() + mLFNRegex.size();
+        for (ReplicaLocation rl : mLFN.values()) {
+            record(Journal.DELETE_OPERATION, rl);
+        }
+        for (ReplicaLocation rl : mLFNRegex.values()) {
+            record(Journal.DELETE_OPERATION, rl);
+        }
         mLFN.clear();
         mLFNRegex.clear();
         mLFNPattern.clear();
+        mExpansions.clear();
         return result;
     }
 
@@ -21,6 +21,7 @@ package edu.isi.pegasus.planner.catalog.site.impl;
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.common.logging.LoggingKeys;
 import edu.isi.pegasus.common.util.FileUtils;
+import edu.isi.pegasus.planner.catalog.CatalogCache;
 import edu.isi.pegasus.planner.catalog.SiteCatalog;
 import edu.isi.pegasus.planner.catalog.site.SiteCatalogException;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
@@ -158,6 +159,18 @@ public class XML implements SiteCatalog {
             throw new SiteCatalogException("Need to connect to site catalog before loading");
         }
 
+        // reuse the sites parsed earlier in the same JVM if file is unchanged
+        File file = new File(mFilename);
+        String key = XML.class.getName() + sites + mConnectionProperties;
+        SiteStore cached = (SiteStore) CatalogCache.lookup(file, key);
+        if (cached != null) {
+            mLogger.log(
+                    "Using cached site catalog for file " + mFilename,
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            mSiteStore = (SiteStore) cached.clone();
+            return mSiteStore.list().size();
+        }
+
         mParser =
                 SiteCatalogXMLParserFactory.loadSiteCatalogXMLParser(
                         this.mBag, this.mConnectionProperties, mFilename, sites);
@@ -171,6 +184,9 @@ public class XML implements SiteCatalog {
         mLogger.logEventCompletion(LogManager.DEBUG_MESSAGE_LEVEL);
 
         mSiteStore = mParser.getSiteStore();
+        if (CatalogCache.isEnabled()) {
+            CatalogCache.store(file, key, mSiteStore.clone());
+        }
         return mSiteStore.list().size();
     }
 
@@ -79,8 +79,8 @@ public abstract class Mapper {
             argList[0] = bag;
             ss = (Mapper) dl.instantiate(argList);
         } catch (Exception e) {
-            System.err.println(dl.convertException(e));
-            System.exit(1);
+            // thrown rather than exiting, as the planner may run inside a planner server
+            throw new RuntimeException(dl.convertException(e), e);
         }
 
         return ss;
@@ -422,6 +422,23 @@ public class TransformationStore {
         return mTCStore.isEmpty();
     }
 
+    /**
+     * Returns a copy of the store, with copies of the entries and the containers.
+     *
+     * @return the clone
+     */
+    public Object clone() {
+        TransformationStore obj = new TransformationStore();
+        obj.setVersion(this.getVersion());
+        for (Container c : this.getAllContainers()) {
+            obj.addContainer((Container) c.clone());
+        }
+        for (TransformationCatalogEntry entry : this.getAllEntries()) {
+            obj.addEntry((TransformationCatalogEntry) entry.clone());
+        }
+        return obj;
+    }
+
     /**
      * Custom deserializer for YAML representation of TransformationCatalog
      *
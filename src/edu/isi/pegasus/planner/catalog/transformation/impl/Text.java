@@ -16,6 +16,7 @@ package edu.isi.pegasus.planner.catalog.transformation.impl;
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.common.util.Boolean;
 import edu.isi.pegasus.common.util.Separator;
+import edu.isi.pegasus.planner.catalog.CatalogCache;
 import edu.isi.pegasus.planner.catalog.TransformationCatalog;
 import edu.isi.pegasus.planner.catalog.classes.SysInfo;
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
@@ -163,15 +164,25 @@ public class Text extends Abstract implements TransformationCatalog {
         try {
             java.io.File f = new java.io.File(mTCFile);
 
-            if (f.exists()) {
-                boolean variableExpansion =
-                        Boolean.parse(
-                                props.getProperty(TransformationCatalog.VARIABLE_EXPANSION_KEY),
-                                true);
+            boolean variableExpansion =
+                    Boolean.parse(
+                            props.getProperty(TransformationCatalog.VARIABLE_EXPANSION_KEY), true);
+            String key = Text.class.getName() + modifyFileURL + variableExpansion;
+            TransformationStore cached = (TransformationStore) CatalogCache.lookup(f, key);
+            if (cached != null) {
+                // reuse the entries parsed earlier in the same JVM if file is unchanged
+                mLogger.log(
+                        "Using cached transformation catalog for file " + mTCFile,
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+                mTCStore = (TransformationStore) cached.clone();
+            } else if (f.exists()) {
                 mTextParser =
                         new TransformationCatalogTextParser(
                                 new FileReader(f), mLogger, variableExpansion);
                 mTCStore = mTextParser.parse(modifyFileURL);
+                if (CatalogCache.isEnabled()) {
+                    CatalogCache.store(f, key, mTCStore.clone());
+                }
             } else {
                 // empty TCStore
                 mTCStore = new TransformationStore();
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.common.util.Currently;
 import edu.isi.pegasus.common.util.Separator;
+import edu.isi.pegasus.planner.catalog.CatalogCache;
 import edu.isi.pegasus.planner.catalog.TransformationCatalog;
 import edu.isi.pegasus.planner.catalog.classes.SysInfo;
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
@@ -173,10 +174,21 @@ public class YAML extends Abstract implements TransformationCatalog {
         try {
             java.io.File f = new java.io.File(mTCFile);
 
-            if (f.exists() && f.length() > 0) {
+            String key = YAML.class.getName() + modifyFileURL;
+            TransformationStore cached = (TransformationStore) CatalogCache.lookup(f, key);
+            if (cached != null) {
+                // reuse the entries parsed earlier in the same JVM if file is unchanged
+                mLogger.log(
+                        "Using cached transformation catalog for file " + mTCFile,
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+                mTCStore = (TransformationStore) cached.clone();
+            } else if (f.exists() && f.length() > 0) {
                 File schemaDir = this.mProps.getSchemaDir();
                 yamlParser = new TransformationCatalogYAMLParser(mBag, schemaDir);
                 mTCStore = yamlParser.parse(mTCFile, modifyFileURL);
+                if (CatalogCache.isEnabled()) {
+                    CatalogCache.store(f, key, mTCStore.clone());
+                }
             } else {
                 // empty TCStore
                 mTCStore = new TransformationStore();
@@ -19,8 +19,10 @@ import edu.isi.pegasus.planner.catalog.classes.Profiles;
 import edu.isi.pegasus.planner.catalog.replica.classes.ReplicaStore;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
 import edu.isi.pegasus.planner.catalog.transformation.classes.TransformationStore;
+import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.dax.Invoke;
 import edu.isi.pegasus.planner.namespace.Metadata;
+import edu.isi.pegasus.planner.partitioner.graph.CompactGraph;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
@@ -49,6 +51,18 @@ import java.util.UUID;
  */
 public class ADag extends Data implements Graph {
 
+    /**
+     * The value for the graph implementation property, that designates the compact graph
+     * implementation to be used.
+     */
+    public static final String COMPACT_GRAPH_IMPLEMENTATION = "Compact";
+
+    /**
+     * The value for the graph implementation property, that designates the map graph implementation
+     * to be used. This is the default.
+     */
+    public static final String MAP_GRAPH_IMPLEMENTATION = "Map";
+
     /** The DagInfo object which contains the information got from parsing the dax file. */
     private DagInfo mDAGInfo;
 
@@ -112,6 +126,24 @@ public class ADag extends Data implements Graph {
         resetStores();
     }
 
+    /**
+     * The overloaded constructor, that selects the underlying graph implementation on the basis of
+     * the properties.
+     *
+     * @param properties the pegasus properties
+     * @see PegasusProperties#getGraphImplementation()
+     */
+    public ADag(PegasusProperties properties) {
+        this();
+        String implementation = properties.getGraphImplementation();
+        if (implementation.equalsIgnoreCase(COMPACT_GRAPH_IMPLEMENTATION)) {
+            mGraphImplementor = new CompactGraph();
+        } else if (!implementation.equalsIgnoreCase(MAP_GRAPH_IMPLEMENTATION)) {
+            throw new RuntimeException(
+                    "Invalid graph implementation specified in properties " + implementation);
+        }
+    }
+
     /**
      * Adds a Invoke object corresponding to a notification.
      *
@@ -192,6 +224,9 @@ public class ADag extends Data implements Graph {
      */
     public Object clone() {
         ADag newAdag = new ADag();
+        if (this.mGraphImplementor instanceof CompactGraph) {
+            newAdag.mGraphImplementor = new CompactGraph();
+        }
 
         newAdag.setBaseSubmitDirectory(this.mSubmitDirectory);
         newAdag.setRequestID(this.mRequestID);
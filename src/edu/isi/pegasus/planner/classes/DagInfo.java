@@ -16,8 +16,8 @@ package edu.isi.pegasus.planner.classes;
 import edu.isi.pegasus.common.util.Currently;
 import edu.isi.pegasus.common.util.Version;
 import java.io.File;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -92,14 +92,21 @@ public class DagInfo extends Data {
     private WorkflowMetrics mWFMetrics;
 
     /**
-     * Contains a unique ordered listing of the logical names referred to by the dag. The TreeMap
-     * implementation guarentees us a log(n) execution time for the basic operations. Hence should
-     * scale well. The key for the map is the lfn name. The value is a NameValue object, where key
-     * is the name of the job that this file is currently associated with and value is a character
-     * flag denoting whether this file is an input(i) or output(o) or both (b) or none(n). A value
-     * of none(n) would denote an error condition.
+     * Contains a unique listing of the logical names referred to by the dag. Each lfn is assigned
+     * an id in the symbol table, that indexes the arrays below.
      */
-    private TreeMap<String, NameValue<String, Character>> mLFNMap;
+    private LFNSymbolTable mLFNs;
+
+    /**
+     * The name of the job that a file is currently associated with, indexed by the id of the lfn.
+     */
+    private String[] mLFNJobs;
+
+    /**
+     * The character flag denoting whether a file is an input(i) or output(o) or both (b), indexed
+     * by the id of the lfn.
+     */
+    private char[] mLFNTypes;
 
     /** The DAX Version */
     private String mDAXVersion;
@@ -120,7 +127,9 @@ public class DagInfo extends Data {
         mDAXMTime = "";
         mReleaseVersion = "";
         mDAXVersion = "";
-        mLFNMap = new TreeMap();
+        mLFNs = new LFNSymbolTable();
+        mLFNJobs = new String[0];
+        mLFNTypes = new char[0];
         mWFMetrics = new WorkflowMetrics();
     }
 
@@ -189,10 +198,10 @@ public class DagInfo extends Data {
 
     /**
      * It returns the list of lfns referred to by the DAG. The list is unique
-     * as it is gotten from iterating through the mLFNMap.
+     * as it is gotten from iterating through the symbol table.
      *
-     * @return a Set of <code>String<code> objects corresponding to the
-     *         logical filenames
+     * @return an unmodifiable Set of <code>String<code> objects corresponding
+     *         to the logical filenames
      */
     public Set getLFNs() {
         return this.getLFNs(false);
@@ -200,19 +209,29 @@ public class DagInfo extends Data {
 
     /**
      * Returns the list of lfns referred to by the DAG. The list is unique as it is gotten from
-     * iterating through the mLFNMap. The contents of the list are determined on the basis of the
-     * command line options passed by the user at runtime. For e.g. if the user has specified force,
-     * then one needs to search only for the input files.
+     * iterating through the symbol table. The contents of the list are determined on the basis of
+     * the command line options passed by the user at runtime. For e.g. if the user has specified
+     * force, then one needs to search only for the input files.
      *
      * @param onlyInput a boolean flag indicating that you need only the input files to the whole
      *     workflow
-     * @return a set of logical filenames.
+     * @return an unmodifiable set of logical filenames, backed by the symbol table.
      */
     public Set getLFNs(boolean onlyInput) {
+        return mLFNs.asSet(this.getLFNIDs(onlyInput));
+    }
 
-        Set lfns = onlyInput ? new HashSet(mLFNMap.size() / 3) : new HashSet(mLFNMap.size());
-        String key = null;
-        char val;
+    /**
+     * Returns the ids of the lfns referred to by the DAG, in the symbol table of the DAG.
+     *
+     * @param onlyInput a boolean flag indicating that you need only the input files to the whole
+     *     workflow
+     * @return a bit set of the ids.
+     * @see #getLFNSymbolTable()
+     */
+    public BitSet getLFNIDs(boolean onlyInput) {
+        int size = mLFNs.size();
+        BitSet ids = new BitSet(size);
 
         // if the force option is set we
         // need to search only for the
@@ -220,19 +239,24 @@ public class DagInfo extends Data {
         // whose link is set to input in
         // the dag.
         if (onlyInput) {
-            for (Iterator it = mLFNMap.keySet().iterator(); it.hasNext(); ) {
-                key = (String) it.next();
-                val = mLFNMap.get(key).getValue();
-
-                if (val == 'i') {
-                    lfns.add(key);
+            for (int id = 0; id < size; id++) {
+                if (mLFNTypes[id] == 'i') {
+                    ids.set(id);
                 }
             }
         } else {
-            lfns = new HashSet(mLFNMap.keySet());
+            ids.set(0, size);
         }
+        return ids;
+    }
 
-        return lfns;
+    /**
+     * Returns the symbol table for the logical filenames referred to by the DAG.
+     *
+     * @return the symbol table.
+     */
+    public LFNSymbolTable getLFNSymbolTable() {
+        return mLFNs;
     }
 
     /**
@@ -580,22 +604,52 @@ public class DagInfo extends Data {
      * @param id the logical id of the job
      * @param lfn the logical file name.
      * @param type type the type of lfn (i|o|b). usually a character.
+     * @return the canonical instance of the logical file name, that should be used in place of the
+     *     one passed.
+     */
+    public String updateLFNMap(String id, String lfn, char type) {
+        return mLFNs.getLFN(this.update(id, lfn, type));
+    }
+
+    /**
+     * Updates the lfn map with a file, and sets the canonical instance of the logical file name
+     * along with its id in the symbol table on the file.
+     *
+     * @param id the logical id of the job
+     * @param pf the file.
+     * @param type type the type of lfn (i|o|b). usually a character.
      */
-    public void updateLFNMap(String id, String lfn, char type) {
-        NameValue<String, Character> entry = mLFNMap.get(lfn);
-        if (entry == null) {
-            mLFNMap.put(lfn, new NameValue(id, type));
-            return;
+    public void updateLFNMap(String id, PegasusFile pf, char type) {
+        pf.setLFN(mLFNs, this.update(id, pf.getLFN(), type));
+    }
+
+    /**
+     * Updates the lfn map, that contains the mapping of an lfn with the type.
+     *
+     * @param id the logical id of the job
+     * @param lfn the logical file name.
+     * @param type type the type of lfn (i|o|b). usually a character.
+     * @return the id of the logical file name in the symbol table.
+     */
+    private int update(String id, String lfn, char type) {
+        int index = mLFNs.intern(lfn);
+        if (index == mLFNTypes.length) {
+            int capacity = Math.max(16, index * 2);
+            mLFNJobs = Arrays.copyOf(mLFNJobs, capacity);
+            mLFNTypes = Arrays.copyOf(mLFNTypes, capacity);
+        }
+        if (mLFNJobs[index] == null) {
+            mLFNJobs[index] = id;
+            mLFNTypes[index] = type;
         } else {
             // there is a preexisting entry in the map, check if it needs to be
             // updated
-            Character existingType = entry.getValue();
-            if (!(existingType.equals('b') || existingType.equals(type))) {
+            char existingType = mLFNTypes[index];
+            if (!(existingType == 'b' || existingType == type)) {
                 // types do not match. so upgrade the type to both
-                // mLFNMap.put(lfn, 'b');
-                entry.setKey(id);
-                entry.setValue('b');
-            } else if (existingType.equals('o') && type == 'o') {
+                mLFNJobs[index] = id;
+                mLFNTypes[index] = 'b';
+            } else if (existingType == 'o' && type == 'o') {
                 // PM-1619 pre-existing entry and new entry both are of type o
                 // also log what the previous job it was associated with
                 throw new RuntimeException(
@@ -604,9 +658,10 @@ public class DagInfo extends Data {
                                 + " found for job "
                                 + id
                                 + " has already been associated as output for a previous job "
-                                + entry.getKey());
+                                + mLFNJobs[index]);
             }
         }
+        return index;
     }
 
     /**
@@ -618,13 +673,13 @@ public class DagInfo extends Data {
         int input = 0;
         int inter = 0;
         int output = 0;
-        for (NameValue<String, Character> tuple : mLFNMap.values()) {
-            Character type = tuple.getValue();
+        for (int id = 0; id < mLFNs.size(); id++) {
+            char type = mLFNTypes[id];
             if (type == 'i') {
                 input++;
-            } else if (type.equals('b')) {
+            } else if (type == 'b') {
                 inter++;
-            } else if (type.equals('o')) {
+            } else if (type == 'o') {
                 output++;
             } else {
                 throw new RuntimeException("Invalid type " + type);
@@ -658,7 +713,9 @@ public class DagInfo extends Data {
         dag.mFlowTimestamp = this.mFlowTimestamp;
         dag.mDAXMTime = this.mDAXMTime;
         dag.mReleaseVersion = this.mReleaseVersion;
-        dag.mLFNMap = (TreeMap) this.mLFNMap.clone();
+        dag.mLFNs = (LFNSymbolTable) this.mLFNs.clone();
+        dag.mLFNJobs = this.mLFNJobs.clone();
+        dag.mLFNTypes = this.mLFNTypes.clone();
         dag.mWFMetrics = (WorkflowMetrics) this.mWFMetrics.clone();
         return dag;
     }
@@ -709,8 +766,21 @@ public class DagInfo extends Data {
                         +
                         //            vectorToString(" Relations making the Dag ", this.relations) +
                         "\n LFN List is "
-                        + this.mLFNMap;
+                        + this.lfnsToString();
 
         return st;
     }
+
+    /**
+     * Returns the textual description of the lfns, sorted by lfn.
+     *
+     * @return textual description.
+     */
+    private String lfnsToString() {
+        TreeMap<String, NameValue<String, Character>> lfns = new TreeMap();
+        for (int id = 0; id < mLFNs.size(); id++) {
+            lfns.put(mLFNs.getLFN(id), new NameValue(mLFNJobs[id], mLFNTypes[id]));
+        }
+        return lfns.toString();
+    }
 }
@@ -90,6 +90,7 @@ public class FileTransfer extends PegasusFile {
      */
     public FileTransfer(PegasusFile pf) {
         this.mLogicalFile = pf.mLogicalFile;
+        this.mLFNID = pf.mLFNID;
         this.mTransferFlag = pf.mTransferFlag;
         this.mSize = pf.mSize;
         this.mFlags = pf.getFlags();
@@ -137,6 +138,18 @@ public class FileTransfer extends PegasusFile {
         this.mVerifySymlinkSource = true;
     }
 
+    /**
+     * The overloaded constructor, for the transfer of a file of a job. The transfer refers to the
+     * logical name of the file, and its id in the symbol table of the workflow.
+     *
+     * @param pf the file that has to be transferred.
+     * @param job The name of the job with which the transfer is associated with.
+     */
+    public FileTransfer(PegasusFile pf, String job) {
+        this(pf.mLogicalFile, job, pf.getFlags());
+        this.mLFNID = pf.mLFNID;
+    }
+
     /**
      * It returns the name of the main/compute job making up the VDS supernode with which this
      * transfer is related.
@@ -495,7 +508,9 @@ public class FileTransfer extends PegasusFile {
      */
     public Object clone() {
         FileTransfer ft = new FileTransfer();
-        ft.mLogicalFile = new String(this.mLogicalFile);
+        // the lfn is shared so that the clone keeps the canonical lfn of the workflow
+        ft.mLogicalFile = this.mLogicalFile;
+        ft.mLFNID = this.mLFNID;
         ft.mFlags = (BitSet) this.mFlags.clone();
         ft.mTransferFlag = this.mTransferFlag;
         ft.mSize = this.mSize;
@@ -1688,54 +1688,15 @@ public class Job extends Data implements GraphNodeContent {
             return;
         }
 
-        String key = null;
-        Namespace n = profiles.get(NAMESPACES.condor);
-        for (Iterator it = n.getProfileKeyIterator(); it.hasNext(); ) {
-            key = (String) it.next();
-            condorVariables.checkKeyInNS(key, (String) n.get(key));
-        }
-
-        n = profiles.get(NAMESPACES.globus);
-        for (Iterator it = n.getProfileKeyIterator(); it.hasNext(); ) {
-            key = (String) it.next();
-            globusRSL.checkKeyInNS(key, (String) n.get(key));
-        }
-
-        n = profiles.get(NAMESPACES.env);
-        for (Iterator it = n.getProfileKeyIterator(); it.hasNext(); ) {
-            key = (String) it.next();
-            envVariables.checkKeyInNS(key, (String) n.get(key));
-        }
-
-        n = profiles.get(NAMESPACES.pegasus);
-        for (Iterator it = n.getProfileKeyIterator(); it.hasNext(); ) {
-            key = (String) it.next();
-            vdsNS.checkKeyInNS(key, (String) n.get(key));
-        }
-
-        n = profiles.get(NAMESPACES.dagman);
-        for (Iterator it = n.getProfileKeyIterator(); it.hasNext(); ) {
-            key = (String) it.next();
-            dagmanVariables.checkKeyInNS(key, (String) n.get(key));
-        }
-
-        n = profiles.get(NAMESPACES.hints);
-        for (Iterator it = n.getProfileKeyIterator(); it.hasNext(); ) {
-            key = (String) it.next();
-            hints.checkKeyInNS(key, (String) n.get(key));
-        }
-
-        n = profiles.get(NAMESPACES.metadata);
-        for (Iterator it = n.getProfileKeyIterator(); it.hasNext(); ) {
-            key = (String) it.next();
-            this.mMetadataAttributes.checkKeyInNS(key, (String) n.get(key));
-        }
-
-        n = profiles.get(NAMESPACES.selector);
-        for (Iterator it = n.getProfileKeyIterator(); it.hasNext(); ) {
-            key = (String) it.next();
-            this.mSelectorProfiles.checkKeyInNS(key, (String) n.get(key));
-        }
+        // the profiles are shared as layers across the jobs where possible
+        condorVariables.checkKeyInNS(profiles.get(NAMESPACES.condor));
+        globusRSL.checkKeyInNS(profiles.get(NAMESPACES.globus));
+        envVariables.checkKeyInNS(profiles.get(NAMESPACES.env));
+        vdsNS.checkKeyInNS(profiles.get(NAMESPACES.pegasus));
+        dagmanVariables.checkKeyInNS(profiles.get(NAMESPACES.dagman));
+        hints.checkKeyInNS(profiles.get(NAMESPACES.hints));
+        this.mMetadataAttributes.checkKeyInNS(profiles.get(NAMESPACES.metadata));
+        this.mSelectorProfiles.checkKeyInNS(profiles.get(NAMESPACES.selector));
     }
 
     /**
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A symbol table for the logical filenames referred to in a workflow. Each LFN is assigned a dense
+ * int id, in the order the LFN's are interned, and a single canonical String instance that is
+ * shared by all the objects referring to the LFN. The files of the workflow carry the id of their
+ * LFN, so that the sets and maps of LFN's built while planning can be indexed by the ids.
+ *
+ * <p>The table is an open addressing hash table over the ids, so that it costs a couple of ints per
+ * LFN in addition to the canonical String. The class is not thread safe.
+ *
+ * @version $Revision$
+ */
+public class LFNSymbolTable implements Cloneable {
+
+    /** The initial capacity of the table. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The canonical LFN's indexed by their ids. */
+    private String[] mLFNs;
+
+    /** The hash slots. Each slot holds the id of an LFN plus one, or 0 if the slot is empty. */
+    private int[] mSlots;
+
+    /** The number of LFN's in the table. */
+    private int mSize;
+
+    /** The default constructor. */
+    public LFNSymbolTable() {
+        mLFNs = new String[INITIAL_CAPACITY];
+        mSlots = new int[INITIAL_CAPACITY * 2];
+        mSize = 0;
+    }
+
+    /**
+     * Returns the id of an LFN, adding the LFN to the table if it is not there yet.
+     *
+     * @param lfn the logical filename.
+     * @return the id of the LFN.
+     */
+    public int intern(String lfn) {
+        int slot = this.slot(lfn);
+        if (mSlots[slot] != 0) {
+            return mSlots[slot] - 1;
+        }
+
+        if (mSize == mLFNs.length) {
+            mLFNs = Arrays.copyOf(mLFNs, mSize * 2);
+            this.rehash(mSize * 4);
+            slot = this.slot(lfn);
+        }
+        int id = mSize++;
+        mLFNs[id] = lfn;
+        mSlots[slot] = id + 1;
+        return id;
+    }
+
+    /**
+     * Returns the id of an LFN.
+     *
+     * @param lfn the logical filename.
+     * @return the id of the LFN, or -1 if the LFN is not in the table.
+     */
+    public int getID(String lfn) {
+        return mSlots[this.slot(lfn)] - 1;
+    }
+
+    /**
+     * Returns the id of the LFN of a file. The id the file carries is used if it was assigned by
+     * this table, else the LFN is looked up.
+     *
+     * @param pf the file.
+     * @return the id of the LFN, or -1 if the LFN is not in the table.
+     */
+    public int getID(PegasusFile pf) {
+        int id = pf.getLFNID();
+        String lfn = pf.getLFN();
+        // an id assigned by this table refers to the canonical instance
+        if (id >= 0 && id < mSize && mLFNs[id] == lfn) {
+            return id;
+        }
+        return this.getID(lfn);
+    }
+
+    /**
+     * Returns the canonical instance of the LFN with the id.
+     *
+     * @param id the id of the LFN.
+     * @return the LFN.
+     * @throws ArrayIndexOutOfBoundsException if there is no LFN with the id.
+     */
+    public String getLFN(int id) {
+        if (id >= mSize) {
+            throw new ArrayIndexOutOfBoundsException(id);
+        }
+        return mLFNs[id];
+    }
+
+    /**
+     * Returns the canonical instance of an LFN.
+     *
+     * @param lfn the logical filename.
+     * @return the canonical instance of the LFN if it is in the table, else the LFN passed.
+     */
+    public String canonical(String lfn) {
+        int id = this.getID(lfn);
+        return (id == -1) ? lfn : mLFNs[id];
+    }
+
+    /**
+     * Returns the number of LFN's in the table. The ids of the LFN's range from 0 to size - 1.
+     *
+     * @return the number of LFN's.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns a set view of the LFN's with the ids set in a bit set. The view is backed by the bit
+     * set, and costs a bit per LFN in the table rather than a hash entry per LFN in the set.
+     *
+     * @param ids the ids of the LFN's in the set. Should not be modified afterwards.
+     * @return an unmodifiable set of the LFN's.
+     */
+    public Set<String> asSet(BitSet ids) {
+        return new LFNSet(ids);
+    }
+
+    /**
+     * Returns a copy of the table. The canonical LFN's are shared with the copy.
+     *
+     * @return a copy of the table.
+     */
+    public Object clone() {
+        LFNSymbolTable table;
+        try {
+            table = (LFNSymbolTable) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // cannot happen
+            throw new RuntimeException("Clone not implemented in the base class", e);
+        }
+        table.mLFNs = this.mLFNs.clone();
+        table.mSlots = this.mSlots.clone();
+        return table;
+    }
+
+    /**
+     * Returns the slot of an LFN. The slot holds the id of the LFN, or is empty if the LFN is not
+     * in the table.
+     *
+     * @param lfn the logical filename.
+     * @return the slot
+     */
+    private int slot(String lfn) {
+        int mask = mSlots.length - 1;
+        int h = lfn.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        int id;
+        while ((id = mSlots[slot]) != 0 && !mLFNs[id - 1].equals(lfn)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** A set of the LFN's in the table, backed by a bit set of their ids. */
+    private class LFNSet extends AbstractSet<String> {
+
+        /** The ids of the LFN's in the set. */
+        private final BitSet mIDs;
+
+        /** The number of LFN's in the set. */
+        private final int mCount;
+
+        LFNSet(BitSet ids) {
+            mIDs = ids;
+            mCount = ids.cardinality();
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            int id = getID((String) o);
+            return id >= 0 && mIDs.get(id);
+        }
+
+        public int size() {
+            return mCount;
+        }
+
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int mNext = mIDs.nextSetBit(0);
+
+                public boolean hasNext() {
+                    return mNext >= 0;
+                }
+
+                public String next() {
+                    if (mNext < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    String lfn = getLFN(mNext);
+                    mNext = mIDs.nextSetBit(mNext + 1);
+                    return lfn;
+                }
+            };
+        }
+    }
+
+    /**
+     * Rebuilds the hash slots with a new number of slots.
+     *
+     * @param capacity the number of slots. Should be a power of two.
+     */
+    private void rehash(int capacity) {
+        mSlots = new int[capacity];
+        for (int id = 0; id < mSize; id++) {
+            mSlots[this.slot(mLFNs[id])] = id + 1;
+        }
+    }
+}
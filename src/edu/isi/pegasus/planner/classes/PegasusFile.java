@@ -167,6 +167,14 @@ public class PegasusFile extends Data {
     /** The logical name of the file. */
     protected String mLogicalFile;
 
+    /**
+     * The id of the logical name in the symbol table of the workflow the file is referred to in, or
+     * -1 if the file has not been assigned one.
+     *
+     * @see LFNSymbolTable
+     */
+    protected int mLFNID;
+
     /**
      * The type associated with the file. It can either be a data file or an executable file.
      *
@@ -224,6 +232,7 @@ public class PegasusFile extends Data {
         mFlags.clear(PegasusFile.PLANNING_USE_BIT_FLAG);
 
         mLogicalFile = "";
+        mLFNID = -1;
         // by default the type is DATA
         // and transfers are mandatory
         mType = DATA_FILE;
@@ -279,6 +288,30 @@ public class PegasusFile extends Data {
      */
     public void setLFN(String lfn) {
         mLogicalFile = lfn;
+        // the id refers to the old lfn
+        mLFNID = -1;
+    }
+
+    /**
+     * Returns the id of the logical filename in the symbol table of the workflow.
+     *
+     * @return the id, or -1 if the file has not been assigned one.
+     * @see LFNSymbolTable#getID(PegasusFile)
+     */
+    public int getLFNID() {
+        return this.mLFNID;
+    }
+
+    /**
+     * Sets the logical filename to the canonical instance in a symbol table, along with the id of
+     * the logical filename in the table.
+     *
+     * @param symbols the symbol table of the workflow.
+     * @param id the id of the logical filename in the table.
+     */
+    public void setLFN(LFNSymbolTable symbols, int id) {
+        mLogicalFile = symbols.getLFN(id);
+        mLFNID = id;
     }
 
     /**
@@ -914,6 +947,7 @@ public class PegasusFile extends Data {
     public Object clone() {
         PegasusFile pf = new PegasusFile();
         pf.mLogicalFile = mLogicalFile;
+        pf.mLFNID = mLFNID;
         pf.mFlags = (BitSet) this.mFlags.clone();
         pf.mType = mType;
         pf.mTransferFlag = mTransferFlag;
@@ -24,6 +24,8 @@ import java.io.File;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -135,6 +137,11 @@ public class PlannerMetrics extends Data {
     @SerializedName("app_metrics")
     private Properties mApplicationMetrics;
 
+    /** The time taken in seconds by the phases of the planner, indexed by the phase. */
+    @Expose
+    @SerializedName("phase_durations")
+    private Map<String, Double> mPhaseDurations;
+
     /** The error message to be logged */
     @Expose
     @SerializedName("error")
@@ -208,6 +215,28 @@ public class PlannerMetrics extends Data {
         mWFMetrics = metrics;
     }
 
+    /**
+     * Records the time taken by a phase of the planner.
+     *
+     * @param phase the name of the phase
+     * @param duration the duration in seconds
+     */
+    public synchronized void setPhaseDuration(String phase, double duration) {
+        if (mPhaseDurations == null) {
+            mPhaseDurations = new LinkedHashMap<String, Double>();
+        }
+        mPhaseDurations.put(phase, duration);
+    }
+
+    /**
+     * Returns the time taken by the phases of the planner.
+     *
+     * @return the durations in seconds indexed by phase, or null if none were recorded
+     */
+    public Map<String, Double> getPhaseDurations() {
+        return mPhaseDurations;
+    }
+
     /**
      * Sets the app metrics that need to be forwarded.
      *
@@ -648,6 +677,9 @@ public class PlannerMetrics extends Data {
         append(sb, "data.configuration", this.mDataConfiguration);
         append(sb, "root.wf.uuid", this.mRootWorkflowUUID);
         append(sb, "wf.uuid", this.mWorkflowUUID);
+        if (this.mPhaseDurations != null) {
+            append(sb, "phase.durations", this.mPhaseDurations.toString());
+        }
         sb.append(this.getWorkflowMetrics());
         if (this.mApplicationMetrics != null) {
             append(sb, "app.metrics", this.mApplicationMetrics.toString());
@@ -702,6 +734,9 @@ public class PlannerMetrics extends Data {
         if (this.mApplicationMetrics != null) {
             pm.setApplicationMetrics((Properties) this.mApplicationMetrics.clone());
         }
+        if (this.mPhaseDurations != null) {
+            pm.mPhaseDurations = new LinkedHashMap<String, Double>(this.mPhaseDurations);
+        }
         return pm;
     }
 }
@@ -102,6 +102,9 @@ public class PlannerOptions extends Data implements Cloneable {
     /** To Display help or not. */
     private boolean mDisplayHelp;
 
+    /** To Display the version or not. */
+    private boolean mDisplayVersion;
+
     /** Denotes the logging level that is to be used for logging the messages. */
     private int mLoggingLevel;
 
@@ -209,6 +212,7 @@ public class PlannerOptions extends Data implements Cloneable {
         mForwardOptions = new java.util.LinkedList<NameValue>();
         mOutputSites = new java.util.HashSet();
         mDisplayHelp = false;
+        mDisplayVersion = false;
         mLoggingLevel = DEFAULT_LOGGING_LEVEL;
         mForce = false;
         mSubmit = false;
@@ -361,6 +365,15 @@ public class PlannerOptions extends Data implements Cloneable {
         return mDisplayHelp;
     }
 
+    /**
+     * Returns whether to display the version or not.
+     *
+     * @return version boolean value.
+     */
+    public boolean getDisplayVersion() {
+        return mDisplayVersion;
+    }
+
     /** Increments the logging level by 1. */
     public void incrementLogging() {
         mLoggingLevel++;
@@ -872,6 +885,15 @@ public class PlannerOptions extends Data implements Cloneable {
         mDisplayHelp = help;
     }
 
+    /**
+     * Sets the version option for the planner.
+     *
+     * @param version boolean value.
+     */
+    public void setDisplayVersion(boolean version) {
+        mDisplayVersion = version;
+    }
+
     /**
      * Sets the logging level for logging of messages.
      *
@@ -951,7 +973,7 @@ public class PlannerOptions extends Data implements Cloneable {
      * @param map
      */
     public void setOutputMap(String map) {
-        this.mOutputMap = map;
+        this.mOutputMap = sanitizePath(map);
     }
 
     /**
@@ -1526,6 +1548,7 @@ public class PlannerOptions extends Data implements Cloneable {
         pOpt.mOutputMap = this.mOutputMap;
         pOpt.mOutputSites = cloneSet(this.mOutputSites);
         pOpt.mDisplayHelp = this.mDisplayHelp;
+        pOpt.mDisplayVersion = this.mDisplayVersion;
         pOpt.mLoggingLevel = this.mLoggingLevel;
         pOpt.mForce = this.mForce;
         pOpt.mForceReplan = this.mForceReplan;
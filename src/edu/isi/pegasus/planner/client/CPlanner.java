@@ -54,6 +54,7 @@ import edu.isi.pegasus.planner.parser.dax.Callback;
 import edu.isi.pegasus.planner.parser.dax.DAXParser;
 import edu.isi.pegasus.planner.parser.dax.DAXParser5;
 import edu.isi.pegasus.planner.refiner.MainEngine;
+import edu.isi.pegasus.planner.refiner.PlanSnapshot;
 import edu.isi.pegasus.planner.refiner.ReplicaCatalogBridge;
 import gnu.getopt.Getopt;
 import gnu.getopt.LongOpt;
@@ -83,6 +84,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Pattern;
 
 /**
@@ -118,6 +123,24 @@ public class CPlanner extends Executable {
     public static final String JAVA_COMMAND_LINE_PROPERTY_REGEX =
             "(env|condor|globus|dagman|pegasus)\\..*=.*";
 
+    /** The phase in which the DAX is parsed. */
+    public static final String DAX_PARSE_PHASE = "dax.parse";
+
+    /** The phase in which the sites are loaded from the site catalog. */
+    public static final String SITE_CATALOG_PHASE = "site.catalog";
+
+    /** The phase in which the transformation catalog is loaded. */
+    public static final String TRANSFORMATION_CATALOG_PHASE = "transformation.catalog";
+
+    /** The phase in which the input files of the workflow are looked up in replica catalog. */
+    public static final String REPLICA_CATALOG_PHASE = "replica.catalog";
+
+    /**
+     * The phase from the start of the DAX parsing till all the catalogs are loaded, and the replica
+     * catalog lookup is done.
+     */
+    public static final String BOOTSTRAP_PHASE = "bootstrap";
+
     /** The final successful message that is to be logged. */
     private static final String EMPTY_FINAL_WORKFLOW_MESSAGE =
             "\n\n\n"
@@ -194,8 +217,19 @@ public class CPlanner extends Executable {
      * @param args the main arguments passed to the planner.
      */
     public static void main(String[] args) {
-
         CPlanner cPlanner = new CPlanner();
+        int result = cPlanner.plan(args);
+        System.exit(result);
+    }
+
+    /**
+     * Plans a workflow for the arguments passed, logging any errors encountered. This is what the
+     * planner does when invoked from the command line, apart from exiting the JVM.
+     *
+     * @param args the arguments passed to the planner.
+     * @return the exitcode for the planner.
+     */
+    public int plan(String[] args) {
         int result = 0;
         Date startDate = new Date();
         Date endDate = null;
@@ -204,62 +238,58 @@ public class CPlanner extends Executable {
 
         Exception plannerException = null;
         try {
-            cPlanner.initialize(args, '6');
-            cPlanner.mPMetrics.setStartTime(startDate);
-            cPlanner.executeCommand();
+            this.initialize(args, '6');
+            this.mPMetrics.setStartTime(startDate);
+            this.executeCommand();
         } catch (FactoryException fe) {
             plannerException = fe;
-            cPlanner.log(fe.convertException(), LogManager.FATAL_MESSAGE_LEVEL);
+            this.log(fe.convertException(), LogManager.FATAL_MESSAGE_LEVEL);
             result = 2;
         } catch (OutOfMemoryError error) {
-            cPlanner.log(
-                    "Out of Memory Error " + error.getMessage(), LogManager.FATAL_MESSAGE_LEVEL);
+            this.log("Out of Memory Error " + error.getMessage(), LogManager.FATAL_MESSAGE_LEVEL);
             error.printStackTrace();
             // lets print out some GC stats
-            cPlanner.logMemoryUsage();
+            this.logMemoryUsage();
             result = 4;
         } catch (RuntimeException rte) {
             plannerException = rte;
             // catch all runtime exceptions including our own that
             // are thrown that may have chained causes
-            cPlanner.log(
-                    convertException(rte, cPlanner.mLogger.getLevel()),
-                    LogManager.FATAL_MESSAGE_LEVEL);
+            this.log(
+                    convertException(rte, this.mLogger.getLevel()), LogManager.FATAL_MESSAGE_LEVEL);
             result = 1;
         } catch (Exception e) {
             plannerException = e;
             // unaccounted for exceptions
-            cPlanner.log(
-                    convertException(e, cPlanner.mLogger.getLevel()),
-                    LogManager.FATAL_MESSAGE_LEVEL);
+            this.log(convertException(e, this.mLogger.getLevel()), LogManager.FATAL_MESSAGE_LEVEL);
             result = 3;
         } finally {
             endDate = new Date();
         }
 
         try {
-            cPlanner.mPMetrics.setEndTime(endDate);
+            this.mPMetrics.setEndTime(endDate);
             double endtime = endDate.getTime();
             duration = (endtime - starttime) / 1000;
-            cPlanner.mPMetrics.setDuration(duration);
-            cPlanner.mPMetrics.setExitcode(result);
+            this.mPMetrics.setDuration(duration);
+            this.mPMetrics.setExitcode(result);
 
             if (plannerException != null) {
                 // we want the stack trace to a String Writer.
                 StringWriter sw = new StringWriter();
                 plannerException.printStackTrace(new PrintWriter(sw));
-                cPlanner.mPMetrics.setMetricsTypeToError();
-                cPlanner.mPMetrics.setErrorMessage(sw.toString());
+                this.mPMetrics.setMetricsTypeToError();
+                this.mPMetrics.setErrorMessage(sw.toString());
             }
             // lets write out the metrics
-            if (cPlanner.mSendMetrics) {
+            if (this.mSendMetrics) {
                 edu.isi.pegasus.planner.code.generator.Metrics metrics =
                         new edu.isi.pegasus.planner.code.generator.Metrics();
-                metrics.initialize(cPlanner.mBag);
-                metrics.logMetrics(cPlanner.mPMetrics);
+                metrics.initialize(this.mBag);
+                metrics.logMetrics(this.mPMetrics);
             } else {
                 // log
-                cPlanner.log(
+                this.log(
                         "No metrics logged or sent to the metrics server",
                         LogManager.DEBUG_MESSAGE_LEVEL);
             }
@@ -271,11 +301,10 @@ public class CPlanner extends Executable {
         // 2012-03-06 (jsv): Copy dax file to submit directory. It's
         // MUCH SIMPLER to use the parsed CLI options at this point than
         // drill open the shell wrapper without messing up everything.
-        if (result == 0) {
+        if (result == 0 && this.mPOptions.getDAX() != null) {
             try {
-                File src_file = new File(cPlanner.mPOptions.getDAX());
-                File dst_file =
-                        new File(cPlanner.mPOptions.getSubmitDirectory(), src_file.getName());
+                File src_file = new File(this.mPOptions.getDAX());
+                File dst_file = new File(this.mPOptions.getSubmitDirectory(), src_file.getName());
                 if (!dst_file.exists()) dst_file.createNewFile();
 
                 FileChannel fc_src = null;
@@ -297,17 +326,16 @@ public class CPlanner extends Executable {
 
         // warn about non zero exit code
         if (result != 0) {
-            cPlanner.log(
-                    "Exiting with non-zero exit-code " + result, LogManager.DEBUG_MESSAGE_LEVEL);
-        } else {
+            this.log("Exiting with non-zero exit-code " + result, LogManager.DEBUG_MESSAGE_LEVEL);
+        } else if (!this.mPOptions.getDisplayVersion()) {
             // log the time taken to execute
-            cPlanner.log(
+            this.log(
                     "Time taken to execute is " + duration + " seconds",
                     LogManager.CONSOLE_MESSAGE_LEVEL);
         }
 
-        cPlanner.mLogger.logEventCompletion();
-        System.exit(result);
+        this.mLogger.logEventCompletion();
+        return result;
     }
 
     /** Loads all the properties that are needed by this class. */
@@ -350,6 +378,13 @@ public class CPlanner extends Executable {
             }
         }
 
+        // print the version if asked for
+        if (mPOptions.getDisplayVersion()) {
+            this.mSendMetrics = false;
+            mLogger.log(getGVDSVersion(), LogManager.CONSOLE_MESSAGE_LEVEL);
+            return result;
+        }
+
         // print help if asked for
         if (mPOptions.getHelp()) {
             // PM-816 disable metrics logging
@@ -390,8 +425,21 @@ public class CPlanner extends Executable {
             mLogger.log(nv.toString(), LogManager.CONFIG_MESSAGE_LEVEL);
         }
 
+        // the site and transformation catalogs don't depend on the dax
+        // and are loaded while the dax is parsed
+        long bootstrapStart = System.currentTimeMillis();
+        final PegasusBag catalogBag = (PegasusBag) mBag.clone();
+        Future<SiteStore> siteCatalog =
+                startPhase(SITE_CATALOG_PHASE, () -> loadSiteCatalog(catalogBag));
+        Future<TransformationCatalog> transformationCatalog =
+                startPhase(
+                        TRANSFORMATION_CATALOG_PHASE,
+                        () -> TransformationFactory.loadInstance(catalogBag));
+
         // load the parser and parse the dax
+        long parseStart = System.currentTimeMillis();
         ADag orgDag = this.parseDAX(dax, mPOptions, mProps);
+        recordPhase(DAX_PARSE_PHASE, parseStart);
         mLogger.log(
                 "Parsed DAX with following metrics " + orgDag.getWorkflowMetrics().toJson(),
                 LogManager.DEBUG_MESSAGE_LEVEL);
@@ -413,7 +461,7 @@ public class CPlanner extends Executable {
         }
 
         // load the site catalog
-        SiteStore s = loadSiteStore(orgDag.getSiteStore());
+        SiteStore s = loadSiteStore(orgDag.getSiteStore(), getResult(siteCatalog));
         s.setForPlannerUse(mProps, mPOptions);
 
         // update the local/output site entry if required
@@ -439,7 +487,18 @@ public class CPlanner extends Executable {
         }
 
         mBag.add(PegasusBag.SITE_STORE, s);
-        mBag.add(PegasusBag.TRANSFORMATION_CATALOG, loadTransformationCatalog(mBag, orgDag));
+
+        // the lfns in the dax are known and the proxy for the replica catalog
+        // is determined from the local site. start the lookup of the
+        // input files in the replica catalog
+        final PegasusBag rcBag = (PegasusBag) mBag.clone();
+        rcBag.add(PegasusBag.PEGASUS_PROPERTIES, mProps.clone());
+        Future<ReplicaCatalogBridge.Lookup> rcLookup =
+                startPhase(REPLICA_CATALOG_PHASE, () -> ReplicaCatalogBridge.lookup(orgDag, rcBag));
+
+        mBag.add(
+                PegasusBag.TRANSFORMATION_CATALOG,
+                loadTransformationCatalog(mBag, orgDag, transformationCatalog));
 
         // populate planner metrics
         mPMetrics.setVOGroup(mPOptions.getVOGroup());
@@ -596,12 +655,46 @@ public class CPlanner extends Executable {
         // the stampede event generator and generate events for the dax
         generateStampedeEventsForAbstractWorkflow(orgDag, mBag);
 
+        // for incremental planning reuse the site mappings of the
+        // earlier plan for jobs that did not change
+        PlanSnapshot snapshot = null;
+        if (PlanSnapshot.isEnabled(mProps)) {
+            long start = System.currentTimeMillis();
+            snapshot = new PlanSnapshot(mBag, orgDag);
+            snapshot.reuseSiteMappings(orgDag, PlanSnapshot.loadPrevious(mBag, orgDag), eSites);
+            mLogger.log(
+                    "Compared workflow against the earlier plan in "
+                            + (System.currentTimeMillis() - start)
+                            + " ms",
+                    LogManager.INFO_MESSAGE_LEVEL);
+        }
+
         // populate the singleton instance for user options
         // UserOptions opts = UserOptions.getInstance(mPOptions);
-        MainEngine cwmain = new MainEngine(orgDag, mBag);
+        ReplicaCatalogBridge.Lookup lookup = getResult(rcLookup);
+        recordPhase(BOOTSTRAP_PHASE, bootstrapStart);
+        mLogger.log(
+                "Time taken by the planner phases (in seconds) " + mPMetrics.getPhaseDurations(),
+                LogManager.DEBUG_MESSAGE_LEVEL);
+        MainEngine cwmain = new MainEngine(orgDag, mBag, lookup);
 
         ADag finalDag = cwmain.runPlanner();
 
+        if (snapshot != null) {
+            snapshot.recordSites(finalDag);
+            File snapshotFile =
+                    PlanSnapshot.getSnapshotFile(
+                            new File(mPOptions.getSubmitDirectory()), orgDag, mPOptions);
+            try {
+                snapshot.write(snapshotFile);
+            } catch (IOException ioe) {
+                mLogger.log(
+                        "Unable to write out snapshot of the plan to " + snapshotFile,
+                        ioe,
+                        LogManager.WARNING_MESSAGE_LEVEL);
+            }
+        }
+
         // store the workflow metrics from the final dag into
         // the planner metrics
         mPMetrics.setWorkflowMetrics(finalDag.getWorkflowMetrics());
@@ -922,8 +1015,9 @@ public class CPlanner extends Executable {
                     break;
 
                 case 'V': // version
-                    mLogger.log(getGVDSVersion(), LogManager.CONSOLE_MESSAGE_LEVEL);
-                    System.exit(0);
+                    // the rest of the arguments are ignored
+                    options.setDisplayVersion(true);
+                    return options;
 
                 case 'X': // jvm options
                     options.addToNonStandardJavaOptions(g.getOptarg());
@@ -1648,9 +1742,10 @@ public class CPlanner extends Executable {
      * Loads the sites from the site catalog into the site store
      *
      * @param daxSiteStore the site catalog entries from the DAX
+     * @param catalogSiteStore the site catalog entries loaded from the site catalog
      * @return SiteStore object containing the information about the sites.
      */
-    private SiteStore loadSiteStore(SiteStore daxSiteStore) {
+    private SiteStore loadSiteStore(SiteStore daxSiteStore, SiteStore catalogSiteStore) {
         SiteStore result = new SiteStore();
         // PM-1515 we prefer entries in the DAX Site Store
         // so load them first
@@ -1658,11 +1753,36 @@ public class CPlanner extends Executable {
             result.addEntry(it.next());
         }
 
+        // PM-1047 we want to save the catalogs all around.
+        result.setFileSource(catalogSiteStore.getFileSource());
+        for (Iterator<SiteCatalogEntry> it = catalogSiteStore.entryIterator(); it.hasNext(); ) {
+            SiteCatalogEntry s = it.next();
+            if (result.lookup(s.getSiteHandle()) == null) {
+                // PM-1515 prefer entries from DAX SiteStore.
+                // Only load from catalog if not in DAX SiteStore
+                result.addEntry(s);
+            }
+        }
+
+        /* query for the sites, and print them out */
+        mLogger.log("Sites loaded are " + result.list(), LogManager.DEBUG_MESSAGE_LEVEL);
+        return result;
+    }
+
+    /**
+     * Loads all the sites from the site catalog. Does not rely on the DAX, and hence can be done
+     * while the DAX is parsed.
+     *
+     * @param bag the bag of initialization objects
+     * @return SiteStore object containing the sites in the site catalog.
+     */
+    private SiteStore loadSiteCatalog(PegasusBag bag) {
+        SiteStore result = new SiteStore();
         SiteCatalog catalog = null;
 
         /* load the catalog using the factory */
         try {
-            catalog = SiteFactory.loadInstance(mBag);
+            catalog = SiteFactory.loadInstance(bag);
 
             // PM-1047 we want to save the catalogs all around.
             result.setFileSource(catalog.getFileSource());
@@ -1698,9 +1818,7 @@ public class CPlanner extends Executable {
                 }
                 for (Iterator<String> it = toLoad.iterator(); it.hasNext(); ) {
                     SiteCatalogEntry s = catalog.lookup(it.next());
-                    if (s != null && result.lookup(s.getSiteHandle()) == null) {
-                        // PM-1515 prefer entries from DAX SiteStore.
-                        // Only load from catalog if not in DAX SiteStore
+                    if (s != null) {
                         result.addEntry(s);
                     }
                 }
@@ -1714,12 +1832,68 @@ public class CPlanner extends Executable {
                 }
             }
         }
-
-        /* query for the sites, and print them out */
-        mLogger.log("Sites loaded are " + result.list(), LogManager.DEBUG_MESSAGE_LEVEL);
         return result;
     }
 
+    /**
+     * Starts a phase of the planner in a separate thread.
+     *
+     * @param phase the name of the phase, used to record the time taken in the planner metrics
+     * @param callable the work to be done in the phase
+     * @return the result of the phase
+     */
+    private <T> Future<T> startPhase(String phase, Callable<T> callable) {
+        FutureTask<T> task =
+                new FutureTask<T>(
+                        () -> {
+                            long start = System.currentTimeMillis();
+                            try {
+                                return callable.call();
+                            } finally {
+                                recordPhase(phase, start);
+                            }
+                        });
+        Thread thread = new Thread(task, "pegasus-plan-" + phase);
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Records the time taken by a phase of the planner in the planner metrics.
+     *
+     * @param phase the name of the phase
+     * @param start the time in milliseconds when the phase started
+     */
+    private void recordPhase(String phase, long start) {
+        mPMetrics.setPhaseDuration(phase, (System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    /**
+     * Waits for a phase started by {@link #startPhase(String, Callable)} to finish, and returns its
+     * result. Any exception thrown in the phase is rethrown.
+     *
+     * @param future the phase
+     * @return the result of the phase
+     */
+    private <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the planner to load", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
     /**
      * Logs the successful completion message.
      *
@@ -1973,14 +2147,19 @@ public class CPlanner extends Executable {
      *
      * @param bag
      * @param daxStore
+     * @param catalog the transformation catalog being loaded in the background. Can be null.
      * @return
      */
-    private TransformationCatalog loadTransformationCatalog(PegasusBag bag, ADag dag) {
+    private TransformationCatalog loadTransformationCatalog(
+            PegasusBag bag, ADag dag, Future<TransformationCatalog> catalog) {
 
         TransformationCatalog store = null;
         TransformationStore daxStore = dag.getTransformationStore();
         try {
-            store = TransformationFactory.loadInstance(bag);
+            store =
+                    (catalog == null)
+                            ? TransformationFactory.loadInstance(bag)
+                            : getResult(catalog);
         } catch (TransformationFactoryException e) {
             if ((daxStore == null || daxStore.isEmpty())
                     && dag.getWorkflowMetrics().getTaskCount(Job.COMPUTE_JOB)
@@ -2018,7 +2197,7 @@ public class CPlanner extends Executable {
                     PegasusProperties.PEGASUS_TRANSFORMATION_CATALOG_FILE_PROPERTY,
                     f.getAbsolutePath());
             b.add(PegasusBag.PEGASUS_PROPERTIES, props);
-            return loadTransformationCatalog(b, dag);
+            return loadTransformationCatalog(b, dag, null);
         }
         return store;
     }
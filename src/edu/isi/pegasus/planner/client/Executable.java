@@ -86,14 +86,22 @@ public abstract class Executable {
         while ((option = g.getopt()) != -1) {
             if (option == confChar) {
                 propertyFilePath = g.getOptarg();
+                if (!new File(propertyFilePath).isAbsolute()) {
+                    propertyFilePath =
+                            new File(System.getProperty("user.dir"), propertyFilePath).getPath();
+                }
                 break;
             }
         }
 
         if (propertyFilePath == null) {
             // PM-1018 if no --conf provided fall back to pegasus.properties
-            // in the current working directory from where command is called
-            propertyFilePath = "." + File.separatorChar + Executable.DEFAULT_PROPERTIES_FILE;
+            // in the current working directory from where command is called.
+            // user.dir is set to the client's directory by the planner server
+            propertyFilePath =
+                    System.getProperty("user.dir")
+                            + File.separatorChar
+                            + Executable.DEFAULT_PROPERTIES_FILE;
         }
 
         return propertyFilePath;
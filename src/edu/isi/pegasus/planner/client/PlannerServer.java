@@ -0,0 +1,619 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.client;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.common.util.Version;
+import edu.isi.pegasus.planner.catalog.CatalogCache;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A long running planner, that plans workflows on behalf of the thin pegasus-plan-client. This
+ * saves the JVM startup and class loading for every invocation of pegasus-plan, and allows the
+ * parsed site and transformation catalogs to be reused across invocations through the {@link
+ * CatalogCache}, for as long as the catalog files do not change on disk.
+ *
+ * <p>The server only listens on the loopback interface, and only plans requests that carry the
+ * token it writes on startup to a file only readable by the user running the server. Requests are
+ * planned one at a time, as the planner relies on JVM wide state such as the system properties, the
+ * working directory and the logger. A request that is not planned within the request timeout fails,
+ * and the server shuts down as the planner still holds on to that state. The server also shuts down
+ * once no request arrives within the idle timeout, if one is set.
+ *
+ * @version $Revision$
+ */
+public class PlannerServer {
+
+    /** The version of the protocol spoken between the client and the server. */
+    public static final int PROTOCOL_VERSION = 2;
+
+    /** The default port the server listens on. */
+    public static final int DEFAULT_PORT = 10900;
+
+    /** The default timeout in seconds for planning a single request. */
+    public static final int DEFAULT_REQUEST_TIMEOUT = 3600;
+
+    /** The default idle time in seconds after which the server shuts down. 0 means never. */
+    public static final int DEFAULT_IDLE_TIMEOUT = 0;
+
+    /** The timeout in milliseconds for a client to send its request once connected. */
+    public static final int READ_TIMEOUT = 10000;
+
+    /** The largest string that is accepted in a request. */
+    private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    /** The largest number of arguments that is accepted in a request. */
+    private static final int MAX_ARGUMENTS = 4096;
+
+    /** The frame type for output that is to be written to stdout by the client. */
+    public static final int STDOUT_FRAME = 1;
+
+    /** The frame type for output that is to be written to stderr by the client. */
+    public static final int STDERR_FRAME = 2;
+
+    /** The frame type for the exitcode, that is the last frame sent for a request. */
+    public static final int EXITCODE_FRAME = 0;
+
+    /** The property that designates the log file for a planner invocation. */
+    private static final String LOG_PROPERTY = "pegasus.log.*";
+
+    /** The port to listen on. */
+    private int mPort;
+
+    /** The timeout in seconds for planning a single request. */
+    private int mTimeout;
+
+    /** The seconds the server waits for a request before it shuts down. 0 means forever. */
+    private int mIdleTimeout;
+
+    /** The logger shared by all the planner invocations. */
+    private LogManager mLogger;
+
+    /** The token a client has to send with a request. */
+    private byte[] mToken;
+
+    /** The thread the requests are planned in. */
+    private ExecutorService mPlanner;
+
+    /** Whether a request timed out, after which no more requests are served. */
+    private boolean mTimedOut;
+
+    /** The number of requests served. */
+    private long mRequests;
+
+    /**
+     * The default constructor.
+     *
+     * @param port the port to listen on. 0 means any free port.
+     */
+    public PlannerServer(int port) {
+        this(port, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param port the port to listen on. 0 means any free port.
+     * @param timeout the timeout in seconds for planning a single request.
+     */
+    public PlannerServer(int port, int timeout) {
+        this(port, timeout, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param port the port to listen on. 0 means any free port.
+     * @param timeout the timeout in seconds for planning a single request.
+     * @param idleTimeout the seconds to wait for a request before shutting down. 0 means forever.
+     */
+    public PlannerServer(int port, int timeout, int idleTimeout) {
+        mPort = port;
+        mTimeout = timeout;
+        mIdleTimeout = idleTimeout;
+        mRequests = 0;
+        mTimedOut = false;
+    }
+
+    /**
+     * Listens for requests till the JVM is terminated, a request times out, or no request arrives
+     * within the idle timeout.
+     *
+     * @throws IOException in case of error while listening.
+     */
+    public void serve() throws IOException {
+        CatalogCache.setEnabled(true);
+        mLogger = LogManagerFactory.loadSingletonInstance(PegasusProperties.nonSingletonInstance());
+        mLogger.logEventStart("event.pegasus.planner-server", "planner.version", version());
+        mPlanner =
+                Executors.newSingleThreadExecutor(
+                        r -> {
+                            Thread t = new Thread(r, "pegasus-planner");
+                            t.setDaemon(true);
+                            return t;
+                        });
+
+        ServerSocket server = new ServerSocket(mPort, 50, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(mIdleTimeout * 1000);
+        File tokenFile = tokenFile(server.getLocalPort());
+        mToken = writeToken(tokenFile);
+        tokenFile.deleteOnExit();
+        // the port is printed so that callers starting the server on a free port can pick it up
+        System.out.println(
+                "Planner server listening on port "
+                        + server.getLocalPort()
+                        + " with token in "
+                        + tokenFile);
+        System.out.flush();
+        this.listening(server.getLocalPort());
+        try {
+            while (!mTimedOut) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    mLogger.log(
+                            "No request in the last " + mIdleTimeout + " seconds. Shutting down",
+                            LogManager.INFO_MESSAGE_LEVEL);
+                    return;
+                }
+                try {
+                    this.handle(socket);
+                } catch (IOException e) {
+                    mLogger.log("Error while serving request", e, LogManager.ERROR_MESSAGE_LEVEL);
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        } finally {
+            server.close();
+            tokenFile.delete();
+        }
+    }
+
+    /**
+     * Called once the server listens for requests, and the token is written out.
+     *
+     * @param port the port the server listens on.
+     */
+    protected void listening(int port) {}
+
+    /**
+     * Handles a single request. A request is the protocol version, the token, the directory in
+     * which the client was invoked, and the arguments to pegasus-plan. The strings are sent as the
+     * length of their UTF-8 encoding followed by the encoding.
+     *
+     * @param socket the socket connected to the client.
+     * @throws IOException in case of error while talking to the client.
+     */
+    protected void handle(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        PrintStream err = new PrintStream(new FrameOutputStream(out, STDERR_FRAME), true);
+
+        // a client that connects but does not send its request should not hold up the others
+        socket.setSoTimeout(READ_TIMEOUT);
+        int version = in.readInt();
+        if (version != PROTOCOL_VERSION) {
+            err.println(
+                    "Planner server speaks protocol "
+                            + PROTOCOL_VERSION
+                            + " while client speaks "
+                            + version);
+            sendExitCode(out, 1);
+            return;
+        }
+        byte[] token = readString(in).getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(token, mToken)) {
+            mLogger.log("Rejected request with an invalid token", LogManager.WARNING_MESSAGE_LEVEL);
+            err.println("Planner server rejected the request as the token is invalid");
+            sendExitCode(out, 1);
+            return;
+        }
+        String cwd = readString(in);
+        int argc = in.readInt();
+        if (argc < 0 || argc > MAX_ARGUMENTS) {
+            throw new IOException("Invalid number of arguments " + argc);
+        }
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+            args[i] = readString(in);
+        }
+        socket.setSoTimeout(0);
+
+        long start = System.currentTimeMillis();
+        Future<Integer> request = mPlanner.submit(() -> this.plan(cwd, args, out));
+        int exitcode;
+        try {
+            exitcode = request.get(mTimeout, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // the planner thread cannot be stopped safely, and holds on to the JVM wide state
+            request.cancel(true);
+            mTimedOut = true;
+            mLogger.log(
+                    "Request in "
+                            + cwd
+                            + " timed out after "
+                            + mTimeout
+                            + " seconds. Shutting down",
+                    LogManager.FATAL_MESSAGE_LEVEL);
+            err.println("Planner server timed out after " + mTimeout + " seconds");
+            exitcode = 1;
+        } catch (Exception e) {
+            err.println("FATAL: Planner server unable to plan workflow " + e);
+            exitcode = 1;
+        }
+        mRequests++;
+        mLogger.log(
+                "Request "
+                        + mRequests
+                        + " in "
+                        + cwd
+                        + " exited with "
+                        + exitcode
+                        + " in "
+                        + (System.currentTimeMillis() - start)
+                        + " ms. "
+                        + CatalogCache.getStatistics(),
+                LogManager.INFO_MESSAGE_LEVEL);
+        sendExitCode(out, exitcode);
+    }
+
+    /**
+     * Plans a workflow with the working directory and the system properties set up as pegasus-plan
+     * would have, and the output sent back to the client. The JVM state is restored afterwards.
+     *
+     * @param cwd the directory in which the client was invoked.
+     * @param args the arguments passed to pegasus-plan.
+     * @param out the stream to the client.
+     * @return the exitcode of the planner.
+     */
+    protected synchronized int plan(String cwd, String[] args, DataOutputStream out) {
+        Properties systemProperties = (Properties) System.getProperties().clone();
+        PrintStream systemOut = System.out;
+        PrintStream systemErr = System.err;
+        PrintStream loggerOut = mLogger.getWriter(LogManager.STREAM_TYPE.stdout);
+        PrintStream loggerErr = mLogger.getWriter(LogManager.STREAM_TYPE.stderr);
+        PrintStream requestOut = new PrintStream(new FrameOutputStream(out, STDOUT_FRAME), true);
+        PrintStream requestErr = new PrintStream(new FrameOutputStream(out, STDERR_FRAME), true);
+        PrintStream logFile = null;
+
+        int result = 0;
+        try {
+            if (!new File(cwd).isAbsolute()) {
+                requestErr.println("ERROR: Planner server requires an absolute directory " + cwd);
+                return 1;
+            }
+            // the working directory of the JVM cannot be changed. The planner resolves the
+            // relative paths it is passed, and looks for the default files, against user.dir
+            System.setProperty("user.dir", cwd);
+            String[] plannerArgs = this.setSystemProperties(cwd, args);
+
+            // the properties are read in a way that exits the JVM on error
+            File conf = new File(new CPlanner().lookupConfProperty(plannerArgs, '6'));
+            if (conf.exists() && !conf.canRead()) {
+                requestErr.println("ERROR: Unable to read properties file " + conf);
+                return 1;
+            }
+
+            String log = System.getProperty(LOG_PROPERTY);
+            File logPath = (log == null) ? null : new File(log);
+            if (logPath != null && !isWithin(new File(cwd), logPath)) {
+                requestErr.println(
+                        "ERROR: Planner server only writes log files within "
+                                + cwd
+                                + " not "
+                                + log);
+                return 1;
+            }
+
+            System.setOut(requestOut);
+            System.setErr(requestErr);
+            if (logPath == null) {
+                mLogger.setWriter(LogManager.STREAM_TYPE.stdout, requestOut);
+                mLogger.setWriter(LogManager.STREAM_TYPE.stderr, requestErr);
+            } else {
+                logFile = new PrintStream(new FileOutputStream(logPath, true), true);
+                mLogger.setWriter(LogManager.STREAM_TYPE.stdout, logFile);
+                mLogger.setWriter(LogManager.STREAM_TYPE.stderr, logFile);
+            }
+            mLogger.logEventStart("event.pegasus.planner", "planner.version", version());
+
+            CPlanner planner = new CPlanner(mLogger);
+            result = planner.plan(plannerArgs);
+        } catch (Throwable t) {
+            requestErr.println("FATAL: Planner server unable to plan workflow " + t);
+            result = 1;
+        } finally {
+            mLogger.setWriter(LogManager.STREAM_TYPE.stdout, loggerOut);
+            mLogger.setWriter(LogManager.STREAM_TYPE.stderr, loggerErr);
+            System.setOut(systemOut);
+            System.setErr(systemErr);
+            System.setProperties(systemProperties);
+            requestOut.flush();
+            requestErr.flush();
+            if (logFile != null) {
+                logFile.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the java properties passed as -D arguments as system properties, as the java wrapper for
+     * pegasus-plan does. Java options passed as -X arguments are ignored. A relative path for the
+     * log file or for a catalog file is resolved against the directory the client was invoked in.
+     *
+     * @param cwd the directory in which the client was invoked.
+     * @param args the arguments passed to pegasus-plan.
+     * @return the arguments to be passed to the planner.
+     */
+    protected String[] setSystemProperties(String cwd, String[] args) {
+        List<String> result = new ArrayList<String>(args.length);
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("-D")) {
+                String property = arg.substring(2);
+                if (property.length() == 0 && i + 1 < args.length) {
+                    property = args[++i];
+                }
+                int index = property.indexOf('=');
+                if (index > 0) {
+                    String key = property.substring(0, index);
+                    String value = property.substring(index + 1);
+                    if (key.equals(LOG_PROPERTY)
+                            || (key.startsWith("pegasus.catalog.") && key.endsWith(".file"))) {
+                        value = resolve(cwd, value);
+                    }
+                    System.setProperty(key, value);
+                } else if (property.length() > 0) {
+                    System.setProperty(property, "");
+                }
+            } else if (arg.startsWith("-X")) {
+                // jvm options only apply to a new jvm
+            } else {
+                result.add(arg);
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the file the token for a server listening on a port is written to.
+     *
+     * @param port the port the server listens on.
+     * @return the token file.
+     */
+    public static File tokenFile(int port) {
+        return new File(
+                new File(System.getProperty("user.home"), ".pegasus"),
+                "planner-server-" + port + ".token");
+    }
+
+    /**
+     * Writes a new random token to a file, that only the user running the server can read.
+     *
+     * @param file the token file.
+     * @return the token.
+     * @throws IOException in case of error while writing the file.
+     */
+    private static byte[] writeToken(File file) throws IOException {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder token = new StringBuilder();
+        for (byte b : random) {
+            token.append(String.format("%02x", b & 0xff));
+        }
+
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.deleteIfExists(file.toPath());
+        Files.createFile(
+                file.toPath(),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        Files.write(file.toPath(), token.toString().getBytes(StandardCharsets.UTF_8));
+        return token.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns whether a file lies within a directory, once symbolic links are resolved.
+     *
+     * @param dir the directory.
+     * @param file the file.
+     * @return boolean
+     * @throws IOException in case of error while resolving the paths.
+     */
+    private static boolean isWithin(File dir, File file) throws IOException {
+        String base = dir.getCanonicalPath();
+        String path = file.getCanonicalPath();
+        return path.startsWith(base.endsWith(File.separator) ? base : base + File.separator);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] b = new byte[length];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static String resolve(String cwd, String path) {
+        File f = new File(path);
+        return f.isAbsolute() ? path : new File(cwd, path).getPath();
+    }
+
+    private static String version() {
+        return Version.instance().toString();
+    }
+
+    private static void sendExitCode(DataOutputStream out, int exitcode) throws IOException {
+        synchronized (out) {
+            out.writeByte(EXITCODE_FRAME);
+            out.writeInt(exitcode);
+            out.flush();
+        }
+    }
+
+    /** Prints the usage for the server. */
+    public static void printUsage() {
+        String linefeed = System.getProperty("line.separator", "\r\n");
+        System.out.println(
+                "Usage: pegasus-plan-server [-p port] [-t timeout] [-i idle] [-h]"
+                        + linefeed
+                        + linefeed
+                        + "Options:"
+                        + linefeed
+                        + " -p|--port      the loopback port to listen on. 0 picks any free port."
+                        + linefeed
+                        + "                Defaults to "
+                        + DEFAULT_PORT
+                        + linefeed
+                        + " -t|--timeout   the seconds a request may take to plan, after which the"
+                        + linefeed
+                        + "                server shuts down. Defaults to "
+                        + DEFAULT_REQUEST_TIMEOUT
+                        + linefeed
+                        + " -i|--idle      the seconds to wait for a request, after which the server"
+                        + linefeed
+                        + "                shuts down. 0 waits forever. Defaults to "
+                        + DEFAULT_IDLE_TIMEOUT
+                        + linefeed
+                        + " -h|--help      print this message and exit."
+                        + linefeed
+                        + linefeed
+                        + "The token clients authenticate with is written to "
+                        + linefeed
+                        + tokenFile(DEFAULT_PORT).getParent()
+                        + File.separator
+                        + "planner-server-<port>.token"
+                        + linefeed);
+    }
+
+    public static void main(String[] args) {
+        LongOpt[] longOptions = new LongOpt[4];
+        longOptions[0] = new LongOpt("port", LongOpt.REQUIRED_ARGUMENT, null, 'p');
+        longOptions[1] = new LongOpt("timeout", LongOpt.REQUIRED_ARGUMENT, null, 't');
+        longOptions[2] = new LongOpt("idle", LongOpt.REQUIRED_ARGUMENT, null, 'i');
+        longOptions[3] = new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h');
+        Getopt g = new Getopt("pegasus-plan-server", args, "p:t:i:h", longOptions, false);
+
+        int port = DEFAULT_PORT;
+        int timeout = DEFAULT_REQUEST_TIMEOUT;
+        int idle = DEFAULT_IDLE_TIMEOUT;
+        int option = 0;
+        try {
+            while ((option = g.getopt()) != -1) {
+                switch (option) {
+                    case 'p':
+                        port = Integer.parseInt(g.getOptarg());
+                        break;
+
+                    case 't':
+                        timeout = Integer.parseInt(g.getOptarg());
+                        break;
+
+                    case 'i':
+                        idle = Integer.parseInt(g.getOptarg());
+                        break;
+
+                    case 'h':
+                    default:
+                        printUsage();
+                        System.exit(option == 'h' ? 0 : 1);
+                }
+            }
+            PlannerServer server = new PlannerServer(port, timeout, idle);
+            server.serve();
+            // a request timed out, and the planner thread may still be running
+            System.exit(server.mTimedOut ? 1 : 0);
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: Invalid number " + e.getMessage());
+            System.exit(1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("FATAL: " + e.getMessage());
+            System.exit(3);
+        }
+    }
+
+    /** Writes everything written to it as frames of a particular type to the client. */
+    private static class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream mOut;
+
+        private final int mType;
+
+        FrameOutputStream(DataOutputStream out, int type) {
+            mOut = out;
+            mType = type;
+        }
+
+        public void write(int b) throws IOException {
+            this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            // stdout and stderr frames share the socket
+            synchronized (mOut) {
+                mOut.writeByte(mType);
+                mOut.writeInt(len);
+                mOut.write(b, off, len);
+            }
+        }
+
+        public void flush() throws IOException {
+            synchronized (mOut) {
+                mOut.flush();
+            }
+        }
+    }
+}
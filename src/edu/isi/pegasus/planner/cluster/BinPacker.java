@@ -0,0 +1,236 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.cluster;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Packs items with runtimes into bins, for runtime based horizontal clustering. The runtimes are
+ * held in a primitive array, and the items are referred to by their index in it. The bins returned
+ * are arrays of item indices, with the items in decreasing order of their runtimes.
+ *
+ * <p>Two packings are supported
+ *
+ * <ul>
+ *   <li>fixed capacity - best fit decreasing, where each item is put in the open bin with the least
+ *       remaining capacity that can hold it. The open bins are kept in a tree keyed by their
+ *       remaining capacity, so that packing n items is O(n log n). Bins that cannot hold even the
+ *       shortest item are closed. Items longer than the capacity are not packed at all.
+ *   <li>fixed number of bins - longest processing time first, where each item is put in the bin
+ *       with the least total runtime, kept in a min heap over the bin runtimes.
+ * </ul>
+ *
+ * @version $Revision$
+ */
+public class BinPacker {
+
+    /** The runtimes of the items. */
+    private final double[] mRuntimes;
+
+    /** The item indices in decreasing order of their runtimes, computed lazily. */
+    private int[] mOrder;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param runtimes the runtimes of the items.
+     */
+    public BinPacker(double[] runtimes) {
+        mRuntimes = runtimes;
+    }
+
+    /**
+     * Returns the item indices in decreasing order of their runtimes. Items with the same runtime
+     * are in the order they were passed in.
+     *
+     * @return the item indices
+     */
+    public int[] decreasingOrder() {
+        if (mOrder == null) {
+            Integer[] order = new Integer[mRuntimes.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            final double[] runtimes = mRuntimes;
+            Arrays.sort(
+                    order,
+                    new Comparator<Integer>() {
+                        @Override
+                        public int compare(Integer i1, Integer i2) {
+                            return Double.compare(runtimes[i2], runtimes[i1]);
+                        }
+                    });
+            mOrder = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                mOrder[i] = order[i];
+            }
+        }
+        return mOrder;
+    }
+
+    /**
+     * Packs the items into bins, such that the total runtime of the items in a bin does not exceed
+     * the maximum time. Items whose runtime is greater than the maximum time are not put in any
+     * bin.
+     *
+     * @param maxTime the maximum total runtime of a bin
+     * @return the bins in the order they were opened
+     */
+    public List<int[]> packByCapacity(double maxTime) {
+        int[] order = this.decreasingOrder();
+        List<IntList> bins = new ArrayList<IntList>();
+        if (order.length == 0) {
+            return toArrays(bins);
+        }
+        double minRuntime = mRuntimes[order[order.length - 1]];
+
+        // open bins keyed by their remaining capacity. bins with the same
+        // remaining capacity are filled in the order they were opened
+        TreeMap<Double, ArrayDeque<Integer>> open = new TreeMap<Double, ArrayDeque<Integer>>();
+        double[] remaining = new double[order.length];
+
+        for (int item : order) {
+            double runtime = mRuntimes[item];
+            if (runtime > maxTime) {
+                continue;
+            }
+
+            int bin;
+            Map.Entry<Double, ArrayDeque<Integer>> fit = open.ceilingEntry(runtime);
+            if (fit == null) {
+                // the job does not fit in any of the open bins
+                bin = bins.size();
+                bins.add(new IntList());
+                remaining[bin] = maxTime;
+            } else {
+                ArrayDeque<Integer> candidates = fit.getValue();
+                bin = candidates.pollFirst();
+                if (candidates.isEmpty()) {
+                    open.remove(fit.getKey());
+                }
+            }
+            bins.get(bin).add(item);
+            remaining[bin] -= runtime;
+
+            // a bin that cannot fit the shortest job is closed
+            if (remaining[bin] >= minRuntime) {
+                ArrayDeque<Integer> candidates = open.get(remaining[bin]);
+                if (candidates == null) {
+                    candidates = new ArrayDeque<Integer>();
+                    open.put(remaining[bin], candidates);
+                }
+                candidates.addLast(bin);
+            }
+        }
+        return toArrays(bins);
+    }
+
+    /**
+     * Packs all the items into a fixed number of bins, balancing the total runtime of the bins. If
+     * there are fewer items than bins, then each item gets its own bin.
+     *
+     * @param maxBins the number of bins
+     * @return the bins
+     */
+    public List<int[]> packIntoBins(int maxBins) {
+        int[] order = this.decreasingOrder();
+        int count = Math.min(maxBins, order.length);
+        List<IntList> bins = new ArrayList<IntList>(count);
+        if (count <= 0) {
+            return toArrays(bins);
+        }
+
+        // a binary min heap of bin indices, keyed by the total runtime of the bins
+        // and then the bin index, so that the packing is deterministic
+        double[] time = new double[count];
+        int[] heap = new int[count];
+        for (int i = 0; i < count; i++) {
+            bins.add(new IntList());
+            heap[i] = i;
+        }
+
+        for (int item : order) {
+            int bin = heap[0];
+            bins.get(bin).add(item);
+            time[bin] += mRuntimes[item];
+            siftDown(heap, time, count);
+        }
+        return toArrays(bins);
+    }
+
+    /**
+     * Restores the heap property after the key of the root increased.
+     *
+     * @param heap the heap of bin indices
+     * @param time the total runtime of the bins
+     * @param size the size of the heap
+     */
+    private static void siftDown(int[] heap, double[] time, int size) {
+        int i = 0;
+        int bin = heap[0];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && less(heap[child + 1], heap[child], time)) {
+                child++;
+            }
+            if (!less(heap[child], bin, time)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = bin;
+    }
+
+    private static boolean less(int bin1, int bin2, double[] time) {
+        int result = Double.compare(time[bin1], time[bin2]);
+        return result < 0 || (result == 0 && bin1 < bin2);
+    }
+
+    private static List<int[]> toArrays(List<IntList> bins) {
+        List<int[]> result = new ArrayList<int[]>(bins.size());
+        for (IntList bin : bins) {
+            result.add(bin.toArray());
+        }
+        return result;
+    }
+
+    /** A growable list of primitive ints. */
+    private static class IntList {
+
+        private int[] mValues = new int[4];
+
+        private int mSize = 0;
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+}
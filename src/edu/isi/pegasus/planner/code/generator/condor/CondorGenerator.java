@@ -62,14 +62,23 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.griphyn.vdl.euryale.VTorInUseException;
 
 /**
@@ -147,14 +156,23 @@ public class CondorGenerator extends Abstract {
     /** the old prefix to use for user classads in .dag file * */
     public static final String OLD_PREFIX_FOR_USER_CLASSADS_IN_DAG = "+";
 
+    /**
+     * The number of submit files per thread that are prepared, but not yet written out, after which
+     * the generator waits for the oldest one to be written out.
+     */
+    private static final int PENDING_SUBMIT_FILES_PER_THREAD = 64;
+
     /** Map that maps job type to corresponding Condor Concurrency limit */
     private static Map<Integer, String> mJobTypeToCondorConcurrencyLimits = null;
 
     /** Maps default maxjobs keys for various Pegasus defined categories to their default values */
     private static Map<String, String> mDefaultMaxJobsCategoryValues = null;
 
-    /** Map that maps job type to corresponding condor concurrency limits */
-    private static Map<Integer, String> jobTypeToCondorConcurrencyLimits() {
+    /**
+     * Map that maps job type to corresponding condor concurrency limits. Synchronized, as the
+     * submit files may be written out by multiple threads.
+     */
+    private static synchronized Map<Integer, String> jobTypeToCondorConcurrencyLimits() {
         if (mJobTypeToCondorConcurrencyLimits == null) {
             // PM-933
             mJobTypeToCondorConcurrencyLimits = new HashMap();
@@ -250,6 +268,12 @@ public class CondorGenerator extends Abstract {
     /** The app name picked from pegasus properties */
     private String mAppName;
 
+    /**
+     * The number of threads used to write out the submit files. If 1, the submit files are written
+     * out serially.
+     */
+    private int mThreads;
+
     /** The default constructor. */
     public CondorGenerator() {
         super();
@@ -277,6 +301,7 @@ public class CondorGenerator extends Abstract {
         mSiteStore = bag.getHandleToSiteStore();
         mAssignDefaultJobPriorities = mProps.assignDefaultJobPriorities();
         mAssociateConcurrencyLimits = mProps.associateCondorConcurrencyLimits();
+        mThreads = mProps.getCodeGeneratorThreads();
         mAppName = mProps.getProperty(PegasusProperties.PEGASUS_APP_METRICS_PREFIX);
         if (mAppName == null) {
             // can still be null but it is fine
@@ -389,122 +414,151 @@ public class CondorGenerator extends Abstract {
         // write out any category based dagman knobs to the dagman file
         printDagString(this.getCategoryDAGManKnobs(mProps));
 
-        for (Iterator it = dag.iterator(); it.hasNext(); ) {
-            GraphNode node = (GraphNode) it.next();
-            Job job = (Job) node.getContent();
-
-            if (this.mAssignDefaultJobPriorities) {
-                int priority = 0;
-                if (job.condorVariables.containsKey(Condor.PRIORITY_KEY)) {
-                    // PM-1705, PM-1385  store the existing value with the jobs unless
-                    // there is a stagein job, for which we add the existing priority
-                    // to the depth based computed one.
-                    priority = job.condorVariables.getIntValue(Condor.PRIORITY_KEY, 0);
-                    if (job.getJobType() == Job.STAGE_IN_JOB) {
-                        // PM-1385 we add the precomputed priority to default priority
-                        priority = getJobPriority(job, node.getDepth()) + priority;
+        // the submit files are prepared in this thread in the order of the
+        // iterator, and only written out by the worker threads. the .dag
+        // file is always written in this thread, and is same as in serial mode
+        ExecutorService executor = null;
+        Deque<Future<?>> pending = null;
+        if (mThreads > 1) {
+            executor = Executors.newFixedThreadPool(mThreads, new SubmitFileThreadFactory());
+            pending = new ArrayDeque<Future<?>>();
+            mLogger.log(
+                    "Writing out submit files using " + mThreads + " threads",
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+        }
+
+        try {
+            for (Iterator it = dag.iterator(); it.hasNext(); ) {
+                GraphNode node = (GraphNode) it.next();
+                Job job = (Job) node.getContent();
+
+                if (this.mAssignDefaultJobPriorities) {
+                    int priority = 0;
+                    if (job.condorVariables.containsKey(Condor.PRIORITY_KEY)) {
+                        // PM-1705, PM-1385  store the existing value with the jobs unless
+                        // there is a stagein job, for which we add the existing priority
+                        // to the depth based computed one.
+                        priority = job.condorVariables.getIntValue(Condor.PRIORITY_KEY, 0);
+                        if (job.getJobType() == Job.STAGE_IN_JOB) {
+                            // PM-1385 we add the precomputed priority to default priority
+                            priority = getJobPriority(job, node.getDepth()) + priority;
+                        }
+                    } else {
+                        // only apply priority if job is not associated with a priority
+                        // beforehand and assign priorities by default is true
+                        priority = getJobPriority(job, node.getDepth());
                     }
-                } else {
-                    // only apply priority if job is not associated with a priority
-                    // beforehand and assign priorities by default is true
-                    priority = getJobPriority(job, node.getDepth());
+                    // apply a priority to the job overwriting any preexisting priority
+                    job.condorVariables.construct(
+                            Condor.PRIORITY_KEY, new Integer(priority).toString());
+
+                    // log to debug
+                    mLogger.log(
+                            LogManager.DEBUG_MESSAGE_LEVEL,
+                            "Applying priority of {} to {}",
+                            priority,
+                            job.getID());
                 }
-                // apply a priority to the job overwriting any preexisting priority
-                job.condorVariables.construct(
-                        Condor.PRIORITY_KEY, new Integer(priority).toString());
-
-                // log to debug
-                StringBuffer sb = new StringBuffer();
-                sb.append("Applying priority of ")
-                        .append(priority)
-                        .append(" to ")
-                        .append(job.getID());
-                mLogger.log(sb.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
-            }
 
-            // HTCondor ticket 5749 . We can assign DAG priorities only if
-            // detected condor version is greater than 8.5.6
-            if (mCondorVersion >= CondorVersion.v_8_5_6) {
-                // PM-1105 assign a DAGMAN priority that mirrors the condor
-                // job priority if set, only if DAGMAN priority is not already set
-                if (!job.dagmanVariables.containsKey(Dagman.PRIORITY_KEY)) {
-                    // check again if condor priority is set and mirror it
-                    if (job.condorVariables.containsKey(Condor.PRIORITY_KEY)) {
-                        job.dagmanVariables.construct(
-                                Dagman.PRIORITY_KEY,
-                                (String) job.condorVariables.get(Condor.PRIORITY_KEY));
+                // HTCondor ticket 5749 . We can assign DAG priorities only if
+                // detected condor version is greater than 8.5.6
+                if (mCondorVersion >= CondorVersion.v_8_5_6) {
+                    // PM-1105 assign a DAGMAN priority that mirrors the condor
+                    // job priority if set, only if DAGMAN priority is not already set
+                    if (!job.dagmanVariables.containsKey(Dagman.PRIORITY_KEY)) {
+                        // check again if condor priority is set and mirror it
+                        if (job.condorVariables.containsKey(Condor.PRIORITY_KEY)) {
+                            job.dagmanVariables.construct(
+                                    Dagman.PRIORITY_KEY,
+                                    (String) job.condorVariables.get(Condor.PRIORITY_KEY));
+                        }
                     }
                 }
-            }
 
-            String prefixForUserClassadsinDAGFile = DEFAULT_PREFIX_FOR_USER_CLASSADS_IN_DAG;
-            ;
-            if (mCondorVersion < CondorVersion.v_8_9_4) {
-                // PM-1913 before condor 8.9.4 the only way to designate
-                // the classads was using the + as a prefix
-                prefixForUserClassadsinDAGFile = OLD_PREFIX_FOR_USER_CLASSADS_IN_DAG;
-            }
+                String prefixForUserClassadsinDAGFile = DEFAULT_PREFIX_FOR_USER_CLASSADS_IN_DAG;
+                ;
+                if (mCondorVersion < CondorVersion.v_8_9_4) {
+                    // PM-1913 before condor 8.9.4 the only way to designate
+                    // the classads was using the + as a prefix
+                    prefixForUserClassadsinDAGFile = OLD_PREFIX_FOR_USER_CLASSADS_IN_DAG;
+                }
 
-            if (job instanceof DAGJob) {
-                // SUBDAG EXTERNAL  B  inner.dag
-                DAGJob djob = (DAGJob) job;
+                if (job instanceof DAGJob) {
+                    // SUBDAG EXTERNAL  B  inner.dag
+                    DAGJob djob = (DAGJob) job;
 
-                // djob.dagmanVariables.checkKeyInNS( Dagman.SUBDAG_EXTERNAL_KEY,
-                //                                  djob.getDAGFile() );
-                StringBuffer sb = new StringBuffer();
-                sb.append(Dagman.SUBDAG_EXTERNAL_KEY)
-                        .append(" ")
-                        .append(job.getName())
-                        .append(" ")
-                        .append(djob.getDAGFile());
+                    // djob.dagmanVariables.checkKeyInNS( Dagman.SUBDAG_EXTERNAL_KEY,
+                    //                                  djob.getDAGFile() );
+                    StringBuffer sb = new StringBuffer();
+                    sb.append(Dagman.SUBDAG_EXTERNAL_KEY)
+                            .append(" ")
+                            .append(job.getName())
+                            .append(" ")
+                            .append(djob.getDAGFile());
+
+                    // check if dag needs to run in a specific directory
+                    String dagDir = djob.getDirectory();
+                    if (dagDir != null) {
+                        sb.append(" ")
+                                .append(Dagman.DIRECTORY_EXTERNAL_KEY)
+                                .append(" ")
+                                .append(dagDir);
+                    }
 
-                // check if dag needs to run in a specific directory
-                String dagDir = djob.getDirectory();
-                if (dagDir != null) {
-                    sb.append(" ").append(Dagman.DIRECTORY_EXTERNAL_KEY).append(" ").append(dagDir);
-                }
+                    // if no category is associated with the job, add a default
+                    // category
+                    if (!job.dagmanVariables.containsKey(Dagman.CATEGORY_KEY)) {
+                        job.dagmanVariables.construct(
+                                Dagman.CATEGORY_KEY, DEFAULT_SUBDAG_CATEGORY_KEY);
+                    }
 
-                // if no category is associated with the job, add a default
-                // category
-                if (!job.dagmanVariables.containsKey(Dagman.CATEGORY_KEY)) {
-                    job.dagmanVariables.construct(Dagman.CATEGORY_KEY, DEFAULT_SUBDAG_CATEGORY_KEY);
-                }
+                    printDagString(sb.toString());
 
-                printDagString(sb.toString());
+                    printDagString(
+                            job.dagmanVariables.toString(
+                                    job.getName(), prefixForUserClassadsinDAGFile));
+                } else { // normal jobs and subdax jobs
 
-                printDagString(
-                        job.dagmanVariables.toString(
-                                job.getName(), prefixForUserClassadsinDAGFile));
-            } else { // normal jobs and subdax jobs
+                    if (job.typeRecursive()) {
+                        Job daxJob = job;
+                        job = subdaxGen.generateCode(job);
 
-                if (job.typeRecursive()) {
-                    Job daxJob = job;
-                    job = subdaxGen.generateCode(job);
+                        // set the arguments to the DAX job to the ones
+                        // in the generated DAGJob to ensure stampede event
+                        // is generated correctly
+                        daxJob.setRemoteExecutable(job.getRemoteExecutable());
+                        daxJob.setArguments(job.getArguments());
+                    }
 
-                    // set the arguments to the DAX job to the ones
-                    // in the generated DAGJob to ensure stampede event
-                    // is generated correctly
-                    daxJob.setRemoteExecutable(job.getRemoteExecutable());
-                    daxJob.setArguments(job.getArguments());
-                }
+                    if (job != null) {
+                        // the submit file for the job needs to be written out
+                        // write out a condor submit file
+                        if (executor == null) {
+                            generateCode(dag, job);
+                        } else {
+                            pending.add(this.submitSubmitFile(executor, dag, job));
+                            if (pending.size() > mThreads * PENDING_SUBMIT_FILES_PER_THREAD) {
+                                this.waitForSubmitFile(pending.poll());
+                            }
+                        }
+                    }
 
-                if (job != null) {
-                    // the submit file for the job needs to be written out
-                    // write out a condor submit file
-                    generateCode(dag, job);
+                    // write out all the dagman profile variables associated
+                    // with the job to the .dag file.
+                    printDagString(
+                            job.dagmanVariables.toString(
+                                    job.getName(), prefixForUserClassadsinDAGFile));
                 }
-
-                // write out all the dagman profile variables associated
-                // with the job to the .dag file.
-                printDagString(
-                        job.dagmanVariables.toString(
-                                job.getName(), prefixForUserClassadsinDAGFile));
             }
 
-            mLogger.log(
-                    "Written Submit file : "
-                            + job.getFileFullPath(this.mSubmitFileDir, SUBMIT_FILE_SUFFIX),
-                    LogManager.DEBUG_MESSAGE_LEVEL);
+            // wait for all the submit files to be written out
+            while (pending != null && !pending.isEmpty()) {
+                this.waitForSubmitFile(pending.poll());
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
         mLogger.logEventCompletion(LogManager.DEBUG_MESSAGE_LEVEL);
 
@@ -571,11 +625,26 @@ public class CondorGenerator extends Abstract {
      * @throws CodeGeneratorException in case of any error occuring code generation.
      */
     public void generateCode(ADag dag, Job job) throws CodeGeneratorException {
+        StringWriter prepared = this.prepareSubmitFile(dag, job);
+        this.writeSubmitFile(dag, job, prepared);
+    }
+
+    /**
+     * Prepares the first part of the submit file for a job, up to and including the style and
+     * gridstart applied to it. The style and gridstart implementations are cached in the factories
+     * and hold state across jobs, so this is always called from the thread iterating over the
+     * workflow. The job's DAGMan profiles are complete when this returns.
+     *
+     * @param dag the dag of which the job is a part of.
+     * @param job the <code>Job</code> object holding the information about that particular job.
+     * @return the buffer holding the first part of the submit file
+     * @throws CodeGeneratorException in case of any error occuring code generation.
+     */
+    protected StringWriter prepareSubmitFile(ADag dag, Job job) throws CodeGeneratorException {
         String dagname = dag.getLabel();
         String dagindex = dag.getIndex();
         String dagcount = dag.getCount();
         String subfilename = job.getFileBaseName(SUBMIT_FILE_SUFFIX);
-        String envStr = null;
 
         // initialize GridStart if required.
         if (mInitializeGridStart) {
@@ -585,14 +654,10 @@ public class CondorGenerator extends Abstract {
             mInitializeGridStart = false;
         }
 
-        // intialize the print stream to the file
-        PrintWriter writer = null;
-        try {
-            writer = getWriter(job, SUBMIT_FILE_SUFFIX);
-        } catch (IOException ioe) {
-            throw new CodeGeneratorException(
-                    "IOException while writing submit file for job " + job.getName(), ioe);
-        }
+        // the submit file is assembled in memory, and written out
+        // to the file only in writeSubmitFile
+        StringWriter prepared = new StringWriter();
+        PrintWriter writer = new PrintWriter(prepared);
 
         // handle the globus rsl parameters
         // for the job from various resources
@@ -617,6 +682,31 @@ public class CondorGenerator extends Abstract {
         // figure out the style to apply for a job
         applyStyle(job, writer);
 
+        writer.flush();
+        return prepared;
+    }
+
+    /**
+     * Completes the submit file for a job, and writes it out. Only the job and read only state of
+     * the generator is accessed, so this can be called from multiple threads for different jobs.
+     *
+     * @param dag the dag of which the job is a part of.
+     * @param job the <code>Job</code> object holding the information about that particular job.
+     * @param prepared the first part of the submit file, as returned by prepareSubmitFile
+     * @throws CodeGeneratorException in case of any error occuring code generation.
+     */
+    protected void writeSubmitFile(ADag dag, Job job, StringWriter prepared)
+            throws CodeGeneratorException {
+        // intialize the print stream to the file
+        PrintWriter writer = null;
+        try {
+            writer = getWriter(job, SUBMIT_FILE_SUFFIX);
+        } catch (IOException ioe) {
+            throw new CodeGeneratorException(
+                    "IOException while writing submit file for job " + job.getName(), ioe);
+        }
+        writer.print(prepared.getBuffer());
+
         // PM-934 environment variables are also printed
         // in the new format
         String env = mEnvEscape.escape(job.envVariables);
@@ -644,7 +734,7 @@ public class CondorGenerator extends Abstract {
         writer.print(classADWriter.getBuffer());
 
         // DONE
-        fragment = new StringBuffer();
+        StringBuffer fragment = new StringBuffer();
 
         fragment.append("queue").append("\n");
         fragment.append(CondorGenerator.mSeparator).append("\n");
@@ -654,9 +744,65 @@ public class CondorGenerator extends Abstract {
 
         // close the print stream to the file (flush)
         writer.close();
+        if (writer.checkError()) {
+            throw new CodeGeneratorException(
+                    "Error while writing submit file for job " + job.getName());
+        }
+        if (mLogger.isLoggable(LogManager.DEBUG_MESSAGE_LEVEL)) {
+            mLogger.log(
+                    "Written Submit file : "
+                            + job.getFileFullPath(this.mSubmitFileDir, SUBMIT_FILE_SUFFIX),
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+        }
         return;
     }
 
+    /**
+     * Prepares the submit file for a job in the calling thread, and submits the writing out of the
+     * submit file to the executor.
+     *
+     * @param executor the executor for writing out the submit files
+     * @param dag the dag of which the job is a part of.
+     * @param job the job
+     * @return the future for the submit file being written out
+     * @throws CodeGeneratorException in case of any error occuring code generation.
+     */
+    private Future<?> submitSubmitFile(ExecutorService executor, final ADag dag, final Job job)
+            throws CodeGeneratorException {
+        final StringWriter prepared = this.prepareSubmitFile(dag, job);
+        return executor.submit(
+                new Callable<Void>() {
+                    public Void call() throws CodeGeneratorException {
+                        writeSubmitFile(dag, job, prepared);
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Waits for a submit file to be written out, and rethrows any error that occured.
+     *
+     * @param future the future for the submit file
+     * @throws CodeGeneratorException in case of any error occuring code generation.
+     */
+    private void waitForSubmitFile(Future<?> future) throws CodeGeneratorException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CodeGeneratorException) {
+                throw (CodeGeneratorException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new CodeGeneratorException("Error while writing submit file", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeGeneratorException("Interrupted while writing submit files", e);
+        }
+    }
+
     /**
      * Starts monitoring of the workflow by invoking a workflow monitor daemon tailstatd. The
      * tailstatd is picked up from the default path of $PEGASUS_HOME/bin/tailstatd.
@@ -1444,13 +1590,13 @@ public class CondorGenerator extends Abstract {
 
             if (quote && args != null) {
                 try {
-                    mLogger.log("Unquoted arguments are " + args, LogManager.DEBUG_MESSAGE_LEVEL);
+                    mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "Unquoted arguments are {}", args);
 
                     // insert a comment for the old args
                     // job.condorVariables.construct("#arguments",args);
                     args = CondorQuoteParser.quote(args, true);
                     job.condorVariables.construct(Condor.ARGUMENTS_KEY, args);
-                    mLogger.log("Quoted arguments are " + args, LogManager.DEBUG_MESSAGE_LEVEL);
+                    mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "Quoted arguments are {}", args);
                 } catch (CondorQuoteParserException e) {
                     throw new RuntimeException("CondorQuoting Problem " + e.getMessage());
                 }
@@ -1508,11 +1654,10 @@ public class CondorGenerator extends Abstract {
             // check if an integer value is specified PM-462
             if (isInteger(releaseval)) {
                 mLogger.log(
-                        "Removing integer value "
-                                + releaseval
-                                + " for periodic_release for job "
-                                + job.getID(),
-                        LogManager.DEBUG_MESSAGE_LEVEL);
+                        LogManager.DEBUG_MESSAGE_LEVEL,
+                        "Removing integer value {} for periodic_release for job {}",
+                        releaseval,
+                        job.getID());
                 job.condorVariables.construct(
                         Condor.PERIODIC_RELEASE_KEY,
                         CondorGenerator.DEFAULT_PERIODIC_RELEASE_VALUE);
@@ -1528,11 +1673,10 @@ public class CondorGenerator extends Abstract {
             // check if an integer value is specified PM-462
             if (isInteger(removeval)) {
                 mLogger.log(
-                        "Removing integer value "
-                                + removeval
-                                + " for periodic_remove for job "
-                                + job.getID(),
-                        LogManager.DEBUG_MESSAGE_LEVEL);
+                        LogManager.DEBUG_MESSAGE_LEVEL,
+                        "Removing integer value {} for periodic_remove for job {}",
+                        removeval,
+                        job.getID());
                 job.condorVariables.construct(
                         Condor.PERIODIC_REMOVE_KEY, CondorGenerator.DEFAULT_PERIODIC_REMOVE_VALUE);
             }
@@ -1823,6 +1967,20 @@ public class CondorGenerator extends Abstract {
     }
 }
 
+/** Creates the daemon threads that write out the submit files. */
+class SubmitFileThreadFactory implements ThreadFactory {
+
+    /** The number of threads created. */
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "pegasus-submit-writer-" + mCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+}
+
 class GraphNodeGSONAdapter extends TypeAdapter<GraphNode> {
 
     @Override
@@ -88,6 +88,15 @@ public class SUBDAXGenerator {
     /** The logical name with which to query the transformation catalog for cPlanner executable. */
     public static final String CPLANNER_LOGICAL_NAME = "pegasus-plan";
 
+    /**
+     * The property designating the [host:]port of a running planner server, that the pegasus-plan
+     * prescripts are forwarded to.
+     */
+    public static final String PLANNER_SERVER_PROPERTY_KEY = "pegasus.planner.server";
+
+    /** The client that forwards pegasus-plan invocations to a planner server. */
+    public static final String PLANNER_CLIENT_BASENAME = "pegasus-plan-client";
+
     /** The namespace to use for condor dagman. */
     public static final String CONDOR_DAGMAN_NAMESPACE = "condor";
 
@@ -1374,6 +1383,20 @@ public class SUBDAXGenerator {
         // construct the argument string.
         // add the jvm options and the pegasus options if any
         StringBuffer arguments = new StringBuffer();
+
+        // forward the invocation to a planner server if one is configured.
+        // the client falls back to pegasus-plan if the server is not running
+        String server = mProps.getProperty(PLANNER_SERVER_PROPERTY_KEY);
+        if (server != null && server.trim().length() > 0) {
+            mLogger.log(
+                    "Forwarding pegasus-plan invocation to planner server " + server,
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            script.setLength(0);
+            script.append(mProps.getBinDir())
+                    .append(File.separator)
+                    .append(PLANNER_CLIENT_BASENAME);
+            arguments.append(" --server ").append(server.trim());
+        }
         arguments
                 .
                 /*append( mPOptions.toJVMOptions())*/
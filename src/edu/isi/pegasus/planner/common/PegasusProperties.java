@@ -1508,6 +1508,18 @@ public class PegasusProperties implements Cloneable {
         return mProps.getProperty("pegasus.selector.site.keep.tmp", DEFAULT_SITE_SELECTOR_KEEP);
     }
 
+    /**
+     * Returns a boolean indicating whether the external site selector is invoked once for all the
+     * jobs in the workflow, instead of once per job.
+     *
+     * <p>Referred to by the "pegasus.selector.site.batch" property.
+     *
+     * @return the boolean value specified in the properties file, else false
+     */
+    public boolean getSiteSelectorBatch() {
+        return Boolean.parse(mProps.getProperty("pegasus.selector.site.batch"), false);
+    }
+
     // PROPERTIES RELATED TO KICKSTART AND EXITCODE
 
     /**
@@ -1796,6 +1808,28 @@ public class PegasusProperties implements Cloneable {
         return Boolean.parse(mProps.getProperty("pegasus.condor.arguments.quote"), true);
     }
 
+    /**
+     * Returns the number of threads the Condor code generator uses to write out the submit files
+     * for the jobs. In case a non integer or a value less than 1 is specified, 1 is returned, and
+     * the submit files are written out serially.
+     *
+     * <p>Referred to by the "pegasus.code.generator.threads" property.
+     *
+     * @return the number of threads specified in the properties file, else 1
+     */
+    public int getCodeGeneratorThreads() {
+        String prop = mProps.getProperty("pegasus.code.generator.threads", "1");
+        int val = 1;
+
+        try {
+            val = Integer.parseInt(prop.trim());
+        } catch (Exception e) {
+            return 1;
+        }
+
+        return Math.max(1, val);
+    }
+
     /**
      * Returns the number of times Condor should retry running a job in case of failure. The retry
      * ends up reinvoking the prescript, that can change the site selection decision in case of
@@ -2069,6 +2103,55 @@ public class PegasusProperties implements Cloneable {
         return mProps.getProperty("pegasus.wings.properties");
     }
 
+    /**
+     * Returns the graph implementation to be used for holding the workflow in memory. The compact
+     * implementation reduces the memory footprint of very large workflows.
+     *
+     * <p>Referred to by the "pegasus.parser.dax.graph" property.
+     *
+     * @return the value specified in the properties file, else Map
+     */
+    public String getGraphImplementation() {
+        return mProps.getProperty("pegasus.parser.dax.graph", "Map");
+    }
+
+    /**
+     * Returns a boolean indicating whether YAML workflows should be parsed in a streaming mode,
+     * where the jobs and dependencies are passed to the callback as they are read, instead of
+     * building the complete document in memory first.
+     *
+     * <p>Referred to by the "pegasus.parser.dax.stream" property.
+     *
+     * @return the boolean value specified in the properties file, else false
+     */
+    public boolean streamWorkflowParsing() {
+        return Boolean.parse(mProps.getProperty("pegasus.parser.dax.stream"), false);
+    }
+
+    /**
+     * Returns a boolean indicating whether a YAML workflow parsed in the streaming mode is
+     * validated against the workflow schema, one job or dependency at a time.
+     *
+     * <p>Referred to by the "pegasus.parser.dax.stream.validate" property.
+     *
+     * @return the boolean value specified in the properties file, else true
+     */
+    public boolean validateStreamedWorkflow() {
+        return Boolean.parse(mProps.getProperty("pegasus.parser.dax.stream.validate"), true);
+    }
+
+    /**
+     * Returns a boolean indicating whether the planner should remove redundant edges from the
+     * executable workflow, before generating the submit files.
+     *
+     * <p>Referred to by the "pegasus.workflow.prune" property.
+     *
+     * @return the boolean value specified in the properties file, else false
+     */
+    public boolean pruneWorkflowEdges() {
+        return Boolean.parse(mProps.getProperty("pegasus.workflow.prune"), false);
+    }
+
     /**
      * Returns the request id.
      *
@@ -18,35 +18,147 @@
 package edu.isi.pegasus.planner.common;
 
 import edu.isi.pegasus.common.util.VariableExpander;
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
 
 /**
- * A Reader class that uses BufferedReader to read in from a stream, and perform variable expansion
- * before returning as part of the read methods
+ * A Reader class that reads in from a stream, and performs variable expansion before returning as
+ * part of the read methods.
+ *
+ * <p>The input is read into a large character buffer. Lines without a <code>$</code> cannot contain
+ * a variable, and are copied to the destination buffer as is, in bulk. Only the lines with a <code>
+ * $</code> are handed to the {@link VariableExpander}, a line at a time, as a variable cannot span
+ * lines. A line that does not fit in the buffer grows it. As with reading line by line, line
+ * terminators are returned as <code>\n</code>, and the last line always ends with one.
+ *
+ * <p>The reader can also read a file directly through a {@link FileChannel}, decoding the bytes
+ * with the default charset as a <code>FileReader</code> does.
  *
  * @author Karan Vahi
  */
 public class VariableExpansionReader extends Reader {
 
-    private final BufferedReader mReader;
+    /** The default size of the character buffer. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
 
-    /** the buffer where we read in a line */
-    private String mBuffer;
+    /** The reader to read from. null if reading from a channel. */
+    private final Reader mReader;
 
-    private int mPosition;
+    /** The channel to read from. null if reading from a reader. */
+    private final FileChannel mChannel;
+
+    /** The buffer for the bytes read from the channel. */
+    private ByteBuffer mBytes;
+
+    /** The decoder for the bytes read from the channel. */
+    private CharsetDecoder mDecoder;
+
+    /** Whether the channel has no more bytes. */
+    private boolean mChannelDrained;
+
+    /** Whether the decoder has been flushed, after decoding all the bytes. */
+    private boolean mFlushed;
 
     private final VariableExpander mVariableExpander;
 
+    /** the buffer where we read the input in */
+    private char[] mBuffer;
+
+    /** The position of the next character to return from the buffer. */
+    private int mPosition;
+
+    /** The characters from mPosition up to this index need no expansion, and are returned as is. */
+    private int mClean;
+
+    /** The end of the characters read into the buffer. */
+    private int mEnd;
+
+    /** Whether the end of the input has been reached. */
+    private boolean mEOF;
+
+    /** Whether the last line terminator was a carriage return, so that a line feed is skipped. */
+    private boolean mSkipLF;
+
+    /** An expanded line to return before the rest of the buffer. */
+    private String mExpanded;
+
+    /** The position of the next character to return from the expanded line. */
+    private int mExpandedPosition;
+
     /**
      * @param reader
      * @throws java.io.IOException
      */
     public VariableExpansionReader(Reader reader) throws IOException {
-        mReader = new BufferedReader(reader);
-        mVariableExpander = new VariableExpander();
-        setBufferToNextLine();
+        this(reader, new VariableExpander(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Reads a file through a file channel.
+     *
+     * @param file the file to read
+     * @throws java.io.IOException if the file cannot be opened
+     */
+    public VariableExpansionReader(File file) throws IOException {
+        this(new FileInputStream(file).getChannel(), new VariableExpander(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param reader the reader to read from
+     * @param expander the expander to use
+     * @param size the initial size of the character buffer
+     */
+    VariableExpansionReader(Reader reader, VariableExpander expander, int size) {
+        mReader = reader;
+        mChannel = null;
+        mVariableExpander = expander;
+        mBuffer = new char[Math.max(2, size)];
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param channel the channel to read from
+     * @param expander the expander to use
+     * @param size the initial size of the character buffer
+     */
+    VariableExpansionReader(FileChannel channel, VariableExpander expander, int size) {
+        this(channel, Charset.defaultCharset(), expander, size);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param channel the channel to read from
+     * @param charset the charset to decode the bytes with
+     * @param expander the expander to use
+     * @param size the initial size of the character buffer
+     */
+    VariableExpansionReader(
+            FileChannel channel, Charset charset, VariableExpander expander, int size) {
+        mReader = null;
+        mChannel = channel;
+        mBytes = ByteBuffer.allocate(Math.max(16, size));
+        mDecoder =
+                charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        mChannelDrained = false;
+        mFlushed = false;
+        mVariableExpander = expander;
+        mBuffer = new char[Math.max(2, size)];
     }
 
     /**
@@ -55,9 +167,7 @@ public class VariableExpansionReader extends Reader {
      *
      * <p>This method implements the general contract of the corresponding read method of the
      * BufferedReader class. As an additional convenience, it attempts to read as many characters as
-     * possible by repeatedly invoking the readLine method of the underlying BufferedReader and
-     * doing the variable substitution. This iterated read continues until one of the following
-     * conditions becomes true:
+     * possible, until one of the following conditions becomes true:
      *
      * <p>The specified number of characters have been read, The read method of the underlying
      * reader returns -1, indicating end-of-file.
@@ -72,63 +182,227 @@ public class VariableExpansionReader extends Reader {
      * @throws IOException
      */
     public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
 
         int read = 0;
+        while (read < len) {
+            if (mExpanded != null) {
+                // the expanded line goes before the rest of the buffer
+                int n = Math.min(len - read, mExpanded.length() - mExpandedPosition);
+                mExpanded.getChars(mExpandedPosition, mExpandedPosition + n, cbuf, off + read);
+                mExpandedPosition += n;
+                read += n;
+                if (mExpandedPosition == mExpanded.length()) {
+                    mExpanded = null;
+                }
+            } else if (mPosition < mClean) {
+                // fast path, copy whatever needs no expansion in bulk
+                int n = Math.min(len - read, mClean - mPosition);
+                System.arraycopy(mBuffer, mPosition, cbuf, off + read, n);
+                mPosition += n;
+                read += n;
+            } else if (!this.advance()) {
+                // end of stream reached
+                break;
+            }
+        }
+
+        return (read == 0) ? -1 : read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mReader != null) {
+            mReader.close();
+        } else {
+            mChannel.close();
+        }
+    }
 
-        if (mBuffer == null) {
-            // end of stream reached
-            return -1;
+    /**
+     * Determines what to return next, once everything up to mClean has been returned. Either
+     * extends mClean over the lines that need no expansion, or expands the next line.
+     *
+     * @return false if the end of the input has been reached.
+     * @throws IOException
+     */
+    private boolean advance() throws IOException {
+        if (mSkipLF) {
+            if (mPosition == mEnd && !this.fill()) {
+                return false;
+            }
+            mSkipLF = false;
+            if (mBuffer[mPosition] == '\n') {
+                // the line feed of a \r\n line terminator
+                mPosition++;
+                mClean = mPosition;
+                return true;
+            }
         }
 
-        int store = off;
+        int scan = mPosition;
         while (true) {
-            int bufferLength = mBuffer.length();
-            // read characters from the internal buffer to destination buffer
-            while (read < len && (mPosition < bufferLength)) {
-                cbuf[store++] = mBuffer.charAt(mPosition++);
-                read++;
+            // look for the last line terminator before the first $ or \r
+            int lastLF = -1;
+            int i = scan;
+            for (char c; i < mEnd && (c = mBuffer[i]) != '$' && c != '\r'; i++) {
+                if (c == '\n') {
+                    lastLF = i;
+                }
+            }
+            if (lastLF >= 0) {
+                mClean = lastLF + 1;
+                return true;
             }
-            if (mPosition == bufferLength) {
-                // we have exhausted our current buffer
-                setBufferToNextLine();
+
+            if (i < mEnd) {
+                if (mBuffer[i] == '\r') {
+                    // the line has no $, return the \r as a \n
+                    mBuffer[i] = '\n';
+                    mSkipLF = true;
+                    mClean = i + 1;
+                    return true;
+                }
+                this.expandLine(i);
+                return true;
             }
 
-            if (read == len || mBuffer == null) {
-                // break out of outerwhile
-                // we have the number of characters read
+            // the line continues after the end of the buffer
+            int scanned = mEnd - mPosition;
+            if (!this.fill()) {
+                if (mPosition == mEnd) {
+                    return false;
+                }
+                // always end the last line with \n
+                this.terminate();
+                mClean = mEnd;
+                return true;
+            }
+            scan = mPosition + scanned;
+        }
+    }
+
+    /**
+     * Expands the line starting at mPosition, and sets it up to be returned. The line terminator is
+     * left in the buffer to be returned after the expanded line.
+     *
+     * @param dollar the index of the first $ in the line
+     * @throws IOException
+     */
+    private void expandLine(int dollar) throws IOException {
+        int i = dollar;
+        while (true) {
+            while (i < mEnd && mBuffer[i] != '\n' && mBuffer[i] != '\r') {
+                i++;
+            }
+            if (i < mEnd) {
+                break;
+            }
+            int scanned = i - mPosition;
+            if (!this.fill()) {
+                i = mEnd;
+                this.terminate();
                 break;
             }
+            i = mPosition + scanned;
+        }
+
+        String line = new String(mBuffer, mPosition, i - mPosition);
+        mExpanded = mVariableExpander.expand(line);
+        mExpandedPosition = 0;
+        if (mExpanded.isEmpty()) {
+            mExpanded = null;
         }
 
-        /*store = off;
-        for( int i = 0; i < read; i++ ){
-            System.out.print( cbuf[store++] );
-        }*/
-        return read;
+        if (mBuffer[i] == '\r') {
+            mBuffer[i] = '\n';
+            mSkipLF = true;
+        }
+        mPosition = i;
+        mClean = i + 1;
     }
 
-    @Override
-    public void close() throws IOException {
-        mReader.close();
+    /** Adds a line feed after the last line, if the input does not end with a line terminator. */
+    private void terminate() {
+        if (mEnd == mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+        }
+        mBuffer[mEnd++] = '\n';
     }
 
-    private void setBufferToNextLine() throws IOException {
-        mPosition = 0;
-        mBuffer = mReader.readLine();
-        // System.out.println("Buffer " + mBuffer );
+    /**
+     * Reads more characters into the buffer. The characters from mPosition are moved to the start
+     * of the buffer first, and the buffer is grown if they leave less than two characters free, as
+     * the decoder needs room for a surrogate pair to make progress.
+     *
+     * @return false if the end of the input has been reached, and no characters were read.
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        if (mEOF) {
+            return false;
+        }
 
-        // mCurrentLineNumber = mReader.getLineNumber();
-        // we don't want expand anything in the comment string
-        // if( mBuffer != null && !mBuffer.startsWith( mCommentPrefix ) ){
-        mBuffer = mVariableExpander.expand(mBuffer);
+        int remaining = mEnd - mPosition;
+        if (mPosition > 0) {
+            System.arraycopy(mBuffer, mPosition, mBuffer, 0, remaining);
+            mClean -= mPosition;
+            mPosition = 0;
+            mEnd = remaining;
+        }
+        if (mBuffer.length - mEnd < 2) {
+            // a single line does not fit into the buffer
+            mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+        }
 
-        // System.out.println( mBuffer );
-        // }
+        int n = 0;
+        while (n == 0) {
+            n =
+                    (mReader == null)
+                            ? this.decode(mBuffer, mEnd, mBuffer.length - mEnd)
+                            : mReader.read(mBuffer, mEnd, mBuffer.length - mEnd);
+        }
+        if (n < 0) {
+            mEOF = true;
+            return false;
+        }
+        mEnd += n;
+        return true;
+    }
 
-        // always add \n to ensure consistent semantics for read function
-        // w.r.t Reader class
-        if (mBuffer != null) {
-            mBuffer = mBuffer + '\n';
+    /**
+     * Reads characters from the channel.
+     *
+     * @param cbuf Destination buffer
+     * @param off Offset at which to start storing characters
+     * @param len Maximum number of characters to read
+     * @return The number of characters read, or -1 if the end of the channel has been reached.
+     * @throws IOException
+     */
+    private int decode(char[] cbuf, int off, int len) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(cbuf, off, len);
+        while (chars.position() == off) {
+            if (mFlushed) {
+                return -1;
+            }
+            if (mChannelDrained) {
+                // decode whatever bytes are left, and flush the decoder
+                mBytes.flip();
+                CoderResult result = mDecoder.decode(mBytes, chars, true);
+                mBytes.compact();
+                if (result.isUnderflow() && mDecoder.flush(chars).isUnderflow()) {
+                    mFlushed = true;
+                }
+            } else if (mChannel.read(mBytes) < 0) {
+                mChannelDrained = true;
+            } else {
+                mBytes.flip();
+                mDecoder.decode(mBytes, chars, false);
+                mBytes.compact();
+            }
         }
+        return chars.position() - off;
     }
 }
@@ -14,6 +14,7 @@
 package edu.isi.pegasus.planner.estimate;
 
 import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.util.Boolean;
 import edu.isi.pegasus.common.util.DefaultStreamGobblerCallback;
 import edu.isi.pegasus.common.util.FindExecutable;
 import edu.isi.pegasus.common.util.StreamGobbler;
@@ -25,10 +26,15 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.namespace.Metadata;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Interface with Aspen to estimate job runtimes.
@@ -45,6 +51,29 @@ public class Aspen implements Estimator {
      */
     public static final String ASPEN_MODELS_PROPERTY_KEY = "pegasus.estimator.aspen.models";
 
+    /**
+     * The property key to start the estimate client once as a co-process, that estimates the jobs
+     * in batches.
+     */
+    public static final String ASPEN_COPROCESS_PROPERTY_KEY = "pegasus.estimator.aspen.coprocess";
+
+    /** The property key for the number of jobs sent to the co-process at a time. */
+    public static final String ASPEN_BATCH_SIZE_PROPERTY_KEY = "pegasus.estimator.aspen.batch.size";
+
+    /** The default number of jobs sent to the co-process at a time. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The property key for the time in seconds to wait for the co-process to write out its protocol
+     * header, or the next line of its estimates, before falling back to invoking the client for
+     * each job.
+     */
+    public static final String ASPEN_COPROCESS_TIMEOUT_PROPERTY_KEY =
+            "pegasus.estimator.aspen.coprocess.timeout";
+
+    /** The default time in seconds to wait for the co-process to write out a line. */
+    public static final int DEFAULT_COPROCESS_TIMEOUT = 10;
+
     /** name of the pegasus aspen client */
     public static final String PEGASUS_ASPEN_CLIENT_NAME = "estimate";
 
@@ -62,6 +91,21 @@ public class Aspen implements Estimator {
 
     private String[] mEnvVariables;
 
+    /** Whether to estimate the jobs in batches through a co-process. */
+    private boolean mUseCoProcess;
+
+    /** The number of jobs sent to the co-process at a time. */
+    private int mBatchSize;
+
+    /** The time in seconds to wait for the co-process to write out a line. */
+    private int mCoProcessTimeout;
+
+    /**
+     * The estimates indexed by the arguments they were computed for, so that jobs with the same
+     * metadata are estimated only once.
+     */
+    private Map<String, Map<String, String>> mMemo;
+
     /**
      * Initialization method
      *
@@ -110,6 +154,13 @@ public class Aspen implements Estimator {
                 "Aspen estimate client will be invoked with the following evnironment "
                         + Arrays.toString(mEnvVariables),
                 LogManager.DEBUG_MESSAGE_LEVEL);
+
+        mUseCoProcess = Boolean.parse(mProps.getProperty(ASPEN_COPROCESS_PROPERTY_KEY), false);
+        mBatchSize = this.getPositiveInteger(ASPEN_BATCH_SIZE_PROPERTY_KEY, DEFAULT_BATCH_SIZE);
+        mCoProcessTimeout =
+                this.getPositiveInteger(
+                        ASPEN_COPROCESS_TIMEOUT_PROPERTY_KEY, DEFAULT_COPROCESS_TIMEOUT);
+        mMemo = new HashMap<String, Map<String, String>>();
     }
 
     /**
@@ -142,7 +193,131 @@ public class Aspen implements Estimator {
      * @return
      */
     public Map<String, String> getAllEstimates(Job job) {
-        return this.executeAspenCommand(assembleArgsFromMetadata(job));
+        return this.estimate(assembleArgsFromMetadata(job));
+    }
+
+    /**
+     * Returns all estimates for a list of jobs. If the co-process mode is enabled, the jobs are
+     * estimated in batches through a single invocation of the estimate client. Jobs for which the
+     * co-process does not return estimates, are estimated by invoking the client for each job.
+     *
+     * @param jobs the jobs for which estimation is required
+     * @return the estimates for each job, in the order of the jobs
+     */
+    public List<Map<String, String>> getAllEstimates(List<Job> jobs) {
+        List<String> args = new ArrayList<String>(jobs.size());
+        for (Job job : jobs) {
+            args.add(assembleArgsFromMetadata(job));
+        }
+        if (mUseCoProcess) {
+            this.estimateInBatches(args);
+        }
+
+        List<Map<String, String>> result = new ArrayList<Map<String, String>>(jobs.size());
+        for (String arg : args) {
+            result.add(this.estimate(arg));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the estimates for a set of arguments from the memo table, invoking the estimate
+     * client if they are not there.
+     *
+     * @param args the arguments for the estimate client
+     * @return the estimates
+     */
+    private Map<String, String> estimate(String args) {
+        Map<String, String> estimates = mMemo.get(args);
+        if (estimates == null) {
+            estimates = this.executeAspenCommand(args);
+            mMemo.put(args, estimates);
+        }
+        return estimates;
+    }
+
+    /**
+     * Estimates the distinct arguments not in the memo table in batches, through a co-process.
+     * Nothing is estimated if the estimate client does not support the batch protocol.
+     *
+     * @param args the arguments for the jobs
+     */
+    private void estimateInBatches(List<String> args) {
+        List<String> distinct = new ArrayList<String>(new LinkedHashSet<String>(args));
+        distinct.removeAll(mMemo.keySet());
+        if (distinct.isEmpty()) {
+            return;
+        }
+
+        AspenCoProcess coprocess =
+                new AspenCoProcess(
+                        mAspenEstimateClient,
+                        mEnvVariables,
+                        mLogger,
+                        TimeUnit.SECONDS.toMillis(mCoProcessTimeout));
+        if (!coprocess.start()) {
+            mLogger.log(
+                    mAspenEstimateClient
+                            + " does not support the batch protocol. Invoking it for each job",
+                    LogManager.WARNING_MESSAGE_LEVEL);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int batches = 0;
+        try {
+            for (int i = 0; i < distinct.size(); i += mBatchSize) {
+                List<String> batch = distinct.subList(i, Math.min(i + mBatchSize, distinct.size()));
+                long batchStart = System.currentTimeMillis();
+                coprocess.estimate(batch, mMemo);
+                batches++;
+                mLogger.log(
+                        LogManager.CONFIG_MESSAGE_LEVEL,
+                        "Estimated batch {} of {} jobs in {} ms",
+                        batches,
+                        batch.size(),
+                        System.currentTimeMillis() - batchStart);
+            }
+        } catch (IOException e) {
+            // the jobs not estimated are estimated one at a time
+            mLogger.log(
+                    "Error while estimating jobs through " + mAspenEstimateClient,
+                    e,
+                    LogManager.WARNING_MESSAGE_LEVEL);
+        } finally {
+            coprocess.close();
+        }
+        mLogger.log(
+                LogManager.INFO_MESSAGE_LEVEL,
+                "Estimated {} distinct of {} jobs in {} batches in {} ms",
+                distinct.size(),
+                args.size(),
+                batches,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Returns the value of a property that has to be a positive integer.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is not set
+     * @return the value
+     */
+    private int getPositiveInteger(String key, int defaultValue) {
+        String value = mProps.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid value " + value + " for property " + key, e);
+        }
+        if (result < 1) {
+            throw new RuntimeException("Invalid value " + value + " for property " + key);
+        }
+        return result;
     }
 
     /**
@@ -154,8 +329,13 @@ public class Aspen implements Estimator {
     private String assembleArgsFromMetadata(Job job) {
         StringBuilder args = new StringBuilder();
         Metadata m = (Metadata) job.getMetadata();
+        // the keys are sorted, so that jobs with the same metadata
+        // have the same arguments
+        TreeSet<String> keys = new TreeSet<String>();
         for (Iterator it = m.getProfileKeyIterator(); it.hasNext(); ) {
-            String key = (String) it.next();
+            keys.add((String) it.next());
+        }
+        for (String key : keys) {
             String value = (String) m.get(key);
             // build key=value pairs separated by whitespace
             args.append(key).append("=").append(value).append(" ");
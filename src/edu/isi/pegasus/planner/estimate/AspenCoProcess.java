@@ -0,0 +1,368 @@
+/**
+ * Copyright 2007-2015 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.estimate;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.util.DefaultStreamGobblerCallback;
+import edu.isi.pegasus.common.util.StreamGobbler;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A long lived Aspen estimate client, that estimates jobs in batches over its stdin and stdout,
+ * instead of being invoked once per job.
+ *
+ * <p>The client is started with the --batch argument, and is expected to write out the protocol
+ * header line <code>batch 1</code> to its stdout on startup. Clients that write out anything else
+ * do not support the batch protocol. After that, the client reads one request per line from its
+ * stdin, where a request is the whitespace separated key=value arguments for a job. For every
+ * request, in order, it writes out the estimates for the job as key=value lines, followed by an
+ * empty line. The client exits when its stdin is closed.
+ *
+ * <p>A client that does not write out a header line within the timeout, such as a client without
+ * batch support waiting on its stdin, is stopped and treated as not supporting the batch protocol.
+ * The same timeout applies to every line of the estimates. A client that does not write out the
+ * next line in time is killed, and the jobs not estimated yet are left to the caller.
+ */
+public class AspenCoProcess {
+
+    /** The argument with which the client is started in batch mode. */
+    public static final String BATCH_ARGUMENT = "--batch";
+
+    /** The header line the client writes out on startup, if it supports the batch protocol. */
+    public static final String PROTOCOL_HEADER = "batch 1";
+
+    /** The default time in milliseconds to wait for the client to write out a line. */
+    public static final long DEFAULT_TIMEOUT = 10000;
+
+    /**
+     * The marker put on the line queue once the stdout of the client is closed. It is compared by
+     * identity, so that it cannot be confused with an empty line written by the client.
+     */
+    private static final String END_OF_STREAM = new String();
+
+    /** The path to the estimate client. */
+    private final File mClient;
+
+    /** The environment with which the client is started. */
+    private final String[] mEnvVariables;
+
+    /** The handle to the logger. */
+    private final LogManager mLogger;
+
+    /** The time in milliseconds to wait for the client to write out a line. */
+    private final long mTimeout;
+
+    /** The running client. */
+    private Process mProcess;
+
+    /** The stdin of the client. */
+    private Writer mStdin;
+
+    /** The lines read from the stdout of the client by the reader thread. */
+    private BlockingQueue<String> mLines;
+
+    /** The error encountered by the reader thread, if any. */
+    private volatile IOException mReadError;
+
+    /** The gobbler logging the stderr of the client. */
+    private StreamGobbler mStderr;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param client the path to the estimate client
+     * @param envVariables the environment to start the client with
+     * @param logger the logger
+     */
+    public AspenCoProcess(File client, String[] envVariables, LogManager logger) {
+        this(client, envVariables, logger, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param client the path to the estimate client
+     * @param envVariables the environment to start the client with
+     * @param logger the logger
+     * @param timeout the time in milliseconds to wait for each line written out by the client
+     */
+    public AspenCoProcess(File client, String[] envVariables, LogManager logger, long timeout) {
+        mClient = client;
+        mEnvVariables = envVariables;
+        mLogger = logger;
+        mTimeout = timeout;
+    }
+
+    /**
+     * Starts the client, and checks whether it supports the batch protocol. A client that does not,
+     * or that does not write out the header line in time, is stopped.
+     *
+     * @return true if the client was started and supports the batch protocol, false otherwise
+     */
+    public boolean start() {
+        String command = mClient.getAbsolutePath() + " " + BATCH_ARGUMENT;
+        mLogger.log("Starting  " + command, LogManager.DEBUG_MESSAGE_LEVEL);
+        String header = null;
+        try {
+            mProcess =
+                    Runtime.getRuntime()
+                            .exec(
+                                    new String[] {mClient.getAbsolutePath(), BATCH_ARGUMENT},
+                                    mEnvVariables);
+            mStdin =
+                    new BufferedWriter(
+                            new OutputStreamWriter(
+                                    mProcess.getOutputStream(), StandardCharsets.UTF_8));
+            this.startReader(
+                    new BufferedReader(
+                            new InputStreamReader(
+                                    mProcess.getInputStream(), StandardCharsets.UTF_8)));
+            mStderr =
+                    new StreamGobbler(
+                            mProcess.getErrorStream(),
+                            new DefaultStreamGobblerCallback(LogManager.DEBUG_MESSAGE_LEVEL));
+            mStderr.start();
+            header = this.readHeader();
+        } catch (IOException e) {
+            mLogger.log("IOException while starting " + command, e, LogManager.DEBUG_MESSAGE_LEVEL);
+        }
+
+        if (header == null || !header.trim().equals(PROTOCOL_HEADER)) {
+            mLogger.log(
+                    mClient + " does not support the batch protocol. Header was " + header,
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            this.destroy();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts the thread that reads the lines from the stdout of the client onto the line queue, so
+     * that each line can be waited for with a timeout. Once the client is destroyed, the thread
+     * sees the end of the stream and exits.
+     *
+     * @param stdout the stdout of the client
+     */
+    private void startReader(final BufferedReader stdout) {
+        mLines = new LinkedBlockingQueue<String>();
+        mReadError = null;
+        Thread reader =
+                new Thread("aspen-estimate-reader") {
+                    public void run() {
+                        try {
+                            for (String line; (line = stdout.readLine()) != null; ) {
+                                mLines.add(line);
+                            }
+                        } catch (IOException e) {
+                            mReadError = e;
+                        } finally {
+                            mLines.add(END_OF_STREAM);
+                        }
+                    }
+                };
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Reads the header line from the stdout of the client, waiting at most the timeout for it.
+     *
+     * @return the header line, or null if the client exited or timed out before writing one out
+     * @throws IOException if unable to read from the client
+     */
+    private String readHeader() throws IOException {
+        try {
+            return this.readLine();
+        } catch (TimeoutException e) {
+            mLogger.log(
+                    mClient + " did not write out a header within " + mTimeout + " ms",
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the next line from the stdout of the client, waiting at most the timeout for it.
+     *
+     * @return the line, or null if the stdout of the client is closed
+     * @throws TimeoutException if the client did not write out a line within the timeout
+     * @throws IOException if unable to read from the client, or interrupted while waiting
+     */
+    private String readLine() throws TimeoutException, IOException {
+        String line;
+        try {
+            line = mLines.poll(mTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading from " + mClient);
+        }
+        if (line == null) {
+            throw new TimeoutException();
+        }
+        if (line == END_OF_STREAM) {
+            // leave the marker for any later reads
+            mLines.add(END_OF_STREAM);
+            if (mReadError != null) {
+                throw mReadError;
+            }
+            return null;
+        }
+        return line;
+    }
+
+    /**
+     * Estimates a batch of jobs. The requests are written out on a separate thread, so that a
+     * client writing out estimates while requests are still being written does not block on a full
+     * pipe.
+     *
+     * <p>The estimates are put in the results map as they are read, so that the jobs estimated
+     * before the client fails are not lost. A client that does not write out the next line of the
+     * estimates within the timeout is killed.
+     *
+     * @param requests the arguments for each job
+     * @param results the map to put the estimates in, indexed by the arguments of the job
+     * @throws IOException if the client fails, exits or times out in between
+     */
+    public void estimate(final List<String> requests, Map<String, Map<String, String>> results)
+            throws IOException {
+        final IOException[] writeError = new IOException[1];
+        Thread writer =
+                new Thread("aspen-estimate-writer") {
+                    public void run() {
+                        try {
+                            for (String request : requests) {
+                                mStdin.write(request.replace('\n', ' '));
+                                mStdin.write('\n');
+                            }
+                            mStdin.flush();
+                        } catch (IOException e) {
+                            writeError[0] = e;
+                        }
+                    }
+                };
+        writer.setDaemon(true);
+        writer.start();
+
+        for (int i = 0; i < requests.size(); i++) {
+            Map<String, String> estimates = new HashMap<String, String>();
+            String line;
+            while ((line = this.readBatchLine(i, requests.size())) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    break;
+                }
+                String[] kv = line.split("=", 2);
+                if (kv.length != 2) {
+                    mLogger.log(
+                            "Unable to parse aspen output " + line, LogManager.ERROR_MESSAGE_LEVEL);
+                    continue;
+                }
+                estimates.put(kv[0], kv[1]);
+            }
+            if (line == null) {
+                throw new IOException(
+                        mClient
+                                + " exited after estimating "
+                                + i
+                                + " of "
+                                + requests.size()
+                                + " jobs in the batch");
+            }
+            results.put(requests.get(i), estimates);
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writeError[0] != null) {
+            throw writeError[0];
+        }
+    }
+
+    /**
+     * Reads the next line of the estimates for a batch. The client is killed if it does not write
+     * out the line within the timeout.
+     *
+     * @param estimated the number of jobs in the batch estimated so far
+     * @param size the number of jobs in the batch
+     * @return the line, or null if the stdout of the client is closed
+     * @throws IOException if unable to read from the client, or if it timed out
+     */
+    private String readBatchLine(int estimated, int size) throws IOException {
+        try {
+            return this.readLine();
+        } catch (TimeoutException e) {
+            this.destroy();
+            throw new IOException(
+                    mClient
+                            + " did not write out an estimate within "
+                            + mTimeout
+                            + " ms after estimating "
+                            + estimated
+                            + " of "
+                            + size
+                            + " jobs in the batch. Killed it");
+        }
+    }
+
+    /** Closes the stdin of the client, and waits for it to exit. */
+    public void close() {
+        if (mProcess == null) {
+            return;
+        }
+        try {
+            mStdin.close();
+            int status = mProcess.waitFor();
+            mStderr.join();
+            mLogger.log(
+                    mClient + " exited with status " + status,
+                    (status == 0)
+                            ? LogManager.DEBUG_MESSAGE_LEVEL
+                            : LogManager.WARNING_MESSAGE_LEVEL);
+        } catch (IOException e) {
+            mLogger.log("IOException while closing " + mClient, e, LogManager.DEBUG_MESSAGE_LEVEL);
+            this.destroy();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.destroy();
+        }
+        mProcess = null;
+    }
+
+    /** Kills the client. */
+    private void destroy() {
+        if (mProcess != null) {
+            mProcess.destroy();
+            mProcess = null;
+        }
+    }
+}
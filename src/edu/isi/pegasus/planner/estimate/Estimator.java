@@ -16,6 +16,8 @@ package edu.isi.pegasus.planner.estimate;
 import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -41,6 +43,21 @@ public interface Estimator {
      */
     public Map<String, String> getAllEstimates(Job job);
 
+    /**
+     * Returns all estimates for a list of jobs. Implementations can override this to estimate the
+     * jobs together, instead of one at a time.
+     *
+     * @param jobs the jobs for which estimation is required
+     * @return the estimates for each job, in the order of the jobs
+     */
+    public default List<Map<String, String>> getAllEstimates(List<Job> jobs) {
+        List<Map<String, String>> result = new ArrayList<Map<String, String>>(jobs.size());
+        for (Job job : jobs) {
+            result.add(this.getAllEstimates(job));
+        }
+        return result;
+    }
+
     /**
      * Return the estimated Runtime of a job
      *
@@ -0,0 +1,549 @@
+/**
+ * Copyright 2007-2015 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.estimate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.invocation.InvocationRecord;
+import edu.isi.pegasus.planner.invocation.StatCall;
+import edu.isi.pegasus.planner.invocation.StatInfo;
+import edu.isi.pegasus.planner.invocation.Status;
+import edu.isi.pegasus.planner.invocation.Usage;
+import edu.isi.pegasus.planner.parser.InvocationParser;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * An estimator that estimates the runtime and memory of jobs from the kickstart records of previous
+ * runs. The kickstart output files in the submit directories listed in the property
+ * pegasus.estimator.history.dirs are parsed, and summarized into a per transformation and per site
+ * {@link HistoryIndex}. The index is written out to the file specified by the property
+ * pegasus.estimator.history.index, and is reused by subsequent planner runs, as long as it was
+ * built from the same directories, and the same kickstart output files are in them, none of which
+ * have changed since. Both the YAML records kickstart writes out, and the older XML records, are
+ * parsed.
+ *
+ * <p>For a job, the statistics for its transformation on the site it is mapped to are used. If the
+ * transformation has never executed on that site, the statistics across all sites are used. The
+ * following estimates are returned
+ *
+ * <ul>
+ *   <li>runtime - the median runtime in seconds
+ *   <li>runtime.p95 - the 95th percentile runtime in seconds
+ *   <li>memory - the peak memory in MB
+ *   <li>output.bytes - the median bytes written to the output files
+ * </ul>
+ *
+ * Only successful invocations are taken into account.
+ */
+public class History implements Estimator {
+
+    /** The property listing the submit directories to pick up the kickstart records from. */
+    public static final String HISTORY_DIRS_PROPERTY_KEY = "pegasus.estimator.history.dirs";
+
+    /** The property specifying the path to the index file. */
+    public static final String HISTORY_INDEX_PROPERTY_KEY = "pegasus.estimator.history.index";
+
+    /** The basename of the default index file in the ~/.pegasus directory. */
+    public static final String DEFAULT_INDEX_BASENAME = "estimator-history.idx";
+
+    /** The key for the 95th percentile runtime estimate. */
+    public static final String RUNTIME_P95_KEY = "runtime.p95";
+
+    /** The key for the output bytes estimate. */
+    public static final String OUTPUT_BYTES_KEY = "output.bytes";
+
+    /** The handle of the stat calls kickstart does for output files at the end of a job. */
+    private static final String FINAL_STATCALL_HANDLE = "final";
+
+    /** The start of a YAML invocation record. */
+    private static final String YAML_RECORD_START = "- invocation:";
+
+    /** The jobs in a YAML invocation record, that all have to succeed. */
+    private static final String[] YAML_JOBS = {"setup", "prejob", "mainjob", "postjob", "cleanup"};
+
+    /** Matches the kickstart output files, including the ones rotated on job retries. */
+    private static final Pattern KICKSTART_OUTPUT_PATTERN = Pattern.compile(".*\\.out(\\.\\d+)?$");
+
+    /** The handle to the properties. */
+    private PegasusProperties mProps;
+
+    /** The handle to the logger. */
+    private LogManager mLogger;
+
+    /** The index the estimates are computed from. */
+    private HistoryIndex mIndex;
+
+    /** The mapper for the YAML invocation records. */
+    private final ObjectMapper mYAMLMapper;
+
+    /** The default constructor. */
+    public History() {
+        mYAMLMapper = new ObjectMapper(new YAMLFactory());
+    }
+
+    /**
+     * Initialization method
+     *
+     * @param dag the workflow
+     * @param bag bag of Pegasus initialization objects.
+     */
+    public void initialize(ADag dag, PegasusBag bag) {
+        mProps = bag.getPegasusProperties();
+        mLogger = bag.getLogger();
+
+        List<String> dirs = new ArrayList<String>();
+        String value = mProps.getProperty(HISTORY_DIRS_PROPERTY_KEY);
+        if (value != null) {
+            for (String dir : value.split(",")) {
+                dir = dir.trim();
+                if (!dir.isEmpty()) {
+                    dirs.add(new File(dir).getAbsolutePath());
+                }
+            }
+        }
+
+        String path = mProps.getProperty(HISTORY_INDEX_PROPERTY_KEY);
+        File indexFile =
+                (path == null)
+                        ? new File(
+                                System.getProperty("user.home")
+                                        + File.separator
+                                        + ".pegasus"
+                                        + File.separator
+                                        + DEFAULT_INDEX_BASENAME)
+                        : new File(path);
+
+        if (dirs.isEmpty() && !indexFile.exists()) {
+            throw new RuntimeException(
+                    "No history to estimate from. Please specify the property "
+                            + HISTORY_DIRS_PROPERTY_KEY
+                            + " or "
+                            + HISTORY_INDEX_PROPERTY_KEY);
+        }
+
+        mIndex = this.loadIndex(indexFile, dirs);
+        mLogger.log(
+                "History estimator loaded " + mIndex.size() + " entries from " + indexFile,
+                LogManager.CONFIG_MESSAGE_LEVEL);
+    }
+
+    /**
+     * Returns all estimates for a job
+     *
+     * @param job the job for which estimation is required
+     * @return the estimates, empty if there is no history for the job
+     */
+    public Map<String, String> getAllEstimates(Job job) {
+        Map<String, String> estimates = new HashMap<String, String>();
+        HistoryIndex.Entry entry = this.lookup(job);
+        if (entry != null) {
+            estimates.put("runtime", Long.toString((long) Math.ceil(entry.getRuntimeMedian())));
+            estimates.put(RUNTIME_P95_KEY, Long.toString((long) Math.ceil(entry.getRuntimeP95())));
+            estimates.put("memory", Long.toString((long) Math.ceil(entry.getMemoryPeak())));
+            estimates.put(OUTPUT_BYTES_KEY, Long.toString((long) entry.getOutputBytes()));
+        }
+        return estimates;
+    }
+
+    /**
+     * Return the estimated Runtime of a job
+     *
+     * @param job the job for which estimation is required
+     * @return the median runtime in seconds, or null if there is no history for the job
+     */
+    public String getRuntime(Job job) {
+        return this.getAllEstimates(job).get("runtime");
+    }
+
+    /**
+     * Return the estimated memory requirements of a job
+     *
+     * @param job the job for which estimation is required
+     * @return the peak memory in MB, or null if there is no history for the job
+     */
+    public String getMemory(Job job) {
+        return this.getAllEstimates(job).get("memory");
+    }
+
+    /**
+     * Returns the index entry for a job, falling back to the entry across all sites.
+     *
+     * @param job the job
+     * @return the entry, or null if there is no history for the job
+     */
+    private HistoryIndex.Entry lookup(Job job) {
+        String transformation = job.getCompleteTCName();
+        HistoryIndex.Entry entry = mIndex.get(transformation, job.getSiteHandle());
+        return (entry == null) ? mIndex.get(transformation, HistoryIndex.ALL_SITES) : entry;
+    }
+
+    /**
+     * Loads the index from the index file if it is up to date, else builds it from the kickstart
+     * records in the directories and writes it out to the index file.
+     *
+     * @param indexFile the index file
+     * @param dirs the submit directories
+     * @return the index
+     */
+    private HistoryIndex loadIndex(File indexFile, List<String> dirs) {
+        List<File> records = new ArrayList<File>();
+        for (String dir : dirs) {
+            this.collectKickstartOutputs(new File(dir), records);
+        }
+
+        String fingerprint = HistoryIndex.fingerprint(records);
+
+        if (indexFile.exists()) {
+            try {
+                HistoryIndex index = HistoryIndex.load(indexFile);
+                if (dirs.isEmpty()
+                        || this.isUpToDate(index, indexFile, dirs, records, fingerprint)) {
+                    return index;
+                }
+                mLogger.log(
+                        "Rebuilding out of date history index " + indexFile,
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+            } catch (IOException e) {
+                mLogger.log(
+                        "Rebuilding history index " + indexFile + " " + e.getMessage(),
+                        LogManager.WARNING_MESSAGE_LEVEL);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        HistoryIndex index = this.buildIndex(records);
+        index.setSources(dirs);
+        index.setRecords(fingerprint);
+        mLogger.log(
+                LogManager.INFO_MESSAGE_LEVEL,
+                "Built history index with {} entries from {} kickstart files in {} ms",
+                index.size(),
+                records.size(),
+                System.currentTimeMillis() - start);
+        try {
+            index.write(indexFile);
+        } catch (IOException e) {
+            // the index is still usable for this run
+            mLogger.log(
+                    "Unable to write out history index to " + indexFile,
+                    e,
+                    LogManager.WARNING_MESSAGE_LEVEL);
+        }
+        return index;
+    }
+
+    /**
+     * Returns whether an index was built from the directories and the same kickstart output files,
+     * and none of the files have been modified since it was written out. A file deleted or added
+     * changes the fingerprint of the files.
+     *
+     * @param index the index loaded
+     * @param indexFile the index file
+     * @param dirs the submit directories
+     * @param records the kickstart output files in the directories
+     * @param fingerprint the fingerprint of the kickstart output files
+     * @return boolean
+     */
+    private boolean isUpToDate(
+            HistoryIndex index,
+            File indexFile,
+            List<String> dirs,
+            List<File> records,
+            String fingerprint) {
+        if (!index.getSources().equals(dirs) || !fingerprint.equals(index.getRecords())) {
+            return false;
+        }
+        long written = indexFile.lastModified();
+        for (File record : records) {
+            if (record.lastModified() > written) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Recursively collects the kickstart output files in a directory.
+     *
+     * @param dir the directory
+     * @param result the list to add the files to
+     */
+    private void collectKickstartOutputs(File dir, List<File> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            mLogger.log(
+                    "Unable to list history directory " + dir, LogManager.WARNING_MESSAGE_LEVEL);
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                this.collectKickstartOutputs(file, result);
+            } else if (KICKSTART_OUTPUT_PATTERN.matcher(file.getName()).matches()) {
+                result.add(file);
+            }
+        }
+    }
+
+    /**
+     * Builds the index from the kickstart output files.
+     *
+     * @param files the kickstart output files
+     * @return the summarized index
+     */
+    private HistoryIndex buildIndex(List<File> files) {
+        HistoryIndex index = new HistoryIndex();
+        InvocationParser parser = new InvocationParser(null);
+        // validate against the schema shipped with pegasus, rather than
+        // fetching the one the document refers to
+        String schema =
+                new File(
+                                mProps.getSchemaDir(),
+                                new File(InvocationRecord.SCHEMA_LOCATION).getName())
+                        .getAbsolutePath();
+        parser.setSchemaLocations(
+                InvocationRecord.SCHEMA_NAMESPACE
+                        + " "
+                        + schema
+                        + " "
+                        + InvocationRecord.SCHEMA_NAMESPACE.replaceFirst("^https:", "http:")
+                        + " "
+                        + schema);
+
+        for (File file : files) {
+            List<String> records;
+            try {
+                records = extractRecords(file);
+            } catch (IOException e) {
+                mLogger.log(
+                        "Unable to read kickstart output " + file,
+                        e,
+                        LogManager.WARNING_MESSAGE_LEVEL);
+                continue;
+            }
+            for (String record : records) {
+                if (record.startsWith(YAML_RECORD_START)) {
+                    this.addYAMLSamples(index, file, record);
+                    continue;
+                }
+                InvocationRecord invocation = parser.parse(new StringReader(record));
+                if (invocation == null) {
+                    mLogger.log(
+                            "Ignoring invalid invocation record in " + file,
+                            LogManager.DEBUG_MESSAGE_LEVEL);
+                    continue;
+                }
+                this.addSample(index, invocation);
+            }
+        }
+        index.summarize();
+        return index;
+    }
+
+    /**
+     * Adds a sample to the index for a successful invocation record.
+     *
+     * @param index the index
+     * @param invocation the invocation record
+     */
+    private void addSample(HistoryIndex index, InvocationRecord invocation) {
+        String transformation = invocation.getTransformation();
+        String site = invocation.getResource();
+        if (transformation == null || site == null) {
+            return;
+        }
+
+        long maxRSS = 0;
+        for (Iterator it = invocation.iterateJob(); it.hasNext(); ) {
+            edu.isi.pegasus.planner.invocation.Job job =
+                    (edu.isi.pegasus.planner.invocation.Job) it.next();
+            Status status = job.getStatus();
+            if (status == null || status.getStatus() != 0) {
+                return;
+            }
+            Usage usage = job.getUsage();
+            if (usage != null) {
+                maxRSS = Math.max(maxRSS, usage.getMaximumRSS());
+            }
+        }
+
+        long outputBytes = 0;
+        for (Iterator it = invocation.iterateStatCall(); it.hasNext(); ) {
+            StatCall call = (StatCall) it.next();
+            StatInfo info = call.getStatInfo();
+            if (FINAL_STATCALL_HANDLE.equals(call.getHandle()) && info != null) {
+                outputBytes += info.getSize();
+            }
+        }
+
+        // kickstart reports the maximum resident set size in KB
+        index.addSample(
+                transformation, site, invocation.getDuration(), maxRSS / 1024.0, outputBytes);
+    }
+
+    /**
+     * Adds a sample to the index for each successful invocation in a YAML invocation record.
+     *
+     * @param index the index
+     * @param file the kickstart output file the record is from
+     * @param record the YAML invocation record
+     */
+    private void addYAMLSamples(HistoryIndex index, File file, String record) {
+        JsonNode root;
+        try {
+            root = mYAMLMapper.readTree(record);
+        } catch (IOException e) {
+            mLogger.log(
+                    "Ignoring invalid invocation record in " + file + " " + e.getMessage(),
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            return;
+        }
+        if (root == null) {
+            return;
+        }
+        for (JsonNode invocation : root.isArray() ? root : Collections.singletonList(root)) {
+            this.addSample(index, invocation);
+        }
+    }
+
+    /**
+     * Adds a sample to the index for a successful YAML invocation record.
+     *
+     * @param index the index
+     * @param invocation the invocation record
+     */
+    private void addSample(HistoryIndex index, JsonNode invocation) {
+        String transformation = invocation.path("transformation").asText(null);
+        String site = invocation.path("resource").asText(null);
+        if (transformation == null || site == null) {
+            return;
+        }
+
+        long maxRSS = 0;
+        for (String name : YAML_JOBS) {
+            JsonNode job = invocation.get(name);
+            if (job == null) {
+                continue;
+            }
+            JsonNode status = job.path("status").get("raw");
+            if (status == null || status.asInt(-1) != 0) {
+                return;
+            }
+            maxRSS = Math.max(maxRSS, job.path("usage").path("maxrss").asLong(0));
+        }
+
+        // older records list the output files under the final key,
+        // newer ones mark them as output
+        long outputBytes = 0;
+        for (Iterator<Map.Entry<String, JsonNode>> it = invocation.path("files").fields();
+                it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            JsonNode info = entry.getValue();
+            if (FINAL_STATCALL_HANDLE.equals(entry.getKey())
+                    || info.path("output").asBoolean(false)) {
+                outputBytes += info.path("size").asLong(0);
+            }
+        }
+
+        // kickstart reports the maximum resident set size in KB
+        index.addSample(
+                transformation,
+                site,
+                invocation.path("duration").asDouble(0),
+                maxRSS / 1024.0,
+                outputBytes);
+    }
+
+    /**
+     * Extracts the invocation records from a kickstart output file. A file can contain multiple
+     * records, for example for clustered jobs. XML records are returned from the start of the
+     * invocation element to its end. YAML records are returned from the <code>- invocation:</code>
+     * line up to the next line that is not part of the record, such as a cluster task line.
+     *
+     * @param file the kickstart output file
+     * @return the records
+     * @throws IOException in case of error while reading the file
+     */
+    static List<String> extractRecords(File file) throws IOException {
+        List<String> result = new ArrayList<String>();
+        BufferedReader reader =
+                new BufferedReader(
+                        new InputStreamReader(
+                                new FileInputStream(file), StandardCharsets.ISO_8859_1));
+        try {
+            StringBuilder record = null;
+            boolean yaml = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (record != null && yaml) {
+                    if (!line.startsWith(YAML_RECORD_START)
+                            && (line.isEmpty() || line.charAt(0) == ' ' || line.charAt(0) == '-')) {
+                        record.append(line).append('\n');
+                        continue;
+                    }
+                    // the line is not part of the record
+                    result.add(record.toString());
+                    record = null;
+                }
+                if (record == null) {
+                    if (line.startsWith(YAML_RECORD_START)) {
+                        record = new StringBuilder();
+                        record.append(line).append('\n');
+                        yaml = true;
+                        continue;
+                    }
+                    int start = line.indexOf("<invocation");
+                    if (start == -1) {
+                        continue;
+                    }
+                    record = new StringBuilder();
+                    yaml = false;
+                    line = line.substring(start);
+                }
+                int end = line.indexOf("</invocation>");
+                if (end == -1) {
+                    record.append(line).append('\n');
+                } else {
+                    record.append(line, 0, end + "</invocation>".length());
+                    result.add(record.toString());
+                    record = null;
+                }
+            }
+            if (record != null && yaml) {
+                result.add(record.toString());
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+}
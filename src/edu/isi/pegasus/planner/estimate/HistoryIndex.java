@@ -0,0 +1,432 @@
+/**
+ * Copyright 2007-2015 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.estimate;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A per transformation, per site index of statistics about past executions of jobs. The index is
+ * built by adding samples for each execution, and is summarized into one entry per transformation
+ * and site, plus one entry per transformation across all sites. Lookups are a single hash lookup.
+ *
+ * <p>The index is written out as a text file, with a header line, a line listing the sources the
+ * index was built from, a line with a fingerprint of the kickstart files read from the sources, and
+ * one tab separated line per entry with the following columns
+ *
+ * <pre>
+ * transformation site samples runtime-median runtime-p95 memory-peak output-bytes-median
+ * </pre>
+ *
+ * The runtimes are in seconds, the memory in MB and the output in bytes.
+ */
+public class HistoryIndex {
+
+    /** The header line of the index file. */
+    public static final String HEADER = "# pegasus estimator history index 1";
+
+    /** The prefix of the line listing the sources of the index. */
+    public static final String SOURCES_PREFIX = "# sources ";
+
+    /** The prefix of the line with the fingerprint of the kickstart files read. */
+    public static final String RECORDS_PREFIX = "# records ";
+
+    /** The site handle for the entries summarizing a transformation across all sites. */
+    public static final String ALL_SITES = "*";
+
+    /** The summarized entries indexed by transformation and site. */
+    private final Map<String, Entry> mEntries;
+
+    /** The samples added, but not yet summarized, indexed by transformation and site. */
+    private final Map<String, Samples> mSamples;
+
+    /** The sources the index was built from. */
+    private List<String> mSources;
+
+    /** The fingerprint of the kickstart files the index was built from. */
+    private String mRecords;
+
+    /** The default constructor. */
+    public HistoryIndex() {
+        mEntries = new HashMap<String, Entry>();
+        mSamples = new HashMap<String, Samples>();
+        mSources = Collections.emptyList();
+        mRecords = null;
+    }
+
+    /**
+     * Adds a sample for an execution of a transformation on a site.
+     *
+     * @param transformation the fully qualified transformation name
+     * @param site the site the job executed on
+     * @param runtime the runtime in seconds
+     * @param memory the peak memory in MB
+     * @param outputBytes the bytes written to the output files
+     */
+    public void addSample(
+            String transformation, String site, double runtime, double memory, double outputBytes) {
+        this.samples(transformation, site).add(runtime, memory, outputBytes);
+        this.samples(transformation, ALL_SITES).add(runtime, memory, outputBytes);
+    }
+
+    /** Summarizes the samples added into entries, and discards the samples. */
+    public void summarize() {
+        for (Map.Entry<String, Samples> entry : mSamples.entrySet()) {
+            mEntries.put(entry.getKey(), entry.getValue().summarize());
+        }
+        mSamples.clear();
+    }
+
+    /**
+     * Returns the entry for a transformation on a site.
+     *
+     * @param transformation the fully qualified transformation name
+     * @param site the site handle, or {@link #ALL_SITES}
+     * @return the entry, or null if there is no history
+     */
+    public Entry get(String transformation, String site) {
+        return mEntries.get(key(transformation, site));
+    }
+
+    /**
+     * Returns the number of summarized entries in the index.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns the sources the index was built from.
+     *
+     * @return the sources
+     */
+    public List<String> getSources() {
+        return mSources;
+    }
+
+    /**
+     * Sets the sources the index was built from.
+     *
+     * @param sources the sources
+     */
+    public void setSources(List<String> sources) {
+        mSources = new ArrayList<String>(sources);
+    }
+
+    /**
+     * Returns the fingerprint of the kickstart files the index was built from.
+     *
+     * @return the fingerprint, or null if not known
+     */
+    public String getRecords() {
+        return mRecords;
+    }
+
+    /**
+     * Sets the fingerprint of the kickstart files the index was built from.
+     *
+     * @param records the fingerprint, as returned by {@link #fingerprint(List)}
+     */
+    public void setRecords(String records) {
+        mRecords = records;
+    }
+
+    /**
+     * Returns a fingerprint of a set of files, that changes when a file is added or removed. It is
+     * the number of files followed by a SHA-256 digest of their sorted absolute paths.
+     *
+     * @param files the files
+     * @return the fingerprint
+     */
+    public static String fingerprint(List<File> files) {
+        List<String> paths = new ArrayList<String>(files.size());
+        for (File file : files) {
+            paths.add(file.getAbsolutePath());
+        }
+        Collections.sort(paths);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not supported", e);
+        }
+        for (String path : paths) {
+            digest.update(path.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(paths.size()).append(':');
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes out the summarized entries to a file, sorted by transformation and site.
+     *
+     * @param file the file to write to
+     * @throws IOException in case of error while writing
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        // write to a temporary file first, so that readers never see a partial index
+        File temp = new File(parent, file.getName() + ".tmp");
+        PrintWriter pw =
+                new PrintWriter(
+                        new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+        try {
+            pw.println(HEADER);
+            pw.println(SOURCES_PREFIX + String.join(",", mSources));
+            if (mRecords != null) {
+                pw.println(RECORDS_PREFIX + mRecords);
+            }
+            for (Map.Entry<String, Entry> entry : new TreeMap<String, Entry>(mEntries).entrySet()) {
+                pw.print(entry.getKey());
+                pw.print('\t');
+                pw.println(entry.getValue());
+            }
+        } finally {
+            pw.close();
+        }
+        if (pw.checkError()) {
+            throw new IOException("Error while writing to " + temp);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Loads an index written out earlier.
+     *
+     * @param file the file to read from
+     * @return the index
+     * @throws IOException in case of error while reading, or if the file is not an index
+     */
+    public static HistoryIndex load(File file) throws IOException {
+        HistoryIndex index = new HistoryIndex();
+        BufferedReader reader =
+                new BufferedReader(
+                        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException(file + " is not a history index. Header was " + line);
+            }
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.startsWith(SOURCES_PREFIX)) {
+                    String sources = line.substring(SOURCES_PREFIX.length()).trim();
+                    index.setSources(
+                            sources.isEmpty()
+                                    ? Collections.<String>emptyList()
+                                    : Arrays.asList(sources.split(",")));
+                    continue;
+                }
+                if (line.startsWith(RECORDS_PREFIX)) {
+                    index.setRecords(line.substring(RECORDS_PREFIX.length()).trim());
+                    continue;
+                }
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] columns = line.split("\t");
+                if (columns.length != 7) {
+                    throw new IOException(
+                            "Invalid entry in " + file + " at line " + lineNumber + ": " + line);
+                }
+                try {
+                    index.mEntries.put(
+                            key(columns[0], columns[1]),
+                            new Entry(
+                                    Integer.parseInt(columns[2]),
+                                    Double.parseDouble(columns[3]),
+                                    Double.parseDouble(columns[4]),
+                                    Double.parseDouble(columns[5]),
+                                    Double.parseDouble(columns[6])));
+                } catch (NumberFormatException e) {
+                    throw new IOException(
+                            "Invalid entry in " + file + " at line " + lineNumber + ": " + line, e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return index;
+    }
+
+    private Samples samples(String transformation, String site) {
+        String key = key(transformation, site);
+        Samples samples = mSamples.get(key);
+        if (samples == null) {
+            samples = new Samples();
+            mSamples.put(key, samples);
+        }
+        return samples;
+    }
+
+    private static String key(String transformation, String site) {
+        return transformation + "\t" + site;
+    }
+
+    /** The statistics for a transformation on a site. */
+    public static class Entry {
+
+        /** The number of executions the statistics are computed over. */
+        private final int mCount;
+
+        /** The median runtime in seconds. */
+        private final double mRuntimeMedian;
+
+        /** The 95th percentile runtime in seconds. */
+        private final double mRuntimeP95;
+
+        /** The peak memory in MB. */
+        private final double mMemoryPeak;
+
+        /** The median bytes written to the output files. */
+        private final double mOutputBytes;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param count the number of executions
+         * @param runtimeMedian the median runtime in seconds
+         * @param runtimeP95 the 95th percentile runtime in seconds
+         * @param memoryPeak the peak memory in MB
+         * @param outputBytes the median bytes written to the output files
+         */
+        public Entry(
+                int count,
+                double runtimeMedian,
+                double runtimeP95,
+                double memoryPeak,
+                double outputBytes) {
+            mCount = count;
+            mRuntimeMedian = runtimeMedian;
+            mRuntimeP95 = runtimeP95;
+            mMemoryPeak = memoryPeak;
+            mOutputBytes = outputBytes;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public double getRuntimeMedian() {
+            return mRuntimeMedian;
+        }
+
+        public double getRuntimeP95() {
+            return mRuntimeP95;
+        }
+
+        public double getMemoryPeak() {
+            return mMemoryPeak;
+        }
+
+        public double getOutputBytes() {
+            return mOutputBytes;
+        }
+
+        /**
+         * Returns the tab separated columns of the entry, as written out to the index file.
+         *
+         * @return the columns
+         */
+        public String toString() {
+            return mCount
+                    + "\t"
+                    + mRuntimeMedian
+                    + "\t"
+                    + mRuntimeP95
+                    + "\t"
+                    + mMemoryPeak
+                    + "\t"
+                    + mOutputBytes;
+        }
+    }
+
+    /** The samples for a transformation on a site, held in primitive arrays. */
+    private static class Samples {
+
+        private double[] mRuntimes = new double[8];
+
+        private double[] mOutputBytes = new double[8];
+
+        private double mMemoryPeak = 0;
+
+        private int mSize = 0;
+
+        void add(double runtime, double memory, double outputBytes) {
+            if (mSize == mRuntimes.length) {
+                mRuntimes = Arrays.copyOf(mRuntimes, mSize * 2);
+                mOutputBytes = Arrays.copyOf(mOutputBytes, mSize * 2);
+            }
+            mRuntimes[mSize] = runtime;
+            mOutputBytes[mSize] = outputBytes;
+            mSize++;
+            mMemoryPeak = Math.max(mMemoryPeak, memory);
+        }
+
+        Entry summarize() {
+            double[] runtimes = Arrays.copyOf(mRuntimes, mSize);
+            double[] outputBytes = Arrays.copyOf(mOutputBytes, mSize);
+            Arrays.sort(runtimes);
+            Arrays.sort(outputBytes);
+            return new Entry(
+                    mSize,
+                    median(runtimes),
+                    percentile(runtimes, 95),
+                    mMemoryPeak,
+                    median(outputBytes));
+        }
+
+        private static double median(double[] sorted) {
+            int middle = sorted.length / 2;
+            return (sorted.length % 2 == 1)
+                    ? sorted[middle]
+                    : (sorted[middle - 1] + sorted[middle]) / 2;
+        }
+
+        /** Returns the nearest rank percentile of the sorted values. */
+        private static double percentile(double[] sorted, int percentile) {
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+    }
+}
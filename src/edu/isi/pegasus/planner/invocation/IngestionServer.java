@@ -0,0 +1,692 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.invocation;
+
+import edu.isi.pegasus.planner.parser.InvocationParser;
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.core.config.builder.api.AppenderComponentBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+import org.griphyn.vdl.dbschema.DatabaseSchema;
+import org.griphyn.vdl.dbschema.PTC;
+import org.griphyn.vdl.directive.Connect;
+import org.griphyn.vdl.toolkit.FriendlyNudge;
+import org.griphyn.vdl.util.ChimeraProperties;
+
+/**
+ * A server that ingests kickstart records into the provenance tracking catalog (PTC). It speaks the
+ * same protocol as the {@link SimpleServer}, with an additional <code>STATS</code> request that
+ * returns the statistics of the server.
+ *
+ * <p>The requests received on the connections are put on a bounded queue, from which a pool of
+ * workers parses the kickstart records, each worker with its own {@link InvocationParser}. The
+ * parsed records are put on a second bounded queue, from which a single writer saves them to the
+ * PTC. The writer saves all the records waiting in the queue, up to the batch size, in a single
+ * transaction. If saving a batch fails, the records of the batch are saved one at a time, so that a
+ * bad record does not fail the others.
+ *
+ * <p>A client is only replied to once its record is saved. When the queues are full, the
+ * connections block till there is room, which in turn blocks the clients.
+ *
+ * @version $Revision$
+ */
+public class IngestionServer {
+
+    /** The default port to listen on. */
+    public static final int DEFAULT_PORT = 65533;
+
+    /** The default number of workers parsing the kickstart records. */
+    public static final int DEFAULT_WORKERS = 4;
+
+    /** The default size of the queues. */
+    public static final int DEFAULT_QUEUE_SIZE = 256;
+
+    /** The default maximum number of records saved in a single transaction. */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /** The logger to use. */
+    private static Logger c_logger = LogManager.getLogger(IngestionServer.class);
+
+    /** The PTC to save the records to. null if running without a database. */
+    private final PTC m_ptc;
+
+    /** The location of the XML schema for the kickstart records. */
+    private final String m_schemaLocation;
+
+    /** The maximum number of records saved in a single transaction. */
+    private final int m_batchSize;
+
+    /** The requests waiting to be parsed. */
+    private final BlockingQueue<Request> m_parseQueue;
+
+    /** The parsed requests waiting to be saved. */
+    private final BlockingQueue<Request> m_writeQueue;
+
+    /** The server socket. */
+    private final ServerSocket m_server;
+
+    /** The threads handling the connections. */
+    private final ExecutorService m_connections;
+
+    /** The worker and writer threads. */
+    private final List<Thread> m_threads;
+
+    /** Whether the server was asked to shut down. */
+    private volatile boolean m_terminate;
+
+    /** The number of records received. */
+    private final AtomicLong m_received;
+
+    /** The number of records parsed successfully. */
+    private final AtomicLong m_parsed;
+
+    /** The number of records saved to the PTC. */
+    private final AtomicLong m_saved;
+
+    /** The number of records that could not be parsed or saved. */
+    private final AtomicLong m_failed;
+
+    /** The number of batches saved to the PTC. */
+    private final AtomicLong m_batches;
+
+    /** The number of times a request had to wait for room in a full queue. */
+    private final AtomicLong m_blocked;
+
+    /** The maximum number of requests seen waiting in the queues. */
+    private final AtomicInteger m_maxQueued;
+
+    /**
+     * The overloaded constructor. The server listens on the loopback interface.
+     *
+     * @param ptc the PTC to save the records to. null to run without a database.
+     * @param schemaLocation the location of the XML schema for the kickstart records.
+     * @param port the port to listen on. 0 picks any free port.
+     * @param workers the number of workers parsing the kickstart records.
+     * @param queueSize the size of the queues.
+     * @param batchSize the maximum number of records saved in a single transaction.
+     * @throws IOException if unable to listen on the port.
+     */
+    public IngestionServer(
+            PTC ptc, String schemaLocation, int port, int workers, int queueSize, int batchSize)
+            throws IOException {
+        m_ptc = ptc;
+        m_schemaLocation = schemaLocation;
+        m_batchSize = Math.max(1, batchSize);
+        m_parseQueue = new ArrayBlockingQueue<Request>(Math.max(1, queueSize));
+        m_writeQueue = new ArrayBlockingQueue<Request>(Math.max(1, queueSize));
+        m_server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        m_connections = Executors.newCachedThreadPool();
+        m_threads = new LinkedList<Thread>();
+        m_terminate = false;
+
+        m_received = new AtomicLong();
+        m_parsed = new AtomicLong();
+        m_saved = new AtomicLong();
+        m_failed = new AtomicLong();
+        m_batches = new AtomicLong();
+        m_blocked = new AtomicLong();
+        m_maxQueued = new AtomicInteger();
+
+        for (int i = 1; i <= Math.max(1, workers); i++) {
+            m_threads.add(new Thread(new Worker(), "IngestionWorker#" + i));
+        }
+        if (m_ptc != null) {
+            m_threads.add(new Thread(new Writer(), "IngestionWriter"));
+        }
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return m_server.getLocalPort();
+    }
+
+    /** Starts the workers and the writer. */
+    public void start() {
+        for (Thread t : m_threads) {
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /** Accepts connections till the server is shut down, and then stops the server. */
+    public void serve() {
+        c_logger.info("listening on port " + getPort());
+        try {
+            while (!m_terminate) {
+                m_connections.execute(new Connection(m_server.accept()));
+            }
+        } catch (SocketException se) {
+            // ignore -- closing the server socket during shutdown
+            // will have accept fail with a socket exception
+        } catch (IOException e) {
+            c_logger.warn("While accepting connection: " + e.getMessage());
+        }
+        c_logger.info("received shutdown");
+        stop();
+    }
+
+    /**
+     * Stops the server. Waits for the open connections to finish, and then stops the workers and
+     * the writer.
+     */
+    public void stop() {
+        m_terminate = true;
+        try {
+            m_server.close();
+        } catch (IOException e) {
+            // ignore
+        }
+
+        m_connections.shutdown();
+        try {
+            while (!m_connections.awaitTermination(5, TimeUnit.SECONDS)) {
+                c_logger.info("waiting for connections to finish");
+            }
+            for (Thread t : m_threads) {
+                t.interrupt();
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        c_logger.info("finished shutdown " + getStatistics());
+    }
+
+    /**
+     * Ingests a kickstart record, and waits till it is saved.
+     *
+     * @param filename the name of the file with the kickstart record.
+     * @return the exit code derived from the remote exit code, as with {@link
+     *     SimpleServer#checkFile(String)}.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public int ingest(String filename) throws InterruptedException {
+        Request request = new Request(filename);
+        m_received.incrementAndGet();
+        this.enqueue(m_parseQueue, request);
+        request.m_done.await();
+        return request.m_result;
+    }
+
+    /**
+     * Returns the number of requests waiting to be parsed or saved.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return m_parseQueue.size() + m_writeQueue.size();
+    }
+
+    /**
+     * Returns the maximum number of requests seen waiting to be parsed or saved.
+     *
+     * @return the maximum queue depth
+     */
+    public int getMaxQueueDepth() {
+        return m_maxQueued.get();
+    }
+
+    /**
+     * Returns the number of times a request had to wait for room in a full queue.
+     *
+     * @return the number of blocked requests
+     */
+    public long getBlocked() {
+        return m_blocked.get();
+    }
+
+    /**
+     * Returns the number of records saved to the PTC.
+     *
+     * @return the number of saved records
+     */
+    public long getSaved() {
+        return m_saved.get();
+    }
+
+    /**
+     * Returns the number of batches saved to the PTC.
+     *
+     * @return the number of batches
+     */
+    public long getBatches() {
+        return m_batches.get();
+    }
+
+    /**
+     * Returns the statistics of the server as a single line.
+     *
+     * @return the statistics
+     */
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("received=")
+                .append(m_received.get())
+                .append(" parsed=")
+                .append(m_parsed.get())
+                .append(" saved=")
+                .append(m_saved.get())
+                .append(" failed=")
+                .append(m_failed.get())
+                .append(" batches=")
+                .append(m_batches.get())
+                .append(" queued=")
+                .append(getQueueDepth())
+                .append(" max-queued=")
+                .append(getMaxQueueDepth())
+                .append(" blocked=")
+                .append(getBlocked());
+        return sb.toString();
+    }
+
+    /**
+     * Puts a request on a queue, waiting for room if the queue is full.
+     *
+     * @param queue the queue
+     * @param request the request
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void enqueue(BlockingQueue<Request> queue, Request request)
+            throws InterruptedException {
+        if (!queue.offer(request)) {
+            m_blocked.incrementAndGet();
+            queue.put(request);
+        }
+        int depth = getQueueDepth();
+        int max;
+        while ((max = m_maxQueued.get()) < depth && !m_maxQueued.compareAndSet(max, depth)) {
+            // retry
+        }
+    }
+
+    /**
+     * Parses the kickstart record of a request, and hands it to the writer. Requests that fail or
+     * do not need to be saved are completed right away.
+     *
+     * @param parser the parser to use
+     * @param request the request
+     */
+    private void parse(InvocationParser parser, Request request) {
+        try {
+            String temp = SimpleServer.readInvocation(request.m_filename, true);
+            InvocationRecord invocation = parser.parse(new StringReader(temp));
+            if (invocation == null)
+                throw new FriendlyNudge(
+                        "invalid XML invocation record in "
+                                + request.m_filename
+                                + ", assuming failure",
+                        5);
+            m_parsed.incrementAndGet();
+
+            // determine result code, just look at the main job for now
+            request.m_record = invocation;
+            request.m_result = SimpleServer.determineExitStatus(invocation);
+            if (m_ptc != null) {
+                this.enqueue(m_writeQueue, request);
+                return;
+            }
+        } catch (FriendlyNudge fn) {
+            c_logger.warn(fn.getMessage());
+            m_failed.incrementAndGet();
+            request.m_result = fn.getResult();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.m_result = 5;
+        } catch (Exception e) {
+            c_logger.warn(e.getMessage());
+            m_failed.incrementAndGet();
+            request.m_result = 5;
+        }
+        request.m_done.countDown();
+    }
+
+    /**
+     * Saves the records of a batch of requests in a single transaction, and completes the requests.
+     * Records that already exist in the PTC are skipped.
+     *
+     * @param batch the requests
+     */
+    private void save(List<Request> batch) {
+        List<InvocationRecord> records = new ArrayList<InvocationRecord>(batch.size());
+        try {
+            Set<String> keys = new HashSet<String>();
+            for (Request request : batch) {
+                if (isNew(request.m_record, keys)) {
+                    records.add(request.m_record);
+                } else {
+                    c_logger.info("invocation already exists, skipping!");
+                }
+            }
+            if (!records.isEmpty()) {
+                m_ptc.saveInvocations(records);
+                m_batches.incrementAndGet();
+                m_saved.addAndGet(records.size());
+            }
+        } catch (Exception e) {
+            c_logger.warn(
+                    "Unable to save a batch of "
+                            + records.size()
+                            + " invocations, saving them one at a time: "
+                            + e.getMessage());
+            for (Request request : batch) {
+                try {
+                    if (isNew(request.m_record, null)) {
+                        m_ptc.saveInvocation(request.m_record);
+                        m_saved.incrementAndGet();
+                    }
+                } catch (Exception ex) {
+                    c_logger.warn(ex.getMessage());
+                    m_failed.incrementAndGet();
+                    request.m_result = 5;
+                }
+            }
+        }
+
+        for (Request request : batch) {
+            request.m_done.countDown();
+        }
+    }
+
+    /**
+     * Checks whether an invocation record does not exist in the PTC yet.
+     *
+     * @param invocation the invocation record
+     * @param keys the keys of the records already in the current batch. Can be null.
+     * @return true if the record is not in the PTC or the batch
+     * @throws Exception if unable to query the PTC
+     */
+    private boolean isNew(InvocationRecord invocation, Set<String> keys) throws Exception {
+        // FIXME: (start,host,pid) may not be a sufficient secondary key
+        if (keys != null
+                && !keys.add(
+                        invocation.getStart().getTime()
+                                + " "
+                                + invocation.getHostAddress().getHostAddress()
+                                + " "
+                                + invocation.getPID())) {
+            return false;
+        }
+        return m_ptc.getInvocationID(
+                        invocation.getStart(), invocation.getHostAddress(), invocation.getPID())
+                == -1;
+    }
+
+    /** A request to ingest a kickstart record. */
+    private static class Request {
+
+        /** The name of the file with the kickstart record. */
+        private final String m_filename;
+
+        /** The parsed invocation record. */
+        private InvocationRecord m_record;
+
+        /** The result code for the client. */
+        private int m_result;
+
+        /** Counted down once the request is done. */
+        private final CountDownLatch m_done;
+
+        Request(String filename) {
+            m_filename = filename;
+            m_result = 5;
+            m_done = new CountDownLatch(1);
+        }
+    }
+
+    /** Parses the requests in the parse queue, with its own parser. */
+    private class Worker implements Runnable {
+
+        public void run() {
+            // create one XML parser per worker -- once
+            InvocationParser parser = new InvocationParser(m_schemaLocation);
+            try {
+                while (true) {
+                    parse(parser, m_parseQueue.take());
+                }
+            } catch (InterruptedException e) {
+                // shutdown
+            }
+        }
+    }
+
+    /** Saves the parsed requests in batches. */
+    private class Writer implements Runnable {
+
+        public void run() {
+            List<Request> batch = new ArrayList<Request>(m_batchSize);
+            try {
+                while (true) {
+                    // take whatever has accumulated while the last batch was saved
+                    batch.add(m_writeQueue.take());
+                    m_writeQueue.drainTo(batch, m_batchSize - 1);
+                    save(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // shutdown
+            }
+        }
+    }
+
+    /** Handles the requests on a connection. */
+    private class Connection implements Runnable {
+
+        /** The socket of the connection. */
+        private final Socket m_socket;
+
+        /** The remote end of the connection. */
+        private final String m_remote;
+
+        Connection(Socket socket) {
+            m_socket = socket;
+            m_remote = socket.getRemoteSocketAddress().toString();
+        }
+
+        public void run() {
+            String line = null;
+            c_logger.debug(m_remote + ": starting");
+            try {
+                PrintWriter out = new PrintWriter(m_socket.getOutputStream(), true);
+                BufferedReader in =
+                        new BufferedReader(new InputStreamReader(m_socket.getInputStream()));
+
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("PARSE")) {
+                        // request to parse a given file
+                        String[] request = line.split("[ \t]", 3);
+                        if (request.length != 3) {
+                            out.println("400 Illegal request format");
+                            continue;
+                        }
+
+                        if (!request[2].equals("ECP/1.0")) {
+                            out.println("501 Unrecognized version");
+                            continue;
+                        }
+
+                        out.println("300 Result code " + ingest(request[1]));
+                    } else if (line.equals("STATS")) {
+                        out.println("200 " + getStatistics());
+                    } else if (line.equals("QUIT")) {
+                        // done
+                        out.println("200 Good-bye");
+                        break;
+                    } else if (line.equals("SHUTDOWN")) {
+                        out.println("200 Shutting down server, good-bye");
+                        m_terminate = true;
+                        m_server.close(); // close server socket
+                        break;
+                    } else {
+                        // illegal request
+                        out.println("500 Illegal request");
+                        break;
+                    }
+                }
+
+                out.close();
+                in.close();
+                m_socket.close();
+            } catch (IOException e) {
+                c_logger.warn(m_remote + ": I/O error: " + e.getMessage());
+            } catch (InterruptedException e) {
+                c_logger.warn(m_remote + ": interrupted");
+            }
+            c_logger.debug(m_remote + ": finished");
+        }
+    }
+
+    /** Prints the usage for the server. */
+    public static void printUsage() {
+        String linefeed = System.getProperty("line.separator", "\r\n");
+        System.out.println(
+                "Usage: IngestionServer [-p port] [-w workers] [-q size] [-b size] [-h]"
+                        + linefeed
+                        + linefeed
+                        + "Options:"
+                        + linefeed
+                        + " -p|--port      the loopback port to listen on. Defaults to "
+                        + DEFAULT_PORT
+                        + linefeed
+                        + " -w|--workers   the number of workers parsing the records. Defaults to "
+                        + DEFAULT_WORKERS
+                        + linefeed
+                        + " -q|--queue     the size of the queues. Defaults to "
+                        + DEFAULT_QUEUE_SIZE
+                        + linefeed
+                        + " -b|--batch     the maximum number of records saved in one transaction."
+                        + linefeed
+                        + "                Defaults to "
+                        + DEFAULT_BATCH_SIZE
+                        + linefeed
+                        + " -h|--help      print this message and exit."
+                        + linefeed);
+    }
+
+    public static void main(String[] args) {
+        // PM-1836 log4j 2.x style configuration
+        ConfigurationBuilder<BuiltConfiguration> builder =
+                ConfigurationBuilderFactory.newConfigurationBuilder();
+        AppenderComponentBuilder console = builder.newAppender("stdout", "Console");
+        console.add(
+                builder.newLayout("PatternLayout")
+                        .addAttribute("pattern", "%d{yyyy-MM-dd HH:mm:ss.SSS} %-5p [%c{1}] %m%n"));
+        builder.add(console);
+        builder.add(builder.newRootLogger(Level.INFO).add(builder.newAppenderRef("stdout")));
+        Configurator.initialize(builder.build());
+        c_logger = LogManager.getLogger(IngestionServer.class);
+
+        LongOpt[] longOptions = new LongOpt[5];
+        longOptions[0] = new LongOpt("port", LongOpt.REQUIRED_ARGUMENT, null, 'p');
+        longOptions[1] = new LongOpt("workers", LongOpt.REQUIRED_ARGUMENT, null, 'w');
+        longOptions[2] = new LongOpt("queue", LongOpt.REQUIRED_ARGUMENT, null, 'q');
+        longOptions[3] = new LongOpt("batch", LongOpt.REQUIRED_ARGUMENT, null, 'b');
+        longOptions[4] = new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h');
+        Getopt g = new Getopt("IngestionServer", args, "p:w:q:b:h", longOptions, false);
+
+        int port = DEFAULT_PORT;
+        int workers = DEFAULT_WORKERS;
+        int queueSize = DEFAULT_QUEUE_SIZE;
+        int batchSize = DEFAULT_BATCH_SIZE;
+        int option = 0;
+        try {
+            while ((option = g.getopt()) != -1) {
+                switch (option) {
+                    case 'p':
+                        port = Integer.parseInt(g.getOptarg());
+                        break;
+
+                    case 'w':
+                        workers = Integer.parseInt(g.getOptarg());
+                        break;
+
+                    case 'q':
+                        queueSize = Integer.parseInt(g.getOptarg());
+                        break;
+
+                    case 'b':
+                        batchSize = Integer.parseInt(g.getOptarg());
+                        break;
+
+                    case 'h':
+                    default:
+                        printUsage();
+                        System.exit(option == 'h' ? 0 : 1);
+                }
+            }
+
+            // stand up the connection to the PTC
+            PTC ptc = null;
+            ChimeraProperties props = ChimeraProperties.instance();
+            String ptcSchemaName = props.getPTCSchemaName();
+            if (ptcSchemaName != null) {
+                DatabaseSchema dbschema = new Connect().connectDatabase(ptcSchemaName);
+                if (dbschema instanceof PTC) {
+                    ptc = (PTC) dbschema;
+                } else {
+                    c_logger.warn(
+                            "Your database cannot store invocation records"
+                                    + ", assuming no-database-mode");
+                }
+            }
+
+            IngestionServer server =
+                    new IngestionServer(
+                            ptc, props.getPTCSchemaLocation(), port, workers, queueSize, batchSize);
+            server.start();
+            server.serve();
+
+            if (ptc != null) {
+                ((DatabaseSchema) ptc).close();
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: Invalid number " + e.getMessage());
+            System.exit(1);
+        } catch (Exception e) {
+            c_logger.fatal("Unable to run the server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
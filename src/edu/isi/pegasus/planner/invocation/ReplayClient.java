@@ -0,0 +1,200 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.invocation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A client that replays kickstart records against the {@link IngestionServer} or the {@link
+ * SimpleServer}, over a number of concurrent connections. Used to load test the servers.
+ *
+ * @version $Revision$
+ */
+public class ReplayClient {
+
+    /** The host the server runs on. */
+    private final String m_host;
+
+    /** The port the server listens on. */
+    private final int m_port;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param host the host the server runs on.
+     * @param port the port the server listens on.
+     */
+    public ReplayClient(String host, int port) {
+        m_host = host;
+        m_port = port;
+    }
+
+    /**
+     * Sends the kickstart records to the server, and collects the result codes.
+     *
+     * @param files the names of the files with the kickstart records.
+     * @param connections the number of concurrent connections to use.
+     * @return the result code for each file, or -1 if the server did not reply.
+     * @throws IOException if a connection fails.
+     * @throws InterruptedException if interrupted while waiting for the connections.
+     */
+    public int[] replay(final List<String> files, int connections)
+            throws IOException, InterruptedException {
+        final int[] result = new int[files.size()];
+        Arrays.fill(result, -1);
+        final AtomicInteger next = new AtomicInteger();
+        final List<IOException> errors = new ArrayList<IOException>();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < Math.max(1, connections); i++) {
+            Thread t =
+                    new Thread(
+                            new Runnable() {
+                                public void run() {
+                                    try (Socket socket = new Socket(m_host, m_port)) {
+                                        PrintWriter out =
+                                                new PrintWriter(socket.getOutputStream(), true);
+                                        BufferedReader in =
+                                                new BufferedReader(
+                                                        new InputStreamReader(
+                                                                socket.getInputStream()));
+                                        int index;
+                                        while ((index = next.getAndIncrement()) < files.size()) {
+                                            out.println("PARSE " + files.get(index) + " ECP/1.0");
+                                            result[index] = resultCode(in.readLine());
+                                        }
+                                        out.println("QUIT");
+                                        in.readLine();
+                                    } catch (IOException e) {
+                                        synchronized (errors) {
+                                            errors.add(e);
+                                        }
+                                    }
+                                }
+                            },
+                            "ReplayClient#" + i);
+            t.start();
+            threads.add(t);
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the statistics of an {@link IngestionServer}.
+     *
+     * @return the reply of the server.
+     * @throws IOException if the connection fails.
+     */
+    public String stats() throws IOException {
+        return this.send("STATS");
+    }
+
+    /**
+     * Asks the server to shut down.
+     *
+     * @return the reply of the server.
+     * @throws IOException if the connection fails.
+     */
+    public String shutdown() throws IOException {
+        return this.send("SHUTDOWN");
+    }
+
+    /**
+     * Sends a single request on a new connection.
+     *
+     * @param request the request
+     * @return the reply of the server.
+     * @throws IOException if the connection fails.
+     */
+    private String send(String request) throws IOException {
+        try (Socket socket = new Socket(m_host, m_port)) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out.println(request);
+            return in.readLine();
+        }
+    }
+
+    /**
+     * Extracts the result code from a reply of the form <code>300 Result code N</code>.
+     *
+     * @param reply the reply
+     * @return the result code, or -1 if the reply has none.
+     */
+    private static int resultCode(String reply) {
+        if (reply == null || !reply.startsWith("300 ")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(reply.substring(reply.lastIndexOf(' ') + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Replays the kickstart records given on the command line, and prints the throughput.
+     *
+     * <p>Usage: ReplayClient host port connections file [file ...]
+     *
+     * @param args the arguments
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: ReplayClient host port connections file [file ...]");
+            System.exit(1);
+        }
+        List<String> files = new ArrayList<String>();
+        for (int i = 3; i < args.length; i++) {
+            files.add(new File(args[i]).getAbsolutePath());
+        }
+
+        ReplayClient client = new ReplayClient(args[0], Integer.parseInt(args[1]));
+        long start = System.currentTimeMillis();
+        int[] result = client.replay(files, Integer.parseInt(args[2]));
+        long duration = Math.max(1, System.currentTimeMillis() - start);
+
+        int failed = 0;
+        for (int code : result) {
+            if (code != 0) {
+                failed++;
+            }
+        }
+        System.out.println(
+                files.size()
+                        + " records in "
+                        + duration
+                        + " ms ("
+                        + (files.size() * 1000L / duration)
+                        + " records/s), "
+                        + failed
+                        + " with non zero result");
+        System.out.println(client.stats());
+    }
+}
@@ -904,6 +904,8 @@ public class Condor extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return new Condor(this.mProfileMap);
+        Condor ns = new Condor();
+        ns.mProfileMap = this.cloneProfileMap();
+        return ns;
     }
 }
@@ -655,7 +655,10 @@ public class Dagman extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        Dagman ns = (mProfileMap == null) ? new Dagman() : new Dagman(this.mProfileMap);
+        Dagman ns = new Dagman();
+        if (mProfileMap != null) {
+            ns.mProfileMap = this.cloneProfileMap();
+        }
         ns.mJobName = (mJobName == null) ? null : new String(this.mJobName);
         return ns;
     }
@@ -249,12 +249,24 @@ public class ENV extends Namespace {
         }
     }
 
+    /**
+     * Returns a new map to hold the profiles, that iterates in insertion order, as environment
+     * variables may refer to the ones set before them.
+     *
+     * @return a LinkedHashMap
+     */
+    protected Map newProfileMap() {
+        return new LinkedHashMap();
+    }
+
     /**
      * Returns a copy of the current namespace object.
      *
      * @return the Cloned object
      */
     public Object clone() {
-        return (mProfileMap == null ? new ENV() : new ENV(this.mProfileMap));
+        ENV ns = new ENV();
+        ns.mProfileMap = this.cloneProfileMap();
+        return ns;
     }
 }
@@ -411,7 +411,9 @@ public class Globus extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return new Globus(this.mProfileMap);
+        Globus ns = new Globus();
+        ns.mProfileMap = this.cloneProfileMap();
+        return ns;
     }
 
     /**
@@ -257,6 +257,8 @@ public class Hints extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return (mProfileMap == null) ? new Hints() : new Hints(this.mProfileMap);
+        Hints ns = new Hints();
+        ns.mProfileMap = this.cloneProfileMap();
+        return ns;
     }
 }
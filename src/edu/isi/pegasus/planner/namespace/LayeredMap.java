@@ -0,0 +1,394 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.namespace;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A copy on write map of profiles, that holds the profiles set locally on top of a chain of frozen
+ * layers. The layers are never modified once frozen, and can be shared between many maps, for
+ * example the site, transformation catalog and properties profiles shared by all the jobs of a
+ * workflow. Writes go to the local map only, and removals of keys in a layer are recorded as
+ * tombstones.
+ *
+ * <p>Iterating over the map replays the layers and the local map in the order they were written,
+ * into a <code>TreeMap</code> or a <code>LinkedHashMap</code>. Hence, the iteration order is the
+ * same as that of a single <code>TreeMap</code> or <code>LinkedHashMap</code> to which the same
+ * profiles were written.
+ *
+ * @version $Revision$
+ */
+public class LayeredMap extends AbstractMap<String, String> {
+
+    /** The maximum number of layers in a chain, beyond which the chain is flattened. */
+    public static final int MAXIMUM_DEPTH = 8;
+
+    /** Whether the keys are iterated in sorted order, or in the order of insertion. */
+    private final boolean mSorted;
+
+    /** The top of the chain of frozen layers. */
+    private Layer mBase;
+
+    /** The profiles set locally. Created on the first write. */
+    private Map<String, String> mLocal;
+
+    /** The keys removed locally, that may exist in the frozen layers. */
+    private Set<String> mRemoved;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param sorted whether the keys are iterated in sorted order or in the order of insertion.
+     */
+    public LayeredMap(boolean sorted) {
+        this(sorted, (Layer) null);
+    }
+
+    /**
+     * The overloaded constructor, that creates a map on top of a frozen map that is not copied.
+     *
+     * @param sorted whether the keys are iterated in sorted order or in the order of insertion.
+     * @param frozen the map to use as the bottom layer. It should not be modified afterwards.
+     */
+    public LayeredMap(boolean sorted, Map<String, String> frozen) {
+        this(sorted, (frozen == null) ? null : new Layer(frozen, null, null));
+    }
+
+    private LayeredMap(boolean sorted, Layer base) {
+        mSorted = sorted;
+        mBase = base;
+    }
+
+    /**
+     * Returns whether the keys are iterated in sorted order.
+     *
+     * @return boolean
+     */
+    public boolean isSorted() {
+        return mSorted;
+    }
+
+    /**
+     * Returns the number of frozen layers under the local map.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return (mBase == null) ? 0 : mBase.mDepth;
+    }
+
+    /**
+     * Returns a new map with the same contents, that shares all the layers with this map. The local
+     * profiles of this map are frozen into a layer first.
+     *
+     * @return the copy
+     */
+    public LayeredMap fork() {
+        this.freeze();
+        return new LayeredMap(mSorted, mBase);
+    }
+
+    /**
+     * Puts a frozen map on top of the existing profiles, as if all its entries were put into this
+     * map.
+     *
+     * @param layer the map to put on top. It should not be modified afterwards.
+     */
+    public void pushLayer(Map<String, String> layer) {
+        this.freeze();
+        mBase = new Layer(layer, null, mBase);
+        this.flattenIfDeep();
+    }
+
+    /**
+     * Puts a frozen map under the existing profiles, as if all its entries that are not in this map
+     * were put into this map. For a map in insertion order, this changes the order of the keys, and
+     * for keys that were removed from this map, this does not add them back. The caller should use
+     * {@link #canAppendLayer(Map)} to check first.
+     *
+     * @param layer the map to put at the bottom. It should not be modified afterwards.
+     */
+    public void appendLayer(Map<String, String> layer) {
+        this.freeze();
+        List<Layer> layers = this.layers();
+        Layer base = new Layer(layer, null, null);
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            Layer l = layers.get(i);
+            base = new Layer(l.mEntries, l.mRemoved, base);
+        }
+        mBase = base;
+        this.flattenIfDeep();
+    }
+
+    /**
+     * Returns whether a layer can be put under the existing profiles with the same result as
+     * putting all its entries that are not in this map into this map.
+     *
+     * @param layer the map to put at the bottom.
+     * @return boolean
+     */
+    public boolean canAppendLayer(Map<String, String> layer) {
+        if (!mSorted) {
+            return false;
+        }
+        if (mRemoved != null && this.intersects(mRemoved, layer)) {
+            return false;
+        }
+        for (Layer l = mBase; l != null; l = l.mParent) {
+            if (l.mRemoved != null && this.intersects(l.mRemoved, layer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String get(Object key) {
+        if (mLocal != null) {
+            String value = mLocal.get(key);
+            if (value != null || mLocal.containsKey(key)) {
+                return value;
+            }
+        }
+        if (mRemoved != null && mRemoved.contains(key)) {
+            return null;
+        }
+        for (Layer l = mBase; l != null; l = l.mParent) {
+            String value = l.mEntries.get(key);
+            if (value != null || l.mEntries.containsKey(key)) {
+                return value;
+            }
+            if (l.mRemoved != null && l.mRemoved.contains(key)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(Object key) {
+        if (mLocal != null && mLocal.containsKey(key)) {
+            return true;
+        }
+        if (mRemoved != null && mRemoved.contains(key)) {
+            return false;
+        }
+        for (Layer l = mBase; l != null; l = l.mParent) {
+            if (l.mEntries.containsKey(key)) {
+                return true;
+            }
+            if (l.mRemoved != null && l.mRemoved.contains(key)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public String put(String key, String value) {
+        String previous = this.get(key);
+        if (mLocal == null) {
+            mLocal = this.newMap();
+        }
+        mLocal.put(key, value);
+        return previous;
+    }
+
+    public String remove(Object key) {
+        if (!this.containsKey(key)) {
+            return null;
+        }
+        String previous = this.get(key);
+        if (mLocal != null) {
+            mLocal.remove(key);
+        }
+        if (this.inLayers(key)) {
+            if (mRemoved == null) {
+                mRemoved = new HashSet<String>();
+            }
+            mRemoved.add((String) key);
+        }
+        return previous;
+    }
+
+    public void clear() {
+        mBase = null;
+        mLocal = null;
+        mRemoved = null;
+    }
+
+    public boolean isEmpty() {
+        return (mLocal == null || mLocal.isEmpty()) && this.snapshot().isEmpty();
+    }
+
+    public int size() {
+        return this.snapshot().size();
+    }
+
+    /**
+     * Returns a view of the entries, that is a snapshot taken at the time of the call. Removing
+     * entries and setting values through the view writes through to this map.
+     *
+     * @return the entries
+     */
+    public Set<Map.Entry<String, String>> entrySet() {
+        final Map<String, String> snapshot = this.snapshot();
+        return new AbstractSet<Map.Entry<String, String>>() {
+            public int size() {
+                return snapshot.size();
+            }
+
+            public Iterator<Map.Entry<String, String>> iterator() {
+                final Iterator<Map.Entry<String, String>> it = snapshot.entrySet().iterator();
+                return new Iterator<Map.Entry<String, String>>() {
+                    private String mLast;
+
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    public Map.Entry<String, String> next() {
+                        final Map.Entry<String, String> entry = it.next();
+                        mLast = entry.getKey();
+                        return new AbstractMap.SimpleEntry<String, String>(entry) {
+                            public String setValue(String value) {
+                                super.setValue(value);
+                                return LayeredMap.this.put(entry.getKey(), value);
+                            }
+                        };
+                    }
+
+                    public void remove() {
+                        it.remove();
+                        LayeredMap.this.remove(mLast);
+                    }
+                };
+            }
+        };
+    }
+
+    /** Freezes the local profiles into a layer. */
+    private void freeze() {
+        if ((mLocal == null || mLocal.isEmpty()) && (mRemoved == null || mRemoved.isEmpty())) {
+            return;
+        }
+        mBase = new Layer((mLocal == null) ? this.newMap() : mLocal, mRemoved, mBase);
+        mLocal = null;
+        mRemoved = null;
+        this.flattenIfDeep();
+    }
+
+    /** Flattens the chain of layers into a single layer, if it is too deep. */
+    private void flattenIfDeep() {
+        if (mBase != null && mBase.mDepth > MAXIMUM_DEPTH) {
+            Map<String, String> local = mLocal;
+            Set<String> removed = mRemoved;
+            mLocal = null;
+            mRemoved = null;
+            mBase = new Layer(this.snapshot(), null, null);
+            mLocal = local;
+            mRemoved = removed;
+        }
+    }
+
+    /**
+     * Replays the layers and the local profiles into a new map.
+     *
+     * @return the contents of the map
+     */
+    private Map<String, String> snapshot() {
+        Map<String, String> result = this.newMap();
+        List<Layer> layers = this.layers();
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            layers.get(i).replay(result);
+        }
+        if (mRemoved != null) {
+            result.keySet().removeAll(mRemoved);
+        }
+        if (mLocal != null) {
+            result.putAll(mLocal);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the frozen layers from the top to the bottom.
+     *
+     * @return the layers
+     */
+    private List<Layer> layers() {
+        List<Layer> layers = new ArrayList<Layer>(this.getDepth());
+        for (Layer l = mBase; l != null; l = l.mParent) {
+            layers.add(l);
+        }
+        return layers;
+    }
+
+    private boolean inLayers(Object key) {
+        for (Layer l = mBase; l != null; l = l.mParent) {
+            if (l.mEntries.containsKey(key)) {
+                return true;
+            }
+            if (l.mRemoved != null && l.mRemoved.contains(key)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean intersects(Set<String> keys, Map<String, String> layer) {
+        for (String key : keys) {
+            if (layer.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, String> newMap() {
+        return mSorted ? new TreeMap<String, String>() : new LinkedHashMap<String, String>();
+    }
+
+    /** A frozen layer in the chain, with the keys it removes from the layers under it. */
+    private static class Layer {
+
+        private final Map<String, String> mEntries;
+
+        private final Set<String> mRemoved;
+
+        private final Layer mParent;
+
+        private final int mDepth;
+
+        Layer(Map<String, String> entries, Set<String> removed, Layer parent) {
+            mEntries = entries;
+            mRemoved = removed;
+            mParent = parent;
+            mDepth = (parent == null) ? 1 : parent.mDepth + 1;
+        }
+
+        void replay(Map<String, String> result) {
+            if (mRemoved != null) {
+                result.keySet().removeAll(mRemoved);
+            }
+            result.putAll(mEntries);
+        }
+    }
+}
@@ -189,6 +189,16 @@ public class Metadata extends Namespace {
         return "";
     }
 
+    /**
+     * Returns a new map to hold the profiles. Metadata attributes are not ordered, and are not
+     * shared between namespaces as layers.
+     *
+     * @return a HashMap
+     */
+    protected Map newProfileMap() {
+        return new HashMap();
+    }
+
     /**
      * Returns a copy of the current namespace object.
      *
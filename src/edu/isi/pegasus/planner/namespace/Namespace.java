@@ -22,9 +22,12 @@ import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry
 import edu.isi.pegasus.planner.classes.Profile;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * The base namespace class that all the othernamepsace handling classes extend. Some constants are
@@ -66,6 +69,12 @@ public abstract class Namespace /*extends Data*/ {
     /** The key value is valid but contents should be merged to existing value if it exists */
     public static final int MERGE_KEY = 5;
 
+    /**
+     * The minimum number of profiles, for which the profiles are shared as a frozen layer between
+     * namespaces, instead of being copied into each namespace.
+     */
+    public static final int MINIMUM_LAYER_SIZE = 4;
+
     /**
      * The Map object that contains the profiles for a particular namespace. The Map is indexed by
      * profile key. Each value, is a profile value.
@@ -157,6 +166,9 @@ public abstract class Namespace /*extends Data*/ {
             throw new RuntimeException(
                     "Mismatch of namespaces " + this.namespaceName() + " " + nm.namespaceName());
         }
+        if (nm.size() >= MINIMUM_LAYER_SIZE && this.pushLayer(nm.mProfileMap)) {
+            return;
+        }
         for (Iterator it = nm.getProfileKeyIterator(); it.hasNext(); ) {
             String key = (String) it.next();
             this.checkKeyInNS(key, (String) nm.get(key));
@@ -212,6 +224,17 @@ public abstract class Namespace /*extends Data*/ {
             return;
         }
 
+        if (vars.size() >= MINIMUM_LAYER_SIZE) {
+            Map profiles = new LinkedHashMap();
+            for (Iterator it = vars.iterator(); it.hasNext(); ) {
+                Profile p = (Profile) it.next();
+                profiles.put(p.getProfileKey(), p.getProfileValue());
+            }
+            if (profiles.size() == vars.size() && this.pushLayer(profiles)) {
+                return;
+            }
+        }
+
         Profile p = null;
         for (Iterator it = vars.iterator(); it.hasNext(); ) {
             p = (Profile) it.next();
@@ -286,6 +309,9 @@ public abstract class Namespace /*extends Data*/ {
      */
     public void assimilate(PegasusProperties properties, Profiles.NAMESPACES namespace) {
         Namespace profiles = properties.getProfiles(namespace);
+        if (profiles.size() >= MINIMUM_LAYER_SIZE && this.appendLayer(profiles.mProfileMap)) {
+            return;
+        }
         for (Iterator it = profiles.getProfileKeyIterator(); it.hasNext(); ) {
             String key = (String) it.next();
 
@@ -521,6 +547,105 @@ public abstract class Namespace /*extends Data*/ {
         }
     }
 
+    /**
+     * Returns a new map to hold the profiles. The iteration order of the map determines the order
+     * in which the profiles are written out.
+     *
+     * @return a TreeMap
+     */
+    protected Map newProfileMap() {
+        return new TreeMap();
+    }
+
+    /**
+     * Returns a copy of the profiles, to be used by a clone of this namespace. If there are enough
+     * profiles, the copy shares the profiles with this namespace as frozen layers, and changes to
+     * either namespace are not visible in the other.
+     *
+     * @return the copy of the profile map
+     */
+    protected Map cloneProfileMap() {
+        if (mProfileMap == null) {
+            return null;
+        }
+        if (mProfileMap instanceof LayeredMap || mProfileMap.size() >= MINIMUM_LAYER_SIZE) {
+            LayeredMap map = this.layeredProfileMap();
+            if (map != null) {
+                return map.fork();
+            }
+        }
+        Map map = this.newProfileMap();
+        map.putAll(mProfileMap);
+        return map;
+    }
+
+    /**
+     * Puts profiles on top of the existing profiles in the namespace as a shared frozen layer, if
+     * checking them into the namespace one by one does not depend on the existing profiles.
+     *
+     * @param profiles the profiles indexed by key.
+     * @return boolean indicating whether the layer was put.
+     */
+    private boolean pushLayer(Map profiles) {
+        LayeredMap map = this.layeredProfileMap();
+        if (map == null) {
+            return false;
+        }
+        Map<String, String> layer = ProfileLayers.lookupOverride(this, profiles);
+        if (layer == null) {
+            return false;
+        }
+        map.pushLayer(layer);
+        return true;
+    }
+
+    /**
+     * Puts profiles under the existing profiles in the namespace as a shared frozen layer, if that
+     * is the same as checking in only the profiles whose keys are not in the namespace.
+     *
+     * @param profiles the profiles indexed by key.
+     * @return boolean indicating whether the layer was put.
+     */
+    private boolean appendLayer(Map profiles) {
+        LayeredMap map = this.layeredProfileMap();
+        if (map == null || !map.isSorted()) {
+            return false;
+        }
+        Map<String, String> layer = ProfileLayers.lookupDefault(this, profiles);
+        if (layer == null || !map.canAppendLayer(layer)) {
+            return false;
+        }
+        map.appendLayer(layer);
+        return true;
+    }
+
+    /**
+     * Returns the profile map as a layered map, wrapping the existing profiles as the bottom layer
+     * the first time. Only maps in natural sorted order or in insertion order are layered.
+     *
+     * @return the layered map, else null if the profile map cannot be layered.
+     */
+    private LayeredMap layeredProfileMap() {
+        if (mProfileMap instanceof LayeredMap) {
+            return (LayeredMap) mProfileMap;
+        }
+        Map existing = (mProfileMap == null) ? this.newProfileMap() : mProfileMap;
+        boolean sorted;
+        if (existing instanceof SortedMap) {
+            if (((SortedMap) existing).comparator() != null) {
+                return null;
+            }
+            sorted = true;
+        } else if (existing instanceof LinkedHashMap) {
+            sorted = false;
+        } else {
+            return null;
+        }
+        LayeredMap map = new LayeredMap(sorted, existing.isEmpty() ? null : existing);
+        mProfileMap = map;
+        return map;
+    }
+
     /**
      * Returns the clone of the object.
      *
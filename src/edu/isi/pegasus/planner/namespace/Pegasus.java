@@ -949,6 +949,8 @@ public class Pegasus extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return (mProfileMap == null) ? new Pegasus() : new Pegasus(this.mProfileMap);
+        Pegasus ns = new Pegasus();
+        ns.mProfileMap = this.cloneProfileMap();
+        return ns;
     }
 }
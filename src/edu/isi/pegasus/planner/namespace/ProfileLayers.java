@@ -0,0 +1,185 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.namespace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interns the frozen layers of profiles that are shared between the namespaces of many jobs, such
+ * as the site, transformation catalog and properties profiles. There is one table per namespace
+ * implementation, indexed by the profiles before they are checked into the namespace.
+ *
+ * <p>A layer is only shared if checking the profiles into a namespace does not depend on what is
+ * already in the namespace. This is determined once per layer, by checking the profiles into an
+ * empty namespace, and into a namespace that already has a value for every key involved. Profiles
+ * that are merged with existing values, deprecated keys and empty values fail this check, and are
+ * checked into each job as before.
+ *
+ * @version $Revision$
+ */
+class ProfileLayers {
+
+    /** The maximum number of layers interned per namespace implementation. */
+    public static final int MAXIMUM_LAYERS = 256;
+
+    /** The prefix of the values put into a namespace to detect profiles that read them. */
+    private static final String SENTINEL = "\u0000layer-probe:";
+
+    /** The tables of interned layers, indexed by namespace implementation. */
+    private static final Map<Class, Map<List<String>, Layer>> TABLES =
+            new HashMap<Class, Map<List<String>, Layer>>();
+
+    /**
+     * Returns the shared layer for profiles that are to be checked into a namespace, overriding
+     * what is already in the namespace.
+     *
+     * @param namespace the namespace into which the profiles are to be checked.
+     * @param profiles the profiles indexed by key.
+     * @return the layer, or null if the profiles cannot be shared as a layer.
+     */
+    public static Map<String, String> lookupOverride(Namespace namespace, Map profiles) {
+        Layer layer = lookup(namespace, profiles);
+        return (layer.mOverride) ? layer.mEntries : null;
+    }
+
+    /**
+     * Returns the shared layer for profiles that are to be checked into a namespace, only for keys
+     * that are not already in the namespace.
+     *
+     * @param namespace the namespace into which the profiles are to be checked.
+     * @param profiles the profiles indexed by key.
+     * @return the layer, or null if the profiles cannot be shared as a layer.
+     */
+    public static Map<String, String> lookupDefault(Namespace namespace, Map profiles) {
+        Layer layer = lookup(namespace, profiles);
+        return (layer.mDefault) ? layer.mEntries : null;
+    }
+
+    private static synchronized Layer lookup(Namespace namespace, Map profiles) {
+        Class c = namespace.getClass();
+        Map<List<String>, Layer> table = TABLES.get(c);
+        if (table == null) {
+            table =
+                    new LinkedHashMap<List<String>, Layer>(16, 0.75f, true) {
+                        protected boolean removeEldestEntry(Map.Entry<List<String>, Layer> eldest) {
+                            return size() > MAXIMUM_LAYERS;
+                        }
+                    };
+            TABLES.put(c, table);
+        }
+        // the order of the profiles matters for namespaces in insertion order
+        Map<String, String> copy = copy(profiles);
+        List<String> key = new ArrayList<String>(2 * copy.size());
+        for (Map.Entry<String, String> entry : copy.entrySet()) {
+            key.add(entry.getKey());
+            key.add(entry.getValue());
+        }
+        Layer layer = table.get(key);
+        if (layer == null) {
+            layer = probe(c, copy);
+            table.put(key, layer);
+        }
+        return layer;
+    }
+
+    /**
+     * Checks the profiles into an empty namespace, and into a namespace that has a sentinel value
+     * for every key involved, to determine whether the result can be shared.
+     *
+     * @param c the namespace implementation.
+     * @param profiles the profiles.
+     * @return the layer
+     */
+    private static Layer probe(Class c, Map<String, String> profiles) {
+        Namespace empty;
+        Namespace populated;
+        try {
+            empty = (Namespace) c.newInstance();
+            populated = (Namespace) c.newInstance();
+        } catch (Exception e) {
+            return new Layer(null, false, false);
+        }
+        checkIn(empty, profiles);
+        Map<String, String> entries = copy(empty);
+
+        Set<String> keys = new LinkedHashSet<String>(profiles.keySet());
+        keys.addAll(entries.keySet());
+        for (String key : keys) {
+            populated.construct(key, SENTINEL + key);
+        }
+        Map<String, String> expected = copy(populated);
+        expected.putAll(entries);
+        checkIn(populated, profiles);
+        boolean override = copy(populated).equals(expected);
+
+        // as a default, every profile has to be put as is
+        boolean dflt = override;
+        for (Iterator<Map.Entry<String, String>> it = entries.entrySet().iterator();
+                dflt && it.hasNext(); ) {
+            Map.Entry<String, String> entry = it.next();
+            dflt =
+                    entry.getValue() != null
+                            && entry.getValue().equals(profiles.get(entry.getKey()));
+        }
+        return new Layer(Collections.unmodifiableMap(entries), override, dflt);
+    }
+
+    private static void checkIn(Namespace namespace, Map<String, String> profiles) {
+        for (Map.Entry<String, String> entry : profiles.entrySet()) {
+            namespace.checkKeyInNS(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static Map<String, String> copy(Namespace namespace) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Iterator it = namespace.getProfileKeyIterator(); it.hasNext(); ) {
+            String key = (String) it.next();
+            result.put(key, (String) namespace.get(key));
+        }
+        return result;
+    }
+
+    private static Map<String, String> copy(Map profiles) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Iterator it = profiles.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            result.put((String) entry.getKey(), (String) entry.getValue());
+        }
+        return result;
+    }
+
+    /** An interned layer, and whether it can be shared. */
+    private static class Layer {
+
+        private final Map<String, String> mEntries;
+
+        private final boolean mOverride;
+
+        private final boolean mDefault;
+
+        Layer(Map<String, String> entries, boolean override, boolean dflt) {
+            mEntries = entries;
+            mOverride = override;
+            mDefault = dflt;
+        }
+    }
+}
@@ -196,6 +196,8 @@ public class Selector extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return (mProfileMap == null ? new Selector() : new Selector(this.mProfileMap));
+        Selector ns = new Selector();
+        ns.mProfileMap = this.cloneProfileMap();
+        return ns;
     }
 }
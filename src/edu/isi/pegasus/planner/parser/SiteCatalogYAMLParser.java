@@ -27,7 +27,6 @@ import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.common.VariableExpansionReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashSet;
@@ -116,7 +115,7 @@ public class SiteCatalogYAMLParser extends YAMLParser {
             // first attempt to validate
             if (validate(f, SCHEMA_FILENAME, "site")) {
                 // validation succeeded. load.
-                Reader reader = new VariableExpansionReader(new FileReader(f));
+                Reader reader = new VariableExpansionReader(f);
                 ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
                 mapper.configure(MapperFeature.ALLOW_COERCION_OF_SCALARS, false);
                 SiteStore store = mapper.readValue(reader, SiteStore.class);
@@ -23,7 +23,6 @@ import edu.isi.pegasus.planner.catalog.transformation.classes.TransformationStor
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.common.VariableExpansionReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 
@@ -133,7 +132,7 @@ public class TransformationCatalogYAMLParser extends YAMLParser {
             // first attempt to validate
             if (validate(f, SCHEMA_FILENAME, "transformation")) {
                 // validation succeeded. load.
-                Reader reader = new VariableExpansionReader(new FileReader(f));
+                Reader reader = new VariableExpansionReader(f);
                 ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
                 mapper.configure(MapperFeature.ALLOW_COERCION_OF_SCALARS, false);
                 store = mapper.readValue(reader, TransformationStore.class);
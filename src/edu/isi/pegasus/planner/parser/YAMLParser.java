@@ -28,7 +28,6 @@ import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.common.VariableExpansionReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.List;
@@ -80,7 +79,7 @@ public abstract class YAMLParser {
         boolean validate = true;
         Reader reader = null;
         try {
-            reader = new VariableExpansionReader(new FileReader(f));
+            reader = new VariableExpansionReader(f);
         } catch (IOException ioe) {
             mLogger.log("IO Error :" + ioe.getMessage(), LogManager.ERROR_MESSAGE_LEVEL);
         }
@@ -103,22 +102,63 @@ public abstract class YAMLParser {
             // schema validation is done here.. in case of any validation error we throw the
             // result..
             if (!result.isSuccess()) {
-                List<String> errors = result.getErrorMessage();
-                StringBuilder errorResult = new StringBuilder();
-                int i = 1;
-                for (String error : errors) {
-                    if (i > 1) {
-                        errorResult.append(",");
-                    }
-                    errorResult.append("Error ").append(i++).append(":{");
-                    errorResult.append(error).append("}");
-                }
-                throw new ScannerException(errorResult.toString());
+                throw new ScannerException(this.errorMessage("", result));
             }
         }
         return validate;
     }
 
+    /**
+     * Validates a fragment of a document against the part of the schema that describes it. Used by
+     * parsers that stream through a document, to validate it in the same pass as the parsing.
+     *
+     * @param node the fragment to validate
+     * @param schemaFile the schema file
+     * @param pointer the JSON pointer to the fragment definition in the schema
+     * @param catalogType the type of the catalog
+     * @param location the path to the fragment in the document, for example $.jobs[3]
+     * @param line the line number in the document where the fragment starts
+     * @throws ScannerException in case of validation errors
+     */
+    protected void validate(
+            JsonNode node,
+            File schemaFile,
+            String pointer,
+            String catalogType,
+            String location,
+            int line) {
+        YAMLSchemaValidationResult result =
+                YAMLSchemaValidator.getInstance().validate(node, schemaFile, pointer, catalogType);
+        if (!result.isSuccess()) {
+            throw new ScannerException(line, this.errorMessage(location, result));
+        }
+    }
+
+    /**
+     * Builds a single error message from the errors in a validation result.
+     *
+     * @param location the path to the validated node, that replaces the $ in the errors
+     * @param result the validation result
+     * @return the error message
+     */
+    private String errorMessage(String location, YAMLSchemaValidationResult result) {
+        List<String> errors = result.getErrorMessage();
+        StringBuilder errorResult = new StringBuilder();
+        int i = 1;
+        for (String error : errors) {
+            if (i > 1) {
+                errorResult.append(",");
+            }
+            errorResult.append("Error ").append(i++).append(":{");
+            if (!location.isEmpty() && error.startsWith("$")) {
+                // errors are relative to the validated node
+                error = location + error.substring(1);
+            }
+            errorResult.append(error).append("}");
+        }
+        return errorResult.toString();
+    }
+
     /**
      * This method is used to extract the necessary information from the parsing exception
      *
@@ -27,7 +27,9 @@ import java.io.File;
 import java.net.URI;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class if used to yaml object against the specified schema..
@@ -38,7 +40,15 @@ public class YAMLSchemaValidator {
 
     private static final YAMLSchemaValidator INSTANCE = new YAMLSchemaValidator();
 
-    private YAMLSchemaValidator() {}
+    /**
+     * Compiled schemas for fragments of a document, indexed by the schema URI and the JSON pointer
+     * to the fragment.
+     */
+    private final Map<String, JsonSchema> mFragmentSchemas;
+
+    private YAMLSchemaValidator() {
+        mFragmentSchemas = new ConcurrentHashMap<String, JsonSchema>();
+    }
 
     /** Singleton Class */
     public static YAMLSchemaValidator getInstance() {
@@ -69,6 +79,41 @@ public class YAMLSchemaValidator {
         return processValidation(jsonNode, messages, catalogType);
     }
 
+    /**
+     * Validates a fragment of a yaml document, against the part of the schema that describes it.
+     * This allows a document to be validated piece by piece, while it is being parsed, without
+     * holding the complete document in memory. The schema for a fragment is compiled once, and
+     * reused for all later fragments.
+     *
+     * @param jsonNode the root of the json node tree representing the fragment
+     * @param schemaFile this represents the schema file for validation.
+     * @param pointer the JSON pointer to the fragment definition in the schema, for example
+     *     /properties/jobs/items
+     * @param catalogType whether the transformation catalog or the site catalog
+     * @return YAMLSchemaValidationResult - A result representing the success/failure along with the
+     *     errors if any.
+     */
+    public YAMLSchemaValidationResult validate(
+            JsonNode jsonNode, File schemaFile, String pointer, String catalogType) {
+        URI schemaUri = schemaFile.toURI();
+        String ref = schemaUri + "#" + pointer;
+        JsonSchema schema = mFragmentSchemas.get(ref);
+        if (schema == null) {
+            ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+            JsonSchemaFactory factory =
+                    JsonSchemaFactory.builder(
+                                    JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7))
+                            .objectMapper(mapper)
+                            .build();
+            // a schema that only refers to the fragment, resolved relative to the
+            // schema file so that references to common.yml still work
+            schema = factory.getSchema(schemaUri, mapper.createObjectNode().put("$ref", ref));
+            mFragmentSchemas.put(ref, schema);
+        }
+        Set<ValidationMessage> messages = schema.validate(jsonNode);
+        return processValidation(jsonNode, messages, catalogType);
+    }
+
     /**
      * This method is used to extract the result for any possible errors..
      *
@@ -106,9 +106,9 @@ public class DAX2CDAG implements Callback {
      * @param dax the path to the DAX file.
      */
     public void initialize(PegasusBag bag, String dax) {
-        mDag = new ADag();
-        mJobMap = new HashMap<String, String>();
         mProps = bag.getPegasusProperties();
+        mDag = new ADag(mProps);
+        mJobMap = new HashMap<String, String>();
         mLogger = bag.getLogger();
         mDone = false;
         this.mJobPrefix =
@@ -218,8 +218,7 @@ public class DAX2CDAG implements Callback {
             // add all the dependant executables and data files
             for (PegasusFile pf : ct.getDependantFiles()) {
                 job.addInputFile(pf);
-                String lfn = pf.getLFN();
-                dinfo.updateLFNMap(job.logicalId, lfn, 'i');
+                dinfo.updateLFNMap(job.logicalId, pf, 'i');
             }
             job.addNotifications(ct.getNotifications());
         }
@@ -227,8 +226,8 @@ public class DAX2CDAG implements Callback {
         // put the input files in the map
         for (Iterator it = job.inputFiles.iterator(); it.hasNext(); ) {
             PegasusFile pf = (PegasusFile) it.next();
-            String lfn = pf.getLFN();
-            dinfo.updateLFNMap(job.logicalId, lfn, 'i');
+            // share the canonical lfn and its id across all the jobs referring to the file
+            dinfo.updateLFNMap(job.logicalId, pf, 'i');
         }
 
         for (Iterator it = job.outputFiles.iterator(); it.hasNext(); ) {
@@ -248,9 +247,9 @@ public class DAX2CDAG implements Callback {
                 throw new RuntimeException(
                         "File " + lfn + " is listed as input and output for job " + job.getID());
             }
-            dinfo.updateLFNMap(job.logicalId, lfn, 'o');
+            dinfo.updateLFNMap(job.logicalId, pf, 'o');
             if (this.mAddDataDependencies) {
-                mFileCreationMap.put(lfn, job);
+                mFileCreationMap.put(pf.getLFN(), job);
             }
         }
     }
@@ -50,7 +50,6 @@ import edu.isi.pegasus.planner.dax.PFN;
 import edu.isi.pegasus.planner.parser.StackBasedXMLParser;
 import edu.isi.pegasus.planner.parser.XMLParser;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -172,7 +171,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
             // PM-831 set up the parser with our own reader
             // that allows for parameter expansion before
             // doing any XML processing
-            InputSource is = new InputSource(new VariableExpansionReader(new FileReader(file)));
+            InputSource is = new InputSource(new VariableExpansionReader(new File(file)));
             mParser.parse(is);
 
             // sanity check
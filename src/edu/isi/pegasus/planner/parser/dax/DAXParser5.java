@@ -17,6 +17,7 @@ import static edu.isi.pegasus.planner.parser.SiteCatalogYAMLParser.SCHEMA_URI;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.InjectableValues;
@@ -24,6 +25,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.catalog.replica.classes.ReplicaStore;
@@ -39,16 +41,18 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.common.VariableExpansionReader;
 import edu.isi.pegasus.planner.dax.Invoke;
 import edu.isi.pegasus.planner.namespace.Metadata;
+import edu.isi.pegasus.planner.parser.ScannerException;
 import edu.isi.pegasus.planner.parser.YAMLParser;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /** @author Karan Vahi */
 @JsonDeserialize(using = DAXParser5.YAMLStreamingDeserializer.class)
@@ -69,6 +73,12 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
     /** File object of the schema.. */
     private final File SCHEMA_FILENAME;
 
+    /** Whether the workflow is parsed in the streaming mode. */
+    private final boolean mStream;
+
+    /** Whether jobs and dependencies are validated as they are streamed. */
+    private final boolean mValidate;
+
     /**
      * The overloaded constructor. The schema version passed is determined in the DAXFactory
      *
@@ -81,6 +91,8 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
         File schemaDir = this.mProps.getSchemaDir();
         File yamlSchemaDir = new File(schemaDir, "yaml");
         SCHEMA_FILENAME = new File(yamlSchemaDir, new File(SCHEMA_URI).getName());
+        mStream = this.mProps.streamWorkflowParsing();
+        mValidate = this.mProps.validateStreamedWorkflow();
     }
 
     /**
@@ -94,6 +106,19 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
         return this.validate(new File(workflow), SCHEMA_FILENAME, "workflow");
     }
 
+    /**
+     * Validates a fragment of the workflow that is being streamed, against the part of the Workflow
+     * Schema that describes it.
+     *
+     * @param node the fragment
+     * @param pointer the JSON pointer to the fragment definition in the schema
+     * @param location the path to the fragment in the workflow
+     * @param line the line number where the fragment starts
+     */
+    protected void validate(JsonNode node, String pointer, String location, int line) {
+        this.validate(node, SCHEMA_FILENAME, pointer, "workflow", location, line);
+    }
+
     /**
      * Set the DAXCallback for the parser to call out to.
      *
@@ -120,7 +145,7 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
     public void parse(String file) {
         Reader reader;
         try {
-            reader = new VariableExpansionReader(new FileReader(file));
+            reader = new VariableExpansionReader(new File(file));
         } catch (IOException ioe) {
             throw new RuntimeException("Exception while reading file " + file);
         }
@@ -135,22 +160,35 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
     }
 
     /**
-     * Set the Callback as an injectable value to insert into the Deserializer via Jackson.
+     * Set the Callback and the parser as injectable values to insert into the Deserializer via
+     * Jackson.
      *
      * @return
      */
     private InjectableValues injectCallback() {
-        return new InjectableValues.Std().addValue("callback", this.mCallback);
+        return new InjectableValues.Std()
+                .addValue("callback", this.mCallback)
+                .addValue("parser", this);
     }
 
     /**
      * Deserializer class that preserves the callback interface used for parsing the XML parsers.
      * Invokes callback functions during deserialization of the document.
      *
+     * <p>By default the complete document is read into a tree before the callbacks are invoked. In
+     * the streaming mode, the top level keys are walked token by token, and only one job or
+     * dependency is held in memory at a time. The jobs and dependencies are validated against the
+     * workflow schema as they are read, if validation is enabled.
+     *
      * @author Karan Vahi
      */
     static class YAMLStreamingDeserializer extends PegasusJsonDeserializer<DAXParser5> {
 
+        /** The keys that are required at the top level of the workflow. */
+        private static final WorkflowKeywords[] REQUIRED_KEYS = {
+            WorkflowKeywords.PEGASUS, WorkflowKeywords.NAME, WorkflowKeywords.JOBS
+        };
+
         @Override
         public DAXParser5 deserialize(JsonParser parser, DeserializationContext dc)
                 throws IOException, JsonProcessingException {
@@ -158,143 +196,240 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
             if (c == null) {
                 throw new RuntimeException("Callback not initialized when parsing inititated");
             }
-            ObjectCodec oc = parser.getCodec();
-            JsonNode node = oc.readTree(parser);
-
+            DAXParser5 daxParser = (DAXParser5) dc.findInjectableValue("parser", null, null);
             Map attrs = new HashMap();
             attrs.put("index", "0");
-            for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
-                Map.Entry<String, JsonNode> e = it.next();
-                String key = e.getKey();
+            if (daxParser != null && daxParser.mStream) {
+                this.stream(parser, c, daxParser, attrs);
+            } else {
+                ObjectCodec oc = parser.getCodec();
+                JsonNode node = oc.readTree(parser);
+                for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+                    Map.Entry<String, JsonNode> e = it.next();
+                    this.handle(c, oc, e.getKey(), e.getValue(), attrs, node);
+                }
+            }
+            c.cbDone();
+            return null;
+        }
 
-                WorkflowKeywords reservedKey = WorkflowKeywords.getReservedKey(key);
+        /**
+         * Walks the top level keys of the workflow token by token. The jobs and job dependencies
+         * are materialized and passed to the callback one element at a time, while the values of
+         * the other keys are read as trees and handled as in the default mode.
+         *
+         * @param parser the parser positioned at the start of the workflow
+         * @param c the callback
+         * @param daxParser the DAX parser, used for validating the fragments
+         * @param attrs the document attributes
+         * @throws IOException
+         */
+        private void stream(JsonParser parser, Callback c, DAXParser5 daxParser, Map attrs)
+                throws IOException {
+            ObjectCodec oc = parser.getCodec();
+            if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException(
+                        WorkflowKeywords.WORKFLOW + ": value should be of type object ");
+            }
+            Set<String> keys = new HashSet();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                keys.add(key);
 
-                if (reservedKey == null) {
-                    if (key.startsWith("x-")) {
-                        // ignore any user defined extensions
-                        // example x-: {apiLang: python, createdBy: bamboo, createdOn: '07-10-20
-                        // 11:09:29'}
-                        continue;
+                WorkflowKeywords reservedKey = WorkflowKeywords.getReservedKey(key);
+                if (reservedKey == WorkflowKeywords.JOBS
+                        || reservedKey == WorkflowKeywords.JOB_DEPENDENCIES) {
+                    if (token != JsonToken.START_ARRAY) {
+                        throw new RuntimeException(key + ": value should be of type array ");
                     }
-                    this.complainForIllegalKey(
-                            WorkflowKeywords.WORKFLOW.getReservedName(), key, node);
-                }
-                switch (reservedKey) {
-                    case PEGASUS:
-                        attrs.put("version", node.get(key).asText());
-                        break;
-
-                    case X_PEGASUS:
-                        JsonNode pegasusExtensionsNode = node.get(key);
-                        ObjectMapper mapper = new ObjectMapper();
-                        Map<String, String> m =
-                                mapper.convertValue(pegasusExtensionsNode, Map.class);
-                        if (m.containsKey(API_LANG_KEY)) {
-                            // PM-1654 encode apiLang to dax.api key as metadata so
-                            // that planner metrics can be populated and sent to the
-                            // metrics server
-                            c.cbMetadata(
-                                    new Profile(
-                                            Profile.METADATA,
-                                            Metadata.WF_API_KEY,
-                                            m.get(API_LANG_KEY)));
-                        }
-                        break;
-
-                    case METADATA:
-                        for (Profile p : this.createMetadata(node.get(key))) {
-                            c.cbMetadata(p);
-                        }
-                        break;
-
-                    case NAME:
-                        attrs.put("name", node.get(key).asText());
-                        c.cbDocument(attrs);
-                        break;
-
-                    case REPLICA_CATALOG:
-                        JsonNode rcNode = node.get(key);
-                        if (rcNode != null) {
-                            parser = rcNode.traverse(oc);
-                            ReplicaStore store = parser.readValueAs(ReplicaStore.class);
-                            c.cbReplicaStore(store);
+                    String pointer = "/properties/" + key + "/items";
+                    int index = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        int line = parser.getCurrentLocation().getLineNr();
+                        JsonNode element = oc.readTree(parser);
+                        if (daxParser.mValidate) {
+                            daxParser.validate(
+                                    element, pointer, "$." + key + "[" + index + "]", line);
                         }
-                        break;
-
-                    case SITE_CATALOG:
-                        JsonNode scNode = node.get(key);
-                        if (scNode != null) {
-                            parser = scNode.traverse(oc);
-                            SiteStore store = parser.readValueAs(SiteStore.class);
-                            c.cbSiteStore(store);
-                        }
-                        break;
-
-                    case TRANSFORMATION_CATALOG:
-                        JsonNode tcNode = node.get(key);
-                        if (tcNode != null) {
-                            parser = tcNode.traverse(oc);
-                            TransformationStore store =
-                                    parser.readValueAs(TransformationStore.class);
-                            c.cbTransformationStore(store);
+                        if (reservedKey == WorkflowKeywords.JOBS) {
+                            this.job(c, oc, element);
+                        } else {
+                            this.dependency(c, element);
                         }
-                        break;
-
-                    case HOOKS:
-                        JsonNode hooksNode = node.get(key);
-                        if (hooksNode != null) {
-                            parser = hooksNode.traverse(oc);
-                            Notifications notifications = parser.readValueAs(Notifications.class);
-                            for (Invoke.WHEN when : Invoke.WHEN.values()) {
-                                for (Invoke i : notifications.getNotifications(when)) {
-                                    c.cbWfInvoke(i);
-                                }
+                        index++;
+                    }
+                } else {
+                    int line = parser.getCurrentLocation().getLineNr();
+                    JsonNode value = oc.readTree(parser);
+                    if (value == null) {
+                        value = NullNode.getInstance();
+                    }
+                    if (daxParser.mValidate && reservedKey != null && !key.startsWith("x-")) {
+                        daxParser.validate(value, "/properties/" + key, "$." + key, line);
+                    }
+                    this.handle(c, oc, key, value, attrs, value);
+                }
+            }
+            if (daxParser.mValidate) {
+                for (WorkflowKeywords required : REQUIRED_KEYS) {
+                    if (!keys.contains(required.getReservedName())) {
+                        throw new ScannerException(
+                                "Error 1:{$."
+                                        + required.getReservedName()
+                                        + ": is missing but it is required}");
+                    }
+                }
+            }
+        }
+
+        /**
+         * Handles the value of a top level key in the workflow, invoking the appropriate callbacks.
+         *
+         * @param c the callback
+         * @param oc the codec to use for deserializing the value
+         * @param key the top level key
+         * @param value the value of the key
+         * @param attrs the document attributes
+         * @param node the node to refer to in error messages
+         * @throws IOException
+         */
+        private void handle(
+                Callback c, ObjectCodec oc, String key, JsonNode value, Map attrs, JsonNode node)
+                throws IOException {
+            JsonParser parser;
+            WorkflowKeywords reservedKey = WorkflowKeywords.getReservedKey(key);
+
+            if (reservedKey == null) {
+                if (key.startsWith("x-")) {
+                    // ignore any user defined extensions
+                    // example x-: {apiLang: python, createdBy: bamboo, createdOn: '07-10-20
+                    // 11:09:29'}
+                    return;
+                }
+                this.complainForIllegalKey(WorkflowKeywords.WORKFLOW.getReservedName(), key, node);
+            }
+            switch (reservedKey) {
+                case PEGASUS:
+                    attrs.put("version", value.asText());
+                    break;
+
+                case X_PEGASUS:
+                    ObjectMapper mapper = new ObjectMapper();
+                    Map<String, String> m = mapper.convertValue(value, Map.class);
+                    if (m.containsKey(API_LANG_KEY)) {
+                        // PM-1654 encode apiLang to dax.api key as metadata so
+                        // that planner metrics can be populated and sent to the
+                        // metrics server
+                        c.cbMetadata(
+                                new Profile(
+                                        Profile.METADATA,
+                                        Metadata.WF_API_KEY,
+                                        m.get(API_LANG_KEY)));
+                    }
+                    break;
+
+                case METADATA:
+                    for (Profile p : this.createMetadata(value)) {
+                        c.cbMetadata(p);
+                    }
+                    break;
+
+                case NAME:
+                    attrs.put("name", value.asText());
+                    c.cbDocument(attrs);
+                    break;
+
+                case REPLICA_CATALOG:
+                    if (value != null) {
+                        parser = value.traverse(oc);
+                        ReplicaStore store = parser.readValueAs(ReplicaStore.class);
+                        c.cbReplicaStore(store);
+                    }
+                    break;
+
+                case SITE_CATALOG:
+                    if (value != null) {
+                        parser = value.traverse(oc);
+                        SiteStore store = parser.readValueAs(SiteStore.class);
+                        c.cbSiteStore(store);
+                    }
+                    break;
+
+                case TRANSFORMATION_CATALOG:
+                    if (value != null) {
+                        parser = value.traverse(oc);
+                        TransformationStore store = parser.readValueAs(TransformationStore.class);
+                        c.cbTransformationStore(store);
+                    }
+                    break;
+
+                case HOOKS:
+                    if (value != null) {
+                        parser = value.traverse(oc);
+                        Notifications notifications = parser.readValueAs(Notifications.class);
+                        for (Invoke.WHEN when : Invoke.WHEN.values()) {
+                            for (Invoke i : notifications.getNotifications(when)) {
+                                c.cbWfInvoke(i);
                             }
                         }
-                        break;
-
-                    case JOBS:
-                        JsonNode jobsNode = node.get(key);
-                        if (jobsNode.isArray()) {
-                            for (JsonNode jobNode : jobsNode) {
-                                parser = jobNode.traverse(oc);
-                                Job job = parser.readValueAs(Job.class);
-                                c.cbJob(job);
-                            }
-                        } else {
-                            throw new RuntimeException("jobs: value should be of type array ");
+                    }
+                    break;
+
+                case JOBS:
+                    if (value.isArray()) {
+                        for (JsonNode jobNode : value) {
+                            this.job(c, oc, jobNode);
                         }
-                        break;
-
-                    case JOB_DEPENDENCIES:
-                        JsonNode dependenciesNode = node.get(key);
-                        if (dependenciesNode.isArray()) {
-                            for (JsonNode dependencyNode : dependenciesNode) {
-                                String jobID =
-                                        dependencyNode
-                                                .get(WorkflowKeywords.JOB_ID.getReservedName())
-                                                .asText();
-                                List<String> children =
-                                        this.createChildren(
-                                                dependencyNode.get(
-                                                        WorkflowKeywords.CHILDREN
-                                                                .getReservedName()));
-                                c.cbChildren(jobID, children);
-                            }
-                        } else {
-                            throw new RuntimeException(
-                                    WorkflowKeywords.JOB_DEPENDENCIES
-                                            + ": value should be of type array ");
+                    } else {
+                        throw new RuntimeException("jobs: value should be of type array ");
+                    }
+                    break;
+
+                case JOB_DEPENDENCIES:
+                    if (value.isArray()) {
+                        for (JsonNode dependencyNode : value) {
+                            this.dependency(c, dependencyNode);
                         }
-                        break;
+                    } else {
+                        throw new RuntimeException(
+                                WorkflowKeywords.JOB_DEPENDENCIES
+                                        + ": value should be of type array ");
+                    }
+                    break;
 
-                    default:
-                        this.complainForUnsupportedKey(
-                                WorkflowKeywords.WORKFLOW.getReservedName(), key, node);
-                }
+                default:
+                    this.complainForUnsupportedKey(
+                            WorkflowKeywords.WORKFLOW.getReservedName(), key, node);
             }
-            c.cbDone();
-            return null;
+        }
+
+        /**
+         * Deserializes a job and passes it to the callback.
+         *
+         * @param c the callback
+         * @param oc the codec to use for deserializing the job
+         * @param jobNode the node for the job
+         * @throws IOException
+         */
+        private void job(Callback c, ObjectCodec oc, JsonNode jobNode) throws IOException {
+            JsonParser parser = jobNode.traverse(oc);
+            Job job = parser.readValueAs(Job.class);
+            c.cbJob(job);
+        }
+
+        /**
+         * Passes the children of a job to the callback.
+         *
+         * @param c the callback
+         * @param dependencyNode the node for the dependency
+         */
+        private void dependency(Callback c, JsonNode dependencyNode) {
+            String jobID = dependencyNode.get(WorkflowKeywords.JOB_ID.getReservedName()).asText();
+            List<String> children =
+                    this.createChildren(
+                            dependencyNode.get(WorkflowKeywords.CHILDREN.getReservedName()));
+            c.cbChildren(jobID, children);
         }
 
         @Override
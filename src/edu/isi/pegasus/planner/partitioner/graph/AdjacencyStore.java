@@ -0,0 +1,335 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.Arrays;
+
+/**
+ * A CSR style store for one direction of the edges of a graph, whose nodes are identified by dense
+ * int indices. The neighbours of every node are held as a contiguous run in a single shared int
+ * pool, addressed by a start offset and a length per node. When the run of a node has to grow it is
+ * extended in place if it sits at the end of the pool, else relocated to the end. The holes left
+ * behind are reclaimed by compacting the pool once they outweigh the live entries.
+ *
+ * <p>The neighbours of a node are maintained in insertion order. The store does not check for
+ * duplicates, that is left to the caller.
+ *
+ * @version $Revision$
+ */
+public final class AdjacencyStore {
+
+    /** The initial capacity of the run for a node when the first neighbour is added. */
+    private static final int INITIAL_RUN_CAPACITY = 2;
+
+    /** The minimum number of pool slots after which compaction is considered. */
+    private static final int MIN_COMPACTION_SIZE = 1024;
+
+    /** The start offset into the pool for the run of each node. */
+    private int[] mStart;
+
+    /** The number of neighbours of each node. */
+    private int[] mLength;
+
+    /** The capacity of the run reserved for each node. */
+    private int[] mCapacity;
+
+    /** The shared pool holding the runs of all the nodes. */
+    private int[] mPool;
+
+    /** The index of the first unused slot at the end of the pool. */
+    private int mTop;
+
+    /** The number of slots in the pool that are no longer referred to by any node. */
+    private int mGarbage;
+
+    /** The total number of neighbours stored across all nodes. */
+    private int mEdges;
+
+    /** The default constructor. */
+    public AdjacencyStore() {
+        this(16, 32);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param nodes the expected number of nodes.
+     * @param edges the expected number of edges.
+     */
+    public AdjacencyStore(int nodes, int edges) {
+        nodes = Math.max(nodes, 1);
+        mStart = new int[nodes];
+        mLength = new int[nodes];
+        mCapacity = new int[nodes];
+        mPool = new int[Math.max(edges, INITIAL_RUN_CAPACITY)];
+        mTop = 0;
+        mGarbage = 0;
+        mEdges = 0;
+    }
+
+    /**
+     * Ensures that the store can hold neighbours for the nodes with index less than the value
+     * passed.
+     *
+     * @param nodes the number of nodes
+     */
+    public void ensureNodeCapacity(int nodes) {
+        if (nodes > mStart.length) {
+            int capacity = Math.max(nodes, mStart.length + (mStart.length >> 1));
+            mStart = Arrays.copyOf(mStart, capacity);
+            mLength = Arrays.copyOf(mLength, capacity);
+            mCapacity = Arrays.copyOf(mCapacity, capacity);
+        }
+    }
+
+    /**
+     * Appends a neighbour to the run of a node.
+     *
+     * @param node the index of the node
+     * @param neighbour the index of the neighbour
+     */
+    public void add(int node, int neighbour) {
+        this.ensureNodeCapacity(node + 1);
+        int length = mLength[node];
+        if (length == mCapacity[node]) {
+            this.grow(node);
+        }
+        mPool[mStart[node] + length] = neighbour;
+        mLength[node] = length + 1;
+        mEdges++;
+    }
+
+    /**
+     * Removes a neighbour from the run of a node, preserving the order of the remaining neighbours.
+     *
+     * @param node the index of the node
+     * @param neighbour the index of the neighbour
+     * @return boolean indicating whether the neighbour was removed or not.
+     */
+    public boolean remove(int node, int neighbour) {
+        int position = this.indexOf(node, neighbour);
+        if (position < 0) {
+            return false;
+        }
+        int start = mStart[node];
+        int length = mLength[node];
+        System.arraycopy(
+                mPool, start + position + 1, mPool, start + position, length - position - 1);
+        mLength[node] = length - 1;
+        mEdges--;
+        return true;
+    }
+
+    /**
+     * Returns the position of a neighbour in the run of a node.
+     *
+     * @param node the index of the node
+     * @param neighbour the index of the neighbour
+     * @return the position, else -1 if the neighbour is not present.
+     */
+    public int indexOf(int node, int neighbour) {
+        if (node >= mStart.length) {
+            return -1;
+        }
+        int start = mStart[node];
+        int end = start + mLength[node];
+        for (int i = start; i < end; i++) {
+            if (mPool[i] == neighbour) {
+                return i - start;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a boolean indicating whether a node has a particular neighbour.
+     *
+     * @param node the index of the node
+     * @param neighbour the index of the neighbour
+     * @return boolean
+     */
+    public boolean contains(int node, int neighbour) {
+        return this.indexOf(node, neighbour) >= 0;
+    }
+
+    /**
+     * Returns the number of neighbours of a node.
+     *
+     * @param node the index of the node
+     * @return the degree
+     */
+    public int degree(int node) {
+        return (node < mLength.length) ? mLength[node] : 0;
+    }
+
+    /**
+     * Returns the neighbour at a particular position in the run of a node.
+     *
+     * @param node the index of the node
+     * @param position the position in the run
+     * @return the index of the neighbour
+     */
+    public int get(int node, int position) {
+        if (position >= mLength[node]) {
+            throw new IndexOutOfBoundsException(
+                    "Position " + position + " for node with degree " + mLength[node]);
+        }
+        return mPool[mStart[node] + position];
+    }
+
+    /**
+     * Returns a copy of the neighbours of a node.
+     *
+     * @param node the index of the node
+     * @return int array of neighbour indices
+     */
+    public int[] neighbours(int node) {
+        int length = this.degree(node);
+        int[] result = new int[length];
+        if (length > 0) {
+            System.arraycopy(mPool, mStart[node], result, 0, length);
+        }
+        return result;
+    }
+
+    /**
+     * Removes all the neighbours of a node and releases its run.
+     *
+     * @param node the index of the node
+     */
+    public void clear(int node) {
+        if (node >= mStart.length) {
+            return;
+        }
+        mEdges -= mLength[node];
+        this.release(node);
+        this.compactIfRequired();
+    }
+
+    /** Removes all the neighbours of all the nodes. */
+    public void clear() {
+        Arrays.fill(mStart, 0);
+        Arrays.fill(mLength, 0);
+        Arrays.fill(mCapacity, 0);
+        mTop = 0;
+        mGarbage = 0;
+        mEdges = 0;
+    }
+
+    /**
+     * Returns the total number of neighbours stored.
+     *
+     * @return the number of edges
+     */
+    public int edges() {
+        return mEdges;
+    }
+
+    /**
+     * Returns the number of int slots in use by the pool, including holes.
+     *
+     * @return the pool size
+     */
+    public int poolSize() {
+        return mTop;
+    }
+
+    /**
+     * Rewrites the pool so that the runs of all the nodes are laid out contiguously in node order,
+     * with no spare capacity and no holes.
+     */
+    public void compact() {
+        int[] pool = new int[Math.max(mEdges, INITIAL_RUN_CAPACITY)];
+        int top = 0;
+        for (int node = 0; node < mStart.length; node++) {
+            int length = mLength[node];
+            if (length > 0) {
+                System.arraycopy(mPool, mStart[node], pool, top, length);
+            }
+            mStart[node] = (length > 0) ? top : 0;
+            mCapacity[node] = length;
+            top += length;
+        }
+        mPool = pool;
+        mTop = top;
+        mGarbage = 0;
+    }
+
+    /**
+     * Doubles the capacity of the run for a node, either in place if the run is at the end of the
+     * pool or by relocating it to the end of the pool.
+     *
+     * @param node the index of the node
+     */
+    private void grow(int node) {
+        int capacity = mCapacity[node];
+        int newCapacity = (capacity == 0) ? INITIAL_RUN_CAPACITY : capacity << 1;
+        int start = mStart[node];
+
+        if (capacity > 0 && start + capacity == mTop) {
+            // run is at the tail of the pool. extend in place
+            this.ensurePoolCapacity(start + newCapacity);
+            mTop = start + newCapacity;
+            mCapacity[node] = newCapacity;
+            return;
+        }
+
+        this.compactIfRequired();
+        start = mStart[node];
+        this.ensurePoolCapacity(mTop + newCapacity);
+        int length = mLength[node];
+        if (length > 0) {
+            System.arraycopy(mPool, start, mPool, mTop, length);
+        }
+        mGarbage += mCapacity[node];
+        mStart[node] = mTop;
+        mCapacity[node] = newCapacity;
+        mTop += newCapacity;
+    }
+
+    /**
+     * Releases the run associated with a node.
+     *
+     * @param node the index of the node
+     */
+    private void release(int node) {
+        if (mStart[node] + mCapacity[node] == mTop) {
+            mTop = mStart[node];
+        } else {
+            mGarbage += mCapacity[node];
+        }
+        mStart[node] = 0;
+        mLength[node] = 0;
+        mCapacity[node] = 0;
+    }
+
+    /** Compacts the pool if the holes in the pool outweigh the live slots. */
+    private void compactIfRequired() {
+        if (mTop > MIN_COMPACTION_SIZE && mGarbage > (mTop >> 1)) {
+            this.compact();
+        }
+    }
+
+    /**
+     * Ensures that the pool can hold the number of slots passed.
+     *
+     * @param size the required size
+     */
+    private void ensurePoolCapacity(int size) {
+        if (size > mPool.length) {
+            int capacity = Math.max(size, mPool.length + (mPool.length >> 1));
+            mPool = Arrays.copyOf(mPool, capacity);
+        }
+    }
+}
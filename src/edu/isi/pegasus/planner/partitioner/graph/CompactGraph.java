@@ -0,0 +1,1113 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+import edu.isi.pegasus.planner.classes.NameValue;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An implementation of the Graph that is geared towards very large workflows. Each node added to
+ * the graph is interned to a dense int index, and the edges are stored as int runs in two CSR style
+ * {@link AdjacencyStore} objects, one for the parents and one for the children. The nodes do not
+ * carry their own edge sets while they are part of the graph, and the traversals track their state
+ * in int arrays instead of maps.
+ *
+ * <p>The graph is transparent to code that works with the edges through the <code>GraphNode</code>
+ * API. Edges added between two nodes of the graph via {@link GraphNode#addChild(GraphNode)} or
+ * {@link GraphNode#addParent(GraphNode)} are stored in the graph, and are visible from both ends as
+ * soon as either half is added. Edges to nodes that are not (yet) part of the graph are held by the
+ * nodes themselves, and moved into the graph when the other end is added to it.
+ *
+ * <p>A node can be part of only one <code>CompactGraph</code> at a time.
+ *
+ * @version $Revision$
+ */
+public class CompactGraph implements Graph {
+
+    /** The default number of nodes the graph is sized for. */
+    private static final int DEFAULT_NODE_CAPACITY = 16;
+
+    /** The load factor for the table mapping node ids to indices. */
+    private static final float ID_TABLE_LOAD_FACTOR = 0.6f;
+
+    /**
+     * A read only view of the nodes in the graph indexed by their ids, so that the graph is
+     * serialized the same way as a <code>MapGraph</code>.
+     */
+    @Expose
+    @SerializedName("jobs")
+    private final Map<String, GraphNode> mNodeView;
+
+    /** The nodes in the graph indexed by their interned index. Removed nodes leave a null. */
+    private GraphNode[] mNodes;
+
+    /** The number of indices handed out so far. */
+    private int mIndices;
+
+    /** The number of nodes in the graph. */
+    private int mSize;
+
+    /**
+     * Open addressing table mapping the node ids to their index. Each slot holds the index plus
+     * one, with zero designating an empty slot.
+     */
+    private int[] mIDTable;
+
+    /** The parents of each node. */
+    private final AdjacencyStore mParents;
+
+    /** The children of each node. */
+    private final AdjacencyStore mChildren;
+
+    /** Handle to the cycle checker */
+    private final CycleChecker mCycleChecker;
+
+    /** The default constructor. */
+    public CompactGraph() {
+        this(DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param nodes the expected number of nodes in the graph.
+     */
+    public CompactGraph(int nodes) {
+        nodes = Math.max(nodes, DEFAULT_NODE_CAPACITY);
+        mNodes = new GraphNode[nodes];
+        mIndices = 0;
+        mSize = 0;
+        mIDTable = new int[tableSizeFor(nodes)];
+        mParents = new AdjacencyStore(nodes, nodes * 2);
+        mChildren = new AdjacencyStore(nodes, nodes * 2);
+        mCycleChecker = new CycleChecker(this);
+        mNodeView = new NodeMapView();
+    }
+
+    /**
+     * Adds a node to the Graph. It overwrites an already existing node with the same ID. The edges
+     * of the node being overwritten are carried over to the new node.
+     *
+     * @param node the node to be added to the Graph.
+     */
+    public void addNode(GraphNode node) {
+        CompactGraph owner = node.getCompactGraph();
+        if (owner == this) {
+            // node is already part of the graph
+            return;
+        }
+        if (owner != null) {
+            throw new RuntimeException(
+                    "Node " + node.getID() + " is already part of another compact graph");
+        }
+
+        int index = this.indexOf(node.getID());
+        if (index >= 0) {
+            // detach the existing node, but leave the edges at the index
+            GraphNode existing = mNodes[index];
+            existing.detach(
+                    new HashSet(this.getParents(existing)),
+                    new HashSet(this.getChildren(existing)));
+        } else {
+            index = mIndices++;
+            this.ensureNodeCapacity(mIndices);
+            this.putID(node.getID(), index);
+            mSize++;
+        }
+        mNodes[index] = node;
+
+        Set<GraphNode> localParents = node.getLocalParents();
+        Set<GraphNode> localChildren = node.getLocalChildren();
+        node.setLocalEdges(null, null);
+        node.attach(this, index);
+
+        // move the edges to nodes already in the graph from
+        // the node into the graph. the rest stay with the node
+        if (localParents != null) {
+            for (GraphNode parent : localParents) {
+                if (parent.getCompactGraph() == this) {
+                    this.addEdge(parent.getCompactIndex(), index);
+                    removeLocalChild(parent, node);
+                } else {
+                    node.addParent(parent);
+                }
+            }
+        }
+        if (localChildren != null) {
+            for (GraphNode child : localChildren) {
+                if (child.getCompactGraph() == this) {
+                    this.addEdge(index, child.getCompactIndex());
+                    removeLocalParent(child, node);
+                } else {
+                    node.addChild(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the node matching the id passed.
+     *
+     * @param identifier the id of the node.
+     * @return the node matching the ID else null.
+     */
+    public GraphNode getNode(String identifier) {
+        int index = this.indexOf(identifier);
+        return (index < 0) ? null : mNodes[index];
+    }
+
+    /**
+     * Adds a single root node to the Graph. All the exisitng roots of the Graph become children of
+     * the root.
+     *
+     * @param root the <code>GraphNode</code> to be added as a root.
+     * @throws RuntimeException if a node with the same id already exists.
+     */
+    public void addRoot(GraphNode root) {
+        // sanity check
+        if (this.indexOf(root.getID()) >= 0) {
+            throw new RuntimeException("Node with ID already exists:" + root.getID());
+        }
+
+        List<GraphNode> existingRoots = getRoots();
+        this.addNode(root);
+        for (GraphNode existing : existingRoots) {
+            this.addEdge(root, existing);
+        }
+    }
+
+    /**
+     * Resets all the dependencies in the Graph, while preserving the nodes. The resulting Graph is
+     * a graph of independent nodes.
+     */
+    public void resetEdges() {
+        mParents.clear();
+        mChildren.clear();
+        for (int i = 0; i < mIndices; i++) {
+            GraphNode node = mNodes[i];
+            if (node != null) {
+                node.setLocalEdges(null, null);
+            }
+        }
+    }
+
+    /**
+     * Removes a node from the Graph. The parents of the node become the parents of the children of
+     * the node.
+     *
+     * @param identifier the id of the node to be removed.
+     * @return boolean indicating whether the node was removed or not.
+     */
+    public boolean remove(String identifier) {
+        int index = this.indexOf(identifier);
+        if (index < 0) {
+            // node does not exist only.
+            return false;
+        }
+
+        GraphNode removalNode = mNodes[index];
+        Set<GraphNode> parents = new HashSet(removalNode.getParents());
+        Set<GraphNode> children = new HashSet(removalNode.getChildren());
+
+        for (GraphNode child : children) {
+            child.removeParent(removalNode);
+        }
+
+        for (GraphNode parent : parents) {
+            // for the parent the removal node is no longer a parent
+            parent.removeChild(removalNode);
+
+            // for each parent make the parent it's parent instead of removed node
+            for (GraphNode child : children) {
+                child.addParent(parent);
+                parent.addChild(child);
+            }
+        }
+
+        // the removed node retains the edges it had
+        // at the time of removal, similar to a MapGraph
+        this.removeID(identifier);
+        mParents.clear(index);
+        mChildren.clear(index);
+        mNodes[index] = null;
+        mSize--;
+        removalNode.detach(parents, children);
+        return true;
+    }
+
+    /**
+     * Returns the root nodes of the Graph.
+     *
+     * @return a list containing <code>GraphNode</code> corressponding to the root nodes.
+     */
+    public List<GraphNode> getRoots() {
+        List<GraphNode> roots = new ArrayList();
+        for (int i = 0; i < mIndices; i++) {
+            GraphNode node = mNodes[i];
+            if (node != null && mParents.degree(i) == 0 && isEmpty(node.getLocalParents())) {
+                roots.add(node);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Returns the leaf nodes of the Graph.
+     *
+     * @return a list containing <code>GraphNode</code> corressponding to the leaf nodes.
+     */
+    public List<GraphNode> getLeaves() {
+        List<GraphNode> leaves = new ArrayList();
+        for (int i = 0; i < mIndices; i++) {
+            GraphNode node = mNodes[i];
+            if (node != null && mChildren.degree(i) == 0 && isEmpty(node.getLocalChildren())) {
+                leaves.add(node);
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * Adds an edge between two already existing nodes in the graph.
+     *
+     * @param parent the parent node ID.
+     * @param child the child node ID.
+     */
+    public void addEdge(String parent, String child) {
+        // sanity check
+        if (parent.equals(child)) {
+            throw new IllegalArgumentException(
+                    "Invalid Edge Specification. An Edge specified from a node to itself  for "
+                            + parent);
+        }
+
+        int childIndex = this.indexOf(child);
+        int parentIndex = this.indexOf(parent);
+
+        String notExist = (childIndex < 0) ? child : (parentIndex < 0) ? parent : null;
+
+        if (notExist != null) {
+            /* should be replaced by Graph Exception */
+            throw new RuntimeException("The node with identifier doesnt exist " + notExist);
+        }
+
+        this.addEdge(parentIndex, childIndex);
+    }
+
+    /**
+     * Adds an edge between two already existing nodes in the graph.
+     *
+     * @param parent the parent node .
+     * @param child the child node .
+     */
+    public void addEdge(GraphNode parent, GraphNode child) {
+        if (parent.getCompactGraph() == this && child.getCompactGraph() == this) {
+            this.addEdge(parent.getCompactIndex(), child.getCompactIndex());
+        } else {
+            child.addParent(parent);
+            parent.addChild(child);
+        }
+    }
+
+    /**
+     * A convenience method that allows for bulk addition of edges between already existing nodes in
+     * the graph. The parents passed replace any existing parents of the child.
+     *
+     * @param child the child node ID
+     * @param parents list of parent identifiers as <code>String</code>.
+     */
+    public void addEdges(String child, List<String> parents) {
+        // sanity check
+        if (parents.contains(child)) {
+            throw new IllegalArgumentException(
+                    "Invalid Edge Specification. Parents "
+                            + parents
+                            + " include the child "
+                            + child);
+        }
+
+        int childIndex = this.indexOf(child);
+        if (childIndex < 0) {
+            /* should be replaced by Graph Exception */
+            throw new RuntimeException("The node with identifier doesnt exist " + child);
+        }
+
+        int[] parentIndices = new int[parents.size()];
+        int i = 0;
+        for (String parentID : parents) {
+            int parentIndex = this.indexOf(parentID);
+            if (parentIndex < 0) {
+                /* should be replaced by Graph Exception */
+                throw new RuntimeException("The node with identifier doesnt exist " + parentID);
+            }
+            parentIndices[i++] = parentIndex;
+        }
+
+        this.removeParents(mNodes[childIndex]);
+        for (int parentIndex : parentIndices) {
+            this.addEdge(parentIndex, childIndex);
+        }
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of edges between the nodes of the graph.
+     *
+     * @return the number of edges
+     */
+    public int edgeCount() {
+        return mChildren.edges();
+    }
+
+    /**
+     * Returns an iterator for the nodes in the Graph. The nodes are returned in the order they were
+     * added to the graph.
+     *
+     * @return Iterator
+     */
+    public Iterator<GraphNode> nodeIterator() {
+        return new NodeIterator();
+    }
+
+    /**
+     * Returns an iterator that traverses through the graph using a graph traversal algorithm. At
+     * any one time, only one iterator can iterate through the graph.
+     *
+     * @return Iterator through the nodes of the graph.
+     */
+    public Iterator<GraphNode> iterator() {
+        return new LevelIterator(mParents, mChildren, true);
+    }
+
+    /**
+     * Returns an iterator that traverses the graph bottom up from the leaves. At any one time, only
+     * one iterator can iterate through the graph.
+     *
+     * @return Iterator through the nodes of the graph.
+     */
+    public Iterator<GraphNode> bottomUpIterator() {
+        return new LevelIterator(mChildren, mParents, true);
+    }
+
+    /**
+     * Returns an iterator for the graph that traverses in topological sort order.
+     *
+     * @return Iterator through the nodes of the graph.
+     */
+    public Iterator<GraphNode> topologicalSortIterator() {
+        return new LevelIterator(mParents, mChildren, false);
+    }
+
+    /**
+     * Returns a boolean indicating whether a graph has cyclic edges or not.
+     *
+     * @return boolean
+     */
+    public boolean hasCycles() {
+        return this.mCycleChecker.hasCycles();
+    }
+
+    /**
+     * Returns the detected cyclic edge if , hasCycles returns true
+     *
+     * @return
+     */
+    public NameValue getCyclicEdge() {
+        return this.mCycleChecker.getCyclicEdge();
+    }
+
+    /**
+     * Returns a boolean if there are no nodes in the graph.
+     *
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Compacts the underlying edge stores, so that the edges of each node are laid out contiguously
+     * in node order. Useful to call once a large graph has been fully constructed.
+     */
+    public void compact() {
+        mParents.compact();
+        mChildren.compact();
+    }
+
+    /**
+     * The textual representation of the graph node.
+     *
+     * @return textual description.
+     */
+    public String toString() {
+        String newLine = System.getProperty("line.separator", "\r\n");
+        String indent = "\t";
+        StringBuffer sb = new StringBuffer(32);
+
+        for (Iterator<GraphNode> it = nodeIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            sb.append(newLine).append(indent).append("Job ->").append(node.getID());
+
+            // write out the node children
+            sb.append(" Children's {");
+            for (GraphNode child : node.getChildren()) {
+                sb.append(child.getID()).append(',');
+            }
+            sb.append("}");
+
+            // write out the node's parents
+            sb.append(" Parents {");
+            for (GraphNode parent : node.getParents()) {
+                sb.append(parent.getID()).append(',');
+            }
+            sb.append("}");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns a copy of the object.
+     *
+     * @return clone of the object.
+     */
+    public Object clone() {
+        return new java.lang.CloneNotSupportedException("Clone() not implemented in CompactGraph");
+    }
+
+    public void setGraphNodeReference(GraphNode node) {
+        // noop
+    }
+
+    /**
+     * Returns a live view of the parents of a node in the graph.
+     *
+     * @param node the node
+     * @return the parents
+     */
+    Collection<GraphNode> getParents(GraphNode node) {
+        return new EdgeView(node, true);
+    }
+
+    /**
+     * Returns a live view of the children of a node in the graph.
+     *
+     * @param node the node
+     * @return the children
+     */
+    Collection<GraphNode> getChildren(GraphNode node) {
+        return new EdgeView(node, false);
+    }
+
+    /**
+     * Removes the edge between two nodes in the graph, from both the ends.
+     *
+     * @param parent the parent node
+     * @param child the child node
+     */
+    void removeEdge(GraphNode parent, GraphNode child) {
+        int p = parent.getCompactIndex();
+        int c = child.getCompactIndex();
+        if (mChildren.remove(p, c)) {
+            mParents.remove(c, p);
+        }
+    }
+
+    /**
+     * Removes all the edges from a node to its parents in the graph.
+     *
+     * @param node the node
+     */
+    void removeParents(GraphNode node) {
+        int c = node.getCompactIndex();
+        for (int p : mParents.neighbours(c)) {
+            mChildren.remove(p, c);
+        }
+        mParents.clear(c);
+    }
+
+    /**
+     * Removes all the edges from a node to its children in the graph.
+     *
+     * @param node the node
+     */
+    void removeChildren(GraphNode node) {
+        int p = node.getCompactIndex();
+        for (int c : mChildren.neighbours(p)) {
+            mParents.remove(c, p);
+        }
+        mChildren.clear(p);
+    }
+
+    /**
+     * Adds an edge between two nodes identified by their indices, if it does not already exist.
+     *
+     * @param parent the index of the parent
+     * @param child the index of the child
+     */
+    private void addEdge(int parent, int child) {
+        // search the shorter of the two runs for an existing edge
+        boolean exists =
+                (mChildren.degree(parent) <= mParents.degree(child))
+                        ? mChildren.contains(parent, child)
+                        : mParents.contains(child, parent);
+        if (!exists) {
+            mChildren.add(parent, child);
+            mParents.add(child, parent);
+        }
+    }
+
+    /**
+     * Ensures that the node array can hold the number of nodes passed.
+     *
+     * @param nodes the number of nodes
+     */
+    private void ensureNodeCapacity(int nodes) {
+        if (nodes > mNodes.length) {
+            int capacity = Math.max(nodes, mNodes.length + (mNodes.length >> 1));
+            mNodes = Arrays.copyOf(mNodes, capacity);
+            mParents.ensureNodeCapacity(capacity);
+            mChildren.ensureNodeCapacity(capacity);
+        }
+    }
+
+    /**
+     * Returns the index for a node id.
+     *
+     * @param id the id of the node
+     * @return the index, else -1 if no node with the id exists.
+     */
+    private int indexOf(String id) {
+        int mask = mIDTable.length - 1;
+        for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+            int entry = mIDTable[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (mNodes[entry - 1].getID().equals(id)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Associates an index with a node id, that does not exist in the table.
+     *
+     * @param id the id of the node
+     * @param index the index
+     */
+    private void putID(String id, int index) {
+        if (mSize + 1 > mIDTable.length * ID_TABLE_LOAD_FACTOR) {
+            this.rehash(mIDTable.length << 1);
+        }
+        int mask = mIDTable.length - 1;
+        int slot = hash(id) & mask;
+        while (mIDTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        mIDTable[slot] = index + 1;
+    }
+
+    /**
+     * Removes a node id from the table, shifting back the entries that follow it in the probe
+     * sequence.
+     *
+     * @param id the id of the node
+     */
+    private void removeID(String id) {
+        int mask = mIDTable.length - 1;
+        int slot = hash(id) & mask;
+        while (mIDTable[slot] != 0 && !mNodes[mIDTable[slot] - 1].getID().equals(id)) {
+            slot = (slot + 1) & mask;
+        }
+        if (mIDTable[slot] == 0) {
+            return;
+        }
+        mIDTable[slot] = 0;
+        for (int next = (slot + 1) & mask; mIDTable[next] != 0; next = (next + 1) & mask) {
+            int entry = mIDTable[next];
+            int ideal = hash(mNodes[entry - 1].getID()) & mask;
+            // move the entry into the hole, if the hole lies cyclically
+            // between the ideal slot of the entry and where it sits now
+            boolean move =
+                    (slot <= next)
+                            ? (ideal <= slot || ideal > next)
+                            : (ideal <= slot && ideal > next);
+            if (move) {
+                mIDTable[slot] = entry;
+                mIDTable[next] = 0;
+                slot = next;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the id table with a new size.
+     *
+     * @param size the new size, a power of two.
+     */
+    private void rehash(int size) {
+        int[] table = new int[size];
+        int mask = size - 1;
+        for (int entry : mIDTable) {
+            if (entry != 0) {
+                int slot = hash(mNodes[entry - 1].getID()) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry;
+            }
+        }
+        mIDTable = table;
+    }
+
+    /**
+     * Spreads the hashcode of a node id.
+     *
+     * @param id the id
+     * @return the hash
+     */
+    private static int hash(String id) {
+        int h = id.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the size of the id table for the number of nodes passed.
+     *
+     * @param nodes the number of nodes
+     * @return a power of two
+     */
+    private static int tableSizeFor(int nodes) {
+        int size = 1;
+        while (size * ID_TABLE_LOAD_FACTOR < nodes + 1) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Removes a parent from the local edges of a node, releasing the local set if it becomes empty.
+     *
+     * @param node the node
+     * @param parent the parent to remove
+     */
+    private static void removeLocalParent(GraphNode node, GraphNode parent) {
+        Set<GraphNode> parents = node.getLocalParents();
+        if (parents != null && parents.remove(parent) && parents.isEmpty()) {
+            node.setLocalEdges(null, node.getLocalChildren());
+        }
+    }
+
+    /**
+     * Removes a child from the local edges of a node, releasing the local set if it becomes empty.
+     *
+     * @param node the node
+     * @param child the child to remove
+     */
+    private static void removeLocalChild(GraphNode node, GraphNode child) {
+        Set<GraphNode> children = node.getLocalChildren();
+        if (children != null && children.remove(child) && children.isEmpty()) {
+            node.setLocalEdges(node.getLocalParents(), null);
+        }
+    }
+
+    /**
+     * Returns whether a local edge set is empty.
+     *
+     * @param set the local edge set, can be null
+     * @return boolean
+     */
+    private static boolean isEmpty(Set<GraphNode> set) {
+        return set == null || set.isEmpty();
+    }
+
+    /**
+     * A live view of the parents or children of a node. It combines the edges stored in the graph
+     * with the edges the node holds locally to nodes outside the graph.
+     */
+    private class EdgeView extends AbstractCollection<GraphNode> {
+
+        /** The node whose edges are viewed. */
+        private final GraphNode mNode;
+
+        /** Whether the view is of the parents or the children. */
+        private final boolean mParentsView;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param node the node whose edges are viewed.
+         * @param parents whether the view is of the parents or the children.
+         */
+        EdgeView(GraphNode node, boolean parents) {
+            mNode = node;
+            mParentsView = parents;
+        }
+
+        public Iterator<GraphNode> iterator() {
+            return new EdgeIterator(this);
+        }
+
+        public int size() {
+            Set<GraphNode> local = this.local();
+            int size = (local == null) ? 0 : local.size();
+            return this.attached() ? size + this.store().degree(mNode.getCompactIndex()) : size;
+        }
+
+        public boolean isEmpty() {
+            return this.size() == 0;
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof GraphNode)) {
+                return false;
+            }
+            GraphNode other = (GraphNode) o;
+            if (this.attached() && other.getCompactGraph() == CompactGraph.this) {
+                return this.store().contains(mNode.getCompactIndex(), other.getCompactIndex());
+            }
+            Set<GraphNode> local = this.local();
+            return local != null && local.contains(other);
+        }
+
+        /**
+         * Returns whether the node is still part of the graph.
+         *
+         * @return boolean
+         */
+        boolean attached() {
+            return mNode.getCompactGraph() == CompactGraph.this;
+        }
+
+        /**
+         * Returns the adjacency store backing the view.
+         *
+         * @return the store
+         */
+        AdjacencyStore store() {
+            return mParentsView ? mParents : mChildren;
+        }
+
+        /**
+         * Returns the local edges of the node for the view.
+         *
+         * @return the local edge set, can be null.
+         */
+        Set<GraphNode> local() {
+            return mParentsView ? mNode.getLocalParents() : mNode.getLocalChildren();
+        }
+    }
+
+    /**
+     * Iterator over an edge view. It first traverses the edges stored in the graph, and then the
+     * edges held locally by the node.
+     */
+    private class EdgeIterator implements Iterator<GraphNode> {
+
+        /** The view being iterated. */
+        private final EdgeView mView;
+
+        /** The number of graph edges the iterator expects the node to have. */
+        private int mExpectedDegree;
+
+        /** The position of the next graph edge to be returned. */
+        private int mPosition;
+
+        /** The iterator over the local edges, once the graph edges are exhausted. */
+        private Iterator<GraphNode> mLocalIterator;
+
+        /** The node last returned, if it came from the graph edges. */
+        private GraphNode mLastFromGraph;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param view the view to iterate.
+         */
+        EdgeIterator(EdgeView view) {
+            mView = view;
+            mExpectedDegree =
+                    view.attached() ? view.store().degree(view.mNode.getCompactIndex()) : 0;
+            mPosition = 0;
+            mLocalIterator = null;
+        }
+
+        public boolean hasNext() {
+            if (mPosition < mExpectedDegree) {
+                return true;
+            }
+            return this.localIterator().hasNext();
+        }
+
+        public GraphNode next() {
+            if (mPosition < mExpectedDegree) {
+                int index = mView.mNode.getCompactIndex();
+                if (!mView.attached() || mView.store().degree(index) != mExpectedDegree) {
+                    throw new ConcurrentModificationException(
+                            "Edges of node " + mView.mNode.getID() + " modified during iteration");
+                }
+                mLastFromGraph = mNodes[mView.store().get(index, mPosition++)];
+                return mLastFromGraph;
+            }
+            mLastFromGraph = null;
+            return this.localIterator().next();
+        }
+
+        public void remove() {
+            if (mLastFromGraph == null) {
+                this.localIterator().remove();
+                return;
+            }
+            if (mView.mParentsView) {
+                removeEdge(mLastFromGraph, mView.mNode);
+            } else {
+                removeEdge(mView.mNode, mLastFromGraph);
+            }
+            mLastFromGraph = null;
+            mPosition--;
+            mExpectedDegree--;
+        }
+
+        /**
+         * Returns the iterator over the local edges of the node.
+         *
+         * @return Iterator
+         */
+        private Iterator<GraphNode> localIterator() {
+            if (mLocalIterator == null) {
+                Set<GraphNode> local = mView.local();
+                mLocalIterator =
+                        (local == null) ? new HashSet<GraphNode>().iterator() : local.iterator();
+            }
+            return mLocalIterator;
+        }
+    }
+
+    /** Iterator over the nodes of the graph in the order they were added. */
+    private class NodeIterator implements Iterator<GraphNode> {
+
+        /** The index of the next node to be returned. */
+        private int mNext;
+
+        /** The default constructor. */
+        NodeIterator() {
+            mNext = 0;
+            this.advance();
+        }
+
+        public boolean hasNext() {
+            this.advance();
+            return mNext < mIndices;
+        }
+
+        public GraphNode next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return mNodes[mNext++];
+        }
+
+        /** Method is not supported. */
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException("Method remove() not supported");
+        }
+
+        /** Skips over the indices of removed nodes. */
+        private void advance() {
+            while (mNext < mIndices && mNodes[mNext] == null) {
+                mNext++;
+            }
+        }
+    }
+
+    /**
+     * A level by level traversal of the graph, that works off int arrays. A node is returned only
+     * after all of its predecessors have been returned. Starting from the parents store results in
+     * a top down traversal, and from the children store in a bottom up traversal. When levels are
+     * tracked, the depth and color of each node is updated the same way as the MapGraph iterators
+     * do, as the depth is used by callers.
+     */
+    private class LevelIterator implements Iterator<GraphNode> {
+
+        /** The store holding the predecessors of each node in the traversal. */
+        private final AdjacencyStore mPredecessors;
+
+        /** The store holding the successors of each node in the traversal. */
+        private final AdjacencyStore mSuccessors;
+
+        /** Whether to update the depth and color of the nodes. */
+        private final boolean mTrackLevels;
+
+        /** The number of predecessors already traversed for each node. */
+        private int[] mVisited;
+
+        /** The FIFO queue of node indices. */
+        private int[] mQueue;
+
+        /** The head of the queue. */
+        private int mHead;
+
+        /** The tail of the queue. */
+        private int mTail;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param predecessors the predecessors of each node in the traversal
+         * @param successors the successors of each node in the traversal
+         * @param trackLevels whether to update the depth and color of the nodes.
+         */
+        LevelIterator(AdjacencyStore predecessors, AdjacencyStore successors, boolean trackLevels) {
+            mPredecessors = predecessors;
+            mSuccessors = successors;
+            mTrackLevels = trackLevels;
+            mVisited = new int[Math.max(mIndices, 1)];
+            mQueue = new int[Math.max(mIndices, 1)];
+            mHead = 0;
+            mTail = 0;
+
+            for (int i = 0; i < mIndices; i++) {
+                GraphNode node = mNodes[i];
+                if (node == null) {
+                    continue;
+                }
+                if (mTrackLevels) {
+                    node.setDepth(-1);
+                    node.setColor(GraphNode.WHITE_COLOR);
+                }
+                if (mPredecessors.degree(i) == 0) {
+                    if (mTrackLevels) {
+                        node.setDepth(0);
+                    }
+                    this.enqueue(i);
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return mHead < mTail;
+        }
+
+        public GraphNode next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int index = mQueue[mHead++];
+            GraphNode node = mNodes[index];
+            if (mTrackLevels) {
+                node.setColor(GraphNode.BLACK_COLOR);
+            }
+
+            int depth = node.getDepth();
+            int successors = mSuccessors.degree(index);
+            for (int i = 0; i < successors; i++) {
+                int successor = mSuccessors.get(index, i);
+                if (successor >= mVisited.length) {
+                    mVisited = Arrays.copyOf(mVisited, Math.max(mIndices, successor + 1));
+                }
+                if (++mVisited[successor] == mPredecessors.degree(successor)) {
+                    if (mTrackLevels) {
+                        GraphNode s = mNodes[successor];
+                        s.setDepth(depth + 1);
+                        s.setColor(GraphNode.GRAY_COLOR);
+                    }
+                    this.enqueue(successor);
+                }
+            }
+            return node;
+        }
+
+        /** Method is not supported. */
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException("Method remove() not supported");
+        }
+
+        /**
+         * Adds a node index to the tail of the queue.
+         *
+         * @param index the node index
+         */
+        private void enqueue(int index) {
+            if (mTail == mQueue.length) {
+                mQueue = Arrays.copyOf(mQueue, mQueue.length << 1);
+            }
+            mQueue[mTail++] = index;
+        }
+    }
+
+    /** A read only map view of the nodes in the graph indexed by their ids. */
+    private class NodeMapView extends AbstractMap<String, GraphNode> {
+
+        public GraphNode get(Object key) {
+            return (key instanceof String) ? getNode((String) key) : null;
+        }
+
+        public boolean containsKey(Object key) {
+            return this.get(key) != null;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        public Set<Map.Entry<String, GraphNode>> entrySet() {
+            return new AbstractSet<Map.Entry<String, GraphNode>>() {
+                public int size() {
+                    return mSize;
+                }
+
+                public Iterator<Map.Entry<String, GraphNode>> iterator() {
+                    final Iterator<GraphNode> it = nodeIterator();
+                    return new Iterator<Map.Entry<String, GraphNode>>() {
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        public Map.Entry<String, GraphNode> next() {
+                            GraphNode node = it.next();
+                            return new AbstractMap.SimpleImmutableEntry(node.getID(), node);
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException("Read only view");
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
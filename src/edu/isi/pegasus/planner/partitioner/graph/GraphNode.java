@@ -72,6 +72,16 @@ public class GraphNode extends Data {
      */
     private Bag mBag;
 
+    /**
+     * The compact graph the node is attached to. If set, the edges to other nodes in the same graph
+     * are held by the graph, and the parent and children sets only track edges to nodes outside of
+     * it.
+     */
+    private CompactGraph mCompactGraph;
+
+    /** The interned index of the node in the compact graph it is attached to. */
+    private int mCompactIndex;
+
     /** The default constructor. */
     public GraphNode() {
         mLogicalID = "";
@@ -146,6 +156,14 @@ public class GraphNode extends Data {
      * @param parents
      */
     public void setParents(Collection<GraphNode> parents) {
+        if (mCompactGraph != null) {
+            mCompactGraph.removeParents(this);
+            mParents = null;
+            for (GraphNode parent : parents) {
+                this.addParent(parent);
+            }
+            return;
+        }
         mParents = (parents instanceof Set) ? (Set) parents : new HashSet(parents);
     }
 
@@ -156,6 +174,14 @@ public class GraphNode extends Data {
      * @param children
      */
     public void setChildren(Collection<GraphNode> children) {
+        if (mCompactGraph != null) {
+            mCompactGraph.removeChildren(this);
+            mChildren = null;
+            for (GraphNode child : children) {
+                this.addChild(child);
+            }
+            return;
+        }
         mChildren = (children instanceof Set) ? (Set) children : new HashSet(children);
     }
 
@@ -192,7 +218,7 @@ public class GraphNode extends Data {
      * @return list of <code>GraphNode</code> objects.
      */
     public Collection<GraphNode> getParents() {
-        return mParents;
+        return (mCompactGraph == null) ? mParents : mCompactGraph.getParents(this);
     }
 
     /**
@@ -201,7 +227,7 @@ public class GraphNode extends Data {
      * @return list of <code>GraphNode</code> objects.
      */
     public Collection<GraphNode> getChildren() {
-        return mChildren;
+        return (mCompactGraph == null) ? mChildren : mCompactGraph.getChildren(this);
     }
 
     /**
@@ -210,6 +236,16 @@ public class GraphNode extends Data {
      * @param child adds a child to the node.
      */
     public void addChild(GraphNode child) {
+        if (this.sharesCompactGraph(child)) {
+            mCompactGraph.addEdge(this, child);
+            if (mChildren != null && mChildren.remove(child) && mChildren.isEmpty()) {
+                mChildren = null;
+            }
+            return;
+        }
+        if (mChildren == null) {
+            mChildren = new HashSet();
+        }
         mChildren.add(child);
     }
 
@@ -219,6 +255,16 @@ public class GraphNode extends Data {
      * @param parent adds a parent to the node.
      */
     public void addParent(GraphNode parent) {
+        if (this.sharesCompactGraph(parent)) {
+            mCompactGraph.addEdge(parent, this);
+            if (mParents != null && mParents.remove(parent) && mParents.isEmpty()) {
+                mParents = null;
+            }
+            return;
+        }
+        if (mParents == null) {
+            mParents = new HashSet();
+        }
         mParents.add(parent);
     }
 
@@ -228,7 +274,12 @@ public class GraphNode extends Data {
      * @param child child to be removed.
      */
     public void removeChild(GraphNode child) {
-        mChildren.remove(child);
+        if (this.sharesCompactGraph(child)) {
+            mCompactGraph.removeEdge(this, child);
+        }
+        if (mChildren != null) {
+            mChildren.remove(child);
+        }
     }
 
     /**
@@ -237,11 +288,23 @@ public class GraphNode extends Data {
      * @param parent parent to be removed.
      */
     public void removeParent(GraphNode parent) {
-        mParents.remove(parent);
+        if (this.sharesCompactGraph(parent)) {
+            mCompactGraph.removeEdge(parent, this);
+        }
+        if (mParents != null) {
+            mParents.remove(parent);
+        }
     }
 
     /** Reset all the edges associated with this node. */
     public final void resetEdges() {
+        if (mCompactGraph != null) {
+            mCompactGraph.removeParents(this);
+            mCompactGraph.removeChildren(this);
+            mParents = null;
+            mChildren = null;
+            return;
+        }
         mParents = new HashSet();
         mChildren = new HashSet();
     }
@@ -298,11 +361,12 @@ public class GraphNode extends Data {
     public boolean parentsColored(int color) {
         boolean colored = true;
         GraphNode par;
-        if (mParents == null) {
+        Collection<GraphNode> parents = this.getParents();
+        if (parents == null) {
             return colored;
         }
 
-        Iterator it = mParents.iterator();
+        Iterator it = parents.iterator();
         while (it.hasNext() && colored) {
             par = (GraphNode) it.next();
             colored = par.isColor(color);
@@ -321,11 +385,12 @@ public class GraphNode extends Data {
     public boolean childrenColored(int color) {
         boolean colored = true;
         GraphNode child;
-        if (mChildren == null) {
+        Collection<GraphNode> children = this.getChildren();
+        if (children == null) {
             return colored;
         }
 
-        Iterator<GraphNode> it = mChildren.iterator();
+        Iterator<GraphNode> it = children.iterator();
         while (it.hasNext() && colored) {
             child = (GraphNode) it.next();
             colored = child.isColor(color);
@@ -427,6 +492,89 @@ public class GraphNode extends Data {
         return this.getID().hashCode();
     }
 
+    /**
+     * Attaches the node to a compact graph. The caller is responsible for moving any edges held
+     * locally by the node into the graph.
+     *
+     * @param graph the compact graph
+     * @param index the interned index of the node in the graph
+     */
+    void attach(CompactGraph graph, int index) {
+        mCompactGraph = graph;
+        mCompactIndex = index;
+    }
+
+    /**
+     * Detaches the node from the compact graph it is attached to, and sets the local edges for the
+     * node.
+     *
+     * @param parents the parents of the node at the time of detaching
+     * @param children the children of the node at the time of detaching
+     */
+    void detach(Set<GraphNode> parents, Set<GraphNode> children) {
+        mCompactGraph = null;
+        mCompactIndex = -1;
+        mParents = parents;
+        mChildren = children;
+    }
+
+    /**
+     * Returns the compact graph the node is attached to.
+     *
+     * @return the graph, else null if the node is not attached to one.
+     */
+    CompactGraph getCompactGraph() {
+        return mCompactGraph;
+    }
+
+    /**
+     * Returns the interned index of the node in the compact graph it is attached to.
+     *
+     * @return the index
+     */
+    int getCompactIndex() {
+        return mCompactIndex;
+    }
+
+    /**
+     * Returns the parents held locally by the node, that are not tracked by a compact graph.
+     *
+     * @return the local parent set, can be null.
+     */
+    Set<GraphNode> getLocalParents() {
+        return mParents;
+    }
+
+    /**
+     * Returns the children held locally by the node, that are not tracked by a compact graph.
+     *
+     * @return the local children set, can be null.
+     */
+    Set<GraphNode> getLocalChildren() {
+        return mChildren;
+    }
+
+    /**
+     * Sets the parents and children held locally by the node.
+     *
+     * @param parents the local parent set, can be null.
+     * @param children the local children set, can be null.
+     */
+    void setLocalEdges(Set<GraphNode> parents, Set<GraphNode> children) {
+        mParents = parents;
+        mChildren = children;
+    }
+
+    /**
+     * Returns whether both this node and the other node are attached to the same compact graph.
+     *
+     * @param other the other node
+     * @return boolean
+     */
+    private boolean sharesCompactGraph(GraphNode other) {
+        return mCompactGraph != null && other.mCompactGraph == mCompactGraph;
+    }
+
     /** Returns a copy of the object. */
     public Object clone() {
         return new java.lang.CloneNotSupportedException("Clone() not implemented in GraphNode");
@@ -22,6 +22,7 @@ import edu.isi.pegasus.planner.parser.DAXParserFactory;
 import edu.isi.pegasus.planner.parser.XMLParser;
 import edu.isi.pegasus.planner.parser.dax.Callback;
 import edu.isi.pegasus.planner.selector.site.heft.Algorithm;
+import edu.isi.pegasus.planner.selector.site.heft.IndexedAlgorithm;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -66,7 +67,7 @@ public class Rank {
         // set the wings request property
         mBag.getPegasusProperties().setProperty("pegasus.wings.request.id", id);
         mLogger = bag.getLogger();
-        mHeft = new Algorithm(bag);
+        mHeft = new IndexedAlgorithm(bag);
         mRequestID = id;
         mSites = sites;
     }
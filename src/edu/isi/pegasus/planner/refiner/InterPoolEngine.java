@@ -200,6 +200,7 @@ public class InterPoolEngine extends Engine implements Refiner {
         mSiteSelector.mapWorkflow(dag, sites);
 
         int i = 0;
+        List<Job> mapped = new ArrayList<Job>();
 
         // Iterate through the jobs and hand them to
         // the site selector if required
@@ -221,11 +222,18 @@ public class InterPoolEngine extends Engine implements Refiner {
                     GraphNode n = (GraphNode) consIT.next();
                     Job j = (Job) n.getContent();
                     incorporateSiteMapping(j, sites);
+                    mapped.add(j);
                 }
             }
             incorporateSiteMapping(job, sites);
+            mapped.add(job);
         } // end of mapping all jobs
 
+        // PM-882 incorporate estimates on runtimes of the jobs
+        // after the site selection has been done. the jobs are
+        // handed to the estimator together, so that it can batch them
+        incorporateEstimates(mapped);
+
         // PM-916 write out all the metadata related events for the
         // mapped workflow
         generateStampedeMetadataEvents(dag);
@@ -282,10 +290,6 @@ public class InterPoolEngine extends Engine implements Refiner {
         }
         job.setStagingSiteHandle(determineStagingSite(job));
         handleExecutableFileTransfers(job, entry);
-
-        // PM-882 incorporate estimates on runtimes of the jobs
-        // after the site selection has been done
-        incorporateEstimates(job);
     }
 
     /**
@@ -752,12 +756,24 @@ public class InterPoolEngine extends Engine implements Refiner {
     }
 
     /**
-     * Incorporate estimates
+     * Incorporate estimates for the jobs, retrieved from the estimator in one go.
      *
-     * @param job
+     * @param jobs the jobs that have been mapped to sites
+     */
+    protected void incorporateEstimates(List<Job> jobs) {
+        List<Map<String, String>> estimates = mEstimator.getAllEstimates(jobs);
+        for (int i = 0; i < jobs.size(); i++) {
+            incorporateEstimates(jobs.get(i), estimates.get(i));
+        }
+    }
+
+    /**
+     * Incorporates the estimates for a job as metadata and profiles of the job.
+     *
+     * @param job the job
+     * @param estimates the estimates for the job
      */
-    protected void incorporateEstimates(Job job) {
-        Map<String, String> estimates = mEstimator.getAllEstimates(job);
+    protected void incorporateEstimates(Job job, Map<String, String> estimates) {
 
         for (Map.Entry<String, String> entry : estimates.entrySet()) {
             String key = entry.getKey();
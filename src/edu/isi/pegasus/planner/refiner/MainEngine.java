@@ -67,6 +67,9 @@ public class MainEngine extends Engine {
     /** The bridge to the Replica Catalog. */
     private ReplicaCatalogBridge mRCBridge;
 
+    /** The lookup of the Replica Catalog done before the planner was run. Can be null. */
+    private ReplicaCatalogBridge.Lookup mRCLookup;
+
     /** The handle to the InterPool Engine that calls out to the Site Selector and maps the jobs. */
     private InterPoolEngine mIPEng;
 
@@ -102,6 +105,18 @@ public class MainEngine extends Engine {
         mOutputSites = (Set) mPOptions.getOutputSites();
     }
 
+    /**
+     * The overloaded constructor.
+     *
+     * @param orgDag the dag to be worked on.
+     * @param bag the bag of initialization objects
+     * @param lookup the lookup of the Replica Catalog for the dag done ahead of time. Can be null.
+     */
+    public MainEngine(ADag orgDag, PegasusBag bag, ReplicaCatalogBridge.Lookup lookup) {
+        this(orgDag, bag);
+        mRCLookup = lookup;
+    }
+
     /**
      * The main function which calls the other engines and does the necessary work.
      *
@@ -121,7 +136,8 @@ public class MainEngine extends Engine {
         PegasusProperties propsBeforePlanning = (PegasusProperties) this.mProps.clone();
 
         String message = null;
-        mRCBridge = new ReplicaCatalogBridge(mOriginalDag, mBag);
+        mRCBridge = new ReplicaCatalogBridge(mOriginalDag, mBag, mRCLookup);
+        mRCLookup = null;
 
         // PM-1047 copy all catalog file sources to submit directory
         copyCatalogFiles(
@@ -279,13 +295,14 @@ public class MainEngine extends Engine {
             mRemoveEng = null;
         }
 
+        if (mProps.pruneWorkflowEdges()) {
+            // PM-714 ReduceEdges does not scale for the planner performance test
+            // case. the transitive reduction engine logs the workflow prune event
+            TransitiveReduction p = new TransitiveReduction(mLogger);
+            mReducedDag = p.reduce(mReducedDag);
+        }
+
         try {
-            /* PM-714. The approach does not scale for the planner performace test case.
-            mLogger.logEventStart( "workflow.prune", LoggingKeys.DAX_ID, abstractWFName );
-            ReduceEdges p = new ReduceEdges();
-            p.reduce(mReducedDag);
-            mLogger.logEventCompletion();
-            */
             // PM-1535 write out the properties file in the submit directory
             propsBeforePlanning.writeOutProperties();
         } catch (IOException ex) {
@@ -0,0 +1,510 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.util.Boolean;
+import edu.isi.pegasus.planner.catalog.site.SiteFactory;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.AggregatedJob;
+import edu.isi.pegasus.planner.classes.DataFlowJob;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.NameValue;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Selector;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A snapshot of a plan, that is written out in the submit directory when incremental planning is
+ * enabled. It records a content hash of every job in the abstract workflow, and the site the job
+ * was mapped to in the executable workflow.
+ *
+ * <p>When a workflow is planned again, the snapshot of the previous plan is looked up in the submit
+ * directory and its siblings. Jobs whose hash has not changed, and that are not a parent or a child
+ * of a job that has changed, are mapped to the same site as before. Only the new and changed jobs
+ * and their neighbours are left to the site selector to map. The previous plan is not reused if the
+ * planner options, the properties, or the site and transformation catalogs have changed.
+ *
+ * <p>Only the site mappings are reused. All the other refinement stages run over the whole
+ * workflow, and all the submit files are written out again, so an incremental plan takes about as
+ * long as a plan from scratch. What it provides is that the unchanged jobs stay on the sites they
+ * were mapped to earlier.
+ *
+ * <p>The jobs are pinned through the execution site key of the selector profiles. The per job site
+ * selectors skip such jobs, and the Heft site selector only considers the pinned site for them. For
+ * any other site selector the site mapping is overridden by the pin afterwards.
+ *
+ * @version $Revision$
+ */
+public class PlanSnapshot {
+
+    /** The property to enable incremental planning. */
+    public static final String INCREMENTAL_PLANNING_PROPERTY_KEY = "pegasus.planner.incremental";
+
+    /** The suffix for the snapshot file in the submit directory. */
+    public static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+
+    /** The version of the snapshot format. */
+    public static final String VERSION = "1";
+
+    /** The value recorded for a job that was not mapped to a site. */
+    private static final String UNMAPPED_SITE = "-";
+
+    /** The handle to the logger. */
+    private LogManager mLogger;
+
+    /** The version of the snapshot format. */
+    private String mVersion;
+
+    /** A hash of the planner options, properties and catalogs the workflow was planned with. */
+    private String mInputs;
+
+    /** The hash of each job in the abstract workflow, indexed by job id. */
+    private Map<String, String> mJobHashes;
+
+    /** The site each job was mapped to, indexed by job id. */
+    private Map<String, String> mSites;
+
+    /**
+     * Returns whether incremental planning is enabled in the properties.
+     *
+     * @param properties the properties.
+     * @return boolean
+     */
+    public static boolean isEnabled(PegasusProperties properties) {
+        return Boolean.parse(properties.getProperty(INCREMENTAL_PLANNING_PROPERTY_KEY), false);
+    }
+
+    /**
+     * Returns the file to which the snapshot for a workflow is written to in a directory.
+     *
+     * @param directory the directory.
+     * @param dag the workflow.
+     * @param options the planner options.
+     * @return the snapshot file.
+     */
+    public static File getSnapshotFile(File directory, ADag dag, PlannerOptions options) {
+        return new File(
+                directory,
+                edu.isi.pegasus.planner.code.generator.Abstract.getDAGFilename(
+                        options, dag.getLabel(), dag.getIndex(), SNAPSHOT_FILE_SUFFIX));
+    }
+
+    /**
+     * Loads the most recent snapshot for the workflow, from the submit directory and its sibling
+     * directories. The sibling directories are where the earlier runs of a workflow are planned
+     * into.
+     *
+     * @param bag the bag of initialization objects.
+     * @param dag the workflow.
+     * @return the snapshot, else null if no snapshot exists or it cannot be read.
+     */
+    public static PlanSnapshot loadPrevious(PegasusBag bag, ADag dag) {
+        LogManager logger = bag.getLogger();
+        PlannerOptions options = bag.getPlannerOptions();
+        File submitDir = new File(options.getSubmitDirectory());
+        File parent = submitDir.getAbsoluteFile().getParentFile();
+        File[] dirs = (parent == null) ? null : parent.listFiles();
+        if (dirs == null) {
+            return null;
+        }
+
+        File latest = null;
+        for (File dir : dirs) {
+            File f = getSnapshotFile(dir, dag, options);
+            if (f.isFile() && (latest == null || f.lastModified() > latest.lastModified())) {
+                latest = f;
+            }
+        }
+        if (latest == null) {
+            logger.log(
+                    "No snapshot of an earlier plan found in " + parent,
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            return null;
+        }
+
+        PlanSnapshot snapshot = new PlanSnapshot(logger);
+        try {
+            snapshot.read(latest);
+        } catch (IOException e) {
+            logger.log(
+                    "Ignoring unreadable snapshot of an earlier plan " + latest,
+                    e,
+                    LogManager.WARNING_MESSAGE_LEVEL);
+            return null;
+        }
+        logger.log(
+                "Loaded snapshot of an earlier plan from " + latest,
+                LogManager.CONFIG_MESSAGE_LEVEL);
+        return snapshot;
+    }
+
+    /**
+     * The default constructor.
+     *
+     * @param logger the logger to use.
+     */
+    public PlanSnapshot(LogManager logger) {
+        mLogger = logger;
+        mVersion = VERSION;
+        mInputs = null;
+        mJobHashes = new TreeMap<String, String>();
+        mSites = new TreeMap<String, String>();
+    }
+
+    /**
+     * Creates a snapshot for an abstract workflow that is about to be planned.
+     *
+     * @param bag the bag of initialization objects.
+     * @param dag the abstract workflow.
+     */
+    public PlanSnapshot(PegasusBag bag, ADag dag) {
+        this(bag.getLogger());
+        mInputs = computeInputsHash(bag, dag);
+        for (Iterator<GraphNode> it = dag.jobIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            mJobHashes.put(node.getID(), computeJobHash(node));
+        }
+    }
+
+    /**
+     * Maps the jobs in the workflow that are not affected by the changes since the previous plan to
+     * the sites they were mapped to in the previous plan. This is done by setting the execution
+     * site key in the selector profiles of the job, that the site selection honors.
+     *
+     * @param dag the abstract workflow.
+     * @param previous the snapshot of the previous plan. Can be null.
+     * @param sites the execution sites the workflow can be mapped to.
+     * @return the number of jobs whose mapping was reused.
+     */
+    public int reuseSiteMappings(ADag dag, PlanSnapshot previous, Collection<String> sites) {
+        if (previous == null) {
+            return 0;
+        }
+        if (!VERSION.equals(previous.mVersion) || !mInputs.equals(previous.mInputs)) {
+            mLogger.log(
+                    "Planner options, properties or catalogs changed since the earlier plan. Planning from scratch",
+                    LogManager.INFO_MESSAGE_LEVEL);
+            return 0;
+        }
+
+        Set<String> affected = getAffectedJobs(dag, previous);
+        int reused = 0;
+        for (Iterator<GraphNode> it = dag.jobIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            Job job = (Job) node.getContent();
+            String site = previous.mSites.get(node.getID());
+            if (affected.contains(node.getID())
+                    || job instanceof DataFlowJob
+                    || site == null
+                    || !sites.contains(site)
+                    || job.getSelectorProfiles().containsKey(Selector.EXECUTION_SITE_KEY)
+                    || job.hints.containsKey(Selector.EXECUTION_SITE_KEY)) {
+                continue;
+            }
+            job.getSelectorProfiles().construct(Selector.EXECUTION_SITE_KEY, site);
+            reused++;
+        }
+        mLogger.log(
+                "Reusing the site mapping of the earlier plan for "
+                        + reused
+                        + " jobs. Jobs changed or next to a change "
+                        + affected.size()
+                        + " out of "
+                        + mJobHashes.size(),
+                LogManager.INFO_MESSAGE_LEVEL);
+        return reused;
+    }
+
+    /**
+     * Returns the jobs that are new or have changed since the previous plan, along with their
+     * parents and children.
+     *
+     * @param dag the abstract workflow.
+     * @param previous the snapshot of the previous plan.
+     * @return the ids of the affected jobs.
+     */
+    public Set<String> getAffectedJobs(ADag dag, PlanSnapshot previous) {
+        Set<String> affected = new HashSet<String>();
+        for (Iterator<GraphNode> it = dag.jobIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            String id = node.getID();
+            if (mJobHashes.get(id).equals(previous.mJobHashes.get(id))) {
+                continue;
+            }
+            affected.add(id);
+            for (GraphNode parent : node.getParents()) {
+                affected.add(parent.getID());
+            }
+            for (GraphNode child : node.getChildren()) {
+                affected.add(child.getID());
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Records the sites to which the compute jobs were mapped in the executable workflow.
+     *
+     * @param dag the executable workflow.
+     */
+    public void recordSites(ADag dag) {
+        for (Iterator<GraphNode> it = dag.jobIterator(); it.hasNext(); ) {
+            Job job = (Job) it.next().getContent();
+            if (job instanceof AggregatedJob) {
+                for (Iterator<Job> cit = ((AggregatedJob) job).constituentJobsIterator();
+                        cit.hasNext(); ) {
+                    recordSite(cit.next());
+                }
+            }
+            recordSite(job);
+        }
+    }
+
+    /**
+     * Writes out the snapshot to a file.
+     *
+     * @param file the file to write to.
+     * @throws IOException in case of error while writing.
+     */
+    public void write(File file) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write("# snapshot of the plan for incremental planning");
+            writer.newLine();
+            writer.write("version " + VERSION);
+            writer.newLine();
+            writer.write("inputs " + mInputs);
+            writer.newLine();
+            for (Map.Entry<String, String> entry : mJobHashes.entrySet()) {
+                String site = mSites.get(entry.getKey());
+                writer.write("job ");
+                writer.write(entry.getKey());
+                writer.write(" ");
+                writer.write(entry.getValue());
+                writer.write(" ");
+                writer.write(site == null ? UNMAPPED_SITE : site);
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     *
+     * @param file the file to read from.
+     * @throws IOException in case of error while reading, or if the file is malformed.
+     */
+    protected void read(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.startsWith("#") || line.trim().length() == 0) {
+                    continue;
+                }
+                String[] words = line.trim().split(" ");
+                if (words[0].equals("version") && words.length == 2) {
+                    mVersion = words[1];
+                } else if (words[0].equals("inputs") && words.length == 2) {
+                    mInputs = words[1];
+                } else if (words[0].equals("job") && words.length == 4) {
+                    mJobHashes.put(words[1], words[2]);
+                    if (!words[3].equals(UNMAPPED_SITE)) {
+                        mSites.put(words[1], words[3]);
+                    }
+                } else {
+                    throw new IOException("Malformed line " + lineNumber + " in " + file);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void recordSite(Job job) {
+        if (job.getJobType() == Job.COMPUTE_JOB
+                && job.getSiteHandle() != null
+                && mJobHashes.containsKey(job.getID())) {
+            mSites.put(job.getID(), job.getSiteHandle());
+        }
+    }
+
+    /**
+     * Computes a hash of the planner options, the properties and the site and transformation
+     * catalogs. The properties that change for every planner invocation of a sub workflow are not
+     * considered. A catalog file is captured by its length and modification time, and the catalogs
+     * embedded in the workflow by their entries.
+     *
+     * @param bag the bag of initialization objects.
+     * @param dag the abstract workflow.
+     * @return the hash.
+     */
+    protected static String computeInputsHash(PegasusBag bag, ADag dag) {
+        PegasusProperties properties = bag.getPegasusProperties();
+        PlannerOptions options = bag.getPlannerOptions();
+        StringBuilder sb = new StringBuilder();
+        sb.append(options.getOriginalArgString()).append('\n');
+        sb.append(new TreeSet<String>(options.getExecutionSites())).append('\n');
+        List<String> props = new ArrayList<String>();
+        for (Object o : properties.getMatchingProperties("pegasus.", false)) {
+            NameValue nv = (NameValue) o;
+            String key = (String) nv.getKey();
+            if (key.equals(PegasusProperties.ROOT_WORKFLOW_UUID_PROPERTY_KEY)
+                    || key.startsWith("pegasus.log.")) {
+                continue;
+            }
+            props.add(key + "=" + nv.getValue());
+        }
+        Collections.sort(props);
+        sb.append(props).append('\n');
+
+        // the catalog files configured, else the default ones in the planner directory
+        File dir = bag.getPlannerDirectory();
+        List<File> catalogs = new ArrayList<File>();
+        for (String key :
+                new String[] {
+                    PegasusProperties.PEGASUS_SITE_CATALOG_FILE_PROPERTY,
+                    PegasusProperties.PEGASUS_TRANSFORMATION_CATALOG_FILE_PROPERTY
+                }) {
+            String value = properties.getProperty(key);
+            if (value != null) {
+                catalogs.add(new File(value));
+            }
+        }
+        for (String basename :
+                new String[] {
+                    SiteFactory.DEFAULT_YAML_SITE_CATALOG_BASENAME,
+                    SiteFactory.DEFAULT_XML_SITE_CATALOG_BASENAME,
+                    TransformationFactory.DEFAULT_YAML_TRANSFORMATION_CATALOG_BASENAME,
+                    TransformationFactory.DEFAULT_TEXT_TRANSFORMATION_CATALOG_BASENAME
+                }) {
+            catalogs.add(new File(dir, basename));
+        }
+        for (File catalog : catalogs) {
+            sb.append(catalog.getAbsolutePath()).append(':');
+            if (catalog.exists()) {
+                sb.append(catalog.length()).append(':').append(catalog.lastModified());
+            }
+            sb.append('\n');
+        }
+
+        // the catalogs embedded in the workflow
+        List<String> entries = new ArrayList<String>();
+        if (dag.getTransformationStore() != null) {
+            for (TransformationCatalogEntry entry : dag.getTransformationStore().getAllEntries()) {
+                entries.add(entry.toString());
+            }
+        }
+        if (dag.getSiteStore() != null) {
+            for (Iterator<SiteCatalogEntry> it = dag.getSiteStore().entryIterator();
+                    it.hasNext(); ) {
+                entries.add(it.next().toString());
+            }
+        }
+        Collections.sort(entries);
+        sb.append(entries);
+        return hash(sb.toString());
+    }
+
+    /**
+     * Computes a hash of a job in the abstract workflow, that captures what the job runs, its
+     * files, its profiles and its edges.
+     *
+     * @param node the node for the job.
+     * @return the hash.
+     */
+    protected static String computeJobHash(GraphNode node) {
+        Job job = (Job) node.getContent();
+        StringBuilder sb = new StringBuilder();
+        sb.append(job.getID()).append('\n');
+        sb.append(job.getCompleteTCName()).append('\n');
+        sb.append(job.getArguments()).append('\n');
+        sb.append(job.getStdIn()).append(' ');
+        sb.append(job.getStdOut()).append(' ');
+        sb.append(job.getStdErr()).append('\n');
+        sb.append(files(job.getInputFiles())).append('\n');
+        sb.append(files(job.getOutputFiles())).append('\n');
+        sb.append(job.condorVariables).append('\n');
+        sb.append(job.dagmanVariables).append('\n');
+        sb.append(job.envVariables).append('\n');
+        sb.append(job.globusRSL).append('\n');
+        sb.append(job.vdsNS).append('\n');
+        sb.append(job.hints).append('\n');
+        sb.append(job.getSelectorProfiles()).append('\n');
+        sb.append(ids(node.getParents())).append('\n');
+        sb.append(ids(node.getChildren())).append('\n');
+        return hash(sb.toString());
+    }
+
+    private static Set<String> files(Set<PegasusFile> files) {
+        Set<String> result = new TreeSet<String>();
+        for (PegasusFile file : files) {
+            result.add(file.getLFN() + ":" + file.getLinkage() + ":" + file.getTransferFlag());
+        }
+        return result;
+    }
+
+    private static Set<String> ids(Collection<GraphNode> nodes) {
+        Set<String> result = new TreeSet<String>();
+        for (GraphNode node : nodes) {
+            result.add(node.getID());
+        }
+        return result;
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(value.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(2 * digest.length);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new RuntimeException("Unable to compute hash ", e);
+        }
+    }
+}
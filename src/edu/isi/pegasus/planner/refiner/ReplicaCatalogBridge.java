@@ -21,14 +21,20 @@ import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaFactory;
 import edu.isi.pegasus.planner.catalog.replica.classes.ReplicaStore;
+import edu.isi.pegasus.planner.catalog.replica.impl.IndexedFile;
+import edu.isi.pegasus.planner.catalog.replica.impl.Journal;
+import edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile;
+import edu.isi.pegasus.planner.catalog.replica.impl.YAML;
 import edu.isi.pegasus.planner.catalog.site.classes.GridGateway;
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
 import edu.isi.pegasus.planner.catalog.transformation.classes.TCType;
 import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.FileTransfer;
 import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.LFNSymbolTable;
 import edu.isi.pegasus.planner.classes.NameValue;
 import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
 import edu.isi.pegasus.planner.classes.Profile;
 import edu.isi.pegasus.planner.classes.ReplicaLocation;
@@ -39,6 +45,7 @@ import edu.isi.pegasus.planner.namespace.Metadata;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -117,6 +124,12 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
      */
     protected Set mSearchFiles;
 
+    /** The ids of the logical filenames in mSearchFiles, in the symbol table of the workflow. */
+    private BitSet mSearchIDs;
+
+    /** The symbol table for the logical filenames of the workflow. */
+    private LFNSymbolTable mSymbols;
+
     /**
      * A boolean variable to desingnate whether the RLI queried was down or not. By default it is
      * up, unless it is set to true explicitly.
@@ -181,6 +194,9 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
     /** All the replica file sources detected. */
     private Set<File> mReplicaFileSources;
 
+    /** The lookup of the replica catalog done ahead of initialization. Can be null. */
+    private Lookup mPrefetchedLookup;
+
     /** whether integrity checking is enabled */
     private boolean mIntegrityCheckingEnabled;
 
@@ -193,7 +209,20 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
      * @param bag of initialization objects.
      */
     public ReplicaCatalogBridge(ADag dag, PegasusBag bag) {
+        this(dag, bag, null);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param dag the workflow that is being worked on.
+     * @param bag of initialization objects.
+     * @param lookup the lookup of the replica catalog for the workflow done ahead of time, see
+     *     {@link #lookup(ADag, PegasusBag)}. Can be null.
+     */
+    public ReplicaCatalogBridge(ADag dag, PegasusBag bag, Lookup lookup) {
         super(bag);
+        mPrefetchedLookup = lookup;
         this.initialize(dag, bag);
     }
 
@@ -239,7 +268,9 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
         // converting the Vector into vector of
         // strings just containing the logical
         // filenames
-        mSearchFiles = dag.getDAGInfo().getLFNs(options.getForce());
+        mSymbols = dag.getDAGInfo().getLFNSymbolTable();
+        mSearchIDs = dag.getDAGInfo().getLFNIDs(options.getForce());
+        mSearchFiles = mSymbols.asSet(mSearchIDs);
 
         mReplicaFileSources = new LinkedHashSet<File>();
 
@@ -249,33 +280,17 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
             // Karan May 1 2007
             mReplicaCatalog = null;
             if (mSearchFiles != null && !mSearchFiles.isEmpty()) {
-
-                // need to clone before setting any read only properites
-                PegasusProperties props = (PegasusProperties) properties.clone();
-
-                // set the read only property for the file based rc
-                // we are connecting via PegasusProperties add the prefix
-                String name =
-                        ReplicaCatalog.c_prefix + "." + ReplicaCatalogBridge.CACHE_READ_ONLY_KEY;
-                props.setProperty(name, "true");
-
-                String proxy = getPathToLocalProxy();
-                if (proxy != null) {
-                    mLogger.log(
-                            "Proxy used for Replica Catalog is " + proxy,
-                            LogManager.CONFIG_MESSAGE_LEVEL);
-                    props.setProperty(
-                            ReplicaCatalog.c_prefix + "." + ReplicaCatalog.PROXY_KEY, proxy);
+                Lookup lookup = mPrefetchedLookup;
+                if (lookup == null || !mSearchFiles.equals(lookup.mSearchFiles)) {
+                    lookup = lookup(mSearchFiles, properties, mBag);
                 }
-
-                PegasusBag bag = new PegasusBag();
-                bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
-                bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
-                bag.add(PegasusBag.PLANNER_DIRECTORY, mBag.getPlannerDirectory());
-                mReplicaCatalog = ReplicaFactory.loadInstance(bag);
+                mPrefetchedLookup = null;
 
                 // load all the mappings.
-                mReplicaStore = new ReplicaStore(mReplicaCatalog.lookup(mSearchFiles));
+                mReplicaCatalog = lookup.mReplicaCatalog;
+                lookup.rethrow();
+                mReplicaStore = new ReplicaStore(lookup.mMappings);
+                mReplicaStore.index(mSymbols);
 
                 // PM-1535 if connect props has a file property add it back to the
                 File catalogFile = mReplicaCatalog.getFileSource();
@@ -385,28 +400,42 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
      * @see #mSearchFiles
      */
     public Set<String> getFilesInReplica() {
+        return mSymbols.asSet(this.getFileIDsInReplica());
+    }
+
+    /**
+     * Returns the ids of the files of the workflow for which mappings exist in the Replica Catalog,
+     * in the symbol table of the workflow.
+     *
+     * @return a bit set of the ids of the logical file names, for which logical to physical mapping
+     *     exists.
+     * @see #getFilesInReplica()
+     */
+    public BitSet getFileIDsInReplica() {
+        int total = mSearchIDs.cardinality();
 
         // check if any exist in the cache
-        Set result = mCacheStore.getLFNs(mSearchFiles);
+        BitSet result = mCacheStore.getLFNIDs(mSymbols);
+        result.and(mSearchIDs);
         mLogger.log(
-                result.size() + " entries found in cache of total " + mSearchFiles.size(),
+                result.cardinality() + " entries found in cache of total " + total,
                 LogManager.DEBUG_MESSAGE_LEVEL);
 
         // PM-1681 check in the previous runs
-        Set lfns = mPreviousRunsReplicaStore.getLFNs(mSearchFiles);
+        BitSet ids = mPreviousRunsReplicaStore.getLFNIDs(mSymbols);
+        ids.and(mSearchIDs);
         mLogger.log(
-                lfns.size()
-                        + " entries found in previous submit dirs of total "
-                        + mSearchFiles.size(),
+                ids.cardinality() + " entries found in previous submit dirs of total " + total,
                 LogManager.DEBUG_MESSAGE_LEVEL);
-        result.addAll(lfns);
+        result.or(ids);
 
         // check if any exist in input directory
-        lfns = this.mDirectoryReplicaStore.getLFNs(mSearchFiles);
+        ids = this.mDirectoryReplicaStore.getLFNIDs(mSymbols);
+        ids.and(mSearchIDs);
         mLogger.log(
-                lfns.size() + " entries found in input directories of total " + mSearchFiles.size(),
+                ids.cardinality() + " entries found in input directories of total " + total,
                 LogManager.DEBUG_MESSAGE_LEVEL);
-        result.addAll(lfns);
+        result.or(ids);
 
         // check in the main replica catalog
         if ((this.mDAXReplicaStore.isEmpty() && mDirectoryReplicaStore.isEmpty())
@@ -418,36 +447,31 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
         }
 
         // lookup from the DAX Replica Store
-        lfns = this.mDAXReplicaStore.getLFNs();
+        ids = this.mDAXReplicaStore.getLFNIDs(mSymbols);
         mLogger.log(
-                lfns.size()
+                ids.cardinality()
                         + " entries found in abstract workflow replica store of total "
-                        + mSearchFiles.size(),
+                        + total,
                 LogManager.DEBUG_MESSAGE_LEVEL);
-        result.addAll(lfns);
+        result.or(ids);
 
         // lookup from the inherited Replica Store
-        lfns = this.mInheritedReplicaStore.getLFNs(mSearchFiles);
+        ids = this.mInheritedReplicaStore.getLFNIDs(mSymbols);
+        ids.and(mSearchIDs);
         mLogger.log(
-                lfns.size()
-                        + " entries found in inherited replica store of total "
-                        + mSearchFiles.size(),
+                ids.cardinality() + " entries found in inherited replica store of total " + total,
                 LogManager.DEBUG_MESSAGE_LEVEL);
-        result.addAll(lfns);
+        result.or(ids);
 
         // look up from the the main replica catalog
-        lfns = mReplicaStore.getLFNs();
+        ids = mReplicaStore.getLFNIDs(mSymbols);
         mLogger.log(
-                lfns.size()
-                        + " entries found in input replica catalog of total "
-                        + mSearchFiles.size(),
+                ids.cardinality() + " entries found in input replica catalog of total " + total,
                 LogManager.DEBUG_MESSAGE_LEVEL);
-        result.addAll(lfns);
+        result.or(ids);
 
         mLogger.log(
-                result.size()
-                        + " entries found in all replica sources of total "
-                        + mSearchFiles.size(),
+                result.cardinality() + " entries found in all replica sources of total " + total,
                 LogManager.DEBUG_MESSAGE_LEVEL);
 
         return result;
@@ -470,6 +494,29 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
      * @see edu.isi.pegasus.planner.classes.ReplicaLocation
      */
     public ReplicaLocation getFileLocs(String lfn) {
+        return this.getFileLocs(lfn, mSymbols == null ? -1 : mSymbols.getID(lfn));
+    }
+
+    /**
+     * Returns all the locations as returned from the Replica Lookup Mechanism for a file. The
+     * locations from the replica catalog are looked up by the id of the file's LFN.
+     *
+     * @param pf the file whose PFN mappings are required.
+     * @return ReplicaLocation containing all the locations for that LFN
+     * @see edu.isi.pegasus.planner.classes.ReplicaLocation
+     */
+    public ReplicaLocation getFileLocs(PegasusFile pf) {
+        return this.getFileLocs(pf.getLFN(), mSymbols == null ? -1 : mSymbols.getID(pf));
+    }
+
+    /**
+     * Returns all the locations as returned from the Replica Lookup Mechanism.
+     *
+     * @param lfn The name of the logical file whose PFN mappings are required.
+     * @param id the id of the LFN in the symbol table of the workflow, or -1 if it is not in it.
+     * @return ReplicaLocation containing all the locations for that LFN
+     */
+    private ReplicaLocation getFileLocs(String lfn, int id) {
 
         ReplicaLocation cacheEntry = retrieveFromCache(lfn);
         ReplicaLocation result = null;
@@ -520,7 +567,10 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
             return this.mInheritedReplicaStore.getReplicaLocation(lfn);
         }
 
-        ReplicaLocation rcEntry = mReplicaStore.getReplicaLocation(lfn);
+        ReplicaLocation rcEntry =
+                (id == -1)
+                        ? mReplicaStore.getReplicaLocation(lfn)
+                        : mReplicaStore.getReplicaLocation(mSymbols, id);
         if (result == null) {
             result = rcEntry; // can still be null
         } else {
@@ -1157,21 +1207,84 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
         return store;
     }
 
+    /**
+     * Connects to the replica catalog, and looks up the locations of the files that the bridge for
+     * the workflow would look up when initialized. This allows the lookup to be done while the
+     * planner is busy with other things. Any error encountered is thrown when the bridge is
+     * initialized with the lookup.
+     *
+     * @param dag the workflow.
+     * @param bag the bag of initialization objects. The site store is required.
+     * @return the lookup.
+     */
+    public static Lookup lookup(ADag dag, PegasusBag bag) {
+        Set searchFiles = dag.getDAGInfo().getLFNs(bag.getPlannerOptions().getForce());
+        if (searchFiles == null || searchFiles.isEmpty()) {
+            return null;
+        }
+        return lookup(searchFiles, bag.getPegasusProperties(), bag);
+    }
+
+    /**
+     * Connects to the replica catalog and looks up the locations of files.
+     *
+     * @param searchFiles the lfns to look up.
+     * @param properties the properties passed to the planner.
+     * @param bag the bag of initialization objects.
+     * @return the lookup.
+     */
+    private static Lookup lookup(Set searchFiles, PegasusProperties properties, PegasusBag bag) {
+        Lookup result = new Lookup(searchFiles);
+        LogManager logger = bag.getLogger();
+        try {
+            // need to clone before setting any read only properites
+            PegasusProperties props = (PegasusProperties) properties.clone();
+
+            // set the read only property for the file based rc
+            // we are connecting via PegasusProperties add the prefix
+            String name = ReplicaCatalog.c_prefix + "." + ReplicaCatalogBridge.CACHE_READ_ONLY_KEY;
+            props.setProperty(name, "true");
+
+            String proxy = getPathToLocalProxy(bag);
+            if (proxy != null) {
+                logger.log(
+                        "Proxy used for Replica Catalog is " + proxy,
+                        LogManager.CONFIG_MESSAGE_LEVEL);
+                props.setProperty(ReplicaCatalog.c_prefix + "." + ReplicaCatalog.PROXY_KEY, proxy);
+            }
+
+            PegasusBag b = new PegasusBag();
+            b.add(PegasusBag.PEGASUS_LOGMANAGER, logger);
+            b.add(PegasusBag.PEGASUS_PROPERTIES, props);
+            b.add(PegasusBag.PLANNER_DIRECTORY, bag.getPlannerDirectory());
+            result.mReplicaCatalog = ReplicaFactory.loadInstance(b);
+
+            // load all the mappings.
+            result.mMappings = result.mReplicaCatalog.lookup(searchFiles);
+        } catch (Exception e) {
+            result.mException = e;
+        }
+        return result;
+    }
+
     /**
      * Returns path to the local proxy
      *
+     * @param bag the bag of initialization objects.
      * @return path to the local proxy
      */
-    private String getPathToLocalProxy() {
+    private static String getPathToLocalProxy(PegasusBag bag) {
         // load and intialize the CredentialHandler Factory
         CredentialHandlerFactory factory = new CredentialHandlerFactory();
-        factory.initialize(mBag);
+        factory.initialize(bag);
         CredentialHandler handler = factory.loadInstance(CredentialHandler.TYPE.x509);
         return handler.getPath("local");
     }
 
     /**
-     * Returns booleans indicating whether default category is required for registration jobs or not
+     * Returns booleans indicating whether default category is required for registration jobs or
+     * not. It is not required only if the output replica catalog is a file based catalog in
+     * journaled mode.
      *
      * @param rc
      * @param props
@@ -1191,6 +1304,55 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
         }
         return require;
         */
+        // registration jobs can run concurrently against a file
+        // based output replica catalog that is journaled
+        String implementor = props.getProperty(ReplicaCatalogBridge.OUTPUT_REPLICA_CATALOG_PREFIX);
+        if (implementor != null
+                && Journal.isEnabled(
+                        props.matchingSubset(
+                                ReplicaCatalogBridge.OUTPUT_REPLICA_CATALOG_PREFIX, false))) {
+            implementor = implementor.substring(implementor.lastIndexOf('.') + 1);
+            if (implementor.equalsIgnoreCase("File")
+                    || implementor.equals(SimpleFile.class.getSimpleName())
+                    || implementor.equals(YAML.class.getSimpleName())
+                    || implementor.equals(IndexedFile.class.getSimpleName())) {
+                return false;
+            }
+        }
         return true;
     }
+
+    /**
+     * The connection to the replica catalog, and the locations of the files looked up in it for a
+     * workflow.
+     */
+    public static class Lookup {
+
+        /** The lfns that were looked up. */
+        private final Set mSearchFiles;
+
+        /** The connection to the replica catalog. */
+        private ReplicaCatalog mReplicaCatalog;
+
+        /** The locations of the files. */
+        private Map<String, Collection<ReplicaCatalogEntry>> mMappings;
+
+        /** The exception encountered while connecting to or querying the replica catalog. */
+        private Exception mException;
+
+        private Lookup(Set searchFiles) {
+            mSearchFiles = searchFiles;
+        }
+
+        /**
+         * Throws the exception encountered during the lookup, if any.
+         *
+         * @throws Exception the exception encountered.
+         */
+        private void rethrow() throws Exception {
+            if (mException != null) {
+                throw mException;
+            }
+        }
+    }
 }
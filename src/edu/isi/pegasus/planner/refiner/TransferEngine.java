@@ -235,7 +235,6 @@ public class TransferEngine extends Engine {
 
         Job currentJob;
         String currentJobName;
-        String msg;
 
         // convert the dax to a graph representation and walk it
         // in a top down manner
@@ -256,14 +255,16 @@ public class TransferEngine extends Engine {
             currentJobName = currentJob.getName();
 
             mLogger.log("", LogManager.DEBUG_MESSAGE_LEVEL);
-            msg = "Job being traversed is " + currentJobName;
-            mLogger.log(msg, LogManager.DEBUG_MESSAGE_LEVEL);
-            msg = "To be run at " + currentJob.executionPool;
-            mLogger.log(msg, LogManager.DEBUG_MESSAGE_LEVEL);
+            mLogger.log(
+                    LogManager.DEBUG_MESSAGE_LEVEL, "Job being traversed is {}", currentJobName);
+            mLogger.log(
+                    LogManager.DEBUG_MESSAGE_LEVEL, "To be run at {}", currentJob.executionPool);
 
             // getting the parents of that node
             Collection<GraphNode> parents = node.getParents();
-            mLogger.log("Parents of job:" + node.parentsToString(), LogManager.DEBUG_MESSAGE_LEVEL);
+            mLogger.log(
+                    () -> "Parents of job:" + node.parentsToString(),
+                    LogManager.DEBUG_MESSAGE_LEVEL);
             processParents(currentJob, parents);
 
             // transfer the nodes output files
@@ -571,13 +572,11 @@ public class TransferEngine extends Engine {
                         // the output map should transfer files to the staging site of the compute
                         // job in question. we log in the output map file for the DAX job
                         mLogger.log(
-                                "Parent DAX job "
-                                        + pJob.getID()
-                                        + " will transfer output file to "
-                                        + ft.getDestURL()
-                                        + " which is required by "
-                                        + job.getID(),
-                                LogManager.DEBUG_MESSAGE_LEVEL);
+                                LogManager.DEBUG_MESSAGE_LEVEL,
+                                "Parent DAX job {} will transfer output file to {} which is required by {}",
+                                pJob.getID(),
+                                ft.getDestURL(),
+                                job.getID());
                         ((DAXJob) pJob).addOutputFileLocation(mBag, ft);
 
                         // PM-1608 explicitly disable integrity checking as we don't
@@ -655,12 +654,10 @@ public class TransferEngine extends Engine {
             if (integrityDisabledFiles.contains(ip)) {
                 ip.setForIntegrityChecking(false);
                 mLogger.log(
-                        "Disabled file "
-                                + ip.getLFN()
-                                + " for job "
-                                + job.getID()
-                                + " for integrity checking",
-                        LogManager.TRACE_MESSAGE_LEVEL);
+                        LogManager.TRACE_MESSAGE_LEVEL,
+                        "Disabled file {} for job {} for integrity checking",
+                        ip.getLFN(),
+                        job.getID());
             }
         }
 
@@ -880,8 +877,7 @@ public class TransferEngine extends Engine {
         try {
             File f = mSubmitDirMapper.getRelativeDir(job);
             mLogger.log(
-                    "Directory for job " + job.getID() + " is " + f,
-                    LogManager.DEBUG_MESSAGE_LEVEL);
+                    LogManager.DEBUG_MESSAGE_LEVEL, "Directory for job {} is {}", job.getID(), f);
             relative = f.getPath();
         } catch (Exception ex) {
             throw new RuntimeException(
@@ -0,0 +1,449 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LoggingKeys;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the transitive reduction of a workflow, i.e. removes every edge A->C for which there is
+ * another path from A to C in the workflow. The dependencies between the jobs are unchanged. Every
+ * edge removed by ReduceEdges is removed, along with the redundant edges that the ancestor walks in
+ * ReduceEdges miss, since the transitive reduction of a DAG is unique.
+ *
+ * <p>The workflow is first split into its weakly connected components, which are reduced
+ * independently on a ForkJoinPool. Each component is topologically sorted and the reachability of
+ * every node is computed bottom up as a bitset indexed by topological position. An edge P->C is
+ * redundant if C is reachable from any of the children of P. To bound the memory used for very
+ * large components, the bitsets are computed for a block of target positions at a time.
+ *
+ * <p>The edges are only removed from the workflow once all the components have been reduced, so the
+ * graph itself is never accessed concurrently.
+ *
+ * @version $Revision$
+ */
+public class TransitiveReduction {
+
+    /** The name of the event logged when pruning the workflow. */
+    public static final String EVENT_NAME = LoggingKeys.EVENT_PEGASUS_WORKFLOW_PRUNE;
+
+    /**
+     * The maximum number of longs allocated for the reachability bitsets of a single component.
+     * Amounts to 64MB.
+     */
+    public static final int MAX_BITSET_WORDS = 1 << 23;
+
+    /** Components with fewer nodes are reduced inline, instead of being forked. */
+    private static final int SEQUENTIAL_THRESHOLD = 1024;
+
+    /** The handle to the logger. Can be null. */
+    private final LogManager mLogger;
+
+    /** The number of threads to use for reducing the components. */
+    private final int mThreads;
+
+    /** The maximum number of longs to be used for the bitsets of a component. */
+    private final int mMaxBitsetWords;
+
+    /** The number of edges removed by the last reduction. */
+    private int mRemovedEdges;
+
+    /** The number of weakly connected components in the last reduced workflow. */
+    private int mComponents;
+
+    /** The default constructor. */
+    public TransitiveReduction() {
+        this(null);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param logger the logger to use, can be null.
+     */
+    public TransitiveReduction(LogManager logger) {
+        this(logger, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param logger the logger to use, can be null.
+     * @param threads the number of threads to reduce components in parallel.
+     */
+    public TransitiveReduction(LogManager logger, int threads) {
+        this(logger, threads, MAX_BITSET_WORDS);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param logger the logger to use, can be null.
+     * @param threads the number of threads to reduce components in parallel.
+     * @param maxBitsetWords the maximum number of longs used for the bitsets of a component.
+     */
+    TransitiveReduction(LogManager logger, int threads, int maxBitsetWords) {
+        mLogger = logger;
+        mThreads = Math.max(1, threads);
+        mMaxBitsetWords = Math.max(1, maxBitsetWords);
+        mRemovedEdges = 0;
+        mComponents = 0;
+    }
+
+    /**
+     * Prunes redundant edges from the workflow, logging the event against the workflow label.
+     *
+     * @param dag the workflow
+     * @return the workflow with redundant edges removed
+     */
+    public ADag reduce(ADag dag) {
+        if (mLogger != null) {
+            mLogger.logEventStart(EVENT_NAME, LoggingKeys.DAX_ID, dag.getAbstractWorkflowName());
+        }
+        this.reduce((Graph) dag);
+        if (mLogger != null) {
+            mLogger.logEventCompletion();
+        }
+        return dag;
+    }
+
+    /**
+     * Prunes redundant edges from the workflow. For example if A->B->C and A->C exist, the edge
+     * A->C is deleted.
+     *
+     * @param workflow the workflow
+     * @return the workflow with redundant edges removed
+     */
+    public Graph reduce(Graph workflow) {
+        long start = System.currentTimeMillis();
+
+        // assign dense indices to the nodes
+        List<GraphNode> nodes = new ArrayList(workflow.size());
+        Map<String, Integer> indices = new HashMap();
+        for (Iterator<GraphNode> it = workflow.nodeIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            indices.put(node.getID(), nodes.size());
+            nodes.add(node);
+        }
+        int n = nodes.size();
+        int edges = 0;
+        int[][] children = new int[n][];
+        for (int i = 0; i < n; i++) {
+            int[] c = new int[nodes.get(i).getChildren().size()];
+            int j = 0;
+            for (GraphNode child : nodes.get(i).getChildren()) {
+                c[j++] = indices.get(child.getID());
+            }
+            children[i] = c;
+            edges += c.length;
+        }
+        indices = null;
+
+        int[][] components = this.weaklyConnectedComponents(children);
+        long[][] redundant = new long[components.length][];
+        int[] localIndex = new int[n];
+        for (int[] component : components) {
+            for (int i = 0; i < component.length; i++) {
+                localIndex[component[i]] = i;
+            }
+        }
+
+        if (mThreads > 1 && components.length > 1) {
+            ForkJoinPool pool = new ForkJoinPool(mThreads);
+            try {
+                pool.invoke(
+                        new ComponentTask(
+                                components, children, localIndex, redundant, 0, components.length));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            for (int i = 0; i < components.length; i++) {
+                redundant[i] = this.reduceComponent(components[i], children, localIndex);
+            }
+        }
+
+        // remove the edges serially
+        int removed = 0;
+        for (long[] pairs : redundant) {
+            for (long pair : pairs) {
+                GraphNode parent = nodes.get((int) (pair >>> 32));
+                GraphNode child = nodes.get((int) pair);
+                parent.removeChild(child);
+                child.removeParent(parent);
+                removed++;
+            }
+        }
+        mRemovedEdges = removed;
+        mComponents = components.length;
+
+        if (mLogger != null) {
+            mLogger.log(
+                    "Removed "
+                            + removed
+                            + " redundant edges out of "
+                            + edges
+                            + " across "
+                            + components.length
+                            + " components in "
+                            + (System.currentTimeMillis() - start)
+                            + " ms",
+                    LogManager.INFO_MESSAGE_LEVEL);
+        }
+        return workflow;
+    }
+
+    /**
+     * Returns the number of edges removed by the last reduction.
+     *
+     * @return the number of edges
+     */
+    public int getRemovedEdges() {
+        return mRemovedEdges;
+    }
+
+    /**
+     * Returns the number of weakly connected components in the last reduced workflow.
+     *
+     * @return the number of components
+     */
+    public int getComponents() {
+        return mComponents;
+    }
+
+    /**
+     * Splits the graph into its weakly connected components using union find.
+     *
+     * @param children the children of each node
+     * @return the nodes in each component, in ascending order of index
+     */
+    private int[][] weaklyConnectedComponents(int[][] children) {
+        int n = children.length;
+        int[] root = new int[n];
+        for (int i = 0; i < n; i++) {
+            root[i] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int child : children[i]) {
+                int a = find(root, i);
+                int b = find(root, child);
+                if (a != b) {
+                    root[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+
+        // the component root is always the smallest index in the component
+        int[] componentOf = new int[n];
+        int[] sizes = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int r = find(root, i);
+            componentOf[i] = (r == i) ? count++ : componentOf[r];
+            sizes[componentOf[i]]++;
+        }
+        int[][] components = new int[count][];
+        for (int c = 0; c < count; c++) {
+            components[c] = new int[sizes[c]];
+        }
+        Arrays.fill(sizes, 0);
+        for (int i = 0; i < n; i++) {
+            int c = componentOf[i];
+            components[c][sizes[c]++] = i;
+        }
+        return components;
+    }
+
+    /**
+     * Returns the representative for a node, compressing the path along the way.
+     *
+     * @param root the union find forest
+     * @param node the node
+     * @return the representative
+     */
+    private static int find(int[] root, int node) {
+        while (root[node] != node) {
+            root[node] = root[root[node]];
+            node = root[node];
+        }
+        return node;
+    }
+
+    /**
+     * Determines the redundant edges in a single weakly connected component.
+     *
+     * @param component the global indices of the nodes in the component
+     * @param children the children of each node, as global indices
+     * @param localIndex the index of each node in its component
+     * @return the redundant edges, encoded as parent index in the high and child index in the low
+     *     32 bits of a long
+     */
+    long[] reduceComponent(int[] component, int[][] children, int[] localIndex) {
+        int n = component.length;
+        if (n < 3) {
+            // need at least three nodes for a redundant edge
+            return new long[0];
+        }
+
+        // Kahn's algorithm to determine the topological position of each node
+        int[] inDegree = new int[n];
+        for (int global : component) {
+            for (int child : children[global]) {
+                inDegree[localIndex[child]]++;
+            }
+        }
+        int[] order = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            if (inDegree[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+        int[] position = new int[n];
+        while (head < tail) {
+            int local = order[head];
+            position[local] = head++;
+            for (int child : children[component[local]]) {
+                int c = localIndex[child];
+                if (--inDegree[c] == 0) {
+                    order[tail++] = c;
+                }
+            }
+        }
+        if (tail != n) {
+            throw new RuntimeException("Workflow has cycles. Unable to prune edges");
+        }
+
+        // the children of each node as topological positions
+        int[][] successors = new int[n][];
+        for (int p = 0; p < n; p++) {
+            int[] c = children[component[order[p]]];
+            int[] s = new int[c.length];
+            for (int j = 0; j < c.length; j++) {
+                s[j] = position[localIndex[c[j]]];
+            }
+            successors[p] = s;
+        }
+
+        int totalWords = (n + 63) >>> 6;
+        int words = (int) Math.max(1, Math.min(totalWords, (long) mMaxBitsetWords / n));
+        int blockBits = words << 6;
+        long[] bits = new long[n * words];
+        long[] redundant = new long[16];
+        int count = 0;
+
+        for (int lo = 0; lo < n; lo += blockBits) {
+            int hi = Math.min(n, lo + blockBits);
+            // nodes at or after hi cannot reach any target in the block
+            for (int p = hi - 1; p >= 0; p--) {
+                int row = p * words;
+                Arrays.fill(bits, row, row + words, 0L);
+                int[] s = successors[p];
+
+                // the targets reachable through the children
+                for (int q : s) {
+                    if (q < hi) {
+                        int from = q * words;
+                        for (int w = 0; w < words; w++) {
+                            bits[row + w] |= bits[from + w];
+                        }
+                    }
+                }
+                for (int q : s) {
+                    if (q >= lo && q < hi) {
+                        int bit = q - lo;
+                        if ((bits[row + (bit >>> 6)] & (1L << bit)) != 0) {
+                            if (count == redundant.length) {
+                                redundant = Arrays.copyOf(redundant, count << 1);
+                            }
+                            redundant[count++] =
+                                    ((long) component[order[p]] << 32) | component[order[q]];
+                        }
+                    }
+                }
+                // the children themselves are reachable
+                for (int q : s) {
+                    if (q >= lo && q < hi) {
+                        int bit = q - lo;
+                        bits[row + (bit >>> 6)] |= (1L << bit);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(redundant, count);
+    }
+
+    /** Reduces a range of components, forking off halves of the range until it is small enough. */
+    private class ComponentTask extends RecursiveAction {
+
+        private final int[][] mComponentNodes;
+
+        private final int[][] mChildren;
+
+        private final int[] mLocalIndex;
+
+        private final long[][] mRedundant;
+
+        private final int mFrom;
+
+        private final int mTo;
+
+        ComponentTask(
+                int[][] components,
+                int[][] children,
+                int[] localIndex,
+                long[][] redundant,
+                int from,
+                int to) {
+            mComponentNodes = components;
+            mChildren = children;
+            mLocalIndex = localIndex;
+            mRedundant = redundant;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            int nodes = 0;
+            for (int i = mFrom; i < mTo && nodes < SEQUENTIAL_THRESHOLD; i++) {
+                nodes += mComponentNodes[i].length;
+            }
+            if (mTo - mFrom == 1 || nodes < SEQUENTIAL_THRESHOLD) {
+                for (int i = mFrom; i < mTo; i++) {
+                    mRedundant[i] = reduceComponent(mComponentNodes[i], mChildren, mLocalIndex);
+                }
+                return;
+            }
+            int mid = (mFrom + mTo) >>> 1;
+            invokeAll(
+                    new ComponentTask(
+                            mComponentNodes, mChildren, mLocalIndex, mRedundant, mFrom, mid),
+                    new ComponentTask(
+                            mComponentNodes, mChildren, mLocalIndex, mRedundant, mid, mTo));
+        }
+    }
+}
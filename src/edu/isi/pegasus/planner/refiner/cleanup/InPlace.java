@@ -75,19 +75,21 @@ public class InPlace extends AbstractCleanupStrategy {
      */
     private void addCleanUpJobs(String site, Set leaves, Graph workflow) {
 
-        mLogger.log(site + " " + leaves.size(), LogManager.DEBUG_MESSAGE_LEVEL);
+        mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "{} {}", site, leaves.size());
         HashMap cleanedBy = new HashMap();
 
         // the below in case we get rid of the primitive java 1.4
         // PriorityQueue<GraphNode> pQ=new
         // PriorityQueue<GraphNode>(resMap.get(site).size(),GraphNode_ORDER);
-        StringBuffer message = new StringBuffer();
-        message.append("Leaf  jobs scheduled at site ").append(site).append(" are ");
-        for (Iterator it = leaves.iterator(); it.hasNext(); ) {
-            message.append(((GraphNode) it.next()).getID());
-            message.append(",");
+        if (mLogger.isLoggable(LogManager.DEBUG_MESSAGE_LEVEL)) {
+            StringBuffer message = new StringBuffer();
+            message.append("Leaf  jobs scheduled at site ").append(site).append(" are ");
+            for (Iterator it = leaves.iterator(); it.hasNext(); ) {
+                message.append(((GraphNode) it.next()).getID());
+                message.append(",");
+            }
+            mLogger.log(message.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
         }
-        mLogger.log(message.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
 
         // its a Set of GraphNode's
         Set[] pQA = new Set[mMaxDepth + 1];
@@ -131,11 +133,10 @@ public class InPlace extends AbstractCleanupStrategy {
                         // itself
                         it.remove();
                         mLogger.log(
-                                "File "
-                                        + pf.getLFN()
-                                        + " will not be cleaned up for job "
-                                        + curGN_SI.getID(),
-                                LogManager.DEBUG_MESSAGE_LEVEL);
+                                LogManager.DEBUG_MESSAGE_LEVEL,
+                                "File {} will not be cleaned up for job {}",
+                                pf.getLFN(),
+                                curGN_SI.getID());
                     }
 
                     // PM-1918 additional filtering for sub workflow input file
@@ -168,11 +169,10 @@ public class InPlace extends AbstractCleanupStrategy {
                         fileSet.add(pf);
                     } else {
                         mLogger.log(
-                                "File "
-                                        + pf.getLFN()
-                                        + " will not be cleaned up for job "
-                                        + curGN_SI.getID(),
-                                LogManager.DEBUG_MESSAGE_LEVEL);
+                                LogManager.DEBUG_MESSAGE_LEVEL,
+                                "File {} will not be cleaned up for job {}",
+                                pf.getLFN(),
+                                curGN_SI.getID());
                     }
                 }
 
@@ -214,11 +214,10 @@ public class InPlace extends AbstractCleanupStrategy {
                 //                if( nuGN.getParents().size() >= 1 ){
                 if (!cleanupFiles.isEmpty()) {
                     mLogger.log(
-                            "Adding stub cleanup node with ID "
-                                    + nuGN.getID()
-                                    + " to the level list for level "
-                                    + curP,
-                            LogManager.DEBUG_MESSAGE_LEVEL);
+                            LogManager.DEBUG_MESSAGE_LEVEL,
+                            "Adding stub cleanup node with ID {} to the level list for level {}",
+                            nuGN.getID(),
+                            curP);
 
                     // PM-663, we need to store the compute job
                     // with the cleanupNode but do with a copy
@@ -257,13 +256,11 @@ public class InPlace extends AbstractCleanupStrategy {
                                         + cleanupNode.getID());
                     }
                     computeJob = (Job) node.getContent();
-                    message = new StringBuffer();
-                    message.append("For cleanup job ")
-                            .append(cleanupNode.getID())
-                            .append(" the associated compute job is ")
-                            .append(computeJob.getID());
-
-                    mLogger.log(message.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
+                    mLogger.log(
+                            LogManager.DEBUG_MESSAGE_LEVEL,
+                            "For cleanup job {} the associated compute job is {}",
+                            cleanupNode.getID(),
+                            computeJob.getID());
 
                 } else {
                     computeJob = curGN_SI;
@@ -293,15 +290,18 @@ public class InPlace extends AbstractCleanupStrategy {
                 "For site: " + site + " number of files cleaned up - " + cleanedBy.keySet().size(),
                 LogManager.INFO_MESSAGE_LEVEL);
         mLogger.log("CLEANUP LIST", LogManager.DEBUG_MESSAGE_LEVEL);
-        for (Iterator it = cleanedBy.keySet().iterator(); it.hasNext(); ) {
-            String lfn = (String) it.next();
-            GraphNode cl_GN = (GraphNode) cleanedBy.get(lfn);
-            Job cl_si = (Job) cl_GN.getContent();
-            // Arun please use a StringBuffer first
-            // Karan March 13, 2007
-            mLogger.log(
-                    "file:" + lfn + "  site:" + cl_si.getSiteHandle() + " " + cl_GN.getID(),
-                    LogManager.DEBUG_MESSAGE_LEVEL);
+        if (mLogger.isLoggable(LogManager.DEBUG_MESSAGE_LEVEL)) {
+            for (Iterator it = cleanedBy.keySet().iterator(); it.hasNext(); ) {
+                String lfn = (String) it.next();
+                GraphNode cl_GN = (GraphNode) cleanedBy.get(lfn);
+                Job cl_si = (Job) cl_GN.getContent();
+                mLogger.log(
+                        LogManager.DEBUG_MESSAGE_LEVEL,
+                        "file:{}  site:{} {}",
+                        lfn,
+                        cl_si.getSiteHandle(),
+                        cl_GN.getID());
+            }
         }
 
         // reduce dependencies. for each cleanup job X, look at the parents of
@@ -310,8 +310,9 @@ public class InPlace extends AbstractCleanupStrategy {
         // be removed.
         for (GraphNode cleanupNode : wfCleanupNodes) {
             mLogger.log(
-                    "Reducing edges for the cleanup node " + cleanupNode.getID(),
-                    mLogger.DEBUG_MESSAGE_LEVEL);
+                    LogManager.DEBUG_MESSAGE_LEVEL,
+                    "Reducing edges for the cleanup node {}",
+                    cleanupNode.getID());
             reduceDependency(cleanupNode);
         }
     }
@@ -395,12 +396,11 @@ public class InPlace extends AbstractCleanupStrategy {
             if (!job.condorVariables.containsKey(Condor.PRIORITY_KEY)) {
 
                 // log to debug
-                StringBuilder sb = new StringBuilder();
-                sb.append("Applying priority of ")
-                        .append(node.getDepth())
-                        .append(" to ")
-                        .append(job.getID());
-                mLogger.log(sb.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
+                mLogger.log(
+                        LogManager.DEBUG_MESSAGE_LEVEL,
+                        "Applying priority of {} to {}",
+                        node.getDepth(),
+                        job.getID());
 
                 // apply a priority to the job overwriting any preexisting priority
                 job.condorVariables.construct(
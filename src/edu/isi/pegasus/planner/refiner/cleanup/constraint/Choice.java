@@ -14,6 +14,7 @@
 package edu.isi.pegasus.planner.refiner.cleanup.constraint;
 
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
@@ -23,6 +24,33 @@ import java.util.Map;
  */
 public class Choice {
 
+    /**
+     * Orders choices by their intermediate space requirement. Ties are broken on the id of the
+     * first job in the choice.
+     */
+    public static final Comparator<Choice> INTERMEDIATE_REQUIREMENT_ORDER =
+            new Comparator<Choice>() {
+                @Override
+                public int compare(Choice a, Choice b) {
+                    int result =
+                            Long.compare(
+                                    a.intermediateSpaceRequirement, b.intermediateSpaceRequirement);
+                    return result == 0 ? compareJobs(a, b) : result;
+                }
+            };
+
+    /**
+     * Orders choices by their balance. Ties are broken on the id of the first job in the choice.
+     */
+    public static final Comparator<Choice> BALANCE_ORDER =
+            new Comparator<Choice>() {
+                @Override
+                public int compare(Choice a, Choice b) {
+                    int result = Long.compare(a.balance, b.balance);
+                    return result == 0 ? compareJobs(a, b) : result;
+                }
+            };
+
     public final long intermediateSpaceRequirement;
     public final long balance;
     public final List<GraphNode> listOfJobs;
@@ -63,4 +91,15 @@ public class Choice {
         }
         return build.toString();
     }
+
+    /**
+     * Compares the ids of the first jobs of two choices.
+     *
+     * @param a the first choice
+     * @param b the second choice
+     * @return the result of comparing the job ids
+     */
+    private static int compareJobs(Choice a, Choice b) {
+        return a.listOfJobs.get(0).getID().compareTo(b.listOfJobs.get(0).getID());
+    }
 }
@@ -19,7 +19,7 @@ import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.selector.site.heft.Algorithm;
-import edu.isi.pegasus.planner.selector.site.heft.HeftBag;
+import edu.isi.pegasus.planner.selector.site.heft.IndexedAlgorithm;
 import java.util.Iterator;
 import java.util.List;
 
@@ -44,7 +44,7 @@ import java.util.List;
 public class Heft extends Abstract {
 
     /** An instance of the class that implements the HEFT algorithm. */
-    private Algorithm mHeftImpl;
+    private IndexedAlgorithm mHeftImpl;
 
     /** The default constructor. */
     public Heft() {
@@ -58,7 +58,7 @@ public class Heft extends Abstract {
      */
     public void initialize(PegasusBag bag) {
         super.initialize(bag);
-        mHeftImpl = new Algorithm(bag);
+        mHeftImpl = new IndexedAlgorithm(bag);
     }
 
     /**
@@ -98,7 +98,7 @@ public class Heft extends Abstract {
         for (Iterator it = workflow.nodeIterator(); it.hasNext(); ) {
             GraphNode node = (GraphNode) it.next();
             Job job = (Job) node.getContent();
-            job.setSiteHandle((String) node.getBag().get(HeftBag.SCHEDULED_SITE));
+            job.setSiteHandle(mHeftImpl.getScheduledSite(node));
         }
     }
 
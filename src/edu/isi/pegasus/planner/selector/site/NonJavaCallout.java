@@ -13,8 +13,12 @@
  */
 package edu.isi.pegasus.planner.selector.site;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.common.util.DefaultStreamGobblerCallback;
+import edu.isi.pegasus.common.util.StreamGobbler;
 import edu.isi.pegasus.planner.catalog.site.classes.Directory;
 import edu.isi.pegasus.planner.catalog.site.classes.FileServer;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
@@ -23,14 +27,20 @@ import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.PegasusFile;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -150,6 +160,21 @@ import java.util.StringTokenizer;
  * selector, see property <code>pegasus.selector.site.timeout</code>. By default, a site selector is
  * given up upon after 60 s.
  *
+ * <p>If the property <code>pegasus.selector.site.batch</code> is set to true, the external
+ * application is invoked only once for the whole workflow, with the single commandline argument
+ * <code>--batch</code>. The jobs are streamed to its stdin as newline delimited JSON records, one
+ * per job, with the same keys as in the temporary file. Keys that can occur multiple times, such as
+ * resource.id and input.lfn, have an array of values. The stdin is closed after the last job. The
+ * application writes out one JSON record per line on its stdout for each job it maps, for example
+ *
+ * <pre>
+ *   {"job.id": "ID000001", "site": "mysite", "jobmanager": "my.job.mgr/jobmanager-batch"}
+ *   {"job.id": "ID000002", "site": "siteY"}
+ * </pre>
+ *
+ * The jobs for which no mapping is returned, are mapped by invoking the application per job as
+ * described above.
+ *
  * <p>
  *
  * @author Karan Vahi
@@ -185,6 +210,18 @@ public class NonJavaCallout extends AbstractPerJob {
     /** The version number associated with this API of non java callout site selection. */
     public static final String VERSION = "2.0";
 
+    /** The argument with which the site selector is invoked in batch mode. */
+    public static final String BATCH_ARGUMENT = "--batch";
+
+    /** The key for the job id in the records exchanged in batch mode. */
+    public static final String JOB_ID_KEY = "job.id";
+
+    /** The key for the site in the records returned in batch mode. */
+    public static final String SITE_KEY = "site";
+
+    /** The key for the jobmanager in the records returned in batch mode. */
+    public static final String JOBMANAGER_KEY = "jobmanager";
+
     // tristate variables for keeping the temporary files generated
 
     /** The state denoting never to keep the temporary files. */
@@ -221,6 +258,15 @@ public class NonJavaCallout extends AbstractPerJob {
     /** The abstract DAG. */
     private ADag mAbstractDag;
 
+    /** Whether to invoke the site selector once for all the jobs. */
+    private boolean mBatchMode;
+
+    /**
+     * The jobs collected for the site selector while traversing the workflow in batch mode. Null
+     * when not traversing.
+     */
+    private List<Job> mBatch;
+
     /** The default constructor. */
     public NonJavaCallout() {
         super();
@@ -245,6 +291,7 @@ public class NonJavaCallout extends AbstractPerJob {
         this.loadEnvironmentVariables();
         // get the value from the properties file.
         mKeepTMP = getKeepTMPValue(mProps.getSiteSelectorKeep());
+        mBatchMode = mProps.getSiteSelectorBatch();
     }
 
     /**
@@ -257,8 +304,35 @@ public class NonJavaCallout extends AbstractPerJob {
      */
     public void mapWorkflow(ADag workflow, List sites) {
         mAbstractDag = workflow;
-        // PM-747 no need for conversion as ADag now implements Graph interface
-        super.mapWorkflow(workflow, sites);
+        if (!mBatchMode) {
+            // PM-747 no need for conversion as ADag now implements Graph interface
+            super.mapWorkflow(workflow, sites);
+            return;
+        }
+
+        // traverse the workflow to collect the jobs that need to be
+        // mapped, and then hand them to the site selector together
+        List<Job> jobs = new ArrayList<Job>();
+        mBatch = jobs;
+        try {
+            super.mapWorkflow(workflow, sites);
+        } finally {
+            mBatch = null;
+        }
+
+        List<Job> unmapped = this.mapJobs(jobs, sites);
+        if (!unmapped.isEmpty()) {
+            mLogger.log(
+                    "Site selector did not map "
+                            + unmapped.size()
+                            + " of "
+                            + jobs.size()
+                            + " jobs in batch mode. Calling out to it for each of them",
+                    LogManager.WARNING_MESSAGE_LEVEL);
+            for (Job job : unmapped) {
+                this.mapJob(job, sites);
+            }
+        }
     }
 
     /**
@@ -285,6 +359,12 @@ public class NonJavaCallout extends AbstractPerJob {
      * @see edu.isi.pegasus.planner.classes.Job
      */
     public void mapJob(Job job, List sites) {
+        if (mBatch != null) {
+            // in batch mode the job is mapped later along with the other jobs
+            mBatch.add(job);
+            return;
+        }
+
         Runtime rt = Runtime.getRuntime();
 
         // prepare the temporary file that needs to be sent to the
@@ -423,10 +503,305 @@ public class NonJavaCallout extends AbstractPerJob {
     }
 
     /**
-     * Writes job knowledge into the temporary file passed to the external site selector. The job
-     * knowledge derives from the contents of the DAX job's <code>Job</code> record, and the a list
-     * of site candidates. The format of the file is laid out in the class's introductory
-     * documentation.
+     * Calls out to the external site selector once for a list of jobs. The jobs are streamed to the
+     * stdin of the site selector as newline delimited JSON records, and the mappings are read back
+     * from its stdout as JSON records, one per line.
+     *
+     * @param jobs the jobs to be mapped.
+     * @param sites the list of <code>String</code> objects representing the execution sites that
+     *     can be used.
+     * @return the jobs for which the site selector did not return a mapping.
+     */
+    private List<Job> mapJobs(List<Job> jobs, List sites) {
+        List<Job> unmapped = new ArrayList<Job>();
+        if (jobs.isEmpty()) {
+            return unmapped;
+        }
+        String command = this.mSiteSelectorPath;
+        if (command == null) {
+            throw new RuntimeException(
+                    "Site Selector: Please set the path to the external site "
+                            + "selector in the properties! ");
+        }
+
+        // the jobs are identified by their id in the DAX. jobs with
+        // a duplicate id are left to be mapped individually
+        final Map<String, Job> pending = new LinkedHashMap<String, Job>();
+        for (Job job : jobs) {
+            if (pending.containsKey(job.logicalId)) {
+                unmapped.add(job);
+            } else {
+                pending.put(job.logicalId, job);
+            }
+        }
+        final List<Map<String, Object>> records = new ArrayList<Map<String, Object>>();
+        for (Job job : pending.values()) {
+            records.add(this.toRecord(job, sites));
+        }
+
+        long start = System.currentTimeMillis();
+        final ObjectMapper mapper = new ObjectMapper();
+        final long[] lastActivity = new long[] {start};
+        final boolean[] timedOut = new boolean[] {false};
+        Process p = null;
+        Thread watchdog = null;
+        try {
+            mLogger.log(
+                    "Calling out to site selector " + command + " " + BATCH_ARGUMENT,
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            p =
+                    Runtime.getRuntime()
+                            .exec(new String[] {command, BATCH_ARGUMENT}, getEnvArrFromMap());
+            final Process process = p;
+
+            StreamGobbler stderr =
+                    new StreamGobbler(
+                            p.getErrorStream(),
+                            new DefaultStreamGobblerCallback(LogManager.ERROR_MESSAGE_LEVEL));
+            stderr.start();
+
+            // the jobs are written on a separate thread, so that a site selector
+            // writing out mappings while jobs are still being written to it
+            // does not block on a full pipe
+            Thread writer =
+                    new Thread("site-selector-writer") {
+                        public void run() {
+                            Writer stdin =
+                                    new BufferedWriter(
+                                            new OutputStreamWriter(
+                                                    process.getOutputStream(),
+                                                    StandardCharsets.UTF_8));
+                            try {
+                                for (Map<String, Object> record : records) {
+                                    stdin.write(mapper.writeValueAsString(record));
+                                    stdin.write('\n');
+                                }
+                                stdin.close();
+                            } catch (IOException e) {
+                                mLogger.log(
+                                        "While writing jobs to the site selector: "
+                                                + e.getMessage(),
+                                        LogManager.ERROR_MESSAGE_LEVEL);
+                            }
+                        }
+                    };
+            writer.setDaemon(true);
+            writer.start();
+
+            if (mTimeout > 0) {
+                // give up on the site selector if nothing is heard
+                // from it for the timeout period
+                watchdog =
+                        new Thread("site-selector-watchdog") {
+                            public void run() {
+                                try {
+                                    while (true) {
+                                        long idle;
+                                        synchronized (lastActivity) {
+                                            idle = System.currentTimeMillis() - lastActivity[0];
+                                        }
+                                        if (idle >= mTimeout * 1000L) {
+                                            timedOut[0] = true;
+                                            process.destroy();
+                                            return;
+                                        }
+                                        Thread.sleep(Math.min(1000, mTimeout * 1000L - idle));
+                                    }
+                                } catch (InterruptedException e) {
+                                    // the site selector is done
+                                }
+                            }
+                        };
+                watchdog.setDaemon(true);
+                watchdog.start();
+            }
+
+            BufferedReader stdout =
+                    new BufferedReader(
+                            new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = stdout.readLine()) != null) {
+                synchronized (lastActivity) {
+                    lastActivity[0] = System.currentTimeMillis();
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (!this.parseMapping(line, pending, mapper)) {
+                    mLogger.log("[Site Selector stdout] " + line, LogManager.DEBUG_MESSAGE_LEVEL);
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+            }
+            stdout.close();
+
+            int status = p.waitFor();
+            stderr.join();
+            if (timedOut[0]) {
+                mLogger.log(
+                        "External Site Selector timeout after " + mTimeout + " seconds",
+                        LogManager.ERROR_MESSAGE_LEVEL);
+            } else if (status != 0) {
+                mLogger.log(
+                        "Site Selector exited with non zero exit " + "status " + status,
+                        LogManager.WARNING_MESSAGE_LEVEL);
+            }
+        } catch (IOException e) {
+            mLogger.log("[Site selector] " + e.getMessage(), LogManager.ERROR_MESSAGE_LEVEL);
+            if (p != null) {
+                p.destroy();
+            }
+        } catch (InterruptedException e) {
+            mLogger.log(
+                    "Waiting for site selector to exit: " + e.getMessage(),
+                    LogManager.ERROR_MESSAGE_LEVEL);
+            p.destroy();
+        } finally {
+            if (watchdog != null) {
+                watchdog.interrupt();
+            }
+        }
+
+        mLogger.log(
+                LogManager.INFO_MESSAGE_LEVEL,
+                "Site selector mapped {} of {} jobs in batch mode in {} ms",
+                records.size() - pending.size(),
+                jobs.size(),
+                System.currentTimeMillis() - start);
+        unmapped.addAll(pending.values());
+        return unmapped;
+    }
+
+    /**
+     * Parses a mapping returned by the site selector in batch mode, and maps the job it refers to.
+     *
+     * @param line the line written out by the site selector.
+     * @param pending the jobs not mapped yet indexed by their ids. The job mapped is removed.
+     * @param mapper the mapper to parse the JSON record with.
+     * @return boolean indicating whether the line was a mapping for a pending job.
+     */
+    private boolean parseMapping(String line, Map<String, Job> pending, ObjectMapper mapper) {
+        JsonNode record;
+        try {
+            record = mapper.readTree(line);
+        } catch (IOException e) {
+            return false;
+        }
+        if (record == null || !record.isObject()) {
+            return false;
+        }
+        String id = record.path(JOB_ID_KEY).asText(null);
+        String site = record.path(SITE_KEY).asText(null);
+        Job job = (id == null) ? null : pending.get(id);
+        if (job == null || site == null) {
+            mLogger.log(
+                    "Ignoring invalid mapping from site selector " + line,
+                    LogManager.WARNING_MESSAGE_LEVEL);
+            return true;
+        }
+        job.setSiteHandle(site);
+        job.setJobManager(record.path(JOBMANAGER_KEY).asText(null));
+        pending.remove(id);
+        return true;
+    }
+
+    /**
+     * Collects the job knowledge passed to the external site selector. The job knowledge derives
+     * from the contents of the DAX job's <code>Job</code> record, and the a list of site
+     * candidates. The keys are laid out in the class's introductory documentation. Keys that can
+     * occur multiple times have a list of values.
+     *
+     * @param job is a representation of the DAX compute job whose site of execution need to be
+     *     determined.
+     * @param pools is a list of site candidates. The items of the list are <code>String</code>
+     *     objects.
+     * @return the job knowledge in the order it is passed to the site selector.
+     */
+    private Map<String, Object> toRecord(Job job, List pools) {
+        Map<String, Object> record = new LinkedHashMap<String, Object>();
+
+        // write out the version of the api
+        record.put("version", this.VERSION);
+
+        // fw.write("\nvds_job_name=" + job.jobName);
+        record.put("transformation", job.getCompleteTCName());
+        record.put("derivation", job.getCompleteDVName());
+
+        // write out the job id and level as gotten from dax
+        record.put("job.level", Integer.toString(job.level));
+        record.put(JOB_ID_KEY, job.logicalId);
+
+        // at present Pegasus always asks to schedule compute jobs
+        // User should be able to specify through vdl or the pool config file.
+        // Karan Feb 10 3:00 PM PDT
+        // pw.println("vds_scheduler_preference=regular");
+
+        // write down the list of exec Pools and their corresponding grid
+        // ftp servers
+        List<String> resources = new ArrayList<String>();
+        if (pools.isEmpty()) {
+            // just write out saying illustrating no exec pool or grid ftp
+            // server passed to site selector. Upto the selector to do what
+            // it wants.
+
+            // FIXME: We need to define this part of the interface. If there
+            // are not site candidates, should it ever reach this part of
+            // the code? If now, insert assertion and abort here. If yes, we
+            // need to define this case! But just silently write the below
+            // will not site will with our set of site selectors.
+            resources.add("NONE NONE");
+        } else {
+            String st, pool;
+            for (Iterator i = pools.iterator(); i.hasNext(); ) {
+                pool = (String) i.next();
+                st = pool + " ";
+
+                SiteCatalogEntry site = mSiteStore.lookup(pool);
+                /*
+                for( Iterator it = site.getHeadNodeFS().getScratch().getSharedDirectory().getFileServersIterator(); it.hasNext();){
+                    pw.println(st + ( (FileServer) it.next()).getURLPrefix() );
+                }*/
+                Directory d = site.getDirectory(Directory.TYPE.shared_scratch);
+                if (d != null) {
+                    for (FileServer.OPERATION op : FileServer.OPERATION.values()) {
+                        for (Iterator it = d.getFileServersIterator(op); it.hasNext(); ) {
+                            resources.add(st + ((FileServer) it.next()).getURLPrefix());
+                        }
+                    }
+                }
+            } // for
+        }
+        record.put("resource.id", resources);
+
+        // write the input files
+        List<String> lfns = new ArrayList<String>();
+        for (Iterator i = job.inputFiles.iterator(); i.hasNext(); )
+            lfns.add(((PegasusFile) i.next()).getLFN());
+        record.put("input.lfn", lfns);
+
+        // write workflow related metadata
+        if (this.mAbstractDag != null) {
+            record.put("wf.name", mAbstractDag.getLabel());
+            record.put("wf.index", mAbstractDag.getIndex());
+            // pw.println("workflow.time=" + mAbstractDag.dagInfo.time??);
+            // FIXME: Try File.lastModified() on the DAX file
+
+            // should actually be picked up from the properties file
+            record.put("wf.manager", "dagman");
+        }
+
+        // uninitialized values
+        record.put("vo.name", "NONE");
+        record.put("vo.group", "NONE");
+
+        return record;
+    }
+
+    /**
+     * Writes job knowledge into the temporary file passed to the external site selector. The format
+     * of the file is laid out in the class's introductory documentation.
      *
      * @param job is a representation of the DAX compute job whose site of execution need to be
      *     determined.
@@ -435,6 +810,7 @@ public class NonJavaCallout extends AbstractPerJob {
      * @return the temporary input file was successfully prepared. A value of <code>null</code>
      *     implies that an error occured while writing the file.
      * @see #getTempFilename()
+     * @see #toRecord(Job, List)
      */
     private File prepareInputFile(Job job, List pools) {
         File f = new File(this.getTempFilename());
@@ -443,76 +819,17 @@ public class NonJavaCallout extends AbstractPerJob {
         try {
             pw = new PrintWriter(new FileWriter(f));
 
-            // write out the version of the api
-            pw.println("version=" + this.VERSION);
-
-            // fw.write("\nvds_job_name=" + job.jobName);
-            pw.println("transformation=" + job.getCompleteTCName());
-            pw.println("derivation=" + job.getCompleteDVName());
-
-            // write out the job id and level as gotten from dax
-            pw.println("job.level=" + job.level);
-            pw.println("job.id=" + job.logicalId);
-
-            // at present Pegasus always asks to schedule compute jobs
-            // User should be able to specify through vdl or the pool config file.
-            // Karan Feb 10 3:00 PM PDT
-            // pw.println("vds_scheduler_preference=regular");
-
-            // write down the list of exec Pools and their corresponding grid
-            // ftp servers
-            if (pools.isEmpty()) {
-                // just write out saying illustrating no exec pool or grid ftp
-                // server passed to site selector. Upto the selector to do what
-                // it wants.
-
-                // FIXME: We need to define this part of the interface. If there
-                // are not site candidates, should it ever reach this part of
-                // the code? If now, insert assertion and abort here. If yes, we
-                // need to define this case! But just silently write the below
-                // will not site will with our set of site selectors.
-                pw.println("resource.id=NONE NONE");
-            } else {
-                String st, pool;
-                for (Iterator i = pools.iterator(); i.hasNext(); ) {
-                    pool = (String) i.next();
-                    st = "resource.id=" + pool + " ";
-
-                    SiteCatalogEntry site = mSiteStore.lookup(pool);
-                    /*
-                    for( Iterator it = site.getHeadNodeFS().getScratch().getSharedDirectory().getFileServersIterator(); it.hasNext();){
-                        pw.println(st + ( (FileServer) it.next()).getURLPrefix() );
-                    }*/
-                    Directory d = site.getDirectory(Directory.TYPE.shared_scratch);
-                    if (d != null) {
-                        for (FileServer.OPERATION op : FileServer.OPERATION.values()) {
-                            for (Iterator it = d.getFileServersIterator(op); it.hasNext(); ) {
-                                pw.println(st + ((FileServer) it.next()).getURLPrefix());
-                            }
-                        }
+            // each key value pair stands on a line of its own
+            for (Map.Entry<String, Object> entry : this.toRecord(job, pools).entrySet()) {
+                if (entry.getValue() instanceof List) {
+                    for (Object value : (List) entry.getValue()) {
+                        pw.println(entry.getKey() + "=" + value);
                     }
-                } // for
-            }
-
-            // write the input files
-            for (Iterator i = job.inputFiles.iterator(); i.hasNext(); )
-                pw.println("input.lfn=" + ((PegasusFile) i.next()).getLFN());
-
-            // write workflow related metadata
-            if (this.mAbstractDag != null) {
-                pw.println("wf.name=" + mAbstractDag.getLabel());
-                pw.println("wf.index=" + mAbstractDag.getIndex());
-                // pw.println("workflow.time=" + mAbstractDag.dagInfo.time??);
-                // FIXME: Try File.lastModified() on the DAX file
-
-                // should actually be picked up from the properties file
-                pw.println("wf.manager=" + "dagman");
+                } else {
+                    pw.println(entry.getKey() + "=" + entry.getValue());
+                }
             }
 
-            // uninitialized values
-            pw.println("vo.name=" + "NONE");
-            pw.println("vo.group=" + "NONE");
-
             // done
             pw.flush();
             pw.close();
@@ -26,6 +26,7 @@ import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.Profile;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.namespace.Pegasus;
+import edu.isi.pegasus.planner.namespace.Selector;
 import edu.isi.pegasus.planner.partitioner.graph.Bag;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
@@ -57,6 +58,10 @@ import java.util.Map;
  *      not follow the insertion based approach.
  * </pre>
  *
+ * <p>A job that is pinned to a runnable site through the execution site key of the selector or
+ * hints profiles is only scheduled on that site. That keeps the schedule of the other jobs
+ * consistent with where the pinned jobs end up running.
+ *
  * @author Karan Vahi
  * @version $Revision$
  * @see #AVERAGE_BANDWIDTH
@@ -232,6 +237,10 @@ public class Algorithm {
             List runnableSites =
                     mTCMapper.getSiteList(
                             job.getTXNamespace(), job.getTXName(), job.getTXVersion(), mSites);
+            String pinned = this.getPinnedSite(job);
+            if (pinned != null && runnableSites.contains(pinned)) {
+                runnableSites = Collections.singletonList(pinned);
+            }
 
             // for each runnable site get the estimated finish time
             // and schedule job on site that minimizes the finish time
@@ -277,6 +286,22 @@ public class Algorithm {
         mWorkflow.remove(dummyRoot.getID());
     }
 
+    /**
+     * Returns the site a job is pinned to through the execution site key in its selector or hints
+     * profiles.
+     *
+     * @param job the job.
+     * @return the site, or null if the job is not pinned.
+     */
+    protected String getPinnedSite(Job job) {
+        String key = Selector.EXECUTION_SITE_KEY;
+        Object site =
+                job.getSelectorProfiles().containsKey(key)
+                        ? job.getSelectorProfiles().get(key)
+                        : job.hints.get(key);
+        return (site == null) ? null : site.toString();
+    }
+
     /**
      * Returns the makespan of the scheduled workflow. It is maximum of the actual finish times for
      * the leaves of the scheduled workflow.
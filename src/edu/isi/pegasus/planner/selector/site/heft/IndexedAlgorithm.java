@@ -0,0 +1,589 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.selector.site.heft;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.Profile;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An implementation of the HEFT algorithm in {@link Algorithm}, that is meant for large workflows.
+ * It produces the same schedule and makespan as {@link Algorithm}, but
+ *
+ * <pre>
+ *    - maps the nodes of the workflow to dense int indices, and holds the
+ *      ranks, the start and finish times and the scheduled sites in
+ *      primitive arrays instead of a HeftBag per node.
+ *
+ *    - looks up the runnable sites and the runtimes from the transformation
+ *      catalog once per transformation and site, instead of once per job.
+ *
+ *    - tracks the processors on a site in a {@link ProcessorTimeline},
+ *      instead of scanning the list of processors for each job.
+ * </pre>
+ *
+ * The nodes are traversed through a dummy root, as in {@link Algorithm}, so that nodes with the
+ * same rank are scheduled in the same order. The dummy root is removed before the nodes are
+ * scheduled. The site a job is scheduled to is retrieved by calling {@link
+ * #getScheduledSite(GraphNode)}.
+ *
+ * @version $Revision$
+ */
+public class IndexedAlgorithm extends Algorithm {
+
+    /** The average communication cost between nodes. */
+    private final float mAverageCommunicationCost;
+
+    /** The handle to the LogManager */
+    private final LogManager mLogger;
+
+    /** The names of the candidate sites, indexed by site index. */
+    private String[] mSiteNames;
+
+    /** Maps the site names to the site indices. */
+    private Map<String, Integer> mSiteIndex;
+
+    /** The processors on each site, indexed by site index. */
+    private ProcessorTimeline[] mTimelines;
+
+    /** The number of free nodes on each site, indexed by site index. */
+    private int[] mFreeNodes;
+
+    /** Maps the node ids to the node indices. Nodes are numbered in the order of traversal. */
+    private Map<String, Integer> mNodeIndex;
+
+    /** The nodes indexed by node index. */
+    private GraphNode[] mNodes;
+
+    /** The number of nodes that were scheduled. */
+    private int mNumNodes;
+
+    /**
+     * The offsets into mParents for each node, with the parents of node i ending at offset i + 1.
+     */
+    private int[] mParentOffsets;
+
+    /** The indices of the parents of all the nodes. */
+    private int[] mParents;
+
+    /** Whether a node is a leaf, indexed by node index. */
+    private boolean[] mLeaves;
+
+    /** The downward rank of each node. */
+    private float[] mDownwardRanks;
+
+    /** The average compute time of each node. */
+    private float[] mAvgComputeTimes;
+
+    /** The actual start time of each node. */
+    private long[] mStartTimes;
+
+    /** The actual finish time of each node. */
+    private long[] mFinishTimes;
+
+    /** The index of the site each node is scheduled to, or -1. */
+    private int[] mScheduledSites;
+
+    /** Maps the fully qualified transformation names to the transformations looked up. */
+    private Map<String, Transformation> mTransformations;
+
+    /**
+     * The default constructor.
+     *
+     * @param bag the bag of Pegasus related objects.
+     */
+    public IndexedAlgorithm(PegasusBag bag) {
+        super(bag);
+        mLogger = (LogManager) bag.get(PegasusBag.PEGASUS_LOGMANAGER);
+        mAverageCommunicationCost = (AVERAGE_BANDWIDTH / AVERAGE_DATA_SIZE_BETWEEN_JOBS);
+    }
+
+    /**
+     * Schedules the workflow according to the HEFT algorithm.
+     *
+     * @param workflow the workflow that has to be scheduled.
+     * @param sites the list of candidate sites where the workflow can potentially execute.
+     * @param label the label of the workflow
+     */
+    public void schedule(ADag workflow, List sites, String label) {
+        long start = System.currentTimeMillis();
+        this.indexSites(sites);
+        this.indexNodes(workflow);
+        mTransformations = new HashMap<String, Transformation>();
+
+        // compute the average compute time and the downward rank of each node.
+        // the nodes are indexed in traversal order, so the parents of
+        // a node are always ranked before the node
+        mDownwardRanks = new float[mNumNodes];
+        mAvgComputeTimes = new float[mNumNodes];
+        boolean debug = mLogger.isLoggable(LogManager.DEBUG_MESSAGE_LEVEL);
+        for (int i = 0; i < mNumNodes; i++) {
+            Job job = (Job) mNodes[i].getContent();
+            mAvgComputeTimes[i] = this.transformation(job).getAverageComputeTime(job);
+            mDownwardRanks[i] = this.computeDownwardRank(i);
+            if (debug) {
+                mLogger.log(
+                        "Average Compute Time "
+                                + mNodes[i].getID()
+                                + " is "
+                                + mAvgComputeTimes[i]
+                                + " and downward rank is "
+                                + mDownwardRanks[i],
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+            }
+        }
+
+        // sort the nodes in the same order as the HeftGraphNodeComparator
+        Integer[] sorted = new Integer[mNumNodes];
+        for (int i = 0; i < mNumNodes; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(
+                sorted,
+                new Comparator<Integer>() {
+                    public int compare(Integer n1, Integer n2) {
+                        return (int) (mDownwardRanks[n1] - mDownwardRanks[n2]);
+                    }
+                });
+
+        // schedule out the sorted order of the nodes
+        mStartTimes = new long[mNumNodes];
+        mFinishTimes = new long[mNumNodes];
+        mScheduledSites = new int[mNumNodes];
+        Arrays.fill(mScheduledSites, -1);
+        long[] readyTimes = new long[mSiteNames.length];
+        for (Integer n : sorted) {
+            int current = n;
+            Job job = (Job) mNodes[current].getContent();
+            Transformation tx = this.transformation(job);
+            this.computeReadyTimes(current, readyTimes);
+            int pinned = this.getPinnedSite(job, tx);
+
+            // for each runnable site get the estimated finish time
+            // and schedule job on site that minimizes the finish time
+            long est = 0;
+            long eft = MAXIMUM_FINISH_TIME;
+            int site = -1;
+            int processor = -1;
+            for (int k = 0; k < tx.mSites.length; k++) {
+                int s = tx.mSites[k];
+                if (pinned != -1 && s != pinned) {
+                    continue;
+                }
+                int p = mTimelines[s].getProcessor(readyTimes[s]);
+                long startTime = mTimelines[s].getAvailableTime(p, readyTimes[s]);
+                long finishTime = startTime + tx.getRuntime(k, job);
+                if (eft > finishTime) {
+                    est = startTime;
+                    eft = finishTime;
+                    site = s;
+                    processor = p;
+                }
+            }
+            if (site == -1) {
+                throw new RuntimeException(
+                        "Unable to schedule job " + mNodes[current].getID() + " to any site");
+            }
+
+            mStartTimes[current] = est;
+            mFinishTimes[current] = eft;
+            mScheduledSites[current] = site;
+            mTimelines[site].scheduleJob(processor, eft);
+
+            if (debug) {
+                mLogger.log(
+                        "Scheduled job "
+                                + mNodes[current].getID()
+                                + " to site "
+                                + mSiteNames[site]
+                                + " with from  "
+                                + est
+                                + " till "
+                                + eft,
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+            }
+        }
+        mTransformations = null;
+
+        mLogger.log(
+                "Scheduled "
+                        + mNumNodes
+                        + " nodes of workflow "
+                        + label
+                        + " over "
+                        + mSiteNames.length
+                        + " sites in "
+                        + (System.currentTimeMillis() - start)
+                        + " ms",
+                LogManager.DEBUG_MESSAGE_LEVEL);
+    }
+
+    /**
+     * Returns the makespan of the scheduled workflow. It is maximum of the actual finish times for
+     * the leaves of the scheduled workflow.
+     *
+     * @return long the makespan of the workflow.
+     */
+    public long getMakespan() {
+        long result = -1;
+        for (int i = 0; i < mNumNodes; i++) {
+            if (mLeaves[i] && mFinishTimes[i] > result) {
+                result = mFinishTimes[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the site a node of the last scheduled workflow is scheduled to.
+     *
+     * @param node the node.
+     * @return the site handle, or null if the node was not scheduled.
+     */
+    public String getScheduledSite(GraphNode node) {
+        Integer i = mNodeIndex.get(node.getID());
+        return (i == null || mScheduledSites[i] == -1) ? null : mSiteNames[mScheduledSites[i]];
+    }
+
+    /**
+     * Returns the actual finish time of a node of the last scheduled workflow.
+     *
+     * @param node the node.
+     * @return the finish time, or -1 if the node was not scheduled.
+     */
+    public long getFinishTime(GraphNode node) {
+        Integer i = mNodeIndex.get(node.getID());
+        return (i == null || mScheduledSites[i] == -1) ? -1 : mFinishTimes[i];
+    }
+
+    /**
+     * Returns the index of the runnable site a job is pinned to.
+     *
+     * @param job the job.
+     * @param tx the transformation of the job.
+     * @return the index of the site, or -1 if the job is not pinned to a runnable site.
+     * @see Algorithm#getPinnedSite(Job)
+     */
+    private int getPinnedSite(Job job, Transformation tx) {
+        String site = this.getPinnedSite(job);
+        Integer index = (site == null) ? null : mSiteIndex.get(site);
+        if (index != null) {
+            for (int s : tx.mSites) {
+                if (s == index) {
+                    return s;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the downward rank of a node. The roots are treated as children of a dummy root with
+     * a downward rank and average compute time of 0.
+     *
+     * @param node the index of the node whose rank needs to be computed.
+     * @return computed rank.
+     */
+    private float computeDownwardRank(int node) {
+        int from = mParentOffsets[node];
+        int to = mParentOffsets[node + 1];
+        if (from == to) {
+            return mAverageCommunicationCost;
+        }
+        float result = 0;
+        for (int i = from; i < to; i++) {
+            int p = mParents[i];
+            float value = mDownwardRanks[p] + mAvgComputeTimes[p] + mAverageCommunicationCost;
+            if (value > result) {
+                result = value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the time by which all the data needed by a node has reached each site. The data from
+     * a parent scheduled to another site arrives after the average communication cost. The roots
+     * are treated as children of a dummy root that finishes at time 0 on no site.
+     *
+     * @param node the index of the node.
+     * @param readyTimes the array to populate, indexed by site index.
+     */
+    private void computeReadyTimes(int node, long[] readyTimes) {
+        int from = mParentOffsets[node];
+        int to = mParentOffsets[node + 1];
+        Arrays.fill(readyTimes, 0);
+        long remote = 0;
+        if (from == to) {
+            remote += mAverageCommunicationCost;
+            Arrays.fill(readyTimes, remote);
+            return;
+        }
+
+        // track the latest arrival from another site, via the two latest
+        // arrivals from parents on distinct sites
+        long first = 0;
+        int firstSite = -2;
+        long second = 0;
+        for (int i = from; i < to; i++) {
+            int p = mParents[i];
+            int site = mScheduledSites[p];
+            long finish = mFinishTimes[p];
+            if (site >= 0 && finish > readyTimes[site]) {
+                readyTimes[site] = finish;
+            }
+            remote = finish;
+            remote += mAverageCommunicationCost;
+            if (site == firstSite) {
+                first = Math.max(first, remote);
+            } else if (remote > first) {
+                second = first;
+                first = remote;
+                firstSite = site;
+            } else if (remote > second) {
+                second = remote;
+            }
+        }
+        for (int s = 0; s < readyTimes.length; s++) {
+            remote = (s == firstSite) ? second : first;
+            if (remote > readyTimes[s]) {
+                readyTimes[s] = remote;
+            }
+        }
+    }
+
+    /**
+     * Indexes the candidate sites, and sets up the processors on each site.
+     *
+     * @param sites the list of candidate sites.
+     */
+    private void indexSites(List sites) {
+        this.populateSiteMap(sites);
+        mSiteNames = new String[sites.size()];
+        mSiteIndex = new HashMap<String, Integer>();
+        mTimelines = new ProcessorTimeline[sites.size()];
+        mFreeNodes = new int[sites.size()];
+        int i = 0;
+        for (Iterator it = sites.iterator(); it.hasNext(); i++) {
+            String site = (String) it.next();
+            mSiteNames[i] = site;
+            mSiteIndex.put(site, i);
+            mFreeNodes[i] = this.getFreeNodesForSite(site);
+            mTimelines[i] = new ProcessorTimeline(mFreeNodes[i]);
+        }
+    }
+
+    /**
+     * Numbers the nodes of the workflow in the order of the graph traversal, and records the
+     * parents of each node as node indices.
+     *
+     * @param workflow the workflow.
+     */
+    private void indexNodes(ADag workflow) {
+        int size = workflow.size();
+        mNodes = new GraphNode[size];
+        mNodeIndex = new HashMap<String, Integer>();
+
+        // traverse from a dummy root, as the order of the roots depends
+        // on how the graph implementation holds the children of a node
+        GraphNode dummyRoot = new GraphNode("dummy", "dummy");
+        workflow.addRoot(dummyRoot);
+        int n = 0;
+        Iterator<GraphNode> it = workflow.iterator();
+        it.next(); // we have the dummy root
+        while (it.hasNext()) {
+            GraphNode node = it.next();
+            mNodes[n] = node;
+            mNodeIndex.put(node.getID(), n++);
+        }
+        workflow.remove(dummyRoot.getID());
+        mNumNodes = n;
+
+        mParentOffsets = new int[n + 1];
+        mLeaves = new boolean[n];
+        int[] parents = new int[size];
+        int edges = 0;
+        for (int i = 0; i < n; i++) {
+            mParentOffsets[i] = edges;
+            Collection<GraphNode> children = mNodes[i].getChildren();
+            mLeaves[i] = (children == null || children.isEmpty());
+            Collection<GraphNode> nodeParents = mNodes[i].getParents();
+            if (nodeParents == null) {
+                continue;
+            }
+            for (GraphNode parent : nodeParents) {
+                if (edges == parents.length) {
+                    parents = Arrays.copyOf(parents, 2 * parents.length + 1);
+                }
+                parents[edges++] = mNodeIndex.get(parent.getID());
+            }
+        }
+        mParentOffsets[n] = edges;
+        mParents = parents;
+    }
+
+    /**
+     * Returns the transformation for a job, looking it up on the first call.
+     *
+     * @param job the job.
+     * @return the transformation.
+     */
+    private Transformation transformation(Job job) {
+        String name = job.getCompleteTCName();
+        Transformation tx = mTransformations.get(name);
+        if (tx == null) {
+            tx = new Transformation(job);
+            mTransformations.put(name, tx);
+        }
+        return tx;
+    }
+
+    /**
+     * The runnable sites and the runtimes on those sites of a transformation, looked up from the
+     * transformation catalog.
+     */
+    private class Transformation {
+
+        /** The indices of the runnable sites. */
+        private final int[] mSites;
+
+        /** The transformation catalog entries for the runnable sites. */
+        private final TransformationCatalogEntry[] mEntries;
+
+        /**
+         * The runtimes picked from the transformation catalog entries for the runnable sites, or -1
+         * if the runtime has to be picked from the job.
+         */
+        private final int[] mRuntimes;
+
+        /**
+         * The average compute time over the runnable sites, or -1 if the runtime has to be picked
+         * from the job.
+         */
+        private final float mAverageComputeTime;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param job a job referring to the transformation.
+         */
+        Transformation(Job job) {
+            List runnableSites =
+                    mTCMapper.getSiteList(
+                            job.getTXNamespace(),
+                            job.getTXName(),
+                            job.getTXVersion(),
+                            Arrays.asList(mSiteNames));
+
+            // sanity check
+            if (runnableSites == null || runnableSites.isEmpty()) {
+                throw new RuntimeException("No runnable site for job " + job.getName());
+            }
+
+            mSites = new int[runnableSites.size()];
+            mEntries = new TransformationCatalogEntry[mSites.length];
+            mRuntimes = new int[mSites.length];
+            boolean fromCatalog = true;
+            int k = 0;
+            for (Iterator it = runnableSites.iterator(); it.hasNext(); k++) {
+                String site = (String) it.next();
+                Integer index = mSiteIndex.get(site);
+                if (index == null) {
+                    throw new RuntimeException(
+                            "The number of free nodes not available for site " + site);
+                }
+                mSites[k] = index;
+                List entries =
+                        mTCMapper.getTCList(
+                                job.getTXNamespace(), job.getTXName(), job.getTXVersion(), site);
+                // pick the first one for time being
+                mEntries[k] = (TransformationCatalogEntry) entries.get(0);
+                mRuntimes[k] = getRuntimeFromEntry(mEntries[k]);
+                fromCatalog = fromCatalog && mRuntimes[k] >= 1;
+            }
+            mAverageComputeTime = fromCatalog ? this.computeAverageComputeTime(job) : -1;
+        }
+
+        /**
+         * Returns the average compute time for a job of this transformation.
+         *
+         * @param job the job.
+         * @return the weighted compute time in seconds.
+         */
+        float getAverageComputeTime(Job job) {
+            return (mAverageComputeTime >= 0)
+                    ? mAverageComputeTime
+                    : this.computeAverageComputeTime(job);
+        }
+
+        /**
+         * Returns the runtime of a job of this transformation on a runnable site.
+         *
+         * @param k the index of the site in the runnable sites.
+         * @param job the job.
+         * @return the runtime in seconds.
+         */
+        int getRuntime(int k, Job job) {
+            return (mRuntimes[k] >= 1) ? mRuntimes[k] : getExpectedRuntime(job, mEntries[k]);
+        }
+
+        /**
+         * Computes the average of the runtimes on the runnable sites, weighted by the number of
+         * free nodes on the sites.
+         *
+         * @param job the job.
+         * @return the weighted compute time in seconds.
+         */
+        private float computeAverageComputeTime(Job job) {
+            int total_nodes = 0;
+            int total = 0;
+            for (int k = 0; k < mSites.length; k++) {
+                int nodes = mFreeNodes[mSites[k]];
+                total_nodes += nodes;
+                total += this.getRuntime(k, job) * nodes;
+            }
+            return total / total_nodes;
+        }
+    }
+
+    /**
+     * Returns the runtime specified in the profiles of a transformation catalog entry.
+     *
+     * @param entry the <code>TransformationCatalogEntry</code> object.
+     * @return the runtime in seconds, or -1 if not specified.
+     */
+    private int getRuntimeFromEntry(TransformationCatalogEntry entry) {
+        List profiles = entry.getProfiles(Profile.VDS);
+        if (profiles != null) {
+            for (Iterator it = profiles.iterator(); it.hasNext(); ) {
+                Profile p = (Profile) it.next();
+                if (p.getProfileKey().equals(RUNTIME_PROFILE_KEY)) {
+                    return Integer.parseInt(p.getProfileValue());
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.selector.site.heft;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the time at which each processor on a site becomes free, in a min segment tree over the
+ * processor end times. It follows the same non insertion based policy as {@link Site}, and picks
+ * the same processor as {@link Site}, in logarithmic time instead of linear time.
+ *
+ * <p>A job ready at time t goes to the first processor that is free by t. If there is no such
+ * processor, the job goes to the first processor that becomes free the earliest.
+ *
+ * @version $Revision$
+ */
+public class ProcessorTimeline {
+
+    /** The number of processors on the site. */
+    private final int mNumProcessors;
+
+    /** The number of leaves in the tree, a power of 2. */
+    private final int mLeaves;
+
+    /**
+     * The segment tree stored as an array. Node i has children 2i and 2i + 1, and the leaves
+     * starting at index mLeaves hold the end times of the processors.
+     */
+    private final long[] mTree;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param num the number of processors on the site.
+     */
+    public ProcessorTimeline(int num) {
+        mNumProcessors = num;
+        int leaves = 1;
+        while (leaves < num) {
+            leaves <<= 1;
+        }
+        mLeaves = leaves;
+        mTree = new long[2 * leaves];
+        // processors that do not exist are never free
+        Arrays.fill(mTree, mLeaves + Math.max(num, 0), mTree.length, Long.MAX_VALUE);
+        for (int i = mLeaves - 1; i > 0; i--) {
+            mTree[i] = Math.min(mTree[2 * i], mTree[2 * i + 1]);
+        }
+    }
+
+    /**
+     * Returns the index of the processor a job ready at a particular time is scheduled on.
+     *
+     * @param readyTime the time at which the job is ready to run.
+     * @return the index of the processor.
+     */
+    public int getProcessor(long readyTime) {
+        long earliest = mTree[1];
+        // sanity check
+        if (mNumProcessors <= 0 || earliest == Long.MAX_VALUE) {
+            throw new RuntimeException("Unable to scheduled to site");
+        }
+        long threshold = (earliest > readyTime) ? earliest : readyTime;
+
+        // descend to the leftmost leaf that is free by the threshold
+        int i = 1;
+        while (i < mLeaves) {
+            i = (mTree[2 * i] <= threshold) ? 2 * i : 2 * i + 1;
+        }
+        return i - mLeaves;
+    }
+
+    /**
+     * Returns the earliest time a job ready at a particular time can start on the site.
+     *
+     * @param readyTime the time at which the job is ready to run.
+     * @return the start time.
+     */
+    public long getAvailableTime(long readyTime) {
+        return this.getAvailableTime(this.getProcessor(readyTime), readyTime);
+    }
+
+    /**
+     * Returns the earliest time a job ready at a particular time can start on a processor.
+     *
+     * @param processor the index of the processor.
+     * @param readyTime the time at which the job is ready to run.
+     * @return the start time.
+     */
+    public long getAvailableTime(int processor, long readyTime) {
+        long end = mTree[mLeaves + processor];
+        return (end > readyTime) ? end : readyTime;
+    }
+
+    /**
+     * Schedules a job on a processor.
+     *
+     * @param processor the index of the processor.
+     * @param end the end time of the job.
+     */
+    public void scheduleJob(int processor, long end) {
+        int i = mLeaves + processor;
+        mTree[i] = end;
+        for (i >>= 1; i > 0; i >>= 1) {
+            mTree[i] = Math.min(mTree[2 * i], mTree[2 * i + 1]);
+        }
+    }
+
+    /**
+     * Returns the number of processors on the site.
+     *
+     * @return number of processors.
+     */
+    public int getNumProcessors() {
+        return mNumProcessors;
+    }
+}
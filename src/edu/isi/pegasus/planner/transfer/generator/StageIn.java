@@ -402,7 +402,7 @@ public class StageIn extends Abstract {
                 destGetURL = destPutURL;
             } else {
                 // query the replica services and get hold of pfn
-                rl = mRCBridge.getFileLocs(lfn);
+                rl = mRCBridge.getFileLocs(pf);
                 pfns = (rl == null) ? null : rl.getPFNList();
             }
 
@@ -433,7 +433,7 @@ public class StageIn extends Abstract {
             FileTransfer ft =
                     (pf instanceof FileTransfer)
                             ? (FileTransfer) pf
-                            : new FileTransfer(lfn, jobName, pf.getFlags());
+                            : new FileTransfer(pf, jobName);
 
             // make sure the type information is set in file transfer
             ft.setType(pf.getType());
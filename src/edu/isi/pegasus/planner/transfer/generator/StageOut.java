@@ -191,7 +191,7 @@ public class StageOut extends Abstract {
                 continue;
             }
 
-            ReplicaLocation rl = rcBridge.getFileLocs(lfn);
+            ReplicaLocation rl = rcBridge.getFileLocs(pf);
             // sanity check
             if (rl == null) {
                 throw new RuntimeException(
@@ -390,7 +390,7 @@ public class StageOut extends Abstract {
         if (pf.getTransientTransferFlag()) {
             // need to support this, as user may still opt for the file to be
             // registered in the replica catalog.
-            ft = new FileTransfer(lfn, job.getID(), pf.getFlags());
+            ft = new FileTransfer(pf, job.getID());
             // set the transfer mode
             ft.setSize(pf.getSize());
             ft.setTransferFlag(pf.getTransferFlag());
@@ -405,7 +405,7 @@ public class StageOut extends Abstract {
         // on exec site and dest dir
         // would be on the output site
         // else {
-        ft = new FileTransfer(lfn, job.getID(), pf.getFlags());
+        ft = new FileTransfer(pf, job.getID());
         ft.setSize(pf.getSize());
         // set the transfer mode
         ft.setTransferFlag(pf.getTransferFlag());
@@ -524,7 +524,7 @@ public class StageOut extends Abstract {
             return result;
         }
         for (NameValue<String, String> nv : nvs) {
-            ft = new FileTransfer(lfn, job.getID(), pf.getFlags());
+            ft = new FileTransfer(pf, job.getID());
             // we are only transferring outputs to the scratch dir of parent workflow
             // without registering them ever
             ft.setTransferFlag(true);
@@ -54,12 +54,12 @@ public class Basic extends MultipleFTPerXFERJobRefiner {
     protected String mLogMsg;
 
     /**
-     * A Map containing information about which logical file has been transferred to which site and
-     * the name of the stagein transfer node that is transferring the file from the location
-     * returned from the replica catalog. The key for the hashmap is logicalfilename:sitehandle and
-     * the value would be the name of the transfer node.
+     * A table containing information about which logical file has been transferred to which site
+     * and the name of the stagein transfer node that is transferring the file from the location
+     * returned from the replica catalog. The table is indexed by the site and the id of the logical
+     * file in the symbol table of the workflow.
      */
-    protected Map mFileTable;
+    protected FileTable mFileTable;
 
     /** The map indexed by a node name, where the associated value is the set of child nodes. */
     protected Map<String, Set<String>> mRelationsMap;
@@ -76,7 +76,7 @@ public class Basic extends MultipleFTPerXFERJobRefiner {
     public Basic(ADag dag, PegasusBag bag) {
         super(dag, bag);
         mLogMsg = null;
-        mFileTable = new HashMap(10000);
+        mFileTable = new FileTable(dag.getDAGInfo().getLFNSymbolTable());
         mRelationsMap = new HashMap<String, Set<String>>(dag.size());
         Properties output =
                 bag.getPegasusProperties()
@@ -140,7 +140,6 @@ public class Basic extends MultipleFTPerXFERJobRefiner {
         String pool = job.getSiteHandle();
         int counter = 0;
         String newJobName = prefix + jobName + "_" + counter;
-        String key = null;
         String msg = "Adding stagein transfer nodes for job " + jobName;
         String par = null;
         Collection stagedFiles = new ArrayList(1);
@@ -163,13 +162,12 @@ public class Basic extends MultipleFTPerXFERJobRefiner {
             // compute job PM-622
             ft.setPriority(priority);
 
-            // get the key for this lfn and pool
-            // if the key already in the table
+            // if the lfn is already in the table
+            // for the pool
             // then remove the entry from
             // the Vector and add a dependency
             // in the graph
-            key = this.constructFileKey(lfn, pool);
-            par = (String) mFileTable.get(key);
+            par = mFileTable.get(ft, pool);
             // System.out.println("lfn " + lfn + " par " + par);
             if (par != null) {
                 it.remove();
@@ -204,13 +202,14 @@ public class Basic extends MultipleFTPerXFERJobRefiner {
                     // the staged execution file should be having the setup
                     // job as parent if it does not preserve x bit
                     if (implementation.doesPreserveXBit()) {
-                        mFileTable.put(key, newJobName);
+                        mFileTable.put(ft, pool, newJobName);
                     } else {
-                        mFileTable.put(key, implementation.getSetXBitJobName(jobName, staged++));
+                        mFileTable.put(
+                                ft, pool, implementation.getSetXBitJobName(jobName, staged++));
                     }
                 } else {
                     // make a new entry into the table
-                    mFileTable.put(key, newJobName);
+                    mFileTable.put(ft, pool, newJobName);
                 }
                 // add the newJobName to the tempSet so that even
                 // if the job has duplicate input files only one instance
@@ -273,7 +272,6 @@ public class Basic extends MultipleFTPerXFERJobRefiner {
         String prevParent = null;
 
         String lfn = null;
-        String key = null;
         String par = null;
         String pool = job.getSiteHandle();
 
@@ -307,14 +305,12 @@ public class Basic extends MultipleFTPerXFERJobRefiner {
                 // inter tx node that transfers the file
                 // to the node site.
 
-                // get the key for this lfn and pool
-                // if the key already in the table
+                // if the lfn is already in the table
+                // for the pool
                 // then remove the entry from
                 // the Vector and add a dependency
                 // in the graph
-                key = this.constructFileKey(lfn, pool);
-                par = (String) mFileTable.get(key);
-                // System.out.println("\nGot Key :" + key + " Value :" + par );
+                par = mFileTable.get(ft, pool);
                 if (par != null) {
                     // transfer of this file
                     // has already been scheduled
@@ -351,8 +347,7 @@ public class Basic extends MultipleFTPerXFERJobRefiner {
                     }
                 } else {
                     // make a new entry into the table
-                    mFileTable.put(key, newJobName);
-                    // System.out.println("\nPut Key :" + key + " Value :" + newJobName );
+                    mFileTable.put(ft, pool, newJobName);
 
                     // to ensure that duplicate edges
                     // are not added in the graph
@@ -675,11 +670,12 @@ public class Basic extends MultipleFTPerXFERJobRefiner {
     }
 
     /**
-     * Constructs the key for an entry to the file table. The key returned is lfn:siteHandle
+     * Constructs the key for an entry to a table indexed by a file and a site, such as the setup
+     * map of the bundling refiners. The key returned is lfn:siteHandle
      *
      * @param lfn the logical filename of the file that has to be transferred.
      * @param siteHandle the name of the site to which the file is being transferred.
-     * @return the key for the entry to be made in the filetable.
+     * @return the key for the entry to be made in the table.
      */
     protected String constructFileKey(String lfn, String siteHandle) {
         StringBuffer sb = new StringBuffer();
@@ -338,13 +338,12 @@ public class Bundle extends Basic {
             // compute job PM-622
             ft.setPriority(priority);
 
-            // get the key for this lfn and pool
-            // if the key already in the table
+            // if the lfn is already in the table
+            // for the pool
             // then remove the entry from
             // the Vector and add a dependency
             // in the graph
-            key = this.constructFileKey(lfn, siteHandle);
-            par = (String) mFileTable.get(key);
+            par = mFileTable.get(ft, siteHandle);
             // System.out.println("lfn " + lfn + " par " + par);
             if (par != null) {
                 it.remove();
@@ -361,6 +360,7 @@ public class Bundle extends Basic {
                     // currently we have only one file to be staged per
                     // compute job . Taking a short cut in determining
                     // the name of setXBit job
+                    key = this.constructFileKey(lfn, siteHandle);
                     String xBitJobName = (String) mSetupMap.get(key);
                     if (key == null) {
                         throw new RuntimeException(
@@ -393,6 +393,7 @@ public class Bundle extends Basic {
                     stageInExecJobs.add(newJobName);
                     stagedExecutableFiles.add(ft);
 
+                    key = this.constructFileKey(lfn, siteHandle);
                     mLogger.log(
                             "Entered "
                                     + key
@@ -405,7 +406,7 @@ public class Bundle extends Basic {
                 }
 
                 // make a new entry into the table
-                mFileTable.put(key, newJobName);
+                mFileTable.put(ft, siteHandle, newJobName);
                 // add the newJobName to the tempSet so that even
                 // if the job has duplicate input files only one instance
                 // of transfer is scheduled. This came up during collapsing
@@ -238,10 +238,9 @@ public class Cluster extends Bundle {
             mLogger.log("File being looked at is " + lfn, LogManager.DEBUG_MESSAGE_LEVEL);
             // check for transfer flag to see if we need to transfer the file.
             if (!ft.getTransientTransferFlag()) {
-                String key = this.constructFileKey(ft.getLFN(), job.getStagingSiteHandle());
                 // check to see if the file is already being transferred by
                 // some other stage in job to that site
-                String existingSiTX = (String) mFileTable.get(key);
+                String existingSiTX = mFileTable.get(ft, job.getStagingSiteHandle());
 
                 if (existingSiTX == null) {
                     // schedule the file for transfer
@@ -326,7 +325,6 @@ public class Cluster extends Bundle {
             String dataFileSiJob = null; // the si job that stages in data files
             for (Iterator it = txFiles.iterator(); it.hasNext(); ) {
                 FileTransfer ft = (FileTransfer) it.next();
-                String key = this.constructFileKey(ft.getLFN(), job.getStagingSiteHandle());
 
                 // PM-810 worker node exeucution is per job level now
                 boolean addNodeForSettingXBit =
@@ -336,13 +334,13 @@ public class Cluster extends Bundle {
                     // the staged execution file should be having the setup
                     // job as parent if it does not preserve x bit
                     if (implementation.doesPreserveXBit()) {
-                        mFileTable.put(key, siJob);
+                        mFileTable.put(ft, site, siJob);
                     } else {
-                        mFileTable.put(key, implementation.getSetXBitJobName(jobName, staged));
+                        mFileTable.put(ft, site, implementation.getSetXBitJobName(jobName, staged));
                     }
                 } else {
                     // make a new entry into the table
-                    mFileTable.put(key, siJob);
+                    mFileTable.put(ft, site, siJob);
                     dataFileSiJob = siJob;
                 }
             }
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.transfer.refiner;
+
+import edu.isi.pegasus.planner.classes.LFNSymbolTable;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A table recording which transfer node transfers a file to a site. For each site, the names of the
+ * transfer nodes are kept in an array indexed by the ids of the LFN's in the symbol table of the
+ * workflow. Files whose LFN is not in the symbol table, such as staged executables, are keyed by
+ * lfn:sitehandle instead.
+ *
+ * @version $Revision$
+ */
+public class FileTable {
+
+    /** The symbol table for the LFN's of the workflow. */
+    private final LFNSymbolTable mSymbols;
+
+    /** The names of the transfer nodes indexed by site, and then by the id of the LFN. */
+    private final Map<String, String[]> mSites;
+
+    /** The names of the transfer nodes for the files that are not in the symbol table. */
+    private final Map<String, String> mOthers;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param symbols the symbol table for the LFN's of the workflow.
+     */
+    public FileTable(LFNSymbolTable symbols) {
+        mSymbols = symbols;
+        mSites = new HashMap<String, String[]>();
+        mOthers = new HashMap<String, String>();
+    }
+
+    /**
+     * Returns the name of the transfer node that transfers a file to a site.
+     *
+     * @param pf the file.
+     * @param siteHandle the site the file is transferred to.
+     * @return the name of the transfer node, or null if the file is not transferred to the site.
+     */
+    public String get(PegasusFile pf, String siteHandle) {
+        int id = mSymbols.getID(pf);
+        if (id == -1) {
+            return mOthers.get(key(pf.getLFN(), siteHandle));
+        }
+        String[] nodes = mSites.get(siteHandle);
+        return (nodes == null || id >= nodes.length) ? null : nodes[id];
+    }
+
+    /**
+     * Records the name of the transfer node that transfers a file to a site.
+     *
+     * @param pf the file.
+     * @param siteHandle the site the file is transferred to.
+     * @param node the name of the transfer node.
+     */
+    public void put(PegasusFile pf, String siteHandle, String node) {
+        int id = mSymbols.getID(pf);
+        if (id == -1) {
+            mOthers.put(key(pf.getLFN(), siteHandle), node);
+            return;
+        }
+        String[] nodes = mSites.get(siteHandle);
+        if (nodes == null || id >= nodes.length) {
+            // the symbol table does not grow once the workflow is parsed
+            int capacity = Math.max(id + 1, mSymbols.size());
+            nodes = (nodes == null) ? new String[capacity] : Arrays.copyOf(nodes, capacity);
+            mSites.put(siteHandle, nodes);
+        }
+        nodes[id] = node;
+    }
+
+    /**
+     * Constructs the key for a file that is not in the symbol table. The key returned is
+     * lfn:siteHandle
+     *
+     * @param lfn the logical filename of the file that has to be transferred.
+     * @param siteHandle the name of the site to which the file is being transferred.
+     * @return the key.
+     */
+    private static String key(String lfn, String siteHandle) {
+        return lfn + ":" + siteHandle;
+    }
+}
@@ -43,6 +43,20 @@ import org.griphyn.vdl.util.Logging;
  * @version $Revision$
  */
 public class InvocationSchema extends DatabaseSchema implements PTC {
+    /**
+     * The insert statements that can be batched, in the order the batches have to be executed to
+     * satisfy the foreign keys.
+     */
+    private static final String[] BATCH_STATEMENTS = {
+        "stmt.save.rusage", "stmt.save.stat", "stmt.save.ivr", "stmt.save.job", "stmt.save.lfn"
+    };
+
+    /**
+     * The statements with batched inserts, while saving a batch of invocation records. null
+     * otherwise.
+     */
+    private Set<String> m_batch = null;
+
     /**
      * Default constructor for the provenance tracking.
      *
@@ -300,8 +314,7 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
             // save prepared values
             Logging.instance().log("chunk", 2, "INSERT INTO invocation");
 
-            int rc = ps.executeUpdate();
-            if (id == -1) id = m_dbdriver.sequence2(ps, "invocation_id_seq", 1);
+            id = insert("stmt.save.ivr", ps, "invocation_id_seq", id);
             Logging.instance().log("xaction", 1, "FINAL save invocation: ID=" + id);
 
             // save jobs belonging to invocation
@@ -318,8 +331,8 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
                 }
             }
 
-            // done
-            m_dbdriver.commit();
+            // done, unless part of a batch
+            if (m_batch == null) m_dbdriver.commit();
             return true;
         } catch (SQLException e) {
             // show complete exception chain
@@ -348,6 +361,70 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
         }
     }
 
+    /**
+     * Inserts a batch of invocation records into the database in a single transaction. The inserts
+     * for the records are collected with {@link PreparedStatement#addBatch()} per table, and sent
+     * to the database once all records are processed. Rows whose id is assigned by the database are
+     * still inserted one at a time.
+     *
+     * @param records are the invocation records to store.
+     * @return true, if insertion was successful, false otherwise.
+     */
+    public boolean saveInvocations(List<InvocationRecord> records) throws SQLException {
+        m_batch = new HashSet<String>();
+        try {
+            for (InvocationRecord ivr : records) {
+                saveInvocation(ivr);
+            }
+
+            Logging.instance().log("xaction", 1, "START save batch of " + records.size());
+            for (String name : BATCH_STATEMENTS) {
+                if (m_batch.contains(name)) {
+                    m_dbdriver.getPreparedStatement(name).executeBatch();
+                }
+            }
+            m_dbdriver.commit();
+            Logging.instance().log("xaction", 1, "FINAL save batch of " + records.size());
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            Logging.instance().log("app", 0, "While saving batch: " + e.toString().trim());
+            Logging.instance().log("xaction", 1, "START rollback");
+            for (String name : m_batch) {
+                m_dbdriver.getPreparedStatement(name).clearBatch();
+            }
+            m_dbdriver.rollback();
+            Logging.instance().log("xaction", 1, "FINAL rollback");
+            throw e; // re-throw
+        } finally {
+            m_batch = null;
+        }
+    }
+
+    /**
+     * Inserts the values set for a prepared statement. While saving a batch of invocation records,
+     * the values are added to the batch of the statement instead, unless the id of the row is
+     * assigned by the database.
+     *
+     * @param name is the name of the prepared statement.
+     * @param ps is the prepared statement with its values set.
+     * @param sequence is the name of the sequence for the id of the row, or null if the row has no
+     *     id of its own.
+     * @param id is the id of the row, or -1 if it is assigned by the database.
+     * @return the id of the row.
+     * @exception SQLException if something goes awry during insertion.
+     */
+    private long insert(String name, PreparedStatement ps, String sequence, long id)
+            throws SQLException {
+        if (m_batch != null && (sequence == null || id != -1)) {
+            ps.addBatch();
+            m_batch.add(name);
+            return id;
+        }
+        ps.executeUpdate();
+        if (sequence != null && id == -1) id = m_dbdriver.sequence2(ps, sequence, 1);
+        return id;
+    }
+
     /**
      * Splits the canonical FQDN of a definition into its components, and save each component into
      * the database.
@@ -441,8 +518,7 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
         // save prepared values
         Logging.instance().log("chunk", 2, "INSERT INTO rusage");
         try {
-            ps.executeUpdate();
-            if (id == -1) id = m_dbdriver.sequence2(ps, "rusage_id_seq", 1);
+            id = insert("stmt.save.rusage", ps, "rusage_id_seq", id);
         } catch (SQLException e) {
             Logging.instance().log("app", 0, "While inserting into rusage: " + e.toString().trim());
             // rollback in saveInvocation()
@@ -529,8 +605,7 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
         // save prepared values
         Logging.instance().log("chunk", 2, "INSERT INTO stat");
         try {
-            ps.executeUpdate();
-            if (id == -1) id = m_dbdriver.sequence2(ps, "stat_id_seq", 1);
+            id = insert("stmt.save.stat", ps, "stat_id_seq", id);
         } catch (SQLException e) {
             Logging.instance().log("app", 0, "While inserting into stat: " + e.toString().trim());
             // rollback in safeInvocation()
@@ -576,7 +651,7 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
         // save prepared values
         Logging.instance().log("chunk", 2, "INSERT INTO lfn");
         try {
-            ps.executeUpdate();
+            insert("stmt.save.lfn", ps, null, iid);
         } catch (SQLException e) {
             Logging.instance().log("app", 0, "While inserting into lfn: " + e.toString().trim());
             // rollback in safeInvocation()
@@ -649,7 +724,7 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
         // save prepared values
         Logging.instance().log("chunk", 2, "INSERT INTO job");
         try {
-            ps.executeUpdate();
+            insert("stmt.save.job", ps, null, iid);
         } catch (SQLException e) {
             Logging.instance().log("app", 0, "While inserting into job: " + e.toString().trim());
             // rollback in safeInvocation()
@@ -19,6 +19,8 @@ import java.io.*;
 import java.lang.reflect.*;
 import java.net.InetAddress;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -56,6 +58,17 @@ public class NXDInvSchema extends DatabaseSchema implements PTC {
 
     protected XPathQueryService m_ptcQrySvc;
 
+    /**
+     * Creates a schema that stores the invocation records in an existing collection, without
+     * connecting to a database.
+     *
+     * @param ptc is the collection for the invocation records.
+     */
+    NXDInvSchema(Collection ptc) {
+        super(); // call minimalistic c'tor, no driver loading!
+        m_ptc = ptc;
+    }
+
     /**
      * Default constructor for the provenance tracking.
      *
@@ -168,17 +181,61 @@ public class NXDInvSchema extends DatabaseSchema implements PTC {
      */
     public boolean saveInvocation(InvocationRecord ivr) throws SQLException {
         try {
-            StringWriter sw = new StringWriter();
-
-            ivr.toXML(sw, "", null);
-            // create new XMLResource; an id will be assigned to the new resource
-            XMLResource document = (XMLResource) m_ptc.createResource(null, "XMLResource");
-            document.setContent(sw.toString());
-            System.out.println(sw.toString());
-            m_ptc.storeResource(document);
+            store(ivr);
             return true;
         } catch (Exception e) {
             throw new SQLException(e.getMessage());
         }
     }
+
+    /**
+     * Inserts a batch of invocation records into the database. The XML database has no notion of a
+     * transaction, so the records are stored one after the other, and the records already stored
+     * are removed again if storing one of them fails. Either all records are stored, or none of
+     * them, unless removing a stored record fails as well.
+     *
+     * @param records are the invocation records to store.
+     * @return true, if insertion was successful, false otherwise.
+     */
+    public boolean saveInvocations(List<InvocationRecord> records) throws SQLException {
+        List<Resource> stored = new ArrayList<Resource>(records.size());
+        try {
+            for (InvocationRecord ivr : records) {
+                stored.add(store(ivr));
+            }
+            return true;
+        } catch (Exception e) {
+            Logging.instance().log("app", 0, "While saving batch: " + e.toString().trim());
+            Logging.instance().log("xaction", 1, "START remove " + stored.size() + " records");
+            for (Resource document : stored) {
+                try {
+                    m_ptc.removeResource(document);
+                } catch (XMLDBException ex) {
+                    Logging.instance()
+                            .log("app", 0, "While removing a stored record: " + ex.getMessage());
+                }
+            }
+            Logging.instance().log("xaction", 1, "FINAL remove " + stored.size() + " records");
+            throw new SQLException(e.getMessage());
+        }
+    }
+
+    /**
+     * Stores an invocation record as a new document in the collection for the records.
+     *
+     * @param ivr is the invocation record to store.
+     * @return the document stored.
+     * @throws Exception if unable to store the record.
+     */
+    private Resource store(InvocationRecord ivr) throws Exception {
+        StringWriter sw = new StringWriter();
+
+        ivr.toXML(sw, "", null);
+        // create new XMLResource; an id will be assigned to the new resource
+        XMLResource document = (XMLResource) m_ptc.createResource(null, "XMLResource");
+        document.setContent(sw.toString());
+        System.out.println(sw.toString());
+        m_ptc.storeResource(document);
+        return document;
+    }
 }
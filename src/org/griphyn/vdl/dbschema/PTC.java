@@ -18,6 +18,7 @@ import edu.isi.pegasus.planner.invocation.InvocationRecord;
 import java.net.InetAddress;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.List;
 
 /**
  * This interface defines a common base for all database schemas that supports the handling of the
@@ -55,4 +56,14 @@ public interface PTC extends Catalog {
      * @throws java.sql.SQLException Exception
      */
     public boolean saveInvocation(InvocationRecord ivr) throws SQLException;
+
+    /**
+     * Inserts a batch of invocation records into the database in a single transaction. Either all
+     * records are stored, or none of them.
+     *
+     * @param records are the invocation records to store.
+     * @return true, if insertion was successful, false otherwise.
+     * @throws java.sql.SQLException Exception
+     */
+    public boolean saveInvocations(List<InvocationRecord> records) throws SQLException;
 }
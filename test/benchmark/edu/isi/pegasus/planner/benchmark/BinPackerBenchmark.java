@@ -0,0 +1,79 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.cluster.BinPacker;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the runtime based packing of the jobs in a partition, as done by horizontal clustering
+ * with the pegasus profiles clusters.maxruntime and clusters.num. The runtimes are uniformly
+ * distributed between 1 and 600 seconds, and each bin holds around 20 jobs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BinPackerBenchmark {
+
+    /** The seed for the random number generator, so that runs are comparable. */
+    private static final long SEED = 42;
+
+    /** The number of jobs in a bin. */
+    private static final int JOBS_PER_BIN = 20;
+
+    @Param({"10000", "100000", "1000000"})
+    public int jobs;
+
+    private double[] mRuntimes;
+
+    private double mMaxTime;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        mRuntimes = new double[jobs];
+        double total = 0;
+        for (int i = 0; i < jobs; i++) {
+            mRuntimes[i] = 1 + random.nextInt(600);
+            total += mRuntimes[i];
+        }
+        mMaxTime = JOBS_PER_BIN * total / jobs;
+    }
+
+    @Benchmark
+    public List<int[]> packByCapacity() {
+        return new BinPacker(mRuntimes).packByCapacity(mMaxTime);
+    }
+
+    @Benchmark
+    public List<int[]> packIntoBins() {
+        return new BinPacker(mRuntimes).packIntoBins(jobs / JOBS_PER_BIN);
+    }
+}
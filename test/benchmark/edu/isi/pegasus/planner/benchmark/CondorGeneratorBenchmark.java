@@ -0,0 +1,96 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.code.CodeGeneratorException;
+import edu.isi.pegasus.planner.code.generator.condor.CondorGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time taken to write out the Condor submit files and the .dag file for a planned
+ * workflow. The workflow is planned afresh before each invocation, as the code generator updates
+ * the jobs while writing them out. The DAGMan submit file is not written out, as it requires
+ * condor_submit_dag.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CondorGeneratorBenchmark {
+
+    @Param({"pipeline", "fanout", "fanin", "diamond"})
+    public WorkflowGenerator.SHAPE shape;
+
+    @Param({"1000"})
+    public int jobs;
+
+    @Param({"1"})
+    public int threads;
+
+    private PlannerFixture mFixture;
+
+    private ADag mWorkflow;
+
+    private CondorGenerator mGenerator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mFixture = new PlannerFixture(shape, jobs);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() throws CodeGeneratorException {
+        PlannerFixture.Refinement refinement = mFixture.refinement();
+        mWorkflow = refinement.all();
+
+        PegasusBag bag = refinement.getPegasusBag();
+        bag.getPegasusProperties()
+                .setProperty("pegasus.code.generator.threads", Integer.toString(threads));
+        mGenerator =
+                new CondorGenerator() {
+                    protected void writeOutDAGManSubmitFile(ADag dag, File dagFile) {}
+                };
+        mGenerator.initialize(bag);
+    }
+
+    @Benchmark
+    public Collection<File> generateCode() throws CodeGeneratorException {
+        return mGenerator.generateCode(mWorkflow);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mFixture.delete();
+    }
+}
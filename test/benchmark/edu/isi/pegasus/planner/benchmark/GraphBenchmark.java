@@ -0,0 +1,133 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.partitioner.graph.CompactGraph;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the MapGraph and CompactGraph implementations on synthetic layered DAGs. Each node in
+ * the DAG has a fixed number of parents, picked randomly from the preceding layer.
+ *
+ * <p>The build benchmark constructs the graph, and the others traverse a graph built once. Run with
+ * <code>-prof gc</code> to compare the bytes allocated to build the graphs. The largest workflows
+ * need the 8 GB heap the benchmark forks with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class GraphBenchmark {
+
+    /** The graph implementations. */
+    public static enum IMPLEMENTATION {
+        Map,
+        Compact
+    }
+
+    /** The number of parents for each non root node. */
+    private static final int FAN_IN = 4;
+
+    /** The number of nodes in each layer of the DAG. */
+    private static final int LAYER_WIDTH = 1000;
+
+    /** The seed for the random number generator, so that runs are comparable. */
+    private static final long SEED = 42;
+
+    @Param({"Map", "Compact"})
+    public IMPLEMENTATION implementation;
+
+    @Param({"100000", "1000000", "10000000"})
+    public int edges;
+
+    private Graph mGraph;
+
+    @Setup
+    public void setUp() {
+        mGraph = this.generate();
+    }
+
+    @Benchmark
+    public Graph build() {
+        return this.generate();
+    }
+
+    @Benchmark
+    public int topologicalSort() {
+        int count = 0;
+        for (Iterator<GraphNode> it = mGraph.topologicalSortIterator(); it.hasNext(); count++) {
+            it.next();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public void scanParents(Blackhole bh) {
+        for (Iterator<GraphNode> it = mGraph.nodeIterator(); it.hasNext(); ) {
+            for (GraphNode parent : it.next().getParents()) {
+                bh.consume(parent.getID());
+            }
+        }
+    }
+
+    @Benchmark
+    public int rootsAndLeaves() {
+        return mGraph.getRoots().size() + mGraph.getLeaves().size();
+    }
+
+    /**
+     * Generates a layered DAG with the number of edges configured.
+     *
+     * @return the graph
+     */
+    private Graph generate() {
+        int nodes = edges / FAN_IN + LAYER_WIDTH;
+        Graph g =
+                (implementation == IMPLEMENTATION.Compact)
+                        ? new CompactGraph(nodes)
+                        : new MapGraph();
+        Random random = new Random(SEED);
+        for (int i = 0; i < nodes; i++) {
+            String id = "ID" + i;
+            g.addNode(new GraphNode(id, id));
+        }
+        for (int i = LAYER_WIDTH; i < nodes; i++) {
+            String child = "ID" + i;
+            int layerStart = (i / LAYER_WIDTH - 1) * LAYER_WIDTH;
+            for (int j = 0; j < FAN_IN; j++) {
+                g.addEdge("ID" + (layerStart + random.nextInt(LAYER_WIDTH)), child);
+            }
+        }
+        return g;
+    }
+}
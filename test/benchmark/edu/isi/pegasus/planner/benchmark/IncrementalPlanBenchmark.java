@@ -0,0 +1,159 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.code.CodeGeneratorException;
+import edu.isi.pegasus.planner.code.generator.condor.CondorGenerator;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.refiner.PlanSnapshot;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares planning a workflow from scratch against planning it again incrementally, after one job
+ * in a thousand has changed since an earlier plan. Each invocation plans the workflow end to end:
+ * it parses the workflow, runs all the refinement stages and writes out the Condor submit files.
+ * The incremental plan additionally compares the workflow against the snapshot of the earlier plan,
+ * and writes out its own snapshot.
+ *
+ * <p>Incremental planning only reuses the site mappings of the unchanged jobs. The other refinement
+ * stages and the code generation still run over the whole workflow, so the two plans differ by
+ * little more than the site selection, less the snapshot comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IncrementalPlanBenchmark {
+
+    @Param({"diamond"})
+    public WorkflowGenerator.SHAPE shape;
+
+    @Param({"1000", "10000"})
+    public int jobs;
+
+    @Param({"full", "incremental"})
+    public String plan;
+
+    private PlannerFixture mFixture;
+
+    /** The snapshot of the earlier plan. */
+    private PlanSnapshot mPrevious;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mFixture = new PlannerFixture(shape, jobs);
+
+        PegasusBag bag = mFixture.bag();
+        ADag dag = mFixture.parse(bag);
+        mPrevious = new PlanSnapshot(bag, dag);
+        PlannerFixture.Refinement refinement = new PlannerFixture.Refinement(dag, bag);
+        mPrevious.recordSites(refinement.all());
+
+        // check that the incremental plan does reuse the earlier one
+        bag = mFixture.bag();
+        dag = mFixture.parse(bag);
+        this.change(dag);
+        if (this.reuse(bag, dag) == 0) {
+            throw new RuntimeException("The incremental plan does not reuse the earlier plan");
+        }
+    }
+
+    @Benchmark
+    public Collection<File> plan() throws CodeGeneratorException, IOException {
+        PegasusBag bag = mFixture.bag();
+        ADag dag = mFixture.parse(bag);
+        this.change(dag);
+        PlanSnapshot snapshot = null;
+        if (plan.equals("incremental")) {
+            snapshot = new PlanSnapshot(bag, dag);
+            snapshot.reuseSiteMappings(
+                    dag, mPrevious, Collections.singletonList(PlannerFixture.EXECUTION_SITE));
+        }
+
+        PlannerFixture.Refinement refinement = new PlannerFixture.Refinement(dag, bag);
+        ADag planned = refinement.all();
+        CondorGenerator generator =
+                new CondorGenerator() {
+                    protected void writeOutDAGManSubmitFile(ADag dag, File dagFile) {}
+                };
+        generator.initialize(refinement.getPegasusBag());
+        Collection<File> result = generator.generateCode(planned);
+
+        if (snapshot != null) {
+            snapshot.recordSites(planned);
+            snapshot.write(
+                    PlanSnapshot.getSnapshotFile(
+                            new File(bag.getPlannerOptions().getSubmitDirectory()),
+                            dag,
+                            bag.getPlannerOptions()));
+        }
+        return result;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mFixture.delete();
+    }
+
+    /**
+     * Pins the unchanged jobs of a workflow to the sites of the earlier plan.
+     *
+     * @param bag the bag of initialization objects
+     * @param dag the workflow
+     * @return the number of jobs pinned
+     */
+    private int reuse(PegasusBag bag, ADag dag) {
+        return new PlanSnapshot(bag, dag)
+                .reuseSiteMappings(
+                        dag, mPrevious, Collections.singletonList(PlannerFixture.EXECUTION_SITE));
+    }
+
+    /**
+     * Changes the arguments of one job in a thousand since the earlier plan.
+     *
+     * @param dag the workflow
+     */
+    private void change(ADag dag) {
+        int i = 0;
+        for (Iterator<GraphNode> it = dag.jobIterator(); it.hasNext(); i++) {
+            Job job = (Job) it.next().getContent();
+            if (i % 1000 == 999) {
+                job.setArguments(job.getArguments() + " -changed");
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.replica.classes.ReplicaStore;
+import edu.isi.pegasus.planner.classes.DagInfo;
+import edu.isi.pegasus.planner.classes.FileTransfer;
+import edu.isi.pegasus.planner.classes.LFNSymbolTable;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.transfer.refiner.FileTable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the heap retained by the per LFN structures the planner builds for a workflow, with the
+ * LFN's referred to by String against referred to by their ids in the symbol table of the workflow.
+ * Each file in the workflow is written by one job and read by another, has a location in the
+ * replica catalog, and is staged in to one site.
+ *
+ * <p>Both keep the files and the symbol table of the workflow. The String keyed structures copy the
+ * LFN's to search the replica catalog for into a hash set, keep the replica locations in a hash map
+ * by LFN, and keep the stage in nodes in a hash map by lfn:site, as the planner did before the
+ * files carried ids. The id keyed structures search the replica catalog with a bit set view of the
+ * symbol table, index the replica store by id, and keep the stage in nodes in a {@link FileTable}.
+ *
+ * <p>The retained heap is reported as the retainedMB secondary result, measured after a full
+ * collection with the structures still reachable. JMH sums the secondary result over the
+ * measurement iterations, so divide it by their number for the heap retained by one build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LFNMemoryBenchmark {
+
+    /** The site the files are staged in to. */
+    private static final String STAGING_SITE = "condorpool";
+
+    /** The names of the stage in nodes the files are spread over. */
+    private static final String[] STAGE_IN_NODES = new String[1000];
+
+    static {
+        for (int i = 0; i < STAGE_IN_NODES.length; i++) {
+            STAGE_IN_NODES[i] = "stage_in_local_" + STAGING_SITE + "_0_" + i;
+        }
+    }
+
+    @Param({"1000000", "2000000"})
+    public int files;
+
+    @Param({"String", "id"})
+    public String keys;
+
+    /** The retained heap, reported as a secondary result. */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Heap {
+
+        public long retainedMB;
+
+        /** The heap in use before the structures are built. */
+        private long mBaseline;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            retainedMB = 0;
+            mBaseline = used();
+        }
+    }
+
+    @Benchmark
+    public Object build(Heap heap) {
+        Object[] result = keys.equals("id") ? this.buildIDKeyed() : this.buildStringKeyed();
+        heap.retainedMB = (used() - heap.mBaseline) / (1024 * 1024);
+        return result;
+    }
+
+    /**
+     * Builds the structures with the LFN's referred to by their ids.
+     *
+     * @return the structures.
+     */
+    private Object[] buildIDKeyed() {
+        DagInfo dinfo = new DagInfo();
+        List<PegasusFile> inputs = new ArrayList<PegasusFile>(files);
+        List<PegasusFile> outputs = new ArrayList<PegasusFile>(files);
+        this.parse(dinfo, true, inputs, outputs);
+        LFNSymbolTable symbols = dinfo.getLFNSymbolTable();
+        Set searchFiles = dinfo.getLFNs(false);
+
+        ReplicaStore store = new ReplicaStore(this.lookup(searchFiles));
+        store.index(symbols);
+
+        FileTable table = new FileTable(symbols);
+        List<FileTransfer> transfers = new ArrayList<FileTransfer>(files);
+        for (PegasusFile pf : inputs) {
+            FileTransfer ft = new FileTransfer(pf, "stage_in");
+            table.put(ft, STAGING_SITE, STAGE_IN_NODES[transfers.size() % STAGE_IN_NODES.length]);
+            transfers.add(ft);
+        }
+        return new Object[] {dinfo, inputs, outputs, searchFiles, store, table, transfers};
+    }
+
+    /**
+     * Builds the structures with the LFN's referred to by String.
+     *
+     * @return the structures.
+     */
+    private Object[] buildStringKeyed() {
+        DagInfo dinfo = new DagInfo();
+        List<PegasusFile> inputs = new ArrayList<PegasusFile>(files);
+        List<PegasusFile> outputs = new ArrayList<PegasusFile>(files);
+        this.parse(dinfo, false, inputs, outputs);
+        Set searchFiles = new HashSet(dinfo.getLFNs(false));
+
+        // the store keyed by the canonical lfns
+        Map<String, Collection<ReplicaCatalogEntry>> mappings = this.lookup(searchFiles);
+        Map<String, Collection<ReplicaCatalogEntry>> canonical = new HashMap(mappings.size());
+        LFNSymbolTable symbols = dinfo.getLFNSymbolTable();
+        for (Map.Entry<String, Collection<ReplicaCatalogEntry>> e : mappings.entrySet()) {
+            canonical.put(symbols.canonical(e.getKey()), e.getValue());
+        }
+        mappings = null;
+        ReplicaStore store = new ReplicaStore(canonical);
+
+        Map<String, String> table = new HashMap<String, String>(10000);
+        List<FileTransfer> transfers = new ArrayList<FileTransfer>(files);
+        for (PegasusFile pf : inputs) {
+            FileTransfer ft = new FileTransfer(pf.getLFN(), "stage_in", pf.getFlags());
+            table.put(
+                    ft.getLFN() + ":" + STAGING_SITE,
+                    STAGE_IN_NODES[transfers.size() % STAGE_IN_NODES.length]);
+            transfers.add(ft);
+        }
+        return new Object[] {dinfo, inputs, outputs, searchFiles, store, table, transfers};
+    }
+
+    /**
+     * Creates the files of the workflow as the parser does, each with its own copy of the LFN.
+     *
+     * @param dinfo the DagInfo to register the files with.
+     * @param ids whether the files carry the ids of their LFN's.
+     * @param inputs the list to add the input files of the jobs to.
+     * @param outputs the list to add the output files of the jobs to.
+     */
+    private void parse(
+            DagInfo dinfo, boolean ids, List<PegasusFile> inputs, List<PegasusFile> outputs) {
+        for (int i = 0; i < files; i++) {
+            PegasusFile out = new PegasusFile(lfn(i));
+            PegasusFile in = new PegasusFile(lfn(i));
+            if (ids) {
+                dinfo.updateLFNMap("ID" + i, out, 'o');
+                dinfo.updateLFNMap("ID" + (i + 1), in, 'i');
+            } else {
+                out.setLFN(dinfo.updateLFNMap("ID" + i, out.getLFN(), 'o'));
+                in.setLFN(dinfo.updateLFNMap("ID" + (i + 1), in.getLFN(), 'i'));
+            }
+            outputs.add(out);
+            inputs.add(in);
+        }
+    }
+
+    /**
+     * Returns the locations of the files as a replica catalog lookup does, with its own copies of
+     * the LFN's.
+     *
+     * @param lfns the LFN's to look up.
+     * @return the locations indexed by LFN.
+     */
+    private Map<String, Collection<ReplicaCatalogEntry>> lookup(Set<String> lfns) {
+        Map<String, Collection<ReplicaCatalogEntry>> result = new HashMap(lfns.size());
+        for (String lfn : lfns) {
+            String copy = new String(lfn);
+            result.put(
+                    copy,
+                    Collections.singletonList(
+                            new ReplicaCatalogEntry("file:///data/" + copy, "local")));
+        }
+        return result;
+    }
+
+    private static String lfn(int i) {
+        return new StringBuilder("run0001/output/file.").append(i).append(".dat").toString();
+    }
+
+    /**
+     * Returns the heap in use after a full collection.
+     *
+     * @return the bytes in use.
+     */
+    private static long used() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
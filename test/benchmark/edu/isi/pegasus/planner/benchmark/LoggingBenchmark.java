@@ -0,0 +1,143 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of the per job debug messages logged while planning a workflow at the INFO
+ * level, when the messages are always constructed as the planner used to do, against the level
+ * guarded template and supplier variants of the log method. The messages are the ones logged for
+ * every job while adding the transfer nodes, the cleanup nodes and writing out the submit files.
+ *
+ * <p>Run with <code>-prof gc</code> to compare the bytes allocated by the variants.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoggingBenchmark {
+
+    @Param({"100000"})
+    public int jobs;
+
+    /** The workflow nodes, where each job has the two jobs before it as parents. */
+    private List<GraphNode> mNodes;
+
+    /** The logger at INFO level. */
+    private LogManager mLogger;
+
+    @Setup
+    public void setUp() {
+        mLogger = LogManagerFactory.loadInstance("Default", "Simple", new Properties());
+        mLogger.setLevel(LogManager.INFO_MESSAGE_LEVEL);
+        mLogger.logEventStart("pegasus.benchmark", "workflow", "benchmark");
+
+        mNodes = new ArrayList<GraphNode>(jobs);
+        for (int i = 0; i < jobs; i++) {
+            GraphNode node = new GraphNode("ID" + i, "preprocess_ID" + i);
+            node.setDepth(i / 100);
+            if (i > 0) {
+                node.addParent(mNodes.get(i - 1));
+            }
+            if (i > 1) {
+                node.addParent(mNodes.get(i - 2));
+            }
+            mNodes.add(node);
+        }
+    }
+
+    /**
+     * Logs the per job messages, constructing them always and passing them through the log
+     * formatter before the level is checked.
+     *
+     * @return the number of characters constructed
+     */
+    @Benchmark
+    public long eager() {
+        long chars = 0;
+        File dir = new File("/submit/00/00");
+        for (GraphNode node : mNodes) {
+            String id = node.getID();
+            chars += this.eager("Job being traversed is " + id);
+            chars += this.eager("To be run at " + "condorpool");
+            chars += this.eager("Parents of job:" + node.parentsToString());
+            chars += this.eager("Directory for job " + id + " is " + dir);
+            chars += this.eager("Applying priority of " + node.getDepth() + " to " + id);
+            chars += this.eager("File f." + id + " will not be cleaned up for job " + id);
+            chars += this.eager("Written Submit file : " + new File(dir, id + ".sub").getPath());
+        }
+        return chars;
+    }
+
+    /** Logs the per job messages, through the level guarded methods. */
+    @Benchmark
+    public void guarded() {
+        File dir = new File("/submit/00/00");
+        for (GraphNode node : mNodes) {
+            String id = node.getID();
+            mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "Job being traversed is {}", id);
+            mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "To be run at {}", "condorpool");
+            mLogger.log(
+                    () -> "Parents of job:" + node.parentsToString(),
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "Directory for job {} is {}", id, dir);
+            mLogger.log(
+                    LogManager.DEBUG_MESSAGE_LEVEL,
+                    "Applying priority of {} to {}",
+                    node.getDepth(),
+                    id);
+            mLogger.log(
+                    LogManager.DEBUG_MESSAGE_LEVEL,
+                    "File f.{} will not be cleaned up for job {}",
+                    id,
+                    id);
+            mLogger.log(
+                    () -> "Written Submit file : " + new File(dir, id + ".sub").getPath(),
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+        }
+    }
+
+    /**
+     * Logs a message at the DEBUG level, formatting it first.
+     *
+     * @param message the message
+     * @return the length of the message
+     */
+    private int eager(String message) {
+        mLogger.add(message);
+        mLogger.logAndReset(LogManager.DEBUG_MESSAGE_LEVEL);
+        return message.length();
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.replica.impl.PFNTemplate;
+import edu.isi.pegasus.planner.catalog.replica.impl.Regex;
+import edu.isi.pegasus.planner.catalog.replica.impl.RegexIndex;
+import edu.isi.pegasus.planner.catalog.replica.impl.YAML;
+import edu.isi.pegasus.planner.classes.ReplicaLocation;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares regex replica catalog lookups that expand the PFN's with <code>replaceAll</code> for
+ * every group, as the replica catalogs used to do, against expanding them with a PFNTemplate, and
+ * against lookups through the Regex and YAML replica catalogs, that cache the expansions for the
+ * LFN's looked up before.
+ *
+ * <p>Each rule has two entries, with PFN's that refer to the groups of the rule. Each invocation
+ * looks up the next LFN from a fixed sequence, drawn from a number of distinct LFN's so that LFN's
+ * are looked up repeatedly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PFNTemplateBenchmark {
+
+    /** The seed for the random number generator, so that runs are comparable. */
+    private static final long SEED = 42;
+
+    /** The number of LFNs cycled through. */
+    private static final int LFNS = 1 << 20;
+
+    @Param({"500"})
+    public int rules;
+
+    @Param({"100000"})
+    public int distinct;
+
+    /** The index over the patterns. */
+    private RegexIndex mIndex;
+
+    /** The PFN's of the entries for each rule. */
+    private List<String[]> mPFNs;
+
+    /** The PFN templates of the entries for each rule. */
+    private List<PFNTemplate[]> mTemplates;
+
+    /** The Regex replica catalog with the same rules. */
+    private Regex mRegex;
+
+    /** The YAML replica catalog with the same rules. */
+    private YAML mYAML;
+
+    private String[] mLFNs;
+
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        mIndex = new RegexIndex();
+        mPFNs = new ArrayList<String[]>();
+        mTemplates = new ArrayList<PFNTemplate[]>();
+        mRegex = new Regex();
+        mRegex.connect(this.tempFile("regex", ".rc"));
+        mRegex.setReadOnly(true);
+        mYAML = new YAML();
+        mYAML.connect(this.tempFile("replicas", ".yml"));
+        mYAML.setReadOnly(true);
+        for (int i = 0; i < rules; i++) {
+            this.add(
+                    "run" + i + "/(\\w+)_(\\d+)\\.dat",
+                    "gsiftp://storage.example.org/data/run" + i + "/[2]/[1]_[2].dat",
+                    "file:///scratch/run" + i + "/[1]/[0]");
+        }
+
+        Random random = new Random(SEED);
+        mLFNs = new String[LFNS];
+        for (int i = 0; i < LFNS; i++) {
+            int j = random.nextInt(Math.max(1, distinct));
+            mLFNs[i] = "run" + (j % rules) + "/input_" + j + ".dat";
+        }
+        for (mNext = 0; mNext < 1000; ) {
+            int next = mNext;
+            int replaced = this.replaceAll();
+            mNext = next;
+            if (replaced != this.template()) {
+                throw new RuntimeException("replaceAll and the templates disagree on the PFN's");
+            }
+        }
+        mNext = 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        mRegex.close();
+        mYAML.close();
+    }
+
+    @Benchmark
+    public int replaceAll() {
+        RegexIndex.Match match = mIndex.first(this.next());
+        Matcher m = match.getMatcher();
+        int length = 0;
+        for (String pfn : mPFNs.get(Integer.parseInt(match.getKey()))) {
+            for (int k = 0, j = m.groupCount(); k <= j; ++k) {
+                pfn = pfn.replaceAll("\\[" + k + "\\]", m.group(k));
+            }
+            length += pfn.length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int template() {
+        RegexIndex.Match match = mIndex.first(this.next());
+        int length = 0;
+        for (PFNTemplate template : mTemplates.get(Integer.parseInt(match.getKey()))) {
+            length += template.expand(match.getMatcher()).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public Collection<ReplicaCatalogEntry> regexCatalog() {
+        return mRegex.lookup(this.next());
+    }
+
+    @Benchmark
+    public Collection<ReplicaCatalogEntry> yamlCatalog() {
+        return mYAML.lookup(this.next());
+    }
+
+    private String next() {
+        mNext = (mNext + 1) & (LFNS - 1);
+        return mLFNs[mNext];
+    }
+
+    /**
+     * Returns the path to a file that does not exist yet, for a catalog.
+     *
+     * @param prefix the prefix of the file name
+     * @param suffix the suffix of the file name
+     * @return the path
+     * @throws IOException if unable to create the file
+     */
+    private String tempFile(String prefix, String suffix) throws IOException {
+        File file = File.createTempFile(prefix, suffix);
+        file.delete();
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Adds a rule to the index and the catalogs.
+     *
+     * @param regex the regular expression
+     * @param pfns the PFN's of the entries for the rule
+     */
+    private void add(String regex, String... pfns) {
+        String key = Integer.toString(mPFNs.size());
+        mIndex.add(key, Pattern.compile(regex));
+        PFNTemplate[] templates = new PFNTemplate[pfns.length];
+        for (int i = 0; i < pfns.length; i++) {
+            templates[i] = PFNTemplate.compile(pfns[i]);
+            ReplicaCatalogEntry rce = new ReplicaCatalogEntry(pfns[i], "site" + i);
+            rce.addAttribute(Regex.REGEX_KEY, "true");
+            mRegex.insert(regex, rce);
+
+            Collection<ReplicaCatalogEntry> c = new ArrayList<ReplicaCatalogEntry>();
+            c.add(new ReplicaCatalogEntry(pfns[i], "site" + i));
+            ReplicaLocation rl = new ReplicaLocation(regex, c, false);
+            rl.setRegex(true);
+            mYAML.insert(rl);
+        }
+        mPFNs.add(pfns);
+        mTemplates.add(templates);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Selector;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.refiner.PlanSnapshot;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what incremental planning adds to a plan: hashing the abstract workflow into a snapshot,
+ * and comparing it against the snapshot of the earlier plan to pin the unchanged jobs. One job in a
+ * thousand has changed since the earlier plan. The jobs are laid out in layers of a thousand, with
+ * each job reading the outputs of two jobs in the layer before.
+ *
+ * <p>The workflow is generated afresh for every invocation, as pinning the jobs modifies them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PlanSnapshotBenchmark {
+
+    /** The number of jobs in each layer of the workflow. */
+    private static final int LAYER_WIDTH = 1000;
+
+    /** The execution sites. */
+    private static final List<String> SITES = Arrays.asList("siteA", "siteB");
+
+    @Param({"10000", "100000"})
+    public int jobs;
+
+    private PegasusBag mBag;
+
+    /** The snapshot of the earlier plan. */
+    private PlanSnapshot mPrevious;
+
+    /** The workflow to plan. */
+    private ADag mDag;
+
+    @Setup
+    public void setUp() {
+        LogManager logger = LogManagerFactory.loadInstance("Default", "Simple", new Properties());
+        logger.setLevel(LogManager.WARNING_MESSAGE_LEVEL);
+        logger.logEventStart("pegasus.benchmark", "workflow", "benchmark");
+
+        PlannerOptions options = new PlannerOptions();
+        options.setOriginalArgString(new String[] {"--sites", "siteA,siteB", "workflow.yml"});
+        mBag = new PegasusBag();
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty(PlanSnapshot.INCREMENTAL_PLANNING_PROPERTY_KEY, "true");
+        mBag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        mBag.add(PegasusBag.PEGASUS_LOGMANAGER, logger);
+        mBag.add(PegasusBag.PLANNER_OPTIONS, options);
+
+        ADag dag = this.generate("-i in");
+        mPrevious = new PlanSnapshot(mBag, dag);
+        int i = 0;
+        for (Iterator<GraphNode> it = dag.jobIterator(); it.hasNext(); i++) {
+            ((Job) it.next().getContent()).setSiteHandle(SITES.get(i % SITES.size()));
+        }
+        mPrevious.recordSites(dag);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpWorkflow() {
+        mDag = this.generate("-i changed");
+    }
+
+    /**
+     * Creates the snapshot for the workflow and pins the unchanged jobs.
+     *
+     * @return the number of jobs pinned
+     */
+    @Benchmark
+    public int reuse() {
+        PlanSnapshot snapshot = new PlanSnapshot(mBag, mDag);
+        return snapshot.reuseSiteMappings(mDag, mPrevious, SITES);
+    }
+
+    /**
+     * Generates the workflow, with the arguments of one job in a thousand changed.
+     *
+     * @param changed the arguments for the changed jobs.
+     * @return the workflow
+     */
+    private ADag generate(String changed) {
+        ADag dag = new ADag();
+        for (int i = 0; i < jobs; i++) {
+            Job job = new Job();
+            job.setJobType(Job.COMPUTE_JOB);
+            job.setTransformation("pegasus", "process", "1.0");
+            job.setName("process_ID" + i);
+            job.setLogicalID("ID" + i);
+            job.setArguments((i % 1000 == 999) ? changed : "-i in");
+            job.addOutputFile(new PegasusFile("f.out." + i));
+            if (i >= LAYER_WIDTH) {
+                job.addInputFile(new PegasusFile("f.out." + this.parent(i, 0)));
+                job.addInputFile(new PegasusFile("f.out." + this.parent(i, 1)));
+            }
+            job.getSelectorProfiles().construct(Selector.PFN_HINT_KEY, "/usr/bin/process");
+            dag.add(job);
+        }
+        for (int i = LAYER_WIDTH; i < jobs; i++) {
+            dag.addNewRelation("process_ID" + this.parent(i, 0), "process_ID" + i);
+            dag.addNewRelation("process_ID" + this.parent(i, 1), "process_ID" + i);
+        }
+        return dag;
+    }
+
+    /**
+     * Returns a parent of a job, in the layer before the job.
+     *
+     * @param i the index of the job.
+     * @param offset the offset of the parent from the position of the job in its layer.
+     * @return the index of the parent
+     */
+    private int parent(int i, int offset) {
+        return (i / LAYER_WIDTH - 1) * LAYER_WIDTH + (i + offset) % LAYER_WIDTH;
+    }
+}
@@ -0,0 +1,385 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.catalog.SiteCatalog;
+import edu.isi.pegasus.planner.catalog.site.SiteFactory;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerCache;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusConfiguration;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.parser.DAXParserFactory;
+import edu.isi.pegasus.planner.parser.dax.Callback;
+import edu.isi.pegasus.planner.parser.dax.DAXParser;
+import edu.isi.pegasus.planner.refiner.CleanupEngine;
+import edu.isi.pegasus.planner.refiner.CreateDirectory;
+import edu.isi.pegasus.planner.refiner.DataReuseEngine;
+import edu.isi.pegasus.planner.refiner.DeployWorkerPackage;
+import edu.isi.pegasus.planner.refiner.InterPoolEngine;
+import edu.isi.pegasus.planner.refiner.RemoveDirectory;
+import edu.isi.pegasus.planner.refiner.ReplicaCatalogBridge;
+import edu.isi.pegasus.planner.refiner.TransferEngine;
+import edu.isi.pegasus.planner.refiner.TransitiveReduction;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Sets up everything required to plan a generated workflow in a scratch directory: a site catalog
+ * with the local site and a condor pool, a transformation catalog with the transformation the jobs
+ * execute, a replica catalog with the raw inputs and the workflow itself. The workflow is planned
+ * with the sharedfs data configuration, so that no worker package needs to be deployed, and in
+ * place cleanup.
+ *
+ * <p>The refinement stages are run in the same order as the MainEngine runs them, one at a time, so
+ * that each stage can be measured on its own.
+ */
+public class PlannerFixture {
+
+    /** The execution site for the jobs. */
+    public static final String EXECUTION_SITE = "condorpool";
+
+    /** The scratch directory where all the files are written. */
+    private final File mDir;
+
+    /** The generated workflow file. */
+    private final File mWorkflow;
+
+    /** The replica catalog with the raw inputs. */
+    private final File mReplicaCatalog;
+
+    /** The number of submit directories created, so that each plan gets its own. */
+    private int mPlans;
+
+    /**
+     * The overloaded constructor, that generates the workflow and the catalogs.
+     *
+     * @param shape the shape of the workflow
+     * @param jobs the number of jobs in the workflow
+     * @throws IOException in case of error while writing out the files
+     */
+    public PlannerFixture(WorkflowGenerator.SHAPE shape, int jobs) throws IOException {
+        mDir = File.createTempFile("pegasus-benchmark-", "");
+        mDir.delete();
+        mDir.mkdirs();
+        mPlans = 0;
+
+        WorkflowGenerator generator = new WorkflowGenerator(shape, jobs);
+        mWorkflow = new File(mDir, "workflow.yml");
+        generator.writeTo(mWorkflow);
+
+        mReplicaCatalog = new File(mDir, "rc.txt");
+        PrintWriter pw = new PrintWriter(new FileWriter(mReplicaCatalog));
+        for (String lfn : generator.getRawInputs()) {
+            pw.println(lfn + " file://" + mDir + "/inputs/" + lfn + " site=\"local\"");
+        }
+        pw.close();
+
+        this.writeSiteCatalog(new File(mDir, "sites.yml"));
+        this.writeTransformationCatalog(new File(mDir, "transformations.yml"));
+    }
+
+    /**
+     * Returns the generated workflow file.
+     *
+     * @return the workflow file
+     */
+    public File getWorkflow() {
+        return mWorkflow;
+    }
+
+    /**
+     * Returns the replica catalog file with the raw inputs.
+     *
+     * @return the replica catalog
+     */
+    public File getReplicaCatalog() {
+        return mReplicaCatalog;
+    }
+
+    /**
+     * Returns a new bag with freshly loaded properties, options and catalogs, and a submit
+     * directory of its own.
+     *
+     * @return the bag
+     */
+    public PegasusBag bag() {
+        PegasusBag bag = new PegasusBag();
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty("pegasus.catalog.site.file", new File(mDir, "sites.yml").getPath());
+        props.setProperty(
+                "pegasus.catalog.transformation.file",
+                new File(mDir, "transformations.yml").getPath());
+        props.setProperty("pegasus.catalog.replica", "File");
+        props.setProperty("pegasus.catalog.replica.file", mReplicaCatalog.getPath());
+        props.setProperty("pegasus.data.configuration", "sharedfs");
+        props.setProperty("pegasus.metrics.app", "benchmark");
+        props.setProperty("pegasus.monitord.encoding", "json");
+
+        LogManager logger = LogManagerFactory.loadInstance("Default", "Simple", new Properties());
+        logger.setLevel(LogManager.WARNING_MESSAGE_LEVEL);
+        logger.logEventStart("pegasus.benchmark", "workflow", mWorkflow.getName());
+
+        PlannerOptions options = new PlannerOptions();
+        options.setDAX(mWorkflow.getPath());
+        options.setExecutionSites(EXECUTION_SITE);
+        options.setOutputSites("local");
+        // the execution directory is named after the relative submit directory,
+        // as the planner does when no random directory is specified
+        String relative = "run" + mPlans++;
+        options.setSubmitDirectory(new File(mDir, "submit").getPath(), relative);
+        options.setRandomDir(relative);
+        new File(options.getSubmitDirectory()).mkdirs();
+
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        bag.add(PegasusBag.PLANNER_OPTIONS, options);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, logger);
+        bag.add(PegasusBag.PLANNER_DIRECTORY, mDir);
+
+        PegasusConfiguration configurator = new PegasusConfiguration(logger);
+        configurator.loadConfigurationPropertiesAndOptions(props, options);
+        options.setVDSProperties(props.getMatchingProperties("pegasus.", false));
+
+        SiteStore store = new SiteStore();
+        SiteCatalog catalog = SiteFactory.loadInstance(bag);
+        catalog.load(Arrays.asList("*"));
+        for (String site : catalog.list()) {
+            SiteCatalogEntry entry = catalog.lookup(site);
+            if (entry != null) {
+                store.addEntry(entry);
+            }
+        }
+        catalog.close();
+        store.setForPlannerUse(props, options);
+        configurator.updateSiteStoreAndOptions(store, options);
+        bag.add(PegasusBag.SITE_STORE, store);
+        bag.add(PegasusBag.TRANSFORMATION_CATALOG, TransformationFactory.loadInstance(bag));
+
+        try {
+            props.setPropertiesFileBackend(options.getSubmitDirectory());
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to set properties file backend", e);
+        }
+        return bag;
+    }
+
+    /**
+     * Parses the generated workflow, and sets the identifiers the planner sets after parsing.
+     *
+     * @param bag the bag to use
+     * @return the parsed workflow
+     */
+    public ADag parse(PegasusBag bag) {
+        String dax = mWorkflow.getPath();
+        DAXParser p =
+                DAXParserFactory.loadDAXParser(bag, DAXParserFactory.DEFAULT_CALLBACK_CLASS, dax);
+        Callback cb = p.getDAXCallback();
+        p.parse(dax);
+        ADag dag = (ADag) cb.getConstructedObject();
+        dag.generateFlowName();
+        dag.setFlowTimestamp(bag.getPlannerOptions().getDateTime(false));
+        dag.setDAXMTime(mWorkflow);
+        dag.generateFlowID();
+        dag.setReleaseVersion();
+        dag.setRootWorkflowUUID(dag.getWorkflowUUID());
+        return dag;
+    }
+
+    /**
+     * Returns a new refinement of the generated workflow, with a fresh bag.
+     *
+     * @return the refinement
+     */
+    public Refinement refinement() {
+        PegasusBag bag = this.bag();
+        return new Refinement(this.parse(bag), bag);
+    }
+
+    /** Deletes the scratch directory. */
+    public void delete() {
+        delete(mDir);
+    }
+
+    private void writeSiteCatalog(File file) throws IOException {
+        PrintWriter pw = new PrintWriter(new FileWriter(file));
+        pw.println("pegasus: \"5.0\"");
+        pw.println("sites:");
+        pw.println("  - name: local");
+        pw.println("    arch: x86_64");
+        pw.println("    os.type: linux");
+        pw.println("    directories:");
+        this.writeDirectory(pw, "sharedScratch", new File(mDir, "scratch").getPath());
+        this.writeDirectory(pw, "localStorage", new File(mDir, "outputs").getPath());
+        pw.println("    profiles:");
+        pw.println("      env: {PEGASUS_HOME: /usr}");
+        pw.println("  - name: " + EXECUTION_SITE);
+        pw.println("    arch: x86_64");
+        pw.println("    os.type: linux");
+        pw.println("    directories:");
+        this.writeDirectory(pw, "sharedScratch", new File(mDir, "shared").getPath());
+        pw.println("    profiles:");
+        pw.println("      env: {PEGASUS_HOME: /usr}");
+        pw.println("      pegasus: {style: condor, auxillary.local: \"true\"}");
+        pw.println("      condor: {universe: vanilla}");
+        pw.close();
+    }
+
+    private void writeDirectory(PrintWriter pw, String type, String path) {
+        pw.println("      - type: " + type);
+        pw.println("        path: " + path);
+        pw.println("        fileServers:");
+        pw.println("          - {operation: all, url: \"file://" + path + "\"}");
+    }
+
+    private void writeTransformationCatalog(File file) throws IOException {
+        PrintWriter pw = new PrintWriter(new FileWriter(file));
+        pw.println("pegasus: \"5.0\"");
+        pw.println("transformations:");
+        pw.println("  - namespace: " + WorkflowGenerator.TRANSFORMATION_NAMESPACE);
+        pw.println("    name: " + WorkflowGenerator.TRANSFORMATION_NAME);
+        pw.println("    version: \"" + WorkflowGenerator.TRANSFORMATION_VERSION + "\"");
+        pw.println("    sites:");
+        pw.println("      - {name: " + EXECUTION_SITE + ", pfn: /bin/true, type: installed}");
+        pw.close();
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    /**
+     * Runs the refinement stages on a workflow, in the order the MainEngine runs them. Each stage
+     * has to be run after the one before it.
+     */
+    public static class Refinement {
+
+        private PegasusBag mBag;
+
+        private ADag mDag;
+
+        private ReplicaCatalogBridge mRCBridge;
+
+        private DataReuseEngine mReuse;
+
+        private DeployWorkerPackage mDeploy;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param dag the parsed workflow
+         * @param bag the bag of initialization objects
+         */
+        public Refinement(ADag dag, PegasusBag bag) {
+            mDag = dag;
+            mBag = bag;
+            mDag.setWorkflowRefinementStarted(true);
+            mDag.getWorkflowMetrics().lockTaskMetrics(true);
+        }
+
+        /**
+         * Returns the workflow, as refined so far.
+         *
+         * @return the workflow
+         */
+        public ADag getWorkflow() {
+            return mDag;
+        }
+
+        /**
+         * Returns the bag, as updated by the stages run so far.
+         *
+         * @return the bag
+         */
+        public PegasusBag getPegasusBag() {
+            return mBag;
+        }
+
+        /** Removes the jobs whose outputs already exist. */
+        public void reuse() {
+            mRCBridge = new ReplicaCatalogBridge(mDag, mBag);
+            mReuse = new DataReuseEngine(mDag, mBag);
+            mDag = mReuse.reduceWorkflow(mDag, mRCBridge);
+        }
+
+        /** Maps the jobs to the execution sites. */
+        public void siteSelection() {
+            InterPoolEngine engine = new InterPoolEngine(mDag, mBag);
+            engine.determineSites();
+            mBag = engine.getPegasusBag();
+            mDeploy = DeployWorkerPackage.loadDeployWorkerPackage(mBag);
+            mDeploy.initialize(mDag);
+        }
+
+        /** Adds the stage in, stage out and registration jobs. */
+        public void transfers() {
+            PlannerCache plannerCache = new PlannerCache();
+            plannerCache.initialize(mBag, mDag);
+            TransferEngine engine =
+                    new TransferEngine(
+                            mDag, mBag, mReuse.getDeletedJobs(), mReuse.getDeletedLeafJobs());
+            engine.addTransferNodes(mRCBridge, plannerCache);
+            mBag.add(PegasusBag.PLANNER_CACHE, plannerCache);
+            mRCBridge.closeConnection();
+            mDag = mDeploy.addSetupNodes(mDag);
+            if (mBag.getPlannerOptions().generateRandomDirectory()) {
+                mDag =
+                        CreateDirectory.loadCreateDirectoryStraegyInstance(mBag)
+                                .addCreateDirectoryNodes(mDag);
+            }
+        }
+
+        /** Adds the in place cleanup jobs, and the leaf cleanup jobs. */
+        public void cleanup() {
+            mDag = new CleanupEngine(mBag).addCleanupJobs(mDag);
+            RemoveDirectory remove =
+                    new RemoveDirectory(mDag, mBag, mBag.getPlannerOptions().getSubmitDirectory());
+            mDag = remove.addRemoveDirectoryNodes(mDag);
+        }
+
+        /** Removes the redundant edges. */
+        public void reduceEdges() {
+            mDag = new TransitiveReduction(mBag.getLogger()).reduce(mDag);
+        }
+
+        /**
+         * Runs all the stages.
+         *
+         * @return the refined workflow
+         */
+        public ADag all() {
+            this.reuse();
+            this.siteSelection();
+            this.transfers();
+            this.cleanup();
+            this.reduceEdges();
+            return mDag;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the refinement stages the MainEngine runs on a parsed workflow, one stage at a time. The
+ * workflow is parsed and the stages before the one measured are run before each invocation, as the
+ * stages modify the workflow in place. The all stage runs all of them.
+ *
+ * <p>As every invocation is set up afresh, the stages are measured in the single shot mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RefinerBenchmark {
+
+    /** The refinement stages, in the order they are run. */
+    public static enum STAGE {
+        reuse,
+        siteSelection,
+        transfers,
+        cleanup,
+        reduceEdges,
+        all
+    }
+
+    @Param({"pipeline", "fanout", "fanin", "diamond"})
+    public WorkflowGenerator.SHAPE shape;
+
+    @Param({"1000"})
+    public int jobs;
+
+    @Param({"reuse", "siteSelection", "transfers", "cleanup", "reduceEdges", "all"})
+    public STAGE stage;
+
+    private PlannerFixture mFixture;
+
+    private PlannerFixture.Refinement mRefinement;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mFixture = new PlannerFixture(shape, jobs);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        mRefinement = mFixture.refinement();
+        if (stage == STAGE.all) {
+            return;
+        }
+        for (STAGE previous : STAGE.values()) {
+            if (previous == stage) {
+                break;
+            }
+            run(mRefinement, previous);
+        }
+    }
+
+    @Benchmark
+    public ADag refine() {
+        if (stage == STAGE.all) {
+            return mRefinement.all();
+        }
+        run(mRefinement, stage);
+        return mRefinement.getWorkflow();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mFixture.delete();
+    }
+
+    /**
+     * Runs a single refinement stage.
+     *
+     * @param refinement the refinement
+     * @param stage the stage to run
+     */
+    private static void run(PlannerFixture.Refinement refinement, STAGE stage) {
+        switch (stage) {
+            case reuse:
+                refinement.reuse();
+                break;
+
+            case siteSelection:
+                refinement.siteSelection();
+                break;
+
+            case transfers:
+                refinement.transfers();
+                break;
+
+            case cleanup:
+                refinement.cleanup();
+                break;
+
+            case reduceEdges:
+                refinement.reduceEdges();
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unsupported stage " + stage);
+        }
+    }
+}
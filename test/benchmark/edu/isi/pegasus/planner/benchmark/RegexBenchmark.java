@@ -0,0 +1,158 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.catalog.replica.impl.RegexIndex;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares first match lookups through the RegexIndex, against matching every pattern in insertion
+ * order as the Regex replica catalog used to do. The rules are a mix of patterns with a literal
+ * prefix, patterns with only a literal suffix, and a few patterns without any literals, followed by
+ * a catch all rule. Each invocation looks up the next LFN from a fixed set of random LFNs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RegexBenchmark {
+
+    /** The seed for the random number generator, so that runs are comparable. */
+    private static final long SEED = 42;
+
+    /** The number of LFNs cycled through. */
+    private static final int LFNS = 4096;
+
+    @Param({"1000", "10000"})
+    public int rules;
+
+    /** The patterns in insertion order. */
+    private Map<String, Pattern> mPatterns;
+
+    /** The index over the patterns. */
+    private RegexIndex mIndex;
+
+    private String[] mLFNs;
+
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mPatterns = new LinkedHashMap<String, Pattern>();
+        mIndex = new RegexIndex();
+        for (int i = 0; i < rules; i++) {
+            String regex;
+            switch (i % 10) {
+                case 8:
+                    regex = ".*\\.ext" + i;
+                    break;
+                case 9:
+                    regex = (i % 1000 == 9) ? "[a-c]+_(\\d+)_" + i + "|x" + i : ".*/part" + i;
+                    break;
+                default:
+                    regex = "run" + i + "/f\\.(\\d+)\\.dat";
+            }
+            this.add(regex);
+        }
+        this.add("(.*)");
+
+        Random random = new Random(SEED);
+        mLFNs = new String[LFNS];
+        for (int i = 0; i < LFNS; i++) {
+            mLFNs[i] = this.lfn(random);
+            if (!mIndex.first(mLFNs[i]).getKey().equals(this.scan(mLFNs[i]))) {
+                throw new RuntimeException("Index and linear scan disagree on " + mLFNs[i]);
+            }
+        }
+        mNext = 0;
+    }
+
+    @Benchmark
+    public String indexed() {
+        return mIndex.first(this.next()).getKey();
+    }
+
+    @Benchmark
+    public String linear() {
+        return this.scan(this.next());
+    }
+
+    /**
+     * Returns the key of the first pattern in insertion order that matches the LFN.
+     *
+     * @param lfn the LFN
+     * @return the key, or null if no pattern matches
+     */
+    private String scan(String lfn) {
+        for (Map.Entry<String, Pattern> entry : mPatterns.entrySet()) {
+            if (entry.getValue().matcher(lfn).matches()) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private String next() {
+        mNext = (mNext + 1) & (LFNS - 1);
+        return mLFNs[mNext];
+    }
+
+    /**
+     * Returns the LFN for a random position.
+     *
+     * @param random the random number generator
+     * @return the LFN
+     */
+    private String lfn(Random random) {
+        int i = random.nextInt(rules);
+        switch (i % 10) {
+            case 8:
+                return "dir/file" + random.nextInt(1000) + ".ext" + i;
+            case 9:
+                return "out/" + random.nextInt(1000) + "/part" + i;
+            default:
+                return random.nextInt(4) == 0
+                        ? "unmatched/" + i + ".txt"
+                        : "run" + i + "/f." + random.nextInt(1000) + ".dat";
+        }
+    }
+
+    /**
+     * Adds a rule to the map and the index.
+     *
+     * @param regex the regular expression
+     */
+    private void add(String regex) {
+        Pattern p = Pattern.compile(regex);
+        mPatterns.put(regex, p);
+        mIndex.add(regex, p);
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
+import edu.isi.pegasus.planner.catalog.replica.impl.Regex;
+import edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile;
+import edu.isi.pegasus.planner.catalog.replica.impl.YAML;
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures loading a file based replica catalog, and looking up all the LFNs in it, for the file
+ * based backends. The catalog is written out through the backend itself, so that each backend reads
+ * its own format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReplicaCatalogBenchmark {
+
+    /** The file based backends. */
+    public static enum BACKEND {
+        SimpleFile,
+        Regex,
+        YAML
+    }
+
+    @Param({"SimpleFile", "Regex", "YAML"})
+    public BACKEND backend;
+
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private File mFile;
+
+    private ReplicaCatalog mCatalog;
+
+    @Setup
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("pegasus-benchmark-", ".rc");
+        mFile.delete();
+        ReplicaCatalog catalog = this.connect(false);
+        for (int i = 0; i < entries; i++) {
+            catalog.insert("f." + i, "file:///data/f." + i, "local");
+        }
+        catalog.close();
+        mCatalog = this.connect(true);
+    }
+
+    @Benchmark
+    public ReplicaCatalog load() {
+        ReplicaCatalog catalog = this.connect(true);
+        catalog.close();
+        return catalog;
+    }
+
+    @Benchmark
+    public void lookup(Blackhole bh) {
+        for (int i = 0; i < entries; i++) {
+            bh.consume(mCatalog.lookup("f." + i, "local"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mCatalog.close();
+        mFile.delete();
+    }
+
+    /**
+     * Connects a new instance of the backend to the catalog file.
+     *
+     * @param readOnly whether to connect in read only mode
+     * @return the catalog
+     */
+    private ReplicaCatalog connect(boolean readOnly) {
+        ReplicaCatalog catalog;
+        switch (backend) {
+            case SimpleFile:
+                catalog = new SimpleFile();
+                break;
+
+            case Regex:
+                catalog = new Regex();
+                break;
+
+            case YAML:
+                catalog = new YAML();
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unsupported backend " + backend);
+        }
+        Properties props = new Properties();
+        props.setProperty("file", mFile.getPath());
+        props.setProperty(ReplicaCatalog.READ_ONLY_KEY, Boolean.toString(readOnly));
+        if (!catalog.connect(props)) {
+            throw new RuntimeException("Unable to connect to " + backend + " at " + mFile);
+        }
+        return catalog;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.common.VariableExpansionReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading a large synthetic workflow through the VariableExpansionReader, wrapping a
+ * FileReader and reading the file directly through a file channel. One in every hundred lines
+ * refers to the HOME environment variable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VariableExpansionReaderBenchmark {
+
+    @Param({"400000"})
+    public int lines;
+
+    /** The workflow file. */
+    private File mFile;
+
+    private char[] mBuffer;
+
+    @Setup
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("workflow", ".yml");
+        Writer writer = new BufferedWriter(new FileWriter(mFile));
+        for (int i = 0; i < lines; i++) {
+            writer.write(
+                    (i % 100 == 0)
+                            ? "        - {lfn: f." + i + ", pfn: \"file://${HOME}/f." + i + "\"}\n"
+                            : "      - id: ID" + i + "\n        name: preprocess\n");
+        }
+        writer.close();
+        mBuffer = new char[8192];
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public long reader() throws IOException {
+        return this.read(new VariableExpansionReader(new FileReader(mFile)));
+    }
+
+    @Benchmark
+    public long channel() throws IOException {
+        return this.read(new VariableExpansionReader(mFile));
+    }
+
+    /**
+     * Reads the reader to the end, and closes it.
+     *
+     * @param reader the reader
+     * @return the number of characters read
+     * @throws IOException
+     */
+    private long read(Reader reader) throws IOException {
+        long chars = 0;
+        for (int n; (n = reader.read(mBuffer, 0, mBuffer.length)) != -1; ) {
+            chars += n;
+        }
+        reader.close();
+        return chars;
+    }
+}
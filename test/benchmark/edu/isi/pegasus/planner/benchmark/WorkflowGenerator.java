@@ -0,0 +1,229 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.dax.ADAG;
+import edu.isi.pegasus.planner.dax.File;
+import edu.isi.pegasus.planner.dax.Job;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Generates synthetic workflows of a particular shape and size, for the benchmarks. Every job
+ * executes the same transformation, and the dependencies between the jobs follow from the files
+ * they use. The outputs of the leaf jobs are staged out, and the intermediate files are not.
+ *
+ * <p>The following shapes are supported
+ *
+ * <ul>
+ *   <li>pipeline - a chain of jobs, where each job consumes the output of the previous one.
+ *   <li>fanout - a single job whose output is consumed by all the other jobs.
+ *   <li>fanin - independent jobs whose outputs are consumed by a single job.
+ *   <li>diamond - layers of jobs, where each job consumes the outputs of two jobs in the previous
+ *       layer. The width of the layers is the square root of the number of jobs.
+ * </ul>
+ */
+public class WorkflowGenerator {
+
+    /** The shapes of the workflows that can be generated. */
+    public static enum SHAPE {
+        pipeline,
+        fanout,
+        fanin,
+        diamond
+    }
+
+    /** The namespace of the transformation the jobs execute. */
+    public static final String TRANSFORMATION_NAMESPACE = "benchmark";
+
+    /** The name of the transformation the jobs execute. */
+    public static final String TRANSFORMATION_NAME = "process";
+
+    /** The version of the transformation the jobs execute. */
+    public static final String TRANSFORMATION_VERSION = "1.0";
+
+    /** The shape of the workflow. */
+    private final SHAPE mShape;
+
+    /** The number of jobs in the workflow. */
+    private final int mJobs;
+
+    /** The raw input files that need to be registered in the replica catalog. */
+    private final Set<String> mRawInputs;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param shape the shape of the workflow
+     * @param jobs the number of jobs, at least 2
+     */
+    public WorkflowGenerator(SHAPE shape, int jobs) {
+        if (jobs < 2) {
+            throw new IllegalArgumentException("Workflows need at least 2 jobs " + jobs);
+        }
+        mShape = shape;
+        mJobs = jobs;
+        mRawInputs = new LinkedHashSet<String>();
+    }
+
+    /**
+     * Generates the workflow.
+     *
+     * @return the workflow
+     */
+    public ADAG generate() {
+        mRawInputs.clear();
+        ADAG dag = new ADAG(mShape + "-" + mJobs);
+        dag.addMetaData("creator", "benchmark");
+        switch (mShape) {
+            case pipeline:
+                this.pipeline(dag);
+                break;
+
+            case fanout:
+                this.fanout(dag);
+                break;
+
+            case fanin:
+                this.fanin(dag);
+                break;
+
+            case diamond:
+                this.diamond(dag);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unsupported shape " + mShape);
+        }
+        return dag;
+    }
+
+    /**
+     * Generates the workflow, and writes it out in the YAML format.
+     *
+     * @param file the file to write the workflow to
+     */
+    public void writeTo(java.io.File file) {
+        this.generate().writeToFile(file.getAbsolutePath(), ADAG.FORMAT.yaml);
+    }
+
+    /**
+     * Returns the raw input files of the last generated workflow.
+     *
+     * @return the LFNs of the raw input files
+     */
+    public Set<String> getRawInputs() {
+        return mRawInputs;
+    }
+
+    private void pipeline(ADAG dag) {
+        String input = this.rawInput(0);
+        for (int i = 0; i < mJobs; i++) {
+            String output = (i == mJobs - 1) ? "output.final" : "f." + i;
+            dag.addJob(this.job(i, input, output, i == mJobs - 1));
+            if (i > 0) {
+                dag.addDependency("ID" + (i - 1), "ID" + i);
+            }
+            input = output;
+        }
+    }
+
+    private void fanout(ADAG dag) {
+        dag.addJob(this.job(0, this.rawInput(0), "f.0", false));
+        for (int i = 1; i < mJobs; i++) {
+            dag.addJob(this.job(i, "f.0", "output." + i, true));
+            dag.addDependency("ID0", "ID" + i);
+        }
+    }
+
+    private void fanin(ADAG dag) {
+        int sink = mJobs - 1;
+        Job last = this.job(sink, null, "output.final", true);
+        for (int i = 0; i < sink; i++) {
+            dag.addJob(this.job(i, this.rawInput(i), "f." + i, false));
+            last.uses(new File("f." + i), File.LINK.INPUT);
+        }
+        dag.addJob(last);
+        for (int i = 0; i < sink; i++) {
+            dag.addDependency("ID" + i, "ID" + sink);
+        }
+    }
+
+    private void diamond(ADAG dag) {
+        int width = Math.max(1, (int) Math.sqrt(mJobs));
+        for (int i = 0; i < mJobs; i++) {
+            int layer = i / width;
+            // a job is a leaf if neither the job in the same position in the next
+            // layer, nor the one to its right, exists
+            int right = (layer + 1) * width + ((i % width) + width - 1) % width;
+            boolean leaf = i + width >= mJobs && (width == 1 || right >= mJobs);
+            String output = (leaf ? "output." : "f.") + i;
+            if (layer == 0) {
+                dag.addJob(this.job(i, this.rawInput(i), output, leaf));
+                continue;
+            }
+            // the job in the same position in the previous layer, and its neighbour
+            int first = i - width;
+            int second = (layer - 1) * width + ((i % width) + 1) % width;
+            Job job = this.job(i, "f." + first, output, leaf);
+            dag.addJob(job);
+            dag.addDependency("ID" + first, "ID" + i);
+            if (second != first) {
+                job.uses(new File("f." + second), File.LINK.INPUT);
+                dag.addDependency("ID" + second, "ID" + i);
+            }
+        }
+    }
+
+    /**
+     * Creates a job.
+     *
+     * @param index the index of the job
+     * @param input the input file, can be null
+     * @param output the output file
+     * @param stageOut whether the output is staged out and registered
+     * @return the job
+     */
+    private Job job(int index, String input, String output, boolean stageOut) {
+        Job job =
+                new Job(
+                        "ID" + index,
+                        TRANSFORMATION_NAMESPACE,
+                        TRANSFORMATION_NAME,
+                        TRANSFORMATION_VERSION);
+        if (input != null) {
+            job.addArgument("-i").addArgument(new File(input));
+            job.uses(new File(input), File.LINK.INPUT);
+        }
+        job.addArgument("-o").addArgument(new File(output));
+        job.uses(
+                new File(output),
+                File.LINK.OUTPUT,
+                stageOut ? File.TRANSFER.TRUE : File.TRANSFER.FALSE,
+                stageOut);
+        return job;
+    }
+
+    /**
+     * Returns the name of a raw input file, and tracks it.
+     *
+     * @param index the index of the job using it
+     * @return the LFN
+     */
+    private String rawInput(int index) {
+        String lfn = "input." + index;
+        mRawInputs.add(lfn);
+        return lfn;
+    }
+}
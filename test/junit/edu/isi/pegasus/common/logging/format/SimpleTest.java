@@ -19,8 +19,7 @@ import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
-
-// import org.junit.Test;
+import org.junit.Test;
 
 /** @author Rajiv Mayani */
 public class SimpleTest {
@@ -36,10 +35,57 @@ public class SimpleTest {
     @After
     public void tearDown() {}
 
-    /*
     @Test
-    public void testSomeMethod() {
-        assertEquals(1, 1);
+    public void testEventsInSeparateThreads() throws Exception {
+        Simple formatter = new Simple();
+        formatter.addEvent("event.pegasus.planner", "dax.id", "diamond");
+
+        final int[] sizes = new int[2];
+        Thread thread =
+                new Thread(
+                        () -> {
+                            // events of the parent thread are inherited
+                            sizes[0] = formatter.getStack().size();
+                            formatter.addEvent("event.pegasus.parse.site-catalog", "site", "sites");
+                            formatter.addEvent("event.pegasus.parse.site", "site", "local");
+                            formatter.popEvent();
+                            sizes[1] = formatter.getStack().size();
+                        });
+        thread.start();
+        thread.join();
+
+        assertEquals(1, sizes[0]);
+        assertEquals(2, sizes[1]);
+        // the events of the thread don't show up in the parent thread
+        assertEquals(1, formatter.getStack().size());
+        formatter.popEvent();
+        assertTrue(formatter.getStack().isEmpty());
+    }
+
+    @Test
+    public void testInheritedEventsAreCopies() throws Exception {
+        Simple formatter = new Simple();
+        formatter.addEvent("event.pegasus.planner", "dax.id", "diamond");
+        formatter.add("parent");
+
+        final String[] messages = new String[2];
+        Thread thread =
+                new Thread(
+                        () -> {
+                            // the message started in the parent thread is carried over
+                            formatter.add("child");
+                            messages[0] = formatter.createLogMessageAndReset();
+                            messages[1] = formatter.getStartEventMessage();
+                        });
+        thread.start();
+        thread.join();
+
+        assertEquals(" parent  child ", messages[0]);
+        assertTrue(messages[1].startsWith("event.pegasus.planner dax.id diamond"));
+        // the parent thread's message is not modified by the child thread
+        assertEquals(" parent ", formatter.createLogMessageAndReset());
+        assertEquals(
+                "event.pegasus.planner dax.id diamond  - STARTED ",
+                formatter.getStartEventMessage());
     }
-    */
 }
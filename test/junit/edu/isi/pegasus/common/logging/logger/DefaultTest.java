@@ -15,31 +15,88 @@ package edu.isi.pegasus.common.logging.logger;
 
 import static org.junit.Assert.*;
 
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Properties;
 import org.junit.After;
-import org.junit.AfterClass;
 import org.junit.Before;
-import org.junit.BeforeClass;
+import org.junit.Test;
 
-// import org.junit.Test;
-
-/** @author Rajiv Mayani */
+/**
+ * Test class for the Default logger, that checks the level checks and the template and supplier
+ * variants of the log method.
+ *
+ * @author Rajiv Mayani
+ */
 public class DefaultTest {
-    @BeforeClass
-    public static void setUpClass() {}
 
-    @AfterClass
-    public static void tearDownClass() {}
+    private LogManager mLogger;
+
+    private ByteArrayOutputStream mOut;
 
     @Before
-    public void setUp() {}
+    public void setUp() {
+        mLogger = LogManagerFactory.loadInstance("Default", "Simple", new Properties());
+        mLogger.configure(false);
+        mOut = new ByteArrayOutputStream();
+        mLogger.setWriter(LogManager.STREAM_TYPE.stdout, new PrintStream(mOut, true));
+        mLogger.setWriter(LogManager.STREAM_TYPE.stderr, new PrintStream(mOut, true));
+        mLogger.setLevel(LogManager.INFO_MESSAGE_LEVEL);
+        mLogger.logEventStart("test.logging", "setup", "0", LogManager.DEBUG_MESSAGE_LEVEL);
+    }
 
-    @After
-    public void tearDown() {}
+    @Test
+    public void testIsLoggable() {
+        assertTrue(mLogger.isLoggable(LogManager.FATAL_MESSAGE_LEVEL));
+        assertTrue(mLogger.isLoggable(LogManager.CONSOLE_MESSAGE_LEVEL));
+        assertTrue(mLogger.isLoggable(LogManager.INFO_MESSAGE_LEVEL));
+        assertFalse(mLogger.isLoggable(LogManager.CONFIG_MESSAGE_LEVEL));
+        assertFalse(mLogger.isLoggable(LogManager.DEBUG_MESSAGE_LEVEL));
+        assertFalse(mLogger.isLoggable(-1));
+        assertFalse(mLogger.isLoggable(40));
+
+        mLogger.setLevel(LogManager.DEBUG_MESSAGE_LEVEL);
+        assertTrue(mLogger.isLoggable(LogManager.DEBUG_MESSAGE_LEVEL));
+        assertFalse(mLogger.isLoggable(LogManager.TRACE_MESSAGE_LEVEL));
+    }
 
-    /*
     @Test
-    public void testSomeMethod() {
-        assertEquals(1, 1);
+    public void testDisabledLevels() {
+        mLogger.log(
+                () -> {
+                    throw new AssertionError("supplier called for a disabled level");
+                },
+                LogManager.DEBUG_MESSAGE_LEVEL);
+        mLogger.log("debug", LogManager.DEBUG_MESSAGE_LEVEL);
+        mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "job {}", "a");
+        assertEquals("", mOut.toString());
+    }
+
+    @Test
+    public void testEnabledLevels() {
+        mLogger.log(() -> "supplied", LogManager.INFO_MESSAGE_LEVEL);
+        mLogger.log(LogManager.INFO_MESSAGE_LEVEL, "job {} at {}", "a", "local");
+        mLogger.log(LogManager.WARNING_MESSAGE_LEVEL, "{}-{}-{}", 1, 2, 3);
+        String[] lines = mOut.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("[INFO]  supplied", lines[0].trim());
+        assertEquals("[INFO]  job a at local", lines[1].trim());
+        assertEquals("[WARNING]  1-2-3", lines[2].trim());
+    }
+
+    @Test
+    public void testFormat() {
+        assertEquals("a b", LogManager.format("{} {}", "a", "b"));
+        assertEquals("a {}", LogManager.format("{} {}", "a"));
+        assertEquals("a", LogManager.format("{}", "a", "b"));
+        assertEquals("no placeholders", LogManager.format("no placeholders", "a"));
+        assertEquals("null!", LogManager.format("{}!", (Object) null));
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion(LogManager.DEBUG_MESSAGE_LEVEL);
     }
-    */
 }
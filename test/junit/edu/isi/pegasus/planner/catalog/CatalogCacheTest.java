@@ -0,0 +1,72 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the catalog cache. */
+public class CatalogCacheTest {
+
+    private File mFile;
+
+    public CatalogCacheTest() {}
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("catalog", ".yml");
+        write("pegasus: '5.0'\n");
+        CatalogCache.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        CatalogCache.setEnabled(false);
+        mFile.delete();
+    }
+
+    @Test
+    public void testDisabled() {
+        CatalogCache.setEnabled(false);
+        CatalogCache.store(mFile, "key", "value");
+        assertNull(CatalogCache.lookup(mFile, "key"));
+    }
+
+    @Test
+    public void testLookup() {
+        assertNull(CatalogCache.lookup(mFile, "key"));
+        CatalogCache.store(mFile, "key", "value");
+        assertEquals("value", CatalogCache.lookup(mFile, "key"));
+        assertNull(CatalogCache.lookup(mFile, "other"));
+    }
+
+    @Test
+    public void testInvalidatedOnChange() throws IOException {
+        CatalogCache.store(mFile, "key", "value");
+        write("pegasus: '5.0'\nsites: []\n");
+        assertNull(CatalogCache.lookup(mFile, "key"));
+    }
+
+    private void write(String contents) throws IOException {
+        FileWriter writer = new FileWriter(mFile);
+        writer.write(contents);
+        writer.close();
+    }
+}
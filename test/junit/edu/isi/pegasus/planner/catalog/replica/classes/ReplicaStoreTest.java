@@ -25,12 +25,15 @@ import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogException;
+import edu.isi.pegasus.planner.classes.LFNSymbolTable;
 import edu.isi.pegasus.planner.classes.ReplicaLocation;
 import edu.isi.pegasus.planner.dax.PFN;
 import edu.isi.pegasus.planner.namespace.Metadata;
 import edu.isi.pegasus.planner.test.DefaultTestSetup;
 import edu.isi.pegasus.planner.test.TestSetup;
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.Iterator;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -260,6 +263,55 @@ public class ReplicaStoreTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testIndexedStore() {
+        LFNSymbolTable symbols = new LFNSymbolTable();
+        String lfn = symbols.getLFN(symbols.intern("f.a"));
+        symbols.intern("f.b");
+        symbols.intern("f.c");
+
+        ReplicaStore store = new ReplicaStore();
+        store.add(new String("f.a"), new ReplicaCatalogEntry("file:///scratch/f.a", "local"));
+        store.add("f.other", new ReplicaCatalogEntry("file:///scratch/f.other", "local"));
+        store.index(symbols);
+
+        // the entries of the workflow lfns refer to the canonical lfn
+        ReplicaLocation rl = store.getReplicaLocation(symbols, 0);
+        assertSame(lfn, rl.getLFN());
+        assertSame(rl, store.getReplicaLocation("f.a"));
+        assertNull(store.getReplicaLocation(symbols, 1));
+        assertTrue(store.containsLFN("f.other"));
+        assertEquals(2, store.getLFNCount());
+
+        // entries added after indexing, with lfns in and out of the table
+        store.add("f.c", new ReplicaCatalogEntry("file:///scratch/f.c", "local"));
+        store.add("f.a", new ReplicaCatalogEntry("file:///scratch/f.a", "remote"));
+        store.add("f.d", new ReplicaCatalogEntry("file:///scratch/f.d", "local"));
+        assertEquals(2, store.getReplicaLocation(symbols, 0).getPFNCount());
+        assertNotNull(store.getReplicaLocation(symbols, 2));
+        assertEquals(4, store.getLFNCount());
+        assertEquals(4, store.getLFNs().size());
+
+        int count = 0;
+        for (Iterator it = store.replicaLocationIterator(); it.hasNext(); it.next()) {
+            count++;
+        }
+        assertEquals(4, count);
+
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(2);
+        assertEquals(expected, store.getLFNIDs(symbols));
+
+        // a store that is not indexed maps the lfns in the table to their ids
+        ReplicaStore other = new ReplicaStore();
+        other.add("f.b", new ReplicaCatalogEntry("file:///scratch/f.b", "local"));
+        expected.clear();
+        expected.set(1);
+        assertEquals(expected, other.getLFNIDs(symbols));
+        assertNotNull(other.getReplicaLocation(symbols, 1));
+    }
+
     private void testBasicReplicaLocation(
             ReplicaLocation actual, String lfn, String pfn, String site) {
         assertNotNull(actual);
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test class for the IndexedFile replica catalog, that checks its lookups against SimpleFile. */
+public class IndexedFileTest {
+
+    private File mDir;
+
+    private File mFile;
+
+    private IndexedFile mCatalog;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("indexed", "test");
+        mDir.delete();
+        mDir.mkdirs();
+        mFile = new File(mDir, "rc.txt");
+        this.write(
+                "# comment",
+                "f.a file:///first/f.a site=\"local\"",
+                "f.a gsiftp://remote/f.a site=\"remote\" checksum.type=\"sha256\"",
+                "\"f w/space\" \"file:///with/f\" site=\"local\"",
+                "f.b file:///first/f.b pool=\"local\"",
+                "f.a file:///first/f.a site=\"local\" size=\"10\"",
+                // hash collision with BB
+                "Aa file:///Aa site=\"local\"",
+                "BB file:///BB site=\"local\"");
+        mCatalog = new IndexedFile();
+        mCatalog.mLogger.logEventStart("test.pegasus.indexed", "setup", "0");
+    }
+
+    @Test
+    public void testLookupsMatchSimpleFile() {
+        SimpleFile expected = new SimpleFile();
+        expected.connect(mFile.getAbsolutePath());
+        assertTrue(this.connect());
+        assertTrue(mCatalog.isIndexed());
+        assertTrue(new File(mFile.getAbsolutePath() + IndexedFile.INDEX_SUFFIX).exists());
+
+        Set<String> lfns = new HashSet(Arrays.asList("f.a", "f.b", "f w/space", "Aa", "BB", "f.c"));
+        for (String lfn : lfns) {
+            assertEquals(lfn, this.pfns(expected.lookup(lfn)), this.pfns(mCatalog.lookup(lfn)));
+            assertEquals(lfn, expected.lookupNoAttributes(lfn), mCatalog.lookupNoAttributes(lfn));
+            assertEquals(lfn, expected.lookup(lfn, "local"), mCatalog.lookup(lfn, "local"));
+        }
+        assertEquals(expected.lookupNoAttributes(lfns), mCatalog.lookupNoAttributes(lfns));
+        assertEquals(
+                expected.lookupNoAttributes(lfns, "remote"),
+                mCatalog.lookupNoAttributes(lfns, "remote"));
+        assertEquals(expected.lookup(lfns).keySet(), mCatalog.lookup(lfns).keySet());
+
+        // the duplicate entry replaces the first one, and keeps its own attributes
+        Collection<ReplicaCatalogEntry> c = mCatalog.lookup("f.a");
+        assertEquals(2, c.size());
+        ReplicaCatalogEntry last = (ReplicaCatalogEntry) c.toArray()[1];
+        assertEquals("file:///first/f.a", last.getPFN());
+        assertEquals("10", last.getAttribute("size"));
+        ReplicaCatalogEntry b = (ReplicaCatalogEntry) mCatalog.lookup("f.b").iterator().next();
+        assertEquals("local", b.getResourceHandle());
+
+        // lookups did not load the catalog in memory
+        assertTrue(mCatalog.isIndexed());
+        expected.setReadOnly(true);
+        expected.close();
+    }
+
+    @Test
+    public void testRebuildOnModification() throws IOException {
+        assertTrue(this.connect());
+        mCatalog.close();
+        File index = new File(mFile.getAbsolutePath() + IndexedFile.INDEX_SUFFIX);
+        long built = index.lastModified();
+
+        this.write("f.c file:///first/f.c site=\"local\"");
+        mFile.setLastModified(mFile.lastModified() + 5000);
+        mCatalog = new IndexedFile();
+        assertTrue(this.connect());
+        assertEquals(1, mCatalog.lookup("f.c").size());
+        assertTrue(mCatalog.lookup("f.a").isEmpty());
+        assertTrue(index.lastModified() >= built);
+    }
+
+    @Test
+    public void testSmallSegments() throws IOException {
+        String[] lines = new String[500];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "lfn" + i + " file:///data/lfn" + i + " site=\"local\"";
+        }
+        this.write(lines);
+        mCatalog.mWriteSegmentSize = 128;
+        assertTrue(this.connect());
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals("file:///data/lfn" + i, mCatalog.lookup("lfn" + i, "local"));
+        }
+        assertNull(mCatalog.lookup("lfn500", "local"));
+    }
+
+    @Test
+    public void testInsertWritesBack() {
+        assertTrue(this.connect());
+        mCatalog.insert("f.d", new ReplicaCatalogEntry("file:///first/f.d", "local"));
+        assertFalse(mCatalog.isIndexed());
+        assertEquals(1, mCatalog.lookup("f.d").size());
+        mCatalog.close();
+
+        mCatalog = new IndexedFile();
+        assertTrue(this.connect());
+        assertTrue(mCatalog.isIndexed());
+        assertEquals(1, mCatalog.lookup("f.d").size());
+        assertEquals(2, mCatalog.lookup("f.a").size());
+        Map all = mCatalog.lookup(new java.util.HashMap());
+        assertEquals(6, all.size());
+    }
+
+    @After
+    public void tearDown() {
+        mCatalog.close();
+        mCatalog.mLogger.logEventCompletion();
+        for (File f : mDir.listFiles()) {
+            f.delete();
+        }
+        mDir.delete();
+    }
+
+    private boolean connect() {
+        Properties props = new Properties();
+        props.setProperty("file", mFile.getAbsolutePath());
+        props.setProperty("read.only", "false");
+        return mCatalog.connect(props);
+    }
+
+    private void write(String... lines) throws IOException {
+        Writer out = new FileWriter(mFile);
+        for (String line : lines) {
+            out.write(line);
+            out.write("\n");
+        }
+        out.close();
+    }
+
+    private Set<String> pfns(Collection<ReplicaCatalogEntry> c) {
+        Set<String> result = new HashSet();
+        for (ReplicaCatalogEntry rce : c) {
+            result.add(rce.getPFN() + " " + rce.getResourceHandle());
+        }
+        return result;
+    }
+}
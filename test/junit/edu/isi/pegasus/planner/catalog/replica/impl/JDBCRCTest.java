@@ -319,6 +319,43 @@ public class JDBCRCTest {
         assertEquals(1, map.size());
     }
 
+    @Test
+    public void bulkLookup() {
+        HashMap attr = new HashMap();
+        attr.put(ReplicaCatalogEntry.RESOURCE_HANDLE, "x");
+        attr.put("bk", "bvalue");
+        attr.put("bk2", "bvalue2");
+        jdbcrc.insert("a", new ReplicaCatalogEntry("b", attr));
+        jdbcrc.insert("a", new ReplicaCatalogEntry("c", "y"));
+        jdbcrc.insert("d", new ReplicaCatalogEntry("e", "x"));
+        jdbcrc.insert("f", new ReplicaCatalogEntry("g"));
+
+        // force the LFNs to be looked up over multiple chunks
+        jdbcrc.mBatchSize = 2;
+        Set<String> lfns = new HashSet(Arrays.asList("a", "d", "f", "missing"));
+        Map<String, Collection<ReplicaCatalogEntry>> map = jdbcrc.lookup(lfns);
+        assertEquals(4, map.size());
+        for (String lfn : lfns) {
+            assertEquals(new HashSet(jdbcrc.lookup(lfn)), new HashSet((Collection) map.get(lfn)));
+        }
+        assertTrue(map.get("missing").isEmpty());
+
+        map = jdbcrc.lookup(lfns, "x");
+        assertEquals(1, map.get("a").size());
+        assertTrue(map.get("a").contains(new ReplicaCatalogEntry("b", attr)));
+        assertEquals(1, map.get("d").size());
+        assertTrue(map.get("f").isEmpty());
+
+        Map<String, Set<String>> pfns = jdbcrc.lookupNoAttributes(lfns);
+        assertEquals(new TreeSet(Arrays.asList("b", "c")), pfns.get("a"));
+        assertEquals(new TreeSet(Arrays.asList("g")), pfns.get("f"));
+        assertTrue(pfns.get("missing").isEmpty());
+
+        pfns = jdbcrc.lookupNoAttributes(lfns, "y");
+        assertEquals(new TreeSet(Arrays.asList("c")), pfns.get("a"));
+        assertTrue(pfns.get("d").isEmpty());
+    }
+
     @After
     public void tearDown() {
         jdbcrc.close();
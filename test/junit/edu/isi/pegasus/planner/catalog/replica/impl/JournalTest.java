@@ -0,0 +1,150 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the journaled mode of the file based replica catalogs. */
+public class JournalTest {
+
+    private File mDir;
+
+    private File mRCFile;
+
+    public JournalTest() {}
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("journal").toFile();
+        mRCFile = new File(mDir, "rc.txt");
+        FileWriter writer = new FileWriter(mRCFile);
+        writer.write("f.a file:///input/f.a site=\"local\"\n");
+        writer.close();
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : mDir.listFiles()) {
+            f.delete();
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void testConcurrentWriters() throws IOException {
+        String contents = new String(Files.readAllBytes(mRCFile.toPath()));
+
+        // two writers connected at the same time
+        ReplicaCatalog first = connect(new SimpleFile(), -1);
+        ReplicaCatalog second = connect(new SimpleFile(), -1);
+        first.insert("f.b", new ReplicaCatalogEntry("file:///output/f.b", "local"));
+        second.insert("f.c", new ReplicaCatalogEntry("file:///output/f.c", "local"));
+        first.close();
+        second.close();
+
+        // the catalog file is not rewritten
+        assertEquals(contents, new String(Files.readAllBytes(mRCFile.toPath())));
+        assertTrue(new File(mDir, "rc.txt" + Journal.JOURNAL_SUFFIX).exists());
+
+        ReplicaCatalog catalog = connect(new SimpleFile(), -1);
+        assertEquals("file:///input/f.a", catalog.lookup("f.a", "local"));
+        assertEquals("file:///output/f.b", catalog.lookup("f.b", "local"));
+        assertEquals("file:///output/f.c", catalog.lookup("f.c", "local"));
+        catalog.close();
+    }
+
+    @Test
+    public void testDelete() throws IOException {
+        ReplicaCatalog catalog = connect(new SimpleFile(), -1);
+        catalog.insert("f.b", new ReplicaCatalogEntry("file:///output/f.b", "local"));
+        catalog.close();
+
+        catalog = connect(new SimpleFile(), -1);
+        assertEquals(1, catalog.remove("f.a"));
+        assertEquals(1, catalog.deleteByResource("f.b", "local"));
+        catalog.close();
+
+        catalog = connect(new SimpleFile(), -1);
+        assertTrue(catalog.lookup("f.a").isEmpty());
+        assertTrue(catalog.lookup("f.b").isEmpty());
+        catalog.close();
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        ReplicaCatalog catalog = connect(new SimpleFile(), 1);
+        catalog.insert("f.b", new ReplicaCatalogEntry("file:///output/f.b", "local"));
+        catalog.insert("f.c", new ReplicaCatalogEntry("file:///output/f.c", "local"));
+        catalog.close();
+
+        // the journal is folded into the catalog file
+        assertEquals(0, new File(mDir, "rc.txt" + Journal.JOURNAL_SUFFIX).length());
+        String contents = new String(Files.readAllBytes(mRCFile.toPath()));
+        assertTrue(contents.contains("f.b file:///output/f.b"));
+        assertTrue(contents.contains("f.c file:///output/f.c"));
+
+        catalog = connect(new SimpleFile(), 1);
+        assertEquals("file:///input/f.a", catalog.lookup("f.a", "local"));
+        assertEquals(3, catalog.list().size());
+        catalog.close();
+    }
+
+    @Test
+    public void testYAML() throws IOException {
+        mRCFile = new File(mDir, "replicas.yml");
+        ReplicaCatalog first = connect(new YAML(), -1);
+        ReplicaCatalog second = connect(new YAML(), -1);
+        ReplicaCatalogEntry rce = new ReplicaCatalogEntry("file:///output/f.b", "local");
+        rce.addAttribute("owner", "pegasus");
+        first.insert("f.b", rce);
+        second.insert("f.c", new ReplicaCatalogEntry("file:///output/f.c", "local"));
+        first.close();
+        second.close();
+        assertFalse(mRCFile.exists());
+
+        ReplicaCatalog catalog = connect(new YAML(), 0);
+        Collection<ReplicaCatalogEntry> c = catalog.lookup("f.b");
+        assertEquals(1, c.size());
+        assertEquals("pegasus", c.iterator().next().getAttribute("owner"));
+        assertEquals("file:///output/f.c", catalog.lookup("f.c", "local"));
+        catalog.close();
+
+        // compacted on close
+        assertTrue(mRCFile.exists());
+        catalog = connect(new YAML(), -1);
+        assertEquals("file:///output/f.c", catalog.lookup("f.c", "local"));
+        catalog.close();
+    }
+
+    private ReplicaCatalog connect(ReplicaCatalog catalog, int threshold) {
+        Properties props = new Properties();
+        props.setProperty("file", mRCFile.getAbsolutePath());
+        props.setProperty(Journal.JOURNAL_KEY, "true");
+        props.setProperty(Journal.THRESHOLD_KEY, Integer.toString(threshold));
+        assertTrue(catalog.connect(props));
+        return catalog;
+    }
+}
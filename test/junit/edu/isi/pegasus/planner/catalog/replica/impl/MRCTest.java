@@ -15,31 +15,214 @@ package edu.isi.pegasus.planner.catalog.replica.impl;
 
 import static org.junit.Assert.*;
 
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
-import org.junit.AfterClass;
 import org.junit.Before;
-import org.junit.BeforeClass;
-
-// import org.junit.Test;
+import org.junit.Test;
 
 /** @author Rajiv Mayani */
 public class MRCTest {
-    @BeforeClass
-    public static void setUpClass() {}
 
-    @AfterClass
-    public static void tearDownClass() {}
+    private MRC mMRC;
+
+    private File mDir;
 
     @Before
-    public void setUp() {}
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("mrc", "test");
+        mDir.delete();
+        mDir.mkdirs();
 
-    @After
-    public void tearDown() {}
+        mMRC = new MRC();
+        mMRC.mLogger.logEventStart("test.pegasus.mrc", "setup", "0");
+        SimpleFile first = this.catalog("first");
+        first.insert("f.a", new ReplicaCatalogEntry("file:///first/f.a", "local"));
+        first.insert("f.a", new ReplicaCatalogEntry("file:///shared/f.a", "local"));
+        first.insert("f.b", new ReplicaCatalogEntry("file:///first/f.b", "local"));
+        this.add("first", first);
+
+        SimpleFile second = this.catalog("second");
+        second.insert("f.a", new ReplicaCatalogEntry("file:///shared/f.a", "local"));
+        second.insert("f.a", new ReplicaCatalogEntry("file:///shared/f.a", "remote"));
+        second.insert("f.c", new ReplicaCatalogEntry("file:///second/f.c", "remote"));
+        this.add("second", second);
+    }
+
+    @Test
+    public void testLookupDeduplicatesByPFNAndSite() {
+        Map<String, Collection<ReplicaCatalogEntry>> result =
+                mMRC.lookup(new HashSet(Arrays.asList("f.a", "f.b", "f.c")));
+
+        assertEquals(3, result.size());
+        assertEquals(3, result.get("f.a").size());
+        assertEquals(1, result.get("f.b").size());
+        assertEquals(1, result.get("f.c").size());
+
+        Set<String> sites = new HashSet();
+        for (ReplicaCatalogEntry rce : result.get("f.a")) {
+            if (rce.getPFN().equals("file:///shared/f.a")) {
+                sites.add(rce.getResourceHandle());
+            }
+        }
+        assertEquals(new HashSet(Arrays.asList("local", "remote")), sites);
+        assertEquals(2, mMRC.getLookupTimes().size());
+    }
+
+    @Test
+    public void testLookupWithHandle() {
+        Map<String, Collection<ReplicaCatalogEntry>> result =
+                mMRC.lookup(new HashSet(Arrays.asList("f.a", "f.c")), "remote");
+        assertEquals(1, result.get("f.a").size());
+        assertEquals("file:///shared/f.a", result.get("f.a").iterator().next().getPFN());
+        assertEquals(1, result.get("f.c").size());
+    }
+
+    @Test
+    public void testLookupNoAttributes() {
+        Map<String, Set<String>> result =
+                mMRC.lookupNoAttributes(new HashSet(Arrays.asList("f.a", "f.d")));
+        assertEquals(
+                new HashSet(Arrays.asList("file:///first/f.a", "file:///shared/f.a")),
+                result.get("f.a"));
+        assertTrue(result.get("f.d").isEmpty());
+
+        result = mMRC.lookupNoAttributes(new HashSet(Arrays.asList("f.a", "f.c")), "remote");
+        assertEquals(new HashSet(Arrays.asList("file:///shared/f.a")), result.get("f.a"));
+        assertEquals(new HashSet(Arrays.asList("file:///second/f.c")), result.get("f.c"));
+    }
+
+    @Test
+    public void testTimeout() throws IOException {
+        SimpleFile slow =
+                new SimpleFile() {
+                    @Override
+                    public Map lookup(Set lfns) {
+                        try {
+                            Thread.sleep(5000);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return super.lookup(lfns);
+                    }
+                };
+        slow.connect(new File(mDir, "slow").getAbsolutePath());
+        slow.insert("f.b", new ReplicaCatalogEntry("file:///slow/f.b", "local"));
+        this.add("slow", slow);
+        mMRC.mTimeout = 200;
+
+        long start = System.currentTimeMillis();
+        Map<String, Collection<ReplicaCatalogEntry>> result =
+                mMRC.lookup(new HashSet(Arrays.asList("f.b")));
+        assertTrue(System.currentTimeMillis() - start < 4000);
+        assertEquals(1, result.get("f.b").size());
+        assertEquals("file:///first/f.b", result.get("f.b").iterator().next().getPFN());
+    }
+
+    @Test
+    public void testTimeoutStartsWithTheLookup() throws IOException {
+        // three slow catalogs on two threads, the last one is queued behind the others
+        for (int i = 0; i < 3; i++) {
+            this.add("slow" + i, this.slow("slow" + i, 400, "f.s" + i, new AtomicInteger()));
+        }
+        mMRC.mThreads = 2;
+        mMRC.mTimeout = 600;
+
+        Map<String, Collection<ReplicaCatalogEntry>> result =
+                mMRC.lookup(new HashSet(Arrays.asList("f.s0", "f.s1", "f.s2")));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("f.s" + i, 1, result.get("f.s" + i).size());
+        }
+    }
 
-    /*
     @Test
-    public void testSomeMethod() {
-        assertEquals(1, 1);
+    public void testTimedOutCatalogIsNotQueriedConcurrently() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        this.add("slow", this.slow("slow", 1000, "f.s", calls));
+        mMRC.mTimeout = 100;
+
+        Set<String> lfns = new HashSet(Arrays.asList("f.a", "f.s"));
+        assertEquals(0, this.count(lfns, "f.s"));
+        // the first lookup against the slow catalog is still running
+        assertEquals(0, this.count(lfns, "f.s"));
+        assertEquals(1, calls.get());
+
+        Thread.sleep(1500);
+        mMRC.mTimeout = 0;
+        assertEquals(1, this.count(lfns, "f.s"));
+        assertEquals(2, calls.get());
+    }
+
+    @After
+    public void tearDown() {
+        mMRC.close();
+        mMRC.mLogger.logEventCompletion();
+        for (File f : mDir.listFiles()) {
+            f.delete();
+        }
+        mDir.delete();
+    }
+
+    private SimpleFile catalog(String name) {
+        SimpleFile catalog = new SimpleFile();
+        catalog.connect(new File(mDir, name).getAbsolutePath());
+        return catalog;
+    }
+
+    /**
+     * Returns a catalog with a single entry, whose bulk lookups take a while.
+     *
+     * @param name the name of the catalog file
+     * @param millis the time a lookup takes
+     * @param lfn the LFN of the entry
+     * @param calls incremented for each lookup
+     * @return the catalog
+     */
+    private SimpleFile slow(String name, long millis, String lfn, AtomicInteger calls) {
+        SimpleFile catalog =
+                new SimpleFile() {
+                    @Override
+                    public Map lookup(Set lfns) {
+                        calls.incrementAndGet();
+                        long end = System.currentTimeMillis() + millis;
+                        // not interruptible, like a blocked JDBC call
+                        for (long now; (now = System.currentTimeMillis()) < end; ) {
+                            try {
+                                Thread.sleep(end - now);
+                            } catch (InterruptedException e) {
+                                // keep blocking
+                            }
+                        }
+                        return super.lookup(lfns);
+                    }
+                };
+        catalog.connect(new File(mDir, name).getAbsolutePath());
+        catalog.insert(lfn, new ReplicaCatalogEntry("file:///" + name + "/" + lfn, "local"));
+        return catalog;
+    }
+
+    /**
+     * Looks up a set of LFN's, and returns the number of entries found for one of them.
+     *
+     * @param lfns the LFN's to look up
+     * @param lfn the LFN to count the entries for
+     * @return the number of entries
+     */
+    private int count(Set<String> lfns, String lfn) {
+        Map<String, Collection<ReplicaCatalogEntry>> result = mMRC.lookup(lfns);
+        Collection<ReplicaCatalogEntry> entries = result.get(lfn);
+        return (entries == null) ? 0 : entries.size();
+    }
+
+    private void add(String name, SimpleFile catalog) {
+        mMRC.mRCList.add(catalog);
+        mMRC.mRCNames.add(name);
     }
-    */
 }
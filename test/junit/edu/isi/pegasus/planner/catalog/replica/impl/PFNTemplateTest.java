@@ -0,0 +1,186 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.classes.ReplicaLocation;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+/** Tests the expansion of the PFN's of regex replica catalog entries. */
+public class PFNTemplateTest {
+
+    public PFNTemplateTest() {}
+
+    @Test
+    public void testExpand() {
+        Matcher m = match("(\\w+)_f[xyz]_(\\d+)\\.sgt.*", "TEST_fy_3810.sgt.md5");
+        assertEquals(
+                "file://test.isi.edu/scratch/3810/TEST/TEST_fy_3810.sgt.md5",
+                expand("file://test.isi.edu/scratch/[2]/[1]/[0]", m));
+        assertEquals("3810", expand("[2]", m));
+        assertEquals("TESTTEST", expand("[1][1]", m));
+    }
+
+    @Test
+    public void testLiterals() {
+        Matcher m = match("f\\.(\\d+)", "f.12");
+        assertEquals("file:///no/references", expand("file:///no/references", m));
+        assertEquals("file:///[a]/[]/[12/12", expand("file:///[a]/[]/[[1]/[1]", m));
+        // references to groups the pattern does not have are left as is
+        assertEquals("file:///12/[2]/[10]", expand("file:///[1]/[2]/[10]", m));
+        assertEquals("file:///[01]", expand("file:///[01]", m));
+        assertEquals(0, PFNTemplate.compile("file:///[99999999999]").getReferenceCount());
+    }
+
+    @Test
+    public void testGroupsAreNotExpandedAgain() {
+        // replaceAll used to treat $ in a group as a back reference, and to expand [2] in group 1
+        Matcher m = match("(.*)_(\\d+)", "$a[2]_7");
+        assertEquals("file:///$a[2]/7", expand("file:///[1]/[2]", m));
+    }
+
+    @Test
+    public void testUnmatchedGroup() {
+        Matcher m = match("f(\\.(\\d+))?", "f");
+        assertEquals("file:///f/", expand("file:///[0]/[2]", m));
+    }
+
+    @Test
+    public void testRegexCatalogCachesExpansions() throws IOException {
+        File file = File.createTempFile("regex", ".rc");
+        file.delete();
+        Regex rc = new Regex();
+        rc.connect(file.getAbsolutePath());
+        rc.insert("f\\.(\\d+)", regex("file:///a/[1]", "local"));
+        rc.insert("f\\.(\\d+)", regex("file:///b/[1]", "remote"));
+
+        for (int i = 0; i < 2; i++) {
+            Collection<ReplicaCatalogEntry> c = rc.lookup("f.12");
+            assertEquals(2, c.size());
+            Set<String> pfns = new HashSet<String>();
+            for (ReplicaCatalogEntry rce : c) {
+                pfns.add(rce.getPFN());
+                // the entries returned are copies
+                rce.setPFN("changed");
+            }
+            assertTrue(pfns.contains("file:///a/12"));
+            assertTrue(pfns.contains("file:///b/12"));
+        }
+
+        Set<String> lfns = new HashSet<String>();
+        lfns.add("f.12");
+        lfns.add("g.12");
+        Map<String, Collection<ReplicaCatalogEntry>> result = rc.lookup(lfns, "remote");
+        assertEquals(1, result.get("f.12").size());
+        assertEquals("file:///b/12", result.get("f.12").iterator().next().getPFN());
+        assertTrue(result.get("g.12").isEmpty());
+
+        // inserting an entry invalidates the cached expansions
+        rc.insert("f\\.(\\d+)", regex("file:///c/[1]", "local"));
+        assertEquals(3, rc.lookup("f.12").size());
+        rc.insert("g\\.(\\d+)", regex("file:///g/[1]", "local"));
+        assertEquals(1, rc.lookup("g.12").size());
+
+        rc.setReadOnly(true);
+        rc.close();
+    }
+
+    @Test
+    public void testYAMLCatalogCachesExpansions() throws IOException {
+        File file = File.createTempFile("replicas", ".yml");
+        file.delete();
+        YAML rc = new YAML();
+        rc.connect(file.getAbsolutePath());
+        rc.insert(regex("f\\.(\\d+)", "file:///a/[1]", "local"));
+        rc.insert(regex("f\\.(\\d+)", "file:///b/[1]", "remote"));
+        rc.insert(regex("f\\.1(\\d+)", "file:///d/[1]", "remote"));
+
+        for (int i = 0; i < 2; i++) {
+            Collection<ReplicaCatalogEntry> c = rc.lookup("f.12");
+            assertEquals(2, c.size());
+            Set<String> pfns = new HashSet<String>();
+            for (ReplicaCatalogEntry rce : c) {
+                pfns.add(rce.getPFN());
+                // the entries returned are copies
+                rce.setPFN("changed");
+            }
+            assertTrue(pfns.contains("file:///a/12"));
+            assertTrue(pfns.contains("file:///b/12"));
+        }
+
+        Set<String> lfns = new HashSet<String>();
+        lfns.add("f.12");
+        lfns.add("g.12");
+        Map<String, Collection<ReplicaCatalogEntry>> result = rc.lookup(lfns, "remote");
+        assertEquals(1, result.get("f.12").size());
+        assertEquals("file:///b/12", result.get("f.12").iterator().next().getPFN());
+        assertTrue(result.get("g.12").isEmpty());
+
+        // all the matching regex entries contribute for a lookup with a handle
+        Set<String> pfns = new HashSet<String>();
+        for (ReplicaCatalogEntry rce : rc.lookupWithHandle("f.12", "remote")) {
+            pfns.add(rce.getPFN());
+        }
+        assertEquals(2, pfns.size());
+        assertTrue(pfns.contains("file:///b/12"));
+        assertTrue(pfns.contains("file:///d/2"));
+        assertEquals(2, rc.lookup("f.12").size());
+
+        // inserting an entry invalidates the cached expansions
+        rc.insert(regex("f\\.(\\d+)", "file:///c/[1]", "local"));
+        assertEquals(3, rc.lookup("f.12").size());
+        rc.insert(regex("g\\.(\\d+)", "file:///g/[1]", "local"));
+        assertEquals(1, rc.lookup("g.12").size());
+        rc.clear();
+        assertTrue(rc.lookup("f.12").isEmpty());
+
+        rc.setReadOnly(true);
+        rc.close();
+    }
+
+    private static String expand(String pfn, Matcher m) {
+        return PFNTemplate.compile(pfn).expand(m);
+    }
+
+    private static Matcher match(String regex, String lfn) {
+        Matcher m = Pattern.compile(regex).matcher(lfn);
+        assertTrue(m.matches());
+        return m;
+    }
+
+    private static ReplicaCatalogEntry regex(String pfn, String site) {
+        ReplicaCatalogEntry rce = new ReplicaCatalogEntry(pfn, site);
+        rce.addAttribute(Regex.REGEX_KEY, "true");
+        return rce;
+    }
+
+    private static ReplicaLocation regex(String lfn, String pfn, String site) {
+        Collection<ReplicaCatalogEntry> c = new ArrayList<ReplicaCatalogEntry>();
+        c.add(new ReplicaCatalogEntry(pfn, site));
+        ReplicaLocation rl = new ReplicaLocation(lfn, c, false);
+        rl.setRegex(true);
+        return rl;
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for the RegexIndex, that checks its results against matching every pattern in order.
+ */
+public class RegexIndexTest {
+
+    private RegexIndex mIndex;
+
+    private List<Pattern> mPatterns;
+
+    @Before
+    public void setUp() {
+        mIndex = new RegexIndex();
+        mPatterns = new ArrayList<Pattern>();
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("run1/f.", RegexIndex.literalPrefix("run1/f\\.(\\d+)\\.dat"));
+        assertEquals("ab", RegexIndex.literalPrefix("^abc?d"));
+        assertEquals("abc", RegexIndex.literalPrefix("abc+d"));
+        assertEquals("a\\", RegexIndex.literalPrefix("a\\\\\\d"));
+        assertEquals("", RegexIndex.literalPrefix(".*\\.txt"));
+        assertEquals("", RegexIndex.literalPrefix("[a-z]x"));
+        assertEquals("f", RegexIndex.literalPrefix("fo{2}"));
+    }
+
+    @Test
+    public void testLiteralSuffix() {
+        assertEquals(".dat", RegexIndex.literalSuffix("run1/f\\.(\\d+)\\.dat"));
+        assertEquals("", RegexIndex.literalSuffix("abc?"));
+        assertEquals("bc", RegexIndex.literalSuffix("a*bc$"));
+        assertEquals("", RegexIndex.literalSuffix("a\\d"));
+        assertEquals("\\.x", RegexIndex.literalSuffix("a+\\\\\\.x"));
+        assertEquals("a$", RegexIndex.literalSuffix("a\\$"));
+        assertEquals("$", RegexIndex.literalSuffix("a+\\$"));
+        assertEquals("", RegexIndex.literalSuffix("x[ab]"));
+    }
+
+    @Test
+    public void testFirstMatchOrdering() {
+        this.add("(.*)");
+        this.add("run1/(.*)\\.dat");
+        this.add("run1/f\\.dat");
+
+        assertEquals("(.*)", mIndex.first("run1/f.dat").getKey());
+        List<RegexIndex.Match> all = mIndex.matches("run1/f.dat");
+        assertEquals(3, all.size());
+        assertEquals("(.*)", all.get(0).getKey());
+        assertEquals("run1/(.*)\\.dat", all.get(1).getKey());
+        assertEquals("f", all.get(1).getMatcher().group(1));
+        assertEquals("run1/f\\.dat", all.get(2).getKey());
+    }
+
+    @Test
+    public void testUnindexedPatterns() {
+        this.add("a|b.txt");
+        this.add("(?i)ABC\\.txt");
+        this.add("\\Qx.y\\E");
+        this.add("a.txt");
+
+        assertEquals("a|b.txt", mIndex.first("a").getKey());
+        assertEquals("(?i)ABC\\.txt", mIndex.first("abc.txt").getKey());
+        assertEquals("\\Qx.y\\E", mIndex.first("x.y").getKey());
+        assertNull(mIndex.first("x-y"));
+        assertEquals("a|b.txt", mIndex.first("b.txt").getKey());
+        assertEquals(1, mIndex.matches("a.txt").size());
+    }
+
+    @Test
+    public void testOverlappingLiterals() {
+        this.add("abc");
+        this.add("ab.*ba");
+        assertEquals("abc", mIndex.first("abc").getKey());
+        assertNull(mIndex.first("aba"));
+        assertEquals("ab.*ba", mIndex.first("abba").getKey());
+    }
+
+    @Test
+    public void testRandomPatterns() {
+        Random random = new Random(5);
+        String[] pieces = {
+            "a", "b", "ab", "\\.", "/", ".", ".*", "(\\d+)", "[ab]", "x?", "b+", "(a|b)", "\\\\"
+        };
+        for (int i = 0; i < 300; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(5); j >= 0; j--) {
+                sb.append(pieces[random.nextInt(pieces.length)]);
+            }
+            this.add(sb.toString());
+        }
+        String alphabet = "ab./1x\\";
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(8); j >= 0; j--) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String lfn = sb.toString();
+            List<String> expected = new ArrayList<String>();
+            for (Pattern p : mPatterns) {
+                if (p.matcher(lfn).matches()) {
+                    expected.add(p.pattern());
+                }
+            }
+            List<String> actual = new ArrayList<String>();
+            for (RegexIndex.Match match : mIndex.matches(lfn)) {
+                actual.add(match.getKey());
+            }
+            assertEquals("LFN " + lfn, expected, actual);
+            RegexIndex.Match first = mIndex.first(lfn);
+            assertEquals(
+                    "LFN " + lfn,
+                    expected.isEmpty() ? null : expected.get(0),
+                    first == null ? null : first.getKey());
+        }
+    }
+
+    @Test
+    public void testClear() {
+        this.add("a.*");
+        mIndex.clear();
+        assertEquals(0, mIndex.size());
+        assertNull(mIndex.first("abc"));
+    }
+
+    @Test
+    public void testRegexCatalogFirstMatch() throws IOException {
+        File file = File.createTempFile("regex", ".rc");
+        file.delete();
+        Regex rc = new Regex();
+        rc.connect(file.getAbsolutePath());
+        rc.insert("f\\.(\\d+)", regex("file:///first/[1]", "local"));
+        rc.insert("f\\.(.*)", regex("file:///second/[1]", "local"));
+
+        Collection<ReplicaCatalogEntry> c = rc.lookup("f.12");
+        assertEquals(1, c.size());
+        assertEquals("file:///first/12", c.iterator().next().getPFN());
+
+        c = rc.lookupWithHandle("f.12", "local");
+        assertEquals(2, c.size());
+        Iterator<ReplicaCatalogEntry> it = c.iterator();
+        assertEquals("file:///first/12", it.next().getPFN());
+        assertEquals("file:///second/12", it.next().getPFN());
+
+        assertEquals("file:///second/a", rc.lookup("f.a").iterator().next().getPFN());
+        rc.setReadOnly(true);
+        rc.close();
+    }
+
+    private void add(String regex) {
+        Pattern p = Pattern.compile(regex);
+        mPatterns.add(p);
+        mIndex.add(regex, p);
+    }
+
+    private static ReplicaCatalogEntry regex(String pfn, String site) {
+        ReplicaCatalogEntry rce = new ReplicaCatalogEntry(pfn, site);
+        rce.addAttribute(Regex.REGEX_KEY, "true");
+        return rce;
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+/** Tests the LFNSymbolTable and its use in DagInfo. */
+public class LFNSymbolTableTest {
+
+    public LFNSymbolTableTest() {}
+
+    @Test
+    public void testDenseIDs() {
+        LFNSymbolTable table = new LFNSymbolTable();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, table.intern("f." + i));
+        }
+        assertEquals(1000, table.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, table.intern("f." + i));
+            assertEquals(i, table.getID("f." + i));
+            assertEquals("f." + i, table.getLFN(i));
+        }
+        assertEquals(1000, table.size());
+        assertEquals(-1, table.getID("f.1000"));
+    }
+
+    @Test
+    public void testCanonical() {
+        LFNSymbolTable table = new LFNSymbolTable();
+        String lfn = new String("f.a");
+        table.intern(lfn);
+        assertSame(lfn, table.canonical(new String("f.a")));
+        assertSame(lfn, table.getLFN(table.intern(new String("f.a"))));
+
+        String unknown = new String("f.b");
+        assertSame(unknown, table.canonical(unknown));
+    }
+
+    @Test
+    public void testClone() {
+        LFNSymbolTable table = new LFNSymbolTable();
+        table.intern("f.a");
+        LFNSymbolTable copy = (LFNSymbolTable) table.clone();
+        copy.intern("f.b");
+        assertEquals(1, table.size());
+        assertEquals(-1, table.getID("f.b"));
+        assertEquals(2, copy.size());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testUnknownID() {
+        new LFNSymbolTable().getLFN(0);
+    }
+
+    @Test
+    public void testDagInfoLFNs() {
+        DagInfo dinfo = new DagInfo();
+        String lfn = dinfo.updateLFNMap("ID1", new String("f.a"), 'i');
+        assertSame(lfn, dinfo.updateLFNMap("ID2", new String("f.a"), 'i'));
+        dinfo.updateLFNMap("ID1", "f.b", 'o');
+        dinfo.updateLFNMap("ID2", "f.b", 'i');
+        for (int i = 0; i < 100; i++) {
+            dinfo.updateLFNMap("ID3", "f.out." + i, 'o');
+        }
+
+        Set<String> expected = new HashSet<String>();
+        expected.add("f.a");
+        assertEquals(expected, dinfo.getLFNs(true));
+        assertEquals(102, dinfo.getLFNs().size());
+
+        WorkflowMetrics metrics = dinfo.computeDAXFileCounts();
+        assertEquals(1, metrics.getNumDAXFiles(WorkflowMetrics.FILE_TYPE.input));
+        assertEquals(1, metrics.getNumDAXFiles(WorkflowMetrics.FILE_TYPE.intermediate));
+        assertEquals(100, metrics.getNumDAXFiles(WorkflowMetrics.FILE_TYPE.output));
+
+        DagInfo copy = (DagInfo) dinfo.clone();
+        copy.updateLFNMap("ID4", "f.c", 'i');
+        assertEquals(102, dinfo.getLFNs().size());
+        assertEquals(103, copy.getLFNs().size());
+    }
+
+    @Test
+    public void testFileIDs() {
+        DagInfo dinfo = new DagInfo();
+        LFNSymbolTable table = dinfo.getLFNSymbolTable();
+        PegasusFile out = new PegasusFile(new String("f.a"));
+        PegasusFile in = new PegasusFile(new String("f.a"));
+        assertEquals(-1, in.getLFNID());
+        dinfo.updateLFNMap("ID1", out, 'o');
+        dinfo.updateLFNMap("ID2", in, 'i');
+        assertEquals(0, in.getLFNID());
+        assertSame(out.getLFN(), in.getLFN());
+        assertEquals(0, table.getID(in));
+
+        // the id travels with the file into its transfers and copies
+        assertEquals(0, new FileTransfer(in, "ID2").getLFNID());
+        assertEquals(0, ((PegasusFile) in.clone()).getLFNID());
+
+        // a renamed file is looked up by its new lfn
+        in.setLFN("f.b");
+        assertEquals(-1, in.getLFNID());
+        assertEquals(-1, table.getID(in));
+
+        // an id assigned by another table is not trusted
+        LFNSymbolTable other = new LFNSymbolTable();
+        other.intern("f.x");
+        PegasusFile pf = new PegasusFile();
+        pf.setLFN(other, other.intern("f.a"));
+        assertEquals(1, pf.getLFNID());
+        assertEquals(0, table.getID(pf));
+    }
+
+    @Test
+    public void testSetView() {
+        LFNSymbolTable table = new LFNSymbolTable();
+        for (int i = 0; i < 10; i++) {
+            table.intern("f." + i);
+        }
+        BitSet ids = new BitSet();
+        ids.set(2);
+        ids.set(7);
+        Set<String> view = table.asSet(ids);
+
+        Set<String> expected = new HashSet<String>();
+        expected.add("f.2");
+        expected.add("f.7");
+        assertEquals(expected, view);
+        assertEquals(expected, new HashSet<String>(view));
+        assertEquals(2, view.size());
+        assertTrue(view.contains("f.7"));
+        assertFalse(view.contains("f.3"));
+        assertFalse(view.contains("f.10"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDuplicateOutput() {
+        DagInfo dinfo = new DagInfo();
+        dinfo.updateLFNMap("ID1", "f.a", 'o');
+        dinfo.updateLFNMap("ID2", "f.a", 'o');
+    }
+}
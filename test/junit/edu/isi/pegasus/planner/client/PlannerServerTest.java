@@ -0,0 +1,270 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.client;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.catalog.CatalogCache;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the planner server against requests sent over the socket, with the server listening on a
+ * free port and writing its token to a temporary home directory.
+ */
+public class PlannerServerTest {
+
+    /** The seconds the server waits for a request in the tests that do not stop it themselves. */
+    private static final int IDLE_TIMEOUT = 30;
+
+    private File mHome;
+
+    private String mUserHome;
+
+    private ExecutorService mExecutor;
+
+    /** The port the server listens on. */
+    private int mPort;
+
+    /** The token the server expects. */
+    private String mToken;
+
+    @Before
+    public void setUp() throws IOException {
+        mUserHome = System.getProperty("user.home");
+        mHome = Files.createTempDirectory("planner-server").toFile();
+        System.setProperty("user.home", mHome.getAbsolutePath());
+        // a server left listening shuts down on its own once idle
+        mExecutor =
+                Executors.newSingleThreadExecutor(
+                        r -> {
+                            Thread t = new Thread(r, "planner-server");
+                            t.setDaemon(true);
+                            return t;
+                        });
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        System.setProperty("user.home", mUserHome);
+        CatalogCache.setEnabled(false);
+        delete(mHome);
+    }
+
+    @Test
+    public void testPlanRequest() throws Exception {
+        this.start(IDLE_TIMEOUT);
+        Response response = this.send(mToken, "-V");
+        assertEquals(0, response.exitcode);
+        assertTrue(response.stdout, response.stdout.contains("Pegasus"));
+    }
+
+    @Test
+    public void testRejectedToken() throws Exception {
+        this.start(IDLE_TIMEOUT);
+        Response response = this.send("not-the-token", "-V");
+        assertEquals(1, response.exitcode);
+        assertEquals("", response.stdout);
+        assertTrue(response.stderr, response.stderr.contains("token is invalid"));
+
+        // the server goes on serving requests with the right token
+        assertEquals(0, this.send(mToken, "-V").exitcode);
+    }
+
+    @Test
+    public void testMalformedRequest() throws Exception {
+        this.start(IDLE_TIMEOUT);
+        // the server answers a client speaking another protocol once it reads the version
+        try (Socket socket = this.connect()) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(PlannerServer.PROTOCOL_VERSION + 1);
+            out.flush();
+            Response response = this.receive(socket);
+            assertEquals(1, response.exitcode);
+            assertTrue(response.stderr, response.stderr.contains("protocol"));
+        }
+
+        // a request with a bogus string length is dropped without an exitcode
+        try (Socket socket = this.connect()) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(PlannerServer.PROTOCOL_VERSION);
+            out.writeInt(-1);
+            out.flush();
+            try {
+                this.receive(socket);
+                fail("the malformed request was answered");
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+
+        // the server goes on serving well formed requests
+        assertEquals(0, this.send(mToken, "-V").exitcode);
+    }
+
+    @Test
+    public void testIdleShutdown() throws Exception {
+        Future<?> server = this.start(1);
+        assertEquals(0, this.send(mToken, "-V").exitcode);
+
+        // the idle time is counted again after the request
+        server.get(10, TimeUnit.SECONDS);
+        assertFalse(PlannerServer.tokenFile(mPort).exists());
+        try {
+            this.connect().close();
+            fail("the server still accepts connections after shutting down");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Starts the server on a free port, and waits for it to listen.
+     *
+     * @param idleTimeout the seconds to wait for a request before shutting down
+     * @return the future that completes once the server shuts down
+     */
+    private Future<?> start(int idleTimeout) throws Exception {
+        final BlockingQueue<Integer> port = new ArrayBlockingQueue<Integer>(1);
+        final PlannerServer server =
+                new PlannerServer(0, PlannerServer.DEFAULT_REQUEST_TIMEOUT, idleTimeout) {
+                    protected void listening(int p) {
+                        port.add(p);
+                    }
+                };
+        Future<?> result =
+                mExecutor.submit(
+                        () -> {
+                            server.serve();
+                            return null;
+                        });
+        Integer p = port.poll(30, TimeUnit.SECONDS);
+        if (p == null) {
+            try {
+                result.get(0, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw new AssertionError("the server did not start", e.getCause());
+            }
+            fail("the server did not start");
+        }
+        mPort = p;
+        mToken =
+                new String(
+                        Files.readAllBytes(PlannerServer.tokenFile(mPort).toPath()),
+                        StandardCharsets.UTF_8);
+        return result;
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), mPort);
+        socket.setSoTimeout(30000);
+        return socket;
+    }
+
+    /**
+     * Sends a request to the server, as pegasus-plan-client does.
+     *
+     * @param token the token
+     * @param args the arguments to pegasus-plan
+     * @return the response
+     */
+    private Response send(String token, String... args) throws IOException {
+        try (Socket socket = this.connect()) {
+            // the request is written at once, as the server may answer before reading all of it
+            DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(PlannerServer.PROTOCOL_VERSION);
+            writeString(out, token);
+            writeString(out, mHome.getAbsolutePath());
+            out.writeInt(args.length);
+            for (String arg : args) {
+                writeString(out, arg);
+            }
+            out.flush();
+            return this.receive(socket);
+        }
+    }
+
+    /**
+     * Reads the frames the server sends back till the exitcode.
+     *
+     * @param socket the socket connected to the server
+     * @return the response
+     */
+    private Response receive(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        while (true) {
+            int type = in.readByte();
+            if (type == PlannerServer.EXITCODE_FRAME) {
+                Response response = new Response();
+                response.exitcode = in.readInt();
+                response.stdout = new String(stdout.toByteArray(), StandardCharsets.UTF_8);
+                response.stderr = new String(stderr.toByteArray(), StandardCharsets.UTF_8);
+                return response;
+            }
+            byte[] b = new byte[in.readInt()];
+            in.readFully(b);
+            (type == PlannerServer.STDOUT_FRAME ? stdout : stderr).write(b);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** The output and the exitcode of a request. */
+    private static class Response {
+
+        int exitcode;
+
+        String stdout;
+
+        String stderr;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.cluster;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/** Test class for the BinPacker used for runtime based horizontal clustering. */
+public class BinPackerTest {
+
+    @Test
+    public void testDecreasingOrder() {
+        BinPacker packer = new BinPacker(new double[] {5, 10, 5, 0.5, 10});
+        assertArrayEquals(new int[] {1, 4, 0, 2, 3}, packer.decreasingOrder());
+    }
+
+    @Test
+    public void testPackByCapacity() {
+        BinPacker packer = new BinPacker(new double[] {10, 20, 30, 40, 50, 60});
+        List<int[]> bins = packer.packByCapacity(70);
+        assertEquals(3, bins.size());
+        assertArrayEquals(new int[] {5, 0}, bins.get(0));
+        assertArrayEquals(new int[] {4, 1}, bins.get(1));
+        assertArrayEquals(new int[] {3, 2}, bins.get(2));
+    }
+
+    @Test
+    public void testPackByCapacityBestFit() {
+        // the last job goes in the second bin with 2 remaining, rather than
+        // the first bin with 3 remaining as first fit would do
+        BinPacker packer = new BinPacker(new double[] {7, 4, 4, 2});
+        List<int[]> bins = packer.packByCapacity(10);
+        assertEquals(2, bins.size());
+        assertArrayEquals(new int[] {0}, bins.get(0));
+        assertArrayEquals(new int[] {1, 2, 3}, bins.get(1));
+    }
+
+    @Test
+    public void testPackByCapacityLongerThanMaxTime() {
+        BinPacker packer = new BinPacker(new double[] {100, 5, 5});
+        List<int[]> bins = packer.packByCapacity(10);
+        assertEquals(1, bins.size());
+        assertArrayEquals(new int[] {1, 2}, bins.get(0));
+
+        assertTrue(new BinPacker(new double[] {100}).packByCapacity(10).isEmpty());
+        assertTrue(new BinPacker(new double[0]).packByCapacity(10).isEmpty());
+    }
+
+    @Test
+    public void testPackByCapacityRandom() {
+        Random random = new Random(42);
+        double[] runtimes = new double[10000];
+        for (int i = 0; i < runtimes.length; i++) {
+            runtimes[i] = 1 + random.nextInt(600);
+        }
+        double maxTime = 500;
+        List<int[]> bins = new BinPacker(runtimes).packByCapacity(maxTime);
+
+        int[] seen = new int[runtimes.length];
+        for (int[] bin : bins) {
+            assertTrue(bin.length > 0);
+            double time = 0;
+            for (int i : bin) {
+                time += runtimes[i];
+                seen[i]++;
+            }
+            assertTrue(time <= maxTime);
+        }
+        for (int i = 0; i < runtimes.length; i++) {
+            assertEquals(runtimes[i] > maxTime ? 0 : 1, seen[i]);
+        }
+    }
+
+    @Test
+    public void testPackIntoBins() {
+        BinPacker packer = new BinPacker(new double[] {7, 5, 4, 3, 1});
+        List<int[]> bins = packer.packIntoBins(2);
+        assertEquals(2, bins.size());
+        assertArrayEquals(new int[] {0, 3}, bins.get(0));
+        assertArrayEquals(new int[] {1, 2, 4}, bins.get(1));
+    }
+
+    @Test
+    public void testPackIntoMoreBinsThanItems() {
+        List<int[]> bins = new BinPacker(new double[] {1, 2, 3}).packIntoBins(5);
+        assertEquals(3, bins.size());
+        assertArrayEquals(new int[] {2}, bins.get(0));
+        assertArrayEquals(new int[] {1}, bins.get(1));
+        assertArrayEquals(new int[] {0}, bins.get(2));
+    }
+}
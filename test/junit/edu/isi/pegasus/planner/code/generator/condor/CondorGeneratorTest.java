@@ -15,31 +15,199 @@ package edu.isi.pegasus.planner.code.generator.condor;
 
 import static org.junit.Assert.*;
 
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.classes.Profile;
+import edu.isi.pegasus.planner.code.CodeGeneratorException;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Pegasus;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import edu.isi.pegasus.planner.test.TestSetup;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import org.junit.After;
-import org.junit.AfterClass;
 import org.junit.Before;
-import org.junit.BeforeClass;
+import org.junit.Test;
 
-// import org.junit.Test;
-
-/** @author Rajiv Mayani */
+/**
+ * Test class for the CondorGenerator, that checks the submit files and the .dag file written out
+ * with multiple threads are the same as the ones written out serially.
+ *
+ * @author Rajiv Mayani
+ */
 public class CondorGeneratorTest {
-    @BeforeClass
-    public static void setUpClass() {}
 
-    @AfterClass
-    public static void tearDownClass() {}
+    private static final String SITE = "condor_pool";
+
+    private static final int JOBS = 200;
+
+    private PegasusProperties mProps;
+
+    private LogManager mLogger;
+
+    private File mDir;
 
     @Before
-    public void setUp() {}
+    public void setUp() throws IOException {
+        TestSetup testSetup = new DefaultTestSetup();
+        testSetup.setInputDirectory(this.getClass());
+        mProps = PegasusProperties.nonSingletonInstance();
+        mLogger = testSetup.loadLogger(mProps);
+        mLogger.logEventStart("test.code.generator.condor", "setup", "0");
 
-    @After
-    public void tearDown() {}
+        mDir = File.createTempFile("condor", "generator");
+        mDir.delete();
+        mDir.mkdirs();
+    }
 
-    /*
     @Test
-    public void testSomeMethod() {
-        assertEquals(1, 1);
+    public void testParallelMatchesSerial() throws Exception {
+        File serial = this.generate("serial", 1);
+        File parallel = this.generate("parallel", 4);
+
+        String[] files = this.list(serial);
+        assertArrayEquals(files, this.list(parallel));
+
+        int submitFiles = 0;
+        for (String name : files) {
+            if (name.endsWith(CondorGenerator.SUBMIT_FILE_SUFFIX)) {
+                submitFiles++;
+            }
+            assertArrayEquals(
+                    name,
+                    Files.readAllBytes(new File(serial, name).toPath()),
+                    Files.readAllBytes(new File(parallel, name).toPath()));
+        }
+        assertEquals(JOBS, submitFiles);
+    }
+
+    @After
+    public void tearDown() {
+        this.delete(mDir);
+        mLogger.logEventCompletion();
+    }
+
+    /**
+     * Generates the submit files for the test workflow, and moves them to a sub directory.
+     *
+     * @param name the name of the sub directory
+     * @param threads the number of threads to use
+     * @return the directory with the submit files
+     */
+    private File generate(String name, int threads) throws CodeGeneratorException, IOException {
+        // the submit files are always generated in the same directory,
+        // as the paths to it are written in the submit files
+        File submit = new File(mDir, "submit");
+        submit.mkdirs();
+
+        PegasusBag bag = new PegasusBag();
+        mProps.setProperty("pegasus.code.generator.threads", Integer.toString(threads));
+        PlannerOptions options = new PlannerOptions();
+        options.setSubmitDirectory(submit.getAbsolutePath());
+        bag.add(PegasusBag.PLANNER_OPTIONS, options);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, mProps);
+        mProps.setPropertiesFileBackend(submit.getAbsolutePath());
+
+        SiteStore store = new SiteStore();
+        SiteCatalogEntry entry = new SiteCatalogEntry();
+        entry.setSiteHandle(SITE);
+        entry.setArchitecture(SysInfo.Architecture.x86_64);
+        entry.setOS(SysInfo.OS.linux);
+        entry.addProfile(new Profile("env", "PEGASUS_HOME", "/usr/"));
+        store.addEntry(entry);
+        store.setForPlannerUse(mProps, options);
+        bag.add(PegasusBag.SITE_STORE, store);
+
+        // the DAGMan submit file is generated by condor_submit_dag
+        // that may not be installed, and is not compared
+        CondorGenerator generator =
+                new CondorGenerator() {
+                    protected void writeOutDAGManSubmitFile(ADag dag, File dagFile) {}
+                };
+        generator.initialize(bag);
+        generator.generateCode(this.workflow());
+
+        File result = new File(mDir, name);
+        assertTrue(submit.renameTo(result));
+        return result;
+    }
+
+    /**
+     * Returns a workflow where each job depends on the two jobs before it, and every tenth job is
+     * not launched through kickstart.
+     *
+     * @return the workflow
+     */
+    private ADag workflow() {
+        ADag dag = new ADag();
+        dag.setLabel("generator");
+        dag.setIndex("0");
+        dag.setWorkflowUUID("36a8c5c1-9d31-4d4e-9c8a-6b0c54c2b4f1");
+        dag.setRootWorkflowUUID("36a8c5c1-9d31-4d4e-9c8a-6b0c54c2b4f1");
+        dag.setFlowTimestamp("20201010T101010+0000");
+        for (int i = 0; i < JOBS; i++) {
+            Job job = new Job();
+            job.setName("job_" + i);
+            job.setTransformation("test", "process", "1.0");
+            job.setArguments("-i f." + i + " -o f." + (i + 1));
+            job.setRemoteExecutable("/bin/echo");
+            job.setSiteHandle(SITE);
+            job.setJobType(Job.COMPUTE_JOB);
+            job.addProfile(new Profile("env", "JOB", Integer.toString(i)));
+            job.addProfile(new Profile("pegasus", Pegasus.STYLE_KEY, Pegasus.CONDOR_STYLE));
+            if (i % 10 == 0) {
+                job.addProfile(new Profile("pegasus", Pegasus.GRIDSTART_KEY, "None"));
+            }
+            dag.add(job);
+            // the depth is used for the job priorities
+            dag.getNode(job.getID()).setDepth(i);
+            if (i > 0) {
+                dag.addEdge("job_" + (i - 1), job.getID());
+            }
+            if (i > 1) {
+                dag.addEdge("job_" + (i - 2), job.getID());
+            }
+        }
+        return dag;
+    }
+
+    /**
+     * Returns the sorted names of the submit files and the .dag file in a directory. The other
+     * files written out have timestamps and paths in them.
+     *
+     * @param dir the directory
+     * @return the names
+     */
+    private String[] list(File dir) {
+        String[] names =
+                dir.list(
+                        new FilenameFilter() {
+                            public boolean accept(File d, String name) {
+                                return name.endsWith(CondorGenerator.SUBMIT_FILE_SUFFIX)
+                                        || name.endsWith(".dag");
+                            }
+                        });
+        Arrays.sort(names);
+        return names;
+    }
+
+    private void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                this.delete(child);
+            }
+        }
+        f.delete();
     }
-    */
 }
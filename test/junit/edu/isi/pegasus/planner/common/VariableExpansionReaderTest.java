@@ -15,31 +15,200 @@ package edu.isi.pegasus.planner.common;
 
 import static org.junit.Assert.*;
 
+import edu.isi.pegasus.common.util.VariableExpander;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 import org.junit.After;
-import org.junit.AfterClass;
 import org.junit.Before;
-import org.junit.BeforeClass;
+import org.junit.Test;
 
-// import org.junit.Test;
-
-/** @author Rajiv Mayani */
+/**
+ * Tests the VariableExpansionReader against expanding the input line by line.
+ *
+ * @author Rajiv Mayani
+ */
 public class VariableExpansionReaderTest {
-    @BeforeClass
-    public static void setUpClass() {}
 
-    @AfterClass
-    public static void tearDownClass() {}
+    private static final String[] TOKENS = {
+        "${a}",
+        "${B}",
+        "$",
+        "$x",
+        "\\${a}",
+        "$${a}",
+        "plain",
+        " ",
+        "key: value",
+        "\n",
+        "\n",
+        "\r\n",
+        "\r",
+        "é中"
+    };
+
+    private VariableExpander mExpander;
+
+    private File mFile;
 
     @Before
-    public void setUp() {}
+    public void setUp() throws IOException {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("a", "/scratch/a");
+        values.put("b", "longer value");
+        mExpander = new VariableExpander(values);
+        mFile = File.createTempFile("expansion", ".yml");
+    }
 
     @After
-    public void tearDown() {}
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void testExpansion() throws IOException {
+        String input = "pegasus: 5.0\nsite: ${a}\n  $notavariable\r\nlast: ${B}";
+        String expected = "pegasus: 5.0\nsite: /scratch/a\n  $notavariable\nlast: longer value\n";
+        assertEquals(expected, read(new StringReader(input), 1024, 1024));
+        assertEquals(expected, expand(input));
+    }
+
+    @Test
+    public void testEmptyInput() throws IOException {
+        assertEquals("", read(new StringReader(""), 16, 16));
+        assertEquals("\n", read(new StringReader("\n"), 16, 16));
+        assertEquals("\n\n", read(new StringReader("\r\r\n"), 2, 1));
+        assertEquals("x\n", read(new StringReader("x"), 2, 1));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnknownVariable() throws IOException {
+        read(new StringReader("fine\nsite: ${unknown}\n"), 16, 16);
+    }
+
+    @Test
+    public void testMatchesLineByLineExpansion() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            StringBuilder sb = new StringBuilder();
+            int tokens = random.nextInt(200);
+            for (int j = 0; j < tokens; j++) {
+                sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            String input = sb.toString();
+            String expected = expand(input);
+            // small buffers and reads, to cross the buffer boundaries everywhere
+            int size = 2 + random.nextInt(16);
+            int len = 1 + random.nextInt(size * 2);
+            assertEquals(input, expected, read(new StringReader(input), size, len));
+
+            // the file is written and read in the default charset, that may not map every token
+            write(input);
+            Charset charset = Charset.defaultCharset();
+            expected = expand(new String(input.getBytes(charset), charset));
+            assertEquals(input, expected, read(channel(size), len));
+        }
+    }
 
-    /*
     @Test
-    public void testSomeMethod() {
-        assertEquals(1, 1);
+    public void testLongLines() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append(i % 1000 == 0 ? "${a}" : "x");
+        }
+        String line = sb.toString();
+        String input = line + "\n" + line.replace('$', '_') + "\r\n" + line;
+        assertEquals(expand(input), read(new StringReader(input), 16, 100));
+    }
+
+    @Test(timeout = 10000)
+    public void testSurrogatePairsAcrossBuffer() throws IOException {
+        // a line that leaves a single character free in the buffer, before a surrogate pair
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < VariableExpansionReader.DEFAULT_BUFFER_SIZE - 1; i++) {
+            sb.append('x');
+        }
+        String input = sb.toString() + "\ud83d\ude00\n";
+        Charset utf8 = Charset.forName("UTF-8");
+        write(input, utf8);
+        assertEquals(input, read(channel(VariableExpansionReader.DEFAULT_BUFFER_SIZE, utf8), 1000));
+
+        // the file is written and read in the default charset, that may not map the pair
+        write(input, Charset.defaultCharset());
+        Charset charset = Charset.defaultCharset();
+        String expected = new String(input.getBytes(charset), charset);
+        assertEquals(expected, read(new VariableExpansionReader(mFile), 1000));
+
+        input = "a: ${a} \ud83d\ude00\n\ud83d\ude00\ud83d\ude00x\ud83d\ude00\n${a}\ud83d\ude00";
+        write(input, utf8);
+        for (int size : new int[] {2, 5, 16}) {
+            for (int len : new int[] {1, 2, 7}) {
+                assertEquals(expand(input), read(channel(size, utf8), len));
+                assertEquals(expand(input), read(new StringReader(input), size, len));
+            }
+        }
+    }
+
+    /**
+     * Expands the input a line at a time, with the line terminators turned into line feeds.
+     *
+     * @param input the input
+     * @return the expanded input
+     */
+    private String expand(String input) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new StringReader(input));
+        for (String line; (line = reader.readLine()) != null; ) {
+            sb.append(mExpander.expand(line)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private String read(Reader input, int size, int len) throws IOException {
+        return read(new VariableExpansionReader(input, mExpander, size), len);
+    }
+
+    private String read(VariableExpansionReader reader, int len) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[len + 3];
+        for (int n; (n = reader.read(buffer, 3, len)) != -1; ) {
+            assertTrue(n > 0);
+            sb.append(buffer, 3, n);
+        }
+        reader.close();
+        return sb.toString();
+    }
+
+    private VariableExpansionReader channel(int size) throws IOException {
+        return new VariableExpansionReader(
+                new FileInputStream(mFile).getChannel(), mExpander, size);
+    }
+
+    private VariableExpansionReader channel(int size, Charset charset) throws IOException {
+        return new VariableExpansionReader(
+                new FileInputStream(mFile).getChannel(), charset, mExpander, size);
+    }
+
+    private void write(String contents) throws IOException {
+        Writer writer = new FileWriter(mFile);
+        writer.write(contents);
+        writer.close();
+    }
+
+    private void write(String contents, Charset charset) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mFile), charset);
+        writer.write(contents);
+        writer.close();
     }
-    */
 }
@@ -15,31 +15,257 @@ package edu.isi.pegasus.planner.estimate;
 
 import static org.junit.Assert.*;
 
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import org.junit.After;
-import org.junit.AfterClass;
 import org.junit.Before;
-import org.junit.BeforeClass;
+import org.junit.Test;
 
-// import org.junit.Test;
-
-/** @author Rajiv Mayani */
+/**
+ * Tests the Aspen estimator, with fake estimate clients that return the size metadata of a job as
+ * its runtime, and record each time they are invoked.
+ *
+ * @author Rajiv Mayani
+ */
 public class AspenTest {
-    @BeforeClass
-    public static void setUpClass() {}
 
-    @AfterClass
-    public static void tearDownClass() {}
+    /** A client that supports the batch protocol. */
+    private static final String BATCH_CLIENT =
+            "#!/bin/sh\n"
+                    + "echo \"$*\" >> \"$(dirname \"$0\")/invocations\"\n"
+                    + "runtime() {\n"
+                    + "  for arg in \"$@\"; do\n"
+                    + "    case $arg in size=*) echo \"runtime=${arg#size=}\";; esac\n"
+                    + "  done\n"
+                    + "}\n"
+                    + "if [ \"$1\" = \"--batch\" ]; then\n"
+                    + "  echo \"batch 1\"\n"
+                    + "  while read line; do\n"
+                    + "    runtime $line\n"
+                    + "    echo\n"
+                    + "  done\n"
+                    + "  exit 0\n"
+                    + "fi\n"
+                    + "runtime \"$@\"\n";
+
+    /** A client that does not support the batch protocol. */
+    private static final String PER_JOB_CLIENT =
+            "#!/bin/sh\n"
+                    + "echo \"$*\" >> \"$(dirname \"$0\")/invocations\"\n"
+                    + "for arg in \"$@\"; do\n"
+                    + "  case $arg in size=*) echo \"runtime=${arg#size=}\";; esac\n"
+                    + "done\n";
+
+    /** A client that supports the batch protocol, but exits after the first request. */
+    private static final String FAILING_BATCH_CLIENT =
+            "#!/bin/sh\n"
+                    + "echo \"$*\" >> \"$(dirname \"$0\")/invocations\"\n"
+                    + "runtime() {\n"
+                    + "  for arg in \"$@\"; do\n"
+                    + "    case $arg in size=*) echo \"runtime=${arg#size=}\";; esac\n"
+                    + "  done\n"
+                    + "}\n"
+                    + "if [ \"$1\" = \"--batch\" ]; then\n"
+                    + "  echo \"batch 1\"\n"
+                    + "  read line\n"
+                    + "  runtime $line\n"
+                    + "  echo\n"
+                    + "  exit 1\n"
+                    + "fi\n"
+                    + "runtime \"$@\"\n";
+
+    /**
+     * A client that supports the batch protocol, but stops writing out estimates after the first
+     * request, without exiting.
+     */
+    private static final String STALLING_BATCH_CLIENT =
+            "#!/bin/sh\n"
+                    + "echo \"$*\" >> \"$(dirname \"$0\")/invocations\"\n"
+                    + "runtime() {\n"
+                    + "  for arg in \"$@\"; do\n"
+                    + "    case $arg in size=*) echo \"runtime=${arg#size=}\";; esac\n"
+                    + "  done\n"
+                    + "}\n"
+                    + "if [ \"$1\" = \"--batch\" ]; then\n"
+                    + "  echo \"batch 1\"\n"
+                    + "  read line\n"
+                    + "  runtime $line\n"
+                    + "  echo\n"
+                    + "  while read line; do :; done\n"
+                    + "  exit 0\n"
+                    + "fi\n"
+                    + "runtime \"$@\"\n";
+
+    /** A client without batch support, that waits on its stdin when started with --batch. */
+    private static final String WAITING_CLIENT =
+            "#!/bin/sh\n"
+                    + "echo \"$*\" >> \"$(dirname \"$0\")/invocations\"\n"
+                    + "if [ \"$1\" = \"--batch\" ]; then\n"
+                    + "  read line\n"
+                    + "  exit 1\n"
+                    + "fi\n"
+                    + "for arg in \"$@\"; do\n"
+                    + "  case $arg in size=*) echo \"runtime=${arg#size=}\";; esac\n"
+                    + "done\n";
+
+    private DefaultTestSetup mTestSetup;
+
+    private LogManager mLogger;
+
+    private File mBinDir;
+
+    public AspenTest() {}
 
     @Before
-    public void setUp() {}
+    public void setUp() throws IOException {
+        mTestSetup = new DefaultTestSetup();
+        mLogger = mTestSetup.loadLogger(PegasusProperties.nonSingletonInstance());
+        mLogger.setLevel(LogManager.INFO_MESSAGE_LEVEL);
+        mLogger.logEventStart("test.estimate.Aspen", "setup", "0");
+        mBinDir = Files.createTempDirectory("aspen").toFile();
+    }
 
     @After
-    public void tearDown() {}
+    public void tearDown() {
+        mLogger.logEventCompletion();
+        for (File f : mBinDir.listFiles()) {
+            f.delete();
+        }
+        mBinDir.delete();
+    }
+
+    @Test
+    public void testBatchEstimates() throws IOException {
+        Aspen aspen = this.createEstimator(BATCH_CLIENT, 2);
+        List<Map<String, String>> estimates =
+                aspen.getAllEstimates(this.createJobs(1, 2, 3, 2, 1, 4));
+
+        assertEquals(6, estimates.size());
+        String[] expected = {"1", "2", "3", "2", "1", "4"};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], estimates.get(i).get("runtime"));
+        }
+        // a single co-process estimates the four distinct jobs
+        List<String> invocations = this.getInvocations();
+        assertEquals(1, invocations.size());
+        assertEquals("--batch", invocations.get(0));
+    }
 
-    /*
     @Test
-    public void testSomeMethod() {
-        assertEquals(1, 1);
+    public void testEstimatesAreMemoized() throws IOException {
+        Aspen aspen = this.createEstimator(BATCH_CLIENT, 10);
+        aspen.getAllEstimates(this.createJobs(1, 2));
+        List<Map<String, String>> estimates = aspen.getAllEstimates(this.createJobs(2, 3));
+        assertEquals("2", estimates.get(0).get("runtime"));
+        assertEquals("3", estimates.get(1).get("runtime"));
+
+        // the single job estimate is picked from the memo table
+        assertEquals("1", aspen.getRuntime(this.createJobs(1).get(0)));
+        assertEquals(2, this.getInvocations().size());
+    }
+
+    @Test
+    public void testFallbackWithoutBatchSupport() throws IOException {
+        Aspen aspen = this.createEstimator(PER_JOB_CLIENT, 10);
+        List<Map<String, String>> estimates = aspen.getAllEstimates(this.createJobs(5, 6, 5));
+        assertEquals("5", estimates.get(0).get("runtime"));
+        assertEquals("6", estimates.get(1).get("runtime"));
+        assertEquals("5", estimates.get(2).get("runtime"));
+
+        // the failed attempt at the co-process, and one invocation per distinct job
+        assertEquals(3, this.getInvocations().size());
+    }
+
+    @Test
+    public void testFallbackWhenCoProcessExits() throws IOException {
+        Aspen aspen = this.createEstimator(FAILING_BATCH_CLIENT, 10);
+        List<Map<String, String>> estimates = aspen.getAllEstimates(this.createJobs(7, 8, 9));
+        assertEquals("7", estimates.get(0).get("runtime"));
+        assertEquals("8", estimates.get(1).get("runtime"));
+        assertEquals("9", estimates.get(2).get("runtime"));
+
+        // the co-process estimates the first job, and the rest are estimated one at a time
+        assertEquals(3, this.getInvocations().size());
+    }
+
+    @Test(timeout = 30000)
+    public void testFallbackWhenHeaderTimesOut() throws IOException {
+        Aspen aspen = this.createEstimator(WAITING_CLIENT, 10);
+        long start = System.currentTimeMillis();
+        List<Map<String, String>> estimates = aspen.getAllEstimates(this.createJobs(3, 4));
+        assertEquals("3", estimates.get(0).get("runtime"));
+        assertEquals("4", estimates.get(1).get("runtime"));
+        assertTrue(System.currentTimeMillis() - start < 10000);
+
+        // the co-process that timed out, and one invocation per distinct job
+        assertEquals(3, this.getInvocations().size());
+    }
+
+    @Test(timeout = 30000)
+    public void testFallbackWhenEstimatesTimeOut() throws IOException {
+        Aspen aspen = this.createEstimator(STALLING_BATCH_CLIENT, 10);
+        long start = System.currentTimeMillis();
+        List<Map<String, String>> estimates = aspen.getAllEstimates(this.createJobs(7, 8, 9));
+        assertEquals("7", estimates.get(0).get("runtime"));
+        assertEquals("8", estimates.get(1).get("runtime"));
+        assertEquals("9", estimates.get(2).get("runtime"));
+        assertTrue(System.currentTimeMillis() - start < 10000);
+
+        // the co-process estimates the first job before it is killed, and the rest are
+        // estimated one at a time
+        assertEquals(3, this.getInvocations().size());
+    }
+
+    private Aspen createEstimator(String client, int batchSize) throws IOException {
+        File estimate = new File(mBinDir, Aspen.PEGASUS_ASPEN_CLIENT_NAME);
+        Files.write(estimate.toPath(), client.getBytes(StandardCharsets.UTF_8));
+        estimate.setExecutable(true);
+
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty(Aspen.ASPEN_BIN_PROPERTY_KEY, mBinDir.getAbsolutePath());
+        props.setProperty(Aspen.ASPEN_MODELS_PROPERTY_KEY, mBinDir.getAbsolutePath());
+        props.setProperty(Aspen.ASPEN_COPROCESS_PROPERTY_KEY, "true");
+        props.setProperty(Aspen.ASPEN_BATCH_SIZE_PROPERTY_KEY, Integer.toString(batchSize));
+        props.setProperty(Aspen.ASPEN_COPROCESS_TIMEOUT_PROPERTY_KEY, "1");
+
+        PegasusBag bag = new PegasusBag();
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        Aspen aspen = new Aspen();
+        aspen.initialize(null, bag);
+        return aspen;
+    }
+
+    private List<Job> createJobs(int... sizes) {
+        List<Job> jobs = new ArrayList<Job>();
+        for (int size : sizes) {
+            Job job = new Job();
+            job.setName("job_" + jobs.size());
+            job.addMetadata("size", Integer.toString(size));
+            job.addMetadata("app", "test");
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    private List<String> getInvocations() throws IOException {
+        File invocations = new File(mBinDir, "invocations");
+        List<String> result = new ArrayList<String>();
+        if (invocations.exists()) {
+            for (String line : Files.readAllLines(invocations.toPath())) {
+                result.add(line.trim());
+            }
+        }
+        return result;
     }
-    */
 }
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.estimate;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Test class for the HistoryIndex used by the History estimator. */
+public class HistoryIndexTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testSummarize() {
+        HistoryIndex index = new HistoryIndex();
+        for (int i = 1; i <= 20; i++) {
+            index.addSample("pegasus::preprocess:4.0", "condorpool", i, i * 10, i * 100);
+        }
+        index.addSample("pegasus::preprocess:4.0", "local", 100, 5, 0);
+        index.summarize();
+
+        HistoryIndex.Entry entry = index.get("pegasus::preprocess:4.0", "condorpool");
+        assertEquals(20, entry.getCount());
+        assertEquals(10.5, entry.getRuntimeMedian(), DELTA);
+        assertEquals(19, entry.getRuntimeP95(), DELTA);
+        assertEquals(200, entry.getMemoryPeak(), DELTA);
+        assertEquals(1050, entry.getOutputBytes(), DELTA);
+
+        HistoryIndex.Entry all = index.get("pegasus::preprocess:4.0", HistoryIndex.ALL_SITES);
+        assertEquals(21, all.getCount());
+        assertEquals(11, all.getRuntimeMedian(), DELTA);
+        assertEquals(20, all.getRuntimeP95(), DELTA);
+
+        assertNull(index.get("pegasus::preprocess:4.0", "other"));
+        assertNull(index.get("pegasus::findrange:4.0", "local"));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testFingerprint() {
+        File a = new File("/submit/run0001/a.out.000");
+        File b = new File("/submit/run0001/b.out.000");
+        assertEquals(
+                HistoryIndex.fingerprint(Arrays.asList(a, b)),
+                HistoryIndex.fingerprint(Arrays.asList(b, a)));
+        assertNotEquals(
+                HistoryIndex.fingerprint(Arrays.asList(a, b)),
+                HistoryIndex.fingerprint(Arrays.asList(a)));
+        assertTrue(HistoryIndex.fingerprint(Arrays.asList(a)).startsWith("1:"));
+    }
+
+    @Test
+    public void testWriteAndLoad() throws IOException {
+        HistoryIndex index = new HistoryIndex();
+        index.addSample("pegasus::analyze:4.0", "local", 2.5, 512.25, 1024);
+        index.addSample("pegasus::analyze:4.0", "local", 3.5, 100, 2048);
+        index.setSources(Arrays.asList("/submit/run0001", "/submit/run0002"));
+        index.setRecords(
+                HistoryIndex.fingerprint(Arrays.asList(new File("/submit/run0001/a.out"))));
+        index.summarize();
+
+        File file = File.createTempFile("history", ".idx");
+        try {
+            index.write(file);
+            HistoryIndex loaded = HistoryIndex.load(file);
+            assertEquals(index.getSources(), loaded.getSources());
+            assertEquals(index.getRecords(), loaded.getRecords());
+            assertEquals(index.size(), loaded.size());
+
+            HistoryIndex.Entry entry = loaded.get("pegasus::analyze:4.0", "local");
+            assertEquals(2, entry.getCount());
+            assertEquals(3.0, entry.getRuntimeMedian(), DELTA);
+            assertEquals(3.5, entry.getRuntimeP95(), DELTA);
+            assertEquals(512.25, entry.getMemoryPeak(), DELTA);
+            assertEquals(1536, entry.getOutputBytes(), DELTA);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadInvalidFile() throws IOException {
+        File file = File.createTempFile("history", ".idx");
+        try {
+            Files.write(file.toPath(), "not an index\n".getBytes(StandardCharsets.UTF_8));
+            HistoryIndex.load(file);
+        } finally {
+            file.delete();
+        }
+    }
+}
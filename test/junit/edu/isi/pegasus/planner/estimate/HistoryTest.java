@@ -0,0 +1,323 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.estimate;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests the History estimator against kickstart records written out to a fake submit directory. */
+public class HistoryTest {
+
+    private DefaultTestSetup mTestSetup;
+
+    private LogManager mLogger;
+
+    private File mDir;
+
+    private File mSubmitDir;
+
+    private File mIndexFile;
+
+    public HistoryTest() {}
+
+    @Before
+    public void setUp() throws IOException {
+        mTestSetup = new DefaultTestSetup();
+        mLogger = mTestSetup.loadLogger(PegasusProperties.nonSingletonInstance());
+        mLogger.setLevel(LogManager.INFO_MESSAGE_LEVEL);
+        mLogger.logEventStart("test.estimate.History", "setup", "0");
+        mDir = Files.createTempDirectory("history").toFile();
+        mSubmitDir = new File(mDir, "run0001");
+        new File(mSubmitDir, "00/00").mkdirs();
+        mIndexFile = new File(mDir, "history.idx");
+
+        this.writeRecords(
+                "00/00/preprocess_ID1.out.000",
+                record("preprocess", "condorpool", 10, 2048, 0, 100));
+        this.writeRecords(
+                "00/00/preprocess_ID2.out.000",
+                record("preprocess", "condorpool", 30, 4096, 0, 300));
+        this.writeRecords(
+                "00/00/preprocess_ID3.out.001",
+                record("preprocess", "condorpool", 20, 1024, 0, 200));
+        // a failed invocation is ignored
+        this.writeRecords(
+                "00/00/preprocess_ID4.out.000",
+                record("preprocess", "condorpool", 500, 8192, 1, 0));
+        // a clustered job with two tasks
+        this.writeRecords(
+                "00/00/merge_ID5.out.000",
+                record("findrange", "local", 5, 1024, 0, 10)
+                        + "\n[cluster-task id=2]\n"
+                        + record("findrange", "local", 7, 1024, 0, 10));
+        // not a kickstart output file
+        this.writeRecords(
+                "00/00/preprocess_ID6.err.000", record("preprocess", "local", 99, 0, 0, 0));
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+        delete(mDir);
+    }
+
+    @Test
+    public void testEstimates() {
+        History history = this.createEstimator();
+        Map<String, String> estimates =
+                history.getAllEstimates(this.createJob("preprocess", "condorpool"));
+        assertEquals("20", estimates.get("runtime"));
+        assertEquals("30", estimates.get(History.RUNTIME_P95_KEY));
+        assertEquals("4", estimates.get("memory"));
+        assertEquals("200", estimates.get(History.OUTPUT_BYTES_KEY));
+
+        assertEquals("6", history.getRuntime(this.createJob("findrange", "local")));
+        assertEquals("1", history.getMemory(this.createJob("findrange", "local")));
+    }
+
+    @Test
+    public void testFallbackToAllSites() {
+        History history = this.createEstimator();
+        assertEquals("20", history.getRuntime(this.createJob("preprocess", "other")));
+        assertTrue(history.getAllEstimates(this.createJob("analyze", "condorpool")).isEmpty());
+        assertNull(history.getRuntime(this.createJob("analyze", "condorpool")));
+    }
+
+    @Test
+    public void testIndexIsReused() throws IOException {
+        this.createEstimator();
+        assertTrue(mIndexFile.exists());
+
+        // an index that is up to date is picked up as is
+        HistoryIndex index = new HistoryIndex();
+        index.addSample("pegasus::analyze:4.0", "condorpool", 42, 1, 0);
+        HistoryIndex built = HistoryIndex.load(mIndexFile);
+        index.setSources(built.getSources());
+        index.setRecords(built.getRecords());
+        index.summarize();
+        index.write(mIndexFile);
+        mIndexFile.setLastModified(System.currentTimeMillis() + 60000);
+        History history = this.createEstimator();
+        assertEquals("42", history.getRuntime(this.createJob("analyze", "condorpool")));
+
+        // a kickstart record newer than the index triggers a rebuild
+        File newer =
+                this.writeRecords(
+                        "00/00/analyze_ID7.out.000", record("analyze", "condorpool", 8, 0, 0, 0));
+        newer.setLastModified(mIndexFile.lastModified() + 60000);
+        history = this.createEstimator();
+        assertEquals("8", history.getRuntime(this.createJob("analyze", "condorpool")));
+        assertEquals("20", history.getRuntime(this.createJob("preprocess", "condorpool")));
+    }
+
+    @Test
+    public void testDeletedRecordsTriggerRebuild() {
+        History history = this.createEstimator();
+        assertEquals("4", history.getMemory(this.createJob("preprocess", "condorpool")));
+
+        // the index is newer than every remaining record, but one is gone
+        new File(mSubmitDir, "00/00/preprocess_ID2.out.000").delete();
+        mIndexFile.setLastModified(System.currentTimeMillis() + 60000);
+        history = this.createEstimator();
+        assertEquals("2", history.getMemory(this.createJob("preprocess", "condorpool")));
+    }
+
+    @Test
+    public void testYAMLRecords() throws IOException {
+        this.writeRecords(
+                "00/00/analyze_ID8.out.000",
+                yamlRecord("analyze", "condorpool", 12, 3072, 0, 50)
+                        + "[cluster-task id=1, start=\"2023-03-04T11:57:07.327-08:00\"]\n"
+                        + yamlRecord("analyze", "condorpool", 14, 1024, 0, 70)
+                        + "[cluster-task id=2, start=\"2023-03-04T11:57:07.327-08:00\"]\n"
+                        + "[cluster-summary stat=\"ok\", tasks=2]\n");
+        // a failed invocation is ignored
+        this.writeRecords(
+                "00/00/analyze_ID9.out.000", yamlRecord("analyze", "condorpool", 99, 8192, 1, 0));
+        // records of both formats in one file
+        this.writeRecords(
+                "00/00/analyze_ID10.out.000",
+                yamlRecord("analyze", "local", 16, 2048, 0, 60)
+                        + record("analyze", "local", 18, 2048, 0, 60));
+
+        History history = this.createEstimator();
+        Map<String, String> estimates =
+                history.getAllEstimates(this.createJob("analyze", "condorpool"));
+        assertEquals("13", estimates.get("runtime"));
+        assertEquals("3", estimates.get("memory"));
+        assertEquals("60", estimates.get(History.OUTPUT_BYTES_KEY));
+        assertEquals("17", history.getRuntime(this.createJob("analyze", "local")));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNoHistory() {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty(History.HISTORY_INDEX_PROPERTY_KEY, mIndexFile.getAbsolutePath());
+        PegasusBag bag = new PegasusBag();
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        new History().initialize(null, bag);
+    }
+
+    private History createEstimator() {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty(History.HISTORY_DIRS_PROPERTY_KEY, mSubmitDir.getAbsolutePath());
+        props.setProperty(History.HISTORY_INDEX_PROPERTY_KEY, mIndexFile.getAbsolutePath());
+        PegasusBag bag = new PegasusBag();
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        History history = new History();
+        history.initialize(null, bag);
+        return history;
+    }
+
+    private Job createJob(String name, String site) {
+        Job job = new Job();
+        job.setTransformation("pegasus", name, "4.0");
+        job.setSiteHandle(site);
+        return job;
+    }
+
+    private File writeRecords(String path, String content) throws IOException {
+        File file = new File(mSubmitDir, path);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+        return file;
+    }
+
+    /** Returns a kickstart invocation record, with a maxrss in KB. */
+    private static String record(
+            String name, String site, double duration, int maxrss, int exitcode, long output) {
+        return "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n"
+                + "<invocation xmlns=\"http://pegasus.isi.edu/schema/invocation\""
+                + " version=\"2.1\" start=\"2015-05-30T14:38:48.432-07:00\""
+                + " duration=\""
+                + duration
+                + "\" transformation=\"pegasus::"
+                + name
+                + ":4.0\" resource=\""
+                + site
+                + "\" hostaddr=\"127.0.0.1\" hostname=\"localhost\" pid=\"2\""
+                + " uid=\"0\" user=\"root\" gid=\"0\" group=\"root\" umask=\"0022\">\n"
+                + "  <mainjob start=\"2015-05-30T14:38:48.432-07:00\" duration=\""
+                + duration
+                + "\" pid=\"3\">\n"
+                + "    <usage utime=\"0.002\" stime=\"0.000\" maxrss=\""
+                + maxrss
+                + "\" minflt=\"232\" majflt=\"0\" nswap=\"0\" nsignals=\"0\""
+                + " nvcsw=\"1\" nivcsw=\"1\"/>\n"
+                + "    <status raw=\""
+                + (exitcode << 8)
+                + "\"><regular exitcode=\""
+                + exitcode
+                + "\"/></status>\n"
+                + "    <statcall error=\"0\">\n"
+                + "      <file name=\"/bin/"
+                + name
+                + "\"/>\n"
+                + "    </statcall>\n"
+                + "    <argument-vector/>\n"
+                + "  </mainjob>\n"
+                + "  <cwd>/tmp</cwd>\n"
+                + "  <statcall error=\"0\" id=\"final\" lfn=\"f.out\">\n"
+                + "    <file name=\"/tmp/f.out\"/>\n"
+                + "    <statinfo mode=\"0100644\" size=\""
+                + output
+                + "\" inode=\"1\" nlink=\"1\" blksize=\"4096\" blocks=\"8\""
+                + " mtime=\"2015-05-30T14:38:48-07:00\" atime=\"2015-05-30T14:38:48-07:00\""
+                + " ctime=\"2015-05-30T14:38:48-07:00\" uid=\"0\" gid=\"0\"/>\n"
+                + "  </statcall>\n"
+                + "</invocation>\n";
+    }
+
+    /**
+     * Returns a kickstart invocation record in the YAML format, with a maxrss in KB. The record has
+     * an input file and an output file.
+     */
+    private static String yamlRecord(
+            String name, String site, double duration, int maxrss, int exitcode, long output) {
+        return "- invocation: True\n"
+                + "  version: 3.0\n"
+                + "  start: 2023-03-04T11:57:07.327-08:00\n"
+                + "  duration: "
+                + duration
+                + "\n"
+                + "  transformation: \"pegasus::"
+                + name
+                + ":4.0\"\n"
+                + "  derivation: \"ID0000001\"\n"
+                + "  resource: \""
+                + site
+                + "\"\n"
+                + "  umask: 0o0022\n"
+                + "  mainjob:\n"
+                + "    start: 2023-03-04T11:57:07.427-08:00\n"
+                + "    duration: "
+                + duration
+                + "\n"
+                + "    pid: 382177\n"
+                + "    usage:\n"
+                + "      utime: 0.006\n"
+                + "      maxrss: "
+                + maxrss
+                + "\n"
+                + "    status:\n"
+                + "      raw: "
+                + (exitcode << 8)
+                + "\n"
+                + "      regular_exitcode: "
+                + exitcode
+                + "\n"
+                + "    argument_vector:\n"
+                + "      - \"-o\"\n"
+                + "      - \"f.out\"\n"
+                + "    procs:\n"
+                + "  cwd: /tmp\n"
+                + "  files:\n"
+                + "    f.in:\n"
+                + "      lfn: \"f.in\"\n"
+                + "      file_name: /tmp/f.in\n"
+                + "      size: 1000000\n"
+                + "    f.out:\n"
+                + "      lfn: \"f.out\"\n"
+                + "      file_name: /tmp/f.out\n"
+                + "      size: "
+                + output
+                + "\n"
+                + "      output: True\n"
+                + "\n";
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.invocation;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.griphyn.vdl.dbschema.PTC;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests the IngestionServer by replaying kickstart records against it with the ReplayClient. */
+public class IngestionServerTest {
+
+    private static final String SCHEMA_LOCATION = "share/pegasus/schema/iv-2.1.xsd";
+
+    private File mDir;
+
+    private IngestionServer mServer;
+
+    private Thread mServing;
+
+    public IngestionServerTest() {}
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("ingestion").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mServer != null) {
+            new ReplayClient("localhost", mServer.getPort()).shutdown();
+            mServing.join();
+        }
+        for (File file : mDir.listFiles()) {
+            file.delete();
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void testBatchedIngestion() throws Exception {
+        List<String> files = new ArrayList<String>();
+        for (int pid = 1; pid <= 200; pid++) {
+            files.add(this.write("ok" + pid, record(pid, pid % 10 == 0 ? 1 : 0)));
+        }
+        // the same record twice is only saved once
+        files.add(this.write("duplicate", record(1, 0)));
+        files.add(this.write("empty", ""));
+        files.add(this.write("garbage", "this is not a kickstart record"));
+        files.add(new File(mDir, "missing").getAbsolutePath());
+
+        TestPTC ptc = new TestPTC(-1);
+        this.startServer(ptc, 2, 4, 32);
+        int[] result = new ReplayClient("localhost", mServer.getPort()).replay(files, 16);
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals("result for pid " + (i + 1), (i + 1) % 10 == 0 ? 1 : 0, result[i]);
+        }
+        assertEquals(0, result[200]);
+        assertEquals(5, result[202]);
+        assertEquals(5, result[203]);
+        assertTrue(result[201] != 0);
+
+        assertEquals(200, ptc.mSaved.size());
+        assertEquals(200, mServer.getSaved());
+        assertTrue("records were saved in batches", ptc.mMaxBatch > 1);
+        assertTrue(ptc.mMaxBatch <= 32);
+        assertTrue(mServer.getBatches() < 200);
+        assertEquals(0, mServer.getQueueDepth());
+        assertTrue(mServer.getMaxQueueDepth() <= 8);
+        assertTrue("full queues block the connections", mServer.getBlocked() > 0);
+        assertTrue(new ReplayClient("localhost", mServer.getPort()).stats().contains("saved=200"));
+    }
+
+    @Test
+    public void testFailedBatchIsSavedOneAtATime() throws Exception {
+        List<String> files = new ArrayList<String>();
+        for (int pid = 1; pid <= 50; pid++) {
+            files.add(this.write("ok" + pid, record(pid, 0)));
+        }
+
+        TestPTC ptc = new TestPTC(13);
+        this.startServer(ptc, 2, 64, 64);
+        int[] result = new ReplayClient("localhost", mServer.getPort()).replay(files, 8);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("result for pid " + (i + 1), i + 1 == 13 ? 5 : 0, result[i]);
+        }
+        assertEquals(49, ptc.mSaved.size());
+        assertFalse(ptc.mSaved.contains(13));
+    }
+
+    @Test
+    public void testNoDatabase() throws Exception {
+        List<String> files = new ArrayList<String>();
+        files.add(this.write("ok", record(1, 0)));
+        files.add(this.write("failed", record(2, 3)));
+
+        this.startServer(null, 1, 1, 1);
+        int[] result = new ReplayClient("localhost", mServer.getPort()).replay(files, 2);
+
+        assertEquals(0, result[0]);
+        assertEquals(1, result[1]);
+        assertEquals(0, mServer.getSaved());
+    }
+
+    private void startServer(PTC ptc, int workers, int queueSize, int batchSize)
+            throws IOException {
+        mServer = new IngestionServer(ptc, SCHEMA_LOCATION, 0, workers, queueSize, batchSize);
+        mServer.start();
+        mServing =
+                new Thread(
+                        new Runnable() {
+                            public void run() {
+                                mServer.serve();
+                            }
+                        });
+        mServing.start();
+    }
+
+    private String write(String name, String contents) throws IOException {
+        File file = new File(mDir, name + ".out");
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file.getAbsolutePath();
+    }
+
+    private static String record(int pid, int exitcode) {
+        return "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n"
+                + "<invocation xmlns=\"http://pegasus.isi.edu/schema/invocation\""
+                + " version=\"2.1\" start=\"2015-05-30T14:38:48.432-07:00\""
+                + " duration=\"1.0\" transformation=\"pegasus::preprocess:4.0\""
+                + " resource=\"local\" hostaddr=\"127.0.0.1\" hostname=\"localhost\" pid=\""
+                + pid
+                + "\" uid=\"0\" user=\"root\" gid=\"0\" group=\"root\" umask=\"0022\">\n"
+                + "  <mainjob start=\"2015-05-30T14:38:48.432-07:00\" duration=\"1.0\""
+                + " pid=\"3\">\n"
+                + "    <usage utime=\"0.002\" stime=\"0.000\" maxrss=\"1024\""
+                + " minflt=\"232\" majflt=\"0\" nswap=\"0\" nsignals=\"0\""
+                + " nvcsw=\"1\" nivcsw=\"1\"/>\n"
+                + "    <status raw=\""
+                + (exitcode << 8)
+                + "\"><regular exitcode=\""
+                + exitcode
+                + "\"/></status>\n"
+                + "    <statcall error=\"0\">\n"
+                + "      <file name=\"/bin/preprocess\"/>\n"
+                + "    </statcall>\n"
+                + "    <argument-vector/>\n"
+                + "  </mainjob>\n"
+                + "  <cwd>/tmp</cwd>\n"
+                + "</invocation>\n";
+    }
+
+    /**
+     * A PTC that remembers the pids of the records saved. Saving a batch takes a while, so that
+     * records pile up in the queue, and fails if the batch contains the bad pid.
+     */
+    private static class TestPTC implements PTC {
+
+        private final int mBadPID;
+
+        private final Set<Integer> mSaved = Collections.synchronizedSet(new HashSet<Integer>());
+
+        private volatile int mMaxBatch = 0;
+
+        TestPTC(int badPID) {
+            mBadPID = badPID;
+        }
+
+        public long getInvocationID(Date start, InetAddress host, int pid) {
+            return mSaved.contains(pid) ? pid : -1;
+        }
+
+        public boolean saveInvocation(InvocationRecord ivr) throws SQLException {
+            if (ivr.getPID() == mBadPID) {
+                throw new SQLException("bad record " + mBadPID);
+            }
+            mSaved.add(ivr.getPID());
+            return true;
+        }
+
+        public boolean saveInvocations(List<InvocationRecord> records) throws SQLException {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (InvocationRecord ivr : records) {
+                if (ivr.getPID() == mBadPID) {
+                    throw new SQLException("bad record " + mBadPID);
+                }
+            }
+            for (InvocationRecord ivr : records) {
+                mSaved.add(ivr.getPID());
+            }
+            mMaxBatch = Math.max(mMaxBatch, records.size());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.namespace;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.catalog.classes.Profiles;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.Profile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Tests for the layered profile maps, and that namespaces sharing layers hold the same profiles as
+ * namespaces to which the profiles were added one by one.
+ */
+public class LayeredMapTest {
+
+    public LayeredMapTest() {}
+
+    @Test
+    public void testLayersAreNotModified() {
+        Map<String, String> base = new TreeMap<String, String>();
+        base.put("a", "1");
+        base.put("b", "2");
+
+        LayeredMap map = new LayeredMap(true, base);
+        LayeredMap copy = map.fork();
+        map.put("a", "3");
+        map.remove("b");
+        copy.put("c", "4");
+
+        assertEquals("{a=3}", map.toString());
+        assertEquals("{a=1, b=2, c=4}", copy.toString());
+        assertEquals("{a=1, b=2}", base.toString());
+        assertFalse(map.containsKey("b"));
+        assertNull(map.get("b"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testPushAndAppendLayers() {
+        LayeredMap map = new LayeredMap(true);
+        map.put("b", "1");
+        Map<String, String> top = new TreeMap<String, String>();
+        top.put("a", "2");
+        top.put("b", "3");
+        map.pushLayer(top);
+
+        Map<String, String> bottom = new TreeMap<String, String>();
+        bottom.put("b", "4");
+        bottom.put("c", "5");
+        assertTrue(map.canAppendLayer(bottom));
+        map.appendLayer(bottom);
+        assertEquals("{a=2, b=3, c=5}", map.toString());
+
+        // a removed key cannot be added back by a layer underneath
+        map.remove("c");
+        assertFalse(map.canAppendLayer(bottom));
+        assertEquals("{a=2, b=3}", map.toString());
+    }
+
+    @Test
+    public void testInsertionOrder() {
+        LayeredMap map = new LayeredMap(false);
+        map.put("z", "1");
+        Map<String, String> layer = new LinkedHashMap<String, String>();
+        layer.put("y", "2");
+        layer.put("z", "3");
+        map.pushLayer(layer);
+        map.put("x", "4");
+        assertEquals("{z=3, y=2, x=4}", map.toString());
+        assertFalse(map.canAppendLayer(layer));
+    }
+
+    @Test
+    public void testFlattenDeepChains() {
+        LayeredMap map = new LayeredMap(true);
+        for (int i = 0; i < 3 * LayeredMap.MAXIMUM_DEPTH; i++) {
+            map.put("key" + i, Integer.toString(i));
+            map = map.fork();
+        }
+        assertTrue(map.getDepth() <= LayeredMap.MAXIMUM_DEPTH + 1);
+        assertEquals(3 * LayeredMap.MAXIMUM_DEPTH, map.size());
+        assertEquals("7", map.get("key7"));
+    }
+
+    @Test
+    public void testJobProfilesSameAsUnshared() {
+        Profiles site = new Profiles();
+        site.addProfile(new Profile(Profile.CONDOR, "request_memory", "1024"));
+        site.addProfile(new Profile(Profile.CONDOR, "request_cpus", "2"));
+        site.addProfile(new Profile(Profile.CONDOR, "requirements", "(Arch == \"X86_64\")"));
+        site.addProfile(new Profile(Profile.CONDOR, "priority", "10"));
+        site.addProfile(new Profile(Profile.ENV, "PATH", "/bin"));
+        site.addProfile(new Profile(Profile.ENV, "HOME", "/home/user"));
+        site.addProfile(new Profile(Profile.ENV, "LANG", "C"));
+        site.addProfile(new Profile(Profile.ENV, "JAVA_HOME", "/opt/java"));
+        site.addProfile(new Profile(Profile.VDS, "runtime", "100"));
+        site.addProfile(new Profile(Profile.VDS, "clusters.size", "2"));
+        site.addProfile(new Profile(Profile.VDS, "cores", "2"));
+        site.addProfile(new Profile(Profile.VDS, "style", "condor"));
+
+        List<Job> jobs = new ArrayList<Job>();
+        for (int i = 0; i < 3; i++) {
+            Job job = new Job();
+            job.condorVariables.construct("priority", "20");
+            job.envVariables.construct("LANG", "en_US");
+            job.updateProfiles(site);
+            jobs.add(job);
+        }
+        Job clone = (Job) jobs.get(0).clone();
+        clone.condorVariables.construct("request_memory", "2048");
+        clone.envVariables.removeKey("HOME");
+
+        for (Job job : jobs) {
+            assertSameProfiles(
+                    unshared(new Condor(), site, Profiles.NAMESPACES.condor, "priority", "20"),
+                    job.condorVariables);
+            assertSameProfiles(
+                    unshared(new ENV(), site, Profiles.NAMESPACES.env, "LANG", "en_US"),
+                    job.envVariables);
+            assertSameProfiles(
+                    unshared(new Pegasus(), site, Profiles.NAMESPACES.pegasus, null, null),
+                    job.vdsNS);
+        }
+        assertEquals("2048", clone.condorVariables.get("request_memory"));
+        assertFalse(clone.envVariables.containsKey("HOME"));
+        assertTrue(jobs.get(0).envVariables.containsKey("HOME"));
+        assertEquals("1024", jobs.get(0).condorVariables.get("request_memory"));
+    }
+
+    private Namespace unshared(
+            Namespace ns,
+            Profiles profiles,
+            Profiles.NAMESPACES namespace,
+            String key,
+            String value) {
+        if (key != null) {
+            ns.construct(key, value);
+        }
+        Namespace n = profiles.get(namespace);
+        for (Iterator it = n.getProfileKeyIterator(); it.hasNext(); ) {
+            String k = (String) it.next();
+            ns.checkKeyInNS(k, (String) n.get(k));
+        }
+        return ns;
+    }
+
+    private void assertSameProfiles(Namespace expected, Namespace actual) {
+        assertEquals(expected.toCondor(), actual.toCondor());
+        List<String> expectedKeys = new ArrayList<String>();
+        for (Iterator it = expected.getProfileKeyIterator(); it.hasNext(); ) {
+            expectedKeys.add((String) it.next());
+        }
+        List<String> actualKeys = new ArrayList<String>();
+        for (Iterator it = actual.getProfileKeyIterator(); it.hasNext(); ) {
+            actualKeys.add((String) it.next());
+        }
+        assertEquals(expectedKeys, actualKeys);
+    }
+}
@@ -6,6 +6,9 @@
 package edu.isi.pegasus.planner.parser.dax;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.classes.ADag;
@@ -14,10 +17,19 @@ import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.WorkflowMetrics;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.parser.DAXParserFactory;
+import edu.isi.pegasus.planner.parser.ScannerException;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.test.DefaultTestSetup;
 import edu.isi.pegasus.planner.test.TestSetup;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -65,14 +77,7 @@ public class DAXParser5Test {
         mBag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
 
         /* instantiate the DAX YAML and start parsing */
-        String dax = new File(mTestSetup.getInputDirectory(), "workflow.yml").getAbsolutePath();
-        DAXParser p =
-                (DAXParser)
-                        DAXParserFactory.loadDAXParser(
-                                mBag, DAXParserFactory.DEFAULT_CALLBACK_CLASS, dax);
-        Callback cb = ((DAXParser) p).getDAXCallback();
-        p.parse(dax);
-        mParsedDAX = (ADag) cb.getConstructedObject();
+        mParsedDAX = this.parse(this.getWorkflow());
         mLogger.logEventCompletion();
     }
 
@@ -106,6 +111,42 @@ public class DAXParser5Test {
                 metrics.getNumDAXFiles(WorkflowMetrics.FILE_TYPE.total));
     }
 
+    @Test
+    public void testStreamingMatchesTree() {
+        // the test workflow does not have the job types, and does not validate
+        mProps.setProperty("pegasus.parser.dax.stream", "true");
+        mProps.setProperty("pegasus.parser.dax.stream.validate", "false");
+        this.assertEquivalent(mParsedDAX, this.parse(this.getWorkflow()));
+    }
+
+    @Test
+    public void testStreamingGeneratedWorkflow() throws IOException {
+        File workflow = this.generate(500, false);
+        try {
+            ADag expected = this.parse(workflow.getAbsolutePath());
+            mProps.setProperty("pegasus.parser.dax.stream", "true");
+            ADag actual = this.parse(workflow.getAbsolutePath());
+            assertEquals(500, actual.size());
+            this.assertEquivalent(expected, actual);
+        } finally {
+            workflow.delete();
+        }
+    }
+
+    @Test
+    public void testStreamingValidation() throws IOException {
+        File workflow = this.generate(5, true);
+        mProps.setProperty("pegasus.parser.dax.stream", "true");
+        try {
+            this.parse(workflow.getAbsolutePath());
+            fail("Invalid job was not detected");
+        } catch (ScannerException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("$.jobs[3].uses"));
+        } finally {
+            workflow.delete();
+        }
+    }
+
     @After
     public void tearDown() {
         mLogger = null;
@@ -113,4 +154,101 @@ public class DAXParser5Test {
         mBag = null;
         mTestSetup = null;
     }
+
+    /**
+     * Returns the path to the workflow in the input directory
+     *
+     * @return the path
+     */
+    private String getWorkflow() {
+        return new File(mTestSetup.getInputDirectory(), "workflow.yml").getAbsolutePath();
+    }
+
+    /**
+     * Parses a workflow using the parser loaded by the factory.
+     *
+     * @param dax the path to the workflow
+     * @return the parsed workflow
+     */
+    private ADag parse(String dax) {
+        DAXParser p =
+                (DAXParser)
+                        DAXParserFactory.loadDAXParser(
+                                mBag, DAXParserFactory.DEFAULT_CALLBACK_CLASS, dax);
+        Callback cb = ((DAXParser) p).getDAXCallback();
+        p.parse(dax);
+        return (ADag) cb.getConstructedObject();
+    }
+
+    /**
+     * Generates a chain workflow, where each job also depends on the first job.
+     *
+     * @param jobs the number of jobs
+     * @param invalid whether the job before the last misses its uses
+     * @return the workflow file
+     * @throws IOException
+     */
+    private File generate(int jobs, boolean invalid) throws IOException {
+        File f = File.createTempFile("workflow", ".yml");
+        Writer w = new FileWriter(f);
+        w.write("x-pegasus: {apiLang: java}\n");
+        w.write("pegasus: \"5.0\"\n");
+        w.write("name: generated\n");
+        w.write("metadata: {creator: test}\n");
+        w.write("jobs:\n");
+        for (int i = 0; i < jobs; i++) {
+            w.write("  - type: job\n");
+            w.write("    id: ID" + i + "\n");
+            w.write("    name: process\n");
+            w.write("    namespace: generated\n");
+            w.write("    arguments: [\"-i\", f." + i + ", \"-o\", f." + (i + 1) + "]\n");
+            if (invalid && i == jobs - 2) {
+                continue;
+            }
+            w.write("    uses:\n");
+            w.write("      - {lfn: f." + i + ", type: input}\n");
+            w.write("      - {lfn: f." + (i + 1) + ", type: output, stageOut: true}\n");
+            w.write("    profiles: {env: {JOB: \"" + i + "\"}}\n");
+        }
+        w.write("jobDependencies:\n");
+        for (int i = 1; i < jobs; i++) {
+            w.write("  - id: ID" + (i - 1) + "\n");
+            w.write("    children: [ID" + i + (i > 1 ? ", ID0" : "") + "]\n");
+        }
+        w.close();
+        return f;
+    }
+
+    /**
+     * Asserts that two workflows have the same jobs and edges
+     *
+     * @param expected the expected workflow
+     * @param actual the actual workflow
+     */
+    private void assertEquivalent(ADag expected, ADag actual) {
+        assertEquals(expected.getAbstractWorkflowName(), actual.getAbstractWorkflowName());
+        assertEquals(expected.getDAXVersion(), actual.getDAXVersion());
+        assertEquals(expected.getAllMetadata().toString(), actual.getAllMetadata().toString());
+        assertEquals(expected.getNotifications().toString(), actual.getNotifications().toString());
+        assertEquals(
+                expected.getWorkflowMetrics().toString(), actual.getWorkflowMetrics().toString());
+        assertEquals(expected.size(), actual.size());
+        for (Iterator<GraphNode> it = expected.nodeIterator(); it.hasNext(); ) {
+            GraphNode e = it.next();
+            GraphNode a = actual.getNode(e.getID());
+            assertNotNull(e.getID(), a);
+            assertEquals(e.getContent().toString(), a.getContent().toString());
+            assertEquals(e.getID(), ids(e.getParents()), ids(a.getParents()));
+            assertEquals(e.getID(), ids(e.getChildren()), ids(a.getChildren()));
+        }
+    }
+
+    private static List<String> ids(Collection<GraphNode> nodes) {
+        List<String> ids = new LinkedList();
+        for (GraphNode node : nodes) {
+            ids.add(node.getID());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
 }
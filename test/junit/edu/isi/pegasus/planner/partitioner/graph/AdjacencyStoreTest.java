@@ -0,0 +1,73 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/** Test class for the AdjacencyStore */
+public class AdjacencyStoreTest {
+
+    @Test
+    public void testAddPreservesOrder() {
+        AdjacencyStore store = new AdjacencyStore(2, 2);
+        // interleave additions so that runs get relocated
+        for (int i = 0; i < 50; i++) {
+            store.add(0, i);
+            store.add(1, 100 + i);
+            store.add(5, 200 + i);
+        }
+        assertEquals(50, store.degree(0));
+        assertEquals(0, store.degree(3));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, store.get(0, i));
+            assertEquals(100 + i, store.get(1, i));
+            assertEquals(200 + i, store.get(5, i));
+        }
+        assertEquals(150, store.edges());
+    }
+
+    @Test
+    public void testRemove() {
+        AdjacencyStore store = new AdjacencyStore();
+        for (int i = 0; i < 5; i++) {
+            store.add(0, i);
+        }
+        assertTrue(store.remove(0, 2));
+        assertFalse(store.remove(0, 2));
+        assertArrayEquals(new int[] {0, 1, 3, 4}, store.neighbours(0));
+        assertFalse(store.contains(0, 2));
+        assertTrue(store.contains(0, 4));
+    }
+
+    @Test
+    public void testCompact() {
+        AdjacencyStore store = new AdjacencyStore(1, 1);
+        for (int i = 0; i < 2000; i++) {
+            store.add(i % 10, i);
+        }
+        store.clear(3);
+        store.compact();
+        assertEquals(1800, store.poolSize());
+        assertEquals(0, store.degree(3));
+        assertEquals(200, store.degree(4));
+        assertEquals(4, store.get(4, 0));
+        assertEquals(1994, store.get(4, 199));
+
+        // additions after compaction still work
+        store.add(3, 7);
+        assertArrayEquals(new int[] {7}, store.neighbours(3));
+    }
+}
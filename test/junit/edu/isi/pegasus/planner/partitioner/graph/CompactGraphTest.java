@@ -0,0 +1,303 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test class for the CompactGraph, that checks its behavior against the MapGraph. */
+public class CompactGraphTest {
+
+    private CompactGraph mGraph;
+
+    @Before
+    public void setUp() {
+        mGraph = new CompactGraph();
+    }
+
+    @Test
+    public void testBlackDiamond() {
+        this.blackDiamond(mGraph);
+
+        assertEquals(4, mGraph.size());
+        assertEquals(4, mGraph.edgeCount());
+        assertEquals(ids("A"), ids(mGraph.getRoots()));
+        assertEquals(ids("D"), ids(mGraph.getLeaves()));
+        assertEquals(ids("B", "C"), ids(mGraph.getNode("A").getChildren()));
+        assertEquals(ids("B", "C"), ids(mGraph.getNode("D").getParents()));
+        assertTrue(mGraph.getNode("D").getParents().contains(mGraph.getNode("B")));
+        assertFalse(mGraph.getNode("D").getParents().contains(mGraph.getNode("A")));
+    }
+
+    @Test
+    public void testDuplicateEdges() {
+        this.blackDiamond(mGraph);
+        mGraph.addEdge("A", "B");
+        GraphNode a = mGraph.getNode("A");
+        GraphNode b = mGraph.getNode("B");
+        a.addChild(b);
+        b.addParent(a);
+
+        assertEquals(4, mGraph.edgeCount());
+        assertEquals(2, a.getChildren().size());
+    }
+
+    @Test
+    public void testRemove() {
+        Graph expected = new MapGraph();
+        this.blackDiamond(expected);
+        this.blackDiamond(mGraph);
+
+        expected.remove("B");
+        mGraph.remove("B");
+
+        assertEquals(expected.size(), mGraph.size());
+        this.assertSameStructure(expected, mGraph);
+        assertNull(mGraph.getNode("B"));
+        assertFalse(mGraph.remove("B"));
+    }
+
+    @Test
+    public void testRemovedNodeRetainsEdges() {
+        this.blackDiamond(mGraph);
+        GraphNode b = mGraph.getNode("B");
+        mGraph.remove("B");
+
+        assertEquals(ids("A"), ids(b.getParents()));
+        assertEquals(ids("D"), ids(b.getChildren()));
+        assertFalse(mGraph.getNode("D").getParents().contains(b));
+    }
+
+    @Test
+    public void testTopologicalSort() {
+        this.blackDiamond(mGraph);
+        List<String> order = new ArrayList();
+        for (Iterator<GraphNode> it = mGraph.topologicalSortIterator(); it.hasNext(); ) {
+            order.add(it.next().getID());
+        }
+        assertEquals(Arrays.asList("A", "B", "C", "D"), order);
+    }
+
+    @Test
+    public void testIteratorDepth() {
+        Graph expected = new MapGraph();
+        this.pipelineWithShortcut(expected);
+        this.pipelineWithShortcut(mGraph);
+
+        for (Iterator<GraphNode> it = expected.iterator(); it.hasNext(); ) {
+            it.next();
+        }
+        int count = 0;
+        for (Iterator<GraphNode> it = mGraph.iterator(); it.hasNext(); count++) {
+            GraphNode node = it.next();
+            assertEquals(
+                    "Depth for node " + node.getID(),
+                    expected.getNode(node.getID()).getDepth(),
+                    node.getDepth());
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void testBottomUpIterator() {
+        this.blackDiamond(mGraph);
+        List<String> order = new ArrayList();
+        for (Iterator<GraphNode> it = mGraph.bottomUpIterator(); it.hasNext(); ) {
+            order.add(it.next().getID());
+        }
+        assertEquals(Arrays.asList("D", "B", "C", "A"), order);
+        assertEquals(2, mGraph.getNode("A").getDepth());
+    }
+
+    @Test
+    public void testEdgesBeforeAddition() {
+        this.blackDiamond(mGraph);
+
+        // connect two new nodes to each other and to the existing
+        // graph, before adding them to the graph
+        GraphNode setup = new GraphNode("setup", "setup");
+        GraphNode untar = new GraphNode("untar", "untar");
+        setup.addChild(untar);
+        untar.addParent(setup);
+        GraphNode a = mGraph.getNode("A");
+        untar.addChild(a);
+        a.addParent(untar);
+
+        // a sees the pending edge already
+        assertEquals(ids("untar"), ids(a.getParents()));
+
+        mGraph.addNode(untar);
+        mGraph.addNode(setup);
+
+        assertEquals(ids("setup"), ids(mGraph.getRoots()));
+        assertEquals(ids("untar"), ids(a.getParents()));
+        assertEquals(ids("setup"), ids(untar.getParents()));
+        assertEquals(6, mGraph.edgeCount());
+        assertNull(untar.getLocalParents());
+        assertNull(a.getLocalParents());
+    }
+
+    @Test
+    public void testRemoveEdgeThroughNode() {
+        this.blackDiamond(mGraph);
+        GraphNode a = mGraph.getNode("A");
+        GraphNode b = mGraph.getNode("B");
+
+        a.removeChild(b);
+        b.removeParent(a);
+
+        assertEquals(ids("C"), ids(a.getChildren()));
+        assertTrue(b.getParents().isEmpty());
+        assertEquals(ids("A", "B"), ids(mGraph.getRoots()));
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        this.blackDiamond(mGraph);
+        GraphNode d = mGraph.getNode("D");
+        for (Iterator<GraphNode> it = d.getParents().iterator(); it.hasNext(); ) {
+            if (it.next().getID().equals("B")) {
+                it.remove();
+            }
+        }
+        assertEquals(ids("C"), ids(d.getParents()));
+        assertEquals(ids("D"), ids(mGraph.getNode("C").getChildren()));
+        assertTrue(mGraph.getNode("B").getChildren().isEmpty());
+    }
+
+    @Test
+    public void testResetEdges() {
+        this.blackDiamond(mGraph);
+        mGraph.resetEdges();
+        assertEquals(4, mGraph.getRoots().size());
+        assertEquals(4, mGraph.getLeaves().size());
+        assertEquals(0, mGraph.edgeCount());
+    }
+
+    @Test
+    public void testAddRoot() {
+        this.blackDiamond(mGraph);
+        mGraph.addRoot(new GraphNode("R", "R"));
+        assertEquals(ids("R"), ids(mGraph.getRoots()));
+        assertEquals(ids("A"), ids(mGraph.getNode("R").getChildren()));
+    }
+
+    @Test
+    public void testCycles() {
+        this.blackDiamond(mGraph);
+        assertFalse(mGraph.hasCycles());
+        mGraph.addEdge("D", "B");
+        assertTrue(mGraph.hasCycles());
+    }
+
+    @Test
+    public void testLargeGraphWithRemovals() {
+        Graph expected = new MapGraph();
+        int nodes = 5000;
+        this.layered(expected, nodes);
+        this.layered(mGraph, nodes);
+
+        for (int i = 0; i < nodes; i += 7) {
+            expected.remove("n" + i);
+            mGraph.remove("n" + i);
+        }
+        assertEquals(expected.size(), mGraph.size());
+        this.assertSameStructure(expected, mGraph);
+
+        Set<String> seen = new HashSet();
+        for (Iterator<GraphNode> it = mGraph.topologicalSortIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            for (GraphNode parent : node.getParents()) {
+                assertTrue(
+                        "Parent " + parent.getID() + " not traversed before " + node.getID(),
+                        seen.contains(parent.getID()));
+            }
+            seen.add(node.getID());
+        }
+        assertEquals(mGraph.size(), seen.size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNodeInTwoGraphs() {
+        GraphNode a = new GraphNode("A", "A");
+        mGraph.addNode(a);
+        new CompactGraph().addNode(a);
+    }
+
+    private void assertSameStructure(Graph expected, Graph actual) {
+        for (Iterator<GraphNode> it = expected.nodeIterator(); it.hasNext(); ) {
+            GraphNode e = it.next();
+            GraphNode a = actual.getNode(e.getID());
+            assertNotNull("Node missing " + e.getID(), a);
+            assertEquals("Parents for " + e.getID(), ids(e.getParents()), ids(a.getParents()));
+            assertEquals("Children for " + e.getID(), ids(e.getChildren()), ids(a.getChildren()));
+        }
+        assertEquals(ids(expected.getRoots()), ids(actual.getRoots()));
+        assertEquals(ids(expected.getLeaves()), ids(actual.getLeaves()));
+    }
+
+    private void blackDiamond(Graph g) {
+        for (String id : new String[] {"A", "B", "C", "D"}) {
+            g.addNode(new GraphNode(id, id));
+        }
+        g.addEdge("A", "B");
+        g.addEdge("A", "C");
+        g.addEdge("B", "D");
+        g.addEdge("C", "D");
+    }
+
+    private void pipelineWithShortcut(Graph g) {
+        for (String id : new String[] {"A", "B", "C", "D", "E"}) {
+            g.addNode(new GraphNode(id, id));
+        }
+        g.addEdge("A", "B");
+        g.addEdge("B", "C");
+        g.addEdge("C", "D");
+        g.addEdge("A", "D");
+        g.addEdge("D", "E");
+        g.addEdge("B", "E");
+    }
+
+    private void layered(Graph g, int nodes) {
+        for (int i = 0; i < nodes; i++) {
+            g.addNode(new GraphNode("n" + i, "n" + i));
+        }
+        for (int i = 1; i < nodes; i++) {
+            // each node gets up to three parents from the preceding nodes
+            for (int j = 1; j <= 3 && i - j * 5 >= 0; j++) {
+                g.addEdge("n" + (i - j * 5), "n" + i);
+            }
+        }
+    }
+
+    private static Set<String> ids(String... ids) {
+        return new HashSet(Arrays.asList(ids));
+    }
+
+    private static Set<String> ids(Iterable<GraphNode> nodes) {
+        Set<String> result = new HashSet();
+        for (GraphNode node : nodes) {
+            result.add(node.getID());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Selector;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import edu.isi.pegasus.planner.test.TestSetup;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** A JUnit Test to test the snapshots of plans used for incremental planning. */
+public class PlanSnapshotTest {
+
+    /** The properties used for this test. */
+    private static final String PROPERTIES_BASENAME = "properties";
+
+    private PegasusBag mBag;
+
+    private PegasusProperties mProps;
+
+    private LogManager mLogger;
+
+    private TestSetup mTestSetup;
+
+    private static int mTestNumber = 1;
+
+    public PlanSnapshotTest() {}
+
+    /** Setup the logger and properties that all test functions require */
+    @Before
+    public final void setUp() {
+        mTestSetup = new DefaultTestSetup();
+        mBag = new PegasusBag();
+        mTestSetup.setInputDirectory(this.getClass());
+
+        mProps = mTestSetup.loadPropertiesFromFile(PROPERTIES_BASENAME, new LinkedList());
+        mBag.add(PegasusBag.PEGASUS_PROPERTIES, mProps);
+
+        mLogger = mTestSetup.loadLogger(mProps);
+        mLogger.setLevel(LogManager.INFO_MESSAGE_LEVEL);
+        mLogger.logEventStart("test.refiner.plansnapshot", "set", Integer.toString(mTestNumber++));
+        mBag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+
+        PlannerOptions options = new PlannerOptions();
+        options.setOriginalArgString(new String[] {"--sites", "siteA", "blackdiamond.yml"});
+        mBag.add(PegasusBag.PLANNER_OPTIONS, options);
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testChangedJobAndNeighboursAreAffected() throws IOException {
+        PlanSnapshot previous = this.writeAndReadBack(this.plan(createWorkflow("-a top")));
+
+        ADag dag = createWorkflow("-a changed");
+        PlanSnapshot snapshot = new PlanSnapshot(mBag, dag);
+        Set<String> expected =
+                new HashSet<String>(
+                        Arrays.asList("preprocess_ID1", "findrange_ID2", "analyze_ID3"));
+        assertEquals(expected, snapshot.getAffectedJobs(dag, previous));
+
+        List<String> sites = Arrays.asList("siteA", "siteB");
+        assertEquals(1, snapshot.reuseSiteMappings(dag, previous, sites));
+        assertEquals(
+                "siteB",
+                ((Job) dag.getNode("findrange_ID4").getContent())
+                        .getSelectorProfiles()
+                        .get(Selector.EXECUTION_SITE_KEY));
+        assertFalse(
+                ((Job) dag.getNode("findrange_ID2").getContent())
+                        .getSelectorProfiles()
+                        .containsKey(Selector.EXECUTION_SITE_KEY));
+    }
+
+    @Test
+    public void testSitesNoLongerUsedAreNotReused() throws IOException {
+        PlanSnapshot previous = this.writeAndReadBack(this.plan(createWorkflow("-a top")));
+
+        ADag dag = createWorkflow("-a top");
+        PlanSnapshot snapshot = new PlanSnapshot(mBag, dag);
+        assertTrue(snapshot.getAffectedJobs(dag, previous).isEmpty());
+        // findrange_ID4 was mapped to siteB, that is no longer an execution site
+        assertEquals(3, snapshot.reuseSiteMappings(dag, previous, Arrays.asList("siteA")));
+    }
+
+    @Test
+    public void testChangedOptionsPlanFromScratch() throws IOException {
+        PlanSnapshot previous = this.writeAndReadBack(this.plan(createWorkflow("-a top")));
+
+        mBag.getPlannerOptions().setOriginalArgString(new String[] {"--sites", "siteB"});
+        ADag dag = createWorkflow("-a top");
+        PlanSnapshot snapshot = new PlanSnapshot(mBag, dag);
+        assertEquals(0, snapshot.reuseSiteMappings(dag, previous, Arrays.asList("siteA", "siteB")));
+    }
+
+    @Test
+    public void testChangedCatalogPlanFromScratch() throws IOException {
+        File catalog = File.createTempFile("pegasus", ".yml");
+        try {
+            mProps.setProperty(
+                    PegasusProperties.PEGASUS_SITE_CATALOG_FILE_PROPERTY, catalog.getPath());
+            PlanSnapshot previous = this.writeAndReadBack(this.plan(createWorkflow("-a top")));
+
+            ADag dag = createWorkflow("-a top");
+            PlanSnapshot snapshot = new PlanSnapshot(mBag, dag);
+            assertEquals(
+                    4, snapshot.reuseSiteMappings(dag, previous, Arrays.asList("siteA", "siteB")));
+
+            Files.write(catalog.toPath(), "pegasus: '5.0'\n".getBytes(StandardCharsets.UTF_8));
+            dag = createWorkflow("-a top");
+            snapshot = new PlanSnapshot(mBag, dag);
+            assertEquals(
+                    0, snapshot.reuseSiteMappings(dag, previous, Arrays.asList("siteA", "siteB")));
+        } finally {
+            mProps.removeProperty(PegasusProperties.PEGASUS_SITE_CATALOG_FILE_PROPERTY);
+            catalog.delete();
+        }
+    }
+
+    @Test
+    public void testChangedEmbeddedCatalogPlanFromScratch() throws IOException {
+        PlanSnapshot previous = this.writeAndReadBack(this.plan(createWorkflow("-a top")));
+
+        ADag dag = createWorkflow("-a top");
+        TransformationCatalogEntry entry = new TransformationCatalogEntry(null, "findrange", null);
+        entry.setResourceId("siteA");
+        entry.setPhysicalTransformation("/usr/bin/findrange");
+        dag.getTransformationStore().addEntry(entry);
+        PlanSnapshot snapshot = new PlanSnapshot(mBag, dag);
+        assertEquals(0, snapshot.reuseSiteMappings(dag, previous, Arrays.asList("siteA", "siteB")));
+    }
+
+    /**
+     * Creates a snapshot for the workflow, with the jobs mapped to sites as a site selector would.
+     */
+    private PlanSnapshot plan(ADag dag) {
+        PlanSnapshot snapshot = new PlanSnapshot(mBag, dag);
+        String[] sites = {"siteA", "siteA", "siteB", "siteA"};
+        int i = 0;
+        for (String id :
+                new String[] {"preprocess_ID1", "findrange_ID2", "findrange_ID4", "analyze_ID3"}) {
+            ((Job) dag.getNode(id).getContent()).setSiteHandle(sites[i++]);
+        }
+        snapshot.recordSites(dag);
+        return snapshot;
+    }
+
+    private PlanSnapshot writeAndReadBack(PlanSnapshot snapshot) throws IOException {
+        File f = File.createTempFile("pegasus", PlanSnapshot.SNAPSHOT_FILE_SUFFIX);
+        try {
+            snapshot.write(f);
+            PlanSnapshot result = new PlanSnapshot(mLogger);
+            result.read(f);
+            return result;
+        } finally {
+            f.delete();
+        }
+    }
+
+    /** Creates the diamond workflow, with the arguments for one of the findrange jobs. */
+    private ADag createWorkflow(String arguments) {
+        ADag dag = new ADag();
+        dag.add(createJob("preprocess", "ID1", "-a top"));
+        dag.add(createJob("findrange", "ID2", arguments));
+        dag.add(createJob("findrange", "ID4", "-a top"));
+        dag.add(createJob("analyze", "ID3", "-a top"));
+        dag.addNewRelation("preprocess_ID1", "findrange_ID2");
+        dag.addNewRelation("preprocess_ID1", "findrange_ID4");
+        dag.addNewRelation("findrange_ID2", "analyze_ID3");
+        dag.addNewRelation("findrange_ID4", "analyze_ID3");
+        return dag;
+    }
+
+    private Job createJob(String name, String id, String arguments) {
+        Job j = new Job();
+        j.setJobType(Job.COMPUTE_JOB);
+        j.setTXName(name);
+        j.setLogicalID(id);
+        j.setName(name + "_" + id);
+        j.setArguments(arguments);
+        return j;
+    }
+}
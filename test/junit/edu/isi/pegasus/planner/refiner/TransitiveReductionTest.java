@@ -0,0 +1,190 @@
+/**
+ * Copyright 2007-2013 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.partitioner.graph.CompactGraph;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/** Test class for the TransitiveReduction, that checks its output against ReduceEdges. */
+public class TransitiveReductionTest {
+
+    @Test
+    public void testMatchesReduceEdges() {
+        Graph expected = this.shortcuts(new MapGraph());
+        Graph actual = this.shortcuts(new MapGraph());
+        new ReduceEdges().reduce(expected);
+        new TransitiveReduction().reduce(actual);
+
+        assertEquals(edges(expected), edges(actual));
+        assertEquals(5, edges(actual).size());
+    }
+
+    @Test
+    public void testBlackDiamondWithShortcut() {
+        Graph g = new MapGraph();
+        for (String id : new String[] {"A", "B", "C", "D"}) {
+            g.addNode(new GraphNode(id, id));
+        }
+        g.addEdge("A", "B");
+        g.addEdge("A", "C");
+        g.addEdge("B", "D");
+        g.addEdge("C", "D");
+        g.addEdge("A", "D");
+
+        TransitiveReduction reduction = new TransitiveReduction();
+        reduction.reduce(g);
+        assertEquals(1, reduction.getRemovedEdges());
+        assertEquals(1, reduction.getComponents());
+        assertFalse(g.getNode("A").getChildren().contains(g.getNode("D")));
+        assertFalse(g.getNode("D").getParents().contains(g.getNode("A")));
+    }
+
+    @Test
+    public void testRandomWorkflows() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20; i++) {
+            long seed = random.nextLong();
+            Graph original = randomDAG(new MapGraph(), seed, 60, 3);
+            Graph expected = randomDAG(new MapGraph(), seed, 60, 3);
+            Graph actual = randomDAG(new MapGraph(), seed, 60, 3);
+
+            new ReduceEdges().reduce(expected);
+            new TransitiveReduction().reduce(actual);
+
+            // ReduceEdges does not always find every redundant edge. the
+            // reduction keeps the dependencies, and removes at least the
+            // edges removed by ReduceEdges
+            assertEquals("Seed " + seed, closure(original), closure(actual));
+            assertTrue("Seed " + seed, edges(expected).containsAll(edges(actual)));
+
+            // no edge left is implied by the others
+            for (String edge : edges(actual)) {
+                String[] pair = edge.split(" -> ");
+                GraphNode parent = actual.getNode(pair[0]);
+                GraphNode child = actual.getNode(pair[1]);
+                parent.removeChild(child);
+                child.removeParent(parent);
+                assertFalse("Seed " + seed + " edge " + edge, closure(actual).contains(edge));
+                parent.addChild(child);
+                child.addParent(parent);
+            }
+        }
+    }
+
+    @Test
+    public void testBlockedAndParallel() {
+        Random random = new Random(11);
+        for (int i = 0; i < 5; i++) {
+            long seed = random.nextLong();
+            Graph expected = randomDAG(new MapGraph(), seed, 400, 8);
+            Graph actual = randomDAG(new CompactGraph(), seed, 400, 8);
+
+            // single threaded with a bitset covering the whole component
+            new TransitiveReduction(null, 1).reduce(expected);
+            // forces a single word per node, so targets are processed in blocks
+            TransitiveReduction reduction = new TransitiveReduction(null, 4, 1);
+            reduction.reduce(actual);
+            assertEquals("Seed " + seed, edges(expected), edges(actual));
+            assertTrue(reduction.getComponents() > 1);
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCycle() {
+        Graph g = new MapGraph();
+        for (String id : new String[] {"A", "B", "C"}) {
+            g.addNode(new GraphNode(id, id));
+        }
+        g.addEdge("A", "B");
+        g.addEdge("B", "C");
+        g.addEdge("C", "A");
+        new TransitiveReduction().reduce(g);
+    }
+
+    /** The example from TestReduceEdges, where a->e, b->e and c->e are redundant. */
+    private Graph shortcuts(Graph g) {
+        for (String id : new String[] {"a", "b", "c", "d", "e"}) {
+            g.addNode(new GraphNode(id, id));
+        }
+        g.addEdge("a", "b");
+        g.addEdge("a", "c");
+        g.addEdge("b", "d");
+        g.addEdge("c", "d");
+        g.addEdge("b", "e");
+        g.addEdge("d", "e");
+        g.addEdge("a", "e");
+        g.addEdge("c", "e");
+        return g;
+    }
+
+    /**
+     * Generates a random DAG made up of several components, where each node connects to nodes with
+     * a higher index in the same component.
+     */
+    private static Graph randomDAG(Graph g, long seed, int nodes, int components) {
+        Random random = new Random(seed);
+        for (int i = 0; i < nodes; i++) {
+            g.addNode(new GraphNode("n" + i, "n" + i));
+        }
+        for (int i = 0; i < nodes; i++) {
+            for (int j = i + components; j < nodes; j += components) {
+                if (random.nextInt(nodes / components) < 3) {
+                    g.addEdge("n" + i, "n" + j);
+                }
+            }
+        }
+        return g;
+    }
+
+    /** Returns all pairs of nodes connected by a path. */
+    private static Set<String> closure(Graph g) {
+        Set<String> result = new TreeSet();
+        for (Iterator<GraphNode> it = g.nodeIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            Set<GraphNode> visited = new HashSet();
+            LinkedList<GraphNode> queue = new LinkedList(node.getChildren());
+            while (!queue.isEmpty()) {
+                GraphNode next = queue.removeFirst();
+                if (visited.add(next)) {
+                    result.add(node.getID() + " -> " + next.getID());
+                    queue.addAll(next.getChildren());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> edges(Graph g) {
+        Set<String> result = new TreeSet();
+        for (Iterator<GraphNode> it = g.nodeIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            for (GraphNode child : node.getChildren()) {
+                result.add(node.getID() + " -> " + child.getID());
+                assertTrue(child.getParents().contains(node));
+            }
+        }
+        return result;
+    }
+}
@@ -1,5 +1,5 @@
 /**
- * Copyright 2007-2013 University Of Southern California
+ * Copyright 2007-2015 University Of Southern California
  *
  * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
  * except in compliance with the License. You may obtain a copy of the License at
@@ -15,31 +15,327 @@ package edu.isi.pegasus.planner.refiner.cleanup;
 
 import static org.junit.Assert.*;
 
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.classes.TransferJob;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+import edu.isi.pegasus.planner.refiner.cleanup.constraint.OutOfSpaceError;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import org.junit.After;
-import org.junit.AfterClass;
 import org.junit.Before;
-import org.junit.BeforeClass;
+import org.junit.Test;
 
-// import org.junit.Test;
-
-/** @author Rajiv Mayani */
+/**
+ * Tests for the Constraint cleanup strategy. The cleanup jobs expected for the fan in, shared
+ * inputs, stage out and multiple site workflows are the ones the strategy added before the choices
+ * were kept in priority queues.
+ *
+ * @author Rajiv Mayani
+ */
 public class ConstraintTest {
-    @BeforeClass
-    public static void setUpClass() {}
 
-    @AfterClass
-    public static void tearDownClass() {}
+    private LogManager mLogger;
 
     @Before
-    public void setUp() {}
+    public void setUp() {
+        mLogger = new DefaultTestSetup().loadLogger(PegasusProperties.nonSingletonInstance());
+        mLogger.setLevel(LogManager.WARNING_MESSAGE_LEVEL);
+        mLogger.logEventStart("test.refiner.cleanup.Constraint", "setup", "0");
+    }
 
     @After
-    public void tearDown() {}
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
 
-    /*
     @Test
-    public void testSomeMethod() {
-        assertEquals(1, 1);
+    public void testCleanupWhenOutOfSpace() {
+        Graph workflow = new MapGraph();
+        addJob(workflow, "A", "s", new String[] {}, new String[] {"f.a"});
+        addJob(workflow, "B", "s", new String[] {"f.a"}, new String[] {"f.b"});
+        addJob(workflow, "C", "s", new String[] {"f.b"}, new String[] {"f.c"});
+        workflow.addEdge("A", "B");
+        workflow.addEdge("B", "C");
+
+        Set<String> cleanups = cleanups(addCleanupJobs(workflow, 10, 1));
+
+        // f.a has to be removed before C runs, the rest at the end
+        Set<String> expected = new TreeSet<String>();
+        expected.add("B -> f.a");
+        expected.add("C -> f.b f.c");
+        assertEquals(expected, cleanups);
+    }
+
+    @Test
+    public void testParallelSitesMatchSerial() {
+        Set<String> serial = cleanups(addCleanupJobs(twoSiteWorkflow(), 12, 1));
+        Set<String> parallel = cleanups(addCleanupJobs(twoSiteWorkflow(), 12, 4));
+        assertEquals(serial, parallel);
+        assertFalse(serial.isEmpty());
+    }
+
+    @Test
+    public void testFanIn() {
+        Graph workflow = new MapGraph();
+        for (int i = 1; i <= 4; i++) {
+            addJob(workflow, "A" + i, "s", new String[] {}, new String[] {"f.a" + i});
+        }
+        addJob(
+                workflow,
+                "J",
+                "s",
+                new String[] {"f.a1", "f.a2", "f.a3", "f.a4"},
+                new String[] {"f.j"});
+        addJob(workflow, "K", "s", new String[] {"f.j"}, new String[] {"f.k"});
+        for (int i = 1; i <= 4; i++) {
+            workflow.addEdge("A" + i, "J");
+        }
+        workflow.addEdge("J", "K");
+
+        // the inputs of the join are removed before K runs
+        Set<String> expected = expected("J -> f.a1 f.a2 f.a3 f.a4", "K -> f.j f.k");
+        assertEquals(expected, cleanups(addCleanupJobs(workflow, 20, 1)));
+    }
+
+    @Test
+    public void testSharedInputs() {
+        Graph workflow = new MapGraph();
+        addJob(workflow, "R", "s", new String[] {}, new String[] {"f.r"});
+        addJob(workflow, "X", "s", new String[] {"f.r"}, new String[] {"f.x"});
+        addJob(workflow, "Y", "s", new String[] {"f.r"}, new String[] {"f.y"});
+        addJob(workflow, "Z", "s", new String[] {"f.r", "f.x"}, new String[] {"f.z"});
+        addJob(workflow, "W", "s", new String[] {"f.y", "f.z"}, new String[] {"f.w"});
+        workflow.addEdge("R", "X");
+        workflow.addEdge("R", "Y");
+        workflow.addEdge("R", "Z");
+        workflow.addEdge("X", "Z");
+        workflow.addEdge("Y", "W");
+        workflow.addEdge("Z", "W");
+
+        // f.r is removed only once all three jobs reading it have run
+        Set<String> expected = expected("X Y Z -> f.r", "Z -> f.x", "W -> f.w f.y f.z");
+        assertEquals(expected, cleanups(addCleanupJobs(workflow, 12, 1)));
+    }
+
+    @Test
+    public void testStageOut() {
+        Graph workflow = new MapGraph();
+        addJob(workflow, "A", "s", new String[] {}, new String[] {"f.a"});
+        addJob(workflow, "B", "s", new String[] {"f.a"}, new String[] {"f.b"});
+        addJob(workflow, "C", "s", new String[] {"f.b"}, new String[] {"f.c"});
+        addStageOut(workflow, "SO_B", "s", "f.b");
+        addStageOut(workflow, "SO_C", "s", "f.c");
+        workflow.addEdge("A", "B");
+        workflow.addEdge("B", "C");
+        workflow.addEdge("B", "SO_B");
+        workflow.addEdge("C", "SO_C");
+
+        // the staged out files are removed after their stage out jobs
+        Set<String> expected = expected("SO_B -> f.a f.b", "SO_B SO_C -> f.b f.c");
+        assertEquals(expected, cleanups(addCleanupJobs(workflow, 8, 1)));
+    }
+
+    @Test
+    public void testMultipleSites() {
+        Graph workflow = new MapGraph();
+        addJob(workflow, "A", "s1", new String[] {}, new String[] {"f.a"});
+        addJob(workflow, "B", "s1", new String[] {"f.a"}, new String[] {"f.b"});
+        addJob(workflow, "E", "s1", new String[] {"f.a"}, new String[] {"f.e"});
+        addJob(workflow, "C", "s2", new String[] {"f.b"}, new String[] {"f.c"});
+        addJob(workflow, "D", "s2", new String[] {"f.c"}, new String[] {"f.d"});
+        addJob(workflow, "F", "s1", new String[] {"f.e", "f.b"}, new String[] {"f.f"});
+        workflow.addEdge("A", "B");
+        workflow.addEdge("A", "E");
+        workflow.addEdge("B", "C");
+        workflow.addEdge("C", "D");
+        workflow.addEdge("B", "F");
+        workflow.addEdge("E", "F");
+
+        // f.b is read on both sites and is not removed
+        Set<String> expected = expected("B E -> f.a", "F -> f.e f.f", "D -> f.c f.d");
+        assertEquals(expected, cleanups(addCleanupJobs(workflow, 12, 2)));
+    }
+
+    @Test(expected = OutOfSpaceError.class)
+    public void testInsufficientSpace() {
+        Graph workflow = new MapGraph();
+        addJob(workflow, "A", "s", new String[] {}, new String[] {"f.a"});
+        addCleanupJobs(workflow, 3, 1);
+    }
+
+    /**
+     * Returns a workflow with a fork and join on two independent sites.
+     *
+     * @return the workflow
+     */
+    private Graph twoSiteWorkflow() {
+        Graph workflow = new MapGraph();
+        for (String site : new String[] {"s1", "s2"}) {
+            addJob(workflow, site + "A", site, new String[] {}, new String[] {site + "f.a"});
+            addJob(
+                    workflow,
+                    site + "B",
+                    site,
+                    new String[] {site + "f.a"},
+                    new String[] {site + "f.b"});
+            addJob(
+                    workflow,
+                    site + "C",
+                    site,
+                    new String[] {site + "f.a"},
+                    new String[] {site + "f.c"});
+            addJob(
+                    workflow,
+                    site + "D",
+                    site,
+                    new String[] {site + "f.b", site + "f.c"},
+                    new String[] {site + "f.d"});
+            workflow.addEdge(site + "A", site + "B");
+            workflow.addEdge(site + "A", site + "C");
+            workflow.addEdge(site + "B", site + "D");
+            workflow.addEdge(site + "C", site + "D");
+        }
+        return workflow;
+    }
+
+    /**
+     * Adds the cleanup jobs to a workflow using the Constraint strategy.
+     *
+     * @param workflow the workflow
+     * @param maxSpace the maximum space per site
+     * @param threads the number of threads
+     * @return the workflow
+     */
+    private Graph addCleanupJobs(Graph workflow, long maxSpace, int threads) {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty("pegasus.file.cleanup.constraint.maxspace", Long.toString(maxSpace));
+        props.setProperty("pegasus.file.cleanup.constraint.threads", Integer.toString(threads));
+        PegasusBag bag = new PegasusBag();
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+
+        Constraint constraint = new Constraint();
+        constraint.initialize(bag, new TestImplementation());
+        return constraint.addCleanupJobs(workflow);
+    }
+
+    /**
+     * Describes the cleanup jobs in the workflow by their parents and the files they remove, as the
+     * ids of the cleanup jobs are random.
+     *
+     * @param workflow the workflow
+     * @return the description of the cleanup jobs
+     */
+    private Set<String> cleanups(Graph workflow) {
+        Set<String> result = new TreeSet<String>();
+        for (Iterator<GraphNode> it = workflow.nodeIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            Job job = (Job) node.getContent();
+            if (job.getJobType() != Job.CLEANUP_JOB) {
+                continue;
+            }
+            Set<String> parents = new TreeSet<String>();
+            for (GraphNode parent : node.getParents()) {
+                parents.add(parent.getID());
+            }
+            Set<String> files = new TreeSet<String>();
+            for (Object file : job.getInputFiles()) {
+                files.add(((PegasusFile) file).getLFN());
+            }
+            result.add(String.join(" ", parents) + " -> " + String.join(" ", files));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the description of the cleanup jobs expected.
+     *
+     * @param cleanups the parents of each cleanup job and the files it removes
+     * @return the sorted set of descriptions
+     */
+    private Set<String> expected(String... cleanups) {
+        return new TreeSet<String>(Arrays.asList(cleanups));
+    }
+
+    /**
+     * Adds a compute job to the workflow, with all the files of size 4.
+     *
+     * @param workflow the workflow
+     * @param id the id of the job
+     * @param site the site the job runs on
+     * @param inputs the input files
+     * @param outputs the output files
+     */
+    private void addJob(Graph workflow, String id, String site, String[] inputs, String[] outputs) {
+        Job job = new Job();
+        job.setName(id);
+        job.setJobType(Job.COMPUTE_JOB);
+        job.setSiteHandle(site);
+        job.setStagingSiteHandle(site);
+        for (String lfn : inputs) {
+            job.addInputFile(file(lfn));
+        }
+        for (String lfn : outputs) {
+            job.addOutputFile(file(lfn));
+        }
+        workflow.addNode(new GraphNode(id, job));
+    }
+
+    /**
+     * Adds a stage out job to the workflow, that transfers a file from the site.
+     *
+     * @param workflow the workflow
+     * @param id the id of the job
+     * @param site the site the file is staged out from
+     * @param lfn the file staged out
+     */
+    private void addStageOut(Graph workflow, String id, String site, String lfn) {
+        TransferJob job = new TransferJob();
+        job.setName(id);
+        job.setJobType(Job.STAGE_OUT_JOB);
+        job.setSiteHandle(site);
+        job.setStagingSiteHandle(site);
+        job.setNonThirdPartySite(site);
+        job.addInputFile(file(lfn));
+        job.addOutputFile(file(lfn));
+        workflow.addNode(new GraphNode(id, job));
+    }
+
+    private PegasusFile file(String lfn) {
+        PegasusFile file = new PegasusFile(lfn);
+        file.setSize(4);
+        file.setTransferFlag(PegasusFile.TRANSFER_NOT);
+        return file;
+    }
+
+    /** Creates cleanup jobs that list the files removed as inputs. */
+    private static class TestImplementation implements CleanupImplementation {
+
+        public void initialize(PegasusBag bag) {}
+
+        public Job createCleanupJob(String id, List files, Job job) {
+            return this.createCleanupJob(id, files, job, job.getStagingSiteHandle());
+        }
+
+        public Job createCleanupJob(String id, List files, Job job, String stagingSiteHandle) {
+            Job cleanup = new Job();
+            cleanup.setName(id);
+            cleanup.setJobType(Job.CLEANUP_JOB);
+            cleanup.setSiteHandle(stagingSiteHandle);
+            for (Object file : files) {
+                cleanup.addInputFile((PegasusFile) file);
+            }
+            return cleanup;
+        }
     }
-    */
 }
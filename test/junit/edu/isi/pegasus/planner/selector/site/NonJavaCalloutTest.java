@@ -1,5 +1,5 @@
 /**
- * Copyright 2007-2013 University Of Southern California
+ * Copyright 2007-2008 University Of Southern California
  *
  * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
  * except in compliance with the License. You may obtain a copy of the License at
@@ -15,31 +15,158 @@ package edu.isi.pegasus.planner.selector.site;
 
 import static org.junit.Assert.*;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.After;
-import org.junit.AfterClass;
 import org.junit.Before;
-import org.junit.BeforeClass;
+import org.junit.Test;
 
-// import org.junit.Test;
-
-/** @author Rajiv Mayani */
+/**
+ * Tests the batch mode of the NonJavaCallout site selector, with a fake site selector script.
+ *
+ * @author Rajiv Mayani
+ */
 public class NonJavaCalloutTest {
-    @BeforeClass
-    public static void setUpClass() {}
 
-    @AfterClass
-    public static void tearDownClass() {}
+    /**
+     * A site selector that maps all jobs except ID2 to siteB in batch mode, and everything to siteA
+     * otherwise.
+     */
+    private static final String SELECTOR =
+            "#!/bin/sh\n"
+                    + "dir=$(dirname \"$0\")\n"
+                    + "echo \"$1\" >> \"$dir/invocations\"\n"
+                    + "if [ \"$1\" = \"--batch\" ]; then\n"
+                    + "  tee \"$dir/records\" | sed -n -e '/\"job.id\":\"ID2\"/d'"
+                    + " -e 's/.*\"job.id\":\"\\([^\"]*\\)\".*/"
+                    + "{\"job.id\": \"\\1\", \"site\": \"siteB\", \"jobmanager\": \"jm\"}/p'\n"
+                    + "  exit 0\n"
+                    + "fi\n"
+                    + "echo \"SOLUTION:siteA\"\n";
+
+    private DefaultTestSetup mTestSetup;
+
+    private LogManager mLogger;
+
+    private File mDir;
+
+    public NonJavaCalloutTest() {}
 
     @Before
-    public void setUp() {}
+    public void setUp() throws IOException {
+        mTestSetup = new DefaultTestSetup();
+        mLogger = mTestSetup.loadLogger(PegasusProperties.nonSingletonInstance());
+        mLogger.setLevel(LogManager.INFO_MESSAGE_LEVEL);
+        mLogger.logEventStart("test.selector.site.NonJavaCallout", "setup", "0");
+        mDir = Files.createTempDirectory("selector").toFile();
+        File selector = new File(mDir, "selector");
+        Files.write(selector.toPath(), SELECTOR.getBytes(StandardCharsets.UTF_8));
+        selector.setExecutable(true);
+    }
 
     @After
-    public void tearDown() {}
+    public void tearDown() {
+        mLogger.logEventCompletion();
+        for (File f : mDir.listFiles()) {
+            f.delete();
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void testBatchMode() throws IOException {
+        ADag dag = this.createWorkflow("ID1", "ID3", "ID4");
+        NonJavaCallout selector = this.createSelector(true);
+        selector.mapWorkflow(dag, Arrays.asList("siteA", "siteB"));
+
+        for (String id : new String[] {"ID1", "ID3", "ID4"}) {
+            Job job = (Job) dag.getNode("preprocess_" + id).getContent();
+            assertEquals("siteB", job.getSiteHandle());
+            assertEquals("jm", job.getJobManager());
+        }
+        assertEquals(Arrays.asList("--batch"), this.readLines("invocations"));
+
+        List<String> records = this.readLines("records");
+        assertEquals(3, records.size());
+        JsonNode record = null;
+        for (String line : records) {
+            JsonNode node = new ObjectMapper().readTree(line);
+            if (node.get(NonJavaCallout.JOB_ID_KEY).asText().equals("ID1")) {
+                record = node;
+            }
+        }
+        assertNotNull(record);
+        assertEquals("2.0", record.get("version").asText());
+        assertEquals("pegasus::preprocess:4.0", record.get("transformation").asText());
+        assertEquals("f.ID1", record.get("input.lfn").get(0).asText());
+        assertTrue(record.get("resource.id").isArray());
+    }
 
-    /*
     @Test
-    public void testSomeMethod() {
-        assertEquals(1, 1);
+    public void testBatchModeFallback() throws IOException {
+        ADag dag = this.createWorkflow("ID1", "ID2");
+        NonJavaCallout selector = this.createSelector(true);
+        selector.mapWorkflow(dag, Arrays.asList("siteA", "siteB"));
+
+        assertEquals("siteB", ((Job) dag.getNode("preprocess_ID1").getContent()).getSiteHandle());
+        // the job not mapped in batch mode is mapped by calling out per job
+        assertEquals("siteA", ((Job) dag.getNode("preprocess_ID2").getContent()).getSiteHandle());
+        List<String> invocations = this.readLines("invocations");
+        assertEquals(2, invocations.size());
+        assertEquals("--batch", invocations.get(0));
+        assertNotEquals("--batch", invocations.get(1));
+    }
+
+    private NonJavaCallout createSelector(boolean batch) {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty(
+                "pegasus.selector.site.path", new File(mDir, "selector").getAbsolutePath());
+        props.setProperty("pegasus.selector.site.batch", Boolean.toString(batch));
+        props.setProperty("pegasus.selector.site.keep.tmp", "never");
+
+        SiteStore store = new SiteStore();
+        store.addEntry(new SiteCatalogEntry("siteA"));
+        store.addEntry(new SiteCatalogEntry("siteB"));
+
+        PegasusBag bag = new PegasusBag();
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        bag.add(PegasusBag.SITE_STORE, store);
+        NonJavaCallout selector = new NonJavaCallout();
+        selector.initialize(bag);
+        return selector;
+    }
+
+    private ADag createWorkflow(String... ids) {
+        ADag dag = new ADag();
+        for (String id : ids) {
+            Job job = new Job();
+            job.setTransformation("pegasus", "preprocess", "4.0");
+            job.setJobType(Job.COMPUTE_JOB);
+            job.setLogicalID(id);
+            job.setName("preprocess_" + id);
+            job.addInputFile(new PegasusFile("f." + id));
+            dag.add(job);
+        }
+        return dag;
+    }
+
+    private List<String> readLines(String name) throws IOException {
+        return Files.readAllLines(new File(mDir, name).toPath());
     }
-    */
 }
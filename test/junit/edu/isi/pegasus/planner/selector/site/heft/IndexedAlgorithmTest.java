@@ -0,0 +1,312 @@
+/**
+ * Copyright 2007-2008 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.selector.site.heft;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.site.classes.GridGateway;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.Mapper;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.Profile;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Selector;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that the IndexedAlgorithm produces the same schedule as the HEFT Algorithm. */
+public class IndexedAlgorithmTest {
+
+    private static final List<String> SITES = Arrays.asList("siteA", "siteB", "siteC");
+
+    private DefaultTestSetup mTestSetup;
+
+    private LogManager mLogger;
+
+    public IndexedAlgorithmTest() {}
+
+    @Before
+    public void setUp() {
+        mTestSetup = new DefaultTestSetup();
+        mLogger = mTestSetup.loadLogger(PegasusProperties.nonSingletonInstance());
+        mLogger.setLevel(LogManager.INFO_MESSAGE_LEVEL);
+        mLogger.logEventStart("test.selector.site.heft.IndexedAlgorithm", "setup", "0");
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testSameScheduleAsAlgorithm() {
+        this.testSameScheduleAsAlgorithm(ADag.MAP_GRAPH_IMPLEMENTATION);
+    }
+
+    @Test
+    public void testSameScheduleAsAlgorithmOnCompactGraph() {
+        this.testSameScheduleAsAlgorithm(ADag.COMPACT_GRAPH_IMPLEMENTATION);
+    }
+
+    @Test
+    public void testSameScheduleAsAlgorithmWithPinnedJobs() {
+        this.testSameScheduleAsAlgorithm(ADag.MAP_GRAPH_IMPLEMENTATION, true);
+    }
+
+    private void testSameScheduleAsAlgorithm(String graph) {
+        this.testSameScheduleAsAlgorithm(graph, false);
+    }
+
+    private void testSameScheduleAsAlgorithm(String graph, boolean pin) {
+        for (long seed = 0; seed < 20; seed++) {
+            PegasusBag bag = this.createBag(seed);
+            PegasusProperties props = bag.getPegasusProperties();
+            props.setProperty("pegasus.parser.dax.graph", graph);
+            ADag expectedDAG = this.createWorkflow(props, seed, 300, pin);
+            Algorithm expected = new Algorithm(bag);
+            expected.schedule(expectedDAG, SITES);
+
+            ADag actualDAG = this.createWorkflow(props, seed, 300, pin);
+            IndexedAlgorithm actual = new IndexedAlgorithm(bag);
+            actual.schedule(actualDAG, SITES);
+
+            assertEquals("makespan for seed " + seed, expected.getMakespan(), actual.getMakespan());
+            for (Iterator<GraphNode> it = actualDAG.nodeIterator(); it.hasNext(); ) {
+                GraphNode node = it.next();
+                GraphNode other = expectedDAG.getNode(node.getID());
+                assertEquals(
+                        "site for " + node.getID() + " for seed " + seed,
+                        other.getBag().get(HeftBag.SCHEDULED_SITE),
+                        actual.getScheduledSite(node));
+                assertEquals(
+                        "finish time for " + node.getID() + " for seed " + seed,
+                        other.getBag().get(HeftBag.ACTUAL_FINISH_TIME),
+                        actual.getFinishTime(node));
+            }
+        }
+    }
+
+    @Test
+    public void testChain() {
+        ADag dag = new ADag();
+        for (int i = 0; i < 3; i++) {
+            dag.add(this.createJob("job" + i, "t0", 0));
+            if (i > 0) {
+                dag.addEdge("job" + (i - 1), "job" + i);
+            }
+        }
+        IndexedAlgorithm heft = new IndexedAlgorithm(this.createBag(1));
+        heft.schedule(dag, SITES);
+
+        // all the jobs go to the fastest site for t0, with the first one
+        // waiting for the data from the dummy root
+        String site = heft.getScheduledSite(dag.getNode("job0"));
+        for (int i = 1; i < 3; i++) {
+            assertEquals(site, heft.getScheduledSite(dag.getNode("job" + i)));
+        }
+        assertEquals(heft.getFinishTime(dag.getNode("job2")), heft.getMakespan());
+        assertTrue(heft.getMakespan() > 2);
+    }
+
+    @Test
+    public void testPinnedJobs() {
+        ADag dag = new ADag();
+        for (int i = 0; i < 3; i++) {
+            dag.add(this.createJob("job" + i, "t" + i, 0));
+            if (i > 0) {
+                dag.addEdge("job" + (i - 1), "job" + i);
+            }
+        }
+        IndexedAlgorithm heft = new IndexedAlgorithm(this.createBag(1));
+        heft.schedule(dag, SITES);
+        String site = heft.getScheduledSite(dag.getNode("job1"));
+        String other = site.equals("siteA") ? "siteC" : "siteA";
+
+        // a job pinned to a runnable site is scheduled there
+        Job job = (Job) dag.getNode("job1").getContent();
+        job.getSelectorProfiles().construct(Selector.EXECUTION_SITE_KEY, other);
+        heft = new IndexedAlgorithm(this.createBag(1));
+        heft.schedule(dag, SITES);
+        assertEquals(other, heft.getScheduledSite(dag.getNode("job1")));
+
+        // t1 does not run on siteB, so the pin is ignored
+        job.getSelectorProfiles().construct(Selector.EXECUTION_SITE_KEY, "siteB");
+        heft = new IndexedAlgorithm(this.createBag(1));
+        heft.schedule(dag, SITES);
+        assertEquals(site, heft.getScheduledSite(dag.getNode("job1")));
+    }
+
+    @Test
+    public void testProcessorTimeline() {
+        ProcessorTimeline timeline = new ProcessorTimeline(3);
+        assertEquals(0, timeline.getProcessor(5));
+        timeline.scheduleJob(0, 10);
+        assertEquals(1, timeline.getProcessor(5));
+        timeline.scheduleJob(1, 8);
+        timeline.scheduleJob(2, 12);
+        // no processor is free at 5, the earliest one is picked
+        assertEquals(1, timeline.getProcessor(5));
+        assertEquals(8, timeline.getAvailableTime(5));
+        // the first processor free by 11 is picked
+        assertEquals(0, timeline.getProcessor(11));
+        assertEquals(11, timeline.getAvailableTime(11));
+    }
+
+    private ADag createWorkflow(PegasusProperties props, long seed, int size, boolean pin) {
+        Random random = new Random(seed);
+        // a separate generator for the pins, so that the workflow is the same either way
+        Random pins = new Random(~seed);
+        ADag dag = new ADag(props);
+        for (int i = 0; i < size; i++) {
+            int tx = random.nextInt(4);
+            // t3 has no runtime in the transformation catalog
+            int runtime = (tx == 3) ? 1 + random.nextInt(200) : 0;
+            Job job = this.createJob("job" + i, "t" + tx, runtime);
+            if (pin && pins.nextInt(4) == 0) {
+                // includes t1 jobs pinned to siteB, where they cannot run
+                job.getSelectorProfiles()
+                        .construct(
+                                Selector.EXECUTION_SITE_KEY, SITES.get(pins.nextInt(SITES.size())));
+            }
+            dag.add(job);
+            int parents = (i == 0) ? 0 : random.nextInt(4);
+            for (int p = 0; p < parents; p++) {
+                String parent = "job" + random.nextInt(i);
+                if (!dag.getNode(parent).getChildren().contains(dag.getNode("job" + i))) {
+                    dag.addEdge(parent, "job" + i);
+                }
+            }
+        }
+        return dag;
+    }
+
+    private Job createJob(String name, String transformation, int runtime) {
+        Job job = new Job();
+        job.setTransformation("pegasus", transformation, "4.0");
+        job.setJobType(Job.COMPUTE_JOB);
+        job.setName(name);
+        job.setLogicalID(name);
+        if (runtime > 0) {
+            job.vdsNS.construct(Algorithm.RUNTIME_PROFILE_KEY, Integer.toString(runtime));
+        }
+        return job;
+    }
+
+    private PegasusBag createBag(long seed) {
+        Random random = new Random(seed);
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+
+        SiteStore store = new SiteStore();
+        for (String site : SITES) {
+            SiteCatalogEntry entry = new SiteCatalogEntry(site);
+            if (!site.equals("siteC")) {
+                // siteC gets the default number of free nodes
+                GridGateway gateway =
+                        new GridGateway(
+                                GridGateway.TYPE.gt5,
+                                site + "/jobmanager-pbs",
+                                GridGateway.SCHEDULER_TYPE.pbs);
+                gateway.setJobType(GridGateway.JOB_TYPE.compute);
+                gateway.setIdleNodes(1 + random.nextInt(4));
+                entry.addGridGateway(gateway);
+            }
+            store.addEntry(entry);
+        }
+
+        PegasusBag bag = new PegasusBag();
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        bag.add(PegasusBag.SITE_STORE, store);
+
+        Map<String, Map<String, List<TransformationCatalogEntry>>> catalog =
+                new HashMap<String, Map<String, List<TransformationCatalogEntry>>>();
+        for (int tx = 0; tx < 4; tx++) {
+            Map<String, List<TransformationCatalogEntry>> sites =
+                    new LinkedHashMap<String, List<TransformationCatalogEntry>>();
+            for (String site : SITES) {
+                // t1 does not run on siteB
+                if (tx == 1 && site.equals("siteB")) {
+                    continue;
+                }
+                TransformationCatalogEntry entry =
+                        new TransformationCatalogEntry("pegasus", "t" + tx, "4.0");
+                entry.setResourceId(site);
+                if (tx != 3) {
+                    entry.addProfile(
+                            new Profile(
+                                    Profile.VDS,
+                                    Algorithm.RUNTIME_PROFILE_KEY,
+                                    Integer.toString(1 + random.nextInt(300))));
+                }
+                sites.put(site, Arrays.asList(entry));
+            }
+            catalog.put("t" + tx, sites);
+        }
+        bag.add(PegasusBag.TRANSFORMATION_MAPPER, new FakeMapper(bag, catalog));
+        return bag;
+    }
+
+    /** A mapper that looks up the entries from a map indexed by transformation name and site. */
+    private static class FakeMapper extends Mapper {
+
+        private final Map<String, Map<String, List<TransformationCatalogEntry>>> mCatalog;
+
+        FakeMapper(
+                PegasusBag bag,
+                Map<String, Map<String, List<TransformationCatalogEntry>>> catalog) {
+            super(bag);
+            mCatalog = catalog;
+        }
+
+        public Map getSiteMap(String namespace, String name, String version, List siteids) {
+            Map result = new LinkedHashMap();
+            for (Object site : siteids) {
+                List entries = mCatalog.get(name).get(site);
+                if (entries != null) {
+                    result.put(site, entries);
+                }
+            }
+            return result.isEmpty() ? null : result;
+        }
+
+        public String getMode() {
+            return "fake";
+        }
+
+        public List getTCList(String namespace, String name, String version, String siteid) {
+            return mCatalog.get(name).get(siteid);
+        }
+
+        public List getSiteList(String namespace, String name, String version, List siteids) {
+            Map map = this.getSiteMap(namespace, name, version, siteids);
+            return (map == null) ? null : new ArrayList(map.keySet());
+        }
+    }
+}
@@ -27,15 +27,24 @@ import org.junit.runners.Suite;
     edu.isi.pegasus.common.util.FileDetectorTest.class,
     edu.isi.pegasus.common.util.GliteEscapeTest.class,
     edu.isi.pegasus.common.util.VariableExpanderTest.class,
+    edu.isi.pegasus.common.logging.logger.DefaultTest.class,
+    edu.isi.pegasus.common.logging.format.SimpleTest.class,
     edu.isi.pegasus.planner.namespace.PegasusTest.class,
     edu.isi.pegasus.planner.namespace.MetadataTest.class,
+    edu.isi.pegasus.planner.namespace.LayeredMapTest.class,
+    edu.isi.pegasus.planner.catalog.CatalogCacheTest.class,
     edu.isi.pegasus.planner.catalog.replica.ReplicaFactoryTest.class,
     edu.isi.pegasus.planner.catalog.replica.classes.ReplicaStoreTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.RegexRCTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.RegexIndexTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.PFNTemplateTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.YAMLRCTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.MetaRCTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.JDBCRCTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.SimpleFileTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.MRCTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.IndexedFileTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.JournalTest.class,
     edu.isi.pegasus.planner.catalog.site.SiteFactoryTest.class,
     edu.isi.pegasus.planner.catalog.site.impl.XMLTest.class,
     edu.isi.pegasus.planner.catalog.site.impl.YAMLTest.class,
@@ -52,23 +61,33 @@ import org.junit.runners.Suite;
     edu.isi.pegasus.planner.catalog.transformation.impl.TextTest.class,
     edu.isi.pegasus.planner.catalog.transformation.impl.YAMLTest.class,
     edu.isi.pegasus.planner.classes.PegasusFileTest.class,
+    edu.isi.pegasus.planner.classes.LFNSymbolTableTest.class,
     edu.isi.pegasus.planner.classes.JobTest.class,
     edu.isi.pegasus.planner.classes.NotificationsTest.class,
     edu.isi.pegasus.planner.cluster.RuntimeClusteringTest.class,
+    edu.isi.pegasus.planner.cluster.BinPackerTest.class,
     edu.isi.pegasus.planner.code.GridStartTest.class,
     edu.isi.pegasus.planner.code.generator.condor.CondorEnvironmentEscapeTest.class,
     edu.isi.pegasus.planner.code.generator.condor.PegasusSubmitDAGTest.class,
+    edu.isi.pegasus.planner.code.generator.condor.CondorGeneratorTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.GLiteTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.CondorTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.CondorGTest.class,
+    edu.isi.pegasus.planner.client.PlannerServerTest.class,
     edu.isi.pegasus.planner.common.PegasusConfigurationTest.class,
+    edu.isi.pegasus.planner.common.VariableExpansionReaderTest.class,
     edu.isi.pegasus.planner.mapper.output.FlatOutputMapperTest.class,
     edu.isi.pegasus.planner.mapper.output.HashedOutputMapperTest.class,
     edu.isi.pegasus.planner.mapper.output.ReplicaOutputMapperTest.class,
     edu.isi.pegasus.planner.mapper.output.FixedOutputMapperTest.class,
     edu.isi.pegasus.planner.refiner.DataReuseEngineTest.class,
     edu.isi.pegasus.planner.refiner.InterPoolEngineTest.class,
+    edu.isi.pegasus.planner.refiner.PlanSnapshotTest.class,
+    edu.isi.pegasus.planner.refiner.TransitiveReductionTest.class,
+    edu.isi.pegasus.planner.refiner.cleanup.ConstraintTest.class,
     edu.isi.pegasus.planner.partitioner.graph.CycleCheckerTest.class,
+    edu.isi.pegasus.planner.partitioner.graph.AdjacencyStoreTest.class,
+    edu.isi.pegasus.planner.partitioner.graph.CompactGraphTest.class,
     edu.isi.pegasus.planner.parser.DAXParserFactoryTest.class,
     edu.isi.pegasus.planner.parser.dax.DAXParser3Test.class,
     edu.isi.pegasus.planner.parser.dax.DAXParser5Test.class,
@@ -76,6 +95,12 @@ import org.junit.runners.Suite;
     edu.isi.pegasus.planner.transfer.generator.StageOutTest.class,
     edu.isi.pegasus.planner.transfer.generator.StageInTest.class,
     edu.isi.pegasus.planner.transfer.sls.TransferTest.class,
-    edu.isi.pegasus.planner.transfer.sls.CondorTest.class
+    edu.isi.pegasus.planner.transfer.sls.CondorTest.class,
+    edu.isi.pegasus.planner.estimate.AspenTest.class,
+    edu.isi.pegasus.planner.estimate.HistoryIndexTest.class,
+    edu.isi.pegasus.planner.estimate.HistoryTest.class,
+    edu.isi.pegasus.planner.invocation.IngestionServerTest.class,
+    edu.isi.pegasus.planner.selector.site.NonJavaCalloutTest.class,
+    edu.isi.pegasus.planner.selector.site.heft.IndexedAlgorithmTest.class
 })
 public class AllTests {}
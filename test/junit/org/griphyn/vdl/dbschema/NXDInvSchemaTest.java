@@ -1,5 +1,5 @@
 /**
- * Copyright 2007-2013 University Of Southern California
+ * Copyright 2007-2008 University Of Southern California
  *
  * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
  * except in compliance with the License. You may obtain a copy of the License at
@@ -15,15 +15,43 @@ package org.griphyn.vdl.dbschema;
 
 import static org.junit.Assert.*;
 
+import edu.isi.pegasus.planner.invocation.Architecture;
+import edu.isi.pegasus.planner.invocation.InvocationRecord;
+import edu.isi.pegasus.planner.invocation.Usage;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.ErrorCodes;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.XMLResource;
 
-// import org.junit.Test;
-
-/** @author Rajiv Mayani */
+/**
+ * Tests the saving of invocation records against an in memory collection, that fails to store the
+ * record with a bad pid.
+ *
+ * @author Rajiv Mayani
+ */
 public class NXDInvSchemaTest {
+
+    /** The pid of the record the collection fails to store. */
+    private static final int BAD_PID = 13;
+
+    /** The contents of the documents stored in the collection. */
+    private List<String> mStored;
+
+    private NXDInvSchema mSchema;
+
     @BeforeClass
     public static void setUpClass() {}
 
@@ -31,15 +59,117 @@ public class NXDInvSchemaTest {
     public static void tearDownClass() {}
 
     @Before
-    public void setUp() {}
+    public void setUp() {
+        mStored = new ArrayList<String>();
+        mSchema = new NXDInvSchema(this.createCollection());
+    }
 
     @After
     public void tearDown() {}
 
-    /*
     @Test
-    public void testSomeMethod() {
-        assertEquals(1, 1);
+    public void testSaveInvocations() throws Exception {
+        assertTrue(mSchema.saveInvocations(this.createRecords(1, 2, 3)));
+        assertEquals(3, mStored.size());
+    }
+
+    @Test
+    public void testBatchThatFailsPartwayIsNotStored() throws Exception {
+        assertTrue(mSchema.saveInvocation(this.createRecords(1).get(0)));
+        try {
+            mSchema.saveInvocations(this.createRecords(2, 3, BAD_PID, 4));
+            fail("the batch with the bad record was saved");
+        } catch (SQLException e) {
+            // expected
+        }
+        // the records stored before the bad record are removed again
+        assertEquals(1, mStored.size());
+        assertTrue(mStored.get(0).contains("pid=\"1\""));
+
+        // so that saving the good records one at a time does not store them twice
+        for (InvocationRecord ivr : this.createRecords(2, 3, 4)) {
+            mSchema.saveInvocation(ivr);
+        }
+        assertEquals(4, mStored.size());
+    }
+
+    private List<InvocationRecord> createRecords(int... pids) throws Exception {
+        List<InvocationRecord> records = new ArrayList<InvocationRecord>();
+        for (int pid : pids) {
+            InvocationRecord ivr = new InvocationRecord();
+            ivr.setVersion("2.1");
+            ivr.setStart(new Date(1432993128432L));
+            ivr.setTransformation("pegasus::preprocess:4.0");
+            ivr.setHostAddress(InetAddress.getByName("127.0.0.1"));
+            ivr.setPID(pid);
+            ivr.setWorkingDirectory("/tmp");
+            ivr.setUsage(new Usage());
+            ivr.setArchitecture(new Architecture());
+            records.add(ivr);
+        }
+        return records;
+    }
+
+    /**
+     * Returns a collection that keeps the contents of the documents stored in memory.
+     *
+     * @return the collection
+     */
+    private Collection createCollection() {
+        InvocationHandler collection =
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("createResource")) {
+                            return createResource();
+                        }
+                        String content = (String) ((XMLResource) args[0]).getContent();
+                        if (name.equals("storeResource")) {
+                            if (content.contains("pid=\"" + BAD_PID + "\"")) {
+                                throw new XMLDBException(
+                                        ErrorCodes.VENDOR_ERROR, "bad record " + BAD_PID);
+                            }
+                            mStored.add(content);
+                        } else if (name.equals("removeResource")) {
+                            mStored.remove(content);
+                        } else {
+                            throw new UnsupportedOperationException(name);
+                        }
+                        return null;
+                    }
+                };
+        return (Collection)
+                Proxy.newProxyInstance(
+                        Collection.class.getClassLoader(),
+                        new Class[] {Collection.class},
+                        collection);
+    }
+
+    /**
+     * Returns a document that only keeps its content.
+     *
+     * @return the document
+     */
+    private XMLResource createResource() {
+        final Object[] content = new Object[1];
+        InvocationHandler resource =
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("setContent")) {
+                            content[0] = args[0];
+                            return null;
+                        } else if (name.equals("getContent")) {
+                            return content[0];
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                };
+        return (XMLResource)
+                Proxy.newProxyInstance(
+                        XMLResource.class.getClassLoader(),
+                        new Class[] {XMLResource.class},
+                        resource);
     }
-    */
 }